@@ -0,0 +1,123 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.database_objects.alerts.Alert;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Groups alerts by the metric group that they target, along with the distinct window durations that the alerts use.
+ * All the alerts in a group are evaluated against the same metric-keys, so each metric-key's recent values only need
+ * to be copied & sorted once per group, and each distinct window only needs to be extracted once per metric-key.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class AlertEvaluationPlan {
+
+    private final Map<Integer,List<Alert>> alertsByMetricGroupId_;
+    private final Map<Integer,List<Long>> windowDurationsByMetricGroupId_;
+    private final Map<Integer,List<Long>> anomalySmoothingWindowsByMetricGroupId_;
+
+    public AlertEvaluationPlan(List<Alert> alerts) {
+
+        Map<Integer,List<Alert>> alertsByMetricGroupId = new LinkedHashMap<>();
+        Map<Integer,Set<Long>> windowDurationsByMetricGroupId = new LinkedHashMap<>();
+        Map<Integer,Set<Long>> anomalySmoothingWindowsByMetricGroupId = new LinkedHashMap<>();
+
+        if (alerts != null) {
+            for (Alert alert : alerts) {
+                if ((alert == null) || (alert.getId() == null) || (alert.getMetricGroupId() == null)) continue;
+
+                List<Alert> alertsForMetricGroup = alertsByMetricGroupId.get(alert.getMetricGroupId());
+                Set<Long> windowDurationsForMetricGroup = windowDurationsByMetricGroupId.get(alert.getMetricGroupId());
+                Set<Long> anomalySmoothingWindowsForMetricGroup = anomalySmoothingWindowsByMetricGroupId.get(alert.getMetricGroupId());
+
+                if (alertsForMetricGroup == null) {
+                    alertsForMetricGroup = new ArrayList<>();
+                    alertsByMetricGroupId.put(alert.getMetricGroupId(), alertsForMetricGroup);
+                    windowDurationsForMetricGroup = new TreeSet<>();
+                    windowDurationsByMetricGroupId.put(alert.getMetricGroupId(), windowDurationsForMetricGroup);
+                    anomalySmoothingWindowsForMetricGroup = new TreeSet<>();
+                    anomalySmoothingWindowsByMetricGroupId.put(alert.getMetricGroupId(), anomalySmoothingWindowsForMetricGroup);
+                }
+
+                alertsForMetricGroup.add(alert);
+
+                if (isThresholdAlert(alert)) {
+                    if (isCautionEvaluated(alert) && (alert.getCautionWindowDuration() != null)) windowDurationsForMetricGroup.add(alert.getCautionWindowDuration());
+                    if (isDangerEvaluated(alert) && (alert.getDangerWindowDuration() != null)) windowDurationsForMetricGroup.add(alert.getDangerWindowDuration());
+                }
+                else if (isAnomalyAlert(alert)) {
+                    if (isCautionEvaluated(alert) && (alert.getCautionWindowDuration() != null)) anomalySmoothingWindowsForMetricGroup.add(alert.getCautionWindowDuration());
+                    if (isDangerEvaluated(alert) && (alert.getDangerWindowDuration() != null)) anomalySmoothingWindowsForMetricGroup.add(alert.getDangerWindowDuration());
+                }
+            }
+        }
+
+        alertsByMetricGroupId_ = new LinkedHashMap<>();
+        windowDurationsByMetricGroupId_ = new LinkedHashMap<>();
+        anomalySmoothingWindowsByMetricGroupId_ = new LinkedHashMap<>();
+
+        for (Integer metricGroupId : alertsByMetricGroupId.keySet()) {
+            alertsByMetricGroupId_.put(metricGroupId, Collections.unmodifiableList(alertsByMetricGroupId.get(metricGroupId)));
+            windowDurationsByMetricGroupId_.put(metricGroupId, Collections.unmodifiableList(new ArrayList<>(windowDurationsByMetricGroupId.get(metricGroupId))));
+            anomalySmoothingWindowsByMetricGroupId_.put(metricGroupId, Collections.unmodifiableList(new ArrayList<>(anomalySmoothingWindowsByMetricGroupId.get(metricGroupId))));
+        }
+    }
+
+    public static boolean isThresholdAlert(Alert alert) {
+        return (alert != null) && (alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_THRESHOLD);
+    }
+
+    public static boolean isAnomalyAlert(Alert alert) {
+        return (alert != null) && (alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_ANOMALY);
+    }
+    
+    public static boolean isCautionEvaluated(Alert alert) {
+        return (alert != null) && alert.isCautionAlertCriteriaValid() && (alert.isCautionEnabled() != null) && alert.isCautionEnabled();
+    }
+
+    public static boolean isDangerEvaluated(Alert alert) {
+        return (alert != null) && alert.isDangerAlertCriteriaValid() && (alert.isDangerEnabled() != null) && alert.isDangerEnabled();
+    }
+
+    public Set<Integer> getMetricGroupIds() {
+        return Collections.unmodifiableSet(alertsByMetricGroupId_.keySet());
+    }
+
+    public List<Alert> getAlerts(Integer metricGroupId) {
+        List<Alert> alerts = alertsByMetricGroupId_.get(metricGroupId);
+        return (alerts == null) ? Collections.<Alert>emptyList() : alerts;
+    }
+
+    /*
+    The distinct (ascending) window durations that threshold alerts in the metric group are evaluated against.
+    */
+    public List<Long> getWindowDurations(Integer metricGroupId) {
+        List<Long> windowDurations = windowDurationsByMetricGroupId_.get(metricGroupId);
+        return (windowDurations == null) ? Collections.<Long>emptyList() : windowDurations;
+    }
+
+    /*
+    The distinct (ascending) smoothing windows that anomaly alerts in the metric group use. Each one is a separate streaming model for every metric-key in the group.
+    */
+    public List<Long> getAnomalySmoothingWindows(Integer metricGroupId) {
+        List<Long> anomalySmoothingWindows = anomalySmoothingWindowsByMetricGroupId_.get(metricGroupId);
+        return (anomalySmoothingWindows == null) ? Collections.<Long>emptyList() : anomalySmoothingWindows;
+    }
+
+    public int getAlertCount() {
+        int alertCount = 0;
+        for (List<Alert> alerts : alertsByMetricGroupId_.values()) alertCount += alerts.size();
+        return alertCount;
+    }
+
+    public int getMetricGroupCount() {
+        return alertsByMetricGroupId_.size();
+    }
+
+}
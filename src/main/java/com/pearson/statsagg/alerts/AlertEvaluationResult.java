@@ -0,0 +1,298 @@
+package com.pearson.statsagg.alerts;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The outcome of evaluating alert criteria against a set of metric-keys.
+ * Instances are immutable -- each alert evaluation task fills a (single-threaded) Collector, and the resulting
+ * AlertEvaluationResult objects are merged once all the tasks have been joined.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class AlertEvaluationResult {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertEvaluationResult.class.getName());
+
+    public static final AlertEvaluationResult EMPTY = new Collector().toAlertEvaluationResult();
+
+    private final Map<Integer,List<String>> activeCautionAlertMetricKeysByAlertId_;
+    private final Map<Integer,List<String>> activeDangerAlertMetricKeysByAlertId_;
+    private final Map<String,BigDecimal> activeCautionAlertMetricValues_;
+    private final Map<String,BigDecimal> activeDangerAlertMetricValues_;
+    private final Map<Integer,Set<String>> activeCautionAvailabilityMetricKeysToAdd_;
+    private final Map<Integer,Set<String>> activeDangerAvailabilityMetricKeysToAdd_;
+    private final Map<Integer,Set<String>> activeCautionAvailabilityMetricKeysToRemove_;
+    private final Map<Integer,Set<String>> activeDangerAvailabilityMetricKeysToRemove_;
+    private final Map<Integer,Map<String,String>> positiveAlertReasons_Caution_ByAlertId_;
+    private final Map<Integer,Map<String,String>> positiveAlertReasons_Danger_ByAlertId_;
+    private final Map<Integer,Long> alertEvaluationTimeInNanosecondsByAlertId_;
+
+    private AlertEvaluationResult(Collector collector) {
+        this.activeCautionAlertMetricKeysByAlertId_ = unmodifiableMapOfLists(collector.activeCautionAlertMetricKeysByAlertId_);
+        this.activeDangerAlertMetricKeysByAlertId_ = unmodifiableMapOfLists(collector.activeDangerAlertMetricKeysByAlertId_);
+        this.activeCautionAlertMetricValues_ = Collections.unmodifiableMap(collector.activeCautionAlertMetricValues_);
+        this.activeDangerAlertMetricValues_ = Collections.unmodifiableMap(collector.activeDangerAlertMetricValues_);
+        this.activeCautionAvailabilityMetricKeysToAdd_ = unmodifiableMapOfSets(collector.activeCautionAvailabilityMetricKeysToAdd_);
+        this.activeDangerAvailabilityMetricKeysToAdd_ = unmodifiableMapOfSets(collector.activeDangerAvailabilityMetricKeysToAdd_);
+        this.activeCautionAvailabilityMetricKeysToRemove_ = unmodifiableMapOfSets(collector.activeCautionAvailabilityMetricKeysToRemove_);
+        this.activeDangerAvailabilityMetricKeysToRemove_ = unmodifiableMapOfSets(collector.activeDangerAvailabilityMetricKeysToRemove_);
+        this.positiveAlertReasons_Caution_ByAlertId_ = unmodifiableMapOfMaps(collector.positiveAlertReasons_Caution_ByAlertId_);
+        this.positiveAlertReasons_Danger_ByAlertId_ = unmodifiableMapOfMaps(collector.positiveAlertReasons_Danger_ByAlertId_);
+        this.alertEvaluationTimeInNanosecondsByAlertId_ = Collections.unmodifiableMap(collector.alertEvaluationTimeInNanosecondsByAlertId_);
+    }
+
+    /*
+    Combines the results of many alert evaluation tasks into a single result.
+    This should only be called after all of the tasks that produced the results have completed.
+    */
+    public static AlertEvaluationResult merge(List<AlertEvaluationResult> alertEvaluationResults) {
+
+        if ((alertEvaluationResults == null) || alertEvaluationResults.isEmpty()) {
+            return EMPTY;
+        }
+
+        if (alertEvaluationResults.size() == 1) {
+            return (alertEvaluationResults.get(0) == null) ? EMPTY : alertEvaluationResults.get(0);
+        }
+
+        Collector collector = new Collector();
+
+        for (AlertEvaluationResult alertEvaluationResult : alertEvaluationResults) {
+            if (alertEvaluationResult == null) continue;
+
+            mergeMapOfLists(alertEvaluationResult.activeCautionAlertMetricKeysByAlertId_, collector.activeCautionAlertMetricKeysByAlertId_);
+            mergeMapOfLists(alertEvaluationResult.activeDangerAlertMetricKeysByAlertId_, collector.activeDangerAlertMetricKeysByAlertId_);
+            collector.activeCautionAlertMetricValues_.putAll(alertEvaluationResult.activeCautionAlertMetricValues_);
+            collector.activeDangerAlertMetricValues_.putAll(alertEvaluationResult.activeDangerAlertMetricValues_);
+            mergeMapOfSets(alertEvaluationResult.activeCautionAvailabilityMetricKeysToAdd_, collector.activeCautionAvailabilityMetricKeysToAdd_);
+            mergeMapOfSets(alertEvaluationResult.activeDangerAvailabilityMetricKeysToAdd_, collector.activeDangerAvailabilityMetricKeysToAdd_);
+            mergeMapOfSets(alertEvaluationResult.activeCautionAvailabilityMetricKeysToRemove_, collector.activeCautionAvailabilityMetricKeysToRemove_);
+            mergeMapOfSets(alertEvaluationResult.activeDangerAvailabilityMetricKeysToRemove_, collector.activeDangerAvailabilityMetricKeysToRemove_);
+            mergeMapOfMaps(alertEvaluationResult.positiveAlertReasons_Caution_ByAlertId_, collector.positiveAlertReasons_Caution_ByAlertId_);
+            mergeMapOfMaps(alertEvaluationResult.positiveAlertReasons_Danger_ByAlertId_, collector.positiveAlertReasons_Danger_ByAlertId_);
+
+            for (Map.Entry<Integer,Long> entry : alertEvaluationResult.alertEvaluationTimeInNanosecondsByAlertId_.entrySet()) {
+                collector.addAlertEvaluationTime(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return collector.toAlertEvaluationResult();
+    }
+
+    private static void mergeMapOfLists(Map<Integer,List<String>> source, Map<Integer,List<String>> destination) {
+        for (Map.Entry<Integer,List<String>> entry : source.entrySet()) {
+            List<String> values = destination.get(entry.getKey());
+
+            if (values == null) {
+                values = new ArrayList<>();
+                destination.put(entry.getKey(), values);
+            }
+
+            values.addAll(entry.getValue());
+        }
+    }
+
+    private static void mergeMapOfSets(Map<Integer,Set<String>> source, Map<Integer,Set<String>> destination) {
+        for (Map.Entry<Integer,Set<String>> entry : source.entrySet()) {
+            Set<String> values = destination.get(entry.getKey());
+
+            if (values == null) {
+                values = new HashSet<>();
+                destination.put(entry.getKey(), values);
+            }
+
+            values.addAll(entry.getValue());
+        }
+    }
+
+    private static void mergeMapOfMaps(Map<Integer,Map<String,String>> source, Map<Integer,Map<String,String>> destination) {
+        for (Map.Entry<Integer,Map<String,String>> entry : source.entrySet()) {
+            Map<String,String> values = destination.get(entry.getKey());
+
+            if (values == null) {
+                values = new HashMap<>();
+                destination.put(entry.getKey(), values);
+            }
+
+            values.putAll(entry.getValue());
+        }
+    }
+
+    private static Map<Integer,List<String>> unmodifiableMapOfLists(Map<Integer,List<String>> map) {
+        Map<Integer,List<String>> unmodifiableMap = new HashMap<>();
+        for (Map.Entry<Integer,List<String>> entry : map.entrySet()) unmodifiableMap.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        return Collections.unmodifiableMap(unmodifiableMap);
+    }
+
+    private static Map<Integer,Set<String>> unmodifiableMapOfSets(Map<Integer,Set<String>> map) {
+        Map<Integer,Set<String>> unmodifiableMap = new HashMap<>();
+        for (Map.Entry<Integer,Set<String>> entry : map.entrySet()) unmodifiableMap.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+        return Collections.unmodifiableMap(unmodifiableMap);
+    }
+
+    private static Map<Integer,Map<String,String>> unmodifiableMapOfMaps(Map<Integer,Map<String,String>> map) {
+        Map<Integer,Map<String,String>> unmodifiableMap = new HashMap<>();
+        for (Map.Entry<Integer,Map<String,String>> entry : map.entrySet()) unmodifiableMap.put(entry.getKey(), Collections.unmodifiableMap(entry.getValue()));
+        return Collections.unmodifiableMap(unmodifiableMap);
+    }
+
+    public Map<Integer,List<String>> getActiveCautionAlertMetricKeysByAlertId() {
+        return activeCautionAlertMetricKeysByAlertId_;
+    }
+
+    public Map<Integer,List<String>> getActiveDangerAlertMetricKeysByAlertId() {
+        return activeDangerAlertMetricKeysByAlertId_;
+    }
+
+    public Map<String,BigDecimal> getActiveCautionAlertMetricValues() {
+        return activeCautionAlertMetricValues_;
+    }
+
+    public Map<String,BigDecimal> getActiveDangerAlertMetricValues() {
+        return activeDangerAlertMetricValues_;
+    }
+
+    public Map<Integer,Set<String>> getActiveCautionAvailabilityMetricKeysToAdd() {
+        return activeCautionAvailabilityMetricKeysToAdd_;
+    }
+
+    public Map<Integer,Set<String>> getActiveDangerAvailabilityMetricKeysToAdd() {
+        return activeDangerAvailabilityMetricKeysToAdd_;
+    }
+
+    public Map<Integer,Set<String>> getActiveCautionAvailabilityMetricKeysToRemove() {
+        return activeCautionAvailabilityMetricKeysToRemove_;
+    }
+
+    public Map<Integer,Set<String>> getActiveDangerAvailabilityMetricKeysToRemove() {
+        return activeDangerAvailabilityMetricKeysToRemove_;
+    }
+
+    public Map<Integer,Map<String,String>> getPositiveAlertReasons_Caution_ByAlertId() {
+        return positiveAlertReasons_Caution_ByAlertId_;
+    }
+
+    public Map<Integer,Map<String,String>> getPositiveAlertReasons_Danger_ByAlertId() {
+        return positiveAlertReasons_Danger_ByAlertId_;
+    }
+
+    public Map<Integer,Long> getAlertEvaluationTimeInNanosecondsByAlertId() {
+        return alertEvaluationTimeInNanosecondsByAlertId_;
+    }
+
+    /*
+    Mutable, non-thread-safe accumulator for a single alert evaluation task.
+    Once the task is finished, 'toAlertEvaluationResult' freezes the accumulated state.
+    */
+    public static class Collector {
+
+        private final Map<Integer,List<String>> activeCautionAlertMetricKeysByAlertId_ = new HashMap<>();
+        private final Map<Integer,List<String>> activeDangerAlertMetricKeysByAlertId_ = new HashMap<>();
+        private final Map<String,BigDecimal> activeCautionAlertMetricValues_ = new HashMap<>();
+        private final Map<String,BigDecimal> activeDangerAlertMetricValues_ = new HashMap<>();
+        private final Map<Integer,Set<String>> activeCautionAvailabilityMetricKeysToAdd_ = new HashMap<>();
+        private final Map<Integer,Set<String>> activeDangerAvailabilityMetricKeysToAdd_ = new HashMap<>();
+        private final Map<Integer,Set<String>> activeCautionAvailabilityMetricKeysToRemove_ = new HashMap<>();
+        private final Map<Integer,Set<String>> activeDangerAvailabilityMetricKeysToRemove_ = new HashMap<>();
+        private final Map<Integer,Map<String,String>> positiveAlertReasons_Caution_ByAlertId_ = new HashMap<>();
+        private final Map<Integer,Map<String,String>> positiveAlertReasons_Danger_ByAlertId_ = new HashMap<>();
+        private final Map<Integer,Long> alertEvaluationTimeInNanosecondsByAlertId_ = new HashMap<>();
+
+        private boolean isFrozen_ = false;
+
+        public void addActiveCautionAlertMetric(Integer alertId, String metricKey, BigDecimal metricValue) {
+            checkNotFrozen();
+            getOrCreateList(activeCautionAlertMetricKeysByAlertId_, alertId).add(metricKey);
+            if (metricValue != null) activeCautionAlertMetricValues_.put(metricKey + "-" + alertId, metricValue);
+        }
+
+        public void addActiveDangerAlertMetric(Integer alertId, String metricKey, BigDecimal metricValue) {
+            checkNotFrozen();
+            getOrCreateList(activeDangerAlertMetricKeysByAlertId_, alertId).add(metricKey);
+            if (metricValue != null) activeDangerAlertMetricValues_.put(metricKey + "-" + alertId, metricValue);
+        }
+
+        public void addActiveCautionAvailabilityMetricKey(Integer alertId, String metricKey) {
+            checkNotFrozen();
+            getOrCreateSet(activeCautionAvailabilityMetricKeysToAdd_, alertId).add(metricKey);
+        }
+
+        public void addActiveDangerAvailabilityMetricKey(Integer alertId, String metricKey) {
+            checkNotFrozen();
+            getOrCreateSet(activeDangerAvailabilityMetricKeysToAdd_, alertId).add(metricKey);
+        }
+
+        public void removeActiveCautionAvailabilityMetricKey(Integer alertId, String metricKey, String positiveAlertReason) {
+            checkNotFrozen();
+            getOrCreateSet(activeCautionAvailabilityMetricKeysToRemove_, alertId).add(metricKey);
+            if (positiveAlertReason != null) getOrCreateMap(positiveAlertReasons_Caution_ByAlertId_, alertId).put(metricKey, positiveAlertReason);
+        }
+
+        public void removeActiveDangerAvailabilityMetricKey(Integer alertId, String metricKey, String positiveAlertReason) {
+            checkNotFrozen();
+            getOrCreateSet(activeDangerAvailabilityMetricKeysToRemove_, alertId).add(metricKey);
+            if (positiveAlertReason != null) getOrCreateMap(positiveAlertReasons_Danger_ByAlertId_, alertId).put(metricKey, positiveAlertReason);
+        }
+
+        public void addAlertEvaluationTime(Integer alertId, long alertEvaluationTimeInNanoseconds) {
+            checkNotFrozen();
+            Long currentAlertEvaluationTime = alertEvaluationTimeInNanosecondsByAlertId_.get(alertId);
+            if (currentAlertEvaluationTime == null) alertEvaluationTimeInNanosecondsByAlertId_.put(alertId, alertEvaluationTimeInNanoseconds);
+            else alertEvaluationTimeInNanosecondsByAlertId_.put(alertId, currentAlertEvaluationTime + alertEvaluationTimeInNanoseconds);
+        }
+
+        public AlertEvaluationResult toAlertEvaluationResult() {
+            checkNotFrozen();
+            isFrozen_ = true;
+            return new AlertEvaluationResult(this);
+        }
+
+        private void checkNotFrozen() {
+            if (isFrozen_) throw new IllegalStateException("AlertEvaluationResult.Collector cannot be modified after its result has been created");
+        }
+
+        private static List<String> getOrCreateList(Map<Integer,List<String>> map, Integer alertId) {
+            List<String> list = map.get(alertId);
+
+            if (list == null) {
+                list = new ArrayList<>();
+                map.put(alertId, list);
+            }
+
+            return list;
+        }
+
+        private static Set<String> getOrCreateSet(Map<Integer,Set<String>> map, Integer alertId) {
+            Set<String> set = map.get(alertId);
+
+            if (set == null) {
+                set = new HashSet<>();
+                map.put(alertId, set);
+            }
+
+            return set;
+        }
+
+        private static Map<String,String> getOrCreateMap(Map<Integer,Map<String,String>> map, Integer alertId) {
+            Map<String,String> innerMap = map.get(alertId);
+
+            if (innerMap == null) {
+                innerMap = new HashMap<>();
+                map.put(alertId, innerMap);
+            }
+
+            return innerMap;
+        }
+
+    }
+
+}
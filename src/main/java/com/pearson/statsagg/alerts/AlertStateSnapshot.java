@@ -0,0 +1,669 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.metric_aggregation.MetricKeyLastSeen;
+import com.pearson.statsagg.metric_aggregation.MetricTimestampAndValue;
+import com.pearson.statsagg.metric_aggregation.RecentMetricTimestampsAndValues;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.pearson.statsagg.utilities.StackTrace;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the in-memory state that the alert routine depends on (recent metric values, metric 'last seen' timestamps, and active alert state)
+ * to local disk, so that alerts can resume evaluating with populated windows after a restart.
+ *
+ * Two files are kept in the snapshot directory:
+ *   alert_state.snapshot -- a full copy of the state, rewritten (via an atomic rename) when the log is compacted
+ *   alert_state.log      -- delta records appended after the full snapshot was written
+ *
+ * Every record is framed as {long payloadLength, long crc32, payload}. The payload is streamed straight to the file (so a record is never held in memory),
+ * & the length & checksum are filled in after the payload has been written. A record that was only partially written (ex- a crash mid-write) still has
+ * a length of 0, or fails its checksum, so it is detected & ignored.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class AlertStateSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertStateSnapshot.class.getName());
+
+    public static final String SNAPSHOT_FILENAME = "alert_state.snapshot";
+    public static final String LOG_FILENAME = "alert_state.log";
+
+    private static final int FILE_MAGIC = 0x53414153;
+    private static final byte FILE_VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 5;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final byte RECORD_TYPE_FULL = 1;
+    private static final byte RECORD_TYPE_DELTA = 2;
+    private static final long MINIMUM_COMPACTION_LOG_SIZE = 1048576;
+    private static final int STREAM_BUFFER_SIZE = 65536;
+
+    private final File directory_;
+    private final File snapshotFile_;
+    private final File logFile_;
+
+    // metric values with a hash key greater than this are included in the next delta record.
+    // this lags one write behind, so metric values that get a hash key slightly before they are added to the 'recent values' lists are not missed.
+    private long deltaMetricHashKeyLowWatermark_ = Long.MIN_VALUE;
+    private long previousWriteMetricHashKey_ = Long.MIN_VALUE;
+    // 'metric last seen' objects are replaced (not modified) whenever a metric is seen, so a metric-key is included in the next delta record if its object has changed since the previous write.
+    // a metric-key that was written, but that no longer has a 'last seen' object, was removed -- so the next delta record has a tombstone for it.
+    private final Map<String,MetricKeyLastSeen> writtenMetricKeysLastSeen_ = new HashMap<>();
+    private boolean isFullSnapshotWritten_ = false;
+    // record timestamps are strictly increasing, so a delta that is written in the same millisecond as the full snapshot isn't mistaken for a stale delta on restore
+    private long previousRecordTimestamp_ = Long.MIN_VALUE;
+
+    public AlertStateSnapshot(String directory) {
+        this.directory_ = new File(((directory == null) || directory.trim().isEmpty()) ? "alert_state" : directory.trim());
+        this.snapshotFile_ = new File(directory_, SNAPSHOT_FILENAME);
+        this.logFile_ = new File(directory_, LOG_FILENAME);
+    }
+
+    /*
+    Writes a delta record to the log, or (if there is no full snapshot yet, or if the log has grown larger than the full snapshot) compacts everything into a new full snapshot.
+    */
+    public synchronized boolean writeSnapshot() {
+
+        try {
+            if (!directory_.exists() && !directory_.mkdirs()) {
+                logger.error("Routine=AlertStateSnapshot, Message=\"Unable to create snapshot directory\", Directory=\"" + directory_.getAbsolutePath() + "\"");
+                return false;
+            }
+
+            long logSize = logFile_.exists() ? logFile_.length() : 0;
+            long compactionLogSize = Math.max(MINIMUM_COMPACTION_LOG_SIZE, snapshotFile_.exists() ? snapshotFile_.length() : 0);
+
+            if (!isFullSnapshotWritten_ || !snapshotFile_.exists() || (logSize >= compactionLogSize)) return writeFullSnapshot();
+            else return appendDeltaSnapshot();
+        }
+        catch (Exception e) {
+            // the delta bookkeeping may not match what is on disk anymore, so start over with a full snapshot
+            isFullSnapshotWritten_ = false;
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            return false;
+        }
+    }
+
+    private boolean writeFullSnapshot() throws IOException {
+
+        long startTime = System.currentTimeMillis();
+        long metricHashKey = GlobalVariables.metricHashKeyGenerator.get();
+
+        File temporarySnapshotFile = new File(directory_, SNAPSHOT_FILENAME + ".tmp");
+        long payloadLength = writeRecord(temporarySnapshotFile, false, RECORD_TYPE_FULL, getNextRecordTimestamp(startTime), metricHashKey, Long.MIN_VALUE);
+        Files.move(temporarySnapshotFile.toPath(), snapshotFile_.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // the log only contains changes that are newer than the full snapshot that it follows
+        createEmptyFile(logFile_);
+
+        isFullSnapshotWritten_ = true;
+        updateWatermarks(metricHashKey);
+
+        logger.info("Routine=AlertStateSnapshot, Message=\"Wrote full snapshot\", Bytes=" + payloadLength + ", Time=" + (System.currentTimeMillis() - startTime));
+
+        return true;
+    }
+
+    private boolean appendDeltaSnapshot() throws IOException {
+
+        long startTime = System.currentTimeMillis();
+        long metricHashKey = GlobalVariables.metricHashKeyGenerator.get();
+
+        long payloadLength = writeRecord(logFile_, true, RECORD_TYPE_DELTA, getNextRecordTimestamp(startTime), metricHashKey, deltaMetricHashKeyLowWatermark_);
+
+        updateWatermarks(metricHashKey);
+
+        logger.debug("Routine=AlertStateSnapshot, Message=\"Appended delta snapshot\", Bytes=" + payloadLength + ", Time=" + (System.currentTimeMillis() - startTime));
+
+        return true;
+    }
+
+    private void updateWatermarks(long metricHashKey) {
+        deltaMetricHashKeyLowWatermark_ = (previousWriteMetricHashKey_ == Long.MIN_VALUE) ? metricHashKey : previousWriteMetricHashKey_;
+        previousWriteMetricHashKey_ = metricHashKey;
+    }
+
+    /*
+    Streams a record to the end of 'file' (or to the start of 'file', if 'append' is false). Returns the length of the record's payload.
+    A placeholder header (with a length of 0) is written first, & is only filled in once the payload is on disk.
+    */
+    private long writeRecord(File file, boolean append, byte recordType, long timestamp, long metricHashKey, long metricHashKeyLowWatermark) throws IOException {
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            if (!append) randomAccessFile.setLength(0);
+
+            long recordPosition = randomAccessFile.length();
+
+            if (recordPosition == 0) {
+                writeFully(fileChannel, getFileHeader(), 0);
+                recordPosition = FILE_HEADER_SIZE;
+            }
+
+            writeFully(fileChannel, ByteBuffer.allocate(RECORD_HEADER_SIZE), recordPosition);
+            fileChannel.position(recordPosition + RECORD_HEADER_SIZE);
+
+            // the wrapping streams aren't closed, since closing them would close the file before the header is filled in
+            CRC32 crc32 = new CRC32();
+            CountingOutputStream countingOutputStream = new CountingOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(fileChannel), STREAM_BUFFER_SIZE), crc32));
+            DataOutputStream dataOutputStream = new DataOutputStream(countingOutputStream);
+
+            writeRecordPayload(dataOutputStream, recordType, timestamp, metricHashKey, metricHashKeyLowWatermark);
+            dataOutputStream.flush();
+
+            // the payload has to be on disk before the header that vouches for it
+            fileChannel.force(false);
+
+            long payloadLength = countingOutputStream.getCount();
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            recordHeader.putLong(payloadLength).putLong(crc32.getValue()).flip();
+            writeFully(fileChannel, recordHeader, recordPosition);
+            fileChannel.force(true);
+
+            return payloadLength;
+        }
+    }
+
+    private static void createEmptyFile(File file) throws IOException {
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            randomAccessFile.setLength(0);
+            writeFully(fileChannel, getFileHeader(), 0);
+            fileChannel.force(true);
+        }
+    }
+
+    private static ByteBuffer getFileHeader() {
+        ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        fileHeader.putInt(FILE_MAGIC).put(FILE_VERSION).flip();
+        return fileHeader;
+    }
+
+    private static void writeFully(FileChannel fileChannel, ByteBuffer byteBuffer, long position) throws IOException {
+        while (byteBuffer.hasRemaining()) {
+            position += fileChannel.write(byteBuffer, position);
+        }
+    }
+
+    private long getNextRecordTimestamp(long currentTimestamp) {
+        previousRecordTimestamp_ = (previousRecordTimestamp_ == Long.MIN_VALUE) ? currentTimestamp : Math.max(currentTimestamp, previousRecordTimestamp_ + 1);
+        return previousRecordTimestamp_;
+    }
+
+    private void writeRecordPayload(DataOutputStream dataOutputStream, byte recordType, long timestamp, long metricHashKey, long metricHashKeyLowWatermark) throws IOException {
+
+        dataOutputStream.writeByte(recordType);
+        dataOutputStream.writeLong(timestamp);
+        dataOutputStream.writeLong(metricHashKey);
+
+        // removed metric-keys (tombstones) -- the cleanup routine removes a metric-key's 'last seen' timestamp & its recent values together, 
+        // so a metric-key that was written with a 'last seen' timestamp, but that doesn't have one anymore, has been removed since the previous write.
+        List<String> removedMetricKeys = new ArrayList<>();
+
+        if (recordType == RECORD_TYPE_FULL) {
+            writtenMetricKeysLastSeen_.clear();
+        }
+        else {
+            Iterator<String> writtenMetricKeysIterator = writtenMetricKeysLastSeen_.keySet().iterator();
+
+            while (writtenMetricKeysIterator.hasNext()) {
+                String writtenMetricKey = writtenMetricKeysIterator.next();
+                if (GlobalVariables.metricKeysLastSeenTimestamp.containsKey(writtenMetricKey)) continue;
+
+                removedMetricKeys.add(writtenMetricKey);
+                writtenMetricKeysIterator.remove();
+            }
+        }
+
+        dataOutputStream.writeInt(removedMetricKeys.size());
+        for (String removedMetricKey : removedMetricKeys) writeString(dataOutputStream, removedMetricKey);
+
+        // recent metric values -- delta records only include values that were received since the previous write.
+        // every metric-key is written as {true, metricKey, numValues, values}, & the list is terminated by 'false', so the metric-keys never have to be counted up front.
+        List<MetricTimestampAndValue> metricTimestampsAndValuesLocal = new ArrayList<>();
+
+        for (String metricKey : GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.keySet()) {
+            List<MetricTimestampAndValue> metricTimestampsAndValues = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(metricKey);
+            if (metricTimestampsAndValues == null) continue;
+
+            metricTimestampsAndValuesLocal.clear();
+
+            synchronized (metricTimestampsAndValues) {
+                for (MetricTimestampAndValue metricTimestampAndValue : metricTimestampsAndValues) {
+                    if ((metricTimestampAndValue == null) || (metricTimestampAndValue.getMetricValue() == null)) continue;
+                    if ((recordType == RECORD_TYPE_DELTA) && (metricTimestampAndValue.getMetricReceivedHashKey() <= metricHashKeyLowWatermark)) continue;
+                    metricTimestampsAndValuesLocal.add(metricTimestampAndValue);
+                }
+            }
+
+            if ((recordType == RECORD_TYPE_DELTA) && metricTimestampsAndValuesLocal.isEmpty()) continue;
+
+            dataOutputStream.writeBoolean(true);
+            writeString(dataOutputStream, metricKey);
+            dataOutputStream.writeInt(metricTimestampsAndValuesLocal.size());
+
+            for (MetricTimestampAndValue metricTimestampAndValue : metricTimestampsAndValuesLocal) {
+                dataOutputStream.writeLong(metricTimestampAndValue.getTimestamp());
+                dataOutputStream.writeLong(metricTimestampAndValue.getMetricReceivedHashKey());
+                writeBigDecimal(dataOutputStream, metricTimestampAndValue.getMetricValue());
+            }
+        }
+
+        dataOutputStream.writeBoolean(false);
+
+        // metric 'last seen' timestamps -- delta records only include metric-keys that were seen since the previous write. terminated the same way as the metric values.
+        for (Map.Entry<String,MetricKeyLastSeen> metricKeyLastSeenEntry : GlobalVariables.metricKeysLastSeenTimestamp.entrySet()) {
+            MetricKeyLastSeen metricKeyLastSeen = metricKeyLastSeenEntry.getValue();
+            if (metricKeyLastSeen == null) continue;
+            if ((recordType == RECORD_TYPE_DELTA) && (writtenMetricKeysLastSeen_.get(metricKeyLastSeenEntry.getKey()) == metricKeyLastSeen)) continue;
+
+            dataOutputStream.writeBoolean(true);
+            writeString(dataOutputStream, metricKeyLastSeenEntry.getKey());
+            writeNullableLong(dataOutputStream, metricKeyLastSeen.getMetricKeyLastSeenTimestamp_Current());
+            writeNullableLong(dataOutputStream, metricKeyLastSeen.getMetricKeyLastSeenTimestamp_UpdateOnResend());
+            writtenMetricKeysLastSeen_.put(metricKeyLastSeenEntry.getKey(), metricKeyLastSeen);
+        }
+
+        dataOutputStream.writeBoolean(false);
+
+        // active alert state is small, so every record contains all of it
+        writeMetricKeysByAlertId(dataOutputStream, GlobalVariables.activeCautionAlertMetricKeysByAlertId);
+        writeMetricKeysByAlertId(dataOutputStream, GlobalVariables.activeDangerAlertMetricKeysByAlertId);
+        writeMetricKeysByAlertId(dataOutputStream, GlobalVariables.activeCautionAvailabilityAlerts);
+        writeMetricKeysByAlertId(dataOutputStream, GlobalVariables.activeDangerAvailabilityAlerts);
+    }
+
+    /*
+    Reads the full snapshot & any delta records that follow it, and loads the result into the global variables that the alert routine uses.
+    Snapshots that are older than 'maxAgeInMilliseconds' are not loaded (their windows would be too stale to be useful).
+    Returns the timestamp of the newest record that was loaded, or null if nothing was loaded.
+    */
+    public synchronized Long restoreSnapshot(long maxAgeInMilliseconds) {
+
+        if (!snapshotFile_.exists()) {
+            logger.info("Routine=AlertStateSnapshot, Message=\"No snapshot found\", Directory=\"" + directory_.getAbsolutePath() + "\"");
+            return null;
+        }
+
+        long startTime = System.currentTimeMillis();
+        RestoredState restoredState = new RestoredState();
+
+        try {
+            int numFullRecords = readFile(snapshotFile_, restoredState, true);
+
+            if (numFullRecords != 1) {
+                logger.warn("Routine=AlertStateSnapshot, Message=\"Snapshot file is invalid. Not restoring alert state.\", File=\"" + snapshotFile_.getAbsolutePath() + "\"");
+                return null;
+            }
+
+            if (logFile_.exists()) readFile(logFile_, restoredState, false);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            return null;
+        }
+
+        long snapshotAge = startTime - restoredState.timestamp_;
+
+        if ((maxAgeInMilliseconds >= 0) && (snapshotAge > maxAgeInMilliseconds)) {
+            logger.info("Routine=AlertStateSnapshot, Message=\"Snapshot is too old to restore\", SnapshotAge=" + snapshotAge + ", MaxAge=" + maxAgeInMilliseconds);
+            return null;
+        }
+
+        applyRestoredState(restoredState);
+
+        // if the files on disk are intact, new delta records can be appended to them. 
+        // otherwise, a new full snapshot is written (& the log is truncated), since delta records appended after an invalid record would never be read.
+        isFullSnapshotWritten_ = restoredState.isIntact_;
+        previousRecordTimestamp_ = restoredState.timestamp_;
+        previousWriteMetricHashKey_ = Long.MIN_VALUE;
+        writtenMetricKeysLastSeen_.clear();
+        writtenMetricKeysLastSeen_.putAll(GlobalVariables.metricKeysLastSeenTimestamp);
+        updateWatermarks(GlobalVariables.metricHashKeyGenerator.get());
+
+        logger.info("Routine=AlertStateSnapshot, Message=\"Restored alert state snapshot\", SnapshotAge=" + snapshotAge +
+                ", NumMetricKeysWithValues=" + restoredState.recentMetricTimestampsAndValuesByMetricKey_.size() +
+                ", NumMetricKeysLastSeen=" + restoredState.metricKeysLastSeen_.size() + ", Time=" + (System.currentTimeMillis() - startTime));
+
+        return restoredState.timestamp_;
+    }
+
+    /*
+    Returns the number of records that were read. Reading stops at the first record that is incomplete or fails its checksum.
+    A record's checksum is verified (by streaming through the record) before the record is read, so a record is never held in memory.
+    */
+    private static int readFile(File file, RestoredState restoredState, boolean isFullSnapshotFile) throws IOException {
+
+        int numRecordsRead = 0;
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            long fileLength = fileChannel.size();
+
+            if ((fileLength < FILE_HEADER_SIZE) || (randomAccessFile.readInt() != FILE_MAGIC) || (randomAccessFile.readByte() != FILE_VERSION)) {
+                logger.warn("Routine=AlertStateSnapshot, Message=\"Unrecognized file format\", File=\"" + file.getAbsolutePath() + "\"");
+                restoredState.isIntact_ = false;
+                return 0;
+            }
+
+            long recordPosition = FILE_HEADER_SIZE;
+
+            while (recordPosition < fileLength) {
+                if ((fileLength - recordPosition) < RECORD_HEADER_SIZE) {
+                    logger.warn("Routine=AlertStateSnapshot, Message=\"Incomplete record. Ignoring the remainder of the file.\", File=\"" + file.getAbsolutePath() + "\"");
+                    restoredState.isIntact_ = false;
+                    break;
+                }
+
+                randomAccessFile.seek(recordPosition);
+                long payloadLength = randomAccessFile.readLong();
+                long expectedCrc32 = randomAccessFile.readLong();
+                long payloadPosition = recordPosition + RECORD_HEADER_SIZE;
+
+                if ((payloadLength <= 0) || (payloadLength > (fileLength - payloadPosition))) {
+                    logger.warn("Routine=AlertStateSnapshot, Message=\"Incomplete or invalid record. Ignoring the remainder of the file.\", File=\"" + file.getAbsolutePath() + "\"");
+                    restoredState.isIntact_ = false;
+                    break;
+                }
+
+                if (getCrc32(fileChannel, payloadPosition, payloadLength) != expectedCrc32) {
+                    logger.warn("Routine=AlertStateSnapshot, Message=\"Record checksum mismatch. Ignoring the remainder of the file.\", File=\"" + file.getAbsolutePath() + "\"");
+                    restoredState.isIntact_ = false;
+                    break;
+                }
+
+                // the wrapping streams aren't closed, since closing them would close the file
+                fileChannel.position(payloadPosition);
+                DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(ByteStreams.limit(Channels.newInputStream(fileChannel), payloadLength), STREAM_BUFFER_SIZE));
+
+                boolean isRecordRead = readRecordPayload(dataInputStream, restoredState, isFullSnapshotFile);
+                if (isRecordRead) numRecordsRead++;
+
+                recordPosition = payloadPosition + payloadLength;
+                if (isFullSnapshotFile) break;
+            }
+        }
+
+        return numRecordsRead;
+    }
+
+    private static long getCrc32(FileChannel fileChannel, long position, long length) throws IOException {
+
+        CRC32 crc32 = new CRC32();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        long endPosition = position + length;
+
+        while (position < endPosition) {
+            byteBuffer.clear();
+            byteBuffer.limit((int) Math.min(byteBuffer.capacity(), endPosition - position));
+
+            int numBytesRead = fileChannel.read(byteBuffer, position);
+            if (numBytesRead < 0) break;
+
+            byteBuffer.flip();
+            crc32.update(byteBuffer);
+            position += numBytesRead;
+        }
+
+        return crc32.getValue();
+    }
+
+    private static boolean readRecordPayload(DataInputStream dataInputStream, RestoredState restoredState, boolean isFullSnapshotFile) throws IOException {
+
+        byte recordType = dataInputStream.readByte();
+        long timestamp = dataInputStream.readLong();
+        long metricHashKey = dataInputStream.readLong();
+
+        if (isFullSnapshotFile && (recordType != RECORD_TYPE_FULL)) return false;
+        if (!isFullSnapshotFile && (recordType != RECORD_TYPE_DELTA)) return false;
+
+        // a delta can be older than the full snapshot if the application stopped between writing a new full snapshot & truncating the log
+        if (!isFullSnapshotFile && (timestamp <= restoredState.timestamp_)) return false;
+
+        restoredState.timestamp_ = timestamp;
+        restoredState.metricHashKey_ = Math.max(restoredState.metricHashKey_, metricHashKey);
+
+        int numRemovedMetricKeys = dataInputStream.readInt();
+
+        for (int i = 0; i < numRemovedMetricKeys; i++) {
+            String removedMetricKey = readString(dataInputStream);
+            restoredState.recentMetricTimestampsAndValuesByMetricKey_.remove(removedMetricKey);
+            restoredState.metricHashKeysByMetricKey_.remove(removedMetricKey);
+            restoredState.metricKeysLastSeen_.remove(removedMetricKey);
+        }
+
+        while (dataInputStream.readBoolean()) {
+            String metricKey = readString(dataInputStream);
+            int numMetricTimestampsAndValues = dataInputStream.readInt();
+
+            List<MetricTimestampAndValue> metricTimestampsAndValues = restoredState.recentMetricTimestampsAndValuesByMetricKey_.get(metricKey);
+            Set<Long> metricHashKeys = restoredState.metricHashKeysByMetricKey_.get(metricKey);
+
+            if (metricTimestampsAndValues == null) {
+                metricTimestampsAndValues = new ArrayList<>(numMetricTimestampsAndValues);
+                metricHashKeys = new HashSet<>();
+                restoredState.recentMetricTimestampsAndValuesByMetricKey_.put(metricKey, metricTimestampsAndValues);
+                restoredState.metricHashKeysByMetricKey_.put(metricKey, metricHashKeys);
+            }
+
+            for (int j = 0; j < numMetricTimestampsAndValues; j++) {
+                long metricTimestamp = dataInputStream.readLong();
+                long metricReceivedHashKey = dataInputStream.readLong();
+                BigDecimal metricValue = readBigDecimal(dataInputStream);
+
+                // consecutive delta records overlap slightly, so duplicates are dropped here
+                if (metricHashKeys.add(metricReceivedHashKey)) {
+                    metricTimestampsAndValues.add(new MetricTimestampAndValue(metricTimestamp, metricValue, metricReceivedHashKey));
+                }
+
+                restoredState.metricHashKey_ = Math.max(restoredState.metricHashKey_, metricReceivedHashKey);
+            }
+        }
+
+        while (dataInputStream.readBoolean()) {
+            String metricKey = readString(dataInputStream);
+            Long current = readNullableLong(dataInputStream);
+            Long updateOnResend = readNullableLong(dataInputStream);
+            restoredState.metricKeysLastSeen_.put(metricKey, new MetricKeyLastSeen(current, updateOnResend));
+        }
+
+        restoredState.activeCautionAlertMetricKeysByAlertId_ = readMetricKeysByAlertId(dataInputStream);
+        restoredState.activeDangerAlertMetricKeysByAlertId_ = readMetricKeysByAlertId(dataInputStream);
+        restoredState.activeCautionAvailabilityAlerts_ = readMetricKeysByAlertId(dataInputStream);
+        restoredState.activeDangerAvailabilityAlerts_ = readMetricKeysByAlertId(dataInputStream);
+
+        return true;
+    }
+
+    private static void applyRestoredState(RestoredState restoredState) {
+
+        // new metric hash keys must not collide with restored ones
+        long currentMetricHashKey = GlobalVariables.metricHashKeyGenerator.get();
+        while ((currentMetricHashKey < restoredState.metricHashKey_) && !GlobalVariables.metricHashKeyGenerator.compareAndSet(currentMetricHashKey, restoredState.metricHashKey_)) {
+            currentMetricHashKey = GlobalVariables.metricHashKeyGenerator.get();
+        }
+
+        for (Map.Entry<String,List<MetricTimestampAndValue>> entry : restoredState.recentMetricTimestampsAndValuesByMetricKey_.entrySet()) {
+            RecentMetricTimestampsAndValues metricTimestampsAndValues;
+
+            synchronized (GlobalVariables.recentMetricTimestampsAndValuesByMetricKey) {
+                metricTimestampsAndValues = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(entry.getKey());
+
+                if (metricTimestampsAndValues == null) {
+                    metricTimestampsAndValues = new RecentMetricTimestampsAndValues();
+                    GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.put(entry.getKey(), metricTimestampsAndValues);
+                }
+            }
+
+            metricTimestampsAndValues.addAll(entry.getValue());
+        }
+
+        for (Map.Entry<String,MetricKeyLastSeen> entry : restoredState.metricKeysLastSeen_.entrySet()) {
+            MetricKeyLastSeen currentMetricKeyLastSeen = GlobalVariables.metricKeysLastSeenTimestamp.get(entry.getKey());
+            Long currentTimestamp = (currentMetricKeyLastSeen == null) ? null : currentMetricKeyLastSeen.getMetricKeyLastSeenTimestamp_Current();
+            Long restoredTimestamp = entry.getValue().getMetricKeyLastSeenTimestamp_Current();
+
+            if ((currentTimestamp == null) || ((restoredTimestamp != null) && (restoredTimestamp > currentTimestamp))) {
+                MetricKeyLastSeen previousMetricKeyLastSeen = GlobalVariables.metricKeysLastSeenTimestamp.put(entry.getKey(), entry.getValue());
+                GlobalVariables.metricKeyExpiryIndex.update(entry.getKey(), previousMetricKeyLastSeen, entry.getValue());
+                if (currentMetricKeyLastSeen == null) MetricAssociation.queueNewMetricKeyForAssociation(entry.getKey());
+            }
+        }
+
+        for (Map.Entry<Integer,Set<String>> entry : restoredState.activeCautionAlertMetricKeysByAlertId_.entrySet()) {
+            GlobalVariables.activeCautionAlertMetricKeysByAlertId.putIfAbsent(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+
+        for (Map.Entry<Integer,Set<String>> entry : restoredState.activeDangerAlertMetricKeysByAlertId_.entrySet()) {
+            GlobalVariables.activeDangerAlertMetricKeysByAlertId.putIfAbsent(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+
+        for (Map.Entry<Integer,Set<String>> entry : restoredState.activeCautionAvailabilityAlerts_.entrySet()) {
+            GlobalVariables.activeCautionAvailabilityAlerts.putIfAbsent(entry.getKey(), Collections.synchronizedSet(new HashSet<>(entry.getValue())));
+        }
+
+        for (Map.Entry<Integer,Set<String>> entry : restoredState.activeDangerAvailabilityAlerts_.entrySet()) {
+            GlobalVariables.activeDangerAvailabilityAlerts.putIfAbsent(entry.getKey(), Collections.synchronizedSet(new HashSet<>(entry.getValue())));
+        }
+    }
+
+    private static void writeMetricKeysByAlertId(DataOutputStream dataOutputStream, Map<Integer,? extends Collection<String>> metricKeysByAlertId) throws IOException {
+
+        Map<Integer,List<String>> metricKeysByAlertIdLocal = new HashMap<>();
+
+        for (Map.Entry<Integer,? extends Collection<String>> entry : metricKeysByAlertId.entrySet()) {
+            if ((entry.getKey() == null) || (entry.getValue() == null)) continue;
+
+            synchronized (entry.getValue()) {
+                metricKeysByAlertIdLocal.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+        }
+
+        dataOutputStream.writeInt(metricKeysByAlertIdLocal.size());
+
+        for (Map.Entry<Integer,List<String>> entry : metricKeysByAlertIdLocal.entrySet()) {
+            dataOutputStream.writeInt(entry.getKey());
+            dataOutputStream.writeInt(entry.getValue().size());
+            for (String metricKey : entry.getValue()) writeString(dataOutputStream, metricKey);
+        }
+    }
+
+    private static Map<Integer,Set<String>> readMetricKeysByAlertId(DataInputStream dataInputStream) throws IOException {
+
+        Map<Integer,Set<String>> metricKeysByAlertId = new HashMap<>();
+        int numAlertIds = dataInputStream.readInt();
+
+        for (int i = 0; i < numAlertIds; i++) {
+            int alertId = dataInputStream.readInt();
+            int numMetricKeys = dataInputStream.readInt();
+            Set<String> metricKeys = new HashSet<>();
+            for (int j = 0; j < numMetricKeys; j++) metricKeys.add(readString(dataInputStream));
+            metricKeysByAlertId.put(alertId, metricKeys);
+        }
+
+        return metricKeysByAlertId;
+    }
+
+    private static void writeString(DataOutputStream dataOutputStream, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        dataOutputStream.writeInt(bytes.length);
+        dataOutputStream.write(bytes);
+    }
+
+    private static String readString(DataInputStream dataInputStream) throws IOException {
+        int length = dataInputStream.readInt();
+        byte[] bytes = new byte[length];
+        dataInputStream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullableLong(DataOutputStream dataOutputStream, Long value) throws IOException {
+        dataOutputStream.writeBoolean(value != null);
+        if (value != null) dataOutputStream.writeLong(value);
+    }
+
+    private static Long readNullableLong(DataInputStream dataInputStream) throws IOException {
+        boolean isNotNull = dataInputStream.readBoolean();
+        return isNotNull ? dataInputStream.readLong() : null;
+    }
+
+    /*
+    Most metric values have an unscaled value that fits in a long, so those are written as {scale, long}. Anything bigger is written as {scale, byte[]}.
+    */
+    private static void writeBigDecimal(DataOutputStream dataOutputStream, BigDecimal value) throws IOException {
+        BigInteger unscaledValue = value.unscaledValue();
+        dataOutputStream.writeInt(value.scale());
+
+        if (unscaledValue.bitLength() < 64) {
+            dataOutputStream.writeByte(0);
+            dataOutputStream.writeLong(unscaledValue.longValue());
+        }
+        else {
+            byte[] bytes = unscaledValue.toByteArray();
+            dataOutputStream.writeByte(bytes.length);
+            dataOutputStream.write(bytes);
+        }
+    }
+
+    private static BigDecimal readBigDecimal(DataInputStream dataInputStream) throws IOException {
+        int scale = dataInputStream.readInt();
+        int numBytes = dataInputStream.readUnsignedByte();
+
+        if (numBytes == 0) {
+            return BigDecimal.valueOf(dataInputStream.readLong(), scale);
+        }
+        else {
+            byte[] bytes = new byte[numBytes];
+            dataInputStream.readFully(bytes);
+            return new BigDecimal(new BigInteger(bytes), scale);
+        }
+    }
+
+    public File getDirectory() {
+        return directory_;
+    }
+
+    private static class RestoredState {
+        private long timestamp_ = Long.MIN_VALUE;
+        private long metricHashKey_ = Long.MIN_VALUE;
+        private boolean isIntact_ = true;
+        private final Map<String,List<MetricTimestampAndValue>> recentMetricTimestampsAndValuesByMetricKey_ = new HashMap<>();
+        private final Map<String,Set<Long>> metricHashKeysByMetricKey_ = new HashMap<>();
+        private final Map<String,MetricKeyLastSeen> metricKeysLastSeen_ = new HashMap<>();
+        private Map<Integer,Set<String>> activeCautionAlertMetricKeysByAlertId_ = new HashMap<>();
+        private Map<Integer,Set<String>> activeDangerAlertMetricKeysByAlertId_ = new HashMap<>();
+        private Map<Integer,Set<String>> activeCautionAvailabilityAlerts_ = new HashMap<>();
+        private Map<Integer,Set<String>> activeDangerAvailabilityAlerts_ = new HashMap<>();
+    }
+
+}
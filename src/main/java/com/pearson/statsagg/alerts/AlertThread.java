@@ -29,14 +29,18 @@ import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbTag;
 import com.pearson.statsagg.utilities.MathUtilities;
 import com.pearson.statsagg.utilities.StackTrace;
 import com.pearson.statsagg.utilities.StringUtilities;
-import com.pearson.statsagg.utilities.Threads;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -68,6 +72,8 @@ public class AlertThread implements Runnable {
     protected final String threadId_;
     protected final String statsAggLocation_;
     protected final int numMetricAssociationThreads_;
+    protected final int numAlertEvaluationThreads_;
+    protected final int alertEvaluationTaskSize_;
     
     private final List<Alert> enabledAlerts_ = new ArrayList<>();
     private Map<Integer,Alert> alertsByAlertId_ = null;    
@@ -79,10 +85,6 @@ public class AlertThread implements Runnable {
     private final Map<Integer, Set<String>> activeCautionAvailabilityAlerts_ = new ConcurrentHashMap<>();
     private final Map<Integer, Set<String>> activeDangerAvailabilityAlerts_ = new ConcurrentHashMap<>();
     
-    private final AtomicLong activeCautionAlertMetricKeysByAlertId_Counter_ = new AtomicLong(0);
-    private final AtomicLong activeDangerAlertMetricKeysByAlertId_Counter_ = new AtomicLong(0);
-    private final AtomicLong activeCautionAlertMetricValues_Counter_ = new AtomicLong(0);
-    private final AtomicLong activeDangerAlertMetricValues_Counter_ = new AtomicLong(0);
     
     private Suspensions suspensions_ = null;
     
@@ -94,6 +96,11 @@ public class AlertThread implements Runnable {
         this.threadPoolExecutor_ = threadPoolExecutor;
         this.numMetricAssociationThreads_ = numMetricAssociationThreads;
         
+        int numAlertEvaluationThreads = ApplicationConfiguration.getAlertEvaluationThreads();
+        this.numAlertEvaluationThreads_ = (numAlertEvaluationThreads < 1) ? Math.max(1, Runtime.getRuntime().availableProcessors() - 1) : numAlertEvaluationThreads;
+        int alertEvaluationTaskSize = ApplicationConfiguration.getAlertEvaluationTaskSize();
+        this.alertEvaluationTaskSize_ = (alertEvaluationTaskSize < 1) ? 500 : alertEvaluationTaskSize;
+        
         this.threadId_ = "A-" + threadStartTimestampInMilliseconds_.toString();
         this.statsAggLocation_ = ApplicationConfiguration.getAlertStatsAggLocation();
     }
@@ -188,29 +195,31 @@ public class AlertThread implements Runnable {
         // removes all data about 'availability alert statuses' for alerts that were deleted
         removeDeletedActiveAvailabilityAlerts();
         
-        // if this is the first time running the alert routine, get enabled alerts that think they're already 'active' & put them in the 'pending' Sets
+        // if this is the first time running the alert routine, get enabled alerts that think they're already 'active' & put them in the 'pending' Sets.
+        // if an alert state snapshot was restored, the restored windows are only missing the downtime between the snapshot & the restart, 
+        // so alerts with windows that are longer than that gap don't need to wait for their windows to fill up again.
         if (alertRoutineExecutionCounter_.get() == 0) {
-            alertRecoveryRoutine_DeterminePendingAlerts(enabledAlerts_);
+            long alertStateSnapshotRestoredTimestamp = GlobalVariables.alertStateSnapshotRestoredTimestamp.get();
+            long alertStateSnapshotGap = (alertStateSnapshotRestoredTimestamp == 0) ? Long.MAX_VALUE : (GlobalVariables.statsaggStartTimestamp.longValue() - alertStateSnapshotRestoredTimestamp);
+            alertRecoveryRoutine_DeterminePendingAlerts(enabledAlerts_, alertStateSnapshotGap);
         }
         
         // gets a list of alerts that are both enabled & in a 'caution-active' state
         List<Alert> enabledAndActiveCautionAlerts = getActiveCautionAlerts(enabledAlerts_);
         for (Alert alert : enabledAndActiveCautionAlerts) {
             activeCautionAlertMetricKeysByAlertId_.put(alert.getId(), new ArrayList<>());
-            activeCautionAlertMetricKeysByAlertId_Counter_.incrementAndGet();
         }
         
         // gets a list of alerts that are both enabled & in a 'danger-active' state
         List<Alert> enabledAndActiveDangerAlerts = getActiveDangerAlerts(enabledAlerts_);
         for (Alert alert : enabledAndActiveDangerAlerts) {
             activeDangerAlertMetricKeysByAlertId_.put(alert.getId(), new ArrayList<>());
-            activeDangerAlertMetricKeysByAlertId_Counter_.incrementAndGet();
         }
         
         // the current list of metric-keys that are suspended via 'metric suspensions'
         Set<String> suspendedMetricKeys;
         synchronized (GlobalVariables.suspendedMetricKeys) {
-            suspendedMetricKeys = new HashSet<>(GlobalVariables.suspendedMetricKeys.keySet());
+            suspendedMetricKeys = MetricKeySet.getExistingMetricKeys(GlobalVariables.metricKeyDictionary, GlobalVariables.suspendedMetricKeys.keySet());
         }
         
         // for each enabled alert, run the alert routine (check alert criteria, send email, persist alert status).
@@ -255,9 +264,10 @@ public class AlertThread implements Runnable {
             SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbHttpOutputModules(alertStatusMetricsForOpenTsdb, threadId_);
         }       
 
-        if (SendMetricsToOutputModule_ThreadPoolManager.isAnyInfluxdbV1HttpOutputModuleEnabled()) {
+        if (SendMetricsToOutputModule_ThreadPoolManager.isAnyInfluxdbV1HttpOutputModuleEnabled() || SendMetricsToOutputModule_ThreadPoolManager.isAnyInfluxdbV2HttpOutputModuleEnabled()) {
             List<InfluxdbMetric_v1> alertStatusMetricsForInfluxdb = generateAlertStatusMetricsForInfluxdbV1(alerts);
             SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV1HttpOutputModules_Native(alertStatusMetricsForInfluxdb, threadId_);
+            SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV2HttpOutputModules_Native(alertStatusMetricsForInfluxdb, threadId_);
         }
         
     }
@@ -325,26 +335,39 @@ public class AlertThread implements Runnable {
     to update their status after certain criteria has been met.
     
     This stage of the 'Alert recovery routine' is only executed once per application launch, and its purpose is to identify alerts that were triggered before the application 
-    was (re)started.
+    was (re)started. 'alertStateSnapshotGap' is the time between the restored alert state snapshot & the application start (Long.MAX_VALUE if no snapshot was restored).
+    An alert isn't made to wait if its window is longer than that gap, since its restored window is only missing the downtime.
     */
-    private void alertRecoveryRoutine_DeterminePendingAlerts(List<Alert> alerts) {
+    private void alertRecoveryRoutine_DeterminePendingAlerts(List<Alert> alerts, long alertStateSnapshotGap) {
         
         if (alerts == null) {
             return;
         }
         
+        int numRestoredCautionAlerts = 0, numRestoredDangerAlerts = 0;
+        
         for (Alert alert : alerts) {
         
             if (alert.isCautionAlertActive()) {
-                pendingCautionAlertsByAlertId_.put(alert.getId(), alert);
+                if (isRestoredWindowUsable(alert.getCautionWindowDuration(), alertStateSnapshotGap)) numRestoredCautionAlerts++;
+                else pendingCautionAlertsByAlertId_.put(alert.getId(), alert);
             }
             
             if (alert.isDangerAlertActive()) {
-                pendingDangerAlertsByAlertId_.put(alert.getId(), alert);
+                if (isRestoredWindowUsable(alert.getDangerWindowDuration(), alertStateSnapshotGap)) numRestoredDangerAlerts++;
+                else pendingDangerAlertsByAlertId_.put(alert.getId(), alert);
             }
             
         }
         
+        if ((numRestoredCautionAlerts > 0) || (numRestoredDangerAlerts > 0)) {
+            logger.info("ThreadId=" + threadId_ + ", Routine=AlertRecovery, Message=\"Alert state snapshot was restored. Skipping the alert recovery routine for alerts with windows longer than the snapshot gap.\", " + 
+                    "SnapshotGap=" + alertStateSnapshotGap + ", NumCautionAlerts=" + numRestoredCautionAlerts + ", NumDangerAlerts=" + numRestoredDangerAlerts);
+        }
+    }
+    
+    public static boolean isRestoredWindowUsable(Long windowDuration, long alertStateSnapshotGap) {
+        return (windowDuration != null) && (alertStateSnapshotGap >= 0) && (alertStateSnapshotGap < windowDuration);
     }
     
     /*
@@ -384,7 +407,7 @@ public class AlertThread implements Runnable {
                 Alert alert = pendingCautionAlertsByAlertId_.get(alertId);
                 
                 if ((alert.getAlertType() != null) && 
-                        (alert.getAlertType() == Alert.TYPE_THRESHOLD) && 
+                        ((alert.getAlertType() == Alert.TYPE_THRESHOLD) || (alert.getAlertType() == Alert.TYPE_ANOMALY)) && 
                         activeCautionAlertMetricKeysByAlertId_.containsKey(alertId) && 
                         (activeCautionAlertMetricKeysByAlertId_.get(alertId) != null) && 
                         !activeCautionAlertMetricKeysByAlertId_.get(alertId).isEmpty()) {
@@ -463,73 +486,36 @@ public class AlertThread implements Runnable {
         
         synchronized(GlobalVariables.activeCautionAlertMetricKeysByAlertId) {
             GlobalVariables.activeCautionAlertMetricKeysByAlertId.clear();
-            while (GlobalVariables.activeCautionAlertMetricKeysByAlertId.size() > 0) Threads.sleepMilliseconds(1);
             GlobalVariables.activeCautionAlertMetricKeysByAlertId.putAll(activeCautionAlertMetricKeysByAlertId_);
-            while (GlobalVariables.activeCautionAlertMetricKeysByAlertId.size() != activeCautionAlertMetricKeysByAlertId_.size()) {
-                logger.warn("Message=\"activeCautionAlertMetricKeysByAlertId size mismatch\", Size=" + GlobalVariables.activeCautionAlertMetricKeysByAlertId.size() +
-                    ", Expected=" + activeCautionAlertMetricKeysByAlertId_.size());
-                Threads.sleepMilliseconds(10);
-            }
         }
         
         synchronized(GlobalVariables.activeDangerAlertMetricKeysByAlertId) {
             GlobalVariables.activeDangerAlertMetricKeysByAlertId.clear();
-            while (GlobalVariables.activeDangerAlertMetricKeysByAlertId.size() > 0) Threads.sleepMilliseconds(1);
             GlobalVariables.activeDangerAlertMetricKeysByAlertId.putAll(activeDangerAlertMetricKeysByAlertId_);
-            while (GlobalVariables.activeDangerAlertMetricKeysByAlertId.size() != activeDangerAlertMetricKeysByAlertId_.size()) {
-                logger.warn("Message=\"activeDangerAlertMetricKeysByAlertId size mismatch\", Size=" + GlobalVariables.activeDangerAlertMetricKeysByAlertId.size() +
-                    ", Expected=" + activeDangerAlertMetricKeysByAlertId_.size());
-                Threads.sleepMilliseconds(10);
-            }
         }
         
         synchronized(GlobalVariables.activeCautionAlertMetricValues) {
             GlobalVariables.activeCautionAlertMetricValues.clear();
-            while (GlobalVariables.activeCautionAlertMetricValues.size() > 0) Threads.sleepMilliseconds(1);
             GlobalVariables.activeCautionAlertMetricValues.putAll(activeCautionAlertMetricValues_);
-            while (GlobalVariables.activeCautionAlertMetricValues.size() != activeCautionAlertMetricValues_.size()) {
-                logger.warn("Message=\"activeCautionAlertMetricValues size mismatch\", Size=" + GlobalVariables.activeCautionAlertMetricValues.size() + 
-                    ", Expected=" + activeCautionAlertMetricValues_.size());
-                Threads.sleepMilliseconds(10);
-            }
         }
         
         synchronized(GlobalVariables.activeDangerAlertMetricValues) {
             GlobalVariables.activeDangerAlertMetricValues.clear();
-            while (GlobalVariables.activeDangerAlertMetricValues.size() > 0) Threads.sleepMilliseconds(1);
             GlobalVariables.activeDangerAlertMetricValues.putAll(activeDangerAlertMetricValues_);
-            while (GlobalVariables.activeDangerAlertMetricValues.size() != activeDangerAlertMetricValues_.size()) {
-                logger.warn("Message=\"activeDangerAlertMetricValues size mismatch\", Size=" + GlobalVariables.activeDangerAlertMetricValues.size() +
-                    ", Expected=" + activeDangerAlertMetricValues_.size());
-                Threads.sleepMilliseconds(10);
-            }
         }
         
         synchronized(GlobalVariables.pendingCautionAlertsByAlertId) {
             GlobalVariables.pendingCautionAlertsByAlertId.clear();
-            while (GlobalVariables.pendingCautionAlertsByAlertId.size() > 0) Threads.sleepMilliseconds(1);
             GlobalVariables.pendingCautionAlertsByAlertId.putAll(pendingCautionAlertsByAlertId_);
-            while (GlobalVariables.pendingCautionAlertsByAlertId.size() != pendingCautionAlertsByAlertId_.size()) {
-                logger.warn("Message=\"pendingCautionAlertsByAlertId size mismatch\", Size=" + GlobalVariables.pendingCautionAlertsByAlertId.size() +
-                    ", Expected=" + pendingCautionAlertsByAlertId_.size());
-                Threads.sleepMilliseconds(10);
-            }
         }
         
         synchronized(GlobalVariables.pendingDangerAlertsByAlertId) {
             GlobalVariables.pendingDangerAlertsByAlertId.clear();
-            while (GlobalVariables.pendingDangerAlertsByAlertId.size() > 0) Threads.sleepMilliseconds(1);
             GlobalVariables.pendingDangerAlertsByAlertId.putAll(pendingDangerAlertsByAlertId_);
-            while (GlobalVariables.pendingDangerAlertsByAlertId.size() != pendingDangerAlertsByAlertId_.size()) {
-                logger.warn("Message=\"pendingDangerAlertsByAlertId size mismatch\", Size=" + GlobalVariables.pendingDangerAlertsByAlertId.size() +
-                    ", Expected=" + pendingDangerAlertsByAlertId_.size());
-                Threads.sleepMilliseconds(10);
-            }
         }
 
         synchronized(GlobalVariables.activeCautionAvailabilityAlerts) {
             GlobalVariables.activeCautionAvailabilityAlerts.clear();
-            while (GlobalVariables.activeCautionAvailabilityAlerts.size() > 0) Threads.sleepMilliseconds(1);
             
             if (activeCautionAvailabilityAlerts_ != null) {
                 for (Integer alertId : activeCautionAvailabilityAlerts_.keySet()) {
@@ -541,7 +527,6 @@ public class AlertThread implements Runnable {
             
         synchronized(GlobalVariables.activeDangerAvailabilityAlerts) {
             GlobalVariables.activeDangerAvailabilityAlerts.clear();
-            while (GlobalVariables.activeDangerAvailabilityAlerts.size() > 0) Threads.sleepMilliseconds(1);
             
             if (activeDangerAvailabilityAlerts_ != null) {
                 for (Integer alertId : activeDangerAvailabilityAlerts_.keySet()) {
@@ -553,7 +538,6 @@ public class AlertThread implements Runnable {
         
         synchronized(GlobalVariables.activeAvailabilityAlerts) {
             GlobalVariables.activeAvailabilityAlerts.clear();
-            while (GlobalVariables.activeAvailabilityAlerts.size() > 0) Threads.sleepMilliseconds(1);
             
             for (Integer alertId : activeCautionAvailabilityAlerts_.keySet()) {
                 Set<String> activeCautionAvailabilityMetricKeys = activeCautionAvailabilityAlerts_.get(alertId);
@@ -579,18 +563,235 @@ public class AlertThread implements Runnable {
             return;
         }
 
-        Map<Integer,List<Alert>> alertsByCpuCore = AlertThread.separateAlertsByCpuCore(alerts);
-
-        List<Thread> determineAlertStatusThreads = new ArrayList<>();
-        for (List<Alert> alertsSingleCore : alertsByCpuCore.values()) {
-            Thread determineAlertStatus_Thread = new Thread(new determineAlertStatus_Thread(alertsSingleCore, suspendedMetricKeys, this));
-            determineAlertStatus_Thread.setPriority(3);
-            determineAlertStatusThreads.add(determineAlertStatus_Thread);
+        // alerts that target the same metric group share the same metric-keys (and often the same windows), so they are evaluated together
+        AlertEvaluationPlan alertEvaluationPlan = new AlertEvaluationPlan(alerts);
+        logger.debug("ThreadId=" + threadId_ + ", Routine=Alert, AlertCount=" + alertEvaluationPlan.getAlertCount() + ", MetricGroupCount=" + alertEvaluationPlan.getMetricGroupCount());
+        
+        Map<Integer,determineAlertStatus_Task> determineAlertStatusTasksByMetricGroupId = new HashMap<>();
+        for (Integer metricGroupId : alertEvaluationPlan.getMetricGroupIds()) {
+            determineAlertStatusTasksByMetricGroupId.put(metricGroupId, new determineAlertStatus_Task(metricGroupId, alertEvaluationPlan, suspendedMetricKeys, this));
+        }
+        
+        // every (metric group, metric-key range) task is executed on a work-stealing pool, so idle threads will pick up work from threads that are evaluating large alerts
+        ForkJoinPool forkJoinPool = new ForkJoinPool(numAlertEvaluationThreads_, pool -> {
+            ForkJoinWorkerThread forkJoinWorkerThread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            forkJoinWorkerThread.setPriority(3);
+            return forkJoinWorkerThread;
+        }, null, false);
+        
+        try {
+            ForkJoinTask<?> determineAlertStatusRootTask = forkJoinPool.submit(() -> ForkJoinTask.invokeAll(determineAlertStatusTasksByMetricGroupId.values()));
+            determineAlertStatusRootTask.get(threadTimeoutInMilliseconds, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            logger.warn("ThreadId=" + threadId_ + ", Routine=Alert, Message=\"Alert evaluation did not complete within " + threadTimeoutInMilliseconds + "ms\"");
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        finally {
+            forkJoinPool.shutdownNow();
         }
 
-        Threads.threadExecutorFixedPool(determineAlertStatusThreads, alertsByCpuCore.size(), threadTimeoutInMilliseconds, TimeUnit.MILLISECONDS);
-
-        waitForConcurrentHashMapsToSettle();
+        // the global variables still hold the outcome of the previous alert routine execution -- they're only updated at the end of this one
+        Map<Integer,List<String>> previousActiveCautionAlertMetricKeysByAlertId, previousActiveDangerAlertMetricKeysByAlertId;
+        Map<String,BigDecimal> previousActiveCautionAlertMetricValues, previousActiveDangerAlertMetricValues;
+        synchronized(GlobalVariables.activeCautionAlertMetricKeysByAlertId) {
+            previousActiveCautionAlertMetricKeysByAlertId = new HashMap<>(GlobalVariables.activeCautionAlertMetricKeysByAlertId);
+        }
+        synchronized(GlobalVariables.activeDangerAlertMetricKeysByAlertId) {
+            previousActiveDangerAlertMetricKeysByAlertId = new HashMap<>(GlobalVariables.activeDangerAlertMetricKeysByAlertId);
+        }
+        synchronized(GlobalVariables.activeCautionAlertMetricValues) {
+            previousActiveCautionAlertMetricValues = new HashMap<>(GlobalVariables.activeCautionAlertMetricValues);
+        }
+        synchronized(GlobalVariables.activeDangerAlertMetricValues) {
+            previousActiveDangerAlertMetricValues = new HashMap<>(GlobalVariables.activeDangerAlertMetricValues);
+        }
+        
+        AlertEvaluationResult alertEvaluationResult = mergeAlertEvaluationResults(determineAlertStatusTasksByMetricGroupId, alertEvaluationPlan, 
+                previousActiveCautionAlertMetricKeysByAlertId, previousActiveCautionAlertMetricValues, previousActiveDangerAlertMetricKeysByAlertId, previousActiveDangerAlertMetricValues);
+        applyAlertEvaluationResult(alertEvaluationResult);
+        updateAlertEvaluationTimes(alertEvaluationResult.getAlertEvaluationTimeInNanosecondsByAlertId());
+    }
+    
+    /*
+    Merges the results of the alert evaluation tasks. Only the results of tasks that have completed normally are used -- a task's result is published when the task completes, 
+    so no further waiting is needed.
+    If a metric group's task timed out or threw an exception, the alerts that target that metric group weren't evaluated. Rather than treating those alerts as having no 
+    active metric-keys (which would make them look recovered), the active metric-keys & values from the previous alert routine execution are carried forward. 
+    Active availability metric-keys don't need to be carried forward; they are only ever changed by evaluation results, so an alert that wasn't evaluated keeps its existing set.
+    */
+    public static AlertEvaluationResult mergeAlertEvaluationResults(Map<Integer,? extends ForkJoinTask<AlertEvaluationResult>> alertEvaluationTasksByMetricGroupId, 
+            AlertEvaluationPlan alertEvaluationPlan, 
+            Map<Integer,List<String>> previousActiveCautionAlertMetricKeysByAlertId, Map<String,BigDecimal> previousActiveCautionAlertMetricValues,
+            Map<Integer,List<String>> previousActiveDangerAlertMetricKeysByAlertId, Map<String,BigDecimal> previousActiveDangerAlertMetricValues) {
+        
+        if ((alertEvaluationTasksByMetricGroupId == null) || (alertEvaluationPlan == null)) {
+            return AlertEvaluationResult.EMPTY;
+        }
+        
+        List<AlertEvaluationResult> alertEvaluationResults = new ArrayList<>();
+        AlertEvaluationResult.Collector carriedForwardCollector = new AlertEvaluationResult.Collector();
+        
+        for (Map.Entry<Integer,? extends ForkJoinTask<AlertEvaluationResult>> entry : alertEvaluationTasksByMetricGroupId.entrySet()) {
+            ForkJoinTask<AlertEvaluationResult> alertEvaluationTask = entry.getValue();
+            
+            if ((alertEvaluationTask != null) && alertEvaluationTask.isDone() && !alertEvaluationTask.isCompletedAbnormally()) {
+                alertEvaluationResults.add(alertEvaluationTask.getRawResult());
+                continue;
+            }
+            
+            logger.warn("MetricGroupId=" + entry.getKey() + ", Routine=Alert, Message=\"Alert evaluation did not complete. Using the previous alert statuses.\"");
+            
+            for (Alert alert : alertEvaluationPlan.getAlerts(entry.getKey())) {
+                if ((alert == null) || (alert.getId() == null)) continue;
+                
+                List<String> previousActiveCautionAlertMetricKeys = (previousActiveCautionAlertMetricKeysByAlertId == null) ? null : previousActiveCautionAlertMetricKeysByAlertId.get(alert.getId());
+                if (previousActiveCautionAlertMetricKeys != null) {
+                    for (String metricKey : previousActiveCautionAlertMetricKeys) {
+                        BigDecimal metricValue = (previousActiveCautionAlertMetricValues == null) ? null : previousActiveCautionAlertMetricValues.get(metricKey + "-" + alert.getId());
+                        carriedForwardCollector.addActiveCautionAlertMetric(alert.getId(), metricKey, metricValue);
+                    }
+                }
+                
+                List<String> previousActiveDangerAlertMetricKeys = (previousActiveDangerAlertMetricKeysByAlertId == null) ? null : previousActiveDangerAlertMetricKeysByAlertId.get(alert.getId());
+                if (previousActiveDangerAlertMetricKeys != null) {
+                    for (String metricKey : previousActiveDangerAlertMetricKeys) {
+                        BigDecimal metricValue = (previousActiveDangerAlertMetricValues == null) ? null : previousActiveDangerAlertMetricValues.get(metricKey + "-" + alert.getId());
+                        carriedForwardCollector.addActiveDangerAlertMetric(alert.getId(), metricKey, metricValue);
+                    }
+                }
+            }
+        }
+        
+        alertEvaluationResults.add(carriedForwardCollector.toAlertEvaluationResult());
+        
+        return AlertEvaluationResult.merge(alertEvaluationResults);
+    }
+    
+    /*
+    Copies the merged outcome of all the alert evaluation tasks into this alert thread's state. 
+    This runs on the alert thread after all the evaluation tasks have finished, so none of this state is modified concurrently.
+    */
+    private void applyAlertEvaluationResult(AlertEvaluationResult alertEvaluationResult) {
+        
+        if (alertEvaluationResult == null) {
+            return;
+        }
+        
+        for (Map.Entry<Integer,List<String>> entry : alertEvaluationResult.getActiveCautionAlertMetricKeysByAlertId().entrySet()) {
+            List<String> activeCautionAlertMetricKeys = activeCautionAlertMetricKeysByAlertId_.get(entry.getKey());
+            if (activeCautionAlertMetricKeys == null) activeCautionAlertMetricKeysByAlertId_.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            else activeCautionAlertMetricKeys.addAll(entry.getValue());
+        }
+        
+        for (Map.Entry<Integer,List<String>> entry : alertEvaluationResult.getActiveDangerAlertMetricKeysByAlertId().entrySet()) {
+            List<String> activeDangerAlertMetricKeys = activeDangerAlertMetricKeysByAlertId_.get(entry.getKey());
+            if (activeDangerAlertMetricKeys == null) activeDangerAlertMetricKeysByAlertId_.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            else activeDangerAlertMetricKeys.addAll(entry.getValue());
+        }
+        
+        activeCautionAlertMetricValues_.putAll(alertEvaluationResult.getActiveCautionAlertMetricValues());
+        activeDangerAlertMetricValues_.putAll(alertEvaluationResult.getActiveDangerAlertMetricValues());
+        
+        for (Map.Entry<Integer,Set<String>> entry : alertEvaluationResult.getActiveCautionAvailabilityMetricKeysToRemove().entrySet()) {
+            Set<String> activeCautionAvailabilityMetricKeys = activeCautionAvailabilityAlerts_.get(entry.getKey());
+            if (activeCautionAvailabilityMetricKeys != null) activeCautionAvailabilityMetricKeys.removeAll(entry.getValue());
+        }
+        
+        for (Map.Entry<Integer,Set<String>> entry : alertEvaluationResult.getActiveDangerAvailabilityMetricKeysToRemove().entrySet()) {
+            Set<String> activeDangerAvailabilityMetricKeys = activeDangerAvailabilityAlerts_.get(entry.getKey());
+            if (activeDangerAvailabilityMetricKeys != null) activeDangerAvailabilityMetricKeys.removeAll(entry.getValue());
+        }
+        
+        for (Map.Entry<Integer,Set<String>> entry : alertEvaluationResult.getActiveCautionAvailabilityMetricKeysToAdd().entrySet()) {
+            Set<String> activeCautionAvailabilityMetricKeys = activeCautionAvailabilityAlerts_.get(entry.getKey());
+            
+            if (activeCautionAvailabilityMetricKeys == null) {
+                activeCautionAvailabilityMetricKeys = Collections.synchronizedSet(new HashSet<String>());
+                activeCautionAvailabilityAlerts_.put(entry.getKey(), activeCautionAvailabilityMetricKeys);
+            }
+            
+            activeCautionAvailabilityMetricKeys.addAll(entry.getValue());
+        }
+        
+        for (Map.Entry<Integer,Set<String>> entry : alertEvaluationResult.getActiveDangerAvailabilityMetricKeysToAdd().entrySet()) {
+            Set<String> activeDangerAvailabilityMetricKeys = activeDangerAvailabilityAlerts_.get(entry.getKey());
+            
+            if (activeDangerAvailabilityMetricKeys == null) {
+                activeDangerAvailabilityMetricKeys = Collections.synchronizedSet(new HashSet<String>());
+                activeDangerAvailabilityAlerts_.put(entry.getKey(), activeDangerAvailabilityMetricKeys);
+            }
+            
+            activeDangerAvailabilityMetricKeys.addAll(entry.getValue());
+        }
+        
+        for (Map.Entry<Integer,Map<String,String>> entry : alertEvaluationResult.getPositiveAlertReasons_Caution_ByAlertId().entrySet()) {
+            positiveAlertReasons_Caution_ByAlertId_.putIfAbsent(entry.getKey(), new ConcurrentHashMap<>());
+            positiveAlertReasons_Caution_ByAlertId_.get(entry.getKey()).putAll(entry.getValue());
+        }
+        
+        for (Map.Entry<Integer,Map<String,String>> entry : alertEvaluationResult.getPositiveAlertReasons_Danger_ByAlertId().entrySet()) {
+            positiveAlertReasons_Danger_ByAlertId_.putIfAbsent(entry.getKey(), new ConcurrentHashMap<>());
+            positiveAlertReasons_Danger_ByAlertId_.get(entry.getKey()).putAll(entry.getValue());
+        }
+    }
+    
+    /*
+    Splits a list of metric-keys into contiguous ranges of (at most) 'maxRangeSize' metric-keys. 
+    Each int[] is {startIndex (inclusive), endIndex (exclusive)}.
+    */
+    public static List<int[]> getMetricKeyRanges(int numMetricKeys, int maxRangeSize) {
+        
+        List<int[]> metricKeyRanges = new ArrayList<>();
+        
+        if (numMetricKeys <= 0) {
+            return metricKeyRanges;
+        }
+        
+        int rangeSize = (maxRangeSize < 1) ? 1 : maxRangeSize;
+        
+        for (int startIndex = 0; startIndex < numMetricKeys; startIndex += rangeSize) {
+            int endIndex = Math.min(startIndex + rangeSize, numMetricKeys);
+            metricKeyRanges.add(new int[] {startIndex, endIndex});
+        }
+        
+        return metricKeyRanges;
+    }
+    
+    /*
+    Publishes how long each alert took to evaluate, and logs the slowest alert of this alert routine execution.
+    */
+    private void updateAlertEvaluationTimes(Map<Integer,Long> alertEvaluationTimeInNanosecondsByAlertId) {
+        
+        if (alertEvaluationTimeInNanosecondsByAlertId == null) {
+            return;
+        }
+        
+        Integer slowestAlertId = null;
+        long slowestAlertTimeInMs = -1;
+        
+        Map<Integer,Long> alertEvaluationTimeByAlertId = new HashMap<>();
+        
+        for (Map.Entry<Integer,Long> entry : alertEvaluationTimeInNanosecondsByAlertId.entrySet()) {
+            long alertEvaluationTimeInMs = TimeUnit.NANOSECONDS.toMillis(entry.getValue());
+            alertEvaluationTimeByAlertId.put(entry.getKey(), alertEvaluationTimeInMs);
+            
+            if (alertEvaluationTimeInMs > slowestAlertTimeInMs) {
+                slowestAlertTimeInMs = alertEvaluationTimeInMs;
+                slowestAlertId = entry.getKey();
+            }
+        }
+        
+        GlobalVariables.alertEvaluationTimeByAlertId.keySet().retainAll(alertEvaluationTimeByAlertId.keySet());
+        GlobalVariables.alertEvaluationTimeByAlertId.putAll(alertEvaluationTimeByAlertId);
+        
+        if ((slowestAlertId != null) && logger.isDebugEnabled()) {
+            Alert slowestAlert = (alertsByAlertId_ != null) ? alertsByAlertId_.get(slowestAlertId) : null;
+            String slowestAlertName = (slowestAlert != null) ? StringUtilities.removeNewlinesFromString(slowestAlert.getName(), ' ') : "";
+            logger.debug("ThreadId=" + threadId_ + ", Routine=Alert, SlowestAlertId=" + slowestAlertId + ", SlowestAlertName=\"" + slowestAlertName + "\", SlowestAlertTime=" + slowestAlertTimeInMs);
+        }
     }
 
     public Set<String> getMetricKeysAssociatedWithActiveAvailabilityAlerts() {
@@ -679,82 +880,240 @@ public class AlertThread implements Runnable {
         metricLastSeenDao.close();
     }
     
-    private void waitForConcurrentHashMapsToSettle() {
-        while (activeCautionAlertMetricKeysByAlertId_.size() != activeCautionAlertMetricKeysByAlertId_Counter_.intValue()) {
-            logger.warn("Message=\"activeCautionAlertMetricKeysByAlertId size mismatch\", Size=" + activeCautionAlertMetricKeysByAlertId_.size() +
-                    ", Expected=" + activeCautionAlertMetricKeysByAlertId_Counter_.intValue());
-            Threads.sleepMilliseconds(10);
-        }
-        
-        while (activeDangerAlertMetricKeysByAlertId_.size() != activeDangerAlertMetricKeysByAlertId_Counter_.intValue()) {
-            logger.warn("Message=\"activeDangerAlertMetricKeysByAlertId size mismatch\", Size=" + activeDangerAlertMetricKeysByAlertId_.size() + 
-                    ", Expected=" + activeDangerAlertMetricKeysByAlertId_Counter_.intValue());
-            Threads.sleepMilliseconds(10);
-        }
+    /*
+    Looks up the metric-keys that are associated with a metric group, and splits them into (metric group, metric-key range) tasks.
+    */
+    private static class determineAlertStatus_Task extends RecursiveTask<AlertEvaluationResult> {
+  
+        private final Integer metricGroupId__;
+        private final AlertEvaluationPlan alertEvaluationPlan__;
+        private final Set<String> suspendedMetricKeys__;
+        private final AlertThread alertThread__;
         
-        while (activeCautionAlertMetricValues_.size() != activeCautionAlertMetricValues_Counter_.intValue()) {
-            logger.warn("Message=\"activeCautionAlertMetricValues size mismatch\", Size=" + activeCautionAlertMetricValues_.size() +
-                    ", Expected=" + activeCautionAlertMetricValues_Counter_.intValue());
-            Threads.sleepMilliseconds(10);
+        public determineAlertStatus_Task(Integer metricGroupId, AlertEvaluationPlan alertEvaluationPlan, Set<String> suspendedMetricKeys, AlertThread alertThread) {
+            this.metricGroupId__ = metricGroupId;
+            this.alertEvaluationPlan__ = alertEvaluationPlan;
+            this.suspendedMetricKeys__ = suspendedMetricKeys;
+            this.alertThread__ = alertThread;
         }
         
-        while (activeDangerAlertMetricValues_.size() != activeDangerAlertMetricValues_Counter_.intValue()) {
-            logger.warn("Message=\"activeDangerAlertMetricValues size mismatch\", Size=" + activeDangerAlertMetricValues_.size() +
-                    ", Expected=" + activeDangerAlertMetricValues_Counter_.intValue());
-            Threads.sleepMilliseconds(10);
+        @Override
+        protected AlertEvaluationResult compute() {
+  
+            if ((alertThread__ == null) || (metricGroupId__ == null) || (alertEvaluationPlan__ == null)) {
+                return AlertEvaluationResult.EMPTY;
+            }
+            
+            List<Alert> alerts = alertEvaluationPlan__.getAlerts(metricGroupId__);
+            
+            long startTime = System.nanoTime();
+            List<String> metricKeysAssociatedWithMetricGroup = MetricAssociation.getMetricKeysAssociatedWithMetricGroup(metricGroupId__, suspendedMetricKeys__);
+            
+            AlertEvaluationResult.Collector metricKeyLookupCollector = new AlertEvaluationResult.Collector();
+            addSharedAlertEvaluationTime(metricKeyLookupCollector, alerts, System.nanoTime() - startTime);
+            
+            List<AlertEvaluationResult> alertEvaluationResults = new ArrayList<>();
+            alertEvaluationResults.add(metricKeyLookupCollector.toAlertEvaluationResult());
+            
+            if ((metricKeysAssociatedWithMetricGroup == null) || metricKeysAssociatedWithMetricGroup.isEmpty()) {
+                return AlertEvaluationResult.merge(alertEvaluationResults);
+            }
+            
+            List<int[]> metricKeyRanges = getMetricKeyRanges(metricKeysAssociatedWithMetricGroup.size(), alertThread__.alertEvaluationTaskSize_);
+            
+            if (metricKeyRanges.size() == 1) {
+                alertEvaluationResults.add(new determineAlertStatus_MetricKeyRangeTask(metricGroupId__, alertEvaluationPlan__, metricKeysAssociatedWithMetricGroup, 
+                        0, metricKeysAssociatedWithMetricGroup.size(), alertThread__).compute());
+            }
+            else {
+                List<determineAlertStatus_MetricKeyRangeTask> metricKeyRangeTasks = new ArrayList<>();
+                
+                for (int[] metricKeyRange : metricKeyRanges) {
+                    metricKeyRangeTasks.add(new determineAlertStatus_MetricKeyRangeTask(metricGroupId__, alertEvaluationPlan__, metricKeysAssociatedWithMetricGroup, 
+                            metricKeyRange[0], metricKeyRange[1], alertThread__));
+                }
+                
+                for (determineAlertStatus_MetricKeyRangeTask metricKeyRangeTask : invokeAll(metricKeyRangeTasks)) {
+                    alertEvaluationResults.add(metricKeyRangeTask.join());
+                }
+            }
+            
+            return AlertEvaluationResult.merge(alertEvaluationResults);
         }
     }
     
-    private static class determineAlertStatus_Thread implements Runnable {
+    /*
+    Evaluates the criteria of every alert that targets a metric group against a range of the metric group's metric-keys.
+    Each metric-key's recent values are copied & sorted once, and each distinct window is extracted once -- regardless of how many alerts use it.
+    */
+    private static class determineAlertStatus_MetricKeyRangeTask extends RecursiveTask<AlertEvaluationResult> {
   
-        private final List<Alert> alerts__;
-        private final Set<String> suspendedMetricKeys__;
+        private final Integer metricGroupId__;
+        private final AlertEvaluationPlan alertEvaluationPlan__;
+        private final List<String> metricKeys__;
+        private final int startIndex__;
+        private final int endIndex__;
         private final AlertThread alertThread__;
         
-        public determineAlertStatus_Thread(List<Alert> alerts, Set<String> suspendedMetricKeys, AlertThread alertThread) {
-            this.alerts__ = alerts;
-            this.suspendedMetricKeys__ = suspendedMetricKeys;
+        public determineAlertStatus_MetricKeyRangeTask(Integer metricGroupId, AlertEvaluationPlan alertEvaluationPlan, List<String> metricKeys, 
+                int startIndex, int endIndex, AlertThread alertThread) {
+            this.metricGroupId__ = metricGroupId;
+            this.alertEvaluationPlan__ = alertEvaluationPlan;
+            this.metricKeys__ = metricKeys;
+            this.startIndex__ = startIndex;
+            this.endIndex__ = endIndex;
             this.alertThread__ = alertThread;
         }
         
         @Override
-        public void run() {
+        protected AlertEvaluationResult compute() {
   
-            if ((alertThread__ == null) || (alerts__ == null) || alerts__.isEmpty()) {
-                return;
+            if ((alertThread__ == null) || (alertEvaluationPlan__ == null) || (metricKeys__ == null)) {
+                return AlertEvaluationResult.EMPTY;
             }
             
-            for (Alert alert : alerts__) {
-                boolean isCautionAlertCriteriaValid = alert.isCautionAlertCriteriaValid();
-                boolean isDangerAlertCriteriaValid = alert.isDangerAlertCriteriaValid();
+            AlertEvaluationResult.Collector alertEvaluationResultCollector = new AlertEvaluationResult.Collector();
+            
+            List<Alert> alerts = alertEvaluationPlan__.getAlerts(metricGroupId__);
+            List<Long> windowDurations = alertEvaluationPlan__.getWindowDurations(metricGroupId__);
+            List<Long> anomalySmoothingWindows = alertEvaluationPlan__.getAnomalySmoothingWindows(metricGroupId__);
+            
+            int numAlerts = alerts.size();
+            boolean[] isCautionEvaluated = new boolean[numAlerts], isDangerEvaluated = new boolean[numAlerts];
+            long[] alertEvaluationTimes = new long[numAlerts];
+            for (int j = 0; j < numAlerts; j++) {
+                isCautionEvaluated[j] = AlertEvaluationPlan.isCautionEvaluated(alerts.get(j));
+                isDangerEvaluated[j] = AlertEvaluationPlan.isDangerEvaluated(alerts.get(j));
+            }
+            
+            long sharedEvaluationTime = 0;
+            Map<Long,List<MetricTimestampAndValue>> metricTimestampsAndValuesByWindowDuration = new HashMap<>();
+
+            for (int i = startIndex__; i < endIndex__; i++) {
+                long sharedStartTime = System.nanoTime();
                 
-                List<String> metricKeysAssociatedWithAlert = MetricAssociation.getMetricKeysAssociatedWithAlert(alert, suspendedMetricKeys__);
+                String metricKey = metricKeys__.get(i);
+                metricTimestampsAndValuesByWindowDuration.clear();
                 
-                for (String metricKey : metricKeysAssociatedWithAlert) {
+                if (!windowDurations.isEmpty()) {
                     List<MetricTimestampAndValue> recentMetricTimestampsAndValues = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(metricKey);
-                    List<MetricTimestampAndValue> recentMetricTimestampsAndValuesLocal = null;
 
                     if (recentMetricTimestampsAndValues != null) {
+                        List<MetricTimestampAndValue> recentMetricTimestampsAndValuesLocal;
+                        
                         synchronized(recentMetricTimestampsAndValues) {
                             recentMetricTimestampsAndValuesLocal = new ArrayList<>(recentMetricTimestampsAndValues);
                         }
-                        
+
                         Collections.sort(recentMetricTimestampsAndValuesLocal, MetricTimestampAndValue.COMPARE_BY_TIMESTAMP);
+                        
+                        for (Long windowDuration : windowDurations) {
+                            List<MetricTimestampAndValue> metricTimestampsAndValuesInWindow = getMetricTimestampsAndValuesInWindow(alertThread__.threadStartTimestampInMilliseconds_, 
+                                    recentMetricTimestampsAndValuesLocal, windowDuration);
+                            metricTimestampsAndValuesByWindowDuration.put(windowDuration, metricTimestampsAndValuesInWindow);
+                        }
                     }
+                }
+                
+                if (!anomalySmoothingWindows.isEmpty()) {
+                    registerAnomalyDetectionState(metricKey, anomalySmoothingWindows);
+                }
+                
+                sharedEvaluationTime += System.nanoTime() - sharedStartTime;
+
+                for (int j = 0; j < numAlerts; j++) {
+                    if (!isCautionEvaluated[j] && !isDangerEvaluated[j]) continue;
+                    
+                    long alertStartTime = System.nanoTime();
+                    Alert alert = alerts.get(j);
+                    
+                    if (isCautionEvaluated[j]) {
+                        determineAlertStatus_Caution(alert, alertThread__, metricTimestampsAndValuesByWindowDuration, metricKey, alertEvaluationResultCollector);
+                    }
+
+                    if (isDangerEvaluated[j]) {
+                        determineAlertStatus_Danger(alert, alertThread__, metricTimestampsAndValuesByWindowDuration, metricKey, alertEvaluationResultCollector);
+                    }
+                    
+                    alertEvaluationTimes[j] += System.nanoTime() - alertStartTime;
+                }
+            }
+            
+            for (int j = 0; j < numAlerts; j++) {
+                alertEvaluationResultCollector.addAlertEvaluationTime(alerts.get(j).getId(), alertEvaluationTimes[j]);
+            }
+            
+            addSharedAlertEvaluationTime(alertEvaluationResultCollector, alerts, sharedEvaluationTime);
+            
+            return alertEvaluationResultCollector.toAlertEvaluationResult();
+        }
+    }
+    
+    /*
+    Makes sure that the metric-key has a streaming model for each of the smoothing windows. 
+    A new model is seeded with the metric-key's recent values, so that it doesn't have to wait for fresh data points to warm up.
+    */
+    private static void registerAnomalyDetectionState(String metricKey, List<Long> anomalySmoothingWindows) {
+        
+        if ((metricKey == null) || (anomalySmoothingWindows == null) || anomalySmoothingWindows.isEmpty()) {
+            return;
+        }
+        
+        AnomalyDetectionState anomalyDetectionState = GlobalVariables.anomalyDetectionStatesByMetricKey.get(metricKey);
+        
+        if (anomalyDetectionState != null) {
+            anomalyDetectionState.addSmoothingWindows(anomalySmoothingWindows);
+            return;
+        }
+        
+        AnomalyDetectionState newAnomalyDetectionState = new AnomalyDetectionState(anomalySmoothingWindows);
+        
+        // the model is published first, & then seeded while its lock is held, so values that arrive during seeding wait for the seeding to finish instead of being missed.
+        // new values are added to the recent values before they are folded into the model (see Common.updateAlertMetricRecentValues), so every value is either
+        // in the recent values that the model is seeded from, or is folded in after seeding. a value that is in both is skipped by the model as already-seen.
+        synchronized (newAnomalyDetectionState) {
+            anomalyDetectionState = GlobalVariables.anomalyDetectionStatesByMetricKey.putIfAbsent(metricKey, newAnomalyDetectionState);
+            
+            if (anomalyDetectionState == null) {
+                List<MetricTimestampAndValue> recentMetricTimestampsAndValues = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(metricKey);
+                
+                if (recentMetricTimestampsAndValues != null) {
+                    List<MetricTimestampAndValue> recentMetricTimestampsAndValuesLocal;
 
-                    if (isCautionAlertCriteriaValid && (alert.isCautionEnabled() != null) && alert.isCautionEnabled()) {
-                        determineAlertStatus_Caution(alert, alertThread__, recentMetricTimestampsAndValuesLocal, metricKey);
+                    synchronized(recentMetricTimestampsAndValues) {
+                        recentMetricTimestampsAndValuesLocal = new ArrayList<>(recentMetricTimestampsAndValues);
                     }
 
-                    if (isDangerAlertCriteriaValid && (alert.isDangerEnabled() != null) && alert.isDangerEnabled()) {
-                        determineAlertStatus_Danger(alert, alertThread__, recentMetricTimestampsAndValuesLocal, metricKey);
+                    Collections.sort(recentMetricTimestampsAndValuesLocal, MetricTimestampAndValue.COMPARE_BY_TIMESTAMP);
+
+                    for (MetricTimestampAndValue metricTimestampAndValue : recentMetricTimestampsAndValuesLocal) {
+                        newAnomalyDetectionState.update(metricTimestampAndValue.getTimestamp(), metricTimestampAndValue.getMetricValue());
                     }
                 }
             }
         }
+        
+        if (anomalyDetectionState != null) anomalyDetectionState.addSmoothingWindows(anomalySmoothingWindows);
+    }
+    
+    /*
+    Work that is shared by all the alerts of a metric group (metric-key lookup, copying/sorting/windowing metric values) is split evenly across those alerts.
+    */
+    private static void addSharedAlertEvaluationTime(AlertEvaluationResult.Collector alertEvaluationResultCollector, List<Alert> alerts, long sharedEvaluationTime) {
+        
+        if ((alertEvaluationResultCollector == null) || (alerts == null) || alerts.isEmpty()) {
+            return;
+        }
+        
+        long sharedEvaluationTimePerAlert = sharedEvaluationTime / alerts.size();
+        
+        for (Alert alert : alerts) {
+            alertEvaluationResultCollector.addAlertEvaluationTime(alert.getId(), sharedEvaluationTimePerAlert);
+        }
     }
 
-    private static void determineAlertStatus_Caution(Alert alert, AlertThread alertThread, List<MetricTimestampAndValue> recentMetricTimestampsAndValues, String metricKey) {
+    private static void determineAlertStatus_Caution(Alert alert, AlertThread alertThread, Map<Long,List<MetricTimestampAndValue>> metricTimestampsAndValuesByWindowDuration, String metricKey,
+            AlertEvaluationResult.Collector alertEvaluationResultCollector) {
         
         if ((alert == null) || (metricKey == null) || (alert.getId() == null)) {
             return;
@@ -772,64 +1131,42 @@ public class AlertThread implements Runnable {
             
             if (isAvailabilityAlert_And_HitStopTrackingLimit && (availabilityAlert_TimeSinceLastSeen == null)) { // enough time has passed that we 'stop tracking' the metric key. the availability alert to inactive for this metric key 
                 if (activeCautionAvailabilityMetricKeys != null) {
-                    activeCautionAvailabilityMetricKeys.remove(metricKey);
-
-                    positiveAlertReasons_Caution_ByAlertId_.putIfAbsent(alert.getId(), new ConcurrentHashMap<>());
-                    Map<String,String> positiveAlertReasons = positiveAlertReasons_Caution_ByAlertId_.get(alert.getId());
-                    positiveAlertReasons.put(metricKey, "Reached 'Stop Tracking' time limit");
+                    alertEvaluationResultCollector.removeActiveCautionAvailabilityMetricKey(alert.getId(), metricKey, "Reached 'Stop Tracking' time limit");
                 }
             }
             else if (!isAvailabilityAlert_And_HitStopTrackingLimit && (availabilityAlert_TimeSinceLastSeen == null) && (metricKeyLastSeenTimestamp == null)) { // the metric has been deleted
                 if (activeCautionAvailabilityMetricKeys != null) {
-                    activeCautionAvailabilityMetricKeys.remove(metricKey);
+                    alertEvaluationResultCollector.removeActiveCautionAvailabilityMetricKey(alert.getId(), metricKey, null);
                 }
             }
             else if (!isAvailabilityAlert_And_HitStopTrackingLimit && (availabilityAlert_TimeSinceLastSeen == null) && (metricKeyLastSeenTimestamp != null)) { // a recent metric value has been detected -- so the availability alert is not active
                 if (activeCautionAvailabilityMetricKeys != null) {
-                    activeCautionAvailabilityMetricKeys.remove(metricKey);
-                    
-                    positiveAlertReasons_Caution_ByAlertId_.putIfAbsent(alert.getId(), new ConcurrentHashMap<>());
-                    Map<String,String> positiveAlertReasons = positiveAlertReasons_Caution_ByAlertId_.get(alert.getId());
-                    positiveAlertReasons.put(metricKey, "New data point(s) received");
+                    alertEvaluationResultCollector.removeActiveCautionAvailabilityMetricKey(alert.getId(), metricKey, "New data point(s) received");
                 }
             }
             else { // a recent metric value has not been detected -- so the availability alert is active
-                if (activeCautionAvailabilityMetricKeys == null) { // the availability alert is active
-                    Set<String> activeCautionAvailabilityMetricKeys_New = Collections.synchronizedSet(new HashSet<String>());
-                    activeCautionAvailabilityMetricKeys_New.add(metricKey);
-                    alertThread.activeCautionAvailabilityAlerts_.put(alert.getId(), activeCautionAvailabilityMetricKeys_New);                    
-                }
-                else {
-                    activeCautionAvailabilityMetricKeys.add(metricKey); // the availability alert is active
-                } 
+                alertEvaluationResultCollector.addActiveCautionAvailabilityMetricKey(alert.getId(), metricKey); // the availability alert is active
             }
         }
         else if ((alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_THRESHOLD)) {
-            availabilityAlert_TimeSinceLastSeen = isAlertActive_Threshold(alertThread.threadStartTimestampInMilliseconds_, recentMetricTimestampsAndValues, alert.getAlertType(),
-                    alert.getCautionWindowDuration(), alert.getCautionOperator(), alert.getCautionCombination(), alert.getCautionCombinationCount(), 
-                    alert.getCautionThreshold(), alert.getCautionMinimumSampleCount());
+            List<MetricTimestampAndValue> metricTimestampsAndValuesInWindow = (metricTimestampsAndValuesByWindowDuration == null) ? null : metricTimestampsAndValuesByWindowDuration.get(alert.getCautionWindowDuration());
+            availabilityAlert_TimeSinceLastSeen = isAlertActive_Threshold_InWindow(metricTimestampsAndValuesInWindow, alert.getCautionOperator(), alert.getCautionCombination(), 
+                    alert.getCautionCombinationCount(), alert.getCautionThreshold(), alert.getCautionMinimumSampleCount());
+        }
+        else if ((alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_ANOMALY)) {
+            AnomalyDetectionState anomalyDetectionState = GlobalVariables.anomalyDetectionStatesByMetricKey.get(metricKey);
+            availabilityAlert_TimeSinceLastSeen = isAlertActive_Anomaly(alertThread.threadStartTimestampInMilliseconds_, anomalyDetectionState, alert.getCautionWindowDuration(), 
+                    alert.getCautionOperator(), alert.getCautionThreshold(), alert.getCautionMinimumSampleCount());
         }
         
         if (availabilityAlert_TimeSinceLastSeen != null) {
-            List<String> activeCautionAlertMetricKeys = alertThread.activeCautionAlertMetricKeysByAlertId_.get(alert.getId());
-
-            if (activeCautionAlertMetricKeys == null) {
-                alertThread.activeCautionAlertMetricKeysByAlertId_.put(alert.getId(), new ArrayList<>());
-                alertThread.activeCautionAlertMetricKeysByAlertId_Counter_.incrementAndGet();
-                activeCautionAlertMetricKeys = alertThread.activeCautionAlertMetricKeysByAlertId_.get(alert.getId());
-            }
-
-            if (activeCautionAlertMetricKeys != null) {
-                activeCautionAlertMetricKeys.add(metricKey);
-            }
-            
-            alertThread.activeCautionAlertMetricValues_.put(metricKey + "-" + alert.getId(), availabilityAlert_TimeSinceLastSeen);
-            alertThread.activeCautionAlertMetricValues_Counter_.incrementAndGet();
+            alertEvaluationResultCollector.addActiveCautionAlertMetric(alert.getId(), metricKey, availabilityAlert_TimeSinceLastSeen);
         }
         
     }
     
-    private static void determineAlertStatus_Danger(Alert alert, AlertThread alertThread, List<MetricTimestampAndValue> recentMetricTimestampsAndValues, String metricKey) {
+    private static void determineAlertStatus_Danger(Alert alert, AlertThread alertThread, Map<Long,List<MetricTimestampAndValue>> metricTimestampsAndValuesByWindowDuration, String metricKey,
+            AlertEvaluationResult.Collector alertEvaluationResultCollector) {
         
         if ((alert == null) || (metricKey == null) || (alert.getId() == null)) {
             return;
@@ -847,59 +1184,36 @@ public class AlertThread implements Runnable {
             
             if (isAvailabilityAlert_And_HitStopTrackingLimit && (availabilityAlert_TimeSinceLastSeen == null)) { // enough time has passed that we 'stop tracking' the metric key. the availability alert to inactive for this metric key 
                 if (activeDangerAvailabilityMetricKeys != null) {
-                    activeDangerAvailabilityMetricKeys.remove(metricKey);
-
-                    positiveAlertReasons_Danger_ByAlertId_.putIfAbsent(alert.getId(), new ConcurrentHashMap<>());
-                    Map<String,String> positiveAlertReasons = positiveAlertReasons_Danger_ByAlertId_.get(alert.getId());
-                    positiveAlertReasons.put(metricKey, "Reached 'Stop Tracking' time limit");
+                    alertEvaluationResultCollector.removeActiveDangerAvailabilityMetricKey(alert.getId(), metricKey, "Reached 'Stop Tracking' time limit");
                 }
             }
             else if (!isAvailabilityAlert_And_HitStopTrackingLimit && (availabilityAlert_TimeSinceLastSeen == null) && (metricKeyLastSeenTimestamp == null)) { // the metric has been deleted
                 if (activeDangerAvailabilityMetricKeys != null) {
-                    activeDangerAvailabilityMetricKeys.remove(metricKey);
+                    alertEvaluationResultCollector.removeActiveDangerAvailabilityMetricKey(alert.getId(), metricKey, null);
                 }
             }
             else if (!isAvailabilityAlert_And_HitStopTrackingLimit && (availabilityAlert_TimeSinceLastSeen == null) && (metricKeyLastSeenTimestamp != null)) { // a recent metric value has been detected -- so the availability alert is not active
                 if (activeDangerAvailabilityMetricKeys != null) {
-                    activeDangerAvailabilityMetricKeys.remove(metricKey);
-                    
-                    positiveAlertReasons_Danger_ByAlertId_.putIfAbsent(alert.getId(), new ConcurrentHashMap<>());
-                    Map<String,String> positiveAlertReasons = positiveAlertReasons_Danger_ByAlertId_.get(alert.getId());
-                    positiveAlertReasons.put(metricKey, "New data point(s) received");
+                    alertEvaluationResultCollector.removeActiveDangerAvailabilityMetricKey(alert.getId(), metricKey, "New data point(s) received");
                 }
             }
             else { // a recent metric value has not been detected -- so the availability alert is active
-                if (activeDangerAvailabilityMetricKeys == null) { // the availability alert is active
-                    Set<String> activeDangerAvailabilityMetricKeys_New = Collections.synchronizedSet(new HashSet<String>());
-                    activeDangerAvailabilityMetricKeys_New.add(metricKey);
-                    alertThread.activeDangerAvailabilityAlerts_.put(alert.getId(), activeDangerAvailabilityMetricKeys_New);                    
-                }
-                else {
-                    activeDangerAvailabilityMetricKeys.add(metricKey); // the availability alert is active
-                } 
+                alertEvaluationResultCollector.addActiveDangerAvailabilityMetricKey(alert.getId(), metricKey); // the availability alert is active
             }
         }
         else if ((alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_THRESHOLD)) {
-            availabilityAlert_TimeSinceLastSeen = isAlertActive_Threshold(alertThread.threadStartTimestampInMilliseconds_, recentMetricTimestampsAndValues, alert.getAlertType(),
-                    alert.getDangerWindowDuration(), alert.getDangerOperator(), alert.getDangerCombination(), alert.getDangerCombinationCount(), 
-                    alert.getDangerThreshold(), alert.getDangerMinimumSampleCount());
+            List<MetricTimestampAndValue> metricTimestampsAndValuesInWindow = (metricTimestampsAndValuesByWindowDuration == null) ? null : metricTimestampsAndValuesByWindowDuration.get(alert.getDangerWindowDuration());
+            availabilityAlert_TimeSinceLastSeen = isAlertActive_Threshold_InWindow(metricTimestampsAndValuesInWindow, alert.getDangerOperator(), alert.getDangerCombination(), 
+                    alert.getDangerCombinationCount(), alert.getDangerThreshold(), alert.getDangerMinimumSampleCount());
+        }
+        else if ((alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_ANOMALY)) {
+            AnomalyDetectionState anomalyDetectionState = GlobalVariables.anomalyDetectionStatesByMetricKey.get(metricKey);
+            availabilityAlert_TimeSinceLastSeen = isAlertActive_Anomaly(alertThread.threadStartTimestampInMilliseconds_, anomalyDetectionState, alert.getDangerWindowDuration(), 
+                    alert.getDangerOperator(), alert.getDangerThreshold(), alert.getDangerMinimumSampleCount());
         }
         
         if (availabilityAlert_TimeSinceLastSeen != null) {
-            List<String> activeDangerAlertMetricKeys = alertThread.activeDangerAlertMetricKeysByAlertId_.get(alert.getId());
-
-            if (activeDangerAlertMetricKeys == null) {
-                alertThread.activeDangerAlertMetricKeysByAlertId_.put(alert.getId(), new ArrayList<>());
-                alertThread.activeDangerAlertMetricKeysByAlertId_Counter_.incrementAndGet();
-                activeDangerAlertMetricKeys = alertThread.activeDangerAlertMetricKeysByAlertId_.get(alert.getId());
-            }
-
-            if (activeDangerAlertMetricKeys != null) {
-                activeDangerAlertMetricKeys.add(metricKey);
-            }
-            
-            alertThread.activeDangerAlertMetricValues_.put(metricKey + "-" + alert.getId(), availabilityAlert_TimeSinceLastSeen);
-            alertThread.activeDangerAlertMetricValues_Counter_.incrementAndGet();
+            alertEvaluationResultCollector.addActiveDangerAlertMetric(alert.getId(), metricKey, availabilityAlert_TimeSinceLastSeen);
         }
         
     }
@@ -1117,37 +1431,6 @@ public class AlertThread implements Runnable {
         
     }
 
-    public static Map<Integer,List<Alert>> separateAlertsByCpuCore(List<Alert> alerts) {
-        
-        if ((alerts == null) || alerts.isEmpty()) {
-            return new HashMap<>();
-        }
-        
-        Map<Integer,List<Alert>> alertsByCpuCore = new HashMap<>();
-        
-        // only use more than 1 core if the number of available cpu cores is greater than or equal to 3. 
-        // this should help avoid cpu contention on lower-end systems
-        int numCoresOnSystem = Runtime.getRuntime().availableProcessors() - 1;
-        if (numCoresOnSystem < 1) numCoresOnSystem = 1;
-        
-        int currentCore = 0;
-        for (Alert alert : alerts) {
-            List<Alert> alertsForSingleCore = alertsByCpuCore.get(currentCore);
-
-            if (alertsForSingleCore == null) {
-                alertsForSingleCore = new ArrayList<>();
-                alertsByCpuCore.put(currentCore, alertsForSingleCore);
-            }
-
-            alertsForSingleCore.add(alert);
-            
-            currentCore++;
-            if (currentCore > (numCoresOnSystem - 1)) currentCore = 0;
-        }
- 
-        return alertsByCpuCore;
-    }
-    
     public static String appendActiveAlertsToSet(List<String> currentActiveMetricKeys, String previousActiveMetricKeys, int limit) {
         
         if ((currentActiveMetricKeys == null) || currentActiveMetricKeys.isEmpty()) {
@@ -1347,18 +1630,94 @@ public class AlertThread implements Runnable {
     public static BigDecimal isAlertActive_Threshold(long threadStartTimestampInMilliseconds, List<MetricTimestampAndValue> sortedRecentMetricTimestampsAndValues, 
             Integer alertType, Long windowDuration, Integer operator, Integer combination, Integer combinationCount, BigDecimal threshold, Integer minimumSampleCount) {
 
-        if ((sortedRecentMetricTimestampsAndValues == null) || sortedRecentMetricTimestampsAndValues.isEmpty() || 
-                (alertType == null) || (alertType != Alert.TYPE_THRESHOLD) || (windowDuration == null)) {
+        if ((alertType == null) || (alertType != Alert.TYPE_THRESHOLD)) {
             return null;
         }
 
-        // get a list of timestamps that are within the alert window
-        long startTimestamp = threadStartTimestampInMilliseconds - windowDuration;
-        int[] timestampStartAndEndIndexes = getStartAndEndIndexesOfTimestamps(startTimestamp, threadStartTimestampInMilliseconds, sortedRecentMetricTimestampsAndValues);
+        List<MetricTimestampAndValue> sortedRecentMetricTimestampsAndValuesInWindow = getMetricTimestampsAndValuesInWindow(threadStartTimestampInMilliseconds, sortedRecentMetricTimestampsAndValues, windowDuration);
+        
+        return isAlertActive_Threshold_InWindow(sortedRecentMetricTimestampsAndValuesInWindow, operator, combination, combinationCount, threshold, minimumSampleCount);
+    }
+    
+    /*
+    Evaluates anomaly alert criteria against a metric-key's streaming model.
+    The alert is only active if the most recent value arrived within the smoothing window, the model had seen at least 'minimumSampleCount' values before it, 
+    and the most recent value was at least 'threshold' standard deviations above (greater operators) or below (less operators) the moving average.
+    If the alert is not active, then this method returns null.
+    If the alert is active, then this method returns the number of standard deviations that the most recent value was away from the moving average.
+    */
+    public static BigDecimal isAlertActive_Anomaly(long threadStartTimestampInMilliseconds, AnomalyDetectionState anomalyDetectionState, 
+            Long windowDuration, Integer operator, BigDecimal threshold, Integer minimumSampleCount) {
+        
+        if ((anomalyDetectionState == null) || (windowDuration == null) || (operator == null) || (threshold == null)) {
+            return null;
+        }
+        
+        Long lastTimestamp = anomalyDetectionState.getLastTimestamp();
+        if ((lastTimestamp == null) || (lastTimestamp < (threadStartTimestampInMilliseconds - windowDuration))) {
+            return null;
+        }
+        
+        boolean doesMeetMinimumSampleCountCriteria = doesMeetMinimumSampleCountCriteria((int) Math.min(anomalyDetectionState.getSampleCount(windowDuration), Integer.MAX_VALUE), minimumSampleCount);
+        if (!doesMeetMinimumSampleCountCriteria) {
+            return null;
+        }
+        
+        Double deviation = anomalyDetectionState.getDeviation(windowDuration);
+        if ((deviation == null) || deviation.isNaN() || deviation.isInfinite()) {
+            return null;
+        }
+        
+        BigDecimal deviationBigDecimal = new BigDecimal(deviation, ALERT_MATH_CONTEXT);
+        int compareResult;
+        
+        if (Objects.equals(operator, Alert.OPERATOR_GREATER) || Objects.equals(operator, Alert.OPERATOR_GREATER_EQUALS)) {
+            compareResult = deviationBigDecimal.compareTo(threshold);
+        }
+        else if (Objects.equals(operator, Alert.OPERATOR_LESS) || Objects.equals(operator, Alert.OPERATOR_LESS_EQUALS)) {
+            compareResult = threshold.negate().compareTo(deviationBigDecimal);
+        }
+        else {
+            return null;
+        }
+        
+        boolean isActive = (Objects.equals(operator, Alert.OPERATOR_GREATER) || Objects.equals(operator, Alert.OPERATOR_LESS)) ? (compareResult > 0) : (compareResult >= 0);
+        
+        return isActive ? deviationBigDecimal : null;
+    }
+    
+    /*
+    Gets the metric values that fall within the window [windowEndTimestamp - windowDuration, windowEndTimestamp].
+    The returned list is a read-only view of 'sortedRecentMetricTimestampsAndValues', so it can be shared by every alert that uses the same window.
+    Returns null if no metric values fall within the window.
+    */
+    public static List<MetricTimestampAndValue> getMetricTimestampsAndValuesInWindow(long windowEndTimestampInMilliseconds, List<MetricTimestampAndValue> sortedRecentMetricTimestampsAndValues, 
+            Long windowDuration) {
+        
+        if ((sortedRecentMetricTimestampsAndValues == null) || sortedRecentMetricTimestampsAndValues.isEmpty() || (windowDuration == null)) {
+            return null;
+        }
+        
+        long startTimestamp = windowEndTimestampInMilliseconds - windowDuration;
+        int[] timestampStartAndEndIndexes = getStartAndEndIndexesOfTimestamps(startTimestamp, windowEndTimestampInMilliseconds, sortedRecentMetricTimestampsAndValues);
         if (timestampStartAndEndIndexes == null) return null;
-        List<MetricTimestampAndValue> sortedRecentMetricTimestampsAndValuesInWindow = new ArrayList<>(sortedRecentMetricTimestampsAndValues.subList(timestampStartAndEndIndexes[0], timestampStartAndEndIndexes[1]));
-        sortedRecentMetricTimestampsAndValuesInWindow.add(sortedRecentMetricTimestampsAndValues.get(timestampStartAndEndIndexes[1])); // needed b/c subList excludes the ending index element
+        
+        // the ending index is inclusive, but subList's 'toIndex' is exclusive
+        return Collections.unmodifiableList(sortedRecentMetricTimestampsAndValues.subList(timestampStartAndEndIndexes[0], timestampStartAndEndIndexes[1] + 1));
+    }
+    
+    /*
+    Evaluates threshold alert criteria against metric values that have already been narrowed down to the alert's window.
+    If the alert is not active, then this method returns null.
+    If the alert is active, then this method returns a value that fits the context of the alert critera.
+    */
+    public static BigDecimal isAlertActive_Threshold_InWindow(List<MetricTimestampAndValue> sortedRecentMetricTimestampsAndValuesInWindow, 
+            Integer operator, Integer combination, Integer combinationCount, BigDecimal threshold, Integer minimumSampleCount) {
 
+        if ((sortedRecentMetricTimestampsAndValuesInWindow == null) || sortedRecentMetricTimestampsAndValuesInWindow.isEmpty()) {
+            return null;
+        }
+        
         // minimum sample count check
         boolean doesMeetMinimumSampleCountCriteria = doesMeetMinimumSampleCountCriteria(sortedRecentMetricTimestampsAndValuesInWindow.size(), minimumSampleCount);
         if (!doesMeetMinimumSampleCountCriteria) {
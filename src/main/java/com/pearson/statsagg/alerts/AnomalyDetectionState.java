@@ -0,0 +1,169 @@
+package com.pearson.statsagg.alerts;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming model of a single metric-key's recent behavior, used by 'anomaly' alerts.
+ *
+ * For every smoothing window (an anomaly alert's window duration), an exponentially weighted moving average (EWMA) of the metric value &
+ * an exponentially weighted moving variance are kept. The smoothing factor is derived from the time between data points,
+ * so irregularly reported metrics are weighted by time rather than by sample count.
+ *
+ * Each incoming value is compared against the model (as it was before the value arrived), and the deviation is kept as a number
+ * of standard deviations away from the moving average. Updates are O(1), and no metric values are retained.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class AnomalyDetectionState {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnomalyDetectionState.class.getName());
+
+    // keeps the deviation finite when a metric has been perfectly flat (zero variance), while still making any change look very anomalous
+    private static final double MINIMUM_STANDARD_DEVIATION_RATIO = 1e-9;
+
+    private long[] smoothingWindows_;
+    private double[] means_;
+    private double[] variances_;
+    private long[] sampleCounts_;
+    private double[] deviations_;
+    private long lastTimestamp_ = Long.MIN_VALUE;
+
+    public AnomalyDetectionState(Collection<Long> smoothingWindows) {
+        smoothingWindows_ = new long[0];
+        means_ = new double[0];
+        variances_ = new double[0];
+        sampleCounts_ = new long[0];
+        deviations_ = new double[0];
+
+        addSmoothingWindows(smoothingWindows);
+    }
+
+    /*
+    Starts tracking any smoothing windows that aren't already being tracked. New windows start out with no samples.
+    */
+    public synchronized void addSmoothingWindows(Collection<Long> smoothingWindows) {
+
+        if ((smoothingWindows == null) || smoothingWindows.isEmpty()) {
+            return;
+        }
+
+        TreeSet<Long> newSmoothingWindows = new TreeSet<>();
+
+        for (Long smoothingWindow : smoothingWindows) {
+            if ((smoothingWindow == null) || (smoothingWindow < 1)) continue;
+            if (Arrays.binarySearch(smoothingWindows_, smoothingWindow) < 0) newSmoothingWindows.add(smoothingWindow);
+        }
+
+        if (newSmoothingWindows.isEmpty()) {
+            return;
+        }
+
+        for (Long smoothingWindow : smoothingWindows_) newSmoothingWindows.add(smoothingWindow);
+
+        long[] mergedSmoothingWindows = new long[newSmoothingWindows.size()];
+        double[] mergedMeans = new double[mergedSmoothingWindows.length];
+        double[] mergedVariances = new double[mergedSmoothingWindows.length];
+        long[] mergedSampleCounts = new long[mergedSmoothingWindows.length];
+        double[] mergedDeviations = new double[mergedSmoothingWindows.length];
+
+        int i = 0;
+        for (Long smoothingWindow : newSmoothingWindows) {
+            mergedSmoothingWindows[i] = smoothingWindow;
+
+            int previousIndex = Arrays.binarySearch(smoothingWindows_, smoothingWindow);
+            if (previousIndex >= 0) {
+                mergedMeans[i] = means_[previousIndex];
+                mergedVariances[i] = variances_[previousIndex];
+                mergedSampleCounts[i] = sampleCounts_[previousIndex];
+                mergedDeviations[i] = deviations_[previousIndex];
+            }
+
+            i++;
+        }
+
+        smoothingWindows_ = mergedSmoothingWindows;
+        means_ = mergedMeans;
+        variances_ = mergedVariances;
+        sampleCounts_ = mergedSampleCounts;
+        deviations_ = mergedDeviations;
+    }
+
+    /*
+    Folds a new metric value into every smoothing window's model.
+    Values that are older than (or as old as) the newest value that has already been seen are ignored, since they can't be weighted by elapsed time.
+    */
+    public synchronized void update(long timestamp, BigDecimal metricValue) {
+
+        if ((metricValue == null) || (timestamp <= lastTimestamp_)) {
+            return;
+        }
+
+        double value = metricValue.doubleValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) return;
+
+        long elapsedTime = (lastTimestamp_ == Long.MIN_VALUE) ? 0 : (timestamp - lastTimestamp_);
+        lastTimestamp_ = timestamp;
+
+        for (int i = 0; i < smoothingWindows_.length; i++) {
+            if (sampleCounts_[i] == 0) {
+                means_[i] = value;
+                variances_[i] = 0;
+                deviations_[i] = 0;
+                sampleCounts_[i] = 1;
+                continue;
+            }
+
+            double difference = value - means_[i];
+            double standardDeviation = Math.max(Math.sqrt(variances_[i]), Math.max(1, Math.abs(means_[i])) * MINIMUM_STANDARD_DEVIATION_RATIO);
+            deviations_[i] = difference / standardDeviation;
+
+            double alpha = 1 - Math.exp(-((double) elapsedTime / (double) smoothingWindows_[i]));
+            double increment = alpha * difference;
+            means_[i] = means_[i] + increment;
+            variances_[i] = (1 - alpha) * (variances_[i] + (difference * increment));
+            sampleCounts_[i]++;
+        }
+    }
+
+    /*
+    The number of standard deviations that the most recent value was away from the moving average (positive = above, negative = below).
+    Returns null if the smoothing window isn't tracked, or if fewer than two values have been received.
+    */
+    public synchronized Double getDeviation(long smoothingWindow) {
+        int index = Arrays.binarySearch(smoothingWindows_, smoothingWindow);
+        if ((index < 0) || (sampleCounts_[index] < 2)) return null;
+        return deviations_[index];
+    }
+
+    public synchronized Double getMean(long smoothingWindow) {
+        int index = Arrays.binarySearch(smoothingWindows_, smoothingWindow);
+        if ((index < 0) || (sampleCounts_[index] < 1)) return null;
+        return means_[index];
+    }
+
+    public synchronized Double getStandardDeviation(long smoothingWindow) {
+        int index = Arrays.binarySearch(smoothingWindows_, smoothingWindow);
+        if ((index < 0) || (sampleCounts_[index] < 1)) return null;
+        return Math.sqrt(variances_[index]);
+    }
+
+    /*
+    The number of values that the smoothing window's model had seen before the most recent value arrived.
+    */
+    public synchronized long getSampleCount(long smoothingWindow) {
+        int index = Arrays.binarySearch(smoothingWindows_, smoothingWindow);
+        if ((index < 0) || (sampleCounts_[index] < 1)) return 0;
+        return sampleCounts_[index] - 1;
+    }
+
+    public synchronized Long getLastTimestamp() {
+        if (lastTimestamp_ == Long.MIN_VALUE) return null;
+        return lastTimestamp_;
+    }
+
+}
@@ -11,7 +11,7 @@ import com.pearson.statsagg.database_objects.gauges.Gauge;
 import com.pearson.statsagg.database_objects.gauges.GaugesDao;
 import com.pearson.statsagg.globals.GlobalVariables;
 import com.pearson.statsagg.metric_aggregation.MetricKeyLastSeen;
-import com.pearson.statsagg.metric_aggregation.MetricTimestampAndValue;
+import com.pearson.statsagg.metric_aggregation.RecentMetricTimestampsAndValues;
 import com.pearson.statsagg.utilities.StackTrace;
 import com.pearson.statsagg.utilities.StringUtilities;
 import java.util.HashSet;
@@ -76,7 +76,8 @@ public class CleanupThread implements Runnable {
             List<Alert> alerts = alertsDao.getAllDatabaseObjectsInTable();
             List<Alert> enabledAlerts = AlertThread.getEnabledAlerts(alerts);
             String cleanupRecentMetricTimestampsAndValuesOutput = cleanupRecentMetricTimestampsAndValues(enabledAlerts);
-            String cleanupSubroutineOutputMessages = cleanupRecentMetricTimestampsAndValuesOutput;
+            String cleanupAnomalyDetectionStatesOutput = cleanupAnomalyDetectionStates(enabledAlerts);
+            String cleanupSubroutineOutputMessages = cleanupRecentMetricTimestampsAndValuesOutput + ", " + cleanupAnomalyDetectionStatesOutput;
 
             // don't cleanup metric keys when the metric association routine is running
             if (!MetricAssociation.IsMetricAssociationRoutineCurrentlyRunning_CurrentlyAssociating.get() && !MetricAssociation.IsMetricAssociationRoutineCurrentlyRunning_CurrentlyAssociating.get()) {
@@ -99,6 +100,9 @@ public class CleanupThread implements Runnable {
             synchronized(GlobalVariables.suspensionChanges) {
                 long cleanupStartTime = System.currentTimeMillis();
                 long metricsRemoved = 0;
+                
+                // ids that were released during the previous cleanup run are safe to reuse by now -- any routine that was holding on to them has finished
+                GlobalVariables.metricKeyDictionary.recycleReleasedIds();
 
                 long immediateCleanupMetricKeys_MetricsRemoved = cleanupMetricsAssociations_ImmediateCleanupMetricKeys();
                 metricsRemoved += immediateCleanupMetricKeys_MetricsRemoved;
@@ -155,9 +159,14 @@ public class CleanupThread implements Runnable {
         long currentTimeInMilliseconds = System.currentTimeMillis();
         Set<String> gaugeMetricKeys = new HashSet<>();
         
-        for (Entry<String,MetricKeyLastSeen> metricKeysLastSeenTimestamp_Entry : GlobalVariables.metricKeysLastSeenTimestamp.entrySet()) {
-            String metricKey = metricKeysLastSeenTimestamp_Entry.getKey();
-            MetricKeyLastSeen metricKeyLastSeenTimestamp = metricKeysLastSeenTimestamp_Entry.getValue();
+        // only the expiry index buckets that are older than 24hrs are visited, instead of every metric-key in 'metricKeysLastSeenTimestamp'
+        List<String> metricKeysNotRecentlySeen = GlobalVariables.metricKeyExpiryIndex.getExpiredMetricKeys(currentTimeInMilliseconds - NUM_MILLISECONDS_IN_ONE_DAY, 
+                GlobalVariables.metricKeysLastSeenTimestamp);
+        
+        for (String metricKey : metricKeysNotRecentlySeen) {
+            MetricKeyLastSeen metricKeyLastSeenTimestamp = GlobalVariables.metricKeysLastSeenTimestamp.get(metricKey);
+            if (metricKeyLastSeenTimestamp == null) continue;
+            
             Long metricKeyLastSeenTimestamp_UpdateOnResend = metricKeyLastSeenTimestamp.getMetricKeyLastSeenTimestamp_UpdateOnResend();
             
             if (metricKeyLastSeenTimestamp_UpdateOnResend == null) {
@@ -210,11 +219,18 @@ public class CleanupThread implements Runnable {
         // removing values from statsdGaugeCache & remove gauges from the db is handled in the 'cleanupGauges' method
         
         GlobalVariables.statsdMetricsAggregatedMostRecentValue.remove(metricKey);
+        GlobalVariables.prometheusMetricsMostRecentValue.remove(metricKey);
         GlobalVariables.metricKeysAssociatedWithAnyMetricGroup.remove(metricKey);
         GlobalVariables.metricKeysAssociatedWithOutputBlacklistMetricGroup.remove(metricKey);
         GlobalVariables.metricKeysAssociatedWithAnySuspension.remove(metricKey);
-        GlobalVariables.metricKeysLastSeenTimestamp.remove(metricKey);
+        
+        // the metric-key's dictionary id must be released after the metric-key is removed from every association set & association flag
+        GlobalVariables.metricKeyDictionary.remove(metricKey);
+        
+        MetricKeyLastSeen metricKeyLastSeen = GlobalVariables.metricKeysLastSeenTimestamp.remove(metricKey);
+        GlobalVariables.metricKeyExpiryIndex.remove(metricKey, metricKeyLastSeen);
         GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.remove(metricKey);
+        GlobalVariables.anomalyDetectionStatesByMetricKey.remove(metricKey);
     }
     
     private Set<String> cleanupGauges(Set<String> gaugeMetricKeys) {
@@ -343,37 +359,26 @@ public class CleanupThread implements Runnable {
         
         try {
             // for every metric key that has had a recent datapoint...
-            for (Entry<String,List<MetricTimestampAndValue>> recentMetricTimestampsAndValuesByMetricKey_Entry : GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.entrySet()) {
+            for (Entry<String,RecentMetricTimestampsAndValues> recentMetricTimestampsAndValuesByMetricKey_Entry : GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.entrySet()) {
                 String metricKey = recentMetricTimestampsAndValuesByMetricKey_Entry.getKey();
-                List<MetricTimestampAndValue> recentMetricTimestampsAndValues = recentMetricTimestampsAndValuesByMetricKey_Entry.getValue();
-                        
+                RecentMetricTimestampsAndValues recentMetricTimestampsAndValues = recentMetricTimestampsAndValuesByMetricKey_Entry.getValue();
+                if (recentMetricTimestampsAndValues == null) continue;
+                
                 boolean isImmeadiateCleanup = immediateCleanupMetricKeys_.contains(metricKey); // we should cleanup this metric regardless...
                 
                 // lookup the longest window duration associated with this metric key...
                 Long windowDuration = longestWindowDurationsForMetricKeys.get(metricKey);
 
-                // remove data that is outside of the window duration (older than 'now' minus 'duration') for this metric key               
-                if ((windowDuration != null) && (recentMetricTimestampsAndValues != null)) { 
-                    List<MetricTimestampAndValue> metricTimestampAndValuesToRemove = new ArrayList<>();
-
+                // remove data that is outside of the window duration (older than 'now' minus 'duration') for this metric key. 
+                // the values are sorted by timestamp, so this is a binary search for the cutoff & a move of the list's head.
+                if ((windowDuration != null) && !isImmeadiateCleanup) { 
                     synchronized (recentMetricTimestampsAndValues) {
-                        for (MetricTimestampAndValue metricTimestampAndValue : recentMetricTimestampsAndValues) {
-                            long metricValueTimestamp = metricTimestampAndValue.getTimestamp();
-                            long metricValueAge = cleanupStartTime - metricValueTimestamp;
-
-                            if ((metricValueAge > windowDuration) || isImmeadiateCleanup) {
-                                metricTimestampAndValuesToRemove.add(metricTimestampAndValue);
-                            }
-                        }
-
-                        for (MetricTimestampAndValue metricTimestampAndValueToRemove : metricTimestampAndValuesToRemove) {
-                            recentMetricTimestampsAndValues.remove(metricTimestampAndValueToRemove);
-                            numValuesRemoved++;
-                        }
+                        numValuesRemoved += recentMetricTimestampsAndValues.removeValuesOlderThan(cleanupStartTime - windowDuration);
+                        recentMetricTimestampsAndValues.trim();
                     }
                 }
-                // the metric isn't currently associated with an alert, so we can get rid this metric key's data
-                else if (recentMetricTimestampsAndValues != null) {
+                // the metric isn't currently associated with an alert (or is being cleaned up), so we can get rid this metric key's data & the memory that held it
+                else {
                     synchronized (recentMetricTimestampsAndValues) {
                         numValuesRemoved += recentMetricTimestampsAndValues.size();
                         recentMetricTimestampsAndValues.clear();
@@ -395,6 +400,50 @@ public class CleanupThread implements Runnable {
         return outputMessage;
     }
     
+    /* 
+    Removes the streaming models of metric-keys that are no longer associated with an enabled anomaly alert.
+    */
+    private String cleanupAnomalyDetectionStates(List<Alert> alerts) {
+
+        long cleanupStartTime = System.currentTimeMillis();
+        int numStatesRemoved = 0;
+        int metricKeys_Size = GlobalVariables.anomalyDetectionStatesByMetricKey.size();
+        
+        try {
+            if (metricKeys_Size > 0) {
+                // suspended metric-keys keep their models, so that they don't have to warm up again when the suspension ends
+                Set<String> metricKeysAssociatedWithAnomalyAlerts = new HashSet<>();
+                
+                if (alerts != null) {
+                    for (Alert alert : alerts) {
+                        if ((alert == null) || (alert.getAlertType() == null) || (alert.getAlertType() != Alert.TYPE_ANOMALY)) continue;
+                        if ((alert.isEnabled() == null) || !alert.isEnabled()) continue;
+                        metricKeysAssociatedWithAnomalyAlerts.addAll(MetricAssociation.getMetricKeysAssociatedWithAlert(alert, null));
+                    }
+                }
+                
+                for (String metricKey : GlobalVariables.anomalyDetectionStatesByMetricKey.keySet()) {
+                    if (immediateCleanupMetricKeys_.contains(metricKey) || !metricKeysAssociatedWithAnomalyAlerts.contains(metricKey)) {
+                        GlobalVariables.anomalyDetectionStatesByMetricKey.remove(metricKey);
+                        numStatesRemoved++;
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+            logger.error("ThreadId=" + threadId_ + ", Routine=CleanupAnomalyDetectionStates, " 
+                    + e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        
+        long cleanupTimeElasped = System.currentTimeMillis() - cleanupStartTime;
+
+        String outputMessage = "CleanupAnomalyDetectionStatesTime=" + cleanupTimeElasped
+                + ", NumAnomalyDetectionStates=" + metricKeys_Size
+                + ", NumAnomalyDetectionStatesRemoved=" + numStatesRemoved;
+
+        return outputMessage;
+    }
+    
     /* 
     Checks the caution & danger durations of all specified alerts to get the longest window duration.
     The window durations of disabled alerts are not used. 
@@ -409,7 +458,7 @@ public class CleanupThread implements Runnable {
             
         Set<String> suspendedMetricKeys;
         synchronized (GlobalVariables.suspendedMetricKeys) {
-            suspendedMetricKeys = new HashSet<>(GlobalVariables.suspendedMetricKeys.keySet());
+            suspendedMetricKeys = MetricKeySet.getExistingMetricKeys(GlobalVariables.metricKeyDictionary, GlobalVariables.suspendedMetricKeys.keySet());
         }
                     
         for (Alert alert : alerts) {
@@ -170,6 +170,10 @@ public class EmailThread implements Runnable  {
             body.append("<ul><li>").append(alert_.getHumanReadable_AlertCriteria_MinimumSampleCount(alertLevel_)).append("</li>");
             body.append("<li>").append(alert_.getHumanReadable_AlertCriteria_ThresholdCriteria(alertLevel_)).append("</li></ul><br>");
         }
+        else if (alert_.getAlertType() == Alert.TYPE_ANOMALY) {
+            body.append("<ul><li>").append(alert_.getHumanReadable_AlertCriteria_MinimumSampleCount(alertLevel_)).append("</li>");
+            body.append("<li>").append(alert_.getHumanReadable_AlertCriteria_AnomalyCriteria(alertLevel_)).append("</li></ul><br>");
+        }
 
         if (!isPositiveAlert_) {
             List<String> sortedMetricKeys = sortAndLimitMetricsForEmail(metricKeys_, numMetricKeysPerEmail);
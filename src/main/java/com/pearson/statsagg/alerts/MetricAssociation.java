@@ -4,11 +4,11 @@ import com.google.common.collect.Lists;
 import com.pearson.statsagg.database_objects.suspensions.Suspension;
 import com.pearson.statsagg.database_objects.suspensions.SuspensionsDao;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import com.pearson.statsagg.database_objects.alerts.Alert;
 import com.pearson.statsagg.database_objects.metric_group.MetricGroupsDao;
@@ -16,11 +16,16 @@ import com.pearson.statsagg.database_objects.metric_group_regex.MetricGroupRegex
 import com.pearson.statsagg.database_objects.metric_group_regex.MetricGroupRegexesDao;
 import com.pearson.statsagg.database_objects.output_blacklist.OutputBlacklist;
 import com.pearson.statsagg.database_objects.output_blacklist.OutputBlacklistDao;
+import com.pearson.statsagg.globals.ApplicationConfiguration;
 import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.utilities.IntegerBitmap;
+import com.pearson.statsagg.utilities.MultiRegexMatcher;
 import com.pearson.statsagg.utilities.StackTrace;
 import com.pearson.statsagg.utilities.StringUtilities;
 import com.pearson.statsagg.utilities.Threads;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -37,12 +42,30 @@ public class MetricAssociation {
     private static final byte REGEX_TYPE_BLACKLIST = 1;
     private static final byte REGEX_TYPE_MATCH = 2;
     
+    public static final String REGEX_ENGINE_JAVA = "java";
+    public static final String REGEX_ENGINE_LINEAR = "linear";
+    
     // k=Regex_String, v="Regex compiled pattern. This is a cache for compiled regex patterns."
     private final static ConcurrentHashMap<String,MetricAssociationPattern> regexPatterns_ = new ConcurrentHashMap<>(); 
     
     // k=Regex_String, v="Regex_String. If a regex pattern is bad (doesn't compile), then it is stored here so we don't try to recompile it."
     private final static ConcurrentHashMap<String,String> regexBlacklist_ = new ConcurrentHashMap<>(); 
     
+    // k=Regex_String, v="Linear-time automaton for the regex. This is a cache for the automatons that are used when the 'linear' regex engine is configured. 
+    // Entries are dropped when the metric group or suspension that used the regex is altered or removed."
+    private final static ConcurrentHashMap<String,MultiRegexMatcher> linearTimeRegexMatchers_ = new ConcurrentHashMap<>(); 
+    
+    // combined regex automatons for all metric groups & all metric suspensions. rebuilt whenever the ids or merged regexes change.
+    private static volatile MetricAssociationMatcher metricGroupAssociationMatcher_ = null;
+    private static volatile MetricAssociationMatcher suspensionAssociationMatcher_ = null;
+    
+    // runs the reassociation threads for new & altered metric groups/suspensions, one at a time
+    private final static ExecutorService reassociationThreadExecutor_ = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MetricReassociation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     public static final AtomicBoolean IsMetricAssociationRoutineCurrentlyRunning = new AtomicBoolean(false);
     public static final AtomicBoolean IsMetricAssociationRoutineCurrentlyRunning_CurrentlyAssociating = new AtomicBoolean(false);
     public static final AtomicBoolean IsMetricAssociationRoutineForOutputBlacklistCurrentlyRunning = new AtomicBoolean(false);
@@ -76,20 +99,33 @@ public class MetricAssociation {
         IsMetricAssociationRoutineCurrentlyRunning_CurrentlyAssociating.set(true);
         try {
             // get metric group & suspension ids & populate some data structures for those ids
-            List<Integer> allMetricGroupIds = getMetricGroupIds_And_AssociateMetricKeysWithNewOrAlteredMetricGroups();
-            List<Integer> allMetricSuspensionIds = getMetricSuspensionIds_And_AssociateMetricKeysWithNewOrAlteredSuspensions();
+            List<Integer> newAndAlteredMetricGroupIds = new ArrayList<>(), newAndAlteredSuspensionIds = new ArrayList<>();
+            List<Integer> allMetricGroupIds = getMetricGroupIds_And_DetectNewOrAlteredMetricGroups(newAndAlteredMetricGroupIds);
+            List<Integer> allMetricSuspensionIds = getMetricSuspensionIds_And_DetectNewOrAlteredSuspensions(newAndAlteredSuspensionIds);
             createMatchingMetricKeysDataStructuresForNewMetricGroupIds(allMetricGroupIds);
             createMatchingMetricKeysDataStructuresForNewSuspensionIds(allMetricSuspensionIds);
-
+            MetricAssociationMatcher metricGroupAssociationMatcher = getMetricGroupAssociationMatcher(allMetricGroupIds);
+            MetricAssociationMatcher suspensionAssociationMatcher = getSuspensionAssociationMatcher(allMetricSuspensionIds);
+            
+            // metric-keys that were already associated are re-evaluated against new & altered metric groups/suspensions in the background, so this routine doesn't wait on them
+            reassociateMetricKeysWithNewOrAlteredIds(threadId, newAndAlteredMetricGroupIds, numThreads,
+                    GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup, GlobalVariables.metricKeysAssociatedWithAnyMetricGroup,
+                    GlobalVariables.mergedMatchRegexesByMetricGroupId, GlobalVariables.mergedBlacklistRegexesByMetricGroupId);
+            reassociateMetricKeysWithNewOrAlteredIds(threadId, newAndAlteredSuspensionIds, numThreads,
+                    GlobalVariables.matchingMetricKeysAssociatedWithSuspension, GlobalVariables.metricKeysAssociatedWithAnySuspension,
+                    GlobalVariables.mergedMatchRegexesBySuspensionId, GlobalVariables.mergedBlacklistRegexesBySuspensionId);
+
+            // only newly seen metric-keys need to be associated, unless a metric-group or suspension changed (or this is the first run)
+            ArrayList<String> metricsList = getMetricKeysToAssociate(threadId);
+            
             int threads = numThreads;
             if (threads <= 0) threads = 1;
-            int numMetricsPerPartition = GlobalVariables.metricKeysLastSeenTimestamp.keySet().size() / threads;
+            int numMetricsPerPartition = metricsList.size() / threads;
             if (numMetricsPerPartition <= 0) numMetricsPerPartition = 1;
-            ArrayList<String> metricsList = new ArrayList<>(GlobalVariables.metricKeysLastSeenTimestamp.keySet());
             List<List<String>> metricKeys_Partitions = Lists.partition(metricsList, numMetricsPerPartition);
             List<Thread> metricKeyAssociation_Threads = new ArrayList<>();
             for (List<String> metricKeys_Partition : metricKeys_Partitions) {
-                Thread metricKeyAssociation_Thread = new Thread(new metricKeyAssociation_Thread(metricKeys_Partition, allMetricGroupIds, allMetricSuspensionIds));
+                Thread metricKeyAssociation_Thread = new Thread(new metricKeyAssociation_Thread(metricKeys_Partition, metricGroupAssociationMatcher, suspensionAssociationMatcher));
                 metricKeyAssociation_Threads.add(metricKeyAssociation_Thread);
             }
 
@@ -104,6 +140,76 @@ public class MetricAssociation {
         IsMetricAssociationRoutineCurrentlyRunning.set(false);
     }
     
+    /*
+     Queues a metric-key that was seen for the first time, so that the next run of the metric association routine associates it.
+     This is intended to be called by the routines that add metric-keys to 'metricKeysLastSeenTimestamp'.
+    */
+    public static void queueNewMetricKeyForAssociation(String metricKey) {
+        
+        if ((metricKey == null) || !ApplicationConfiguration.isAlertRoutineEnabled()) {
+            return;
+        }
+        
+        // a full rescan is already pending, so it will pick up this metric-key
+        if (GlobalVariables.isMetricAssociationFullRescanRequired.get()) {
+            return;
+        }
+        
+        GlobalVariables.metricKeysPendingAssociation.add(metricKey);
+    }
+    
+    /*
+     Drains the queue of newly seen metric-keys & returns them. If a full rescan is required, every known metric-key is returned instead.
+     Metric-keys that were cleaned up after they were queued are skipped.
+    */
+    private static ArrayList<String> getMetricKeysToAssociate(String threadId) {
+        
+        ArrayList<String> metricKeys = new ArrayList<>();
+        
+        if (GlobalVariables.isMetricAssociationFullRescanRequired.getAndSet(false)) {
+            GlobalVariables.metricKeysPendingAssociation.clear();
+            metricKeys.addAll(GlobalVariables.metricKeysLastSeenTimestamp.keySet());
+            logger.debug("ThreadId=" + threadId + ", Routine=MetricAssociation, Message=\"Full rescan\", MetricKeyCount=" + metricKeys.size());
+            return metricKeys;
+        }
+        
+        String metricKey = GlobalVariables.metricKeysPendingAssociation.poll();
+        while (metricKey != null) {
+            if (GlobalVariables.metricKeysLastSeenTimestamp.containsKey(metricKey)) metricKeys.add(metricKey);
+            metricKey = GlobalVariables.metricKeysPendingAssociation.poll();
+        }
+        
+        return metricKeys;
+    }
+    
+    private static MetricAssociationMatcher getMetricGroupAssociationMatcher(List<Integer> allMetricGroupIds) {
+        
+        MetricAssociationMatcher metricGroupAssociationMatcher = metricGroupAssociationMatcher_;
+        
+        if ((metricGroupAssociationMatcher == null) || !metricGroupAssociationMatcher.isCurrent(allMetricGroupIds, 
+                GlobalVariables.mergedMatchRegexesByMetricGroupId, GlobalVariables.mergedBlacklistRegexesByMetricGroupId)) {
+            metricGroupAssociationMatcher = new MetricAssociationMatcher(allMetricGroupIds, 
+                    GlobalVariables.mergedMatchRegexesByMetricGroupId, GlobalVariables.mergedBlacklistRegexesByMetricGroupId, !isLinearTimeRegexEngine());
+            metricGroupAssociationMatcher_ = metricGroupAssociationMatcher;
+        }
+        
+        return metricGroupAssociationMatcher;
+    }
+    
+    private static MetricAssociationMatcher getSuspensionAssociationMatcher(List<Integer> allMetricSuspensionIds) {
+        
+        MetricAssociationMatcher suspensionAssociationMatcher = suspensionAssociationMatcher_;
+        
+        if ((suspensionAssociationMatcher == null) || !suspensionAssociationMatcher.isCurrent(allMetricSuspensionIds, 
+                GlobalVariables.mergedMatchRegexesBySuspensionId, GlobalVariables.mergedBlacklistRegexesBySuspensionId)) {
+            suspensionAssociationMatcher = new MetricAssociationMatcher(allMetricSuspensionIds, 
+                    GlobalVariables.mergedMatchRegexesBySuspensionId, GlobalVariables.mergedBlacklistRegexesBySuspensionId, !isLinearTimeRegexEngine());
+            suspensionAssociationMatcher_ = suspensionAssociationMatcher;
+        }
+        
+        return suspensionAssociationMatcher;
+    }
+    
     protected static void createMatchingMetricKeysDataStructuresForNewMetricGroupIds(List<Integer> metricGroupIds) {
         
         if (metricGroupIds == null) {
@@ -115,8 +221,8 @@ public class MetricAssociation {
             Set<String> matchingMetricKeyAssociations = GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup.get(metricGroupId);
 
             if (matchingMetricKeyAssociations == null) {
-                matchingMetricKeyAssociations = new HashSet<>();
-                GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup.put(metricGroupId, Collections.synchronizedSet(matchingMetricKeyAssociations));
+                matchingMetricKeyAssociations = new MetricKeySet(GlobalVariables.metricKeyDictionary);
+                GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup.put(metricGroupId, matchingMetricKeyAssociations);
             }
         }
     }
@@ -132,8 +238,8 @@ public class MetricAssociation {
             Set<String> matchingMetricKeyAssociations = GlobalVariables.matchingMetricKeysAssociatedWithSuspension.get(suspensionId);
 
             if (matchingMetricKeyAssociations == null) {
-                matchingMetricKeyAssociations = new HashSet<>();
-                GlobalVariables.matchingMetricKeysAssociatedWithSuspension.put(suspensionId, Collections.synchronizedSet(matchingMetricKeyAssociations));
+                matchingMetricKeyAssociations = new MetricKeySet(GlobalVariables.metricKeyDictionary);
+                GlobalVariables.matchingMetricKeysAssociatedWithSuspension.put(suspensionId, matchingMetricKeyAssociations);
             }
         }
     }
@@ -160,7 +266,7 @@ public class MetricAssociation {
         }
 
         long numNewKeysProcessed = 0;
-        ConcurrentHashMap<String,Boolean> metricKeysAssociatedWithOutputBlacklistMetricGroup_Local = new ConcurrentHashMap<>(); 
+        MetricKeyFlags metricKeysAssociatedWithOutputBlacklistMetricGroup_Local = new MetricKeyFlags(GlobalVariables.metricKeyDictionary); 
         ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithOutputBlacklistMetricGroup_Local = new ConcurrentHashMap<>();  
         
         //  wait until the the cleanup thread is done running
@@ -299,13 +405,13 @@ public class MetricAssociation {
     private static class metricKeyAssociation_Thread implements Runnable {
 		
         private final List<String> metricKeys__;
-        private final List<Integer> allMetricGroupIds__;
-        private final List<Integer> allMetricSuspensionIds__;
+        private final MetricAssociationMatcher metricGroupAssociationMatcher__;
+        private final MetricAssociationMatcher suspensionAssociationMatcher__;
         
-        public metricKeyAssociation_Thread(List<String> metricKeys, List<Integer> allMetricGroupIds, List<Integer> allMetricSuspensionIds) {
+        public metricKeyAssociation_Thread(List<String> metricKeys, MetricAssociationMatcher metricGroupAssociationMatcher, MetricAssociationMatcher suspensionAssociationMatcher) {
             this.metricKeys__ = metricKeys;
-            this.allMetricGroupIds__ = allMetricGroupIds;
-            this.allMetricSuspensionIds__ = allMetricSuspensionIds;
+            this.metricGroupAssociationMatcher__ = metricGroupAssociationMatcher;
+            this.suspensionAssociationMatcher__ = suspensionAssociationMatcher;
         }
         
         @Override
@@ -315,21 +421,17 @@ public class MetricAssociation {
                 ConcurrentHashMap<String,String> immediateCleanupMetrics = GlobalVariables.immediateCleanupMetrics;
                 if ((immediateCleanupMetrics != null) && !immediateCleanupMetrics.isEmpty() && immediateCleanupMetrics.containsKey(metricKey)) continue;
 
-                associateMetricKeyWithIds(metricKey, allMetricGroupIds__, 
-                        GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup, GlobalVariables.metricKeysAssociatedWithAnyMetricGroup, 
-                        GlobalVariables.mergedMatchRegexesByMetricGroupId, GlobalVariables.mergedBlacklistRegexesByMetricGroupId);
+                associateMetricKeyWithIds(metricKey, metricGroupAssociationMatcher__, 
+                        GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup, GlobalVariables.metricKeysAssociatedWithAnyMetricGroup);
 
-                associateMetricKeyWithIds(metricKey, allMetricSuspensionIds__, 
-                        GlobalVariables.matchingMetricKeysAssociatedWithSuspension, GlobalVariables.metricKeysAssociatedWithAnySuspension, 
-                        GlobalVariables.mergedMatchRegexesBySuspensionId, GlobalVariables.mergedBlacklistRegexesBySuspensionId);
+                associateMetricKeyWithIds(metricKey, suspensionAssociationMatcher__, 
+                        GlobalVariables.matchingMetricKeysAssociatedWithSuspension, GlobalVariables.metricKeysAssociatedWithAnySuspension);
             }
         }
     }
     
-    private static List<Integer> getMetricGroupIds_And_AssociateMetricKeysWithNewOrAlteredMetricGroups() {
+    private static List<Integer> getMetricGroupIds_And_DetectNewOrAlteredMetricGroups(List<Integer> newAndAlteredMetricGroupIds) {
         
-        List<String> metricsToReassociateWithAlteredMetricGroups = new ArrayList<>();
-        List<Integer> newAndAlteredMetricGroupIds = new ArrayList<>();
         List<Integer> allMetricGroupIds;
 
         synchronized(GlobalVariables.metricGroupChanges) {
@@ -341,7 +443,7 @@ public class MetricAssociation {
             associateMetricKeysWithNewOrAlteredIds_DetectChanges(GlobalVariables.metricGroupChanges, 
                     GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup, GlobalVariables.metricKeysAssociatedWithAnyMetricGroup, 
                     GlobalVariables.mergedMatchRegexesByMetricGroupId, GlobalVariables.mergedBlacklistRegexesByMetricGroupId,
-                    newAndAlteredMetricGroupIds, metricsToReassociateWithAlteredMetricGroups);
+                    newAndAlteredMetricGroupIds);
             
             updateMergedRegexesForMetricGroups(newAndAlteredMetricGroupIds);
             
@@ -353,24 +455,18 @@ public class MetricAssociation {
             }
         }
         
-        associateMetricKeysWithNewOrAlteredIds_AssociateMetrics(GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup, GlobalVariables.metricKeysAssociatedWithAnyMetricGroup,
-                GlobalVariables.mergedMatchRegexesByMetricGroupId, GlobalVariables.mergedBlacklistRegexesByMetricGroupId,
-                newAndAlteredMetricGroupIds, metricsToReassociateWithAlteredMetricGroups);
-            
         return allMetricGroupIds;
     }
 
-    private static List<Integer> getMetricSuspensionIds_And_AssociateMetricKeysWithNewOrAlteredSuspensions() {
+    private static List<Integer> getMetricSuspensionIds_And_DetectNewOrAlteredSuspensions(List<Integer> newAndAlteredSuspensionIds) {
         
-        List<String> metricsToReassociateWithAlteredSuspensions = new ArrayList<>();
-        List<Integer> newAndAlteredSuspensionIds = new ArrayList<>();
         List<Integer> allMetricSuspensionIds;
 
         synchronized(GlobalVariables.suspensionChanges) {
             associateMetricKeysWithNewOrAlteredIds_DetectChanges(GlobalVariables.suspensionChanges, 
                     GlobalVariables.matchingMetricKeysAssociatedWithSuspension, GlobalVariables.metricKeysAssociatedWithAnySuspension, 
                     GlobalVariables.mergedMatchRegexesBySuspensionId, GlobalVariables.mergedBlacklistRegexesBySuspensionId,
-                    newAndAlteredSuspensionIds, metricsToReassociateWithAlteredSuspensions);
+                    newAndAlteredSuspensionIds);
 
             updateMergedRegexesForSuspensions(newAndAlteredSuspensionIds);
 
@@ -382,22 +478,18 @@ public class MetricAssociation {
             }
         }
         
-        associateMetricKeysWithNewOrAlteredIds_AssociateMetrics(GlobalVariables.matchingMetricKeysAssociatedWithSuspension, GlobalVariables.metricKeysAssociatedWithAnySuspension,
-                GlobalVariables.mergedMatchRegexesBySuspensionId, GlobalVariables.mergedBlacklistRegexesBySuspensionId,
-                newAndAlteredSuspensionIds, metricsToReassociateWithAlteredSuspensions);
-            
         return allMetricSuspensionIds;
     }
     
     // update global variables for the case of a suspension or metric-group being newly added, altered, or removed
     // 'id' refers to either metric-group id or suspension id
     // a list of ids that are new or have been altered is written to 'newAndAlteredIds'
-    // a set of metrics to reassociate with ids that are new or altered is written to 'metricsToReassociateWithAlteredIds'
+    // altered ids keep their current associations until they are reassociated (see 'reassociateMetricKeysWithNewOrAlteredIds')
     private static void associateMetricKeysWithNewOrAlteredIds_DetectChanges(
             ConcurrentHashMap<Integer,Byte> changesById,
-            ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId, ConcurrentHashMap<String,Boolean> metricKeysAssociatedWithAnyId,
+            ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId, MetricKeyFlags metricKeysAssociatedWithAnyId,
             ConcurrentHashMap<Integer,String> mergedMatchRegexesById, ConcurrentHashMap<Integer,String> mergedBlacklistRegexesById,
-            List<Integer> newAndAlteredIds, List<String> metricsToReassociateWithAlteredIds) {
+            List<Integer> newAndAlteredIds) {
         
         Set<Integer> changeIds_Local = new HashSet<>(changesById.keySet());
 
@@ -408,25 +500,20 @@ public class MetricAssociation {
                 newAndAlteredIds.add(id);
             }
             else if ((changeCode != null) && changeCode.equals(GlobalVariables.ALTER)) {
-                Set<String> metricKeysWhereThisIdIsTheOnlyIdAssociated = getMetricKeysWhereThisIdIsTheOnlyIdAssociated(id, matchingMetricKeysAssociatedWithId);
-
-                for (String metricKey : metricKeysWhereThisIdIsTheOnlyIdAssociated) {
-                    metricKeysAssociatedWithAnyId.remove(metricKey);
-                    metricsToReassociateWithAlteredIds.add(metricKey);
-                }
-
-                matchingMetricKeysAssociatedWithId.remove(id);
-                mergedMatchRegexesById.remove(id);
-                mergedBlacklistRegexesById.remove(id);
+                removeUnusedLinearTimeRegexMatcher(mergedMatchRegexesById.remove(id));
+                removeUnusedLinearTimeRegexMatcher(mergedBlacklistRegexesById.remove(id));
                 newAndAlteredIds.add(id);
             }
             else if ((changeCode != null) && changeCode.equals(GlobalVariables.REMOVE)) {
-                Set<String> metricKeysWhereThisIdIsTheOnlyIdAssociated = getMetricKeysWhereThisIdIsTheOnlyIdAssociated(id, matchingMetricKeysAssociatedWithId);
-                for (String metricKey : metricKeysWhereThisIdIsTheOnlyIdAssociated) metricKeysAssociatedWithAnyId.put(metricKey, false);
-
-                matchingMetricKeysAssociatedWithId.remove(id);
-                mergedMatchRegexesById.remove(id);
-                mergedBlacklistRegexesById.remove(id);
+                // reassociation threads apply their changes while holding this lock, so they can't re-add metric-keys to a removed id
+                synchronized (metricKeysAssociatedWithAnyId) {
+                    Set<String> metricKeysWhereThisIdIsTheOnlyIdAssociated = getMetricKeysWhereThisIdIsTheOnlyIdAssociated(id, matchingMetricKeysAssociatedWithId);
+                    for (String metricKey : metricKeysWhereThisIdIsTheOnlyIdAssociated) metricKeysAssociatedWithAnyId.put(metricKey, false);
+
+                    matchingMetricKeysAssociatedWithId.remove(id);
+                    removeUnusedLinearTimeRegexMatcher(mergedMatchRegexesById.remove(id));
+                    removeUnusedLinearTimeRegexMatcher(mergedBlacklistRegexesById.remove(id));
+                }
             }
 
             changesById.remove(id);
@@ -434,28 +521,30 @@ public class MetricAssociation {
         
     }
     
-    private static void associateMetricKeysWithNewOrAlteredIds_AssociateMetrics(
-            ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId, ConcurrentHashMap<String,Boolean> metricKeysAssociatedWithAnyId,
-            ConcurrentHashMap<Integer,String> mergedMatchRegexesById, ConcurrentHashMap<Integer,String> mergedBlacklistRegexesById,
-            List<Integer> newAndAlteredIds, List<String> metricsToReassociateWithAlteredIds) {
+    /*
+     Submits a background reassociation thread for every new or altered id (suspension id or metric-group id).
+     The reassociation threads run one at a time, in the order that they were submitted. Each one evaluates the metric-keys in parallel chunks.
+    */
+    private static void reassociateMetricKeysWithNewOrAlteredIds(String threadId, List<Integer> newAndAlteredIds, int numThreads,
+            ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId, MetricKeyFlags metricKeysAssociatedWithAnyId,
+            ConcurrentHashMap<Integer,String> mergedMatchRegexesById, ConcurrentHashMap<Integer,String> mergedBlacklistRegexesById) {
+        
+        if ((newAndAlteredIds == null) || newAndAlteredIds.isEmpty()) {
+            return;
+        }
         
-        // only run the association routine against metrics that have already been through the association routine before
         for (Integer id : newAndAlteredIds) {
-            for (String metricKey : metricKeysAssociatedWithAnyId.keySet()) {
-                associateMetricKeyWithId(metricKey, id, matchingMetricKeysAssociatedWithId, mergedMatchRegexesById, mergedBlacklistRegexesById);
-            }
+            if (id == null) continue;
             
-            for (String metricKey : metricsToReassociateWithAlteredIds) {
-                associateMetricKeyWithId(metricKey, id, matchingMetricKeysAssociatedWithId, mergedMatchRegexesById, mergedBlacklistRegexesById);
+            MetricReassociationThread metricReassociationThread = new MetricReassociationThread(threadId, id, 
+                    mergedMatchRegexesById.get(id), mergedBlacklistRegexesById.get(id), numThreads, 
+                    matchingMetricKeysAssociatedWithId, metricKeysAssociatedWithAnyId, mergedMatchRegexesById, mergedBlacklistRegexesById);
+            
+            try {
+                reassociationThreadExecutor_.execute(metricReassociationThread);
             }
-
-            Set<String> matchingMetricKeyAssociatedWithId = matchingMetricKeysAssociatedWithId.get(id);
-            if (matchingMetricKeyAssociatedWithId == null) continue;
-
-            synchronized (matchingMetricKeyAssociatedWithId) {
-                for (String metricKey : matchingMetricKeyAssociatedWithId) {
-                    metricKeysAssociatedWithAnyId.put(metricKey, true);
-                }
+            catch (Exception e) {
+                logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
             }
         }
         
@@ -467,38 +556,45 @@ public class MetricAssociation {
     private static Set<String> getMetricKeysWhereThisIdIsTheOnlyIdAssociated(Integer id, ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId) {
                 
         try {
-            Set<String> metricKeysWhereThisIdIsTheOnlyIdAssociated;
-            Set<String> matchingMetricKeys = matchingMetricKeysAssociatedWithId.get(id);
+            IntegerBitmap metricKeyIdsWhereThisIdIsTheOnlyIdAssociated = getMetricKeyIds(matchingMetricKeysAssociatedWithId.get(id));
 
-            if (matchingMetricKeys != null) {
-                synchronized(matchingMetricKeys) {
-                    metricKeysWhereThisIdIsTheOnlyIdAssociated = new HashSet<>(matchingMetricKeys);
-                }
-            }
-            else metricKeysWhereThisIdIsTheOnlyIdAssociated = new HashSet<>();
-
-            if (!metricKeysWhereThisIdIsTheOnlyIdAssociated.isEmpty()) {
+            if (!metricKeyIdsWhereThisIdIsTheOnlyIdAssociated.isEmpty()) {
                 for (Integer currentId : matchingMetricKeysAssociatedWithId.keySet()) {
                     if (id.equals(currentId)) continue;
 
                     Set<String> currentMatchingMetricKeysAssociatedWithId = matchingMetricKeysAssociatedWithId.get(currentId);
                     if (currentMatchingMetricKeysAssociatedWithId == null) continue;
 
-                    synchronized(currentMatchingMetricKeysAssociatedWithId) {
-                        for (String metricKey : currentMatchingMetricKeysAssociatedWithId) {
-                            metricKeysWhereThisIdIsTheOnlyIdAssociated.remove(metricKey);
-                        }
-                    }
+                    metricKeyIdsWhereThisIdIsTheOnlyIdAssociated.andNot(getMetricKeyIds(currentMatchingMetricKeysAssociatedWithId));
+                    if (metricKeyIdsWhereThisIdIsTheOnlyIdAssociated.isEmpty()) break;
                 }
             }
 
-            return metricKeysWhereThisIdIsTheOnlyIdAssociated;
+            return new HashSet<>(MetricKeySet.getMetricKeys(GlobalVariables.metricKeyDictionary, metricKeyIdsWhereThisIdIsTheOnlyIdAssociated));
         }
         catch (Exception e) {
             logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
             return new HashSet<>();
         }
     }
+    
+    /*
+     Gets a bitmap of the metric-key dictionary ids of a set of metric-keys. The bitmap is a copy, so it can be freely modified.
+    */
+    private static IntegerBitmap getMetricKeyIds(Set<String> metricKeys) {
+        
+        if (metricKeys == null) {
+            return new IntegerBitmap();
+        }
+        
+        if (metricKeys instanceof MetricKeySet) {
+            return ((MetricKeySet) metricKeys).getMetricKeyIds();
+        }
+        
+        synchronized(metricKeys) {
+            return MetricKeySet.getExistingMetricKeys(GlobalVariables.metricKeyDictionary, metricKeys).getMetricKeyIds();
+        }
+    }
 
     /*
      For a specific id (suspension id or metric-group id), determine if this metric key is associated with it. 
@@ -519,31 +615,15 @@ public class MetricAssociation {
             String matchRegex = mergedMatchRegexesById.get(id);
             if (matchRegex == null) return null;
 
-            Pattern matchPattern = getPatternFromRegexString(matchRegex);
-
-            if (matchPattern != null) {
-                Matcher matchMatcher = matchPattern.matcher(metricKey);
-                boolean isMatchRegexMatch = matchMatcher.matches();
-                boolean isMetricKeyAssociatedWithId = false;
-
-                if (isMatchRegexMatch) {
-                    String blacklistRegex = mergedBlacklistRegexesById.get(id);
-                    Pattern blacklistPattern = getPatternFromRegexString(blacklistRegex);
-
-                    if (blacklistPattern != null) {
-                        Matcher blacklistMatcher = blacklistPattern.matcher(metricKey);
-                        boolean isBlacklistRegexMatch = blacklistMatcher.matches();
-                        if (!isBlacklistRegexMatch) isMetricKeyAssociatedWithId = true;
-                    }
-                    else isMetricKeyAssociatedWithId = true;
-                }
+            Boolean isMetricKeyAssociatedWithId = isMetricKeyAssociatedWithRegexes(metricKey, matchRegex, mergedBlacklistRegexesById.get(id));
 
+            if (isMetricKeyAssociatedWithId != null) {
                 if (isMetricKeyAssociatedWithId) {
                     Set<String> matchingMetricKeyAssociations = matchingMetricKeysAssociatedWithId.get(id);
 
                     if (matchingMetricKeyAssociations == null) {
-                        matchingMetricKeyAssociations = new HashSet<>();
-                        matchingMetricKeysAssociatedWithId.put(id, Collections.synchronizedSet(matchingMetricKeyAssociations));
+                        matchingMetricKeyAssociations = new MetricKeySet(GlobalVariables.metricKeyDictionary);
+                        matchingMetricKeysAssociatedWithId.put(id, matchingMetricKeyAssociations);
                     }
 
                     matchingMetricKeyAssociations.add(metricKey);
@@ -559,58 +639,55 @@ public class MetricAssociation {
         return didMatch;
     }
     
+    /*
+     Determines if a metric-key matches a match regex & doesn't match a blacklist regex. A blacklist regex that is null (or can't be evaluated) doesn't exclude anything.
+     Returns null if the match regex can't be evaluated, otherwise returns whether the metric-key is associated.
+    */
+    protected static Boolean isMetricKeyAssociatedWithRegexes(String metricKey, String matchRegex, String blacklistRegex) {
+        
+        Boolean isMatchRegexMatch = isRegexMatch(matchRegex, metricKey);
+        if (isMatchRegexMatch == null) return null;
+        if (!isMatchRegexMatch) return false;
+        
+        Boolean isBlacklistRegexMatch = isRegexMatch(blacklistRegex, metricKey);
+        return (isBlacklistRegexMatch == null) || !isBlacklistRegexMatch;
+    }
+    
     /*
      This method performs two tasks. 
      Task 1: Determines if a metric key is associated with ANY id (where id is either a suspension id or a metric-group id). 
              The boolean value of this determination is returned & is stored in 'metricKeysAssociatedWithAnyId'.
      Task 2: For every id (where id is either a suspension id or a metric-group id), determine if this metric key is associated with it. 
              If the association is true, then the association is cached in 'matchingMetricKeysAssociatedWithId'.
+     Every id's regexes are evaluated in a single pass over the metric key, using the combined regex automaton in 'metricAssociationMatcher'.
      */
-    private static void associateMetricKeyWithIds(String metricKey, List<Integer> ids,
+    private static void associateMetricKeyWithIds(String metricKey, MetricAssociationMatcher metricAssociationMatcher,
             ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId,
-            ConcurrentHashMap<String,Boolean> metricKeysAssociatedWithAnyId,
-            ConcurrentHashMap<Integer,String> mergedMatchRegexesById,
-            ConcurrentHashMap<Integer,String> mergedBlacklistRegexesById) {
+            MetricKeyFlags metricKeysAssociatedWithAnyId) {
         
         Boolean isMetricKeyAssociatedWithAnyId = metricKeysAssociatedWithAnyId.get(metricKey);
         if (isMetricKeyAssociatedWithAnyId != null) return;
         isMetricKeyAssociatedWithAnyId = false;
 
-        for (Integer id : ids) {
+        List<Integer> associatedIds = new ArrayList<>();
+        
+        try {
+            if (metricAssociationMatcher != null) associatedIds = metricAssociationMatcher.getAssociatedIds(metricKey);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+            
+        for (Integer id : associatedIds) {
             try {
-                String matchRegex = mergedMatchRegexesById.get(id);
-                if (matchRegex == null) continue;
+                Set<String> matchingMetricKeyAssociations = matchingMetricKeysAssociatedWithId.get(id);
 
-                Pattern matchPattern = getPatternFromRegexString(matchRegex);
-
-                if (matchPattern != null) {
-                    Matcher matchMatcher = matchPattern.matcher(metricKey);
-                    boolean isMatchRegexMatch = matchMatcher.matches();
-                    boolean isMetricKeyAssociatedWithId = false;
-
-                    if (isMatchRegexMatch) {
-                        String blacklistRegex = mergedBlacklistRegexesById.get(id);
-                        Pattern blacklistPattern = getPatternFromRegexString(blacklistRegex);
-                        
-                        if (blacklistPattern != null) {
-                            Matcher blacklistMatcher = blacklistPattern.matcher(metricKey);
-                            boolean isBlacklistRegexMatch = blacklistMatcher.matches();
-                            if (!isBlacklistRegexMatch) isMetricKeyAssociatedWithId = true;
-                        }
-                        else isMetricKeyAssociatedWithId = true;
-                    }
-                    
-                    if (isMetricKeyAssociatedWithId) {
-                        Set<String> matchingMetricKeyAssociations = matchingMetricKeysAssociatedWithId.get(id);
-                        
-                        if (matchingMetricKeyAssociations != null) {
-                            matchingMetricKeyAssociations.add(metricKey);
-                            isMetricKeyAssociatedWithAnyId = true;
-                        }
-                        else {
-                            logger.error("This shouldn't be possible. MG or Suspension does not have a matchingMetricKeyAssociations datastructure. ID=" + id);
-                        }
-                    }
+                if (matchingMetricKeyAssociations != null) {
+                    matchingMetricKeyAssociations.add(metricKey);
+                    isMetricKeyAssociatedWithAnyId = true;
+                }
+                else {
+                    logger.error("This shouldn't be possible. MG or Suspension does not have a matchingMetricKeyAssociations datastructure. ID=" + id);
                 }
             }
             catch (Exception e) {
@@ -649,6 +726,122 @@ public class MetricAssociation {
         return pattern;
     }
     
+    public static boolean isLinearTimeRegexEngine() {
+        return REGEX_ENGINE_LINEAR.equals(ApplicationConfiguration.getAlertMetricAssociationRegexEngine());
+    }
+    
+    /*
+    Gets the linear-time automaton for a regex. Returns null if the regex doesn't compile, or if it uses constructs that the automaton doesn't support.
+    */
+    public static MultiRegexMatcher getLinearTimeRegexMatcherFromRegexString(String regex) {
+
+        if ((regex == null) || (getPatternFromRegexString(regex) == null)) {
+            return null;
+        }
+
+        MultiRegexMatcher multiRegexMatcher = linearTimeRegexMatchers_.get(regex);
+        
+        if (multiRegexMatcher == null) {
+            List<String> regexes = new ArrayList<>();
+            regexes.add(regex);
+            multiRegexMatcher = new MultiRegexMatcher(regexes);
+            
+            if (!multiRegexMatcher.isSupported(0)) {
+                logger.warn("Routine=MetricAssociation, Message=\"Regex is not supported by the linear-time regex engine & will not match any metrics\", "
+                        + "Reason=\"" + multiRegexMatcher.getUnsupportedReason(0) + "\", Regex=\"" + regex + "\"");
+            }
+            
+            linearTimeRegexMatchers_.put(regex, multiRegexMatcher);
+        }
+
+        return multiRegexMatcher.isSupported(0) ? multiRegexMatcher : null;
+    }
+    
+    /*
+    Drops the cached linear-time automaton for a regex that a metric group or suspension stopped using (because it was altered or removed).
+    The automaton is kept if another metric group or suspension still uses the same regex.
+    */
+    private static void removeUnusedLinearTimeRegexMatcher(String regex) {
+        
+        if (regex == null) {
+            return;
+        }
+        
+        if (GlobalVariables.mergedMatchRegexesByMetricGroupId.containsValue(regex) || GlobalVariables.mergedBlacklistRegexesByMetricGroupId.containsValue(regex) ||
+                GlobalVariables.mergedMatchRegexesBySuspensionId.containsValue(regex) || GlobalVariables.mergedBlacklistRegexesBySuspensionId.containsValue(regex)) {
+            return;
+        }
+        
+        linearTimeRegexMatchers_.remove(regex);
+    }
+    
+    /*
+    Evaluates a regex against a metric-key with the configured regex engine.
+    Returns null if the regex can't be evaluated, false if the metric-key did not match the regex, true if the metric-key did match the regex
+    */
+    private static Boolean isRegexMatch(String regex, String metricKey) {
+        
+        if ((regex == null) || (metricKey == null)) {
+            return null;
+        }
+        
+        if (isLinearTimeRegexEngine()) {
+            MultiRegexMatcher multiRegexMatcher = getLinearTimeRegexMatcherFromRegexString(regex);
+            if (multiRegexMatcher == null) return null;
+            return multiRegexMatcher.matchesAny(metricKey);
+        }
+        else {
+            Pattern pattern = getPatternFromRegexString(regex);
+            if (pattern == null) return null;
+            return pattern.matcher(metricKey).matches();
+        }
+    }
+    
+    /*
+    Checks that a user-entered regex can be used for metric association.
+    Returns null if the regex is valid, otherwise returns the reason that the regex was rejected.
+    When the 'linear' regex engine is configured, regexes that the linear-time automaton doesn't support are rejected.
+    */
+    public static String getRegexValidationError(String regex) {
+        
+        if (regex == null) {
+            return "Regex is null";
+        }
+        
+        try {
+            Pattern.compile(regex);
+        }
+        catch (Exception e) {
+            return "Invalid regex: " + e.getMessage();
+        }
+        
+        if (isLinearTimeRegexEngine()) {
+            String unsupportedReason = MultiRegexMatcher.getUnsupportedReason(regex);
+            if (unsupportedReason != null) return "Not supported by the linear-time regex engine: " + unsupportedReason;
+        }
+        
+        return null;
+    }
+    
+    /*
+    Checks every regex in a collection of user-entered regexes. Returns null if they are all valid, otherwise returns the reason that the first invalid regex was rejected.
+    */
+    public static String getRegexValidationError(Collection<String> regexes) {
+        
+        if (regexes == null) {
+            return null;
+        }
+        
+        for (String regex : regexes) {
+            if (regex == null) continue;
+            
+            String regexValidationError = getRegexValidationError(regex);
+            if (regexValidationError != null) return "Regex=\"" + regex + "\", " + regexValidationError;
+        }
+        
+        return null;
+    }
+    
     // update GlobalVariables.mergedMatchRegexesByMetricGroupId & GlobalVariables.mergedBlacklistRegexesByMetricGroupId with the latest merged regexes
     // also update regexPatterns_ & regexBlacklist_ with the latest patterns
     public static void updateMergedRegexesForMetricGroups(List<Integer> metricGroupIds) {
@@ -745,36 +938,34 @@ public class MetricAssociation {
             return new ArrayList<>();
         }
 
-        Set<String> matchingMetricKeysAssociatedWithMetricGroup = GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup.get(alert.getMetricGroupId());
-        Set<String> metricKeysAssociatedWithAlert;
-        
-        if (matchingMetricKeysAssociatedWithMetricGroup != null) {
-            
-            synchronized(matchingMetricKeysAssociatedWithMetricGroup) {
-                metricKeysAssociatedWithAlert = new HashSet<>(matchingMetricKeysAssociatedWithMetricGroup);
-            }
-            
-            if (metricKeysAssociatedWithAlert.size() >= suspendedMetricKeys.size()) {
-                metricKeysAssociatedWithAlert.removeAll(suspendedMetricKeys);
-            }
-            else {
-                Set<String> metricKeysAssociatedWithAlert_Temp = new HashSet<>();
-                
-                for (String metricKeyAssociatedWithAlert : metricKeysAssociatedWithAlert) {
-                    if (!suspendedMetricKeys.contains(metricKeyAssociatedWithAlert)) metricKeysAssociatedWithAlert_Temp.add(metricKeyAssociatedWithAlert);
-                }
-                
-                metricKeysAssociatedWithAlert = metricKeysAssociatedWithAlert_Temp;
-            }
+        return getMetricKeysAssociatedWithMetricGroup(alert.getMetricGroupId(), suspendedMetricKeys);
+    }
+    
+    /*
+    Gets the metric-keys that are associated with a metric group, minus any metric-keys that are suspended.
+    Every alert that targets the same metric group is associated with this same set of metric-keys.
+    The suspended metric-keys are removed with a bitmap 'andNot', which is cheapest when 'suspendedMetricKeys' is a MetricKeySet.
+    */
+    public static List<String> getMetricKeysAssociatedWithMetricGroup(Integer metricGroupId, Set<String> suspendedMetricKeys) {
+
+        if (metricGroupId == null) {
+            return new ArrayList<>();
         }
-        else {
-            metricKeysAssociatedWithAlert = new HashSet<>();
+
+        Set<String> matchingMetricKeysAssociatedWithMetricGroup = GlobalVariables.matchingMetricKeysAssociatedWithMetricGroup.get(metricGroupId);
+        
+        if (matchingMetricKeysAssociatedWithMetricGroup == null) {
+            return new ArrayList<>();
         }
+        
+        IntegerBitmap metricKeyIdsAssociatedWithAlert = getMetricKeyIds(matchingMetricKeysAssociatedWithMetricGroup);
+        if ((suspendedMetricKeys != null) && !suspendedMetricKeys.isEmpty()) metricKeyIdsAssociatedWithAlert.andNot(getMetricKeyIds(suspendedMetricKeys));
 
-        return new ArrayList<>(metricKeysAssociatedWithAlert);
+        return MetricKeySet.getMetricKeys(GlobalVariables.metricKeyDictionary, metricKeyIdsAssociatedWithAlert);
     }
 
     // if metricMatchLimit < 0, then it is treated as infinite
+    // when the 'linear' regex engine is configured, the regexes are evaluated with the linear-time automaton (& regexes that it doesn't support don't match anything)
     public static Set<String> getRegexMatches(Set<String> metricKeys, String matchRegex, String blacklistRegex, int metricMatchLimit) {
         
         if ((metricKeys == null) || (matchRegex == null)) {
@@ -782,10 +973,21 @@ public class MetricAssociation {
         }
         
         Pattern matchPattern = null, blacklistPattern = null;
+        MultiRegexMatcher matchRegexMatcher = null, blacklistRegexMatcher = null;
         
         try {
             matchPattern = Pattern.compile(matchRegex.trim());
             if ((blacklistRegex != null) && !blacklistRegex.isEmpty()) blacklistPattern = Pattern.compile(blacklistRegex.trim());
+            
+            if (isLinearTimeRegexEngine()) {
+                matchRegexMatcher = new MultiRegexMatcher(Collections.singletonList(matchRegex.trim()));
+                if (!matchRegexMatcher.isSupported(0)) matchPattern = null;
+                
+                if (blacklistPattern != null) {
+                    blacklistRegexMatcher = new MultiRegexMatcher(Collections.singletonList(blacklistRegex.trim()));
+                    if (!blacklistRegexMatcher.isSupported(0)) blacklistPattern = null;
+                }
+            }
         }
         catch (Exception e) {
             logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
@@ -799,13 +1001,13 @@ public class MetricAssociation {
                 boolean isAnyMatchLimt = (metricMatchLimit >= 0);
 
                 for (String metricKey : metricKeys) {
-                    Matcher matcher = matchPattern.matcher(metricKey);
+                    boolean isMatch = (matchRegexMatcher != null) ? matchRegexMatcher.matchesAny(metricKey) : matchPattern.matcher(metricKey).matches();
 
-                    if (matcher.matches()) {
+                    if (isMatch) {
                         if (blacklistPattern != null) {
-                            Matcher blacklistMatcher = blacklistPattern.matcher(metricKey);
+                            boolean isBlacklistMatch = (blacklistRegexMatcher != null) ? blacklistRegexMatcher.matchesAny(metricKey) : blacklistPattern.matcher(metricKey).matches();
 
-                            if (!blacklistMatcher.matches()) {
+                            if (!isBlacklistMatch) {
                                 matchingMetricKeys.add(metricKey);
                                 matchCounter++;
                             }
@@ -0,0 +1,246 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.utilities.AhoCorasickAutomaton;
+import com.pearson.statsagg.utilities.MultiRegexMatcher;
+import com.pearson.statsagg.utilities.StackTrace;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Determines which ids (metric-group ids or suspension ids) a metric-key is associated with, using one combined automaton for every
+ * id's merged 'match' regex & another combined automaton for every id's merged 'blacklist' regex. Each new metric-key is scanned once per
+ * automaton, instead of once per id.
+ *
+ * Regexes that the automaton doesn't support are evaluated individually with java.util.regex, the same way that they always have been.
+ * Those regexes are prefiltered by the literals that they require: a regex is only evaluated if the metric-key contains one of its required literals.
+ * If the java.util.regex fallback is disabled (the 'linear' regex engine), then unsupported regexes are treated the same as regexes that don't compile, 
+ * so every metric-key is matched in time that is linear in its length.
+ *
+ * A MetricAssociationMatcher is an immutable snapshot of the ids & merged regexes that it was created from.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class MetricAssociationMatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricAssociationMatcher.class.getName());
+
+    private final List<Integer> ids_;
+    private final List<String> matchRegexes_;
+    private final List<String> blacklistRegexes_;
+
+    private final MultiRegexMatcher matchRegexMatcher_;
+    private final MultiRegexMatcher blacklistRegexMatcher_;
+
+    // indexes (into ids_) of the match/blacklist regexes that have to be evaluated with java.util.regex
+    private final int[] unsupportedMatchRegexIndexes_;
+    private final boolean[] isBlacklistRegexUnsupported_;
+    
+    // prefilter for the unsupported match regexes. each literal belongs to a position in 'unsupportedMatchRegexIndexes_'.
+    // the regexes at 'unfilteredUnsupportedMatchRegexPositions_' don't have any required literals, so they are always evaluated.
+    private final AhoCorasickAutomaton unsupportedMatchRegexLiterals_;
+    private final int[] unsupportedMatchRegexLiteralPositions_;
+    private final BitSet unfilteredUnsupportedMatchRegexPositions_;
+
+    public MetricAssociationMatcher(List<Integer> ids, Map<Integer,String> mergedMatchRegexesById, Map<Integer,String> mergedBlacklistRegexesById) {
+        this(ids, mergedMatchRegexesById, mergedBlacklistRegexesById, true);
+    }
+    
+    public MetricAssociationMatcher(List<Integer> ids, Map<Integer,String> mergedMatchRegexesById, Map<Integer,String> mergedBlacklistRegexesById, boolean isJavaRegexFallbackEnabled) {
+
+        List<Integer> idsLocal = new ArrayList<>();
+        List<String> matchRegexes = new ArrayList<>();
+        List<String> blacklistRegexes = new ArrayList<>();
+
+        if (ids != null) {
+            for (Integer id : ids) {
+                if (id == null) continue;
+
+                String matchRegex = (mergedMatchRegexesById == null) ? null : mergedMatchRegexesById.get(id);
+                String blacklistRegex = (mergedBlacklistRegexesById == null) ? null : mergedBlacklistRegexesById.get(id);
+
+                idsLocal.add(id);
+                matchRegexes.add(matchRegex);
+                blacklistRegexes.add(blacklistRegex);
+            }
+        }
+
+        ids_ = Collections.unmodifiableList(idsLocal);
+        matchRegexes_ = Collections.unmodifiableList(matchRegexes);
+        blacklistRegexes_ = Collections.unmodifiableList(blacklistRegexes);
+
+        // regexes that java.util.regex can't compile never match (match regexes), or are ignored (blacklist regexes)
+        matchRegexMatcher_ = new MultiRegexMatcher(getValidRegexes(matchRegexes_));
+        blacklistRegexMatcher_ = new MultiRegexMatcher(getValidRegexes(blacklistRegexes_));
+
+        List<Integer> unsupportedMatchRegexIndexes = new ArrayList<>();
+        isBlacklistRegexUnsupported_ = new boolean[ids_.size()];
+        int unsupportedRegexCount = 0;
+
+        for (int i = 0; i < ids_.size(); i++) {
+            if (!isJavaRegexFallbackEnabled) {
+                if ((matchRegexes_.get(i) != null) && !matchRegexMatcher_.isSupported(i)) unsupportedRegexCount++;
+                if ((blacklistRegexes_.get(i) != null) && !blacklistRegexMatcher_.isSupported(i)) unsupportedRegexCount++;
+                continue;
+            }
+            
+            if ((matchRegexes_.get(i) != null) && !matchRegexMatcher_.isSupported(i) && (MetricAssociation.getPatternFromRegexString(matchRegexes_.get(i)) != null)) {
+                unsupportedMatchRegexIndexes.add(i);
+            }
+
+            if ((blacklistRegexes_.get(i) != null) && !blacklistRegexMatcher_.isSupported(i) && (MetricAssociation.getPatternFromRegexString(blacklistRegexes_.get(i)) != null)) {
+                isBlacklistRegexUnsupported_[i] = true;
+            }
+        }
+
+        unsupportedMatchRegexIndexes_ = new int[unsupportedMatchRegexIndexes.size()];
+        for (int i = 0; i < unsupportedMatchRegexIndexes_.length; i++) unsupportedMatchRegexIndexes_[i] = unsupportedMatchRegexIndexes.get(i);
+
+        List<String> unsupportedMatchRegexLiterals = new ArrayList<>();
+        List<Integer> unsupportedMatchRegexLiteralPositions = new ArrayList<>();
+        unfilteredUnsupportedMatchRegexPositions_ = new BitSet(unsupportedMatchRegexIndexes_.length);
+        
+        for (int position = 0; position < unsupportedMatchRegexIndexes_.length; position++) {
+            List<String> requiredLiterals = MultiRegexMatcher.getRequiredLiterals(matchRegexes_.get(unsupportedMatchRegexIndexes_[position]));
+            
+            if (requiredLiterals == null) {
+                unfilteredUnsupportedMatchRegexPositions_.set(position);
+                continue;
+            }
+            
+            for (String requiredLiteral : requiredLiterals) {
+                unsupportedMatchRegexLiterals.add(requiredLiteral);
+                unsupportedMatchRegexLiteralPositions.add(position);
+            }
+        }
+        
+        unsupportedMatchRegexLiterals_ = new AhoCorasickAutomaton(unsupportedMatchRegexLiterals);
+        unsupportedMatchRegexLiteralPositions_ = new int[unsupportedMatchRegexLiteralPositions.size()];
+        for (int i = 0; i < unsupportedMatchRegexLiteralPositions_.length; i++) unsupportedMatchRegexLiteralPositions_[i] = unsupportedMatchRegexLiteralPositions.get(i);
+        
+        if (unsupportedRegexCount > 0) {
+            logger.warn("Message=\"" + unsupportedRegexCount + " merged regexes can't be evaluated by the linear-time regex engine. "
+                    + "Those regexes will not match any metrics.\"");
+        }
+        
+        if (unsupportedMatchRegexIndexes_.length > 0) {
+            logger.info("Message=\"" + unsupportedMatchRegexIndexes_.length + " of " + ids_.size() + " merged regexes can't be evaluated by the combined regex automaton. "
+                    + "Falling back to java.util.regex for those regexes.\"");
+        }
+    }
+
+    private static List<String> getValidRegexes(List<String> regexes) {
+
+        List<String> validRegexes = new ArrayList<>(regexes.size());
+
+        for (String regex : regexes) {
+            if ((regex != null) && (MetricAssociation.getPatternFromRegexString(regex) != null)) validRegexes.add(regex);
+            else validRegexes.add(null);
+        }
+
+        return validRegexes;
+    }
+
+    /*
+    Returns true if this matcher was created from the same ids & merged regexes.
+    */
+    public boolean isCurrent(List<Integer> ids, Map<Integer,String> mergedMatchRegexesById, Map<Integer,String> mergedBlacklistRegexesById) {
+
+        if (ids == null) {
+            return ids_.isEmpty();
+        }
+
+        int i = 0;
+
+        for (Integer id : ids) {
+            if (id == null) continue;
+            if ((i >= ids_.size()) || !id.equals(ids_.get(i))) return false;
+
+            String matchRegex = (mergedMatchRegexesById == null) ? null : mergedMatchRegexesById.get(id);
+            String blacklistRegex = (mergedBlacklistRegexesById == null) ? null : mergedBlacklistRegexesById.get(id);
+            if (!Objects.equals(matchRegex, matchRegexes_.get(i)) || !Objects.equals(blacklistRegex, blacklistRegexes_.get(i))) return false;
+
+            i++;
+        }
+
+        return i == ids_.size();
+    }
+
+    /*
+    Returns the ids that the metric-key matches the merged 'match' regex of, and doesn't match the merged 'blacklist' regex of.
+    Each id's individual (java.util.regex) evaluation is isolated, so a problem with one id's regexes doesn't keep the metric-key from being associated with the other ids.
+    */
+    public List<Integer> getAssociatedIds(String metricKey) {
+
+        if (metricKey == null) {
+            return new ArrayList<>();
+        }
+
+        List<Integer> associatedIds = new ArrayList<>();
+        int[] blacklistedIndexes = null;
+
+        int[] matchingIndexes = matchRegexMatcher_.getMatchingRegexIndexes(metricKey);
+
+        for (int index : matchingIndexes) {
+            if (blacklistedIndexes == null) blacklistedIndexes = blacklistRegexMatcher_.getMatchingRegexIndexes(metricKey);
+            
+            try {
+                if (!isBlacklisted(index, metricKey, blacklistedIndexes)) associatedIds.add(ids_.get(index));
+            }
+            catch (Exception e) {
+                logger.error("Id=" + ids_.get(index) + ", " + e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            }
+        }
+
+        if (unsupportedMatchRegexIndexes_.length == 0) {
+            return associatedIds;
+        }
+        
+        BitSet candidatePositions = (BitSet) unfilteredUnsupportedMatchRegexPositions_.clone();
+        BitSet containedLiteralIndexes = unsupportedMatchRegexLiterals_.getContainedLiteralIndexes(metricKey);
+        for (int i = containedLiteralIndexes.nextSetBit(0); i >= 0; i = containedLiteralIndexes.nextSetBit(i + 1)) candidatePositions.set(unsupportedMatchRegexLiteralPositions_[i]);
+        
+        for (int position = candidatePositions.nextSetBit(0); position >= 0; position = candidatePositions.nextSetBit(position + 1)) {
+            int index = unsupportedMatchRegexIndexes_[position];
+            
+            try {
+                Pattern matchPattern = MetricAssociation.getPatternFromRegexString(matchRegexes_.get(index));
+                if ((matchPattern == null) || !matchPattern.matcher(metricKey).matches()) continue;
+
+                if (blacklistedIndexes == null) blacklistedIndexes = blacklistRegexMatcher_.getMatchingRegexIndexes(metricKey);
+                if (!isBlacklisted(index, metricKey, blacklistedIndexes)) associatedIds.add(ids_.get(index));
+            }
+            catch (Exception e) {
+                logger.error("Id=" + ids_.get(index) + ", " + e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            }
+        }
+
+        return associatedIds;
+    }
+
+    private boolean isBlacklisted(int index, String metricKey, int[] blacklistedIndexes) {
+
+        if (isBlacklistRegexUnsupported_[index]) {
+            Pattern blacklistPattern = MetricAssociation.getPatternFromRegexString(blacklistRegexes_.get(index));
+            return (blacklistPattern != null) && blacklistPattern.matcher(metricKey).matches();
+        }
+
+        return Arrays.binarySearch(blacklistedIndexes, index) >= 0;
+    }
+
+    public int getIdCount() {
+        return ids_.size();
+    }
+
+    public int getUnsupportedMatchRegexCount() {
+        return unsupportedMatchRegexIndexes_.length;
+    }
+
+}
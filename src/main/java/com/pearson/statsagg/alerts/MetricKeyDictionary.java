@@ -0,0 +1,133 @@
+package com.pearson.statsagg.alerts;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Assigns every metric-key a dense int id, so that metric-key associations can be stored as bitmaps of ids instead of sets of strings.
+ * Ids of removed metric-keys are reused, which keeps the ids (& the bitmaps) dense.
+ * A metric-key must be removed from every bitmap before it is removed from the dictionary, otherwise its id could be handed to a different metric-key.
+ * Released ids aren't reused until 'recycleReleasedIds' is called, so that a routine that was already running when a metric-key was removed 
+ * (& may still be holding on to its id) finishes before the id is handed out again.
+ *
+ * Lookups are lock-free. Assigning & releasing ids is synchronized.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class MetricKeyDictionary {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricKeyDictionary.class.getName());
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ConcurrentHashMap<String,Integer> idsByMetricKey_ = new ConcurrentHashMap<>(16, 0.75f, 6);
+    private volatile String[] metricKeysById_ = new String[INITIAL_CAPACITY];
+    private int nextUnusedId_ = 0;
+
+    // ids that were released by removed metric-keys, and can be reused. used as a stack.
+    private int[] reusableIds_ = new int[16];
+    private int reusableIdCount_ = 0;
+    
+    // ids that were released by removed metric-keys, but can't be reused until the next call to 'recycleReleasedIds'
+    private int[] releasedIds_ = new int[16];
+    private int releasedIdCount_ = 0;
+
+    /*
+    Returns the id of the metric-key, or null if the metric-key doesn't have an id.
+    */
+    public Integer getId(String metricKey) {
+
+        if (metricKey == null) {
+            return null;
+        }
+
+        return idsByMetricKey_.get(metricKey);
+    }
+
+    /*
+    Returns the id of the metric-key. A new id is assigned if the metric-key doesn't already have one.
+    */
+    public int getOrCreateId(String metricKey) {
+
+        Integer id = idsByMetricKey_.get(metricKey);
+        if (id != null) return id;
+
+        synchronized (this) {
+            id = idsByMetricKey_.get(metricKey);
+            if (id != null) return id;
+
+            int newId;
+            if (reusableIdCount_ > 0) newId = reusableIds_[--reusableIdCount_];
+            else newId = nextUnusedId_++;
+
+            String[] metricKeysById = metricKeysById_;
+            if (newId >= metricKeysById.length) metricKeysById = Arrays.copyOf(metricKeysById, Math.max(newId + 1, metricKeysById.length * 2));
+            metricKeysById[newId] = metricKey;
+            metricKeysById_ = metricKeysById;
+
+            idsByMetricKey_.put(metricKey, newId);
+
+            return newId;
+        }
+    }
+
+    /*
+    Returns the metric-key that has the id, or null if no metric-key has the id.
+    */
+    public String getMetricKey(int id) {
+
+        String[] metricKeysById = metricKeysById_;
+
+        if ((id < 0) || (id >= metricKeysById.length)) {
+            return null;
+        }
+
+        return metricKeysById[id];
+    }
+
+    /*
+    Removes the metric-key & releases its id for reuse. Returns the released id, or null if the metric-key didn't have an id.
+    */
+    public Integer remove(String metricKey) {
+
+        if (metricKey == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            Integer id = idsByMetricKey_.remove(metricKey);
+            if (id == null) return null;
+
+            metricKeysById_[id] = null;
+
+            if (releasedIdCount_ == releasedIds_.length) releasedIds_ = Arrays.copyOf(releasedIds_, releasedIds_.length * 2);
+            releasedIds_[releasedIdCount_++] = id;
+
+            return id;
+        }
+    }
+
+    /*
+    Makes every id that has been released (since the last call to this method) available for reuse.
+    */
+    public synchronized void recycleReleasedIds() {
+        
+        if (releasedIdCount_ == 0) {
+            return;
+        }
+        
+        if ((reusableIdCount_ + releasedIdCount_) > reusableIds_.length) reusableIds_ = Arrays.copyOf(reusableIds_, reusableIdCount_ + releasedIdCount_);
+        System.arraycopy(releasedIds_, 0, reusableIds_, reusableIdCount_, releasedIdCount_);
+        reusableIdCount_ += releasedIdCount_;
+        
+        releasedIds_ = new int[16];
+        releasedIdCount_ = 0;
+    }
+    
+    public int size() {
+        return idsByMetricKey_.size();
+    }
+
+}
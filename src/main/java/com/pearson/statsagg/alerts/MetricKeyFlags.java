@@ -0,0 +1,121 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.utilities.IntegerBitmap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A map of metric-key to boolean, stored as two compressed bitmaps of metric-key dictionary ids:
+ * one bitmap for 'the metric-key has a value' & one bitmap for 'the value is true'.
+ * This is a drop-in replacement for the ConcurrentHashMap<String,Boolean> maps that track whether a metric-key is associated with anything.
+ *
+ * Thread-safe. Reads can run concurrently with each other.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class MetricKeyFlags {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricKeyFlags.class.getName());
+
+    private final MetricKeyDictionary metricKeyDictionary_;
+    private final IntegerBitmap metricKeyIdsWithValue_ = new IntegerBitmap();
+    private final IntegerBitmap metricKeyIdsWithTrueValue_ = new IntegerBitmap();
+    private final ReentrantReadWriteLock lock_ = new ReentrantReadWriteLock();
+
+    public MetricKeyFlags() {
+        this(GlobalVariables.metricKeyDictionary);
+    }
+
+    public MetricKeyFlags(MetricKeyDictionary metricKeyDictionary) {
+        metricKeyDictionary_ = metricKeyDictionary;
+    }
+
+    /*
+    Returns the value for the metric-key, or null if the metric-key doesn't have a value.
+    */
+    public Boolean get(String metricKey) {
+
+        Integer id = metricKeyDictionary_.getId(metricKey);
+        if (id == null) return null;
+
+        lock_.readLock().lock();
+        try {
+            if (!metricKeyIdsWithValue_.contains(id)) return null;
+            return metricKeyIdsWithTrueValue_.contains(id);
+        }
+        finally {
+            lock_.readLock().unlock();
+        }
+    }
+
+    public boolean containsKey(String metricKey) {
+        return get(metricKey) != null;
+    }
+
+    public void put(String metricKey, boolean value) {
+
+        if (metricKey == null) {
+            return;
+        }
+
+        int id = metricKeyDictionary_.getOrCreateId(metricKey);
+
+        lock_.writeLock().lock();
+        try {
+            metricKeyIdsWithValue_.add(id);
+            if (value) metricKeyIdsWithTrueValue_.add(id);
+            else metricKeyIdsWithTrueValue_.remove(id);
+        }
+        finally {
+            lock_.writeLock().unlock();
+        }
+    }
+
+    public void remove(String metricKey) {
+
+        Integer id = metricKeyDictionary_.getId(metricKey);
+        if (id == null) return;
+
+        lock_.writeLock().lock();
+        try {
+            metricKeyIdsWithValue_.remove(id);
+            metricKeyIdsWithTrueValue_.remove(id);
+        }
+        finally {
+            lock_.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+
+        lock_.readLock().lock();
+        try {
+            return metricKeyIdsWithValue_.getCardinality();
+        }
+        finally {
+            lock_.readLock().unlock();
+        }
+    }
+
+    /*
+    Returns a snapshot of every metric-key that has a value.
+    */
+    public List<String> getMetricKeys() {
+
+        IntegerBitmap metricKeyIdsWithValue;
+
+        lock_.readLock().lock();
+        try {
+            metricKeyIdsWithValue = metricKeyIdsWithValue_.copy();
+        }
+        finally {
+            lock_.readLock().unlock();
+        }
+
+        return MetricKeySet.getMetricKeys(metricKeyDictionary_, metricKeyIdsWithValue);
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.utilities.IntegerBitmap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A set of metric-keys that is stored as a compressed bitmap of metric-key dictionary ids.
+ * Every method is synchronized on the set, so it can be used the same way as a Collections.synchronizedSet -- including synchronizing on the set while iterating over it.
+ * Iterators work on a snapshot of the set, so they never throw a ConcurrentModificationException.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class MetricKeySet extends AbstractSet<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricKeySet.class.getName());
+
+    private final MetricKeyDictionary metricKeyDictionary_;
+    private final IntegerBitmap metricKeyIds_;
+
+    public MetricKeySet() {
+        this(GlobalVariables.metricKeyDictionary);
+    }
+
+    public MetricKeySet(MetricKeyDictionary metricKeyDictionary) {
+        this(metricKeyDictionary, new IntegerBitmap());
+    }
+
+    public MetricKeySet(MetricKeyDictionary metricKeyDictionary, IntegerBitmap metricKeyIds) {
+        metricKeyDictionary_ = metricKeyDictionary;
+        metricKeyIds_ = (metricKeyIds == null) ? new IntegerBitmap() : metricKeyIds;
+    }
+
+    /*
+    Creates a MetricKeySet from any collection of metric-keys. Metric-keys that aren't in the dictionary are skipped -- they can't be in any other MetricKeySet.
+    */
+    public static MetricKeySet getExistingMetricKeys(MetricKeyDictionary metricKeyDictionary, Collection<String> metricKeys) {
+
+        IntegerBitmap metricKeyIds = new IntegerBitmap();
+
+        if (metricKeys != null) {
+            for (String metricKey : metricKeys) {
+                Integer id = metricKeyDictionary.getId(metricKey);
+                if (id != null) metricKeyIds.add(id);
+            }
+        }
+
+        return new MetricKeySet(metricKeyDictionary, metricKeyIds);
+    }
+
+    @Override
+    public synchronized boolean add(String metricKey) {
+
+        if (metricKey == null) {
+            return false;
+        }
+
+        return metricKeyIds_.add(metricKeyDictionary_.getOrCreateId(metricKey));
+    }
+
+    @Override
+    public synchronized boolean remove(Object metricKey) {
+
+        if (!(metricKey instanceof String)) {
+            return false;
+        }
+
+        Integer id = metricKeyDictionary_.getId((String) metricKey);
+        return (id != null) && metricKeyIds_.remove(id);
+    }
+
+    @Override
+    public synchronized boolean contains(Object metricKey) {
+
+        if (!(metricKey instanceof String)) {
+            return false;
+        }
+
+        Integer id = metricKeyDictionary_.getId((String) metricKey);
+        return (id != null) && metricKeyIds_.contains(id);
+    }
+
+    @Override
+    public synchronized int size() {
+        return metricKeyIds_.getCardinality();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return metricKeyIds_.isEmpty();
+    }
+
+    @Override
+    public synchronized void clear() {
+        metricKeyIds_.clear();
+    }
+
+    @Override
+    public synchronized boolean removeAll(Collection<?> metricKeys) {
+
+        if (metricKeys instanceof MetricKeySet) {
+            int size = metricKeyIds_.getCardinality();
+            metricKeyIds_.andNot(((MetricKeySet) metricKeys).getMetricKeyIds());
+            return metricKeyIds_.getCardinality() != size;
+        }
+
+        return super.removeAll(metricKeys);
+    }
+
+    /*
+    Returns a copy of the bitmap of metric-key ids.
+    */
+    public synchronized IntegerBitmap getMetricKeyIds() {
+        return metricKeyIds_.copy();
+    }
+
+    public synchronized void trim() {
+        metricKeyIds_.trim();
+    }
+
+    public MetricKeyDictionary getMetricKeyDictionary() {
+        return metricKeyDictionary_;
+    }
+
+    /*
+    Converts a bitmap of metric-key ids to a list of metric-keys. Ids that no longer belong to a metric-key are skipped.
+    */
+    public static List<String> getMetricKeys(MetricKeyDictionary metricKeyDictionary, IntegerBitmap metricKeyIds) {
+
+        if (metricKeyIds == null) {
+            return new ArrayList<>();
+        }
+
+        List<String> metricKeys = new ArrayList<>(metricKeyIds.getCardinality());
+
+        PrimitiveIterator.OfInt iterator = metricKeyIds.iterator();
+        while (iterator.hasNext()) {
+            String metricKey = metricKeyDictionary.getMetricKey(iterator.nextInt());
+            if (metricKey != null) metricKeys.add(metricKey);
+        }
+
+        return metricKeys;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+
+        final IntegerBitmap metricKeyIds = getMetricKeyIds();
+        final PrimitiveIterator.OfInt metricKeyIdsIterator = metricKeyIds.iterator();
+
+        return new Iterator<String>() {
+
+            private String nextMetricKey__ = null;
+            private String lastMetricKey__ = null;
+
+            @Override
+            public boolean hasNext() {
+
+                while ((nextMetricKey__ == null) && metricKeyIdsIterator.hasNext()) {
+                    nextMetricKey__ = metricKeyDictionary_.getMetricKey(metricKeyIdsIterator.nextInt());
+                }
+
+                return nextMetricKey__ != null;
+            }
+
+            @Override
+            public String next() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                lastMetricKey__ = nextMetricKey__;
+                nextMetricKey__ = null;
+
+                return lastMetricKey__;
+            }
+
+            @Override
+            public void remove() {
+
+                if (lastMetricKey__ == null) {
+                    throw new IllegalStateException();
+                }
+
+                MetricKeySet.this.remove(lastMetricKey__);
+                lastMetricKey__ = null;
+            }
+        };
+    }
+
+}
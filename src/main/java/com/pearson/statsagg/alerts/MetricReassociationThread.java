@@ -0,0 +1,216 @@
+package com.pearson.statsagg.alerts;
+
+import com.google.common.collect.Lists;
+import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.utilities.AhoCorasickAutomaton;
+import com.pearson.statsagg.utilities.IntegerBitmap;
+import com.pearson.statsagg.utilities.MultiRegexMatcher;
+import com.pearson.statsagg.utilities.StackTrace;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-evaluates the metric-keys that have already been through the metric association routine against a new or altered id (metric-group id or suspension id).
+ * The metric-keys are evaluated in parallel chunks. The id's current associations are kept while this runs, and only the associations that changed are touched.
+ * Each chunk applies its changes as soon as it is done, after checking that the id's regexes haven't been altered (or the id removed) in the meantime.
+ * If they have, this thread stops -- a newer reassociation thread takes care of the id.
+ * 
+ * @author Jeffrey Schmidt
+ */
+public class MetricReassociationThread implements Runnable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MetricReassociationThread.class.getName());
+    
+    protected static final int CHUNK_SIZE = 10000;
+    
+    private final String threadId_;
+    private final Integer id_;
+    private final String matchRegex_;
+    private final String blacklistRegex_;
+    private final int numThreads_;
+    private final ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId_;
+    private final MetricKeyFlags metricKeysAssociatedWithAnyId_;
+    private final Map<Integer,String> mergedMatchRegexesById_;
+    private final Map<Integer,String> mergedBlacklistRegexesById_;
+    
+    private final AtomicBoolean isStale_ = new AtomicBoolean(false);
+    private final AtomicLong numAssociationsAdded_ = new AtomicLong(0);
+    private final AtomicLong numAssociationsRemoved_ = new AtomicLong(0);
+    
+    public MetricReassociationThread(String threadId, Integer id, String matchRegex, String blacklistRegex, int numThreads,
+            ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId, MetricKeyFlags metricKeysAssociatedWithAnyId,
+            Map<Integer,String> mergedMatchRegexesById, Map<Integer,String> mergedBlacklistRegexesById) {
+        this.threadId_ = threadId;
+        this.id_ = id;
+        this.matchRegex_ = matchRegex;
+        this.blacklistRegex_ = blacklistRegex;
+        this.numThreads_ = (numThreads <= 0) ? 1 : numThreads;
+        this.matchingMetricKeysAssociatedWithId_ = matchingMetricKeysAssociatedWithId;
+        this.metricKeysAssociatedWithAnyId_ = metricKeysAssociatedWithAnyId;
+        this.mergedMatchRegexesById_ = mergedMatchRegexesById;
+        this.mergedBlacklistRegexesById_ = mergedBlacklistRegexesById;
+    }
+    
+    @Override
+    public void run() {
+        
+        long startTime = System.currentTimeMillis();
+        
+        Set<String> matchingMetricKeyAssociations = matchingMetricKeysAssociatedWithId_.get(id_);
+        if ((matchingMetricKeyAssociations == null) || (matchRegex_ == null) || !isCurrent(matchingMetricKeyAssociations)) return;
+        
+        // metric-keys that don't contain any of the literals that the regex requires can't match it, so the regex doesn't need to be evaluated for them
+        List<String> requiredLiterals = MultiRegexMatcher.getRequiredLiterals(matchRegex_);
+        AhoCorasickAutomaton requiredLiteralsAutomaton = (requiredLiterals == null) ? null : new AhoCorasickAutomaton(requiredLiterals);
+        
+        // only metric-keys that have already been through the association routine need to be reassociated. newer metric-keys are associated by the association routine.
+        List<String> metricKeys = metricKeysAssociatedWithAnyId_.getMetricKeys();
+        
+        List<Callable<Void>> chunkTasks = new ArrayList<>();
+        for (List<String> metricKeysChunk : Lists.partition(metricKeys, CHUNK_SIZE)) {
+            chunkTasks.add(() -> {
+                reassociateChunk(metricKeysChunk, matchingMetricKeyAssociations, requiredLiteralsAutomaton);
+                return null;
+            });
+        }
+        
+        ForkJoinPool forkJoinPool = new ForkJoinPool(numThreads_, pool -> {
+            ForkJoinWorkerThread forkJoinWorkerThread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            forkJoinWorkerThread.setPriority(3);
+            return forkJoinWorkerThread;
+        }, null, false);
+        
+        try {
+            forkJoinPool.invokeAll(chunkTasks);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        finally {
+            forkJoinPool.shutdownNow();
+        }
+        
+        logger.info("ThreadId=" + threadId_ + ", Routine=MetricReassociation, Id=" + id_ + ", MetricKeysEvaluated=" + metricKeys.size() 
+                + ", AssociationsAdded=" + numAssociationsAdded_.get() + ", AssociationsRemoved=" + numAssociationsRemoved_.get() 
+                + ", Stale=" + isStale_.get() + ", TimeElapsed=" + (System.currentTimeMillis() - startTime));
+    }
+    
+    private void reassociateChunk(List<String> metricKeys, Set<String> matchingMetricKeyAssociations, AhoCorasickAutomaton requiredLiteralsAutomaton) {
+        
+        if (isStale_.get()) {
+            return;
+        }
+        
+        try {
+            // a snapshot of the current associations. only used to find the candidates for a change -- every candidate is re-checked before the change is applied.
+            IntegerBitmap currentMetricKeyIds = (matchingMetricKeyAssociations instanceof MetricKeySet) ? ((MetricKeySet) matchingMetricKeyAssociations).getMetricKeyIds() : null;
+            
+            List<String> metricKeysToAdd = new ArrayList<>();
+            List<String> metricKeysToRemove = new ArrayList<>();
+
+            for (String metricKey : metricKeys) {
+                boolean isCurrentlyAssociated;
+                if (currentMetricKeyIds != null) {
+                    Integer metricKeyId = GlobalVariables.metricKeyDictionary.getId(metricKey);
+                    isCurrentlyAssociated = (metricKeyId != null) && currentMetricKeyIds.contains(metricKeyId);
+                }
+                else {
+                    isCurrentlyAssociated = matchingMetricKeyAssociations.contains(metricKey);
+                }
+                
+                Boolean isAssociated;
+                if ((requiredLiteralsAutomaton != null) && !requiredLiteralsAutomaton.containsAny(metricKey)) isAssociated = false;
+                else isAssociated = MetricAssociation.isMetricKeyAssociatedWithRegexes(metricKey, matchRegex_, blacklistRegex_);
+                if (isAssociated == null) continue;
+                
+                if (isAssociated && !isCurrentlyAssociated) metricKeysToAdd.add(metricKey);
+                else if (!isAssociated && isCurrentlyAssociated) metricKeysToRemove.add(metricKey);
+            }
+
+            if (metricKeysToAdd.isEmpty() && metricKeysToRemove.isEmpty()) {
+                return;
+            }
+
+            applyChanges(matchingMetricKeyAssociations, metricKeysToAdd, metricKeysToRemove);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+    }
+    
+    /*
+    Applies a chunk's changes to the id's associations & to 'metricKeysAssociatedWithAnyId'. 
+    This holds the same lock as the removal of ids, so a chunk can't re-add associations to an id that was just removed.
+    */
+    private void applyChanges(Set<String> matchingMetricKeyAssociations, List<String> metricKeysToAdd, List<String> metricKeysToRemove) {
+        
+        synchronized (metricKeysAssociatedWithAnyId_) {
+            if (!isCurrent(matchingMetricKeyAssociations)) {
+                isStale_.set(true);
+                return;
+            }
+            
+            ConcurrentHashMap<String,String> immediateCleanupMetrics = GlobalVariables.immediateCleanupMetrics;
+            
+            for (String metricKey : metricKeysToAdd) {
+                // don't re-add metric-keys that were cleaned up while this chunk was being evaluated
+                if (!GlobalVariables.metricKeysLastSeenTimestamp.containsKey(metricKey)) continue;
+                if ((immediateCleanupMetrics != null) && !immediateCleanupMetrics.isEmpty() && immediateCleanupMetrics.containsKey(metricKey)) continue;
+                
+                if (matchingMetricKeyAssociations.add(metricKey)) {
+                    metricKeysAssociatedWithAnyId_.put(metricKey, true);
+                    numAssociationsAdded_.incrementAndGet();
+                }
+            }
+            
+            for (String metricKey : metricKeysToRemove) {
+                if (!matchingMetricKeyAssociations.remove(metricKey)) continue;
+                numAssociationsRemoved_.incrementAndGet();
+                
+                boolean isAssociatedWithAnotherId = false;
+                for (Set<String> otherMatchingMetricKeyAssociations : matchingMetricKeysAssociatedWithId_.values()) {
+                    if (otherMatchingMetricKeyAssociations.contains(metricKey)) {
+                        isAssociatedWithAnotherId = true;
+                        break;
+                    }
+                }
+                
+                if (!isAssociatedWithAnotherId && metricKeysAssociatedWithAnyId_.containsKey(metricKey)) metricKeysAssociatedWithAnyId_.put(metricKey, false);
+            }
+        }
+        
+    }
+    
+    /*
+    Returns true if the id still has the same associations set & the same regexes that this thread was created for.
+    */
+    private boolean isCurrent(Set<String> matchingMetricKeyAssociations) {
+        return (matchingMetricKeysAssociatedWithId_.get(id_) == matchingMetricKeyAssociations) && 
+                Objects.equals(mergedMatchRegexesById_.get(id_), matchRegex_) && 
+                Objects.equals(mergedBlacklistRegexesById_.get(id_), blacklistRegex_);
+    }
+    
+    public long getNumAssociationsAdded() {
+        return numAssociationsAdded_.get();
+    }
+    
+    public long getNumAssociationsRemoved() {
+        return numAssociationsRemoved_.get();
+    }
+    
+    public boolean isStale() {
+        return isStale_.get();
+    }
+    
+}
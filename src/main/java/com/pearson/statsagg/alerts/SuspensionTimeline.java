@@ -0,0 +1,275 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.database_objects.suspensions.Suspension;
+import com.pearson.statsagg.utilities.DateAndTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A precomputed timeline of when each enabled suspension is active, over a fixed time horizon.
+ * Every suspension's schedule (one-time or recurring, start date/time, duration, days of the week) is expanded into activation intervals once,
+ * & the intervals are swept into segments with a constant set of active suspensions.
+ * Finding the active suspensions (or the next transition) at a point in time is then a binary search over the segments.
+ *
+ * The intervals follow the same rules as Suspension.isDateAndTimeInSuspensionWindow.
+ * A timeline is immutable. A new one needs to be built when the suspensions change, or when the current time gets close to the end of the horizon.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class SuspensionTimeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuspensionTimeline.class.getName());
+
+    public static final long DEFAULT_HORIZON_IN_MILLISECONDS = 7L * 24 * 60 * 60 * 1000;
+    private static final long ONE_DAY_IN_MILLISECONDS = 24L * 60 * 60 * 1000;
+
+    private final long horizonStart_;
+    private final long horizonEnd_;
+    private final List<List<Object>> scheduleSignature_;
+
+    // segment i covers [segmentStartTimes_[i], segmentStartTimes_[i+1]). the last segment ends at the end of the horizon.
+    private final long[] segmentStartTimes_;
+    private final int[][] activeSuspensionIdsBySegment_;
+
+    // every activation & deactivation, sorted by time
+    private final List<Transition> transitions_;
+
+    public SuspensionTimeline(List<Suspension> suspensions, long horizonStart, long horizonEnd) {
+        this.horizonStart_ = horizonStart;
+        this.horizonEnd_ = Math.max(horizonStart, horizonEnd);
+        this.scheduleSignature_ = getScheduleSignature(suspensions);
+
+        List<Transition> transitions = new ArrayList<>();
+
+        if (suspensions != null) {
+            for (Suspension suspension : suspensions) {
+                if ((suspension == null) || (suspension.getId() == null) || (suspension.isEnabled() == null) || !suspension.isEnabled()) continue;
+
+                for (long[] interval : getActivationIntervals(suspension, horizonStart_, horizonEnd_)) {
+                    transitions.add(new Transition(interval[0], suspension.getId(), true));
+                    transitions.add(new Transition(interval[1], suspension.getId(), false));
+                }
+            }
+        }
+
+        // deactivations sort before activations at the same time, so that a window that ends when another starts is handled correctly
+        Collections.sort(transitions, (transition1, transition2) -> {
+            int compare = Long.compare(transition1.getTimestamp(), transition2.getTimestamp());
+            if (compare != 0) return compare;
+            return Boolean.compare(transition1.isActivation(), transition2.isActivation());
+        });
+
+        this.transitions_ = Collections.unmodifiableList(transitions);
+
+        // sweep the transitions into segments
+        List<Long> segmentStartTimes = new ArrayList<>();
+        List<int[]> activeSuspensionIdsBySegment = new ArrayList<>();
+        TreeSet<Integer> activeSuspensionIds = new TreeSet<>();
+
+        segmentStartTimes.add(Long.MIN_VALUE);
+        activeSuspensionIdsBySegment.add(new int[0]);
+
+        int i = 0;
+        while (i < transitions.size()) {
+            long timestamp = transitions.get(i).getTimestamp();
+
+            while ((i < transitions.size()) && (transitions.get(i).getTimestamp() == timestamp)) {
+                Transition transition = transitions.get(i);
+                if (transition.isActivation()) activeSuspensionIds.add(transition.getSuspensionId());
+                else activeSuspensionIds.remove(transition.getSuspensionId());
+                i++;
+            }
+
+            segmentStartTimes.add(timestamp);
+            activeSuspensionIdsBySegment.add(activeSuspensionIds.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        this.segmentStartTimes_ = segmentStartTimes.stream().mapToLong(Long::longValue).toArray();
+        this.activeSuspensionIdsBySegment_ = activeSuspensionIdsBySegment.toArray(new int[activeSuspensionIdsBySegment.size()][]);
+    }
+
+    /*
+    Returns the ids of the suspensions that are active at the specified time, or null if the time is outside of this timeline's horizon.
+    */
+    public Set<Integer> getActiveSuspensionIds(long timestamp) {
+
+        if (!isCovered(timestamp)) {
+            return null;
+        }
+
+        int[] activeSuspensionIds = activeSuspensionIdsBySegment_[getSegmentIndex(timestamp)];
+
+        Set<Integer> activeSuspensionIdsSet = new HashSet<>();
+        for (int activeSuspensionId : activeSuspensionIds) activeSuspensionIdsSet.add(activeSuspensionId);
+
+        return activeSuspensionIdsSet;
+    }
+
+    /*
+    Returns the time of the first activation or deactivation after the specified time, or null if there isn't one in this timeline's horizon.
+    */
+    public Long getNextTransitionTimestamp(long timestamp) {
+
+        int nextSegmentIndex = getSegmentIndex(timestamp) + 1;
+
+        if ((nextSegmentIndex >= segmentStartTimes_.length) || (segmentStartTimes_[nextSegmentIndex] >= horizonEnd_)) {
+            return null;
+        }
+
+        return segmentStartTimes_[nextSegmentIndex];
+    }
+
+    /*
+    Returns the activations & deactivations in [startTimestamp, endTimestamp), sorted by time. At most 'limit' transitions are returned (no limit if limit <= 0).
+    */
+    public List<Transition> getTransitions(long startTimestamp, long endTimestamp, int limit) {
+
+        List<Transition> transitions = new ArrayList<>();
+
+        int low = 0, high = transitions_.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (transitions_.get(middle).getTimestamp() < startTimestamp) low = middle + 1;
+            else high = middle;
+        }
+
+        for (int i = low; i < transitions_.size(); i++) {
+            Transition transition = transitions_.get(i);
+            if ((transition.getTimestamp() >= endTimestamp) || (transition.getTimestamp() >= horizonEnd_)) break;
+            if ((limit > 0) && (transitions.size() >= limit)) break;
+            transitions.add(transition);
+        }
+
+        return transitions;
+    }
+
+    public boolean isCovered(long timestamp) {
+        return (timestamp >= horizonStart_) && (timestamp < horizonEnd_);
+    }
+
+    /*
+    Returns true if this timeline was built from suspensions with the same ids, enabled flags, & schedules as 'suspensions'.
+    */
+    public boolean isCurrent(List<Suspension> suspensions) {
+        return scheduleSignature_.equals(getScheduleSignature(suspensions));
+    }
+
+    private int getSegmentIndex(long timestamp) {
+        int segmentIndex = Arrays.binarySearch(segmentStartTimes_, timestamp);
+        return (segmentIndex >= 0) ? segmentIndex : (-segmentIndex - 2);
+    }
+
+    /*
+    Expands a suspension's schedule into merged [start, end) activation intervals that overlap [horizonStart, horizonEnd).
+    */
+    protected static List<long[]> getActivationIntervals(Suspension suspension, long horizonStart, long horizonEnd) {
+
+        List<long[]> intervals = new ArrayList<>();
+
+        if ((suspension == null) || (suspension.getStartTime() == null) || (suspension.getStartDate() == null) ||
+                (suspension.getDuration() == null) || (suspension.isOneTime() == null) || (suspension.getDuration() <= 0)) {
+            return intervals;
+        }
+
+        long duration = suspension.getDuration();
+        int startTime_HourOfDay = suspension.getStartTime().getHours();
+        int startTime_Minute = suspension.getStartTime().getMinutes();
+        int startTime_Second = suspension.getStartTime().getSeconds();
+        int startTime_Millisecond = (int) (suspension.getStartTime().getTime() % 1000);
+
+        Calendar suspensionStartDateAndTime = DateAndTime.getCalendarWithSameDateAtDifferentTime(suspension.getStartDate(), startTime_HourOfDay,
+                startTime_Minute, startTime_Second, startTime_Millisecond);
+        long suspensionStart = suspensionStartDateAndTime.getTimeInMillis();
+
+        if (suspension.isOneTime()) {
+            if ((suspensionStart < horizonEnd) && ((suspensionStart + duration) > horizonStart)) intervals.add(new long[] {suspensionStart, suspensionStart + duration});
+            return intervals;
+        }
+
+        // recurring suspensions start at most once a day, so every day from 'one duration before the horizon' to the end of the horizon is checked
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(Math.max(horizonStart - duration - ONE_DAY_IN_MILLISECONDS, suspensionStart - ONE_DAY_IN_MILLISECONDS));
+
+        while (true) {
+            Calendar windowStart = DateAndTime.getCalendarWithSameDateAtDifferentTime(day, startTime_HourOfDay, startTime_Minute, startTime_Second, startTime_Millisecond);
+            long windowStart_Milliseconds = windowStart.getTimeInMillis();
+            if (windowStart_Milliseconds >= horizonEnd) break;
+
+            if ((windowStart_Milliseconds >= suspensionStart) && ((windowStart_Milliseconds + duration) > horizonStart) &&
+                    Suspension.isSuspensionAllowed_DayOfWeek(suspension, windowStart)) {
+                long[] previousInterval = intervals.isEmpty() ? null : intervals.get(intervals.size() - 1);
+
+                if ((previousInterval != null) && (windowStart_Milliseconds <= previousInterval[1])) previousInterval[1] = Math.max(previousInterval[1], windowStart_Milliseconds + duration);
+                else intervals.add(new long[] {windowStart_Milliseconds, windowStart_Milliseconds + duration});
+            }
+
+            day.add(Calendar.DATE, 1);
+        }
+
+        return intervals;
+    }
+
+    private static List<List<Object>> getScheduleSignature(List<Suspension> suspensions) {
+
+        List<List<Object>> scheduleSignature = new ArrayList<>();
+
+        if (suspensions == null) {
+            return scheduleSignature;
+        }
+
+        for (Suspension suspension : suspensions) {
+            if (suspension == null) continue;
+
+            scheduleSignature.add(Arrays.asList(suspension.getId(), suspension.isEnabled(), suspension.isOneTime(),
+                    (suspension.getStartDate() == null) ? null : suspension.getStartDate().getTime(),
+                    (suspension.getStartTime() == null) ? null : suspension.getStartTime().getTime(),
+                    suspension.getDuration(), suspension.isRecurSunday(), suspension.isRecurMonday(), suspension.isRecurTuesday(),
+                    suspension.isRecurWednesday(), suspension.isRecurThursday(), suspension.isRecurFriday(), suspension.isRecurSaturday()));
+        }
+
+        return scheduleSignature;
+    }
+
+    public long getHorizonStart() {
+        return horizonStart_;
+    }
+
+    public long getHorizonEnd() {
+        return horizonEnd_;
+    }
+
+    public static class Transition {
+
+        private final long timestamp__;
+        private final int suspensionId__;
+        private final boolean isActivation__;
+
+        public Transition(long timestamp, int suspensionId, boolean isActivation) {
+            this.timestamp__ = timestamp;
+            this.suspensionId__ = suspensionId;
+            this.isActivation__ = isActivation;
+        }
+
+        public long getTimestamp() {
+            return timestamp__;
+        }
+
+        public int getSuspensionId() {
+            return suspensionId__;
+        }
+
+        public boolean isActivation() {
+            return isActivation__;
+        }
+
+    }
+
+}
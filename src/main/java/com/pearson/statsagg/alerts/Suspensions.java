@@ -4,18 +4,17 @@ import com.pearson.statsagg.database_objects.suspensions.Suspension;
 import com.pearson.statsagg.database_objects.suspensions.SuspensionsDao;
 import com.pearson.statsagg.database_objects.alerts.Alert;
 import com.pearson.statsagg.database_objects.alerts.AlertsDao;
-import com.pearson.statsagg.database_objects.general_purpose.GeneralPurposeDao;
-import com.pearson.statsagg.database_objects.metric_group_tags.MetricGroupTag;
-import com.pearson.statsagg.database_objects.metric_group_tags.MetricGroupTagsDao;
+import com.pearson.statsagg.database_objects.metric_group_tags.MetricGroupTagsIndex;
 import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.utilities.IntegerBitmap;
 import com.pearson.statsagg.utilities.StringUtilities;
 import com.pearson.statsagg.utilities.Threads;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import org.slf4j.Logger;
@@ -32,6 +31,9 @@ public class Suspensions {
     public static final int LEVEL_SUSPEND_ALERT_NOTIFICATION_ONLY = 998;
     public static final int LEVEL_SUSPEND_ENTIRE_ALERT = 999;
     
+    // the most recently built suspension activation timeline
+    private static volatile SuspensionTimeline suspensionTimeline_ = null;
+    
     private final Map<Integer,Alert> alertsByAlertId_;
     private final Map<Integer,Set<String>> matchingMetricKeysAssociatedWithSuspension_ = GlobalVariables.matchingMetricKeysAssociatedWithSuspension;
     
@@ -78,35 +80,34 @@ public class Suspensions {
             return;
         }
         
-        GeneralPurposeDao generalPurposeDao = new GeneralPurposeDao();
-        Map<Integer,Set<String>> metricGroupTagsAssociatedWithAlert = generalPurposeDao.getMetricGroupTagsAssociatedWithAlerts();      
-        
-        for (int alertId : alertsByAlertId.keySet()) {
-            if ((metricGroupTagsAssociatedWithAlert != null) && !metricGroupTagsAssociatedWithAlert.containsKey(alertId)) {
-                metricGroupTagsAssociatedWithAlert.put(alertId, new HashSet<>());
-            }
-        }
+        MetricGroupTagsIndex metricGroupTagsIndex = getRefreshedMetricGroupTagsIndex();
         
         SuspensionsDao suspensionsDao = new SuspensionsDao();
         List<Suspension> allSuspensions = suspensionsDao.getAllDatabaseObjectsInTable();
+        if (allSuspensions == null) allSuspensions = new ArrayList<>();
         areSuspensionsActive(allSuspensions);
+        
+        Map<Integer,Suspension> suspensionsById = new HashMap<>();
+        for (Suspension suspension : allSuspensions) if (suspension.getId() != null) suspensionsById.put(suspension.getId(), suspension);
 
-        // determine suspensions
-        for (Entry<Integer,Alert> alertEntry : alertsByAlertId.entrySet()) {
-            int alertId = alertEntry.getKey();
-            Alert alert = alertEntry.getValue();
-
-            Set<Integer> suspensionIdsAssociatedWithAnAlert = getSuspensionIdsAssociatedWithAnAlert(alert, allSuspensions, metricGroupTagsAssociatedWithAlert);
+        // determine suspensions. the alerts that each suspension applies to are resolved through the metric group tags index.
+        Map<Integer,Set<Integer>> suspensionIdsAssociatedWithAlerts = getSuspensionIdsAssociatedWithAlerts(alertsByAlertId, allSuspensions, metricGroupTagsIndex);
+        
+        for (Integer alertId : alertsByAlertId.keySet()) {
+            if (alertId == null) continue;
+            
+            Set<Integer> suspensionIdsAssociatedWithAnAlert = suspensionIdsAssociatedWithAlerts.get(alertId);
+            if (suspensionIdsAssociatedWithAnAlert == null) suspensionIdsAssociatedWithAnAlert = new HashSet<>();
             suspensionIdAssociationsByAlertId_.put(alertId, suspensionIdsAssociatedWithAnAlert);
 
-            boolean isAlertCurrentlySuspended = isAnySuspensionCurrentlyActiveForAnAlert(allSuspensions, suspensionIdsAssociatedWithAnAlert, areSuspensionsActive_);
-            suspensionStatusByAlertId_.put(alertId, isAlertCurrentlySuspended);
-            
-            int suspensionLevel = getSuspensionLevel(alert, allSuspensions, suspensionIdsAssociatedWithAnAlert, areSuspensionsActive_);
+            int suspensionLevel = getSuspensionLevel(suspensionIdsAssociatedWithAnAlert, suspensionsById, areSuspensionsActive_);
+            suspensionStatusByAlertId_.put(alertId, suspensionLevel != LEVEL_ALERT_NOT_SUSPENDED);
             suspensionLevelsByAlertId_.put(alertId, suspensionLevel);
         }
         
-        // determine metric suspensions
+        // determine metric suspensions. the suspended metric-keys are the union of every active suspension's metric-key bitmap.
+        IntegerBitmap suspendedMetricKeyIds = new IntegerBitmap();
+        
         for (Suspension suspension : allSuspensions) {
             if ((suspension.getId() != null) && (suspension.getSuspendBy() == Suspension.SUSPEND_BY_METRICS) &&
                     (suspension.getMetricSuspensionRegexes() != null) && areSuspensionsActive_.containsKey(suspension.getId()) &&
@@ -114,13 +115,18 @@ public class Suspensions {
                 
                 Set<String> matchingMetricKeys = matchingMetricKeysAssociatedWithSuspension_.get(suspension.getId());
                 
-                if (matchingMetricKeys != null) {
+                if (matchingMetricKeys instanceof MetricKeySet) {
+                    suspendedMetricKeyIds.or(((MetricKeySet) matchingMetricKeys).getMetricKeyIds());
+                }
+                else if (matchingMetricKeys != null) {
                     synchronized(matchingMetricKeys) {
                         for (String metricKey : matchingMetricKeys) suspendedMetricKeys_.put(metricKey, metricKey);
                     }
                 }
             }
         }
+        
+        for (String metricKey : MetricKeySet.getMetricKeys(GlobalVariables.metricKeyDictionary, suspendedMetricKeyIds)) suspendedMetricKeys_.put(metricKey, metricKey);
 
     }
     
@@ -129,14 +135,20 @@ public class Suspensions {
         if (areSuspensionsActive_ == null) {
             return;
         }
+        
+        long currentTimestamp = System.currentTimeMillis();
+        Set<Integer> activeSuspensionIds = getSuspensionTimeline(allSuspensions, currentTimestamp).getActiveSuspensionIds(currentTimestamp);
 
         for (Suspension suspension : allSuspensions) {
             if (suspension.getId() == null) continue;
             
-            boolean isSuspensionCurrentlyActive = false;
-                    
-            if ((suspension.isEnabled() != null) && suspension.isEnabled()) {
-                isSuspensionCurrentlyActive = Suspension.isSuspensionInSuspensionTimeWindow(suspension);
+            boolean isSuspensionCurrentlyActive;
+            
+            if (activeSuspensionIds != null) {
+                isSuspensionCurrentlyActive = activeSuspensionIds.contains(suspension.getId());
+            }
+            else {
+                isSuspensionCurrentlyActive = (suspension.isEnabled() != null) && suspension.isEnabled() && Suspension.isSuspensionInSuspensionTimeWindow(suspension);
             }
             
             areSuspensionsActive_.put(suspension.getId(), isSuspensionCurrentlyActive);
@@ -144,6 +156,24 @@ public class Suspensions {
 
     }
     
+    /*
+    Gets the suspension activation timeline. The cached timeline is rebuilt if the suspensions' schedules changed, 
+    or if less than a day is left before the end of its horizon (so that upcoming transitions can always be looked up at least 6 days ahead).
+    */
+    public static SuspensionTimeline getSuspensionTimeline(List<Suspension> allSuspensions, long currentTimestamp) {
+        
+        SuspensionTimeline suspensionTimeline = suspensionTimeline_;
+        
+        if ((suspensionTimeline == null) || !suspensionTimeline.isCovered(currentTimestamp) || 
+                (currentTimestamp >= (suspensionTimeline.getHorizonEnd() - 86400000L)) || !suspensionTimeline.isCurrent(allSuspensions)) {
+            // the horizon starts a little before the current time, so lookups from threads that are slightly behind this one are still covered
+            suspensionTimeline = new SuspensionTimeline(allSuspensions, currentTimestamp - 3600000L, currentTimestamp + SuspensionTimeline.DEFAULT_HORIZON_IN_MILLISECONDS);
+            suspensionTimeline_ = suspensionTimeline;
+        }
+        
+        return suspensionTimeline;
+    }
+    
     private void updateSuspensionGlobalVariables() {
 
         synchronized(GlobalVariables.suspensionStatusByAlertId) {
@@ -181,6 +211,90 @@ public class Suspensions {
         return suspensionsDao.deleteExpired(new Timestamp(System.currentTimeMillis()));
     }
     
+    /*
+    Gets the metric group tags index, after re-reading the tags of any metric groups that changed since the last refresh.
+    The lock is held so that the index doesn't read a metric group that is in the middle of being altered or deleted.
+    */
+    public static MetricGroupTagsIndex getRefreshedMetricGroupTagsIndex() {
+        
+        MetricGroupTagsIndex metricGroupTagsIndex = GlobalVariables.metricGroupTagsIndex;
+        
+        if (metricGroupTagsIndex.isRefreshRequired()) {
+            synchronized(GlobalVariables.metricGroupChanges) {
+                metricGroupTagsIndex.refresh();
+            }
+        }
+        
+        return metricGroupTagsIndex;
+    }
+    
+    /*
+    Determines which suspensions apply to which alerts. Each suspension is resolved to its alerts with lookups against the metric group tags index,
+    instead of comparing every suspension's tags against every alert's tags.
+    Returns Map<AlertId,Set<SuspensionId>>. Every alert in 'alertsByAlertId' has an entry.
+    */
+    public static Map<Integer,Set<Integer>> getSuspensionIdsAssociatedWithAlerts(Map<Integer,Alert> alertsByAlertId, List<Suspension> suspensions, MetricGroupTagsIndex metricGroupTagsIndex) {
+        
+        Map<Integer,Set<Integer>> suspensionIdsAssociatedWithAlerts = new HashMap<>();
+        
+        if (alertsByAlertId == null) {
+            return suspensionIdsAssociatedWithAlerts;
+        }
+        
+        Map<Integer,Set<Integer>> alertIdsByMetricGroupId = new HashMap<>();
+        
+        for (Alert alert : alertsByAlertId.values()) {
+            if ((alert == null) || (alert.getId() == null)) continue;
+            suspensionIdsAssociatedWithAlerts.put(alert.getId(), new HashSet<>());
+            
+            if (alert.getMetricGroupId() == null) continue;
+            Set<Integer> alertIds = alertIdsByMetricGroupId.get(alert.getMetricGroupId());
+            
+            if (alertIds == null) {
+                alertIds = new HashSet<>();
+                alertIdsByMetricGroupId.put(alert.getMetricGroupId(), alertIds);
+            }
+            
+            alertIds.add(alert.getId());
+        }
+        
+        if ((suspensions == null) || (metricGroupTagsIndex == null)) {
+            return suspensionIdsAssociatedWithAlerts;
+        }
+        
+        for (Suspension suspension : suspensions) {
+            if ((suspension == null) || (suspension.getId() == null) || (suspension.getSuspendBy() == null)) continue;
+            
+            if (suspension.getSuspendBy() == Suspension.SUSPEND_BY_ALERT_ID) {
+                Set<Integer> suspensionIds = (suspension.getAlertId() == null) ? null : suspensionIdsAssociatedWithAlerts.get(suspension.getAlertId());
+                if (suspensionIds != null) suspensionIds.add(suspension.getId());
+            }
+            else if (suspension.getSuspendBy() == Suspension.SUSPEND_BY_METRIC_GROUP_TAGS) {
+                if (suspension.getMetricGroupTagsInclusive() == null) continue;
+                Set<String> suspensionMetricGroupTags = StringUtilities.getSetOfStringsFromDelimitedString(suspension.getMetricGroupTagsInclusive(), '\n');
+                
+                for (Integer metricGroupId : metricGroupTagsIndex.getMetricGroupIdsWithAllTags(suspensionMetricGroupTags)) {
+                    Set<Integer> alertIds = alertIdsByMetricGroupId.get(metricGroupId);
+                    if (alertIds == null) continue;
+                    for (Integer alertId : alertIds) suspensionIdsAssociatedWithAlerts.get(alertId).add(suspension.getId());
+                }
+            }
+            else if (suspension.getSuspendBy() == Suspension.SUSPEND_BY_EVERYTHING) {
+                if (suspension.getMetricGroupTagsExclusive() == null) continue;
+                Set<String> suspensionMetricGroupTags = StringUtilities.getSetOfStringsFromDelimitedString(suspension.getMetricGroupTagsExclusive(), '\n');
+                Set<Integer> excludedMetricGroupIds = metricGroupTagsIndex.getMetricGroupIdsWithAnyTag(suspensionMetricGroupTags);
+                
+                for (Alert alert : alertsByAlertId.values()) {
+                    if ((alert == null) || (alert.getId() == null)) continue;
+                    if ((alert.getMetricGroupId() != null) && excludedMetricGroupIds.contains(alert.getMetricGroupId())) continue;
+                    suspensionIdsAssociatedWithAlerts.get(alert.getId()).add(suspension.getId());
+                }
+            }
+        }
+        
+        return suspensionIdsAssociatedWithAlerts;
+    }
+    
     public static Set<Integer> getSuspensionIdsAssociatedWithAnAlert(Alert alert, List<Suspension> suspensions, Map<Integer,Set<String>> metricGroupTagsAssociatedWithAlert) {
 
         if ((alert == null) || (alert.getId() == null) || (metricGroupTagsAssociatedWithAlert == null)) {
@@ -239,6 +353,32 @@ public class Suspensions {
         else return LEVEL_ALERT_NOT_SUSPENDED;
     }
     
+    /*
+    Same as the other 'getSuspensionLevel' method, but only looks at the suspensions that are associated with the alert.
+    */
+    private static int getSuspensionLevel(Set<Integer> suspensionIdsAssociatedWithAnAlert, Map<Integer,Suspension> suspensionsById, Map<Integer, Boolean> areSuspensionsActive) {
+        
+        if ((suspensionIdsAssociatedWithAnAlert == null) || suspensionIdsAssociatedWithAnAlert.isEmpty() || (suspensionsById == null) || (areSuspensionsActive == null)) {
+            return LEVEL_ALERT_NOT_SUSPENDED;
+        }
+        
+        boolean isSuspendEntireAlertDetected = false;
+        
+        for (Integer suspensionId : suspensionIdsAssociatedWithAnAlert) {
+            Suspension suspension = suspensionsById.get(suspensionId);
+            if (suspension == null) continue;
+            
+            Boolean isSuspensionActive = areSuspensionsActive.get(suspensionId);
+            if ((isSuspensionActive == null) || !isSuspensionActive) continue;
+            
+            if (suspension.isSuspendNotificationOnly()) return LEVEL_SUSPEND_ALERT_NOTIFICATION_ONLY;
+            else isSuspendEntireAlertDetected = true;
+        }
+        
+        if (isSuspendEntireAlertDetected) return LEVEL_SUSPEND_ENTIRE_ALERT;
+        else return LEVEL_ALERT_NOT_SUSPENDED;
+    }
+    
     public static boolean isSuspensionCriteriaMet_SuspendByAlertName(Alert alert, Suspension suspension) {
         
         if ((alert == null) || (alert.getId() == null) || (suspension == null) || (suspension.getAlertId() == null)) {
@@ -333,18 +473,7 @@ public class Suspensions {
             return new HashSet<>();
         }
          
-        Set<String> metricGroupTagsSet = new HashSet<>();
-
-        MetricGroupTagsDao metricGroupTagsDao = new MetricGroupTagsDao();
-        List<MetricGroupTag> metricGroupTags = metricGroupTagsDao.getMetricGroupTagsByMetricGroupId(alert.getMetricGroupId());
-
-        if (metricGroupTags != null) {
-            for (MetricGroupTag metricGroupTag : metricGroupTags) {
-                metricGroupTagsSet.add(metricGroupTag.getTag());
-            }
-        }
-
-        return metricGroupTagsSet;
+        return getRefreshedMetricGroupTagsIndex().getTags(alert.getMetricGroupId());
     }
     
     public static boolean isAnySuspensionCurrentlyActiveForAnAlert(List<Suspension> allSuspensions, 
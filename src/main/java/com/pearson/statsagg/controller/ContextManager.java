@@ -25,10 +25,12 @@ import org.slf4j.LoggerFactory;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import com.pearson.statsagg.alerts.AlertStateSnapshot;
 import com.pearson.statsagg.alerts.AlertThread;
 import com.pearson.statsagg.alerts.MetricAssociation;
 import com.pearson.statsagg.alerts.MetricAssociationOutputBlacklistThread;
 import com.pearson.statsagg.controller.threads.AlertInvokerThread;
+import com.pearson.statsagg.controller.threads.AlertStateSnapshotInvokerThread;
 import com.pearson.statsagg.controller.threads.CleanupInvokerThread;
 import com.pearson.statsagg.controller.threads.InfluxdbV1InvokerThread;
 import com.pearson.statsagg.controller.threads.InternalStatsInvokerThread;
@@ -48,7 +50,7 @@ import com.pearson.statsagg.database_objects.notifications.NotificationGroupsDao
 import com.pearson.statsagg.database_objects.output_blacklist.OutputBlacklistDao;
 import com.pearson.statsagg.globals.GlobalVariables;
 import com.pearson.statsagg.metric_aggregation.MetricKeyLastSeen;
-import com.pearson.statsagg.metric_aggregation.MetricTimestampAndValue;
+import com.pearson.statsagg.metric_aggregation.RecentMetricTimestampsAndValues;
 import com.pearson.statsagg.metric_formats.statsd.StatsdMetricAggregated;
 import com.pearson.statsagg.network.JettyServer;
 import com.pearson.statsagg.network.NettyServer;
@@ -56,10 +58,10 @@ import com.pearson.statsagg.network.http.JettyInfluxdb;
 import com.pearson.statsagg.network.http.JettyOpenTsdb;
 import com.pearson.statsagg.network.tcp.TcpServer;
 import com.pearson.statsagg.network.udp.UdpServer;
+import com.pearson.statsagg.utilities.HttpConnectionPool;
 import com.pearson.statsagg.utilities.Threads;
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
-import java.util.Collections;
 import org.apache.commons.io.IOUtils;
 
 /**
@@ -88,6 +90,9 @@ public class ContextManager implements ServletContextListener {
     private AlertInvokerThread alertInvokerThread_ = null;
     private CleanupInvokerThread cleanupInvokerThread_ = null;
     private InternalStatsInvokerThread internalStatsInvokerThread_ = null;
+    private AlertStateSnapshotInvokerThread alertStateSnapshotInvokerThread_ = null;
+    
+    private AlertStateSnapshot alertStateSnapshot_ = null;
     
     @Override
     public void contextInitialized(ServletContextEvent contextEvent) {
@@ -121,6 +126,8 @@ public class ContextManager implements ServletContextListener {
         
         shutdownInvokerThreads();
         
+        writeFinalAlertStateSnapshot();
+        
         shutdownSendToOutputModuleThreadPoolManager();
                 
         shutdownSendEmailThreadPool();
@@ -164,6 +171,11 @@ public class ContextManager implements ServletContextListener {
             logger.info("Finished adding gauges from database to recent metric global history. NumGaugesFromDbAddedToGlobal=" + numGaugesFromDatabase);
         }
         
+        // restores recent metric values, 'metric last seen' values, & alert states from the most recent alert state snapshot (if one exists & isn't too old)
+        if (ApplicationConfiguration.isAlertStateSnapshotEnabled()) {
+            restoreAlertStateSnapshot();
+        }
+        
         // load all metric-group & metric-suspension regexes into global variables
         if (initializeDatabaseSuccess) {
             MetricGroupsDao metricGroupsDao = new MetricGroupsDao();
@@ -231,6 +243,12 @@ public class ContextManager implements ServletContextListener {
         Thread internalStatsInvokerThread = new Thread(internalStatsInvokerThread_);
         internalStatsInvokerThread.start();
         
+        if (ApplicationConfiguration.isAlertStateSnapshotEnabled() && (alertStateSnapshot_ != null)) {
+            alertStateSnapshotInvokerThread_ = new AlertStateSnapshotInvokerThread(alertStateSnapshot_, ApplicationConfiguration.getAlertStateSnapshotInterval());
+            Thread alertStateSnapshotInvokerThread = new Thread(alertStateSnapshotInvokerThread_);
+            alertStateSnapshotInvokerThread.start();
+        }
+        
         // startup netty servers
         boolean isStartupServerListenersSuccess = startServerListeners();
    
@@ -603,16 +621,17 @@ public class ContextManager implements ServletContextListener {
                 if ((metricLastSeen.getMetricKey() == null) || (metricLastSeen.getLastModified() == null)) continue;
                 
                 synchronized (GlobalVariables.recentMetricTimestampsAndValuesByMetricKey) {
-                    List<MetricTimestampAndValue> metricTimestampsAndValues = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(metricLastSeen.getMetricKey());
+                    RecentMetricTimestampsAndValues metricTimestampsAndValues = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(metricLastSeen.getMetricKey());
 
                     if (metricTimestampsAndValues == null) {
-                        metricTimestampsAndValues = Collections.synchronizedList(new ArrayList<>());
+                        metricTimestampsAndValues = new RecentMetricTimestampsAndValues();
                         GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.put(metricLastSeen.getMetricKey(), metricTimestampsAndValues);
                     }
                 }
                 
                 MetricKeyLastSeen metricKeyLastSeen = new MetricKeyLastSeen(metricLastSeen.getLastModified().getTime(), metricLastSeen.getLastModified().getTime());
-                GlobalVariables.metricKeysLastSeenTimestamp.putIfAbsent(metricLastSeen.getMetricKey(), metricKeyLastSeen);
+                MetricKeyLastSeen previousMetricKeyLastSeen = GlobalVariables.metricKeysLastSeenTimestamp.putIfAbsent(metricLastSeen.getMetricKey(), metricKeyLastSeen);
+                if (previousMetricKeyLastSeen == null) GlobalVariables.metricKeyExpiryIndex.update(metricLastSeen.getMetricKey(), null, metricKeyLastSeen);
             }
             catch (Exception e) {
                 logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
@@ -642,7 +661,8 @@ public class ContextManager implements ServletContextListener {
 
                 GlobalVariables.statsdMetricsAggregatedMostRecentValue.putIfAbsent(gauge.getBucket(), statsdMetricAggregated);
                 MetricKeyLastSeen metricKeyLastSeen = new MetricKeyLastSeen(gauge.getLastModified().getTime(), gauge.getLastModified().getTime());
-                GlobalVariables.metricKeysLastSeenTimestamp.putIfAbsent(gauge.getBucket(), metricKeyLastSeen);
+                MetricKeyLastSeen previousMetricKeyLastSeen = GlobalVariables.metricKeysLastSeenTimestamp.putIfAbsent(gauge.getBucket(), metricKeyLastSeen);
+                if (previousMetricKeyLastSeen == null) GlobalVariables.metricKeyExpiryIndex.update(gauge.getBucket(), null, metricKeyLastSeen);
                 GlobalVariables.statsdGaugeCache.putIfAbsent(gauge.getBucket(), gauge);
             }
             catch (Exception e) {
@@ -653,6 +673,31 @@ public class ContextManager implements ServletContextListener {
         return gauges.size();
     }
 
+    private void restoreAlertStateSnapshot() {
+        
+        try {
+            alertStateSnapshot_ = new AlertStateSnapshot(ApplicationConfiguration.getAlertStateSnapshotDirectory());
+            Long restoredSnapshotTimestamp = alertStateSnapshot_.restoreSnapshot(ApplicationConfiguration.getAlertStateSnapshotMaxAge());
+            if (restoredSnapshotTimestamp != null) GlobalVariables.alertStateSnapshotRestoredTimestamp.set(restoredSnapshotTimestamp);
+            else GlobalVariables.alertStateSnapshotRestoredTimestamp.set(0);
+        }
+        catch (Exception e) {
+            GlobalVariables.alertStateSnapshotRestoredTimestamp.set(0);
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        
+    }
+    
+    private void writeFinalAlertStateSnapshot() {
+        
+        if (alertStateSnapshot_ == null) {
+            return;
+        }
+        
+        boolean isSnapshotWriteSuccess = alertStateSnapshot_.writeSnapshot();
+        logger.info("Finished writing alert state snapshot. Success=" + isSnapshotWriteSuccess);
+    }
+    
     private boolean startServerListeners() {
         
         boolean isStartupSuccess = true;
@@ -737,6 +782,8 @@ public class ContextManager implements ServletContextListener {
     }
     
     private void startSendToOutputModuleThreadPoolManager() {
+        // sizes the http connection pool before any http output module makes a request
+        HttpConnectionPool.initialize(ApplicationConfiguration.getOutputModuleHttpMaxConnectionsPerHost());
         SendMetricsToOutputModule_ThreadPoolManager.start();
     }
     
@@ -843,6 +890,10 @@ public class ContextManager implements ServletContextListener {
         Thread shutdownInternalStatsInvokerThread_Thread = new Thread(shutdownInternalStatsInvokerThread);
         shutdownThreadInvokerThreads.add(shutdownInternalStatsInvokerThread_Thread);
         
+        ShutdownInvokerThread_Thread shutdownAlertStateSnapshotInvokerThread = new ShutdownInvokerThread_Thread(alertStateSnapshotInvokerThread_);
+        Thread shutdownAlertStateSnapshotInvokerThread_Thread = new Thread(shutdownAlertStateSnapshotInvokerThread);
+        shutdownThreadInvokerThreads.add(shutdownAlertStateSnapshotInvokerThread_Thread);
+        
         Threads.threadExecutorCachedPool(shutdownThreadInvokerThreads, 2, TimeUnit.MINUTES);
 
         logger.info("Finish - shutting down invoker threads");
@@ -0,0 +1,303 @@
+package com.pearson.statsagg.controller.thread_managers;
+
+import com.pearson.statsagg.metric_formats.SendMetricsToOutputModuleThread;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bounded queue of batches (output threads) that are waiting to be sent by a single output module, & the module's worker bookkeeping.
+ *
+ * Workers take batches from the head of the queue. A worker that takes a batch also merges every batch queued behind it (for the same endpoint & settings)
+ * into one send, so a module that falls behind catches up with a few big sends instead of many small ones.
+ * When the queue is full, the 'queue full policy' decides what happens to a new batch:
+ *   BLOCK -- the producer waits (up to a max time) for room in the queue.
+ *   MERGE -- the batch is merged into the newest queued batch.
+ *   SPILL -- the batch is written to the output module's disk spool.
+ * If the policy can't handle the batch (ex -- the producer waited too long, the batches can't be merged, or the module doesn't have a spool), the other options are tried before the batch is dropped.
+ *
+ * Every queue tracks its depth, how long batches waited in the queue, & how long sends took.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class OutputModuleQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputModuleQueue.class.getName());
+
+    public enum QueueFullPolicy {
+        BLOCK, MERGE, SPILL;
+
+        public static QueueFullPolicy fromString(String queueFullPolicy) {
+            if (queueFullPolicy == null) return MERGE;
+            if (queueFullPolicy.trim().equalsIgnoreCase("block")) return BLOCK;
+            if (queueFullPolicy.trim().equalsIgnoreCase("spill")) return SPILL;
+            return MERGE;
+        }
+    }
+
+    public enum OfferResult { QUEUED, MERGED, SPILLED, DROPPED }
+
+    private final String outputModuleId_;
+
+    // guarded by 'this'
+    private final ArrayDeque<QueuedBatch> queue_ = new ArrayDeque<>();
+    private int activeWorkers_ = 0;
+
+    private final Set<SendMetricsToOutputModuleThread> runningThreads_ = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong numQueuedBatches_ = new AtomicLong(0);
+    private final AtomicLong numMergedBatches_ = new AtomicLong(0);
+    private final AtomicLong numSpilledBatches_ = new AtomicLong(0);
+    private final AtomicLong numDroppedBatches_ = new AtomicLong(0);
+    private final AtomicLong numStartedSends_ = new AtomicLong(0);
+    private final AtomicLong numCompletedSends_ = new AtomicLong(0);
+    private final AtomicLong totalQueueWaitTimeInMs_ = new AtomicLong(0);
+    private final AtomicLong maxQueueWaitTimeInMs_ = new AtomicLong(0);
+    private final AtomicLong totalSendTimeInMs_ = new AtomicLong(0);
+    private final AtomicLong maxSendTimeInMs_ = new AtomicLong(0);
+    private volatile long lastQueueWaitTimeInMs_ = 0;
+    private volatile long lastSendTimeInMs_ = 0;
+
+    public OutputModuleQueue(String outputModuleId) {
+        this.outputModuleId_ = outputModuleId;
+    }
+
+    /*
+    Adds a batch to the queue, applying 'queueFullPolicy' if the queue already has 'capacity' batches in it.
+    */
+    public OfferResult offer(SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread, int capacity, QueueFullPolicy queueFullPolicy, long maxBlockTimeInMs) {
+
+        if (sendMetricsToOutputModuleThread == null) {
+            return OfferResult.DROPPED;
+        }
+
+        synchronized (this) {
+            if ((queueFullPolicy == QueueFullPolicy.BLOCK) && (queue_.size() >= capacity)) {
+                long endTime = System.currentTimeMillis() + maxBlockTimeInMs;
+
+                try {
+                    for (long waitTime = maxBlockTimeInMs; (queue_.size() >= capacity) && (waitTime > 0); waitTime = endTime - System.currentTimeMillis()) {
+                        wait(waitTime);
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (queue_.size() < Math.max(capacity, 1)) {
+                queue_.addLast(new QueuedBatch(sendMetricsToOutputModuleThread, System.currentTimeMillis()));
+                numQueuedBatches_.incrementAndGet();
+                return OfferResult.QUEUED;
+            }
+
+            if (queueFullPolicy != QueueFullPolicy.SPILL) {
+                if (mergeIntoNewestBatch(sendMetricsToOutputModuleThread)) return OfferResult.MERGED;
+            }
+        }
+
+        // spooling writes to disk, so it is done outside of the lock
+        if (sendMetricsToOutputModuleThread.spool()) {
+            numSpilledBatches_.incrementAndGet();
+            return OfferResult.SPILLED;
+        }
+
+        if (queueFullPolicy == QueueFullPolicy.SPILL) {
+            synchronized (this) {
+                if (mergeIntoNewestBatch(sendMetricsToOutputModuleThread)) return OfferResult.MERGED;
+            }
+        }
+
+        numDroppedBatches_.incrementAndGet();
+        return OfferResult.DROPPED;
+    }
+
+    private boolean mergeIntoNewestBatch(SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread) {
+
+        QueuedBatch newestQueuedBatch = queue_.peekLast();
+        if (newestQueuedBatch == null) return false;
+
+        SendMetricsToOutputModuleThread mergedThread = newestQueuedBatch.sendMetricsToOutputModuleThread__.merge(sendMetricsToOutputModuleThread);
+        if (mergedThread == null) return false;
+
+        queue_.pollLast();
+        queue_.addLast(new QueuedBatch(mergedThread, newestQueuedBatch.queuedTimestamp__));
+        numMergedBatches_.incrementAndGet();
+
+        return true;
+    }
+
+    /*
+    Reserves a worker for this queue, if the queue has batches waiting & fewer than 'maxWorkers' workers are reserved. Returns true if a worker was reserved.
+    */
+    public synchronized boolean reserveWorker(int maxWorkers) {
+
+        if (queue_.isEmpty() || (activeWorkers_ >= Math.max(maxWorkers, 1))) {
+            return false;
+        }
+
+        activeWorkers_++;
+        return true;
+    }
+
+    /*
+    Called by a reserved worker. Takes the oldest batch (merged with every batch queued behind it that can be merged into it).
+    Returns null, & releases the worker's reservation, if the queue is empty.
+    */
+    public synchronized SendMetricsToOutputModuleThread take() {
+
+        QueuedBatch queuedBatch = queue_.pollFirst();
+
+        if (queuedBatch == null) {
+            activeWorkers_--;
+            return null;
+        }
+
+        SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread = queuedBatch.sendMetricsToOutputModuleThread__;
+
+        while (!queue_.isEmpty()) {
+            SendMetricsToOutputModuleThread mergedThread = sendMetricsToOutputModuleThread.merge(queue_.peekFirst().sendMetricsToOutputModuleThread__);
+            if (mergedThread == null) break;
+
+            queue_.pollFirst();
+            sendMetricsToOutputModuleThread = mergedThread;
+            numMergedBatches_.incrementAndGet();
+        }
+
+        long queueWaitTime = System.currentTimeMillis() - queuedBatch.queuedTimestamp__;
+        numStartedSends_.incrementAndGet();
+        lastQueueWaitTimeInMs_ = queueWaitTime;
+        totalQueueWaitTimeInMs_.addAndGet(queueWaitTime);
+        updateMax(maxQueueWaitTimeInMs_, queueWaitTime);
+
+        runningThreads_.add(sendMetricsToOutputModuleThread);
+
+        // producers that are blocked on a full queue can continue
+        notifyAll();
+
+        return sendMetricsToOutputModuleThread;
+    }
+
+    /*
+    Called by a worker after it finished sending a batch that it took from the queue.
+    */
+    public void finished(SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread, long sendTimeInMs) {
+        runningThreads_.remove(sendMetricsToOutputModuleThread);
+        numCompletedSends_.incrementAndGet();
+        lastSendTimeInMs_ = sendTimeInMs;
+        totalSendTimeInMs_.addAndGet(sendTimeInMs);
+        updateMax(maxSendTimeInMs_, sendTimeInMs);
+    }
+
+    /*
+    Releases a worker reservation that was never used (ex -- the worker couldn't be started), or that a worker gave back before the queue was empty (ex -- at the end of its turn).
+    */
+    public synchronized void releaseWorker() {
+        if (activeWorkers_ > 0) activeWorkers_--;
+    }
+
+    /*
+    Removes & returns every queued batch.
+    */
+    public synchronized List<SendMetricsToOutputModuleThread> drain() {
+
+        List<SendMetricsToOutputModuleThread> drainedThreads = new ArrayList<>();
+
+        for (QueuedBatch queuedBatch : queue_) {
+            drainedThreads.add(queuedBatch.sendMetricsToOutputModuleThread__);
+        }
+
+        queue_.clear();
+        notifyAll();
+
+        return drainedThreads;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long currentMax = max.get();
+        while ((value > currentMax) && !max.compareAndSet(currentMax, value)) currentMax = max.get();
+    }
+
+    public String getOutputModuleId() {
+        return outputModuleId_;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue_.size();
+    }
+
+    public synchronized int getActiveWorkers() {
+        return activeWorkers_;
+    }
+
+    public List<SendMetricsToOutputModuleThread> getRunningThreads() {
+        return Collections.unmodifiableList(new ArrayList<>(runningThreads_));
+    }
+
+    public long getNumQueuedBatches() {
+        return numQueuedBatches_.get();
+    }
+
+    public long getNumMergedBatches() {
+        return numMergedBatches_.get();
+    }
+
+    public long getNumSpilledBatches() {
+        return numSpilledBatches_.get();
+    }
+
+    public long getNumDroppedBatches() {
+        return numDroppedBatches_.get();
+    }
+
+    public long getNumCompletedSends() {
+        return numCompletedSends_.get();
+    }
+
+    public long getLastQueueWaitTimeInMs() {
+        return lastQueueWaitTimeInMs_;
+    }
+
+    public long getMaxQueueWaitTimeInMs() {
+        return maxQueueWaitTimeInMs_.get();
+    }
+
+    public double getAverageQueueWaitTimeInMs() {
+        long numStartedSends = numStartedSends_.get();
+        if (numStartedSends == 0) return 0;
+        return totalQueueWaitTimeInMs_.get() / (double) numStartedSends;
+    }
+
+    public long getLastSendTimeInMs() {
+        return lastSendTimeInMs_;
+    }
+
+    public long getMaxSendTimeInMs() {
+        return maxSendTimeInMs_.get();
+    }
+
+    public double getAverageSendTimeInMs() {
+        long numCompletedSends = numCompletedSends_.get();
+        if (numCompletedSends == 0) return 0;
+        return totalSendTimeInMs_.get() / (double) numCompletedSends;
+    }
+
+    private static class QueuedBatch {
+
+        private final SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread__;
+        private final long queuedTimestamp__;
+
+        public QueuedBatch(SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread, long queuedTimestamp) {
+            this.sendMetricsToOutputModuleThread__ = sendMetricsToOutputModuleThread;
+            this.queuedTimestamp__ = queuedTimestamp;
+        }
+
+    }
+
+}
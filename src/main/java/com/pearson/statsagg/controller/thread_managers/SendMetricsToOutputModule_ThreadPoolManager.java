@@ -1,34 +1,52 @@
 package com.pearson.statsagg.controller.thread_managers;
 
+import com.google.common.base.Supplier;
 import com.pearson.statsagg.globals.ApplicationConfiguration;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteOutputModule;
+import com.pearson.statsagg.metric_formats.graphite.GraphiteShardedOutputModule;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbV1HttpOutputModule;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbV2HttpOutputModule;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbHttpOutputModule;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbTelnetOutputModule;
 import com.pearson.statsagg.metric_formats.graphite.SendMetricsToGraphiteThread;
 import com.pearson.statsagg.metric_formats.influxdb.SendMetricsToInfluxdbV1Thread;
+import com.pearson.statsagg.metric_formats.influxdb.SendMetricsToInfluxdbV2Thread;
 import com.pearson.statsagg.metric_formats.opentsdb.SendMetricsToOpenTsdbThread;
+import com.pearson.statsagg.metric_formats.OutputModuleSpool;
+import com.pearson.statsagg.metric_formats.RenderedMetrics;
 import com.pearson.statsagg.metric_formats.SendMetricsToOutputModuleThread;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteMetricFormat;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetricFormat_v1;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetricFormat_v2;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetric_v1;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetricFormat;
+import com.pearson.statsagg.network.tcp.TcpOutputClient;
 import com.pearson.statsagg.utilities.StackTrace;
 import com.pearson.statsagg.utilities.Threads;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Schedules the output modules' sends (SendMetricsToOutputModuleThread objects) on a fixed pool of worker threads.
+ * 
+ * Every output module has a bounded queue of batches (see OutputModuleQueue), & at most 'output_module_max_concurrent_threads_for_single_module' workers.
+ * The worker pool is shared by every output module, & has 'output_module_max_concurrent_threads' threads.
+ * A worker sends a bounded number of its module's queued batches (merging the batches that queued up behind each other), & then gives its pool thread back. 
+ * If the module still has queued batches, a new worker is submitted to the back of the pool's queue, so a few backlogged modules can't hog the shared pool.
+ * When a module's queue is full, the configured 'queue full policy' (block, merge, or spill) decides what happens to new batches.
+ * 
  * @author Jeffrey Schmidt
  */
 public class SendMetricsToOutputModule_ThreadPoolManager {
@@ -36,26 +54,20 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
     private static final Logger logger = LoggerFactory.getLogger(SendMetricsToOutputModule_ThreadPoolManager.class.getName());
     
     private static final Object startupAndShutdownLock_ = new Object();
-    private static final Object outputModuleThreadTrackerLock_ = new Object();
     private static ExecutorService threadExecutor_ = null;
     private static final AtomicBoolean isOpenForBusiness = new AtomicBoolean(false);
     
-    private static final AtomicLong threadIdGenerator = new AtomicLong(0);
-    private static final ConcurrentHashMap<Long,SendMetricsToOutputModule> sendMetricsToOutputModuleThreads = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String,List<Long>> outputModuleThreadTracker = new ConcurrentHashMap<>();
-    private static final AtomicBoolean continueRunningCleanup = new AtomicBoolean(false);
+    // the number of (merged) batches that a worker sends before it gives its pool thread to the next output module that is waiting
+    private static final int MAX_BATCHES_PER_WORKER_TURN = 1;
     
-    private static Thread cleanupOutputThreads_Thread = null;
+    // k=output module id, v=the output module's queue of batches
+    private static final ConcurrentHashMap<String,OutputModuleQueue> outputModuleQueues = new ConcurrentHashMap<>();
     
     public static void start() {
         synchronized(startupAndShutdownLock_) {
-            if ((threadExecutor_ == null) || ((!threadExecutor_.isShutdown()) && (!threadExecutor_.isTerminated()))) {
-                threadExecutor_ = Executors.newCachedThreadPool();
+            if ((threadExecutor_ == null) || threadExecutor_.isTerminated()) {
+                threadExecutor_ = Executors.newFixedThreadPool(Math.max(ApplicationConfiguration.getOutputModuleMaxConcurrentThreads(), 1));
                 isOpenForBusiness.set(true);
-
-                continueRunningCleanup.set(true);
-                cleanupOutputThreads_Thread = new Thread(new CleanupOutputThreads());
-                cleanupOutputThreads_Thread.start();
             }
             else {
                 logger.info("Can't create new thread pool - current thread pool isn't terminated");
@@ -71,105 +83,131 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
             
             isOpenForBusiness.set(false);
             
+            // workers finish sending the batches that are already queued, up to the timeout
             Threads.shutdownThreadExecutor(threadExecutor_, (long) ((2 * ApplicationConfiguration.getFlushTimeAgg()) + 3000), TimeUnit.MILLISECONDS, false, false);
             forceShutdown_SendMetricsToOutputModuleThreads();
             Threads.shutdownThreadExecutor(threadExecutor_, 1000l, TimeUnit.MILLISECONDS, true, true);
             
-            try {
-                continueRunningCleanup.set(false);
-                cleanupOutputThreads_Thread.join();
-            }
-            catch (Exception e) {}
-            
-            sendMetricsToOutputModuleThreads.clear();
-            cleanupOutputThreads_Thread = null;
+            TcpOutputClient.closeAllClients(3000);
+            OutputModuleSpool.closeAllSpools();
             threadExecutor_ = null;
         }
     }
 
     public static void executeThread(SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread, String outputModuleId) {
         
-        if (sendMetricsToOutputModuleThread == null) return;
+        if ((sendMetricsToOutputModuleThread == null) || (outputModuleId == null)) return;
         
         try {
-            if (sendMetricsToOutputModuleThreads.size() >= ApplicationConfiguration.getOutputModuleMaxConcurrentThreads()) {
-                logger.warn("Can't output because too many output threads are already running. ThreadId=\"" + sendMetricsToOutputModuleThread.getThreadId() + "\", "
-                        + "OutputEndpoint=\"" + sendMetricsToOutputModuleThread.getOutputEndpoint() + "\"");
-                
+            if (!isOpenForBusiness.get()) {
+                logger.warn("The thread pool is not in a state that can execute the requested thread.");
                 return;
             }
             
-            synchronized(outputModuleThreadTrackerLock_) {
-                outputModuleThreadTracker.putIfAbsent(outputModuleId, Collections.synchronizedList(new ArrayList<Long>()));
-                List<Long> threadIdsAssociatedWithOutputModule = outputModuleThreadTracker.get(outputModuleId);
-                
-                if (threadIdsAssociatedWithOutputModule.size() >= ApplicationConfiguration.getOutputModuleMaxConcurrentThreadsForSingleModule()) {
-                    logger.warn("Can't output because too many instances of a particular output module are already running. "
-                            + "ThreadId=\"" + sendMetricsToOutputModuleThread.getThreadId() + "\", "
-                            + "OutputEndpoint=\"" + sendMetricsToOutputModuleThread.getOutputEndpoint() + "\", "
-                            + "OutputModuleId=\"" + outputModuleId + "\"");
-
-                    return;
-                }
-                
-                if (isOpenForBusiness.get() && (threadExecutor_ != null) && !threadExecutor_.isShutdown() && !threadExecutor_.isTerminated()) {
-                    Thread sendMetricsToOutputModuleThread_Thread = new Thread(sendMetricsToOutputModuleThread);
-
-                    threadExecutor_.execute(sendMetricsToOutputModuleThread_Thread);                
-
-                    SendMetricsToOutputModule sendToOutputModule = new SendMetricsToOutputModule(sendMetricsToOutputModuleThread, sendMetricsToOutputModuleThread_Thread);
-                    Long threadId = threadIdGenerator.getAndIncrement();
-                    threadIdsAssociatedWithOutputModule.add(threadId);
-                    sendMetricsToOutputModuleThreads.put(threadId, sendToOutputModule);
-                }
-                else {
-                    logger.warn("The thread pool is not in a state that can execute the requested thread.");
-                }
+            OutputModuleQueue outputModuleQueue = outputModuleQueues.computeIfAbsent(outputModuleId, OutputModuleQueue::new);
+            
+            OutputModuleQueue.OfferResult offerResult = outputModuleQueue.offer(sendMetricsToOutputModuleThread, ApplicationConfiguration.getOutputModuleQueueCapacity(), 
+                    OutputModuleQueue.QueueFullPolicy.fromString(ApplicationConfiguration.getOutputModuleQueueFullPolicy()), ApplicationConfiguration.getOutputModuleQueueMaxBlockTime());
+            
+            if ((offerResult == OutputModuleQueue.OfferResult.SPILLED) || (offerResult == OutputModuleQueue.OfferResult.DROPPED)) {
+                logger.warn("Output module queue is full. "
+                        + "ThreadId=\"" + sendMetricsToOutputModuleThread.getThreadId() + "\", "
+                        + "OutputEndpoint=\"" + sendMetricsToOutputModuleThread.getOutputEndpoint() + "\", "
+                        + "OutputModuleId=\"" + outputModuleId + "\", "
+                        + "QueueDepth=" + outputModuleQueue.getQueueDepth() + ", "
+                        + "Action=" + ((offerResult == OutputModuleQueue.OfferResult.SPILLED) ? "Spooled" : "Dropped"));
             }
+            else if (offerResult == OutputModuleQueue.OfferResult.MERGED) {
+                logger.debug("Output module queue is full, merged into a queued batch. OutputModuleId=\"" + outputModuleId + "\"");
+            }
+            
+            startWorkers(outputModuleQueue);
         }
         catch (Exception e) {
             logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
         }
     }
     
+    /*
+    Starts workers for the output module's queue, up to the module's worker budget.
+    */
+    private static void startWorkers(OutputModuleQueue outputModuleQueue) {
+        
+        while (outputModuleQueue.reserveWorker(ApplicationConfiguration.getOutputModuleMaxConcurrentThreadsForSingleModule())) {
+            try {
+                ExecutorService threadExecutor = threadExecutor_;
+                if (threadExecutor == null) throw new IllegalStateException("The thread pool isn't running");
+                threadExecutor.execute(new OutputModuleWorker(outputModuleQueue));
+            }
+            catch (Exception e) {
+                outputModuleQueue.releaseWorker();
+                logger.warn("The thread pool is not in a state that can execute the requested thread. Exception=\"" + e.toString() + "\"");
+                return;
+            }
+        }
+        
+    }
+    
     private static void forceShutdown_SendMetricsToOutputModuleThreads() {
-        for (SendMetricsToOutputModule sendMetricsToOutputModule : sendMetricsToOutputModuleThreads.values()) {
-            sendMetricsToOutputModule.getSendMetricsToOutputModuleThread().shutdown();
+        
+        for (OutputModuleQueue outputModuleQueue : outputModuleQueues.values()) {
+            // batches that never got to run are spooled (if the output module has a spool)
+            for (SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread : outputModuleQueue.drain()) {
+                if (!sendMetricsToOutputModuleThread.spool()) {
+                    logger.warn("Dropped a queued output batch during shutdown. ThreadId=\"" + sendMetricsToOutputModuleThread.getThreadId() + "\", "
+                            + "OutputModuleId=\"" + outputModuleQueue.getOutputModuleId() + "\"");
+                }
+            }
+            
+            for (SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread : outputModuleQueue.getRunningThreads()) {
+                sendMetricsToOutputModuleThread.shutdown();
+            }
         }
+        
     }
     
-    private static class CleanupOutputThreads implements Runnable {
+    /*
+    Returns the queue of every output module that has sent (or tried to send) metrics, sorted by output module id.
+    */
+    public static List<OutputModuleQueue> getOutputModuleQueues() {
+        return new ArrayList<>(new TreeMap<>(outputModuleQueues).values());
+    }
     
+    private static class OutputModuleWorker implements Runnable {
+        
+        private final OutputModuleQueue outputModuleQueue__;
+        
+        public OutputModuleWorker(OutputModuleQueue outputModuleQueue) {
+            this.outputModuleQueue__ = outputModuleQueue;
+        }
+        
         @Override
         public void run() {
             
-            while (continueRunningCleanup.get() || !sendMetricsToOutputModuleThreads.isEmpty()) {
-                int numThreadsCleanedUp = 0;
+            SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread;
+            int numSentBatches = 0;
+            
+            while ((sendMetricsToOutputModuleThread = outputModuleQueue__.take()) != null) {
+                long sendStartTime = System.currentTimeMillis();
+                numSentBatches++;
                 
-                for (Long threadId : sendMetricsToOutputModuleThreads.keySet()) {
-                    SendMetricsToOutputModule sendToOutputModule = sendMetricsToOutputModuleThreads.get(threadId);
-                    SendMetricsToOutputModuleThread sendMetricsToOutputModuleThread = sendToOutputModule.getSendMetricsToOutputModuleThread();
-                    Thread sendMetricsToOutputModuleThread_Thread = sendToOutputModule.getSendMetricsToOutputModuleThread_Thread();
-                    
-                    if ((sendMetricsToOutputModuleThread != null) && (sendMetricsToOutputModuleThread.isFinished() || sendMetricsToOutputModuleThread.isShuttingDown())) {
-                        if ((sendMetricsToOutputModuleThread_Thread != null) && !sendMetricsToOutputModuleThread_Thread.isAlive()) {
-                            // remove the thread from the global track list of "how many total output modules are running"
-                            sendMetricsToOutputModuleThreads.remove(threadId);
-                            numThreadsCleanedUp++;
-                            
-                            // remove the thread from the per-output-module list of "how many of 'this particular' output modules are running"
-                            for (String outputModuleId : outputModuleThreadTracker.keySet()) {
-                                List<Long> threadIdsAssociatedWithOutputModule = outputModuleThreadTracker.get(outputModuleId);
-                                if (threadIdsAssociatedWithOutputModule == null) continue;
-                                threadIdsAssociatedWithOutputModule.remove(threadId);
-                            }
-                        }
-                    }
+                try {
+                    sendMetricsToOutputModuleThread.run();
+                }
+                catch (Exception e) {
+                    logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+                }
+                finally {
+                    outputModuleQueue__.finished(sendMetricsToOutputModuleThread, System.currentTimeMillis() - sendStartTime);
                 }
                 
-                if (numThreadsCleanedUp > 0) logger.debug("Cleaned up " + numThreadsCleanedUp + " output threads");
-                
-                Threads.sleepMilliseconds(50);
+                // give the pool thread back, & requeue a worker for whatever is left in the module's queue. 
+                // during shutdown, the pool doesn't accept new workers, so the worker keeps going until the queue is empty.
+                if ((numSentBatches >= MAX_BATCHES_PER_WORKER_TURN) && isOpenForBusiness.get()) {
+                    outputModuleQueue__.releaseWorker();
+                    startWorkers(outputModuleQueue__);
+                    return;
+                }
             }
             
         }
@@ -187,6 +225,20 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
             }
         }
         
+        return isAnyGraphiteShardedOutputModuleEnabled();
+    }
+    
+    public static boolean isAnyGraphiteShardedOutputModuleEnabled() {
+        
+        List<GraphiteShardedOutputModule> graphiteShardedOutputModules = ApplicationConfiguration.getGraphiteShardedOutputModules();
+        if (graphiteShardedOutputModules == null) return false;
+        
+        for (GraphiteShardedOutputModule graphiteShardedOutputModule : graphiteShardedOutputModules) {
+            if (graphiteShardedOutputModule.isOutputEnabled()) {
+                return true;
+            }
+        }
+        
         return false;
     }
 
@@ -212,16 +264,26 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
             return;
         }
         
+        sendMetricsToAllGraphiteShardedOutputModules(graphiteMetrics, threadId);
+        
         try {
             List<GraphiteOutputModule> graphiteOutuputModules = ApplicationConfiguration.getGraphiteOutputModules();
             if (graphiteOutuputModules == null) return;
                     
+            // the metrics are rendered once per graphite format (sanitize & substitute settings), & the rendering is shared by every output module with that format
+            Map<String,Supplier<RenderedMetrics>> renderedGraphiteMetricsByFormat = new HashMap<>();
+            
             for (GraphiteOutputModule graphiteOutputModule : graphiteOutuputModules) {
                 if (!graphiteOutputModule.isOutputEnabled()) continue;
                 
-                SendMetricsToGraphiteThread sendMetricsToGraphiteThread = new SendMetricsToGraphiteThread(graphiteMetrics, 
-                        graphiteOutputModule.isSanitizeMetrics(), graphiteOutputModule.isSubstituteCharacters(),
-                        graphiteOutputModule.getHost(), graphiteOutputModule.getPort(), ApplicationConfiguration.getOutputModuleMaxConnectTime(),  
+                TcpOutputClient tcpOutputClient = getTcpOutputClient(graphiteOutputModule.getUniqueId(), graphiteOutputModule.getHost(), graphiteOutputModule.getPort());
+                
+                Supplier<RenderedMetrics> renderedGraphiteMetrics = renderedGraphiteMetricsByFormat.computeIfAbsent(
+                        graphiteOutputModule.isSanitizeMetrics() + "," + graphiteOutputModule.isSubstituteCharacters(), 
+                        format -> SendMetricsToGraphiteThread.renderLazily(graphiteMetrics, graphiteOutputModule.isSanitizeMetrics(), graphiteOutputModule.isSubstituteCharacters()));
+                
+                SendMetricsToGraphiteThread sendMetricsToGraphiteThread = new SendMetricsToGraphiteThread(Collections.singletonList(renderedGraphiteMetrics), 
+                        tcpOutputClient, getOutputModuleSpool(graphiteOutputModule.getUniqueId()),
                         graphiteOutputModule.getNumSendRetryAttempts(), graphiteOutputModule.getMaxMetricsPerMessage(), threadId);
             
                 SendMetricsToOutputModule_ThreadPoolManager.executeThread(sendMetricsToGraphiteThread, graphiteOutputModule.getUniqueId());
@@ -233,6 +295,68 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
         
     }
     
+    /*
+    Every destination of a sharded graphite output module is sent (only) the metrics whose metric paths hash to it.
+    The metrics are rendered & split up by destination once per sharded output module (by whichever of its destinations' sends runs first).
+    */
+    private static void sendMetricsToAllGraphiteShardedOutputModules(List<? extends GraphiteMetricFormat> graphiteMetrics, String threadId) {
+        
+        try {
+            List<GraphiteShardedOutputModule> graphiteShardedOutputModules = ApplicationConfiguration.getGraphiteShardedOutputModules();
+            if (graphiteShardedOutputModules == null) return;
+            
+            for (GraphiteShardedOutputModule graphiteShardedOutputModule : graphiteShardedOutputModules) {
+                if (!graphiteShardedOutputModule.isOutputEnabled()) continue;
+                
+                Supplier<Map<GraphiteShardedOutputModule.Destination,RenderedMetrics>> renderedGraphiteMetricsByDestination = 
+                        SendMetricsToGraphiteThread.renderShardedLazily(graphiteMetrics, graphiteShardedOutputModule);
+                
+                for (GraphiteShardedOutputModule.Destination destination : graphiteShardedOutputModule.getDestinations()) {
+                    String outputModuleId = graphiteShardedOutputModule.getUniqueId(destination);
+                    TcpOutputClient tcpOutputClient = getTcpOutputClient(outputModuleId, destination.getHost(), destination.getPort());
+                    
+                    Supplier<RenderedMetrics> renderedGraphiteMetrics = () -> {
+                        RenderedMetrics renderedGraphiteMetricsForDestination = renderedGraphiteMetricsByDestination.get().get(destination);
+                        return (renderedGraphiteMetricsForDestination == null) ? RenderedMetrics.render(null, null) : renderedGraphiteMetricsForDestination;
+                    };
+                    
+                    SendMetricsToGraphiteThread sendMetricsToGraphiteThread = new SendMetricsToGraphiteThread(Collections.singletonList(renderedGraphiteMetrics), 
+                            tcpOutputClient, getOutputModuleSpool(outputModuleId),
+                            graphiteShardedOutputModule.getNumSendRetryAttempts(), graphiteShardedOutputModule.getMaxMetricsPerMessage(), threadId);
+
+                    SendMetricsToOutputModule_ThreadPoolManager.executeThread(sendMetricsToGraphiteThread, outputModuleId);
+                }
+            }
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        
+    }
+    
+    /*
+    Returns the output module's non-blocking TCP client (used by the raw TCP output modules -- Graphite & OpenTSDB telnet).
+    */
+    private static TcpOutputClient getTcpOutputClient(String outputModuleId, String host, int port) {
+        return TcpOutputClient.getClient(outputModuleId, host, port, ApplicationConfiguration.getOutputModuleMaxConnectTime(), 
+                ApplicationConfiguration.getOutputModuleTcpMaxConnectionsPerModule(), ApplicationConfiguration.getOutputModuleTcpConnectionMaxIdleTime(),
+                ApplicationConfiguration.getOutputModuleTcpWriteBufferLowWatermark(), ApplicationConfiguration.getOutputModuleTcpWriteBufferHighWatermark(),
+                ApplicationConfiguration.getOutputModuleTcpMaxWriteTime(), ApplicationConfiguration.getOutputModuleTcpEventLoopThreads());
+    }
+    
+    /*
+    Returns the output module's disk spool, or null if spooling is disabled.
+    */
+    private static OutputModuleSpool getOutputModuleSpool(String outputModuleId) {
+        
+        if (!ApplicationConfiguration.isOutputModuleSpoolEnabled()) {
+            return null;
+        }
+        
+        return OutputModuleSpool.getSpool(outputModuleId, ApplicationConfiguration.getOutputModuleSpoolDirectory(), ApplicationConfiguration.getOutputModuleSpoolSegmentSize(), 
+                ApplicationConfiguration.getOutputModuleSpoolMaxSizePerModule(), ApplicationConfiguration.getOutputModuleSpoolReplayMaxBytesPerSecond());
+    }
+    
     public static boolean isAnyOpenTsdbTelnetOutputModuleEnabled() {
         
         List<OpenTsdbTelnetOutputModule> openTsdbTelnetOutputModules = ApplicationConfiguration.getOpenTsdbTelnetOutputModules();
@@ -269,12 +393,19 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
             List<OpenTsdbTelnetOutputModule> openTsdbTelnetOutputModules = ApplicationConfiguration.getOpenTsdbTelnetOutputModules();
             if (openTsdbTelnetOutputModules == null) return;
                     
+            // the metrics are rendered once per opentsdb format (sanitize setting), & the rendering is shared by every output module with that format
+            Map<Boolean,Supplier<RenderedMetrics>> renderedOpenTsdbMetricsByFormat = new HashMap<>();
+            
             for (OpenTsdbTelnetOutputModule openTsdbTelnetOutputModule : openTsdbTelnetOutputModules) {
                 if (!openTsdbTelnetOutputModule.isOutputEnabled()) continue;
                 
-                SendMetricsToOpenTsdbThread sendMetricsToTelnetOpenTsdbThread = new SendMetricsToOpenTsdbThread(openTsdbMetrics, 
-                        openTsdbTelnetOutputModule.isSanitizeMetrics(), null, null,
-                        openTsdbTelnetOutputModule.getHost(), openTsdbTelnetOutputModule.getPort(), ApplicationConfiguration.getOutputModuleMaxConnectTime(),
+                TcpOutputClient tcpOutputClient = getTcpOutputClient(openTsdbTelnetOutputModule.getUniqueId(), openTsdbTelnetOutputModule.getHost(), openTsdbTelnetOutputModule.getPort());
+                
+                Supplier<RenderedMetrics> renderedOpenTsdbMetrics = renderedOpenTsdbMetricsByFormat.computeIfAbsent(openTsdbTelnetOutputModule.isSanitizeMetrics(), 
+                        sanitizeMetrics -> SendMetricsToOpenTsdbThread.renderTelnetLazily(openTsdbMetrics, sanitizeMetrics, null, null));
+                
+                SendMetricsToOpenTsdbThread sendMetricsToTelnetOpenTsdbThread = new SendMetricsToOpenTsdbThread(Collections.singletonList(renderedOpenTsdbMetrics), 
+                        tcpOutputClient, getOutputModuleSpool(openTsdbTelnetOutputModule.getUniqueId()),
                         openTsdbTelnetOutputModule.getNumSendRetryAttempts(), threadId);
                                 
                 SendMetricsToOutputModule_ThreadPoolManager.executeThread(sendMetricsToTelnetOpenTsdbThread, openTsdbTelnetOutputModule.getUniqueId());
@@ -322,13 +453,19 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
             List<OpenTsdbHttpOutputModule> openTsdbHttpOutputModules = ApplicationConfiguration.getOpenTsdbHttpOutputModules();
             if (openTsdbHttpOutputModules == null) return;
                     
+            // the metrics are rendered once per opentsdb format (sanitize setting), & the rendering is shared by every output module with that format
+            Map<Boolean,Supplier<RenderedMetrics>> renderedOpenTsdbMetricsByFormat = new HashMap<>();
+            
             for (OpenTsdbHttpOutputModule openTsdbHttpOutputModule : openTsdbHttpOutputModules) {
                 if (!openTsdbHttpOutputModule.isOutputEnabled()) continue;
-                                
-                SendMetricsToOpenTsdbThread sendMetricsToHttpOpenTsdbThread = new SendMetricsToOpenTsdbThread(openTsdbMetrics, 
-                        openTsdbHttpOutputModule.isSanitizeMetrics(), null, null,
+                
+                Supplier<RenderedMetrics> renderedOpenTsdbMetrics = renderedOpenTsdbMetricsByFormat.computeIfAbsent(openTsdbHttpOutputModule.isSanitizeMetrics(), 
+                        sanitizeMetrics -> SendMetricsToOpenTsdbThread.renderJsonLazily(openTsdbMetrics, sanitizeMetrics, null, null));
+                
+                SendMetricsToOpenTsdbThread sendMetricsToHttpOpenTsdbThread = new SendMetricsToOpenTsdbThread(Collections.singletonList(renderedOpenTsdbMetrics), 
                         openTsdbHttpOutputModule.getUrl(), ApplicationConfiguration.getOutputModuleMaxConnectTime(), ApplicationConfiguration.getOutputModuleMaxReadTime(),  
-                        openTsdbHttpOutputModule.getNumSendRetryAttempts(), openTsdbHttpOutputModule.getMaxMetricsPerMessage(), threadId);
+                        openTsdbHttpOutputModule.getNumSendRetryAttempts(), openTsdbHttpOutputModule.getMaxMetricsPerMessage(), 
+                        ApplicationConfiguration.isOutputModuleHttpGzipEnabled(), threadId);
                                 
                 SendMetricsToOutputModule_ThreadPoolManager.executeThread(sendMetricsToHttpOpenTsdbThread, openTsdbHttpOutputModule.getUniqueId());
             }
@@ -378,16 +515,20 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
         try {
             List<InfluxdbV1HttpOutputModule> influxdbHttpOutputModules = ApplicationConfiguration.getInfluxdbV1HttpOutputModules();
             if (influxdbHttpOutputModules == null) return;
-                    
+            
+            // the metrics are rendered once, & the rendering is shared by every output module
+            List<Supplier<RenderedMetrics>> renderedInfluxdbMetrics = Collections.singletonList(SendMetricsToInfluxdbV1Thread.renderJsonLazily(influxdbMetrics));
+            
             for (InfluxdbV1HttpOutputModule influxdbHttpOutputModule : influxdbHttpOutputModules) {
                 if (!influxdbHttpOutputModule.isOutputEnabled()) continue;
                 
                 URL influxdbBaseUrl = new URL(influxdbHttpOutputModule.getUrl());
                 
-                SendMetricsToInfluxdbV1Thread sendMetricsToHttpInfluxdbThread = new SendMetricsToInfluxdbV1Thread(influxdbMetrics, influxdbBaseUrl, 
+                SendMetricsToInfluxdbV1Thread sendMetricsToHttpInfluxdbThread = new SendMetricsToInfluxdbV1Thread(renderedInfluxdbMetrics, influxdbBaseUrl, 
                         ApplicationConfiguration.getInfluxdbDefaultDatabaseName(), ApplicationConfiguration.getInfluxdbDefaultDatabaseHttpBasicAuthValue(), 
                         ApplicationConfiguration.getOutputModuleMaxConnectTime(), ApplicationConfiguration.getOutputModuleMaxReadTime(),  
-                        influxdbHttpOutputModule.getNumSendRetryAttempts(), influxdbHttpOutputModule.getMaxMetricsPerMessage(), threadId);
+                        influxdbHttpOutputModule.getNumSendRetryAttempts(), influxdbHttpOutputModule.getMaxMetricsPerMessage(), 
+                        ApplicationConfiguration.isOutputModuleHttpGzipEnabled(), threadId);
                                 
                 SendMetricsToOutputModule_ThreadPoolManager.executeThread(sendMetricsToHttpInfluxdbThread, influxdbHttpOutputModule.getUniqueId());
             }
@@ -424,5 +565,107 @@ public class SendMetricsToOutputModule_ThreadPoolManager {
         }
         
     }
+    
+    public static boolean isAnyInfluxdbV2HttpOutputModuleEnabled() {
+        
+        List<InfluxdbV2HttpOutputModule> influxdbHttpOutputModules = ApplicationConfiguration.getInfluxdbV2HttpOutputModules();
+        if (influxdbHttpOutputModules == null) return false;
+        
+        for (InfluxdbV2HttpOutputModule influxdbHttpOutputModule : influxdbHttpOutputModules) {
+            if (influxdbHttpOutputModule.isOutputEnabled()) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+
+    public static List<InfluxdbV2HttpOutputModule> getEnabledInfluxdbV2HttpOutputModules() {
+        
+        List<InfluxdbV2HttpOutputModule> influxdbHttpOutputModules = ApplicationConfiguration.getInfluxdbV2HttpOutputModules();
+        if (influxdbHttpOutputModules == null) return new ArrayList<>();
+        
+        List<InfluxdbV2HttpOutputModule> enabledInfluxdbOutputModules = new ArrayList<>();
+        
+        for (InfluxdbV2HttpOutputModule influxdbHttpOutputModule : influxdbHttpOutputModules) {
+            if (influxdbHttpOutputModule.isOutputEnabled()) {
+                enabledInfluxdbOutputModules.add(influxdbHttpOutputModule);
+            }
+        }
+        
+        return enabledInfluxdbOutputModules;
+    }
+    
+    /* 
+    Use this method to output 'non-native' InfluxDB metrics via the InfluxDB line-protocol. 
+    'Non-native' InfluxDB metrics are metrics that were NOT originally received by the InfluxDB listener. Ex -- Graphite, OpenTSDB, etc
+    */
+    public static void sendMetricsToAllInfluxdbV2HttpOutputModules_NonNative(List<? extends InfluxdbMetricFormat_v2> influxdbMetrics, String threadId) {
+        
+        try {
+            List<InfluxdbV2HttpOutputModule> influxdbHttpOutputModules = ApplicationConfiguration.getInfluxdbV2HttpOutputModules();
+            if (influxdbHttpOutputModules == null) return;
+            
+            // the metrics are rendered once per time precision, & the rendering is shared by every output module with that time precision
+            Map<Byte,List<SendMetricsToInfluxdbV2Thread.DatabaseMetrics>> databaseMetricsByTimePrecision = new HashMap<>();
+            
+            for (InfluxdbV2HttpOutputModule influxdbHttpOutputModule : influxdbHttpOutputModules) {
+                if (!influxdbHttpOutputModule.isOutputEnabled()) continue;
+                
+                URL influxdbBaseUrl = new URL(influxdbHttpOutputModule.getUrl());
+                
+                List<SendMetricsToInfluxdbV2Thread.DatabaseMetrics> databaseMetrics = databaseMetricsByTimePrecision.computeIfAbsent(influxdbHttpOutputModule.getTimePrecisionCode(), 
+                        timePrecisionCode -> SendMetricsToInfluxdbV2Thread.getNonNativeDatabaseMetrics(influxdbMetrics, ApplicationConfiguration.getInfluxdbDefaultDatabaseName(), 
+                                ApplicationConfiguration.getInfluxdbDefaultDatabaseHttpBasicAuthValue(), timePrecisionCode));
+                
+                SendMetricsToInfluxdbV2Thread sendMetricsToHttpInfluxdbThread = new SendMetricsToInfluxdbV2Thread(databaseMetrics, influxdbBaseUrl, 
+                        influxdbHttpOutputModule.getRetentionPolicy(), influxdbHttpOutputModule.getTimePrecisionCode(),
+                        ApplicationConfiguration.getOutputModuleMaxConnectTime(), ApplicationConfiguration.getOutputModuleMaxReadTime(),  
+                        influxdbHttpOutputModule.getNumSendRetryAttempts(), influxdbHttpOutputModule.getMaxMetricsPerMessage(), 
+                        influxdbHttpOutputModule.isGzipHttpBody(), threadId);
+                                
+                SendMetricsToOutputModule_ThreadPoolManager.executeThread(sendMetricsToHttpInfluxdbThread, influxdbHttpOutputModule.getUniqueId());
+            }
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        
+    }
+    
+    /* 
+    Use this method to output 'native' InfluxDB metrics via the InfluxDB line-protocol. 'Native' InfluxDB metrics are metrics that were originally received by the InfluxDB listener.
+    */
+    public static void sendMetricsToAllInfluxdbV2HttpOutputModules_Native(List<InfluxdbMetric_v1> influxdbMetrics, String threadId) {
+        
+        try {
+            List<InfluxdbV2HttpOutputModule> influxdbHttpOutputModules = ApplicationConfiguration.getInfluxdbV2HttpOutputModules();
+            if (influxdbHttpOutputModules == null) return;
+            
+            // the metrics are rendered once per time precision, & the rendering is shared by every output module with that time precision
+            Map<Byte,List<SendMetricsToInfluxdbV2Thread.DatabaseMetrics>> databaseMetricsByTimePrecision = new HashMap<>();
+                    
+            for (InfluxdbV2HttpOutputModule influxdbHttpOutputModule : influxdbHttpOutputModules) {
+                if (!influxdbHttpOutputModule.isOutputEnabled()) continue;
+                
+                URL influxdbBaseUrl = new URL(influxdbHttpOutputModule.getUrl());
+                
+                List<SendMetricsToInfluxdbV2Thread.DatabaseMetrics> databaseMetrics = databaseMetricsByTimePrecision.computeIfAbsent(influxdbHttpOutputModule.getTimePrecisionCode(), 
+                        timePrecisionCode -> SendMetricsToInfluxdbV2Thread.getNativeDatabaseMetrics(influxdbMetrics, timePrecisionCode));
+                
+                SendMetricsToInfluxdbV2Thread sendMetricsToHttpInfluxdbThread = new SendMetricsToInfluxdbV2Thread(databaseMetrics, influxdbBaseUrl, 
+                        influxdbHttpOutputModule.getRetentionPolicy(), influxdbHttpOutputModule.getTimePrecisionCode(),
+                        ApplicationConfiguration.getOutputModuleMaxConnectTime(), ApplicationConfiguration.getOutputModuleMaxReadTime(),  
+                        influxdbHttpOutputModule.getNumSendRetryAttempts(), influxdbHttpOutputModule.getMaxMetricsPerMessage(), 
+                        influxdbHttpOutputModule.isGzipHttpBody(), threadId);
+                
+                SendMetricsToOutputModule_ThreadPoolManager.executeThread(sendMetricsToHttpInfluxdbThread, influxdbHttpOutputModule.getUniqueId());
+            }
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        
+    }
 
 }
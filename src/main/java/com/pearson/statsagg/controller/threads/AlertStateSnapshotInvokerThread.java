@@ -0,0 +1,70 @@
+package com.pearson.statsagg.controller.threads;
+
+import com.pearson.statsagg.alerts.AlertStateSnapshot;
+import com.pearson.statsagg.utilities.InvokerThread;
+import com.pearson.statsagg.utilities.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class AlertStateSnapshotInvokerThread extends InvokerThread implements Runnable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AlertStateSnapshotInvokerThread.class.getName());
+    
+    private final AlertStateSnapshot alertStateSnapshot_;
+    private final long snapshotInterval_;
+    private final long threadExecutorShutdownWaitTime_;
+    
+    public AlertStateSnapshotInvokerThread(AlertStateSnapshot alertStateSnapshot, long snapshotInterval) {
+        this.alertStateSnapshot_ = alertStateSnapshot;
+        this.snapshotInterval_ = snapshotInterval;
+        this.threadExecutorShutdownWaitTime_ = 30000;
+    }
+    
+    @Override
+    public void run() {
+
+        synchronized (lockObject_) {
+            while (continueRunning_) {
+                try {
+                    lockObject_.wait(snapshotInterval_);
+                }
+                catch (Exception e) {}
+                
+                // the final snapshot is written by the shutdown routine, after the other invoker threads have stopped
+                if (!continueRunning_ || (alertStateSnapshot_ == null)) break;
+
+                threadExecutor_.execute(new WriteAlertStateSnapshot_Thread(alertStateSnapshot_));
+            }
+        }
+
+        while (!threadExecutor_.isTerminated()) {
+            Threads.sleepMilliseconds(100);
+        }
+        
+        isShutdown_ = true;
+    }
+    
+    @Override
+    public long getThreadExecutorShutdownWaitTime() {
+        return threadExecutorShutdownWaitTime_;
+    }
+    
+    private static class WriteAlertStateSnapshot_Thread implements Runnable {
+        
+        private final AlertStateSnapshot alertStateSnapshot__;
+        
+        public WriteAlertStateSnapshot_Thread(AlertStateSnapshot alertStateSnapshot) {
+            this.alertStateSnapshot__ = alertStateSnapshot;
+        }
+        
+        @Override
+        public void run() {
+            alertStateSnapshot__.writeSnapshot();
+        }
+        
+    }
+    
+}
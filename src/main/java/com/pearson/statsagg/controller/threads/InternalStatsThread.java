@@ -1,9 +1,8 @@
 package com.pearson.statsagg.controller.threads;
 
 import com.pearson.statsagg.globals.GlobalVariables;
-import com.pearson.statsagg.metric_aggregation.MetricTimestampAndValue;
+import com.pearson.statsagg.metric_aggregation.RecentMetricTimestampsAndValues;
 import com.pearson.statsagg.utilities.StackTrace;
-import java.util.List;
 import java.util.Map.Entry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,9 +29,9 @@ public class InternalStatsThread implements Runnable {
     private void setNumberOfDatabaseInMemory() {
         long currentDatapointsInMemory_local = 0;
         
-        for (Entry<String,List<MetricTimestampAndValue>> recentMetricTimestampsAndValuesByMetricKey_Entry : GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.entrySet()) {
+        for (Entry<String,RecentMetricTimestampsAndValues> recentMetricTimestampsAndValuesByMetricKey_Entry : GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.entrySet()) {
             try {
-                List<MetricTimestampAndValue> metricTimestampAndValues = recentMetricTimestampsAndValuesByMetricKey_Entry.getValue();
+                RecentMetricTimestampsAndValues metricTimestampAndValues = recentMetricTimestampsAndValuesByMetricKey_Entry.getValue();
                 currentDatapointsInMemory_local += metricTimestampAndValues.size();
             }
             catch (Exception e) {
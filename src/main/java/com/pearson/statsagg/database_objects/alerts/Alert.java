@@ -37,6 +37,7 @@ public class Alert extends DatabaseObject<Alert> {
     
     public static final int TYPE_AVAILABILITY = 1001;
     public static final int TYPE_THRESHOLD = 1002;
+    public static final int TYPE_ANOMALY = 1003;
     
     public static final int OPERATOR_GREATER = 1;
     public static final int OPERATOR_GREATER_EQUALS = 2;
@@ -407,8 +408,13 @@ public class Alert extends DatabaseObject<Alert> {
         return alertToModify;
     }
     
+    /*
+    The longest window of raw metric values that this alert needs to be retained in memory.
+    Anomaly alerts use their window durations as smoothing windows for streaming models, so they don't need any raw metric values.
+    */
     public Long getLongestWindowDuration() {
         
+        if ((alertType_ != null) && (alertType_ == TYPE_ANOMALY)) return null;
         if ((cautionWindowDuration_ == null) && (dangerWindowDuration_ == null)) return null;
         if ((cautionWindowDuration_ != null) && (dangerWindowDuration_ == null)) return cautionWindowDuration_;
         if ((cautionWindowDuration_ == null) && (dangerWindowDuration_ != null)) return dangerWindowDuration_;
@@ -437,6 +443,12 @@ public class Alert extends DatabaseObject<Alert> {
             if (!isValid_CautionWindowDuration()) return false;
             if (!isValid_CautionMinimumSampleCount()) return false;
         }
+        else if (alertType_ == TYPE_ANOMALY) {
+            if (!isValid_CautionAnomalyOperation()) return false;
+            if (!isValid_CautionAnomalyThreshold()) return false;
+            if (!isValid_CautionWindowDuration()) return false;
+            if (!isValid_CautionMinimumSampleCount()) return false;
+        }
         
         return true;
     }
@@ -456,6 +468,12 @@ public class Alert extends DatabaseObject<Alert> {
             if (!isValid_DangerWindowDuration()) return false;
             if (!isValid_DangerMinimumSampleCount()) return false;
         }
+        else if (alertType_ == TYPE_ANOMALY) {
+            if (!isValid_DangerAnomalyOperation()) return false;
+            if (!isValid_DangerAnomalyThreshold()) return false;
+            if (!isValid_DangerWindowDuration()) return false;
+            if (!isValid_DangerMinimumSampleCount()) return false;
+        }
         
         return true;
     }
@@ -478,6 +496,48 @@ public class Alert extends DatabaseObject<Alert> {
         return (dangerOperator_ >= 1) && (dangerOperator_ <= 5);
     }
     
+    /*
+    Anomaly alerts only support the 'greater' & 'less' operators (deviating above or below the moving average).
+    */
+    public boolean isValid_CautionAnomalyOperation() {
+        
+        if (cautionOperator_ == null) {
+            return false;
+        } 
+        
+        return (cautionOperator_ >= OPERATOR_GREATER) && (cautionOperator_ <= OPERATOR_LESS_EQUALS);
+    }
+    
+    public boolean isValid_DangerAnomalyOperation() {
+        
+        if (dangerOperator_ == null) {
+            return false;
+        } 
+        
+        return (dangerOperator_ >= OPERATOR_GREATER) && (dangerOperator_ <= OPERATOR_LESS_EQUALS);
+    }
+    
+    /*
+    For anomaly alerts, the threshold is a number of standard deviations, so it must be positive.
+    */
+    public boolean isValid_CautionAnomalyThreshold() {
+        
+        if (cautionThreshold_ == null) {
+            return false;
+        } 
+        
+        return cautionThreshold_.compareTo(BigDecimal.ZERO) > 0;
+    }
+    
+    public boolean isValid_DangerAnomalyThreshold() {
+        
+        if (dangerThreshold_ == null) {
+            return false;
+        } 
+        
+        return dangerThreshold_.compareTo(BigDecimal.ZERO) > 0;
+    }
+    
     public boolean isValid_CautionCombination() {
         
         if (cautionCombination_ == null) {
@@ -687,6 +747,10 @@ public class Alert extends DatabaseObject<Alert> {
             String metricValueString = metricValue_Seconds.stripTrailingZeros().toPlainString();
             outputString = metricValueString + " (seconds since last data point received)";
         }
+        else if (alert.getAlertType() == Alert.TYPE_ANOMALY) {
+            String metricValueString = metricValue.stripTrailingZeros().toPlainString();
+            outputString = metricValueString + " (standard deviations from the moving average)";
+        }
         
         return outputString;
     }
@@ -790,6 +854,44 @@ public class Alert extends DatabaseObject<Alert> {
         
     }
 
+    public String getHumanReadable_AlertCriteria_AnomalyCriteria(int alertLevel) {
+        
+        if ((alertLevel != Alert.CAUTION) && (alertLevel != Alert.DANGER)) {
+            return null;
+        }
+        
+        try {
+            Long windowDuration = (alertLevel == Alert.CAUTION) ? getCautionWindowDuration() : getDangerWindowDuration();
+            Integer windowDurationTimeUnit = (alertLevel == Alert.CAUTION) ? getCautionWindowDurationTimeUnit() : getDangerWindowDurationTimeUnit();
+            BigDecimal threshold = (alertLevel == Alert.CAUTION) ? getCautionThreshold() : getDangerThreshold();
+            Integer operator = (alertLevel == Alert.CAUTION) ? getCautionOperator() : getDangerOperator();
+            
+            if ((windowDuration == null) || (windowDurationTimeUnit == null) || (threshold == null) || (operator == null)) return null;
+
+            BigDecimal windowDurationForTimeUnit = DatabaseObjectCommon.getValueForTimeFromMilliseconds(windowDuration, windowDurationTimeUnit);
+            String windowDurationTimeUnitString = DatabaseObjectCommon.getTimeUnitStringFromCode(windowDurationTimeUnit, true);
+            
+            String direction;
+            if ((operator == OPERATOR_GREATER) || (operator == OPERATOR_GREATER_EQUALS)) direction = "above";
+            else if ((operator == OPERATOR_LESS) || (operator == OPERATOR_LESS_EQUALS)) direction = "below";
+            else return null;
+            
+            String comparison = ((operator == OPERATOR_GREATER_EQUALS) || (operator == OPERATOR_LESS_EQUALS)) ? "at least " : "more than ";
+
+            StringBuilder humanReadableAnomalyCriteria = new StringBuilder();
+            humanReadableAnomalyCriteria.append("The most recent metric value was ").append(comparison).append(threshold.stripTrailingZeros().toPlainString())
+                    .append(" standard deviations ").append(direction).append(" the moving average (smoothed over ")
+                    .append(windowDurationForTimeUnit.stripTrailingZeros().toPlainString()).append(" ").append(windowDurationTimeUnitString).append(")");
+
+            return humanReadableAnomalyCriteria.toString();
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            return null;
+        }
+        
+    }
+
     private String getHumanReadable_ThresholdCriteria_Combination(int alertLevel) {
         
         if ((alertLevel != Alert.CAUTION) && (alertLevel != Alert.DANGER)) {
@@ -943,6 +1045,10 @@ public class Alert extends DatabaseObject<Alert> {
                 jsonObject.remove(currentFieldToAlter);
                 jsonObject.addProperty(currentFieldToAlter, "Availability");
             }
+            else if (alert_Local.getAlertType() == Alert.TYPE_ANOMALY) {
+                jsonObject.remove(currentFieldToAlter);
+                jsonObject.addProperty(currentFieldToAlter, "Anomaly");
+            }
             else jsonObject.remove(currentFieldToAlter);        
 
             JsonUtils.getApiFriendlyJsonObject_CorrectTimesAndTimeUnits(jsonObject, "resend_alert_every", "resend_alert_every_time_unit");
@@ -1054,6 +1160,18 @@ public class Alert extends DatabaseObject<Alert> {
                 jsonObject.remove("danger_threshold");
             }
 
+            if (alert_Local.getAlertType() == Alert.TYPE_ANOMALY) {
+                jsonObject.remove("caution_combination");
+                jsonObject.remove("caution_combination_count");
+                jsonObject.remove("caution_stop_tracking_after");
+                jsonObject.remove("caution_stop_tracking_after_time_unit");
+
+                jsonObject.remove("danger_combination");
+                jsonObject.remove("danger_combination_count");
+                jsonObject.remove("danger_stop_tracking_after");
+                jsonObject.remove("danger_stop_tracking_after_time_unit");
+            }
+            
             if (alert_Local.getAlertType() == Alert.TYPE_THRESHOLD) {
                 jsonObject.remove("caution_stop_tracking_after");
                 jsonObject.remove("caution_stop_tracking_after_time_unit");
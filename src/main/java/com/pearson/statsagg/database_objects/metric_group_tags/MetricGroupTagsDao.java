@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Map;
 import com.pearson.statsagg.database_engine.DatabaseObjectDao;
 import com.pearson.statsagg.globals.DatabaseConfiguration;
+import com.pearson.statsagg.globals.GlobalVariables;
 import com.pearson.statsagg.utilities.StackTrace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +69,7 @@ public class MetricGroupTagsDao extends DatabaseObjectDao<MetricGroupTag> {
             return false;
         }
         
+        GlobalVariables.metricGroupTagsIndex.markMetricGroupChanged(metricGroupTag.getMetricGroupId());
         return insert(MetricGroupTagsSql.Insert_MetricGroupTag, metricGroupTag.getMetricGroupId(), metricGroupTag.getTag());
     }
     
@@ -78,6 +80,8 @@ public class MetricGroupTagsDao extends DatabaseObjectDao<MetricGroupTag> {
             return false;
         }
         
+        // the metric group that the tag previously belonged to isn't known, so the entire index is reloaded
+        GlobalVariables.metricGroupTagsIndex.markAllMetricGroupsChanged();
         return update(MetricGroupTagsSql.Update_MetricGroupTag_ByPrimaryKey, metricGroupTag.getMetricGroupId(), metricGroupTag.getTag(), metricGroupTag.getId());
     }
 
@@ -88,6 +92,7 @@ public class MetricGroupTagsDao extends DatabaseObjectDao<MetricGroupTag> {
             return false;
         }
 
+        GlobalVariables.metricGroupTagsIndex.markMetricGroupChanged(metricGroupTag.getMetricGroupId());
         return delete(MetricGroupTagsSql.Delete_MetricGroupTag_ByPrimaryKey, metricGroupTag.getId()); 
     }
     
@@ -196,6 +201,7 @@ public class MetricGroupTagsDao extends DatabaseObjectDao<MetricGroupTag> {
     }
     
     public boolean deleteByMetricGroupId(Integer id) {
+        GlobalVariables.metricGroupTagsIndex.markMetricGroupChanged(id);
         return delete(MetricGroupTagsSql.Delete_MetricGroupTag_ByMetricGroupId, id); 
     }
     
@@ -0,0 +1,225 @@
+package com.pearson.statsagg.database_objects.metric_group_tags;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory inverted index of the metric group tags: tag -> metric group ids, and metric group id -> tags.
+ * 
+ * MetricGroupTagsDao writes mark the affected metric groups as changed. Changed metric groups are re-read from the database on the next call to 'refresh'.
+ * Writes are usually part of a transaction that may be rolled back, so the index is never updated directly from the written values.
+ * Callers should hold the lock on GlobalVariables.metricGroupChanges while refreshing, since metric groups are altered & deleted while holding that lock.
+ * 
+ * @author Jeffrey Schmidt
+ */
+public class MetricGroupTagsIndex {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MetricGroupTagsIndex.class.getName());
+    
+    private final Map<Integer,Set<String>> tagsByMetricGroupId_ = new HashMap<>();
+    private final Map<String,Set<Integer>> metricGroupIdsByTag_ = new HashMap<>();
+    
+    private final Set<Integer> changedMetricGroupIds_ = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean isFullReloadRequired_ = new AtomicBoolean(true);
+    
+    public void markMetricGroupChanged(Integer metricGroupId) {
+        if (metricGroupId == null) isFullReloadRequired_.set(true);
+        else changedMetricGroupIds_.add(metricGroupId);
+    }
+    
+    public void markAllMetricGroupsChanged() {
+        isFullReloadRequired_.set(true);
+    }
+    
+    public boolean isRefreshRequired() {
+        return isFullReloadRequired_.get() || !changedMetricGroupIds_.isEmpty();
+    }
+    
+    /*
+    Re-reads the tags of every changed metric group from the database. If the database can't be read, the metric groups stay marked as changed.
+    Returns true if the index is up to date.
+    */
+    public boolean refresh() {
+        
+        if (!isRefreshRequired()) {
+            return true;
+        }
+        
+        if (isFullReloadRequired_.getAndSet(false)) {
+            changedMetricGroupIds_.clear();
+            
+            MetricGroupTagsDao metricGroupTagsDao = new MetricGroupTagsDao();
+            List<MetricGroupTag> metricGroupTags = metricGroupTagsDao.getAllDatabaseObjectsInTable();
+            
+            if (metricGroupTags == null) {
+                logger.warn("Failure reading metric group tags from the database. The metric group tags index was not updated.");
+                isFullReloadRequired_.set(true);
+                return false;
+            }
+            
+            Map<Integer,Set<String>> tagsByMetricGroupId = new HashMap<>();
+            for (MetricGroupTag metricGroupTag : metricGroupTags) {
+                if ((metricGroupTag == null) || (metricGroupTag.getMetricGroupId() == null)) continue;
+                
+                Set<String> tags = tagsByMetricGroupId.get(metricGroupTag.getMetricGroupId());
+                if (tags == null) {
+                    tags = new HashSet<>();
+                    tagsByMetricGroupId.put(metricGroupTag.getMetricGroupId(), tags);
+                }
+                
+                tags.add(metricGroupTag.getTag());
+            }
+            
+            setAllMetricGroupTags(tagsByMetricGroupId);
+            return true;
+        }
+        
+        boolean isSuccess = true;
+        
+        for (Integer metricGroupId : changedMetricGroupIds_) {
+            // removed before reading, so that a write that happens during the read marks the metric group as changed again
+            changedMetricGroupIds_.remove(metricGroupId);
+            
+            MetricGroupTagsDao metricGroupTagsDao = new MetricGroupTagsDao();
+            List<MetricGroupTag> metricGroupTags = metricGroupTagsDao.getMetricGroupTagsByMetricGroupId(metricGroupId);
+            
+            if (metricGroupTags == null) {
+                changedMetricGroupIds_.add(metricGroupId);
+                isSuccess = false;
+                continue;
+            }
+            
+            Set<String> tags = new HashSet<>();
+            for (MetricGroupTag metricGroupTag : metricGroupTags) {
+                if (metricGroupTag != null) tags.add(metricGroupTag.getTag());
+            }
+            
+            setMetricGroupTags(metricGroupId, tags);
+        }
+        
+        return isSuccess;
+    }
+    
+    /*
+    Replaces the contents of the index.
+    */
+    public synchronized void setAllMetricGroupTags(Map<Integer,? extends Collection<String>> tagsByMetricGroupId) {
+        
+        tagsByMetricGroupId_.clear();
+        metricGroupIdsByTag_.clear();
+        
+        if (tagsByMetricGroupId == null) {
+            return;
+        }
+        
+        for (Map.Entry<Integer,? extends Collection<String>> entry : tagsByMetricGroupId.entrySet()) {
+            setMetricGroupTags(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /*
+    Replaces the tags of a single metric group. Null & empty tags are ignored. An empty (or null) collection of tags removes the metric group from the index.
+    */
+    public synchronized void setMetricGroupTags(Integer metricGroupId, Collection<String> tags) {
+        
+        if (metricGroupId == null) {
+            return;
+        }
+        
+        Set<String> previousTags = tagsByMetricGroupId_.remove(metricGroupId);
+        if (previousTags != null) {
+            for (String previousTag : previousTags) {
+                Set<Integer> metricGroupIds = metricGroupIdsByTag_.get(previousTag);
+                if (metricGroupIds == null) continue;
+                metricGroupIds.remove(metricGroupId);
+                if (metricGroupIds.isEmpty()) metricGroupIdsByTag_.remove(previousTag);
+            }
+        }
+        
+        if (tags == null) {
+            return;
+        }
+        
+        Set<String> newTags = new HashSet<>();
+        for (String tag : tags) {
+            if ((tag != null) && !tag.isEmpty()) newTags.add(tag);
+        }
+        
+        if (newTags.isEmpty()) {
+            return;
+        }
+        
+        tagsByMetricGroupId_.put(metricGroupId, newTags);
+        
+        for (String tag : newTags) {
+            Set<Integer> metricGroupIds = metricGroupIdsByTag_.get(tag);
+            
+            if (metricGroupIds == null) {
+                metricGroupIds = new HashSet<>();
+                metricGroupIdsByTag_.put(tag, metricGroupIds);
+            }
+            
+            metricGroupIds.add(metricGroupId);
+        }
+    }
+    
+    /*
+    Returns a copy of the tags of a metric group.
+    */
+    public synchronized Set<String> getTags(Integer metricGroupId) {
+        Set<String> tags = (metricGroupId == null) ? null : tagsByMetricGroupId_.get(metricGroupId);
+        return (tags == null) ? new HashSet<>() : new HashSet<>(tags);
+    }
+    
+    /*
+    Returns a copy of the ids of the metric groups that have every one of the tags. Returns an empty set if 'tags' is empty.
+    */
+    public synchronized Set<Integer> getMetricGroupIdsWithAllTags(Collection<String> tags) {
+        
+        if ((tags == null) || tags.isEmpty()) {
+            return new HashSet<>();
+        }
+        
+        Set<Integer> metricGroupIdsWithAllTags = null;
+        
+        for (String tag : tags) {
+            Set<Integer> metricGroupIds = metricGroupIdsByTag_.get(tag);
+            if ((metricGroupIds == null) || metricGroupIds.isEmpty()) return new HashSet<>();
+            
+            if (metricGroupIdsWithAllTags == null) metricGroupIdsWithAllTags = new HashSet<>(metricGroupIds);
+            else metricGroupIdsWithAllTags.retainAll(metricGroupIds);
+            
+            if (metricGroupIdsWithAllTags.isEmpty()) break;
+        }
+        
+        return metricGroupIdsWithAllTags;
+    }
+    
+    /*
+    Returns a copy of the ids of the metric groups that have at least one of the tags.
+    */
+    public synchronized Set<Integer> getMetricGroupIdsWithAnyTag(Collection<String> tags) {
+        
+        if ((tags == null) || tags.isEmpty()) {
+            return new HashSet<>();
+        }
+        
+        Set<Integer> metricGroupIdsWithAnyTag = new HashSet<>();
+        
+        for (String tag : tags) {
+            Set<Integer> metricGroupIds = metricGroupIdsByTag_.get(tag);
+            if (metricGroupIds != null) metricGroupIdsWithAnyTag.addAll(metricGroupIds);
+        }
+        
+        return metricGroupIdsWithAnyTag;
+    }
+    
+}
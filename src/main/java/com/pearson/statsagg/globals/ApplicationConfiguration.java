@@ -3,10 +3,14 @@ package com.pearson.statsagg.globals;
 import com.opencsv.CSVReader;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbTelnetOutputModule;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbHttpOutputModule;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetric_v2;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbV1HttpOutputModule;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbV2HttpOutputModule;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteOutputModule;
+import com.pearson.statsagg.metric_formats.graphite.GraphiteShardedOutputModule;
 import com.pearson.statsagg.utilities.PropertiesConfigurationWrapper;
 import com.pearson.statsagg.webui.HttpLink;
+import java.io.File;
 import java.io.InputStream;
 import com.pearson.statsagg.utilities.StackTrace;
 import java.io.StringReader;
@@ -33,9 +37,14 @@ public class ApplicationConfiguration {
     private static boolean debugModeEnabled_ = false;
     
     private static final List<GraphiteOutputModule> graphiteOutputModules_ = new ArrayList<>();
+    private static final List<GraphiteShardedOutputModule> graphiteShardedOutputModules_ = new ArrayList<>();
     private static final List<OpenTsdbTelnetOutputModule> openTsdbTelnetOutputModules_ = new ArrayList<>();
     private static final List<OpenTsdbHttpOutputModule> openTsdbHttpOutputModules_ = new ArrayList<>();
     private static final List<InfluxdbV1HttpOutputModule> influxdbV1HttpOutputModules_ = new ArrayList<>();
+    private static final List<InfluxdbV2HttpOutputModule> influxdbV2HttpOutputModules_ = new ArrayList<>();
+    
+    private static boolean prometheusEndpointEnabled_ = false;
+    private static boolean prometheusEndpointIncludeTimestamps_ = false;
 
     private static boolean statsdTcpListenerEnabled_ = false;
     private static int statsdTcpListenerPort_ = VALUE_NOT_SET_CODE;
@@ -104,6 +113,13 @@ public class ApplicationConfiguration {
     private static String alertStatsAggLocation_ = null;
     private static long alertWaitTimeAfterRestart_ = VALUE_NOT_SET_CODE;
     private static int alertMetricAssociationThreads_ = VALUE_NOT_SET_CODE;
+    private static String alertMetricAssociationRegexEngine_ = null;
+    private static int alertEvaluationThreads_ = VALUE_NOT_SET_CODE;
+    private static int alertEvaluationTaskSize_ = VALUE_NOT_SET_CODE;
+    private static boolean alertStateSnapshotEnabled_ = false;
+    private static String alertStateSnapshotDirectory_ = null;
+    private static long alertStateSnapshotInterval_ = VALUE_NOT_SET_CODE;
+    private static long alertStateSnapshotMaxAge_ = VALUE_NOT_SET_CODE;
     private static String alertSmtpHost_ = null;
     private static int alertSmtpPort_ = VALUE_NOT_SET_CODE;
     private static String alertSmtpUsername_ = null;
@@ -120,6 +136,22 @@ public class ApplicationConfiguration {
     private static int outputModuleMaxReadTime_ = VALUE_NOT_SET_CODE;
     private static int outputModuleMaxConcurrentThreads_ = VALUE_NOT_SET_CODE;
     private static int outputModuleMaxConcurrentThreadsForSingleModule_ = VALUE_NOT_SET_CODE;
+    private static int outputModuleQueueCapacity_ = VALUE_NOT_SET_CODE;
+    private static String outputModuleQueueFullPolicy_ = null;
+    private static long outputModuleQueueMaxBlockTime_ = VALUE_NOT_SET_CODE;
+    private static boolean outputModuleHttpGzipEnabled_ = false;
+    private static int outputModuleHttpMaxConnectionsPerHost_ = VALUE_NOT_SET_CODE;
+    private static int outputModuleTcpMaxConnectionsPerModule_ = VALUE_NOT_SET_CODE;
+    private static long outputModuleTcpConnectionMaxIdleTime_ = VALUE_NOT_SET_CODE;
+    private static int outputModuleTcpEventLoopThreads_ = VALUE_NOT_SET_CODE;
+    private static int outputModuleTcpWriteBufferHighWatermark_ = VALUE_NOT_SET_CODE;
+    private static int outputModuleTcpWriteBufferLowWatermark_ = VALUE_NOT_SET_CODE;
+    private static long outputModuleTcpMaxWriteTime_ = VALUE_NOT_SET_CODE;
+    private static boolean outputModuleSpoolEnabled_ = false;
+    private static String outputModuleSpoolDirectory_ = null;
+    private static int outputModuleSpoolSegmentSize_ = VALUE_NOT_SET_CODE;
+    private static long outputModuleSpoolMaxSizePerModule_ = VALUE_NOT_SET_CODE;
+    private static long outputModuleSpoolReplayMaxBytesPerSecond_ = VALUE_NOT_SET_CODE;
     
     public static boolean initialize(InputStream configurationInputStream, boolean isUsingDefaultSettings) {
         
@@ -146,6 +178,7 @@ public class ApplicationConfiguration {
             
             // graphite output configuration
             graphiteOutputModules_.addAll(readGraphiteOutputModules());
+            graphiteShardedOutputModules_.addAll(readGraphiteShardedOutputModules());
 
             // opentsdb telnet output configuration
             openTsdbTelnetOutputModules_.addAll(readOpenTsdbTelnetOutputModules());
@@ -155,6 +188,11 @@ public class ApplicationConfiguration {
             
             // opentsdb configuration
             influxdbV1HttpOutputModules_.addAll(readInfluxdbV1HttpOutputModules());
+            influxdbV2HttpOutputModules_.addAll(readInfluxdbV2HttpOutputModules());
+            
+            // prometheus endpoint configuration
+            prometheusEndpointEnabled_ = applicationConfiguration_.safeGetBoolean("prometheus_endpoint_enabled", false);
+            prometheusEndpointIncludeTimestamps_ = applicationConfiguration_.safeGetBoolean("prometheus_endpoint_include_timestamps", true);
             
             // listener config
             statsdTcpListenerEnabled_ = applicationConfiguration_.safeGetBoolean("statsd_tcp_listener_enabled", true);
@@ -230,6 +268,17 @@ public class ApplicationConfiguration {
             alertWaitTimeAfterRestart_ = applicationConfiguration_.safeGetInteger("alert_wait_time_after_restart", 120000);
             alertMetricAssociationThreads_ =  applicationConfiguration_.safeGetInteger("alert_metric_association_threads", (Runtime.getRuntime().availableProcessors() / 2));       
             if (alertMetricAssociationThreads_ < 1) alertMetricAssociationThreads_ = 1;
+            alertMetricAssociationRegexEngine_ = applicationConfiguration_.safeGetString("alert_metric_association_regex_engine", "java").trim().toLowerCase();
+            if (!alertMetricAssociationRegexEngine_.equals("java") && !alertMetricAssociationRegexEngine_.equals("linear")) alertMetricAssociationRegexEngine_ = "java";
+            alertEvaluationThreads_ = applicationConfiguration_.safeGetInteger("alert_evaluation_threads", (Runtime.getRuntime().availableProcessors() - 1));
+            if (alertEvaluationThreads_ < 1) alertEvaluationThreads_ = 1;
+            alertEvaluationTaskSize_ = applicationConfiguration_.safeGetInteger("alert_evaluation_task_size", 500);
+            if (alertEvaluationTaskSize_ < 1) alertEvaluationTaskSize_ = 1;
+            alertStateSnapshotEnabled_ = applicationConfiguration_.safeGetBoolean("alert_state_snapshot_enabled", false);
+            alertStateSnapshotDirectory_ = applicationConfiguration_.safeGetString("alert_state_snapshot_directory", "alert_state");
+            alertStateSnapshotInterval_ = applicationConfiguration_.safeGetLong("alert_state_snapshot_interval", 60000);
+            if (alertStateSnapshotInterval_ < 1000) alertStateSnapshotInterval_ = 1000;
+            alertStateSnapshotMaxAge_ = applicationConfiguration_.safeGetLong("alert_state_snapshot_max_age", 900000);
                     
             alertSmtpHost_ = applicationConfiguration_.safeGetString("alert_smtp_host", "127.0.0.1");
             alertSmtpPort_ = applicationConfiguration_.safeGetInteger("alert_smtp_port", 25);
@@ -249,6 +298,23 @@ public class ApplicationConfiguration {
             outputModuleMaxReadTime_ = applicationConfiguration_.safeGetInteger("output_module_max_read_time", 120000);
             outputModuleMaxConcurrentThreads_ = applicationConfiguration_.safeGetInteger("output_module_max_concurrent_threads", 25);
             outputModuleMaxConcurrentThreadsForSingleModule_ = applicationConfiguration_.safeGetInteger("output_module_max_concurrent_threads_for_single_module", 10);
+            outputModuleQueueCapacity_ = applicationConfiguration_.safeGetInteger("output_module_queue_capacity", 10);
+            outputModuleQueueFullPolicy_ = applicationConfiguration_.safeGetString("output_module_queue_full_policy", "merge");
+            outputModuleQueueMaxBlockTime_ = applicationConfiguration_.safeGetLong("output_module_queue_max_block_time", 5000);
+            outputModuleHttpGzipEnabled_ = applicationConfiguration_.safeGetBoolean("output_module_http_gzip_enabled", false);
+            outputModuleHttpMaxConnectionsPerHost_ = applicationConfiguration_.safeGetInteger("output_module_http_max_connections_per_host", 10);
+            outputModuleTcpMaxConnectionsPerModule_ = applicationConfiguration_.safeGetInteger("output_module_tcp_max_connections_per_module", 10);
+            outputModuleTcpConnectionMaxIdleTime_ = applicationConfiguration_.safeGetLong("output_module_tcp_connection_max_idle_time", 300000);
+            outputModuleTcpEventLoopThreads_ = applicationConfiguration_.safeGetInteger("output_module_tcp_event_loop_threads", 2);
+            outputModuleTcpWriteBufferHighWatermark_ = applicationConfiguration_.safeGetInteger("output_module_tcp_write_buffer_high_watermark", 16777216);
+            outputModuleTcpWriteBufferLowWatermark_ = applicationConfiguration_.safeGetInteger("output_module_tcp_write_buffer_low_watermark", 8388608);
+            outputModuleTcpMaxWriteTime_ = applicationConfiguration_.safeGetLong("output_module_tcp_max_write_time", 30000);
+            outputModuleSpoolEnabled_ = applicationConfiguration_.safeGetBoolean("output_module_spool_enabled", false);
+            outputModuleSpoolDirectory_ = applicationConfiguration_.safeGetString("output_module_spool_directory", "");
+            if ((outputModuleSpoolDirectory_ == null) || outputModuleSpoolDirectory_.trim().isEmpty()) outputModuleSpoolDirectory_ = System.getProperty("java.io.tmpdir") + File.separator + "statsagg_spool";
+            outputModuleSpoolSegmentSize_ = applicationConfiguration_.safeGetInteger("output_module_spool_segment_size", 16777216);
+            outputModuleSpoolMaxSizePerModule_ = applicationConfiguration_.safeGetLong("output_module_spool_max_size_per_module", 268435456);
+            outputModuleSpoolReplayMaxBytesPerSecond_ = applicationConfiguration_.safeGetLong("output_module_spool_replay_max_bytes_per_second", 1048576);
 
             return true;
         }
@@ -306,6 +372,60 @@ public class ApplicationConfiguration {
         
         return graphiteOutputModules;
     }
+    
+    private static List<GraphiteShardedOutputModule> readGraphiteShardedOutputModules() {
+        
+        List<GraphiteShardedOutputModule> graphiteShardedOutputModules = new ArrayList<>();
+        
+        for (int i = -1; i < 10000; i++) {
+            String graphiteShardedOutputModuleKey = "graphite_sharded_output_module_" + (i + 1);
+            String graphiteShardedOutputModuleValue = applicationConfiguration_.safeGetString(graphiteShardedOutputModuleKey, null);
+            
+            if (graphiteShardedOutputModuleValue == null) continue;
+            
+            try {
+                CSVReader reader = new CSVReader(new StringReader(graphiteShardedOutputModuleValue));
+                List<String[]> csvValuesArray = reader.readAll();
+
+                if ((csvValuesArray != null) && !csvValuesArray.isEmpty() && (csvValuesArray.get(0) != null)) {
+                    String[] csvValues = csvValuesArray.get(0);
+
+                    if (csvValues.length >= 4) {                                
+                        boolean isOutputEnabled = Boolean.valueOf(csvValues[0]);
+                        List<GraphiteShardedOutputModule.Destination> destinations = GraphiteShardedOutputModule.parseDestinations(csvValues[1]);
+                        int replicationFactor = Integer.valueOf(csvValues[2]);
+                        int numSendRetryAttempts = Integer.valueOf(csvValues[3]);
+                        
+                        int maxMetricsPerMessage = 1000;
+                        if (csvValues.length > 4) maxMetricsPerMessage = Integer.valueOf(csvValues[4]);
+                        
+                        boolean sanitizeMetrics = false;
+                        if (csvValues.length > 5) sanitizeMetrics = Boolean.valueOf(csvValues[5]);
+                        
+                        boolean substituteCharacters = false;
+                        if (csvValues.length > 6) substituteCharacters = Boolean.valueOf(csvValues[6]);
+                        
+                        String uniqueId = "Graphite-Sharded-" + (i+1);
+                        
+                        if (destinations.isEmpty() || (replicationFactor < 1)) {
+                            logger.error("Invalid Graphite sharded output module. OutputModule=" + graphiteShardedOutputModuleKey);
+                            continue;
+                        }
+                        
+                        GraphiteShardedOutputModule graphiteShardedOutputModule = new GraphiteShardedOutputModule(isOutputEnabled, destinations, replicationFactor,
+                                numSendRetryAttempts, maxMetricsPerMessage, sanitizeMetrics, substituteCharacters, uniqueId);
+                        
+                        graphiteShardedOutputModules.add(graphiteShardedOutputModule);
+                    }
+                }
+            }
+            catch (Exception e) {
+                logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            }
+        }
+        
+        return graphiteShardedOutputModules;
+    }
 
     private static List<OpenTsdbTelnetOutputModule> readOpenTsdbTelnetOutputModules() {
         
@@ -432,6 +552,54 @@ public class ApplicationConfiguration {
         return influxdbV1HttpOutputModules;
     }
     
+    private static List<InfluxdbV2HttpOutputModule> readInfluxdbV2HttpOutputModules() {
+        
+        List<InfluxdbV2HttpOutputModule> influxdbV2HttpOutputModules = new ArrayList<>();
+        
+        for (int i = -1; i < 10000; i++) {
+            String influxdbV2HttpOutputModuleKey = "influxdb_v2_output_module_" + (i + 1);
+            String influxdbV2HttpOutputModuleValue = applicationConfiguration_.safeGetString(influxdbV2HttpOutputModuleKey, null);
+            
+            if (influxdbV2HttpOutputModuleValue == null) continue;
+            
+            try {
+                CSVReader reader = new CSVReader(new StringReader(influxdbV2HttpOutputModuleValue));
+                List<String[]> csvValuesArray = reader.readAll();
+
+                if ((csvValuesArray != null) && !csvValuesArray.isEmpty() && (csvValuesArray.get(0) != null)) {
+                    String[] csvValues = csvValuesArray.get(0);
+
+                    if ((csvValues.length == 6) || (csvValues.length == 7)) {                                
+                        boolean isOutputEnabled = Boolean.valueOf(csvValues[0]);
+                        String url = csvValues[1];
+                        int numSendRetryAttempts = Integer.valueOf(csvValues[2]);
+                        int maxMetricsPerMessage = Integer.valueOf(csvValues[3]);
+                        byte timePrecisionCode = InfluxdbMetric_v2.getTimePrecisionCodeFromTimePrecisionString(csvValues[4].trim());
+                        boolean gzipHttpBody = Boolean.valueOf(csvValues[5]);
+                        String retentionPolicy = ((csvValues.length == 7) && !csvValues[6].trim().isEmpty()) ? csvValues[6].trim() : null;
+                        
+                        String uniqueId = "InfluxDB-V2-" + (i+1);
+
+                        if (timePrecisionCode == com.pearson.statsagg.metric_formats.influxdb.Common.TIMESTAMP_PRECISION_UNKNOWN) {
+                            logger.error("Invalid time precision for InfluxDB output module. OutputModule=" + influxdbV2HttpOutputModuleKey + ", TimePrecision=\"" + csvValues[4] + "\"");
+                            continue;
+                        }
+                        
+                        InfluxdbV2HttpOutputModule influxdbV2HttpOutputModule = new InfluxdbV2HttpOutputModule(isOutputEnabled, url, 
+                                numSendRetryAttempts, maxMetricsPerMessage, timePrecisionCode, gzipHttpBody, retentionPolicy, uniqueId);
+                        
+                        influxdbV2HttpOutputModules.add(influxdbV2HttpOutputModule);
+                    }
+                }
+            }
+            catch (Exception e) {
+                logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            }
+        }
+        
+        return influxdbV2HttpOutputModules;
+    }
+    
     private static List<StatsdHistogramConfiguration> readStatsdHistogramConfiguration(String unparsedStatsdHistogramConfigurations) {
         List<StatsdHistogramConfiguration> statsdHistogramConfigurations = StatsdHistogramConfiguration.getStatsdHistogramConfigurations(unparsedStatsdHistogramConfigurations);
         return statsdHistogramConfigurations;
@@ -493,6 +661,11 @@ public class ApplicationConfiguration {
         if (graphiteOutputModules_ == null) return null;
         else return new ArrayList<>(graphiteOutputModules_);
     }
+    
+    public static List<GraphiteShardedOutputModule> getGraphiteShardedOutputModules() {
+        if (graphiteShardedOutputModules_ == null) return null;
+        else return new ArrayList<>(graphiteShardedOutputModules_);
+    }
 
     public static List<OpenTsdbTelnetOutputModule> getOpenTsdbTelnetOutputModules() {
         if (openTsdbTelnetOutputModules_ == null) return null;
@@ -508,6 +681,19 @@ public class ApplicationConfiguration {
         if (influxdbV1HttpOutputModules_ == null) return null;
         else return new ArrayList<>(influxdbV1HttpOutputModules_);
     }
+    
+    public static List<InfluxdbV2HttpOutputModule> getInfluxdbV2HttpOutputModules() {
+        if (influxdbV2HttpOutputModules_ == null) return null;
+        else return new ArrayList<>(influxdbV2HttpOutputModules_);
+    }
+    
+    public static boolean isPrometheusEndpointEnabled() {
+        return prometheusEndpointEnabled_;
+    }
+    
+    public static boolean isPrometheusEndpointIncludeTimestamps() {
+        return prometheusEndpointIncludeTimestamps_;
+    }
   
     public static boolean isStatsdTcpListenerEnabled() {
         return statsdTcpListenerEnabled_;
@@ -760,6 +946,34 @@ public class ApplicationConfiguration {
     public static int getAlertMetricAssociationThreads() {
         return alertMetricAssociationThreads_;
     }
+
+    public static String getAlertMetricAssociationRegexEngine() {
+        return alertMetricAssociationRegexEngine_;
+    }
+    
+    public static int getAlertEvaluationThreads() {
+        return alertEvaluationThreads_;
+    }
+
+    public static int getAlertEvaluationTaskSize() {
+        return alertEvaluationTaskSize_;
+    }
+    
+    public static boolean isAlertStateSnapshotEnabled() {
+        return alertStateSnapshotEnabled_;
+    }
+    
+    public static String getAlertStateSnapshotDirectory() {
+        return alertStateSnapshotDirectory_;
+    }
+    
+    public static long getAlertStateSnapshotInterval() {
+        return alertStateSnapshotInterval_;
+    }
+    
+    public static long getAlertStateSnapshotMaxAge() {
+        return alertStateSnapshotMaxAge_;
+    }
     
     public static String getAlertSmtpHost() {
         return alertSmtpHost_;
@@ -816,5 +1030,69 @@ public class ApplicationConfiguration {
     public static int getOutputModuleMaxConcurrentThreadsForSingleModule() {
         return outputModuleMaxConcurrentThreadsForSingleModule_;
     }
+    
+    public static int getOutputModuleQueueCapacity() {
+        return outputModuleQueueCapacity_;
+    }
+    
+    public static String getOutputModuleQueueFullPolicy() {
+        return outputModuleQueueFullPolicy_;
+    }
+    
+    public static long getOutputModuleQueueMaxBlockTime() {
+        return outputModuleQueueMaxBlockTime_;
+    }
+    
+    public static boolean isOutputModuleHttpGzipEnabled() {
+        return outputModuleHttpGzipEnabled_;
+    }
+    
+    public static int getOutputModuleHttpMaxConnectionsPerHost() {
+        return outputModuleHttpMaxConnectionsPerHost_;
+    }
+    
+    public static int getOutputModuleTcpMaxConnectionsPerModule() {
+        return outputModuleTcpMaxConnectionsPerModule_;
+    }
+    
+    public static long getOutputModuleTcpConnectionMaxIdleTime() {
+        return outputModuleTcpConnectionMaxIdleTime_;
+    }
+    
+    public static int getOutputModuleTcpEventLoopThreads() {
+        return outputModuleTcpEventLoopThreads_;
+    }
+    
+    public static int getOutputModuleTcpWriteBufferHighWatermark() {
+        return outputModuleTcpWriteBufferHighWatermark_;
+    }
+    
+    public static int getOutputModuleTcpWriteBufferLowWatermark() {
+        return outputModuleTcpWriteBufferLowWatermark_;
+    }
+    
+    public static long getOutputModuleTcpMaxWriteTime() {
+        return outputModuleTcpMaxWriteTime_;
+    }
+    
+    public static boolean isOutputModuleSpoolEnabled() {
+        return outputModuleSpoolEnabled_;
+    }
+    
+    public static String getOutputModuleSpoolDirectory() {
+        return outputModuleSpoolDirectory_;
+    }
+    
+    public static int getOutputModuleSpoolSegmentSize() {
+        return outputModuleSpoolSegmentSize_;
+    }
+    
+    public static long getOutputModuleSpoolMaxSizePerModule() {
+        return outputModuleSpoolMaxSizePerModule_;
+    }
+    
+    public static long getOutputModuleSpoolReplayMaxBytesPerSecond() {
+        return outputModuleSpoolReplayMaxBytesPerSecond_;
+    }
 
 }
@@ -1,20 +1,28 @@
 package com.pearson.statsagg.globals;
 
+import com.pearson.statsagg.alerts.AnomalyDetectionState;
+import com.pearson.statsagg.alerts.MetricKeyDictionary;
+import com.pearson.statsagg.alerts.MetricKeyFlags;
 import com.pearson.statsagg.controller.threads.AlertInvokerThread;
 import com.pearson.statsagg.controller.threads.CleanupInvokerThread;
 import com.pearson.statsagg.controller.threads.MetricAssociationOutputBlacklistInvokerThread;
 import java.math.BigDecimal;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 import com.pearson.statsagg.database_objects.alerts.Alert;
 import com.pearson.statsagg.database_objects.gauges.Gauge;
+import com.pearson.statsagg.database_objects.metric_group_tags.MetricGroupTagsIndex;
+import com.pearson.statsagg.metric_aggregation.MetricKeyExpiryIndex;
 import com.pearson.statsagg.metric_aggregation.MetricKeyLastSeen;
 import com.pearson.statsagg.metric_aggregation.MetricTimestampAndValue;
+import com.pearson.statsagg.metric_aggregation.RecentMetricTimestampsAndValues;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteMetric;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetric_v1;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetric_v2;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetric;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetricFormat;
 import com.pearson.statsagg.metric_formats.statsd.StatsdMetric;
 import com.pearson.statsagg.metric_formats.statsd.StatsdMetricAggregated;
 import java.util.List;
@@ -81,6 +89,9 @@ public class GlobalVariables {
     // k=MetricKey, v="Aggregated metric object"
     public final static ConcurrentHashMap<String,StatsdMetricAggregated> statsdMetricsAggregatedMostRecentValue = new ConcurrentHashMap<>(16, 0.75f, 3);
 
+    // k=MetricKey, v="The most recently output metric object" (graphite, opentsdb, influxdb, & the statsd metrics that aren't in 'statsdMetricsAggregatedMostRecentValue'). served by the prometheus endpoint.
+    public final static ConcurrentHashMap<String,PrometheusMetricFormat> prometheusMetricsMostRecentValue = new ConcurrentHashMap<>(16, 0.75f, 6);
+
     // k=MetricKey, v=Gauge (kept in sync with the database)
     public final static ConcurrentHashMap<String,Gauge> statsdGaugeCache = new ConcurrentHashMap<>(16, 0.75f, 3);
     
@@ -90,8 +101,20 @@ public class GlobalVariables {
     // k=MetricKey, v="The most recent timestamp that this metric was received by this program"
     public final static ConcurrentHashMap<String,MetricKeyLastSeen> metricKeysLastSeenTimestamp = new ConcurrentHashMap<>(16, 0.75f, 6); 
     
-    // k=MetricKey, v=List<MetricTimestampAndValue> (should be -- synchronizedList(ArrayList<MetricTimestampAndValue>()))
-    public final static ConcurrentHashMap<String,List<MetricTimestampAndValue>> recentMetricTimestampsAndValuesByMetricKey = new ConcurrentHashMap<>(16, 0.75f, 6); 
+    // the metric-keys in 'metricKeysLastSeenTimestamp', bucketed by the time they were last seen. must be updated whenever 'metricKeysLastSeenTimestamp' is updated. used by the cleanup routine.
+    public final static MetricKeyExpiryIndex metricKeyExpiryIndex = new MetricKeyExpiryIndex(); 
+    
+    // MetricKey. metric-keys that were seen for the first time & haven't been through the metric association routine yet. filled at ingest, drained by the metric association routine.
+    public final static ConcurrentLinkedQueue<String> metricKeysPendingAssociation = new ConcurrentLinkedQueue<>(); 
+    
+    // when true, the next run of the metric association routine runs against every metric-key instead of only the newly seen metric-keys (at startup)
+    public final static AtomicBoolean isMetricAssociationFullRescanRequired = new AtomicBoolean(true);
+    
+    // k=MetricKey, v=the metric-key's recent values, sorted by timestamp
+    public final static ConcurrentHashMap<String,RecentMetricTimestampsAndValues> recentMetricTimestampsAndValuesByMetricKey = new ConcurrentHashMap<>(16, 0.75f, 6); 
+    
+    // k=MetricKey, v=the streaming (EWMA) model of the metric-key. only metric-keys that are associated with an anomaly alert have a model.
+    public final static ConcurrentHashMap<String,AnomalyDetectionState> anomalyDetectionStatesByMetricKey = new ConcurrentHashMap<>(16, 0.75f, 6); 
     
     // k=MetricGroupId, v="codes for "New", "Remove", "Alter" 
     public final static ConcurrentHashMap<Integer,Byte> metricGroupChanges = new ConcurrentHashMap<>();
@@ -99,6 +122,12 @@ public class GlobalVariables {
     // k=SuspensionId, v="codes for "New", "Remove", "Alter" (only applies to metric suspensions)
     public final static ConcurrentHashMap<Integer,Byte> suspensionChanges = new ConcurrentHashMap<>();
     
+    // assigns every metric-key that has been through the association routine a dense int id. the metric-key association sets & flags are bitmaps of these ids.
+    public final static MetricKeyDictionary metricKeyDictionary = new MetricKeyDictionary();
+    
+    // inverted index of the metric group tags (tag -> metric group ids). kept up to date by MetricGroupTagsDao writes, & used by the suspension routine.
+    public final static MetricGroupTagsIndex metricGroupTagsIndex = new MetricGroupTagsIndex();
+    
     // k=MetricGroupId, v=Set<MetricKey> "is the metric key associated with a specific metric group? only include in the set if the assocation/match is true.">
     public final static ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithMetricGroup = new ConcurrentHashMap<>(); 
     
@@ -109,13 +138,13 @@ public class GlobalVariables {
     public final static ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithSuspension = new ConcurrentHashMap<>(); 
     
     // k=MetricKey, v="Boolean for "is this metric key associated with ANY metric group"?"
-    public final static ConcurrentHashMap<String,Boolean> metricKeysAssociatedWithAnyMetricGroup = new ConcurrentHashMap<>(); 
+    public final static MetricKeyFlags metricKeysAssociatedWithAnyMetricGroup = new MetricKeyFlags(metricKeyDictionary); 
     
     // k=MetricKey, v="Boolean for "is this metric key associated with the output blacklist"?"
-    public static ConcurrentHashMap<String,Boolean> metricKeysAssociatedWithOutputBlacklistMetricGroup = new ConcurrentHashMap<>(); 
+    public static MetricKeyFlags metricKeysAssociatedWithOutputBlacklistMetricGroup = new MetricKeyFlags(metricKeyDictionary); 
     
     // k=MetricKey, v="Boolean for "is this metric key associated with ANY suspension"?"
-    public final static ConcurrentHashMap<String,Boolean> metricKeysAssociatedWithAnySuspension = new ConcurrentHashMap<>(); 
+    public final static MetricKeyFlags metricKeysAssociatedWithAnySuspension = new MetricKeyFlags(metricKeyDictionary); 
     
     // k=MetricGroupId, v=string representing a single, merged, match regex statement that is composed of the metric group's associated regexes
     public final static ConcurrentHashMap<Integer,String> mergedMatchRegexesByMetricGroupId = new ConcurrentHashMap<>(); 
@@ -143,6 +172,9 @@ public class GlobalVariables {
 
     // k=MetricKey, v=MetricKey
     public final static ConcurrentHashMap<String,String> activeAvailabilityAlerts = new ConcurrentHashMap<>();
+    
+    // k=AlertId, v=How long (in milliseconds) it took to evaluate the alert's criteria against all of its associated metric-keys during the most recent alert routine
+    public final static ConcurrentHashMap<Integer,Long> alertEvaluationTimeByAlertId = new ConcurrentHashMap<>();
    
     // k=AlertId, v=Set<MetricKey>
     public final static ConcurrentHashMap<Integer,Set<String>> activeCautionAvailabilityAlerts = new ConcurrentHashMap<>();
@@ -171,6 +203,9 @@ public class GlobalVariables {
     // The timestamp of the last time the alert routine finished executing. This variable does not persist across application restarts.
     public final static AtomicLong alertRountineLastExecutedTimestamp = new AtomicLong(0);
     
+    // The timestamp of the alert state snapshot that was restored when the application started. '0' means that no snapshot was restored.
+    public final static AtomicLong alertStateSnapshotRestoredTimestamp = new AtomicLong(0);
+    
     // Used to lock down the alert routine so that the alert routine can have exclusive access to the data structures it uses
     public final static Object alertRoutineLock = new Object();
     
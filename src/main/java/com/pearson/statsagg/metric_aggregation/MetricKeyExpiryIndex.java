@@ -0,0 +1,151 @@
+package com.pearson.statsagg.metric_aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A coarse, time-bucketed index of metric-keys by the time they were last seen (the 'update on resend' timestamp).
+ * Every metric-key is filed under the bucket (ex -- the minute) that it was last seen in, & is moved to a newer bucket when it is seen again.
+ * This lets the cleanup routine find metric-keys that haven't been seen recently by only visiting the old buckets, instead of scanning every metric-key.
+ *
+ * The index is allowed to be slightly out of date (ex -- a metric-key that is in two buckets after two threads updated it at the same time).
+ * 'getExpiredMetricKeys' checks every metric-key that it visits against the real 'last seen' timestamp, & refiles any metric-key that is in the wrong bucket.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class MetricKeyExpiryIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricKeyExpiryIndex.class.getName());
+
+    public static final long DEFAULT_BUCKET_SIZE_IN_MILLISECONDS = 60000;
+
+    // metric-keys without a 'last seen' timestamp go in this bucket, which is always considered to be expired
+    private static final long NULL_TIMESTAMP_BUCKET = Long.MIN_VALUE;
+
+    private final long bucketSizeInMilliseconds_;
+
+    // k=bucket (timestamp / bucket size), v=the metric-keys that were last seen in the bucket's time range
+    private final ConcurrentHashMap<Long,Set<String>> metricKeysByBucket_ = new ConcurrentHashMap<>();
+
+    public MetricKeyExpiryIndex() {
+        this(DEFAULT_BUCKET_SIZE_IN_MILLISECONDS);
+    }
+
+    public MetricKeyExpiryIndex(long bucketSizeInMilliseconds) {
+        this.bucketSizeInMilliseconds_ = (bucketSizeInMilliseconds > 0) ? bucketSizeInMilliseconds : DEFAULT_BUCKET_SIZE_IN_MILLISECONDS;
+    }
+
+    /*
+    Files the metric-key under the bucket of its current 'last seen' timestamp.
+    'previousMetricKeyLastSeen' is the value that was replaced (null if the metric-key is new). The metric-key is only moved if its bucket changed.
+    */
+    public void update(String metricKey, MetricKeyLastSeen previousMetricKeyLastSeen, MetricKeyLastSeen currentMetricKeyLastSeen) {
+
+        if ((metricKey == null) || (currentMetricKeyLastSeen == null)) {
+            return;
+        }
+
+        long currentBucket = getBucket(currentMetricKeyLastSeen);
+
+        if (previousMetricKeyLastSeen != null) {
+            long previousBucket = getBucket(previousMetricKeyLastSeen);
+            if (previousBucket == currentBucket) return;
+            removeFromBucket(previousBucket, metricKey);
+        }
+
+        addToBucket(currentBucket, metricKey);
+    }
+
+    /*
+    Removes the metric-key from the bucket of its last 'last seen' timestamp.
+    */
+    public void remove(String metricKey, MetricKeyLastSeen metricKeyLastSeen) {
+
+        if ((metricKey == null) || (metricKeyLastSeen == null)) {
+            return;
+        }
+
+        removeFromBucket(getBucket(metricKeyLastSeen), metricKey);
+    }
+
+    /*
+    Returns every metric-key that hasn't been seen since 'expiryTimestamp' (or that doesn't have a 'last seen' timestamp).
+    Only the buckets that start before 'expiryTimestamp' are visited. Each metric-key in those buckets is checked against 'metricKeysLastSeen':
+    metric-keys that are no longer in 'metricKeysLastSeen' are dropped from the index, & metric-keys that were seen more recently are refiled under the correct bucket.
+    The expired metric-keys stay in the index -- they are removed when they are removed from 'metricKeysLastSeen'.
+    */
+    public List<String> getExpiredMetricKeys(long expiryTimestamp, Map<String,MetricKeyLastSeen> metricKeysLastSeen) {
+
+        List<String> expiredMetricKeys = new ArrayList<>();
+
+        if (metricKeysLastSeen == null) {
+            return expiredMetricKeys;
+        }
+
+        long expiryBucket = Math.floorDiv(expiryTimestamp, bucketSizeInMilliseconds_);
+
+        List<Long> bucketsToVisit = new ArrayList<>();
+        for (Long bucket : metricKeysByBucket_.keySet()) {
+            if (bucket <= expiryBucket) bucketsToVisit.add(bucket);
+        }
+
+        for (Long bucket : bucketsToVisit) {
+            Set<String> metricKeys = metricKeysByBucket_.get(bucket);
+            if (metricKeys == null) continue;
+
+            for (String metricKey : metricKeys) {
+                MetricKeyLastSeen metricKeyLastSeen = metricKeysLastSeen.get(metricKey);
+
+                if (metricKeyLastSeen == null) {
+                    metricKeys.remove(metricKey);
+                    continue;
+                }
+
+                long metricKeyBucket = getBucket(metricKeyLastSeen);
+
+                if (metricKeyBucket != bucket) {
+                    metricKeys.remove(metricKey);
+                    addToBucket(metricKeyBucket, metricKey);
+                    if (metricKeyBucket > expiryBucket) continue;
+                }
+
+                Long lastSeenTimestamp = metricKeyLastSeen.getMetricKeyLastSeenTimestamp_UpdateOnResend();
+                if ((lastSeenTimestamp == null) || (lastSeenTimestamp < expiryTimestamp)) expiredMetricKeys.add(metricKey);
+            }
+
+            metricKeysByBucket_.computeIfPresent(bucket, (k, v) -> v.isEmpty() ? null : v);
+        }
+
+        return expiredMetricKeys;
+    }
+
+    private long getBucket(MetricKeyLastSeen metricKeyLastSeen) {
+        Long lastSeenTimestamp = metricKeyLastSeen.getMetricKeyLastSeenTimestamp_UpdateOnResend();
+        if (lastSeenTimestamp == null) return NULL_TIMESTAMP_BUCKET;
+        return Math.floorDiv(lastSeenTimestamp, bucketSizeInMilliseconds_);
+    }
+
+    private void addToBucket(long bucket, String metricKey) {
+        // done inside 'compute' so that the add can't race with the removal of an empty bucket
+        metricKeysByBucket_.compute(bucket, (k, metricKeys) -> {
+            if (metricKeys == null) metricKeys = ConcurrentHashMap.newKeySet();
+            metricKeys.add(metricKey);
+            return metricKeys;
+        });
+    }
+
+    private void removeFromBucket(long bucket, String metricKey) {
+        Set<String> metricKeys = metricKeysByBucket_.get(bucket);
+        if (metricKeys != null) metricKeys.remove(metricKey);
+    }
+
+    public int getBucketCount() {
+        return metricKeysByBucket_.size();
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.pearson.statsagg.metric_aggregation;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The recent values of a single metric-key, kept in timestamp order in an array with a moving head.
+ * Values almost always arrive in timestamp order, so adding a value is usually an append. Out-of-order values are inserted at their sorted position.
+ * Because the values are sorted, removing every value that is older than a cutoff is a binary search followed by moving the head forward,
+ * instead of a search & remove for every expired value.
+ *
+ * Every method is synchronized on the list, so it can be used the same way as a Collections.synchronizedList -- including synchronizing on the list while iterating over it.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class RecentMetricTimestampsAndValues extends AbstractList<MetricTimestampAndValue> implements RandomAccess {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecentMetricTimestampsAndValues.class.getName());
+
+    private static final MetricTimestampAndValue[] EMPTY_VALUES = new MetricTimestampAndValue[0];
+    private static final int MINIMUM_CAPACITY = 4;
+
+    // the values are in [head_, tail_), sorted by timestamp
+    private MetricTimestampAndValue[] values_ = EMPTY_VALUES;
+    private int head_ = 0;
+    private int tail_ = 0;
+
+    public RecentMetricTimestampsAndValues() {
+    }
+
+    @Override
+    public synchronized boolean add(MetricTimestampAndValue metricTimestampAndValue) {
+
+        if (metricTimestampAndValue == null) {
+            return false;
+        }
+
+        if (tail_ == values_.length) makeRoomAtTail();
+
+        // the common case -- the value is newer than (or as new as) every other value
+        if ((tail_ == head_) || (values_[tail_ - 1].getTimestamp() <= metricTimestampAndValue.getTimestamp())) {
+            values_[tail_++] = metricTimestampAndValue;
+            modCount++;
+            return true;
+        }
+
+        // out-of-order value. it goes after any values with the same timestamp, so that values with the same timestamp stay in arrival order.
+        int index = getFirstIndexAfter(metricTimestampAndValue.getTimestamp());
+        System.arraycopy(values_, index, values_, index + 1, tail_ - index);
+        values_[index] = metricTimestampAndValue;
+        tail_++;
+        modCount++;
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends MetricTimestampAndValue> metricTimestampsAndValues) {
+
+        boolean isModified = false;
+
+        for (MetricTimestampAndValue metricTimestampAndValue : metricTimestampsAndValues) {
+            if (add(metricTimestampAndValue)) isModified = true;
+        }
+
+        return isModified;
+    }
+
+    @Override
+    public synchronized MetricTimestampAndValue get(int index) {
+
+        if ((index < 0) || (index >= (tail_ - head_))) {
+            throw new IndexOutOfBoundsException("Index=" + index + ", Size=" + (tail_ - head_));
+        }
+
+        return values_[head_ + index];
+    }
+
+    @Override
+    public synchronized MetricTimestampAndValue remove(int index) {
+
+        if ((index < 0) || (index >= (tail_ - head_))) {
+            throw new IndexOutOfBoundsException("Index=" + index + ", Size=" + (tail_ - head_));
+        }
+
+        int arrayIndex = head_ + index;
+        MetricTimestampAndValue removedMetricTimestampAndValue = values_[arrayIndex];
+
+        System.arraycopy(values_, arrayIndex + 1, values_, arrayIndex, tail_ - arrayIndex - 1);
+        values_[--tail_] = null;
+        if (tail_ == head_) head_ = tail_ = 0;
+        modCount++;
+
+        return removedMetricTimestampAndValue;
+    }
+
+    @Override
+    public synchronized int size() {
+        return tail_ - head_;
+    }
+
+    /*
+    Removes every value & releases the memory that was used to hold them.
+    */
+    @Override
+    public synchronized void clear() {
+        values_ = EMPTY_VALUES;
+        head_ = 0;
+        tail_ = 0;
+        modCount++;
+    }
+
+    /*
+    Removes every value with a timestamp that is older than 'cutoffTimestamp'. Returns the number of values that were removed.
+    */
+    public synchronized int removeValuesOlderThan(long cutoffTimestamp) {
+
+        int newHead = getFirstIndexAtOrAfter(cutoffTimestamp);
+        int numValuesRemoved = newHead - head_;
+
+        if (numValuesRemoved == 0) {
+            return 0;
+        }
+
+        Arrays.fill(values_, head_, newHead, null);
+        head_ = newHead;
+        if (tail_ == head_) head_ = tail_ = 0;
+        modCount++;
+
+        return numValuesRemoved;
+    }
+
+    /*
+    Shrinks the backing array if less than half of it is in use. Returns true if the array was shrunk.
+    */
+    public synchronized boolean trim() {
+
+        int size = tail_ - head_;
+
+        if (size == 0) {
+            boolean isTrimmed = values_.length > 0;
+            values_ = EMPTY_VALUES;
+            head_ = tail_ = 0;
+            return isTrimmed;
+        }
+
+        int newCapacity = Math.max(MINIMUM_CAPACITY, size + (size >> 2));
+
+        if ((values_.length / 2) < newCapacity) {
+            return false;
+        }
+
+        values_ = Arrays.copyOfRange(values_, head_, head_ + newCapacity);
+        Arrays.fill(values_, size, newCapacity, null);
+        head_ = 0;
+        tail_ = size;
+
+        return true;
+    }
+
+    @Override
+    public synchronized Object[] toArray() {
+        return Arrays.copyOfRange(values_, head_, tail_, Object[].class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T[] toArray(T[] array) {
+
+        int size = tail_ - head_;
+
+        if (array.length < size) {
+            return (T[]) Arrays.copyOfRange(values_, head_, tail_, array.getClass());
+        }
+
+        System.arraycopy(values_, head_, array, 0, size);
+        if (array.length > size) array[size] = null;
+
+        return array;
+    }
+
+    public synchronized int getCapacity() {
+        return values_.length;
+    }
+
+    /*
+    Makes room for at least one more value at the end of the array -- by moving the values to the front of the array if the head has moved far enough, or by growing the array.
+    */
+    private void makeRoomAtTail() {
+
+        int size = tail_ - head_;
+
+        if ((head_ > 0) && (size <= (values_.length / 2))) {
+            System.arraycopy(values_, head_, values_, 0, size);
+            Arrays.fill(values_, size, tail_, null);
+        }
+        else {
+            int newCapacity = Math.max(MINIMUM_CAPACITY, size + (size >> 1) + 1);
+            MetricTimestampAndValue[] newValues = new MetricTimestampAndValue[newCapacity];
+            System.arraycopy(values_, head_, newValues, 0, size);
+            values_ = newValues;
+        }
+
+        head_ = 0;
+        tail_ = size;
+    }
+
+    // returns the array index of the first value with a timestamp >= 'timestamp' (or tail_ if there isn't one)
+    private int getFirstIndexAtOrAfter(long timestamp) {
+
+        int low = head_, high = tail_;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values_[middle].getTimestamp() < timestamp) low = middle + 1;
+            else high = middle;
+        }
+
+        return low;
+    }
+
+    // returns the array index of the first value with a timestamp > 'timestamp' (or tail_ if there isn't one)
+    private int getFirstIndexAfter(long timestamp) {
+
+        int low = head_, high = tail_;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values_[middle].getTimestamp() <= timestamp) low = middle + 1;
+            else high = middle;
+        }
+
+        return low;
+    }
+
+}
@@ -1,15 +1,18 @@
 package com.pearson.statsagg.metric_aggregation.threads;
 
+import com.pearson.statsagg.alerts.AnomalyDetectionState;
+import com.pearson.statsagg.alerts.MetricAssociation;
 import com.pearson.statsagg.database_objects.output_blacklist.OutputBlacklist;
 import com.pearson.statsagg.database_objects.output_blacklist.OutputBlacklistDao;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import com.pearson.statsagg.globals.GlobalVariables;
 import com.pearson.statsagg.metric_aggregation.MetricKeyLastSeen;
 import com.pearson.statsagg.metric_formats.GenericMetricFormat;
 import com.pearson.statsagg.metric_aggregation.MetricTimestampAndValue;
+import com.pearson.statsagg.metric_aggregation.RecentMetricTimestampsAndValues;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteMetric;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetricFormat;
 import com.pearson.statsagg.utilities.MathUtilities;
 import com.pearson.statsagg.utilities.Threads;
 import java.util.ArrayList;
@@ -94,7 +97,9 @@ public class Common {
             String metricKey = metric.getMetricKey();
             Long metricReceivedTimestampInMilliseconds = metric.getMetricReceivedTimestampInMilliseconds();
             MetricKeyLastSeen metricKeyLastSeen = new MetricKeyLastSeen(metricReceivedTimestampInMilliseconds, metricReceivedTimestampInMilliseconds);
-            GlobalVariables.metricKeysLastSeenTimestamp.put(metricKey, metricKeyLastSeen);
+            MetricKeyLastSeen previousMetricKeyLastSeen = GlobalVariables.metricKeysLastSeenTimestamp.put(metricKey, metricKeyLastSeen);
+            GlobalVariables.metricKeyExpiryIndex.update(metricKey, previousMetricKeyLastSeen, metricKeyLastSeen);
+            if (previousMetricKeyLastSeen == null) MetricAssociation.queueNewMetricKeyForAssociation(metricKey);
         }
         
     }
@@ -117,7 +122,9 @@ public class Common {
             Long metricKeyLastSeenTimestamp_UpdateOnResend = resendMetric.getMetricReceivedTimestampInMilliseconds();
             
             MetricKeyLastSeen metricKeyLastSeen = new MetricKeyLastSeen(metricKeyLastSeenTimestamp_Current, metricKeyLastSeenTimestamp_UpdateOnResend);
-            GlobalVariables.metricKeysLastSeenTimestamp.put(metricKey, metricKeyLastSeen);
+            MetricKeyLastSeen previousMetricKeyLastSeen = GlobalVariables.metricKeysLastSeenTimestamp.put(metricKey, metricKeyLastSeen);
+            GlobalVariables.metricKeyExpiryIndex.update(metricKey, previousMetricKeyLastSeen, metricKeyLastSeen);
+            if (previousMetricKeyLastSeen == null) MetricAssociation.queueNewMetricKeyForAssociation(metricKey);
         }
         
     }
@@ -133,20 +140,45 @@ public class Common {
 
             MetricTimestampAndValue metricTimestampAndValue = new MetricTimestampAndValue(metric.getMetricTimestampInMilliseconds(), metric.getMetricValueBigDecimal(), metric.getMetricHashKey());
 
-            List<MetricTimestampAndValue> metricTimestampsAndValues = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(metricKey);
+            RecentMetricTimestampsAndValues metricTimestampsAndValues = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(metricKey);
 
             if (metricTimestampsAndValues != null) {
                 metricTimestampsAndValues.add(metricTimestampAndValue);
             }
             else {
-                metricTimestampsAndValues = Collections.synchronizedList(new ArrayList<>());
+                metricTimestampsAndValues = new RecentMetricTimestampsAndValues();
                 metricTimestampsAndValues.add(metricTimestampAndValue);
                 GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.put(metricKey, metricTimestampsAndValues);
             }
+            
+            // metric-keys that are associated with anomaly alerts fold every new value into their streaming model as it arrives.
+            // this has to happen after the value is added to the recent values, so that a model that is being seeded (from the recent values) can't miss it.
+            AnomalyDetectionState anomalyDetectionState = GlobalVariables.anomalyDetectionStatesByMetricKey.get(metricKey);
+            if (anomalyDetectionState != null) anomalyDetectionState.update(metricTimestampAndValue.getTimestamp(), metricTimestampAndValue.getMetricValue());
         }
 
     }
 
+    /*
+    Updates the most recent values that are served by the prometheus endpoint. 
+    StatsD metrics whose most recent values are already tracked by 'statsdMetricsAggregatedMostRecentValue' are served from there, so they aren't stored twice.
+    */
+    public static void updatePrometheusMetricMostRecentValues(List<? extends PrometheusMetricFormat> metrics) {
+        
+        if ((metrics == null) || metrics.isEmpty()) {
+            return;
+        }
+        
+        for (PrometheusMetricFormat metric : metrics) {
+            String metricKey = metric.getMetricKey();
+            if (metricKey == null) continue;
+            
+            if (GlobalVariables.statsdMetricsAggregatedMostRecentValue.containsKey(metricKey)) GlobalVariables.prometheusMetricsMostRecentValue.remove(metricKey);
+            else GlobalVariables.prometheusMetricsMostRecentValue.put(metricKey, metric);
+        }
+        
+    }
+    
     public static List<GraphiteMetric> removeMetricKeysFromGraphiteMetricsList(List<GraphiteMetric> graphiteMetrics, Set<String> metricKeysToRemove) {
         
         if ((graphiteMetrics == null) || graphiteMetrics.isEmpty() || (metricKeysToRemove == null) || metricKeysToRemove.isEmpty()) {
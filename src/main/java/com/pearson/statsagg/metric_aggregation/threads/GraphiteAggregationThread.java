@@ -94,8 +94,12 @@ public class GraphiteAggregationThread implements Runnable {
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbTelnetOutputModules(graphiteMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbHttpOutputModules(graphiteMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV1HttpOutputModules_NonNative(graphiteMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
+                SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV2HttpOutputModules_NonNative(graphiteMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
             }
             
+            // update the most recent values that are served by the prometheus endpoint
+            if (ApplicationConfiguration.isPrometheusEndpointEnabled()) Common.updatePrometheusMetricMostRecentValues(graphiteMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics);
+            
             // total time for this thread took to aggregate the metrics
             long timeAggregationTimeElasped = System.currentTimeMillis() - timeAggregationTimeStart - waitInMsCounter;
             String aggregationRate = "0";
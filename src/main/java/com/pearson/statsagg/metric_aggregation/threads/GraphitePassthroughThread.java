@@ -88,8 +88,12 @@ public class GraphitePassthroughThread implements Runnable {
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbTelnetOutputModules(graphiteMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbHttpOutputModules(graphiteMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV1HttpOutputModules_NonNative(graphiteMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
+                SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV2HttpOutputModules_NonNative(graphiteMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
             }
             
+            // update the most recent values that are served by the prometheus endpoint
+            if (ApplicationConfiguration.isPrometheusEndpointEnabled()) Common.updatePrometheusMetricMostRecentValues(graphiteMetrics_RemovedForgottenAndOutputBlacklistedMetrics);
+            
             // total time for this thread took to get & send the metrics
             long threadTimeElasped = System.currentTimeMillis() - threadTimeStart - waitInMsCounter;
             String rate = "0";
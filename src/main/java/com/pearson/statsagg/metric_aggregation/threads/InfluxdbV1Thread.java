@@ -91,7 +91,11 @@ public class InfluxdbV1Thread implements Runnable {
             if (!influxdbStandardizedMetrics_RemovedForgottenAndOutputBlacklistedMetrics.isEmpty()) SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbTelnetOutputModules(influxdbStandardizedMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
             if (!influxdbStandardizedMetrics_RemovedForgottenAndOutputBlacklistedMetrics.isEmpty()) SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbHttpOutputModules(influxdbStandardizedMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
             if (!influxdbMetrics.isEmpty()) SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV1HttpOutputModules_Native(influxdbMetrics, threadId_);
+            if (!influxdbMetrics.isEmpty()) SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV2HttpOutputModules_Native(influxdbMetrics, threadId_);
  
+            // update the most recent values that are served by the prometheus endpoint
+            if (ApplicationConfiguration.isPrometheusEndpointEnabled()) Common.updatePrometheusMetricMostRecentValues(influxdbStandardizedMetrics_RemovedForgottenAndOutputBlacklistedMetrics);
+            
             // total time for this thread took to get & send the metrics
             long threadTimeElasped = System.currentTimeMillis() - threadTimeStart - waitInMsCounter;
             String rate = "0";
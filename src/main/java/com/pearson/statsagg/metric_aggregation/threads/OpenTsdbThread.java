@@ -88,8 +88,12 @@ public class OpenTsdbThread implements Runnable {
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbTelnetOutputModules(openTsdbMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbHttpOutputModules(openTsdbMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV1HttpOutputModules_NonNative(openTsdbMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
+                SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV2HttpOutputModules_NonNative(openTsdbMetrics_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
             }
             
+            // update the most recent values that are served by the prometheus endpoint
+            if (ApplicationConfiguration.isPrometheusEndpointEnabled()) Common.updatePrometheusMetricMostRecentValues(openTsdbMetrics_RemovedForgottenAndOutputBlacklistedMetrics);
+            
             // total time for this thread took to get & send the metrics
             long threadTimeElasped = System.currentTimeMillis() - threadTimeStart - waitInMsCounter;
             String rate = "0";
@@ -147,8 +147,12 @@ public class StatsdAggregationThread implements Runnable {
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbTelnetOutputModules(statsdMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllOpenTsdbHttpOutputModules(statsdMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
                 SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV1HttpOutputModules_NonNative(statsdMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
+                SendMetricsToOutputModule_ThreadPoolManager.sendMetricsToAllInfluxdbV2HttpOutputModules_NonNative(statsdMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics, threadId_);
             }
             
+            // update the most recent values that are served by the prometheus endpoint
+            if (ApplicationConfiguration.isPrometheusEndpointEnabled()) Common.updatePrometheusMetricMostRecentValues(statsdMetricsAggregated_RemovedForgottenAndOutputBlacklistedMetrics);
+            
             // total time for this thread took to aggregate the metrics
             long timeAggregationTimeElasped = System.currentTimeMillis() - timeAggregationTimeStart - waitInMsCounter;
             String aggregationRate = "0";
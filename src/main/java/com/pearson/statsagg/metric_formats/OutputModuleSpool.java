@@ -0,0 +1,613 @@
+package com.pearson.statsagg.metric_formats;
+
+import com.pearson.statsagg.utilities.StackTrace;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write-ahead spool on local disk for an output module's messages that couldn't be sent (endpoint down, or too many output threads already running).
+ * Spooled messages are replayed, oldest first & at a limited rate, once the endpoint is accepting messages again.
+ *
+ * The spool is a directory of fixed-size, memory-mapped segment files. Messages are appended to the newest segment as [length][UTF-8 bytes] records.
+ * A replayed record is marked by negating its length (once it was written to the endpoint), so a spool that is reopened (ex -- after a restart) only replays the records 
+ * that weren't replayed yet.
+ * Segments are deleted once every record in them was replayed. When the spool grows past its max size, the oldest segment is deleted (& its messages are dropped).
+ *
+ * @author Jeffrey Schmidt
+ */
+public class OutputModuleSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputModuleSpool.class.getName());
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".spool";
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    // the most message bytes that a replay hands off before it waits for them to be written
+    private static final long MAX_REPLAY_BATCH_SIZE_IN_BYTES = 8388608;
+
+    // the most replay 'credit' that can build up while a spool is idle
+    private static final long MAX_REPLAY_BURST_IN_MILLISECONDS = 60000;
+
+    // k=spool id (usually the output module's unique id), v=spool
+    private static final Map<String,OutputModuleSpool> spoolsById_ = new ConcurrentHashMap<>();
+
+    private final String id_;
+    private final File directory_;
+    private final int segmentSizeInBytes_;
+    private final long maxSizeInBytes_;
+    private final long replayMaxBytesPerSecond_;
+
+    // oldest segment first. the last segment is the one that is appended to.
+    private final ArrayDeque<Segment> segments_ = new ArrayDeque<>();
+    private long nextSegmentNumber_ = 0;
+    private long pendingMessages_ = 0;
+    private long pendingBytes_ = 0;
+    private boolean isClosed_ = false;
+
+    private final Object replayLock_ = new Object();
+    private long lastReplayTimestamp_;
+    private double replayAllowanceInBytes_ = 0;
+
+    private final AtomicLong numSpooledMessages_ = new AtomicLong(0);
+    private final AtomicLong numReplayedMessages_ = new AtomicLong(0);
+    private final AtomicLong numDroppedMessages_ = new AtomicLong(0);
+
+    public OutputModuleSpool(String id, File directory, int segmentSizeInBytes, long maxSizeInBytes, long replayMaxBytesPerSecond) {
+        this.id_ = id;
+        this.directory_ = directory;
+        this.segmentSizeInBytes_ = Math.max(segmentSizeInBytes, 1024);
+        this.maxSizeInBytes_ = Math.max(maxSizeInBytes, segmentSizeInBytes_);
+        this.replayMaxBytesPerSecond_ = replayMaxBytesPerSecond;
+        this.lastReplayTimestamp_ = System.currentTimeMillis();
+
+        openExistingSegments();
+    }
+
+    /*
+    Returns the spool with the specified id, stored in a sub-directory (named after the id) of 'parentDirectory'.
+    A new spool is created if there isn't one, or if the existing spool was created with different settings (the old spool is closed, & its segments are reopened by the new spool).
+    */
+    public static OutputModuleSpool getSpool(String id, String parentDirectory, int segmentSizeInBytes, long maxSizeInBytes, long replayMaxBytesPerSecond) {
+
+        if ((id == null) || (parentDirectory == null)) {
+            return null;
+        }
+
+        synchronized (spoolsById_) {
+            File directory = new File(parentDirectory, id.replaceAll("[^A-Za-z0-9._-]", "_"));
+            OutputModuleSpool outputModuleSpool = spoolsById_.get(id);
+
+            if ((outputModuleSpool != null) && !outputModuleSpool.isClosed() && outputModuleSpool.directory_.equals(directory) &&
+                    (outputModuleSpool.segmentSizeInBytes_ == Math.max(segmentSizeInBytes, 1024)) &&
+                    (outputModuleSpool.maxSizeInBytes_ == Math.max(maxSizeInBytes, outputModuleSpool.segmentSizeInBytes_)) &&
+                    (outputModuleSpool.replayMaxBytesPerSecond_ == replayMaxBytesPerSecond)) {
+                return outputModuleSpool;
+            }
+
+            if (outputModuleSpool != null) outputModuleSpool.close();
+
+            outputModuleSpool = new OutputModuleSpool(id, directory, segmentSizeInBytes, maxSizeInBytes, replayMaxBytesPerSecond);
+            spoolsById_.put(id, outputModuleSpool);
+
+            return outputModuleSpool;
+        }
+    }
+
+    /*
+    Returns the spool with the specified id, or null if no spool with that id was opened.
+    */
+    public static OutputModuleSpool getExistingSpool(String id) {
+        if (id == null) return null;
+        return spoolsById_.get(id);
+    }
+
+    /*
+    Returns every open spool, sorted by id.
+    */
+    public static List<OutputModuleSpool> getSpools() {
+        return new ArrayList<>(new TreeMap<>(spoolsById_).values());
+    }
+
+    public static void closeAllSpools() {
+
+        synchronized (spoolsById_) {
+            for (OutputModuleSpool outputModuleSpool : spoolsById_.values()) {
+                outputModuleSpool.close();
+            }
+
+            spoolsById_.clear();
+        }
+
+    }
+
+    /*
+    Appends a message to the end of the spool. Returns false if the message couldn't be spooled (ex -- it is bigger than a segment, or the spool couldn't be written to).
+    */
+    public synchronized boolean append(String message) {
+
+        if ((message == null) || message.isEmpty()) {
+            return true;
+        }
+
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + messageBytes.length;
+
+        if (isClosed_ || (recordSize > segmentSizeInBytes_)) {
+            if (!isClosed_) logger.warn("Message is too big to spool. SpoolId=\"" + id_ + "\", MessageSize=" + messageBytes.length);
+            numDroppedMessages_.incrementAndGet();
+            return false;
+        }
+
+        Segment segment = segments_.peekLast();
+
+        if ((segment == null) || ((segment.writePosition__ + recordSize) > segmentSizeInBytes_)) {
+            segment = createSegment();
+
+            if (segment == null) {
+                numDroppedMessages_.incrementAndGet();
+                return false;
+            }
+        }
+
+        // the message is written before its length, so a record that was only partially written (ex -- a crash) looks like the end of the segment
+        ByteBuffer messageBuffer = segment.buffer__.duplicate();
+        messageBuffer.position(segment.writePosition__ + RECORD_HEADER_SIZE);
+        messageBuffer.put(messageBytes);
+        segment.buffer__.putInt(segment.writePosition__, messageBytes.length);
+
+        segment.writePosition__ += recordSize;
+        segment.pendingMessages__++;
+        segment.pendingBytes__ += messageBytes.length;
+        pendingMessages_++;
+        pendingBytes_ += messageBytes.length;
+        numSpooledMessages_.incrementAndGet();
+
+        // enforce the max size by dropping the oldest segments
+        while (((long) segments_.size() * segmentSizeInBytes_ > maxSizeInBytes_) && (segments_.size() > 1)) {
+            Segment oldestSegment = segments_.peekFirst();
+            logger.warn("Spool is full, dropping the oldest spooled messages. SpoolId=\"" + id_ + "\", NumDroppedMessages=" + oldestSegment.pendingMessages__);
+            numDroppedMessages_.addAndGet(oldestSegment.pendingMessages__);
+            removeOldestSegment();
+        }
+
+        return true;
+    }
+
+    /*
+    Replays spooled messages (oldest first) through 'sender' -- which returns true if the message was sent -- until the spool is empty, 'sender' fails,
+    or the replay rate would go over the spool's 'replayMaxBytesPerSecond' (averaged over the time since the last replay, no limit if <= 0).
+    A message that 'sender' failed to send stays in the spool. Returns the number of messages that were replayed.
+    */
+    public int replay(Predicate<String> sender) {
+        
+        if (sender == null) {
+            return 0;
+        }
+        
+        return replay(message -> sender.test(message) ? CompletableFuture.completedFuture(null) : null, 0);
+    }
+    
+    /*
+    Same as replay(Predicate), for a 'sender' that writes in the background. 'sender' returns the message's write future, or null if the message was rejected.
+    Messages are handed to 'sender' in batches, without waiting on each write. A message is only marked as replayed once its write succeeded (waiting up to 'maxWaitTimeInMs' 
+    per batch). The first message whose write failed (or didn't finish in time), & every message after it, stay in the spool.
+    */
+    public int replay(Function<String,Future<?>> sender, long maxWaitTimeInMs) {
+
+        if (sender == null) {
+            return 0;
+        }
+
+        synchronized (replayLock_) {
+            long maxBytesPerSecond = replayMaxBytesPerSecond_;
+            long currentTimestamp = System.currentTimeMillis();
+            long elapsedTime = Math.min(Math.max(currentTimestamp - lastReplayTimestamp_, 0), MAX_REPLAY_BURST_IN_MILLISECONDS);
+            lastReplayTimestamp_ = currentTimestamp;
+
+            if (maxBytesPerSecond > 0) replayAllowanceInBytes_ = Math.min(replayAllowanceInBytes_ + ((maxBytesPerSecond * elapsedTime) / 1000.0),
+                    (maxBytesPerSecond * MAX_REPLAY_BURST_IN_MILLISECONDS) / 1000.0);
+
+            int numReplayedMessages = 0;
+            boolean isReplayFinished = false;
+
+            while (!isReplayFinished) {
+                List<SpoolRecord> sentSpoolRecords = new ArrayList<>();
+                List<Future<?>> writeFutures = new ArrayList<>();
+                long batchSizeInBytes = 0;
+                SpoolRecord spoolRecord = null;
+
+                // hand a batch of messages to 'sender'. the batch continues from the last message that was handed off (none of the batch's messages are marked yet).
+                while (((maxBytesPerSecond <= 0) || (replayAllowanceInBytes_ > 0)) && (batchSizeInBytes < MAX_REPLAY_BATCH_SIZE_IN_BYTES)) {
+                    spoolRecord = peek(spoolRecord);
+                    if (spoolRecord == null) break;
+
+                    Future<?> writeFuture = sender.apply(spoolRecord.message__);
+                    if (writeFuture == null) break;
+
+                    sentSpoolRecords.add(spoolRecord);
+                    writeFutures.add(writeFuture);
+                    batchSizeInBytes += spoolRecord.length__;
+                    if (maxBytesPerSecond > 0) replayAllowanceInBytes_ -= spoolRecord.length__;
+                }
+
+                // only a full batch is followed by another batch
+                isReplayFinished = (batchSizeInBytes < MAX_REPLAY_BATCH_SIZE_IN_BYTES);
+
+                // mark the batch's messages as replayed (in order), up to the first one that wasn't written
+                long endTime = System.currentTimeMillis() + maxWaitTimeInMs;
+
+                for (int i = 0; i < sentSpoolRecords.size(); i++) {
+                    if (!isWriteSuccess(writeFutures.get(i), endTime)) {
+                        isReplayFinished = true;
+                        break;
+                    }
+
+                    markReplayed(sentSpoolRecords.get(i));
+                    numReplayedMessages++;
+                }
+            }
+
+            numReplayedMessages_.addAndGet(numReplayedMessages);
+
+            return numReplayedMessages;
+        }
+    }
+
+    private static boolean isWriteSuccess(Future<?> writeFuture, long endTime) {
+
+        try {
+            writeFuture.get(Math.max(endTime - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            return true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    /*
+    Returns the oldest message that hasn't been replayed yet, or null if there isn't one.
+    */
+    private synchronized SpoolRecord peek() {
+
+        while (!isClosed_) {
+            Segment segment = segments_.peekFirst();
+            if (segment == null) return null;
+
+            if (segment.readPosition__ < segment.writePosition__) {
+                return readRecord(segment, segment.readPosition__);
+            }
+
+            if (segment == segments_.peekLast()) return null;
+            removeOldestSegment();
+        }
+
+        return null;
+    }
+
+    /*
+    Returns the message after 'previousSpoolRecord' (or the oldest message that hasn't been replayed yet, if 'previousSpoolRecord' is null). 
+    Returns null if there isn't one, or if 'previousSpoolRecord's segment was dropped (spool full, or closed).
+    */
+    private synchronized SpoolRecord peek(SpoolRecord previousSpoolRecord) {
+
+        if (previousSpoolRecord == null) {
+            return peek();
+        }
+
+        if (isClosed_) {
+            return null;
+        }
+
+        Iterator<Segment> segmentsIterator = segments_.iterator();
+        Segment segment = null;
+
+        while (segmentsIterator.hasNext() && (segment != previousSpoolRecord.segment__)) {
+            segment = segmentsIterator.next();
+        }
+
+        if (segment != previousSpoolRecord.segment__) return null;
+
+        int position = previousSpoolRecord.position__ + RECORD_HEADER_SIZE + previousSpoolRecord.length__;
+
+        while (position >= segment.writePosition__) {
+            if (!segmentsIterator.hasNext()) return null;
+            segment = segmentsIterator.next();
+            position = segment.readPosition__;
+        }
+
+        return readRecord(segment, position);
+    }
+
+    private SpoolRecord readRecord(Segment segment, int position) {
+
+        int length = segment.buffer__.getInt(position);
+        byte[] messageBytes = new byte[length];
+        ByteBuffer messageBuffer = segment.buffer__.duplicate();
+        messageBuffer.position(position + RECORD_HEADER_SIZE);
+        messageBuffer.get(messageBytes);
+
+        return new SpoolRecord(segment, position, length, new String(messageBytes, StandardCharsets.UTF_8));
+    }
+
+    private synchronized void markReplayed(SpoolRecord spoolRecord) {
+
+        Segment segment = spoolRecord.segment__;
+
+        // a replay can continue into the next segment before the previous segment's last record was marked, so finished segments are dropped first
+        while (!isClosed_ && (segments_.peekFirst() != segment) && (segments_.peekFirst() != segments_.peekLast()) &&
+                (segments_.peekFirst().readPosition__ >= segments_.peekFirst().writePosition__)) {
+            removeOldestSegment();
+        }
+
+        // the segment may have been dropped (spool full, or closed) while the record was being replayed
+        if (isClosed_ || (segments_.peekFirst() != segment) || (segment.readPosition__ != spoolRecord.position__)) {
+            return;
+        }
+
+        segment.buffer__.putInt(spoolRecord.position__, -spoolRecord.length__);
+        segment.readPosition__ += RECORD_HEADER_SIZE + spoolRecord.length__;
+        segment.pendingMessages__--;
+        segment.pendingBytes__ -= spoolRecord.length__;
+        pendingMessages_--;
+        pendingBytes_ -= spoolRecord.length__;
+
+        if ((segment.readPosition__ >= segment.writePosition__) && (segment != segments_.peekLast())) {
+            removeOldestSegment();
+        }
+    }
+
+    private void openExistingSegments() {
+
+        File[] segmentFiles = directory_.listFiles((dir, name) -> name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX));
+        if (segmentFiles == null) return;
+
+        Arrays.sort(segmentFiles, (file1, file2) -> Long.compare(getSegmentNumber(file1), getSegmentNumber(file2)));
+
+        for (File segmentFile : segmentFiles) {
+            long segmentNumber = getSegmentNumber(segmentFile);
+            if (segmentNumber < 0) continue;
+
+            Segment segment = mapSegment(segmentFile);
+            if (segment == null) continue;
+
+            nextSegmentNumber_ = segmentNumber + 1;
+            scanSegment(segment);
+
+            if (segment.pendingMessages__ == 0) {
+                closeSegment(segment, true);
+                continue;
+            }
+
+            segments_.addLast(segment);
+            pendingMessages_ += segment.pendingMessages__;
+            pendingBytes_ += segment.pendingBytes__;
+        }
+
+        if (pendingMessages_ > 0) logger.info("Reopened spool. SpoolId=\"" + id_ + "\", PendingMessages=" + pendingMessages_ + ", PendingBytes=" + pendingBytes_);
+    }
+
+    /*
+    Finds the first record that wasn't replayed, & the end of the written records.
+    */
+    private void scanSegment(Segment segment) {
+
+        int position = 0;
+        int readPosition = -1;
+
+        while ((position + RECORD_HEADER_SIZE) <= segment.buffer__.capacity()) {
+            int length = segment.buffer__.getInt(position);
+            int absoluteLength = (length < 0) ? -length : length;
+
+            if ((length == 0) || (absoluteLength > (segment.buffer__.capacity() - position - RECORD_HEADER_SIZE))) {
+                break;
+            }
+
+            if ((length > 0) && (readPosition < 0)) readPosition = position;
+            if (length > 0) {
+                segment.pendingMessages__++;
+                segment.pendingBytes__ += length;
+            }
+
+            position += RECORD_HEADER_SIZE + absoluteLength;
+        }
+
+        segment.writePosition__ = position;
+        segment.readPosition__ = (readPosition < 0) ? position : readPosition;
+    }
+
+    private Segment createSegment() {
+
+        if (!directory_.isDirectory() && !directory_.mkdirs()) {
+            logger.error("Unable to create spool directory. SpoolId=\"" + id_ + "\", Directory=\"" + directory_.getAbsolutePath() + "\"");
+            return null;
+        }
+
+        long segmentNumber = nextSegmentNumber_++;
+        Segment segment = mapSegment(new File(directory_, SEGMENT_FILE_PREFIX + String.format("%020d", segmentNumber) + SEGMENT_FILE_SUFFIX));
+        if (segment != null) segments_.addLast(segment);
+
+        return segment;
+    }
+
+    private Segment mapSegment(File segmentFile) {
+
+        RandomAccessFile randomAccessFile = null;
+
+        try {
+            randomAccessFile = new RandomAccessFile(segmentFile, "rw");
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            MappedByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSizeInBytes_);
+
+            return new Segment(segmentFile, randomAccessFile, mappedByteBuffer);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+
+            try {
+                if (randomAccessFile != null) randomAccessFile.close();
+            }
+            catch (Exception e2) {}
+
+            return null;
+        }
+    }
+
+    private void removeOldestSegment() {
+
+        Segment segment = segments_.pollFirst();
+        if (segment == null) return;
+
+        pendingMessages_ -= segment.pendingMessages__;
+        pendingBytes_ -= segment.pendingBytes__;
+        closeSegment(segment, true);
+    }
+
+    private void closeSegment(Segment segment, boolean deleteFile) {
+
+        try {
+            if (!deleteFile) segment.buffer__.force();
+            segment.randomAccessFile__.close();
+            if (deleteFile && !segment.file__.delete()) logger.warn("Unable to delete spool segment. File=\"" + segment.file__.getAbsolutePath() + "\"");
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+
+    }
+
+    private static long getSegmentNumber(File segmentFile) {
+
+        try {
+            String name = segmentFile.getName();
+            return Long.parseLong(name.substring(SEGMENT_FILE_PREFIX.length(), name.length() - SEGMENT_FILE_SUFFIX.length()));
+        }
+        catch (Exception e) {
+            return -1;
+        }
+
+    }
+
+    /*
+    Writes the spool's segments to disk & closes them. Messages that weren't replayed yet stay on disk, & are replayed by the next spool that opens the same directory.
+    */
+    public synchronized void close() {
+
+        if (isClosed_) {
+            return;
+        }
+
+        isClosed_ = true;
+
+        for (Segment segment : segments_) {
+            closeSegment(segment, false);
+        }
+
+        segments_.clear();
+    }
+
+    public String getId() {
+        return id_;
+    }
+
+    public long getReplayMaxBytesPerSecond() {
+        return replayMaxBytesPerSecond_;
+    }
+
+    public File getDirectory() {
+        return directory_;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingMessages_ == 0;
+    }
+
+    public synchronized boolean isClosed() {
+        return isClosed_;
+    }
+
+    public synchronized long getPendingMessageCount() {
+        return pendingMessages_;
+    }
+
+    public synchronized long getPendingBytes() {
+        return pendingBytes_;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments_.size();
+    }
+
+    public long getNumSpooledMessages() {
+        return numSpooledMessages_.get();
+    }
+
+    public long getNumReplayedMessages() {
+        return numReplayedMessages_.get();
+    }
+
+    public long getNumDroppedMessages() {
+        return numDroppedMessages_.get();
+    }
+
+    private static class Segment {
+
+        private final File file__;
+        private final RandomAccessFile randomAccessFile__;
+        private final MappedByteBuffer buffer__;
+
+        // records in [readPosition__, writePosition__) haven't been replayed yet
+        private int readPosition__ = 0;
+        private int writePosition__ = 0;
+        private long pendingMessages__ = 0;
+        private long pendingBytes__ = 0;
+
+        public Segment(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer) {
+            this.file__ = file;
+            this.randomAccessFile__ = randomAccessFile;
+            this.buffer__ = buffer;
+        }
+
+    }
+
+    private static class SpoolRecord {
+
+        private final Segment segment__;
+        private final int position__;
+        private final int length__;
+        private final String message__;
+
+        public SpoolRecord(Segment segment, int position, int length, String message) {
+            this.segment__ = segment;
+            this.position__ = position;
+            this.length__ = length;
+            this.message__ = message;
+        }
+
+    }
+
+}
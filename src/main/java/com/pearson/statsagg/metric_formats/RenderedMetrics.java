@@ -0,0 +1,150 @@
+package com.pearson.statsagg.metric_formats;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.pearson.statsagg.utilities.StackTrace;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable, UTF-8 encoded rendering of a flush's metrics in a single output format (ex -- graphite, sanitized & with substituted characters).
+ *
+ * Every output module that uses the same output format 'variant' shares the same rendering, so a flush's metrics are only rendered once per variant
+ * (instead of once per output module). Output modules write ranges of the rendered metrics (messages) straight to their endpoints.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class RenderedMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderedMetrics.class.getName());
+
+    private static final byte[] JSON_ARRAY_START = "[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JSON_ARRAY_SEPARATOR = ",".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JSON_ARRAY_END = "]".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] bytes_;
+    private final int[] metricEndOffsets_;
+    private final int numMetrics_;
+
+    private RenderedMetrics(byte[] bytes, int[] metricEndOffsets, int numMetrics) {
+        this.bytes_ = bytes;
+        this.metricEndOffsets_ = metricEndOffsets;
+        this.numMetrics_ = numMetrics;
+    }
+
+    /*
+    Renders every metric with 'renderer'. Metrics that render to null (ex -- they can't be represented in the output format) are skipped.
+    */
+    public static <T> RenderedMetrics render(List<? extends T> metrics, Function<T,String> renderer) {
+
+        if ((metrics == null) || (renderer == null)) {
+            return new RenderedMetrics(new byte[0], new int[0], 0);
+        }
+
+        byte[] bytes = new byte[Math.max(metrics.size() * 64, 64)];
+        int[] metricEndOffsets = new int[metrics.size()];
+        int numMetrics = 0, length = 0;
+
+        for (T metric : metrics) {
+            String renderedMetric = null;
+
+            try {
+                renderedMetric = renderer.apply(metric);
+            }
+            catch (Exception e) {
+                logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            }
+
+            if (renderedMetric == null) continue;
+
+            byte[] renderedMetricBytes = renderedMetric.getBytes(StandardCharsets.UTF_8);
+
+            if ((length + renderedMetricBytes.length) > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + renderedMetricBytes.length));
+            }
+
+            System.arraycopy(renderedMetricBytes, 0, bytes, length, renderedMetricBytes.length);
+            length += renderedMetricBytes.length;
+            metricEndOffsets[numMetrics] = length;
+            numMetrics++;
+        }
+
+        return new RenderedMetrics(bytes, metricEndOffsets, numMetrics);
+    }
+
+    /*
+    Returns a supplier that renders the metrics the first time that it is called, & returns the same rendering on every later call.
+    This lets several output modules share a rendering, without any of them rendering it before an output module actually needs it.
+    */
+    public static <T> Supplier<RenderedMetrics> lazy(List<? extends T> metrics, Function<T,String> renderer) {
+        return Suppliers.memoize(() -> render(metrics, renderer));
+    }
+
+    public int getNumMetrics() {
+        return numMetrics_;
+    }
+
+    public boolean isEmpty() {
+        return numMetrics_ == 0;
+    }
+
+    private int getStartOffset(int metricIndex) {
+        return (metricIndex == 0) ? 0 : metricEndOffsets_[metricIndex - 1];
+    }
+
+    /*
+    Returns the number of bytes used by the metrics from 'fromIndex' (inclusive) to 'toIndex' (exclusive).
+    */
+    public int getLength(int fromIndex, int toIndex) {
+        return getStartOffset(toIndex) - getStartOffset(fromIndex);
+    }
+
+    /*
+    Returns a buffer (that shares this rendering's memory, instead of copying it) containing the metrics from 'fromIndex' (inclusive) to 'toIndex' (exclusive).
+    */
+    public ByteBuf getByteBuf(int fromIndex, int toIndex) {
+        int startOffset = getStartOffset(fromIndex);
+        return Unpooled.wrappedBuffer(bytes_, startOffset, getStartOffset(toIndex) - startOffset);
+    }
+
+    /*
+    Returns the metrics from 'fromIndex' (inclusive) to 'toIndex' (exclusive) as a string.
+    */
+    public String getString(int fromIndex, int toIndex) {
+        int startOffset = getStartOffset(fromIndex);
+        return new String(bytes_, startOffset, getStartOffset(toIndex) - startOffset, StandardCharsets.UTF_8);
+    }
+
+    /*
+    Writes the metrics from 'fromIndex' (inclusive) to 'toIndex' (exclusive), exactly as they were rendered.
+    */
+    public void write(OutputStream outputStream, int fromIndex, int toIndex) throws IOException {
+        int startOffset = getStartOffset(fromIndex);
+        outputStream.write(bytes_, startOffset, getStartOffset(toIndex) - startOffset);
+    }
+
+    /*
+    Writes the metrics from 'fromIndex' (inclusive) to 'toIndex' (exclusive) as a json array. Every rendered metric must be a json object.
+    */
+    public void writeJsonArray(OutputStream outputStream, int fromIndex, int toIndex) throws IOException {
+
+        outputStream.write(JSON_ARRAY_START);
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            int startOffset = getStartOffset(i);
+            if (i > fromIndex) outputStream.write(JSON_ARRAY_SEPARATOR);
+            outputStream.write(bytes_, startOffset, metricEndOffsets_[i] - startOffset);
+        }
+
+        outputStream.write(JSON_ARRAY_END);
+    }
+
+}
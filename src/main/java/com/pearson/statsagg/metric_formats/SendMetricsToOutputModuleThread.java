@@ -1,19 +1,135 @@
 package com.pearson.statsagg.metric_formats;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * @author Jeffrey Schmidt
  */
 public abstract class SendMetricsToOutputModuleThread implements Runnable {
     
+    private static final Logger logger = LoggerFactory.getLogger(SendMetricsToOutputModuleThread.class.getName());
+    
     protected String threadId_;
     protected String outputEndpoint_ = null;
     protected boolean isShuttingDown_ = false;
     protected boolean isFinished_ = false;
+    protected OutputModuleSpool outputModuleSpool_ = null;
+    protected int numSpooledMessages_ = 0;
+    
+    // messages that were handed off to be written in the background, but that haven't been confirmed as written yet
+    protected final List<PendingWrite> pendingWrites_ = new ArrayList<>();
     
     public abstract void shutdown();
     
     public abstract boolean isFinished();
     
+    /*
+    Returns a new (not started) thread that sends this thread's metrics followed by 'other' thread's metrics, or null if the two threads can't be merged 
+    (ex -- they output to different endpoints, or with different settings). Neither thread can have been started.
+    */
+    public SendMetricsToOutputModuleThread merge(SendMetricsToOutputModuleThread other) {
+        return null;
+    }
+    
+    /*
+    Writes the thread's metrics to the output module's spool, instead of sending them (ex -- when the output module's queue is full).
+    Returns false if the metrics weren't spooled (ex -- the output module doesn't have a spool).
+    */
+    public boolean spool() {
+        return false;
+    }
+    
+    /*
+    Appends a message that couldn't be sent to the output module's spool. Returns false if the output module doesn't have a spool, or if the spool couldn't be written to.
+    */
+    protected boolean spoolMessage(CharSequence message) {
+        
+        if ((outputModuleSpool_ == null) || (message == null) || !outputModuleSpool_.append(message.toString())) {
+            return false;
+        }
+        
+        numSpooledMessages_++;
+        return true;
+    }
+    
+    /*
+    Replays (a rate-limited amount of) the output module's spooled messages through 'sender' -- which returns the message's write future, or null if the message was rejected. 
+    A spooled message is only marked as replayed once its write succeeded (waiting up to 'maxWaitTimeInMs'). Returns the number of messages that were replayed.
+    */
+    protected int replaySpool(Function<String,? extends Future<?>> sender, long maxWaitTimeInMs) {
+        
+        if ((outputModuleSpool_ == null) || outputModuleSpool_.isEmpty() || isShuttingDown_) {
+            return 0;
+        }
+        
+        return outputModuleSpool_.replay(message -> isShuttingDown_ ? null : sender.apply(message), maxWaitTimeInMs);
+    }
+    
+    protected void addPendingWrite(RenderedMetrics renderedMetrics, int fromIndex, int toIndex, Future<?> writeFuture) {
+        pendingWrites_.add(new PendingWrite(renderedMetrics, fromIndex, toIndex, writeFuture));
+    }
+    
+    /*
+    Waits (up to 'maxWaitTimeInMs' per round) for the pending writes to finish. A message whose write failed (ex -- the endpoint closed the connection) is re-sent 
+    through 'resender' (which returns false if the message couldn't be re-sent), up to 'numSendRetries' times. Messages that still aren't written go to the spool (if there is one).
+    The spooling only happens here, so 'resender' must not spool the messages that it couldn't re-send.
+    Writes that don't finish in time aren't treated as failed -- they are still being written in the background, so re-sending them could send their metrics twice.
+    Returns false if any message wasn't written.
+    */
+    protected boolean awaitPendingWrites(long maxWaitTimeInMs, int numSendRetries, Predicate<PendingWrite> resender) {
+        
+        boolean isWriteAllSuccess = true;
+        
+        for (int i = 0; !pendingWrites_.isEmpty(); i++) {
+            List<PendingWrite> pendingWrites = new ArrayList<>(pendingWrites_);
+            pendingWrites_.clear();
+            
+            List<PendingWrite> failedWrites = new ArrayList<>();
+            int numUnfinishedWrites = 0;
+            long endTime = System.currentTimeMillis() + maxWaitTimeInMs;
+            
+            for (PendingWrite pendingWrite : pendingWrites) {
+                try {
+                    pendingWrite.writeFuture__.get(Math.max(endTime - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                }
+                catch (TimeoutException e) {
+                    numUnfinishedWrites++;
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    numUnfinishedWrites++;
+                }
+                catch (Exception e) {
+                    failedWrites.add(pendingWrite);
+                }
+            }
+            
+            if (numUnfinishedWrites > 0) {
+                logger.warn("ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + "\", Message=\"Messages were not written in time\", NumUnfinishedMessages=" + numUnfinishedWrites);
+            }
+            
+            if (failedWrites.isEmpty()) continue;
+            
+            isWriteAllSuccess = false;
+            boolean isResend = (i < numSendRetries) && !isShuttingDown_;
+            logger.warn("ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + "\", Message=\"Failed writing messages\", NumFailedMessages=" + failedWrites.size() + ", Resend=" + isResend);
+            
+            for (PendingWrite failedWrite : failedWrites) {
+                if (!isResend || !resender.test(failedWrite)) spoolMessage(failedWrite.getMessage());
+            }
+        }
+        
+        return isWriteAllSuccess;
+    }
+    
     public String getOutputEndpoint() {
         return outputEndpoint_;
     }
@@ -26,4 +142,43 @@ public abstract class SendMetricsToOutputModuleThread implements Runnable {
         return isShuttingDown_;
     }
     
+    public OutputModuleSpool getOutputModuleSpool() {
+        return outputModuleSpool_;
+    }
+    
+    /*
+    A message (a range of a flush's rendered metrics) that was handed off to be written in the background, & the write's future.
+    */
+    protected static class PendingWrite {
+        
+        private final RenderedMetrics renderedMetrics__;
+        private final int fromIndex__;
+        private final int toIndex__;
+        private final Future<?> writeFuture__;
+        
+        public PendingWrite(RenderedMetrics renderedMetrics, int fromIndex, int toIndex, Future<?> writeFuture) {
+            this.renderedMetrics__ = renderedMetrics;
+            this.fromIndex__ = fromIndex;
+            this.toIndex__ = toIndex;
+            this.writeFuture__ = writeFuture;
+        }
+        
+        public String getMessage() {
+            return renderedMetrics__.getString(fromIndex__, toIndex__);
+        }
+        
+        public RenderedMetrics getRenderedMetrics() {
+            return renderedMetrics__;
+        }
+        
+        public int getFromIndex() {
+            return fromIndex__;
+        }
+        
+        public int getToIndex() {
+            return toIndex__;
+        }
+        
+    }
+    
 }
@@ -0,0 +1,152 @@
+package com.pearson.statsagg.metric_formats.graphite;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A consistent-hash ring that places keys (metric paths) on nodes the same way that carbon's 'ConsistentHashRing' ('carbon_ch' hash type) does.
+ *
+ * Every node is placed on the ring 'replicaCount' times (carbon uses 100), at positions derived from the node's key.
+ * A metric path's position on the ring is the first 2 bytes of the md5 of the metric path. The metric path belongs to the first node at (or after) its position,
+ * & its replicas belong to the next distinct nodes on the ring. Because the positions match carbon's, a carbon-relay (or another StatsAgg) using the same
+ * destinations sends each metric path to the same carbon-cache instance(s).
+ *
+ * The ring is immutable once it has been built, so it is safe to use from multiple threads.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class ConsistentHashRing<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsistentHashRing.class.getName());
+
+    public static final int CARBON_REPLICA_COUNT = 100;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final TreeMap<Integer,T> ring_ = new TreeMap<>();
+    private final List<T> nodes_ = new ArrayList<>();
+
+    /*
+    'nodes' maps every node to its ring key. For carbon compatibility, the ring key should be the node's carbon key (see getCarbonNodeKey), 
+    & the nodes should be in the same order as carbon's destinations (ex -- a LinkedHashMap), since the order decides who wins a position collision.
+    */
+    public ConsistentHashRing(Map<T,String> nodes, int replicaCount) {
+
+        if (nodes == null) return;
+
+        for (Map.Entry<T,String> node : nodes.entrySet()) {
+            nodes_.add(node.getKey());
+
+            for (int i = 0; i < replicaCount; i++) {
+                int position = getRingPosition(node.getValue() + ":" + i);
+
+                // same as carbon -- on a collision, the node is placed at the next free position
+                while (ring_.containsKey(position)) position++;
+
+                ring_.put(position, node.getKey());
+            }
+        }
+    }
+
+    /*
+    Returns the ring position of a key -- the first 4 hex digits of the key's md5 hash (0 to 65535).
+    */
+    public static int getRingPosition(String key) {
+
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            byte[] hash = md5.digest(key.getBytes(StandardCharsets.UTF_8));
+            return ((hash[0] & 0xff) << 8) | (hash[1] & 0xff);
+        }
+        catch (Exception e) {
+            // every jvm is required to support md5
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+    Returns the key that carbon uses for a destination on its ring. Carbon keys its ring with the python string of a (server, instance) tuple.
+    Ex -- "('127.0.0.1', 'a')" or "('127.0.0.1', None)" (when the destination doesn't have an instance name)
+    */
+    public static String getCarbonNodeKey(String server, String instance) {
+        return "(" + getPythonStringRepresentation(server) + ", " + ((instance == null) ? "None" : getPythonStringRepresentation(instance)) + ")";
+    }
+
+    private static String getPythonStringRepresentation(String string) {
+
+        if (string == null) return "None";
+
+        // python wraps a string in single-quotes, unless the string contains a single-quote (& no double-quotes)
+        char quote = ((string.indexOf('\'') != -1) && (string.indexOf('"') == -1)) ? '"' : '\'';
+        StringBuilder stringRepresentation = new StringBuilder().append(quote);
+
+        for (int i = 0; i < string.length(); i++) {
+            char character = string.charAt(i);
+
+            if ((character == '\\') || (character == quote)) stringRepresentation.append('\\').append(character);
+            else if (character == '\n') stringRepresentation.append("\\n");
+            else if (character == '\r') stringRepresentation.append("\\r");
+            else if (character == '\t') stringRepresentation.append("\\t");
+            else if ((character < 0x20) || (character == 0x7f)) stringRepresentation.append("\\x").append(HEX_DIGITS[(character >> 4) & 0xf]).append(HEX_DIGITS[character & 0xf]);
+            else stringRepresentation.append(character);
+        }
+
+        return stringRepresentation.append(quote).toString();
+    }
+
+    /*
+    Returns the node that 'key' belongs to, or null if the ring is empty.
+    */
+    public T getNode(String key) {
+
+        if (ring_.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<Integer,T> ringEntry = ring_.ceilingEntry(getRingPosition(key));
+        if (ringEntry == null) ringEntry = ring_.firstEntry();
+
+        return ringEntry.getValue();
+    }
+
+    /*
+    Returns the (up to) 'count' distinct nodes that 'key' belongs to, in ring order. The first node is the same as getNode's.
+    */
+    public List<T> getNodes(String key, int count) {
+
+        if (ring_.isEmpty() || (count <= 0)) {
+            return Collections.emptyList();
+        }
+
+        int numNodes = Math.min(count, nodes_.size());
+        Set<T> nodes = new LinkedHashSet<>();
+        int position = getRingPosition(key);
+
+        // walk the ring, starting at the key's position & wrapping around at the end
+        for (T node : ring_.tailMap(position, true).values()) {
+            nodes.add(node);
+            if (nodes.size() >= numNodes) return new ArrayList<>(nodes);
+        }
+
+        for (T node : ring_.headMap(position, false).values()) {
+            nodes.add(node);
+            if (nodes.size() >= numNodes) return new ArrayList<>(nodes);
+        }
+
+        return new ArrayList<>(nodes);
+    }
+
+    public List<T> getAllNodes() {
+        return Collections.unmodifiableList(nodes_);
+    }
+
+}
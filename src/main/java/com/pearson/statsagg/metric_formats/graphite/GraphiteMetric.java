@@ -2,11 +2,17 @@ package com.pearson.statsagg.metric_formats.graphite;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import com.pearson.statsagg.metric_formats.GenericMetricFormat;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetricFormat_v1;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetricFormat_v2;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetric_v2;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetric;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetricFormat;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetric;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetricFormat;
+import com.pearson.statsagg.utilities.KeyValue;
 import com.pearson.statsagg.utilities.StackTrace;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -17,7 +23,7 @@ import org.slf4j.LoggerFactory;
 /**
  * @author Jeffrey Schmidt
  */
-public class GraphiteMetric implements GraphiteMetricFormat, OpenTsdbMetricFormat, GenericMetricFormat, InfluxdbMetricFormat_v1 {
+public class GraphiteMetric implements GraphiteMetricFormat, OpenTsdbMetricFormat, GenericMetricFormat, InfluxdbMetricFormat_v1, InfluxdbMetricFormat_v2, PrometheusMetricFormat {
     
     private static final Logger logger = LoggerFactory.getLogger(GraphiteMetric.class.getName());
     
@@ -196,6 +202,33 @@ public class GraphiteMetric implements GraphiteMetricFormat, OpenTsdbMetricForma
         return influxdbJson.toString();
     }
     
+    @Override
+    public String getInfluxdbV2LineFormatString(byte timePrecisionCode) {
+
+        if ((metricPath_ == null) || metricPath_.isEmpty()) return null;
+        if (metricTimestamp_ < 0) return null;
+        if ((getMetricValue() == null)) return null;
+
+        StringBuilder influxdbLine = new StringBuilder();
+
+        // the measurement is the metric path (with the prefix already built-in), & the metric value is the 'value' field
+        influxdbLine.append(InfluxdbMetric_v2.getLineProtocolEscapedMeasurement(metricPath_));
+        influxdbLine.append(" value=").append(getMetricValueString()).append(" ");
+        influxdbLine.append(InfluxdbMetric_v2.getTimestampInTimePrecision(timePrecisionCode, getMetricTimestampInMilliseconds()));
+
+        return influxdbLine.toString();
+    }
+    
+    @Override
+    public String getPrometheusMetricName() {
+        return PrometheusMetric.getPrometheusSanitizedMetricName(metricPath_);
+    }
+    
+    @Override
+    public List<KeyValue> getPrometheusLabels() {
+        return Collections.emptyList();
+    }
+    
     /*
     @param  unsanitizedInput  The input is expected to be a Graphite 'metric path'.
     
@@ -0,0 +1,186 @@
+package com.pearson.statsagg.metric_formats.graphite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A group of Graphite (carbon) destinations that share a consistent-hash ring.
+ * Instead of every destination getting every metric, each metric is only sent to the 'replicationFactor' destinations that its metric path hashes to.
+ * The ring is compatible with carbon-relay's 'consistent-hashing' relay method, so StatsAgg can feed a carbon cluster directly.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class GraphiteShardedOutputModule {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphiteShardedOutputModule.class.getName());
+
+    private final boolean isOutputEnabled_;
+    private final List<Destination> destinations_;
+    private final int replicationFactor_;
+    private final int numSendRetryAttempts_;
+    private final int maxMetricsPerMessage_;
+    private final boolean sanitizeMetrics_;
+    private final boolean substituteCharacters_;
+    private final String uniqueId_;
+    private final ConsistentHashRing<Destination> consistentHashRing_;
+
+    public GraphiteShardedOutputModule(boolean isOutputEnabled, List<Destination> destinations, int replicationFactor, int numSendRetryAttempts,
+            int maxMetricsPerMessage, boolean sanitizeMetrics, boolean substituteCharacters, String uniqueId) {
+        this.isOutputEnabled_ = isOutputEnabled;
+        this.replicationFactor_ = replicationFactor;
+        this.numSendRetryAttempts_ = numSendRetryAttempts;
+        this.maxMetricsPerMessage_ = maxMetricsPerMessage;
+        this.sanitizeMetrics_ = sanitizeMetrics;
+        this.substituteCharacters_ = substituteCharacters;
+        this.uniqueId_ = uniqueId;
+
+        // like carbon, destinations are identified on the ring by (host, instance). a destination that duplicates an earlier destination's (host, instance) is ignored.
+        Map<Destination,String> ringNodes = new LinkedHashMap<>();
+        List<String> carbonNodeKeys = new ArrayList<>();
+
+        if (destinations != null) {
+            for (Destination destination : destinations) {
+                String carbonNodeKey = ConsistentHashRing.getCarbonNodeKey(destination.getHost(), destination.getInstance());
+
+                if (carbonNodeKeys.contains(carbonNodeKey)) {
+                    logger.error("Duplicate destination in Graphite sharded output module. OutputModule=" + uniqueId + ", Destination=\"" + destination + "\"");
+                    continue;
+                }
+
+                carbonNodeKeys.add(carbonNodeKey);
+                ringNodes.put(destination, carbonNodeKey);
+            }
+        }
+
+        this.destinations_ = Collections.unmodifiableList(new ArrayList<>(ringNodes.keySet()));
+        this.consistentHashRing_ = new ConsistentHashRing<>(ringNodes, ConsistentHashRing.CARBON_REPLICA_COUNT);
+    }
+
+    /*
+    Parses a list of destinations. Destinations are separated by spaces or semicolons, & are formatted like carbon's destinations -- host:port[:instance]
+    Ex -- "carbon1.some-domain.com:2003:a carbon2.some-domain.com:2003:b"
+    */
+    public static List<Destination> parseDestinations(String unparsedDestinations) {
+
+        List<Destination> destinations = new ArrayList<>();
+        if (unparsedDestinations == null) return destinations;
+
+        for (String unparsedDestination : unparsedDestinations.trim().split("[\\s;]+")) {
+            if (unparsedDestination.isEmpty()) continue;
+
+            String[] destinationFields = unparsedDestination.split(":");
+
+            if ((destinationFields.length < 2) || (destinationFields.length > 3) || destinationFields[0].isEmpty()) {
+                logger.error("Invalid Graphite destination. Destination=\"" + unparsedDestination + "\"");
+                continue;
+            }
+
+            int port;
+
+            try {
+                port = Integer.parseInt(destinationFields[1]);
+            }
+            catch (NumberFormatException e) {
+                port = -1;
+            }
+
+            // a bad destination is skipped, instead of disabling the whole output module
+            if ((port < 0) || (port > 65535)) {
+                logger.error("Invalid Graphite destination port. Destination=\"" + unparsedDestination + "\"");
+                continue;
+            }
+
+            String instance = ((destinationFields.length == 3) && !destinationFields[2].isEmpty()) ? destinationFields[2] : null;
+            destinations.add(new Destination(destinationFields[0], port, instance));
+        }
+
+        return destinations;
+    }
+
+    /*
+    Returns the destinations that a metric path is sent to (the first destination is the metric path's 'primary' destination).
+    */
+    public List<Destination> getDestinations(String metricPath) {
+        return consistentHashRing_.getNodes(metricPath, replicationFactor_);
+    }
+
+    public boolean isOutputEnabled() {
+        return isOutputEnabled_;
+    }
+
+    public List<Destination> getDestinations() {
+        return destinations_;
+    }
+
+    public int getReplicationFactor() {
+        return replicationFactor_;
+    }
+
+    public int getNumSendRetryAttempts() {
+        return numSendRetryAttempts_;
+    }
+
+    public int getMaxMetricsPerMessage() {
+        return maxMetricsPerMessage_;
+    }
+
+    public boolean isSanitizeMetrics() {
+        return sanitizeMetrics_;
+    }
+
+    public boolean isSubstituteCharacters() {
+        return substituteCharacters_;
+    }
+
+    public String getUniqueId() {
+        return uniqueId_;
+    }
+
+    /*
+    Every destination is its own output module (with its own queue, connections, & spool). Ex -- "Graphite-Sharded-1-carbon1:2003:a"
+    The instance is part of the id, so carbon instances that share a host & port (behind a relay) don't share an output module.
+    */
+    public String getUniqueId(Destination destination) {
+        return uniqueId_ + "-" + destination.toString();
+    }
+
+    /*
+    A single carbon destination. Destinations are compared by identity, since each one is a distinct node on the ring.
+    */
+    public static class Destination {
+
+        private final String host__;
+        private final int port__;
+        private final String instance__;
+
+        public Destination(String host, int port, String instance) {
+            this.host__ = host;
+            this.port__ = port;
+            this.instance__ = instance;
+        }
+
+        public String getHost() {
+            return host__;
+        }
+
+        public int getPort() {
+            return port__;
+        }
+
+        public String getInstance() {
+            return instance__;
+        }
+
+        @Override
+        public String toString() {
+            return host__ + ":" + port__ + ((instance__ == null) ? "" : (":" + instance__));
+        }
+
+    }
+
+}
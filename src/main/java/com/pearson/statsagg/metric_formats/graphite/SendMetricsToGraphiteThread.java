@@ -1,8 +1,17 @@
 package com.pearson.statsagg.metric_formats.graphite;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.pearson.statsagg.metric_formats.OutputModuleSpool;
+import com.pearson.statsagg.metric_formats.RenderedMetrics;
 import com.pearson.statsagg.metric_formats.SendMetricsToOutputModuleThread;
+import com.pearson.statsagg.network.tcp.TcpOutputClient;
+import com.pearson.statsagg.utilities.StackTrace;
+import io.netty.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import com.pearson.statsagg.utilities.TcpClient;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,25 +22,28 @@ public class SendMetricsToGraphiteThread extends SendMetricsToOutputModuleThread
     
     private static final Logger logger = LoggerFactory.getLogger(SendMetricsToGraphiteThread.class.getName());
     
-    private final List<? extends GraphiteMetricFormat> graphiteMetrics_;
-    private final boolean sanitizeMetrics_;
-    private final boolean substituteCharacters_;
+    private final List<Supplier<RenderedMetrics>> renderedGraphiteMetrics_;
+    private final TcpOutputClient tcpOutputClient_;
     private final String graphiteHost_;
     private final int graphitePort_;
-    private final int connectTimeoutInMs_;
     private final int numSendRetries_;
     private final int maxMetricsPerMessage_;
     
-    public SendMetricsToGraphiteThread(List<? extends GraphiteMetricFormat> graphiteMetrics, boolean sanitizeMetrics, boolean substituteCharacters,
-            String graphiteHost, int graphitePort, int connectTimeoutInMs, int numSendRetries, int maxMetricsPerMessage, String threadId) {
-        this.graphiteMetrics_ = graphiteMetrics;
-        this.sanitizeMetrics_ = sanitizeMetrics;
-        this.substituteCharacters_ = substituteCharacters;
-        this.graphiteHost_ = graphiteHost;
-        this.graphitePort_ = graphitePort;
-        this.connectTimeoutInMs_ = connectTimeoutInMs;
+    private boolean isEndpointDown_ = false;
+    
+    /* 
+    'renderedGraphiteMetrics' are the metrics, already rendered in the output module's graphite format (see renderLazily). 
+    Output modules with the same graphite format (sanitize & substitute settings) can share the same rendered metrics.
+    */
+    public SendMetricsToGraphiteThread(List<Supplier<RenderedMetrics>> renderedGraphiteMetrics,
+            TcpOutputClient tcpOutputClient, OutputModuleSpool outputModuleSpool, int numSendRetries, int maxMetricsPerMessage, String threadId) {
+        this.renderedGraphiteMetrics_ = renderedGraphiteMetrics;
+        this.tcpOutputClient_ = tcpOutputClient;
+        this.graphiteHost_ = (tcpOutputClient == null) ? null : tcpOutputClient.getHost();
+        this.graphitePort_ = (tcpOutputClient == null) ? -1 : tcpOutputClient.getPort();
         this.numSendRetries_ = numSendRetries;
         this.maxMetricsPerMessage_ = maxMetricsPerMessage;
+        this.outputModuleSpool_ = outputModuleSpool;
         this.threadId_ = threadId;
         
         this.outputEndpoint_ = graphiteHost_ + ":" + graphitePort_;
@@ -45,16 +57,23 @@ public class SendMetricsToGraphiteThread extends SendMetricsToOutputModuleThread
             return;
         }
         
-        if ((graphiteMetrics_ == null) || graphiteMetrics_.isEmpty()) return;
+        if ((renderedGraphiteMetrics_ == null) || renderedGraphiteMetrics_.isEmpty()) return;
         
         long sendToGraphiteTimeStart = System.currentTimeMillis();
 
         boolean isSendSuccess = sendMetricsToGraphite();
+        
+        // graphite is accepting metrics, so catch up on the metrics that were spooled while it wasn't
+        int numReplayedMessages = isSendSuccess ? replaySpool(message -> tcpOutputClient_.write(message), tcpOutputClient_.getMaxWriteTimeInMs()) : 0;
 
         long sendToGraphiteTimeElasped = System.currentTimeMillis() - sendToGraphiteTimeStart;
 
         String outputString = "ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + "\"" +
-                            ", SendToGraphiteSuccess=" + isSendSuccess + ", SendToGraphiteTime=" + sendToGraphiteTimeElasped;
+                            ", SendToGraphiteSuccess=" + isSendSuccess + ", SendToGraphiteTime=" + sendToGraphiteTimeElasped +
+                            ((tcpOutputClient_ == null) ? "" : (", BytesInFlight=" + tcpOutputClient_.getBytesInFlight() + 
+                                    ", LastWriteLatency=" + tcpOutputClient_.getLastWriteLatencyInMs())) +
+                            ((outputModuleSpool_ == null) ? "" : (", NumSpooledMessages=" + numSpooledMessages_ + ", NumReplayedMessages=" + numReplayedMessages + 
+                                    ", SpoolPendingMessages=" + outputModuleSpool_.getPendingMessageCount()));
 
         logger.info(outputString);
         
@@ -72,89 +91,159 @@ public class SendMetricsToGraphiteThread extends SendMetricsToOutputModuleThread
         return isFinished_;
     }
     
-    private boolean sendMetricsToGraphite() {
+    @Override
+    public SendMetricsToOutputModuleThread merge(SendMetricsToOutputModuleThread other) {
         
-        if ((graphiteMetrics_ == null) || graphiteMetrics_.isEmpty() || (graphiteHost_ == null) || (graphiteHost_.isEmpty()) || 
-                (graphitePort_ < 0) || (graphitePort_ > 65535) || (numSendRetries_ < 0) || isShuttingDown_)  {
-            return false;
+        if ((other == null) || (other.getClass() != SendMetricsToGraphiteThread.class)) {
+            return null;
         }
         
-        boolean isSendAllSuccess = true;
+        SendMetricsToGraphiteThread otherGraphiteThread = (SendMetricsToGraphiteThread) other;
         
-        // connect to graphite
-        TcpClient tcpClient = new TcpClient(graphiteHost_, graphitePort_, true, connectTimeoutInMs_);
-        int retryCounter = 0;
-        while (!tcpClient.isConnected() && (retryCounter < numSendRetries_) && !isShuttingDown_) {
-            tcpClient.reset();
-            retryCounter++;
+        if ((tcpOutputClient_ != otherGraphiteThread.tcpOutputClient_) || (outputModuleSpool_ != otherGraphiteThread.outputModuleSpool_) ||
+                (numSendRetries_ != otherGraphiteThread.numSendRetries_) || (maxMetricsPerMessage_ != otherGraphiteThread.maxMetricsPerMessage_)) {
+            return null;
         }
         
-        // if connecting to graphite failed, give up
-        if (!tcpClient.isConnected()) {
-            logger.error("Error creating TCP connection to Graphite. Endpoint=\"" + outputEndpoint_ + "\"");
-            tcpClient.close();
+        List<Supplier<RenderedMetrics>> renderedGraphiteMetrics = new ArrayList<>();
+        if (renderedGraphiteMetrics_ != null) renderedGraphiteMetrics.addAll(renderedGraphiteMetrics_);
+        if (otherGraphiteThread.renderedGraphiteMetrics_ != null) renderedGraphiteMetrics.addAll(otherGraphiteThread.renderedGraphiteMetrics_);
+        
+        return new SendMetricsToGraphiteThread(renderedGraphiteMetrics, tcpOutputClient_, outputModuleSpool_, numSendRetries_, maxMetricsPerMessage_, threadId_);
+    }
+    
+    @Override
+    public boolean spool() {
+        
+        if (outputModuleSpool_ == null) {
             return false;
         }
         
-        // build multi-metric messages & send to graphite
-        int i = 0;
-        StringBuilder multiMetricMessage = new StringBuilder();
-        for (GraphiteMetricFormat graphiteMetric : graphiteMetrics_) {
-            if (isShuttingDown_) {
-                isSendAllSuccess = false;
-                continue;
-            }
+        isEndpointDown_ = true;
+        sendMetricsToGraphite();
+        
+        logger.info("ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + "\", NumSpooledMessages=" + numSpooledMessages_);
+        
+        return true;
+    }
+    
+    private boolean sendMetricsToGraphite() {
+        
+        if ((renderedGraphiteMetrics_ == null) || renderedGraphiteMetrics_.isEmpty() || (tcpOutputClient_ == null) || (graphiteHost_ == null) || (graphiteHost_.isEmpty()) || 
+                (graphitePort_ < 0) || (graphitePort_ > 65535) || (numSendRetries_ < 0) || isShuttingDown_)  {
+            return false;
+        }
+        
+        boolean isSendAllSuccess = true;
+        int maxMetricsPerMessage = (maxMetricsPerMessage_ > 0) ? maxMetricsPerMessage_ : Integer.MAX_VALUE;
+        
+        // hand multi-metric messages (ranges of the rendered metrics) to the output module's client. the client writes them to graphite in the background.
+        for (Supplier<RenderedMetrics> renderedGraphiteMetricsSupplier : renderedGraphiteMetrics_) {
+            RenderedMetrics renderedGraphiteMetrics = renderedGraphiteMetricsSupplier.get();
             
-            if (i == maxMetricsPerMessage_) {     
-                String graphiteMessage = multiMetricMessage.toString();
-                if (!graphiteMessage.isEmpty()) {   
-                    boolean isSendSuccess = sendGraphiteMessage(tcpClient, numSendRetries_, multiMetricMessage.toString());
-                    if (!isSendSuccess) isSendAllSuccess = false;
+            for (int i = 0; i < renderedGraphiteMetrics.getNumMetrics(); i += maxMetricsPerMessage) {
+                if (isShuttingDown_ || (isEndpointDown_ && (outputModuleSpool_ == null))) {
+                    return false;
                 }
-
-                multiMetricMessage = new StringBuilder();
-                i = 0;
-            }
-
-            multiMetricMessage.append(graphiteMetric.getGraphiteFormatString(sanitizeMetrics_, substituteCharacters_)).append("\n");
-            i++;
-        }
-
-        String finalGraphiteMessage = multiMetricMessage.toString();
-        if (!finalGraphiteMessage.isEmpty()) {   
-            if (!isShuttingDown_) {
-                boolean isSendSuccess = sendGraphiteMessage(tcpClient, numSendRetries_, finalGraphiteMessage);
+                
+                int toIndex = (int) Math.min((long) i + maxMetricsPerMessage, renderedGraphiteMetrics.getNumMetrics());
+                boolean isSendSuccess = sendGraphiteMessage(renderedGraphiteMetrics, i, toIndex);
                 if (!isSendSuccess) isSendAllSuccess = false;
             }
-            else {
-                isSendAllSuccess = false;
-            }
-        }     
-     
-        // disconnect from graphite
-        tcpClient.close();
+        }
         
-        return isSendAllSuccess;
+        // the messages are written in the background. wait for them to be written, & re-send (or spool) the ones that failed.
+        boolean isWriteAllSuccess = awaitPendingWrites(tcpOutputClient_.getMaxWriteTimeInMs(), numSendRetries_, 
+                failedWrite -> writeGraphiteMessage(failedWrite.getRenderedMetrics(), failedWrite.getFromIndex(), failedWrite.getToIndex()));
+        
+        return isSendAllSuccess && isWriteAllSuccess;
     }
+    
+    /*
+    Hands the message to the output module's client (see awaitPendingWrites). If the message isn't sent, it goes to the output module's spool (if it has one).
+    */
+    private boolean sendGraphiteMessage(RenderedMetrics renderedGraphiteMetrics, int fromIndex, int toIndex) {
         
-    private boolean sendGraphiteMessage(TcpClient tcpClient, int numSendRetries, String graphiteMessage) {
+        boolean isSendSuccess = writeGraphiteMessage(renderedGraphiteMetrics, fromIndex, toIndex);
+        if (!isSendSuccess) spoolMessage(renderedGraphiteMetrics.getString(fromIndex, toIndex));
         
-        boolean isSendSuccess = true;
+        return isSendSuccess;
+    }
+    
+    /*
+    Hands the message to the output module's client. If the client rejects the message (no connection, or graphite isn't keeping up), the write is retried.
+    Once a message can't be written, the rest of the flush's messages aren't attempted. Doesn't spool the message -- that's left to the caller.
+    */
+    private boolean writeGraphiteMessage(RenderedMetrics renderedGraphiteMetrics, int fromIndex, int toIndex) {
         
-        if (tcpClient.isConnected()) {
-            boolean isSendSucess = tcpClient.send(graphiteMessage, numSendRetries, false, true);
-
-            if (!isSendSucess) {
-                logger.error("Error sending a message to Graphite. Endpoint=\"" + outputEndpoint_ + "\"");
-                isSendSuccess = false;
+        for (int i = 0; (i <= numSendRetries_) && !isShuttingDown_ && !isEndpointDown_; i++) {
+            Future<Void> writeFuture = tcpOutputClient_.write(renderedGraphiteMetrics.getByteBuf(fromIndex, toIndex));
+            
+            if (writeFuture != null) {
+                addPendingWrite(renderedGraphiteMetrics, fromIndex, toIndex, writeFuture);
+                return true;
             }
         }
-        else {
-            logger.error("Error creating TCP connection to Graphite. Endpoint=\"" + outputEndpoint_ + "\"");
-            isSendSuccess = false;
+        
+        if (!isEndpointDown_) {
+            logger.error("Error sending a message to Graphite. Endpoint=\"" + outputEndpoint_ + "\", BytesInFlight=" + tcpOutputClient_.getBytesInFlight());
+            isEndpointDown_ = true;
         }
         
-        return isSendSuccess;
+        return false;
+    }
+    
+    /*
+    Returns a supplier that renders the metrics (one graphite line per metric) the first time that it is called. 
+    */
+    public static Supplier<RenderedMetrics> renderLazily(List<? extends GraphiteMetricFormat> graphiteMetrics, boolean sanitizeMetrics, boolean substituteCharacters) {
+        
+        return RenderedMetrics.lazy(graphiteMetrics, (GraphiteMetricFormat graphiteMetric) -> {
+            String graphiteFormatString = graphiteMetric.getGraphiteFormatString(sanitizeMetrics, substituteCharacters);
+            return (graphiteFormatString == null) ? null : graphiteFormatString + "\n";
+        });
+    }
+    
+    /*
+    Returns a supplier that, the first time that it is called, renders the metrics (one graphite line per metric) & splits them up by destination.
+    Each metric goes to every destination that its (rendered) metric path hashes to on the sharded output module's consistent-hash ring.
+    A destination that doesn't get any metrics isn't in the returned map.
+    */
+    public static Supplier<Map<GraphiteShardedOutputModule.Destination,RenderedMetrics>> renderShardedLazily(List<? extends GraphiteMetricFormat> graphiteMetrics, 
+            GraphiteShardedOutputModule graphiteShardedOutputModule) {
+        
+        return Suppliers.memoize(() -> {
+            Map<GraphiteShardedOutputModule.Destination,List<String>> graphiteLinesByDestination = new HashMap<>();
+            
+            if (graphiteMetrics != null) {
+                for (GraphiteMetricFormat graphiteMetric : graphiteMetrics) {
+                    try {
+                        String graphiteFormatString = graphiteMetric.getGraphiteFormatString(graphiteShardedOutputModule.isSanitizeMetrics(), graphiteShardedOutputModule.isSubstituteCharacters());
+                        if (graphiteFormatString == null) continue;
+
+                        // carbon hashes the metric path (the 1st field of a graphite line)
+                        int metricPathEndIndex = graphiteFormatString.indexOf(' ');
+                        String metricPath = (metricPathEndIndex == -1) ? graphiteFormatString : graphiteFormatString.substring(0, metricPathEndIndex);
+                        String graphiteLine = graphiteFormatString + "\n";
+
+                        for (GraphiteShardedOutputModule.Destination destination : graphiteShardedOutputModule.getDestinations(metricPath)) {
+                            graphiteLinesByDestination.computeIfAbsent(destination, key -> new ArrayList<>()).add(graphiteLine);
+                        }
+                    }
+                    catch (Exception e) {
+                        logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+                    }
+                }
+            }
+            
+            Map<GraphiteShardedOutputModule.Destination,RenderedMetrics> renderedGraphiteMetricsByDestination = new HashMap<>();
+            
+            for (Map.Entry<GraphiteShardedOutputModule.Destination,List<String>> graphiteLines : graphiteLinesByDestination.entrySet()) {
+                renderedGraphiteMetricsByDestination.put(graphiteLines.getKey(), RenderedMetrics.render(graphiteLines.getValue(), (String graphiteLine) -> graphiteLine));
+            }
+            
+            return renderedGraphiteMetricsByDestination;
+        });
     }
     
-}
\ No newline at end of file
+}
@@ -4,7 +4,12 @@ package com.pearson.statsagg.metric_formats.influxdb;
  * @author Jeffrey Schmidt
  */
 public interface InfluxdbMetricFormat_v2 {
-    
-    public String getInfluxdbV2LineFormatString();
-    
+
+    /*
+    Returns the metric in the InfluxDB line-protocol, with the timestamp in the specified time precision.
+    Multiple lines are separated by a newline, but there is no newline at the end of the last line.
+    Returns null if the metric can't be represented in the line-protocol.
+    */
+    public String getInfluxdbV2LineFormatString(byte timePrecisionCode);
+
 }
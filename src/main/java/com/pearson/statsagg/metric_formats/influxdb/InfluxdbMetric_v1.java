@@ -21,7 +21,7 @@ import org.slf4j.LoggerFactory;
  * 
  * This object is intended to be compatible with the InfluxDB format used in InfluxDB v0.6x, v0.7x, v0.8x
  */
-public class InfluxdbMetric_v1 implements InfluxdbMetricFormat_v1 {
+public class InfluxdbMetric_v1 implements InfluxdbMetricFormat_v1, InfluxdbMetricFormat_v2 {
     
     private static final Logger logger = LoggerFactory.getLogger(InfluxdbMetric_v1.class.getName());
 
@@ -318,6 +318,68 @@ public class InfluxdbMetric_v1 implements InfluxdbMetricFormat_v1 {
         return influxdbJson.toString();
     }
     
+    /*
+    Every point becomes one line. String columns become tags, & numeric/boolean columns become fields. 
+    If a point doesn't have any numeric/boolean columns, then its string columns become (string) fields instead (a line must have at least one field).
+    The 'time' column is used as the line's timestamp (if there is no 'time' column, the time that StatsAgg received the metric is used).
+    */
+    @Override
+    public String getInfluxdbV2LineFormatString(byte timePrecisionCode) {
+
+        if ((name_ == null) || (columns_ == null) || (points_ == null)) return null;
+
+        String measurement = InfluxdbMetric_v2.getLineProtocolEscapedMeasurement((namePrefix_ == null) ? name_ : (namePrefix_ + name_));
+        StringBuilder influxdbLines = new StringBuilder();
+        
+        for (ArrayList<Object> point : points_) {
+            if ((point == null) || (point.size() != columns_.size())) continue;
+
+            StringBuilder tags = new StringBuilder(), numericFields = new StringBuilder(), stringFields = new StringBuilder();
+            
+            for (int i = 0; i < columns_.size(); i++) {
+                String column = columns_.get(i);
+                Object pointObject = point.get(i);
+                if ((column == null) || column.isEmpty() || column.equals("time") || column.equals("sequence_number") || (pointObject == null)) continue;
+
+                String escapedColumn = InfluxdbMetric_v2.getLineProtocolEscapedKey(column);
+                
+                if (pointObject instanceof String) {
+                    String pointString = (String) pointObject;
+                    
+                    if (!pointString.isEmpty()) tags.append(",").append(escapedColumn).append("=").append(InfluxdbMetric_v2.getLineProtocolEscapedKey(pointString));
+                    if (stringFields.length() > 0) stringFields.append(",");
+                    stringFields.append(escapedColumn).append("=\"").append(InfluxdbMetric_v2.getLineProtocolEscapedStringFieldValue(pointString)).append("\"");
+                }
+                else if (JsonUtils.isObjectNumberic(pointObject, true)) {
+                    // the line-protocol can't represent NaN or infinity
+                    if ((pointObject instanceof Double) && (((Double) pointObject).isNaN() || ((Double) pointObject).isInfinite())) continue;
+                    if ((pointObject instanceof Float) && (((Float) pointObject).isNaN() || ((Float) pointObject).isInfinite())) continue;
+                    
+                    if (numericFields.length() > 0) numericFields.append(",");
+                    numericFields.append(escapedColumn).append("=").append(JsonUtils.convertNumericObjectToString(pointObject, false));
+                }
+            }
+            
+            if ((numericFields.length() == 0) && (stringFields.length() == 0)) continue;
+
+            long time = getTimeFromPoint(point);
+            long timestampInMilliseconds;
+            if ((time >= 0) && (timePrecisionCode_ != Common.TIMESTAMP_PRECISION_UNKNOWN)) timestampInMilliseconds = getMetricTimestampInMilliseconds(timePrecisionCode_, time);
+            else if (time >= 0) timestampInMilliseconds = time;
+            else timestampInMilliseconds = metricsReceivedTimestampInMilliseconds_;
+            
+            if (influxdbLines.length() > 0) influxdbLines.append("\n");
+            influxdbLines.append(measurement);
+            
+            if (numericFields.length() > 0) influxdbLines.append(tags).append(" ").append(numericFields);
+            else influxdbLines.append(" ").append(stringFields);
+
+            influxdbLines.append(" ").append(InfluxdbMetric_v2.getTimestampInTimePrecision(timePrecisionCode, timestampInMilliseconds));
+        }
+        
+        return (influxdbLines.length() == 0) ? null : influxdbLines.toString();
+    }
+    
     public static byte getTimePrecisionCodeFromTimePrecisionString(String timePrecisionString) {
         
         if (timePrecisionString == null) {
@@ -129,7 +129,76 @@ public class InfluxdbMetric_v2 {
         else if (timePrecisionCode == Common.TIMESTAMP_PRECISION_HOURS) return (time * 3600000000000l);
         else return time;
     }
-    
+
+    /*
+    Converts a millisecond timestamp to a timestamp in the specified time precision (ex -- for the timestamp at the end of a line-protocol line)
+    */
+    public static long getTimestampInTimePrecision(byte timePrecisionCode, long timestampInMilliseconds) {
+        if (timePrecisionCode == Common.TIMESTAMP_PRECISION_NANOSECONDS) return (timestampInMilliseconds * 1000000);
+        else if (timePrecisionCode == Common.TIMESTAMP_PRECISION_MICROSECONDS) return (timestampInMilliseconds * 1000);
+        else if (timePrecisionCode == Common.TIMESTAMP_PRECISION_MILLISECONDS) return timestampInMilliseconds;
+        else if (timePrecisionCode == Common.TIMESTAMP_PRECISION_SECONDS) return (timestampInMilliseconds / 1000);
+        else if (timePrecisionCode == Common.TIMESTAMP_PRECISION_MINUTES) return (timestampInMilliseconds / 60000);
+        else if (timePrecisionCode == Common.TIMESTAMP_PRECISION_HOURS) return (timestampInMilliseconds / 3600000);
+        else return timestampInMilliseconds;
+    }
+
+    /*
+    Escapes a line-protocol measurement name. Commas, spaces, & backslashes are escaped with a backslash.
+    Newlines can't be escaped in the line-protocol, so they are turned into (escaped) spaces.
+    */
+    public static String getLineProtocolEscapedMeasurement(String measurement) {
+        return getLineProtocolEscapedString(measurement, false);
+    }
+
+    /*
+    Escapes a line-protocol tag key, tag value, or field key. Commas, equals signs, spaces, & backslashes are escaped with a backslash.
+    Newlines can't be escaped in the line-protocol, so they are turned into (escaped) spaces.
+    */
+    public static String getLineProtocolEscapedKey(String key) {
+        return getLineProtocolEscapedString(key, true);
+    }
+
+    private static String getLineProtocolEscapedString(String unescapedString, boolean escapeEqualsSign) {
+
+        if (unescapedString == null) {
+            return null;
+        }
+
+        StringBuilder escapedString = null;
+
+        for (int i = 0; i < unescapedString.length(); i++) {
+            char character = unescapedString.charAt(i);
+            boolean isNewline = (character == '\n') || (character == '\r');
+            boolean isEscapedCharacter = isNewline || (character == ',') || (character == ' ') || (character == '\\') || (escapeEqualsSign && (character == '='));
+
+            // most strings don't need escaping, so only copy the string once an escaped character is found
+            if (isEscapedCharacter && (escapedString == null)) escapedString = new StringBuilder(unescapedString.length() + 8).append(unescapedString, 0, i);
+            if (escapedString == null) continue;
+
+            if (isEscapedCharacter) escapedString.append('\\');
+            escapedString.append(isNewline ? ' ' : character);
+        }
+
+        return (escapedString == null) ? unescapedString : escapedString.toString();
+    }
+
+    /*
+    Escapes a line-protocol string field value (the value still needs to be wrapped in double-quotes). Double-quotes & backslashes are escaped with a backslash.
+    */
+    public static String getLineProtocolEscapedStringFieldValue(String stringFieldValue) {
+
+        if (stringFieldValue == null) {
+            return null;
+        }
+
+        if ((stringFieldValue.indexOf('"') == -1) && (stringFieldValue.indexOf('\\') == -1)) {
+            return stringFieldValue;
+        }
+
+        return stringFieldValue.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
     public static String getInfluxdbJson(InfluxdbMetricFormat_v1 influxdbMetric) {
         
         if (influxdbMetric == null) return null;
@@ -5,8 +5,13 @@ import com.pearson.statsagg.metric_formats.graphite.GraphiteMetric;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteMetricFormat;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetric;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetricFormat;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetric;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetricFormat;
+import com.pearson.statsagg.utilities.KeyValue;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,7 +21,7 @@ import org.slf4j.LoggerFactory;
  * 
  * This object is intended to be compatible with the InfluxDB format used in InfluxDB v0.6x, v0.7x, v0.8x
  */
-public class InfluxdbStandardizedMetric implements GraphiteMetricFormat, OpenTsdbMetricFormat, GenericMetricFormat {
+public class InfluxdbStandardizedMetric implements GraphiteMetricFormat, OpenTsdbMetricFormat, GenericMetricFormat, PrometheusMetricFormat {
     
     private static final Logger logger = LoggerFactory.getLogger(InfluxdbStandardizedMetric.class.getName());
 
@@ -194,6 +199,36 @@ public class InfluxdbStandardizedMetric implements GraphiteMetricFormat, OpenTsd
         return openTsdbTagsJson.toString();
     }
    
+    @Override
+    public String getPrometheusMetricName() {
+        StringBuilder metricName = new StringBuilder();
+        
+        if (includeDatabaseInNonNativeOuput_ && (metricDatabase_ != null)) metricName.append(metricDatabase_).append(".");
+        if (metricPrefix_ != null) metricName.append(metricPrefix_);
+        if (metricName_ != null) metricName.append(metricName_);
+        if (metricValueName_ != null) metricName.append(".").append(metricValueName_);
+        
+        return PrometheusMetric.getPrometheusSanitizedMetricName(metricName.toString());
+    }
+    
+    @Override
+    public List<KeyValue> getPrometheusLabels() {
+        
+        if ((columns_ == null) || (point_ == null) || (columns_.size() != point_.size())) {
+            return Collections.emptyList();
+        }
+        
+        // like the opentsdb output, string columns are the labels
+        List<KeyValue> prometheusLabels = new ArrayList<>();
+        
+        for (int i = 0; i < columns_.size(); i++) {
+            Object pointColumnValue = point_.get(i);
+            if (pointColumnValue instanceof String) PrometheusMetric.addPrometheusLabel(prometheusLabels, columns_.get(i), (String) pointColumnValue);
+        }
+        
+        return prometheusLabels;
+    }
+    
     public long getHashKey() {
         return hashKey_;
     }
@@ -0,0 +1,66 @@
+package com.pearson.statsagg.metric_formats.influxdb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class InfluxdbV2HttpOutputModule {
+    
+    private static final Logger logger = LoggerFactory.getLogger(InfluxdbV2HttpOutputModule.class.getName());
+    
+    private final boolean isOutputEnabled_;
+    private final String url_;
+    private final int numSendRetryAttempts_;
+    private final int maxMetricsPerMessage_;
+    private final byte timePrecisionCode_;
+    private final boolean gzipHttpBody_;
+    private final String retentionPolicy_;
+    private final String uniqueId_;
+    
+    public InfluxdbV2HttpOutputModule(boolean isOutputEnabled, String url, int numSendRetryAttempts, int maxMetricsPerMessage, 
+            byte timePrecisionCode, boolean gzipHttpBody, String retentionPolicy, String uniqueId) {
+        this.isOutputEnabled_ = isOutputEnabled;
+        this.url_ = url;
+        this.numSendRetryAttempts_ = numSendRetryAttempts;
+        this.maxMetricsPerMessage_ = maxMetricsPerMessage;
+        this.timePrecisionCode_ = timePrecisionCode;
+        this.gzipHttpBody_ = gzipHttpBody;
+        this.retentionPolicy_ = retentionPolicy;
+        this.uniqueId_ = uniqueId;
+    }
+
+    public boolean isOutputEnabled() {
+        return isOutputEnabled_;
+    }
+
+    public String getUrl() {
+        return url_;
+    }
+
+    public int getNumSendRetryAttempts() {
+        return numSendRetryAttempts_;
+    }
+
+    public int getMaxMetricsPerMessage() {
+        return maxMetricsPerMessage_;
+    }
+
+    public byte getTimePrecisionCode() {
+        return timePrecisionCode_;
+    }
+
+    public boolean isGzipHttpBody() {
+        return gzipHttpBody_;
+    }
+
+    public String getRetentionPolicy() {
+        return retentionPolicy_;
+    }
+    
+    public String getUniqueId() {
+        return uniqueId_;
+    }
+    
+}
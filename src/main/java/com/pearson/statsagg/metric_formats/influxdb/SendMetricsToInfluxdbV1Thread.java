@@ -3,11 +3,14 @@ package com.pearson.statsagg.metric_formats.influxdb;
 import com.pearson.statsagg.utilities.HttpUtils;
 import java.util.List;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.google.common.collect.Lists;
+import com.google.common.base.Supplier;
+import com.pearson.statsagg.metric_formats.RenderedMetrics;
 import com.pearson.statsagg.metric_formats.SendMetricsToOutputModuleThread;
 import com.pearson.statsagg.utilities.HttpRequest;
 
@@ -19,7 +22,7 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
     private static final Logger logger = LoggerFactory.getLogger(SendMetricsToInfluxdbV1Thread.class.getName());
         
     private final List<InfluxdbMetric_v1> nativeInfluxdbMetrics_;
-    private final List<? extends InfluxdbMetricFormat_v1> influxdbMetrics_;
+    private final List<Supplier<RenderedMetrics>> renderedInfluxdbMetrics_;
     private final URL influxdbBaseUrl_;
     private final String defaultDatabaseHttpAuthValue_;
     private final String defaultDatabaseName_;
@@ -27,6 +30,7 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
     private final int readTimeoutInMs_;
     private final int numSendRetries_;
     private final int maxMetricsPerMessage_;
+    private final boolean gzipHttpBody_;
     private final boolean isNativeInfluxdbMetrics;
     
     private HttpRequest currentHttpRequest_ = null;
@@ -34,12 +38,14 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
     /* 
     When using this constructor, running this thread will output to the 'default' InfluxDB database name, username, and password (specified in the application configuration)
     Generally speaking, this is intended to be used for Graphite, StatsD, and OpenTSDB formatted metrics
+    'renderedInfluxdbMetrics' are the metrics, already rendered as influxdb json objects (see renderJsonLazily), & can be shared by several output modules.
+    If 'gzipHttpBody' is true, then the json is gzip compressed as it is streamed to influxdb.
     */
-    public SendMetricsToInfluxdbV1Thread(List<? extends InfluxdbMetricFormat_v1> influxdbMetrics, URL influxdbBaseUrl, 
+    public SendMetricsToInfluxdbV1Thread(List<Supplier<RenderedMetrics>> renderedInfluxdbMetrics, URL influxdbBaseUrl, 
             String defaultDatabaseName, String defaultDatabaseHttpAuthValue, 
-            int connectTimeoutInMs, int readTimeoutInMs, int numSendRetries, int maxMetricsPerMessage, String threadId) {
+            int connectTimeoutInMs, int readTimeoutInMs, int numSendRetries, int maxMetricsPerMessage, boolean gzipHttpBody, String threadId) {
         this.nativeInfluxdbMetrics_ = null;
-        this.influxdbMetrics_ = influxdbMetrics;
+        this.renderedInfluxdbMetrics_ = renderedInfluxdbMetrics;
         this.influxdbBaseUrl_ = influxdbBaseUrl;
         this.defaultDatabaseName_ = defaultDatabaseName;
         this.defaultDatabaseHttpAuthValue_ = defaultDatabaseHttpAuthValue;
@@ -47,6 +53,7 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
         this.readTimeoutInMs_ = readTimeoutInMs;
         this.numSendRetries_ = numSendRetries;
         this.maxMetricsPerMessage_ = maxMetricsPerMessage;
+        this.gzipHttpBody_ = gzipHttpBody;
         this.isNativeInfluxdbMetrics = false;
         this.threadId_ = threadId;
         
@@ -60,7 +67,7 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
     public SendMetricsToInfluxdbV1Thread(List<InfluxdbMetric_v1> influxdbMetrics, URL influxdbBaseUrl, 
             int connectTimeoutInMs, int readTimeoutInMs, int numSendRetries, String threadId) {
         this.nativeInfluxdbMetrics_ = influxdbMetrics;
-        this.influxdbMetrics_ = null;
+        this.renderedInfluxdbMetrics_ = null;
         this.influxdbBaseUrl_ = influxdbBaseUrl;
         this.defaultDatabaseName_ = null;
         this.defaultDatabaseHttpAuthValue_ = null;
@@ -68,6 +75,7 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
         this.readTimeoutInMs_ = readTimeoutInMs;
         this.numSendRetries_ = numSendRetries;
         this.maxMetricsPerMessage_ = -1;
+        this.gzipHttpBody_ = false;
         this.isNativeInfluxdbMetrics = true;
         this.threadId_ = threadId;
         
@@ -83,7 +91,7 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
         }
         
         if (isNativeInfluxdbMetrics && ((nativeInfluxdbMetrics_ == null) || nativeInfluxdbMetrics_.isEmpty())) return;
-        if (!isNativeInfluxdbMetrics && ((influxdbMetrics_ == null) || influxdbMetrics_.isEmpty())) return;
+        if (!isNativeInfluxdbMetrics && ((renderedInfluxdbMetrics_ == null) || renderedInfluxdbMetrics_.isEmpty())) return;
 
         long sendToInfluxdbTimeStart = System.currentTimeMillis();
         boolean isSendSuccess;
@@ -106,6 +114,41 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
         isFinished_ = true;
     }
     
+    @Override
+    public SendMetricsToOutputModuleThread merge(SendMetricsToOutputModuleThread other) {
+        
+        if ((other == null) || (other.getClass() != SendMetricsToInfluxdbV1Thread.class)) {
+            return null;
+        }
+        
+        SendMetricsToInfluxdbV1Thread otherInfluxdbThread = (SendMetricsToInfluxdbV1Thread) other;
+        
+        if ((isNativeInfluxdbMetrics != otherInfluxdbThread.isNativeInfluxdbMetrics) || !Objects.equals(outputEndpoint_, otherInfluxdbThread.outputEndpoint_) ||
+                !Objects.equals(defaultDatabaseName_, otherInfluxdbThread.defaultDatabaseName_) || 
+                !Objects.equals(defaultDatabaseHttpAuthValue_, otherInfluxdbThread.defaultDatabaseHttpAuthValue_) ||
+                (connectTimeoutInMs_ != otherInfluxdbThread.connectTimeoutInMs_) || (readTimeoutInMs_ != otherInfluxdbThread.readTimeoutInMs_) ||
+                (numSendRetries_ != otherInfluxdbThread.numSendRetries_) || (maxMetricsPerMessage_ != otherInfluxdbThread.maxMetricsPerMessage_) ||
+                (gzipHttpBody_ != otherInfluxdbThread.gzipHttpBody_)) {
+            return null;
+        }
+        
+        if (isNativeInfluxdbMetrics) {
+            List<InfluxdbMetric_v1> nativeInfluxdbMetrics = new ArrayList<>();
+            if (nativeInfluxdbMetrics_ != null) nativeInfluxdbMetrics.addAll(nativeInfluxdbMetrics_);
+            if (otherInfluxdbThread.nativeInfluxdbMetrics_ != null) nativeInfluxdbMetrics.addAll(otherInfluxdbThread.nativeInfluxdbMetrics_);
+            
+            return new SendMetricsToInfluxdbV1Thread(nativeInfluxdbMetrics, influxdbBaseUrl_, connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, threadId_);
+        }
+        else {
+            List<Supplier<RenderedMetrics>> renderedInfluxdbMetrics = new ArrayList<>();
+            if (renderedInfluxdbMetrics_ != null) renderedInfluxdbMetrics.addAll(renderedInfluxdbMetrics_);
+            if (otherInfluxdbThread.renderedInfluxdbMetrics_ != null) renderedInfluxdbMetrics.addAll(otherInfluxdbThread.renderedInfluxdbMetrics_);
+            
+            return new SendMetricsToInfluxdbV1Thread(renderedInfluxdbMetrics, influxdbBaseUrl_, defaultDatabaseName_, defaultDatabaseHttpAuthValue_, 
+                    connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, maxMetricsPerMessage_, gzipHttpBody_, threadId_);
+        }
+    }
+    
     @Override
     public void shutdown() {
         logger.warn("ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + "\", Action=ForceShutdown");
@@ -132,7 +175,7 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
     */
     private boolean sendNonNativeMetricsToInfluxdb_HTTP(Map<String,String> influxdbHttpHeaderProperties) {
               
-        if ((influxdbMetrics_ == null) || influxdbMetrics_.isEmpty()) {
+        if ((renderedInfluxdbMetrics_ == null) || renderedInfluxdbMetrics_.isEmpty()) {
             return true;
         } 
         
@@ -141,38 +184,34 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
         } 
         
         boolean isAllSendSuccess = true;
+        String influxdbFullUrl = createInfluxdbUrl(outputEndpoint_, defaultDatabaseName_);
         
-        List influxdbMetricsList = influxdbMetrics_;
-        List<List<? extends InfluxdbMetricFormat_v1>> partitionedList = Lists.partition(influxdbMetricsList, maxMetricsPerMessage_);
-        
-        for (List influxdbStandardizedMetricsPartitionedList : partitionedList) {
-            if (isShuttingDown_) {
-                isAllSendSuccess = false;
-                continue;
-            }
+        for (Supplier<RenderedMetrics> renderedInfluxdbMetricsSupplier : renderedInfluxdbMetrics_) {
+            RenderedMetrics renderedInfluxdbMetrics = renderedInfluxdbMetricsSupplier.get();
             
-            String influxdbMetricJson = InfluxdbMetric_v1.getInfluxdbJson(influxdbStandardizedMetricsPartitionedList);
-            
-            if (influxdbMetricJson != null) {
-                String influxdbFullUrl = createInfluxdbUrl(outputEndpoint_, defaultDatabaseName_);
+            for (int i = 0; i < renderedInfluxdbMetrics.getNumMetrics(); i += maxMetricsPerMessage_) {
+                if (isShuttingDown_) {
+                    return false;
+                }
                 
-                HttpRequest httpRequest = new HttpRequest(influxdbFullUrl, influxdbHttpHeaderProperties, influxdbMetricJson, 
-                        "UTF-8", "POST", connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, true);
+                int fromIndex = i, toIndex = (int) Math.min((long) i + maxMetricsPerMessage_, renderedInfluxdbMetrics.getNumMetrics());
+                
+                // the json is streamed straight from the rendered metrics to influxdb
+                HttpRequest httpRequest = new HttpRequest(influxdbFullUrl, influxdbHttpHeaderProperties, 
+                        outputStream -> renderedInfluxdbMetrics.writeJsonArray(outputStream, fromIndex, toIndex), gzipHttpBody_,
+                        "POST", connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, true);
                 
+                httpRequest.setDiscardResponseBody(true);
                 currentHttpRequest_ = httpRequest;
                 httpRequest.makeRequest();
                 
                 if (httpRequest.didEncounterConnectionError() && httpRequest.didHitRetryAttemptLimit() && !httpRequest.isHttpRequestSuccess()) {
-                    isAllSendSuccess = false;
                     logger.error("Aborting InfluxDB V1 output. Couldn't connect to InfluxDB HTTP endpoint. Endpoint=\"" + outputEndpoint_ + "\"");
-                    break;
+                    return false;
                 }
                 
                 if (!httpRequest.isHttpRequestSuccess()) isAllSendSuccess = false;
             }
-            else {
-                isAllSendSuccess = false;
-            }
         }
         
         return isAllSendSuccess;
@@ -208,6 +247,7 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
                 HttpRequest httpRequest = new HttpRequest(influxdbFullUrl, influxdbHttpHeaderProperties, influxdbMetricJson, 
                         "UTF-8", "POST", connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, true);
                 
+                httpRequest.setDiscardResponseBody(true);
                 currentHttpRequest_ = httpRequest;
                 httpRequest.makeRequest();
                 
@@ -227,6 +267,13 @@ public class SendMetricsToInfluxdbV1Thread extends SendMetricsToOutputModuleThre
         return isAllSendSuccess;
     }
     
+    /*
+    Returns a supplier that renders the non-native metrics (one influxdb json object per metric) the first time that it is called. 
+    */
+    public static Supplier<RenderedMetrics> renderJsonLazily(List<? extends InfluxdbMetricFormat_v1> influxdbMetrics) {
+        return RenderedMetrics.lazy(influxdbMetrics, (InfluxdbMetricFormat_v1 influxdbMetric) -> influxdbMetric.getInfluxdbV1JsonFormatString());
+    }
+    
     /*
     Intended for use with non-native InfluxDB metrics (ex -- Graphite, OpenTSDB, etc)
     */
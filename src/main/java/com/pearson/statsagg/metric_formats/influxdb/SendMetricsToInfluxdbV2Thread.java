@@ -0,0 +1,302 @@
+package com.pearson.statsagg.metric_formats.influxdb;
+
+import com.google.common.base.Supplier;
+import com.pearson.statsagg.metric_formats.RenderedMetrics;
+import com.pearson.statsagg.metric_formats.SendMetricsToOutputModuleThread;
+import com.pearson.statsagg.utilities.HttpRequest;
+import com.pearson.statsagg.utilities.HttpUtils;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes metrics to InfluxDB's '/write' endpoint, using the InfluxDB line-protocol.
+ *
+ * The metrics are grouped by destination database (& credentials). Non-native metrics (StatsD, Graphite, OpenTSDB) all go to the 'default' InfluxDB database.
+ * Native InfluxDB metrics go to the database (with the credentials) that they were originally sent to.
+ * Each database's lines are streamed straight from the (shared) rendering to InfluxDB, in HTTP POSTs of up to 'maxMetricsPerMessage' metrics.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class SendMetricsToInfluxdbV2Thread extends SendMetricsToOutputModuleThread {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendMetricsToInfluxdbV2Thread.class.getName());
+
+    private final List<DatabaseMetrics> databaseMetrics_;
+    private final URL influxdbBaseUrl_;
+    private final String retentionPolicy_;
+    private final byte timePrecisionCode_;
+    private final int connectTimeoutInMs_;
+    private final int readTimeoutInMs_;
+    private final int numSendRetries_;
+    private final int maxMetricsPerMessage_;
+    private final boolean gzipHttpBody_;
+
+    private HttpRequest currentHttpRequest_ = null;
+
+    /*
+    'databaseMetrics' are the metrics (already rendered in the line-protocol, with timestamps in 'timePrecisionCode' precision) for each destination database.
+    The renderings can be shared by several output modules (see getNonNativeDatabaseMetrics & getNativeDatabaseMetrics).
+    If 'retentionPolicy' is null, then the database's default retention policy is used.
+    If 'gzipHttpBody' is true, then the lines are gzip compressed as they are streamed to influxdb.
+    */
+    public SendMetricsToInfluxdbV2Thread(List<DatabaseMetrics> databaseMetrics, URL influxdbBaseUrl, String retentionPolicy, byte timePrecisionCode,
+            int connectTimeoutInMs, int readTimeoutInMs, int numSendRetries, int maxMetricsPerMessage, boolean gzipHttpBody, String threadId) {
+        this.databaseMetrics_ = databaseMetrics;
+        this.influxdbBaseUrl_ = influxdbBaseUrl;
+        this.retentionPolicy_ = retentionPolicy;
+        this.timePrecisionCode_ = timePrecisionCode;
+        this.connectTimeoutInMs_ = connectTimeoutInMs;
+        this.readTimeoutInMs_ = readTimeoutInMs;
+        this.numSendRetries_ = numSendRetries;
+        this.maxMetricsPerMessage_ = maxMetricsPerMessage;
+        this.gzipHttpBody_ = gzipHttpBody;
+        this.threadId_ = threadId;
+
+        if (influxdbBaseUrl_ != null) this.outputEndpoint_ = influxdbBaseUrl_.toExternalForm();
+    }
+
+    @Override
+    public void run() {
+
+        if (isShuttingDown_) {
+            isFinished_ = true;
+            return;
+        }
+
+        if ((databaseMetrics_ == null) || databaseMetrics_.isEmpty()) return;
+
+        long sendToInfluxdbTimeStart = System.currentTimeMillis();
+
+        boolean isSendSuccess = sendMetricsToInfluxdb_HTTP();
+
+        long sendToInfluxdbTimeElasped = System.currentTimeMillis() - sendToInfluxdbTimeStart;
+
+        String outputString = "ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ +
+                            "\", SendToInfluxdbHttpSuccess=" + isSendSuccess + ", SendToInfluxdbTime=" + sendToInfluxdbTimeElasped;
+
+        logger.info(outputString);
+
+        isFinished_ = true;
+    }
+
+    @Override
+    public SendMetricsToOutputModuleThread merge(SendMetricsToOutputModuleThread other) {
+
+        if ((other == null) || (other.getClass() != SendMetricsToInfluxdbV2Thread.class)) {
+            return null;
+        }
+
+        SendMetricsToInfluxdbV2Thread otherInfluxdbThread = (SendMetricsToInfluxdbV2Thread) other;
+
+        if (!Objects.equals(outputEndpoint_, otherInfluxdbThread.outputEndpoint_) || !Objects.equals(retentionPolicy_, otherInfluxdbThread.retentionPolicy_) ||
+                (timePrecisionCode_ != otherInfluxdbThread.timePrecisionCode_) ||
+                (connectTimeoutInMs_ != otherInfluxdbThread.connectTimeoutInMs_) || (readTimeoutInMs_ != otherInfluxdbThread.readTimeoutInMs_) ||
+                (numSendRetries_ != otherInfluxdbThread.numSendRetries_) || (maxMetricsPerMessage_ != otherInfluxdbThread.maxMetricsPerMessage_) ||
+                (gzipHttpBody_ != otherInfluxdbThread.gzipHttpBody_)) {
+            return null;
+        }
+
+        List<DatabaseMetrics> databaseMetrics = new ArrayList<>();
+        if (databaseMetrics_ != null) databaseMetrics.addAll(databaseMetrics_);
+        if (otherInfluxdbThread.databaseMetrics_ != null) databaseMetrics.addAll(otherInfluxdbThread.databaseMetrics_);
+
+        return new SendMetricsToInfluxdbV2Thread(databaseMetrics, influxdbBaseUrl_, retentionPolicy_, timePrecisionCode_,
+                connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, maxMetricsPerMessage_, gzipHttpBody_, threadId_);
+    }
+
+    @Override
+    public void shutdown() {
+        logger.warn("ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + "\", Action=ForceShutdown");
+        isShuttingDown_ = true;
+
+        try {
+            if (currentHttpRequest_ != null) {
+                currentHttpRequest_.setContinueRetrying(false);
+                currentHttpRequest_.closeResources();
+                currentHttpRequest_ = null;
+            }
+        }
+        catch (Exception e) {}
+    }
+
+    @Override
+    public boolean isFinished() {
+        return isFinished_;
+    }
+
+    /*
+    Sends every database's metrics to InfluxDB in larger, multi-line, HTTP POSTs.
+    */
+    private boolean sendMetricsToInfluxdb_HTTP() {
+
+        if ((influxdbBaseUrl_ == null) || (maxMetricsPerMessage_ <= 0) || (numSendRetries_ < 0) || (connectTimeoutInMs_ < 0) || (readTimeoutInMs_ < 0) || isShuttingDown_) {
+            return false;
+        }
+
+        boolean isAllSendSuccess = true;
+
+        for (DatabaseMetrics databaseMetrics : databaseMetrics_) {
+            if ((databaseMetrics == null) || (databaseMetrics.renderedMetrics__ == null)) continue;
+
+            String influxdbFullUrl = createInfluxdbUrl(outputEndpoint_, databaseMetrics, retentionPolicy_, timePrecisionCode_);
+            if (influxdbFullUrl == null) {
+                isAllSendSuccess = false;
+                continue;
+            }
+
+            Map<String,String> influxdbHttpHeaderProperties = getInfluxdbHttpHeaderProperties(databaseMetrics.basicAuth__);
+            RenderedMetrics renderedMetrics = databaseMetrics.renderedMetrics__.get();
+
+            for (int i = 0; i < renderedMetrics.getNumMetrics(); i += maxMetricsPerMessage_) {
+                if (isShuttingDown_) {
+                    return false;
+                }
+
+                int fromIndex = i, toIndex = (int) Math.min((long) i + maxMetricsPerMessage_, renderedMetrics.getNumMetrics());
+
+                // the lines are streamed straight from the rendered metrics to influxdb
+                HttpRequest httpRequest = new HttpRequest(influxdbFullUrl, influxdbHttpHeaderProperties,
+                        outputStream -> renderedMetrics.write(outputStream, fromIndex, toIndex), gzipHttpBody_,
+                        "POST", connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, true);
+
+                httpRequest.setDiscardResponseBody(true);
+                currentHttpRequest_ = httpRequest;
+                httpRequest.makeRequest();
+
+                if (httpRequest.didEncounterConnectionError() && httpRequest.didHitRetryAttemptLimit() && !httpRequest.isHttpRequestSuccess()) {
+                    logger.error("Aborting InfluxDB V2 output. Couldn't connect to InfluxDB HTTP endpoint. Endpoint=\"" + outputEndpoint_ + "\"");
+                    return false;
+                }
+
+                if (!httpRequest.isHttpRequestSuccess()) isAllSendSuccess = false;
+            }
+        }
+
+        return isAllSendSuccess;
+    }
+
+    /*
+    Returns a supplier that renders the metrics (one or more newline-terminated lines per metric) the first time that it is called.
+    */
+    public static Supplier<RenderedMetrics> renderLinesLazily(List<? extends InfluxdbMetricFormat_v2> influxdbMetrics, byte timePrecisionCode) {
+        return RenderedMetrics.lazy(influxdbMetrics, (InfluxdbMetricFormat_v2 influxdbMetric) -> {
+            String influxdbLine = influxdbMetric.getInfluxdbV2LineFormatString(timePrecisionCode);
+            return (influxdbLine == null) ? null : (influxdbLine + "\n");
+        });
+    }
+
+    /*
+    Intended for use with non-native InfluxDB metrics (ex -- Graphite, OpenTSDB, etc). Every metric goes to the 'default' database.
+    */
+    public static List<DatabaseMetrics> getNonNativeDatabaseMetrics(List<? extends InfluxdbMetricFormat_v2> influxdbMetrics,
+            String defaultDatabaseName, String defaultDatabaseHttpAuthValue, byte timePrecisionCode) {
+
+        List<DatabaseMetrics> databaseMetrics = new ArrayList<>();
+        if ((influxdbMetrics == null) || influxdbMetrics.isEmpty() || (defaultDatabaseName == null)) return databaseMetrics;
+
+        databaseMetrics.add(new DatabaseMetrics(defaultDatabaseName, null, null, defaultDatabaseHttpAuthValue, renderLinesLazily(influxdbMetrics, timePrecisionCode)));
+
+        return databaseMetrics;
+    }
+
+    /*
+    Intended for use with native InfluxDB metrics. The metrics are grouped by the database (& credentials) that they were originally sent to.
+    */
+    public static List<DatabaseMetrics> getNativeDatabaseMetrics(List<InfluxdbMetric_v1> influxdbMetrics, byte timePrecisionCode) {
+
+        List<DatabaseMetrics> databaseMetrics = new ArrayList<>();
+        if ((influxdbMetrics == null) || influxdbMetrics.isEmpty()) return databaseMetrics;
+
+        Map<List<String>,List<InfluxdbMetric_v1>> influxdbMetricsByDatabase = new LinkedHashMap<>();
+
+        for (InfluxdbMetric_v1 influxdbMetric : influxdbMetrics) {
+            if ((influxdbMetric == null) || (influxdbMetric.getDatabase() == null)) continue;
+
+            List<String> databaseKey = Arrays.asList(influxdbMetric.getDatabase(), influxdbMetric.getUsername(), influxdbMetric.getPassword(), influxdbMetric.getBasicAuth());
+            influxdbMetricsByDatabase.computeIfAbsent(databaseKey, key -> new ArrayList<>()).add(influxdbMetric);
+        }
+
+        for (Map.Entry<List<String>,List<InfluxdbMetric_v1>> influxdbMetricsForDatabase : influxdbMetricsByDatabase.entrySet()) {
+            List<String> databaseKey = influxdbMetricsForDatabase.getKey();
+            databaseMetrics.add(new DatabaseMetrics(databaseKey.get(0), databaseKey.get(1), databaseKey.get(2), databaseKey.get(3),
+                    renderLinesLazily(influxdbMetricsForDatabase.getValue(), timePrecisionCode)));
+        }
+
+        return databaseMetrics;
+    }
+
+    /*
+    Creates the '/write' url for a destination database. Ex -- http://influxdb:8086/write?db=statsagg&rp=one_month&precision=ms
+    */
+    protected static String createInfluxdbUrl(String baseUrl, DatabaseMetrics databaseMetrics, String retentionPolicy, byte timePrecisionCode) {
+
+        if ((baseUrl == null) || (databaseMetrics == null) || (databaseMetrics.database__ == null)) {
+            return null;
+        }
+
+        StringBuilder influxdbUrl = new StringBuilder();
+
+        // create the base url
+        influxdbUrl.append(baseUrl);
+        if (!baseUrl.endsWith("/")) influxdbUrl.append("/");
+
+        // create the influxdb url query string parameters
+        influxdbUrl.append("write?db=").append(HttpUtils.urlEncode(databaseMetrics.database__, "UTF-8"));
+        if (retentionPolicy != null) influxdbUrl.append("&rp=").append(HttpUtils.urlEncode(retentionPolicy, "UTF-8"));
+
+        String timePrecisionString = InfluxdbMetric_v2.getTimePrecisionStringFromTimePrecisionCode(timePrecisionCode);
+        if (timePrecisionString != null) influxdbUrl.append("&precision=").append(timePrecisionString);
+
+        if (databaseMetrics.username__ != null) influxdbUrl.append("&u=").append(HttpUtils.urlEncode(databaseMetrics.username__, "UTF-8"));
+        if (databaseMetrics.password__ != null) influxdbUrl.append("&p=").append(HttpUtils.urlEncode(databaseMetrics.password__, "UTF-8"));
+
+        return influxdbUrl.toString();
+    }
+
+    protected static Map<String,String> getInfluxdbHttpHeaderProperties(String httpAuthValue) {
+        Map<String,String> influxdbHttpHeaderProperties = new HashMap<>();
+
+        if (httpAuthValue != null) influxdbHttpHeaderProperties.put("Authorization", httpAuthValue);
+        influxdbHttpHeaderProperties.put("Content-Type", "text/plain; charset=utf-8");
+
+        return influxdbHttpHeaderProperties;
+    }
+
+    /*
+    The (rendered) metrics that go to a single InfluxDB database, with a single set of credentials.
+    */
+    public static class DatabaseMetrics {
+
+        private final String database__;
+        private final String username__;
+        private final String password__;
+        private final String basicAuth__;
+        private final Supplier<RenderedMetrics> renderedMetrics__;
+
+        public DatabaseMetrics(String database, String username, String password, String basicAuth, Supplier<RenderedMetrics> renderedMetrics) {
+            this.database__ = database;
+            this.username__ = username;
+            this.password__ = password;
+            this.basicAuth__ = basicAuth;
+            this.renderedMetrics__ = renderedMetrics;
+        }
+
+        public String getDatabase() {
+            return database__;
+        }
+
+        public Supplier<RenderedMetrics> getRenderedMetrics() {
+            return renderedMetrics__;
+        }
+
+    }
+
+}
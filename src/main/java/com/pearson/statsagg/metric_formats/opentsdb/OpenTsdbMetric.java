@@ -8,6 +8,11 @@ import com.pearson.statsagg.metric_formats.GenericMetricFormat;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteMetric;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteMetricFormat;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetricFormat_v1;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetricFormat_v2;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetric_v2;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetric;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetricFormat;
+import com.pearson.statsagg.utilities.KeyValue;
 import com.pearson.statsagg.utilities.StackTrace;
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -21,7 +26,7 @@ import org.slf4j.LoggerFactory;
 /**
  * @author Jeffrey Schmidt
  */
-public class OpenTsdbMetric implements GraphiteMetricFormat, OpenTsdbMetricFormat, GenericMetricFormat, InfluxdbMetricFormat_v1 {
+public class OpenTsdbMetric implements GraphiteMetricFormat, OpenTsdbMetricFormat, GenericMetricFormat, InfluxdbMetricFormat_v1, InfluxdbMetricFormat_v2, PrometheusMetricFormat {
     
     private static final Logger logger = LoggerFactory.getLogger(OpenTsdbMetric.class.getName());
     
@@ -264,6 +269,53 @@ public class OpenTsdbMetric implements GraphiteMetricFormat, OpenTsdbMetricForma
         return influxdbJson.toString();
     }
     
+    @Override
+    public String getInfluxdbV2LineFormatString(byte timePrecisionCode) {
+
+        String metric = getMetric();
+        List<OpenTsdbTag> openTsdbTags = getMetricTagsFromMetricKey();
+
+        if ((metric == null) || metric.isEmpty()) return null;
+        if (metricTimestamp_ < 0) return null;
+        if ((getMetricValue() == null)) return null;
+
+        StringBuilder influxdbLine = new StringBuilder();
+
+        // the measurement is the metric name (with the prefix already built-in), the opentsdb tags are the influxdb tags, & the metric value is the 'value' field
+        influxdbLine.append(InfluxdbMetric_v2.getLineProtocolEscapedMeasurement(metric));
+
+        if (openTsdbTags != null) {
+            for (OpenTsdbTag tag : openTsdbTags) {
+                if ((tag.getTagKey() == null) || tag.getTagKey().isEmpty() || (tag.getTagValue() == null) || tag.getTagValue().isEmpty()) continue;
+                influxdbLine.append(",").append(InfluxdbMetric_v2.getLineProtocolEscapedKey(tag.getTagKey()));
+                influxdbLine.append("=").append(InfluxdbMetric_v2.getLineProtocolEscapedKey(tag.getTagValue()));
+            }
+        }
+
+        influxdbLine.append(" value=").append(getMetricValueString()).append(" ");
+        influxdbLine.append(InfluxdbMetric_v2.getTimestampInTimePrecision(timePrecisionCode, getMetricTimestampInMilliseconds()));
+
+        return influxdbLine.toString();
+    }
+    
+    @Override
+    public String getPrometheusMetricName() {
+        return PrometheusMetric.getPrometheusSanitizedMetricName(getMetric());
+    }
+    
+    @Override
+    public List<KeyValue> getPrometheusLabels() {
+        
+        List<OpenTsdbTag> openTsdbTags = getMetricTagsFromMetricKey();
+        if ((openTsdbTags == null) || openTsdbTags.isEmpty()) return Collections.emptyList();
+        
+        // the opentsdb tags are the prometheus labels
+        List<KeyValue> prometheusLabels = new ArrayList<>(openTsdbTags.size());
+        for (OpenTsdbTag tag : openTsdbTags) PrometheusMetric.addPrometheusLabel(prometheusLabels, tag.getTagKey(), tag.getTagValue());
+        
+        return prometheusLabels;
+    }
+    
     public static String getOpenTsdbJson(List<? extends OpenTsdbMetricFormat> openTsdbFormatMetrics, boolean sanitizeMetrics) {
         return getOpenTsdbJson(openTsdbFormatMetrics, sanitizeMetrics, null, null);
     }
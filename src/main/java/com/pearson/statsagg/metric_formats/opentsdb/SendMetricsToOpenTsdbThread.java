@@ -1,14 +1,19 @@
 package com.pearson.statsagg.metric_formats.opentsdb;
 
 import java.util.List;
-import com.pearson.statsagg.utilities.TcpClient;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.google.common.collect.Lists;
+import com.google.common.base.Supplier;
+import com.pearson.statsagg.metric_formats.OutputModuleSpool;
+import com.pearson.statsagg.metric_formats.RenderedMetrics;
 import com.pearson.statsagg.metric_formats.SendMetricsToOutputModuleThread;
+import com.pearson.statsagg.network.tcp.TcpOutputClient;
+import io.netty.util.concurrent.Future;
 import com.pearson.statsagg.utilities.HttpRequest;
 
 /**
@@ -21,10 +26,11 @@ public class SendMetricsToOpenTsdbThread extends SendMetricsToOutputModuleThread
     private static final Map<String,String> OPENTSDB_HTTP_HEADER_PROPERTIES = getOpenTsdbHttpHeaderProperties();
     private static final Map<String,String> OPENTSDB_HTTP_HEADER_PROPERTIES_GZIP = getOpenTsdbHttpHeaderProperties_Gzip();
     
-    private final List<? extends OpenTsdbMetricFormat> openTsdbMetrics_;
-    private final boolean sanitizeMetrics_;
-    private final String defaultOpenTsdbTagKey_;
-    private final String defaultOpenTsdbTagValue_;
+    // the number of 'put' lines that are handed to the telnet output client as a single message
+    private static final int MAX_METRICS_PER_TELNET_MESSAGE = 1000;
+    
+    private final List<Supplier<RenderedMetrics>> renderedOpenTsdbMetrics_;
+    private final TcpOutputClient tcpOutputClient_;
     private final String openTsdbHost_;
     private final URL openTsdbUrl_;
     private final int openTsdbPort_;
@@ -32,37 +38,44 @@ public class SendMetricsToOpenTsdbThread extends SendMetricsToOutputModuleThread
     private final int readTimeoutInMs_;
     private final int numSendRetries_;
     private final int maxMetricsPerMessage_;
+    private final boolean gzipHttpBody_;
     
     private HttpRequest currentHttpRequest_ = null;
+    private boolean isEndpointDown_ = false;
     
-    // constructor for outputting to opentsdb telnet
-    public SendMetricsToOpenTsdbThread(List<? extends OpenTsdbMetricFormat> openTsdbMetrics, 
-            boolean sanitizeMetrics, String defaultOpenTsdbTagKey, String defaultOpenTsdbTagValue, 
-            String openTsdbHost, int openTsdbPort, int connectTimeoutInMs, int numSendRetries, String threadId) {
-        this.openTsdbMetrics_ = openTsdbMetrics;
-        this.sanitizeMetrics_ = sanitizeMetrics;
-        this.defaultOpenTsdbTagKey_ = defaultOpenTsdbTagKey;
-        this.defaultOpenTsdbTagValue_ = defaultOpenTsdbTagValue;
-        this.openTsdbHost_ = openTsdbHost;
+    /* 
+    Constructor for outputting to opentsdb telnet. 
+    'renderedOpenTsdbMetrics' are the metrics, already rendered as opentsdb telnet 'put' lines (see renderTelnetLazily). 
+    Output modules with the same opentsdb format settings can share the same rendered metrics.
+    */
+    public SendMetricsToOpenTsdbThread(List<Supplier<RenderedMetrics>> renderedOpenTsdbMetrics, 
+            TcpOutputClient tcpOutputClient, OutputModuleSpool outputModuleSpool, int numSendRetries, String threadId) {
+        this.renderedOpenTsdbMetrics_ = renderedOpenTsdbMetrics;
+        this.tcpOutputClient_ = tcpOutputClient;
+        this.openTsdbHost_ = (tcpOutputClient == null) ? null : tcpOutputClient.getHost();
         this.openTsdbUrl_ = null;
-        this.openTsdbPort_ = openTsdbPort;
-        this.connectTimeoutInMs_ = connectTimeoutInMs;
+        this.openTsdbPort_ = (tcpOutputClient == null) ? -1 : tcpOutputClient.getPort();
+        this.connectTimeoutInMs_ = -1;
         this.readTimeoutInMs_ = -1;
         this.numSendRetries_ = numSendRetries;
         this.maxMetricsPerMessage_ = -1;
+        this.gzipHttpBody_ = false;
+        this.outputModuleSpool_ = outputModuleSpool;
         this.threadId_ = threadId;
         
         this.outputEndpoint_ = openTsdbHost_ + ":" + openTsdbPort_;
     }
     
-    // constructor for outputting to opentsdb http
-    public SendMetricsToOpenTsdbThread(List<? extends OpenTsdbMetricFormat> openTsdbMetrics, 
-            boolean sanitizeMetrics, String defaultOpenTsdbTagKey, String defaultOpenTsdbTagValue, 
-            URL openTsdbUrl, int connectTimeoutInMs, int readTimeoutInMs, int numSendRetries, int maxMetricsPerMessage, String threadId) {
-        this.openTsdbMetrics_ = openTsdbMetrics;
-        this.sanitizeMetrics_ = sanitizeMetrics;
-        this.defaultOpenTsdbTagKey_ = defaultOpenTsdbTagKey;
-        this.defaultOpenTsdbTagValue_ = defaultOpenTsdbTagValue;
+    /* 
+    Constructor for outputting to opentsdb http. 
+    'renderedOpenTsdbMetrics' are the metrics, already rendered as opentsdb json objects (see renderJsonLazily). 
+    Output modules with the same opentsdb format settings can share the same rendered metrics.
+    If 'gzipHttpBody' is true, then the json is gzip compressed as it is streamed to opentsdb.
+    */
+    public SendMetricsToOpenTsdbThread(List<Supplier<RenderedMetrics>> renderedOpenTsdbMetrics, URL openTsdbUrl, 
+            int connectTimeoutInMs, int readTimeoutInMs, int numSendRetries, int maxMetricsPerMessage, boolean gzipHttpBody, String threadId) {
+        this.renderedOpenTsdbMetrics_ = renderedOpenTsdbMetrics;
+        this.tcpOutputClient_ = null;
         this.openTsdbHost_ = null;
         this.openTsdbUrl_ = openTsdbUrl;
         this.openTsdbPort_ = -1;
@@ -70,6 +83,7 @@ public class SendMetricsToOpenTsdbThread extends SendMetricsToOutputModuleThread
         this.readTimeoutInMs_ = readTimeoutInMs;
         this.numSendRetries_ = numSendRetries;
         this.maxMetricsPerMessage_ = maxMetricsPerMessage;
+        this.gzipHttpBody_ = gzipHttpBody;
         this.threadId_ = threadId;
         
         if (openTsdbUrl != null) this.outputEndpoint_ = openTsdbUrl_.toExternalForm();
@@ -83,7 +97,7 @@ public class SendMetricsToOpenTsdbThread extends SendMetricsToOutputModuleThread
             return;
         }
         
-        if ((openTsdbMetrics_ == null) || openTsdbMetrics_.isEmpty()) return;
+        if ((renderedOpenTsdbMetrics_ == null) || renderedOpenTsdbMetrics_.isEmpty()) return;
         
         long sendToOpenTsdbTimeStart = System.currentTimeMillis();
 
@@ -91,6 +105,9 @@ public class SendMetricsToOpenTsdbThread extends SendMetricsToOutputModuleThread
         if (openTsdbHost_ != null) isSendSuccess = sendMetricsToOpenTsdb_Telnet();
         else if (openTsdbUrl_ != null) isSendSuccess = sendMetricsToOpenTsdb_HTTP();
         else return;
+        
+        // opentsdb is accepting metrics, so catch up on the metrics that were spooled while it wasn't
+        int numReplayedMessages = ((openTsdbHost_ != null) && isSendSuccess) ? replaySpool(message -> tcpOutputClient_.write(message), tcpOutputClient_.getMaxWriteTimeInMs()) : 0;
 
         long sendToOpenTsdbTimeElasped = System.currentTimeMillis() - sendToOpenTsdbTimeStart;
 
@@ -98,7 +115,10 @@ public class SendMetricsToOpenTsdbThread extends SendMetricsToOutputModuleThread
 
         if (openTsdbHost_ != null) {
             outputString = "ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + 
-                            "\", SendToOpenTsdbTelnetSuccess=" + isSendSuccess + ", SendToOpenTsdbTime=" + sendToOpenTsdbTimeElasped;     
+                            "\", SendToOpenTsdbTelnetSuccess=" + isSendSuccess + ", SendToOpenTsdbTime=" + sendToOpenTsdbTimeElasped + 
+                            ", BytesInFlight=" + tcpOutputClient_.getBytesInFlight() + ", LastWriteLatency=" + tcpOutputClient_.getLastWriteLatencyInMs() +
+                            ((outputModuleSpool_ == null) ? "" : (", NumSpooledMessages=" + numSpooledMessages_ + ", NumReplayedMessages=" + numReplayedMessages + 
+                                    ", SpoolPendingMessages=" + outputModuleSpool_.getPendingMessageCount()));
         }
         else if (openTsdbUrl_ != null) {
             outputString = "ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + 
@@ -131,58 +151,126 @@ public class SendMetricsToOpenTsdbThread extends SendMetricsToOutputModuleThread
         return isFinished_;
     }
     
+    @Override
+    public SendMetricsToOutputModuleThread merge(SendMetricsToOutputModuleThread other) {
+        
+        if ((other == null) || (other.getClass() != SendMetricsToOpenTsdbThread.class)) {
+            return null;
+        }
+        
+        SendMetricsToOpenTsdbThread otherOpenTsdbThread = (SendMetricsToOpenTsdbThread) other;
+        
+        if ((tcpOutputClient_ != otherOpenTsdbThread.tcpOutputClient_) || (outputModuleSpool_ != otherOpenTsdbThread.outputModuleSpool_) || 
+                !Objects.equals(outputEndpoint_, otherOpenTsdbThread.outputEndpoint_) || !Objects.equals(openTsdbUrl_, otherOpenTsdbThread.openTsdbUrl_) ||
+                (connectTimeoutInMs_ != otherOpenTsdbThread.connectTimeoutInMs_) || (readTimeoutInMs_ != otherOpenTsdbThread.readTimeoutInMs_) ||
+                (numSendRetries_ != otherOpenTsdbThread.numSendRetries_) || (maxMetricsPerMessage_ != otherOpenTsdbThread.maxMetricsPerMessage_) ||
+                (gzipHttpBody_ != otherOpenTsdbThread.gzipHttpBody_)) {
+            return null;
+        }
+        
+        List<Supplier<RenderedMetrics>> renderedOpenTsdbMetrics = new ArrayList<>();
+        if (renderedOpenTsdbMetrics_ != null) renderedOpenTsdbMetrics.addAll(renderedOpenTsdbMetrics_);
+        if (otherOpenTsdbThread.renderedOpenTsdbMetrics_ != null) renderedOpenTsdbMetrics.addAll(otherOpenTsdbThread.renderedOpenTsdbMetrics_);
+        
+        if (openTsdbHost_ != null) {
+            return new SendMetricsToOpenTsdbThread(renderedOpenTsdbMetrics, tcpOutputClient_, outputModuleSpool_, numSendRetries_, threadId_);
+        }
+        else if (openTsdbUrl_ != null) {
+            return new SendMetricsToOpenTsdbThread(renderedOpenTsdbMetrics, openTsdbUrl_, connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, maxMetricsPerMessage_, 
+                    gzipHttpBody_, threadId_);
+        }
+        
+        return null;
+    }
+    
+    @Override
+    public boolean spool() {
+        
+        // only the telnet output is spooled
+        if ((outputModuleSpool_ == null) || (openTsdbHost_ == null)) {
+            return false;
+        }
+        
+        isEndpointDown_ = true;
+        sendMetricsToOpenTsdb_Telnet();
+        
+        logger.info("ThreadId=" + threadId_ + ", Destination=\"" + outputEndpoint_ + "\", NumSpooledMessages=" + numSpooledMessages_);
+        
+        return true;
+    }
+    
     private boolean sendMetricsToOpenTsdb_Telnet() {
 
-        if ((openTsdbMetrics_ == null) || openTsdbMetrics_.isEmpty()) {
+        if ((renderedOpenTsdbMetrics_ == null) || renderedOpenTsdbMetrics_.isEmpty()) {
             return true;
         } 
         
-        if ((openTsdbHost_ == null) || (openTsdbHost_.isEmpty()) || (openTsdbPort_ < 0) || (openTsdbPort_ > 65535) || (numSendRetries_ < 0) || isShuttingDown_)  {
+        if ((tcpOutputClient_ == null) || (openTsdbHost_ == null) || (openTsdbHost_.isEmpty()) || (openTsdbPort_ < 0) || (openTsdbPort_ > 65535) || 
+                (numSendRetries_ < 0) || isShuttingDown_)  {
             return false;
         }
         
         boolean isSendAllSuccess = true;
         
-        // connect to opentsdb
-        TcpClient tcpClient = new TcpClient(openTsdbHost_, openTsdbPort_, true, connectTimeoutInMs_);
-        int retryCounter = 0;
-        while (!tcpClient.isConnected() && (retryCounter < numSendRetries_) && !isShuttingDown_) {
-            tcpClient.reset();
-            retryCounter++;
+        // hand multi-metric messages (ranges of the rendered metrics) to the output module's client. the client writes them to opentsdb in the background.
+        for (Supplier<RenderedMetrics> renderedOpenTsdbMetricsSupplier : renderedOpenTsdbMetrics_) {
+            RenderedMetrics renderedOpenTsdbMetrics = renderedOpenTsdbMetricsSupplier.get();
+            
+            for (int i = 0; i < renderedOpenTsdbMetrics.getNumMetrics(); i += MAX_METRICS_PER_TELNET_MESSAGE) {
+                if (isShuttingDown_ || (isEndpointDown_ && (outputModuleSpool_ == null))) {
+                    return false;
+                }
+                
+                int toIndex = Math.min(i + MAX_METRICS_PER_TELNET_MESSAGE, renderedOpenTsdbMetrics.getNumMetrics());
+                boolean isSendSuccess = sendOpenTsdbTelnetMessage(renderedOpenTsdbMetrics, i, toIndex);
+                if (!isSendSuccess) isSendAllSuccess = false;
+            }
         }
         
-        // if connecting to opentsdb failed, give up
-        if (!tcpClient.isConnected()) {
-            logger.error("Error creating TCP connection to OpenTSDB telnet. Endpoint=\"" + outputEndpoint_ + "\"");
-            tcpClient.close();
-            return false;
-        }
+        // the messages are written in the background. wait for them to be written, & re-send (or spool) the ones that failed.
+        boolean isWriteAllSuccess = awaitPendingWrites(tcpOutputClient_.getMaxWriteTimeInMs(), numSendRetries_, 
+                failedWrite -> writeOpenTsdbTelnetMessage(failedWrite.getRenderedMetrics(), failedWrite.getFromIndex(), failedWrite.getToIndex()));
         
-        // send metrics to opentsdb
-        for (OpenTsdbMetricFormat openTsdbMetric : openTsdbMetrics_) {
-            if (isShuttingDown_) {
-                isSendAllSuccess = false;
-                continue;
-            }
+        return isSendAllSuccess && isWriteAllSuccess;
+    }
+    
+    /*
+    Hands the message to the output module's client (see awaitPendingWrites). If the message isn't sent, it goes to the output module's spool (if it has one).
+    */
+    private boolean sendOpenTsdbTelnetMessage(RenderedMetrics renderedOpenTsdbMetrics, int fromIndex, int toIndex) {
+        
+        boolean isSendSuccess = writeOpenTsdbTelnetMessage(renderedOpenTsdbMetrics, fromIndex, toIndex);
+        if (!isSendSuccess) spoolMessage(renderedOpenTsdbMetrics.getString(fromIndex, toIndex));
+        
+        return isSendSuccess;
+    }
+    
+    /*
+    Hands the message to the output module's client. If the client rejects the message (no connection, or opentsdb isn't keeping up), the write is retried.
+    Once a message can't be written, the rest of the flush's messages aren't attempted. Doesn't spool the message -- that's left to the caller.
+    */
+    private boolean writeOpenTsdbTelnetMessage(RenderedMetrics renderedOpenTsdbMetrics, int fromIndex, int toIndex) {
+        
+        for (int i = 0; (i <= numSendRetries_) && !isShuttingDown_ && !isEndpointDown_; i++) {
+            Future<Void> writeFuture = tcpOutputClient_.write(renderedOpenTsdbMetrics.getByteBuf(fromIndex, toIndex));
             
-            boolean isSendSucess = tcpClient.send("put " + openTsdbMetric.getOpenTsdbTelnetFormatString(sanitizeMetrics_, defaultOpenTsdbTagKey_, defaultOpenTsdbTagValue_) + "\n", 
-                    numSendRetries_, false, false);
-
-            if (!isSendSucess) {
-                logger.error("Error sending message to OpenTSDB telnet. Endpoint=\"" + outputEndpoint_ + "\"");
-                isSendAllSuccess = false;
+            if (writeFuture != null) {
+                addPendingWrite(renderedOpenTsdbMetrics, fromIndex, toIndex, writeFuture);
+                return true;
             }
         }
         
-        // disconnect from opentsdb
-        tcpClient.close();
+        if (!isEndpointDown_) {
+            logger.error("Error sending message to OpenTSDB telnet. Endpoint=\"" + outputEndpoint_ + "\", BytesInFlight=" + tcpOutputClient_.getBytesInFlight());
+            isEndpointDown_ = true;
+        }
         
-        return isSendAllSuccess;
+        return false;
     }
     
     private boolean sendMetricsToOpenTsdb_HTTP() {
       
-        if ((openTsdbMetrics_ == null) || openTsdbMetrics_.isEmpty()) {
+        if ((renderedOpenTsdbMetrics_ == null) || renderedOpenTsdbMetrics_.isEmpty()) {
             return true;
         } 
         
@@ -192,39 +280,58 @@ public class SendMetricsToOpenTsdbThread extends SendMetricsToOutputModuleThread
         
         boolean isAllSendSuccess = true;
         
-        List openTsdbMetricsList = openTsdbMetrics_;
-        List<List<? extends OpenTsdbMetricFormat>> partitionedList = Lists.partition(openTsdbMetricsList, maxMetricsPerMessage_);
-                
-        for (List openTsdbMetricsPartitionedList : partitionedList) {
-            if (isShuttingDown_) {
-                isAllSendSuccess = false;
-                continue;
-            }
-            
-            String openTsdbMetricJson = OpenTsdbMetric.getOpenTsdbJson(openTsdbMetricsPartitionedList, sanitizeMetrics_, defaultOpenTsdbTagKey_, defaultOpenTsdbTagValue_);
+        for (Supplier<RenderedMetrics> renderedOpenTsdbMetricsSupplier : renderedOpenTsdbMetrics_) {
+            RenderedMetrics renderedOpenTsdbMetrics = renderedOpenTsdbMetricsSupplier.get();
             
-            if (openTsdbMetricJson != null) {
-                HttpRequest httpRequest = new HttpRequest(outputEndpoint_, OPENTSDB_HTTP_HEADER_PROPERTIES, openTsdbMetricJson, 
-                        "UTF-8", "POST", connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, true);
+            for (int i = 0; i < renderedOpenTsdbMetrics.getNumMetrics(); i += maxMetricsPerMessage_) {
+                if (isShuttingDown_) {
+                    return false;
+                }
+                
+                int fromIndex = i, toIndex = (int) Math.min((long) i + maxMetricsPerMessage_, renderedOpenTsdbMetrics.getNumMetrics());
+                
+                // the json is streamed straight from the rendered metrics to opentsdb
+                HttpRequest httpRequest = new HttpRequest(outputEndpoint_, (gzipHttpBody_ ? OPENTSDB_HTTP_HEADER_PROPERTIES_GZIP : OPENTSDB_HTTP_HEADER_PROPERTIES), 
+                        outputStream -> renderedOpenTsdbMetrics.writeJsonArray(outputStream, fromIndex, toIndex), gzipHttpBody_,
+                        "POST", connectTimeoutInMs_, readTimeoutInMs_, numSendRetries_, true);
                 
+                httpRequest.setDiscardResponseBody(true);
                 currentHttpRequest_ = httpRequest;
                 httpRequest.makeRequest();
                 
                 if (httpRequest.didEncounterConnectionError() && httpRequest.didHitRetryAttemptLimit() && !httpRequest.isHttpRequestSuccess()) {
-                    isAllSendSuccess = false;
                     logger.error("Aborting OpenTSDB HTTP output. Couldn't connect to OpenTSDB endpoint. Endpoint=\"" + outputEndpoint_ + "\"");
-                    break;
+                    return false;
                 }
                 
                 if (!httpRequest.isHttpRequestSuccess()) isAllSendSuccess = false;
             }
-            else {
-                isAllSendSuccess = false;
-            }
         }
         
         return isAllSendSuccess;
     }
+    
+    /*
+    Returns a supplier that renders the metrics (one opentsdb telnet 'put' line per metric) the first time that it is called. 
+    */
+    public static Supplier<RenderedMetrics> renderTelnetLazily(List<? extends OpenTsdbMetricFormat> openTsdbMetrics, 
+            boolean sanitizeMetrics, String defaultOpenTsdbTagKey, String defaultOpenTsdbTagValue) {
+        
+        return RenderedMetrics.lazy(openTsdbMetrics, (OpenTsdbMetricFormat openTsdbMetric) -> {
+            String openTsdbTelnetFormatString = openTsdbMetric.getOpenTsdbTelnetFormatString(sanitizeMetrics, defaultOpenTsdbTagKey, defaultOpenTsdbTagValue);
+            return (openTsdbTelnetFormatString == null) ? null : "put " + openTsdbTelnetFormatString + "\n";
+        });
+    }
+    
+    /*
+    Returns a supplier that renders the metrics (one opentsdb json object per metric) the first time that it is called. 
+    */
+    public static Supplier<RenderedMetrics> renderJsonLazily(List<? extends OpenTsdbMetricFormat> openTsdbMetrics, 
+            boolean sanitizeMetrics, String defaultOpenTsdbTagKey, String defaultOpenTsdbTagValue) {
+        
+        return RenderedMetrics.lazy(openTsdbMetrics, (OpenTsdbMetricFormat openTsdbMetric) -> 
+                openTsdbMetric.getOpenTsdbJsonFormatString(sanitizeMetrics, defaultOpenTsdbTagKey, defaultOpenTsdbTagValue));
+    }
 
     protected static Map<String,String> getOpenTsdbHttpHeaderProperties() {
         Map<String,String> openTsdbHttpHeaderProperties = new HashMap<>();
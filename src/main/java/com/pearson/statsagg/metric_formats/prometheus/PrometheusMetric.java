@@ -0,0 +1,197 @@
+package com.pearson.statsagg.metric_formats.prometheus;
+
+import com.pearson.statsagg.utilities.KeyValue;
+import com.pearson.statsagg.utilities.StackTrace;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helpers for the Prometheus text exposition format (version 0.0.4).
+ *
+ * @author Jeffrey Schmidt
+ */
+public class PrometheusMetric {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrometheusMetric.class.getName());
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /*
+    Turns a metric name into a valid prometheus metric name ([a-zA-Z_:][a-zA-Z0-9_:]*). Invalid characters are replaced with underscores.
+    Ex -- "stats.gauges.cpu-1" becomes "stats_gauges_cpu_1"
+    */
+    public static String getPrometheusSanitizedMetricName(String metricName) {
+        return getPrometheusSanitizedString(metricName, true);
+    }
+
+    /*
+    Turns a label name into a valid prometheus label name ([a-zA-Z_][a-zA-Z0-9_]*). Invalid characters are replaced with underscores.
+    */
+    public static String getPrometheusSanitizedLabelName(String labelName) {
+        return getPrometheusSanitizedString(labelName, false);
+    }
+
+    private static String getPrometheusSanitizedString(String unsanitizedString, boolean isColonAllowed) {
+
+        if ((unsanitizedString == null) || unsanitizedString.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder sanitizedString = null;
+
+        // names can't start with a digit, so a leading digit gets an underscore in front of it
+        if ((unsanitizedString.charAt(0) >= '0') && (unsanitizedString.charAt(0) <= '9')) {
+            sanitizedString = new StringBuilder(unsanitizedString.length() + 1).append('_');
+        }
+
+        for (int i = 0; i < unsanitizedString.length(); i++) {
+            char character = unsanitizedString.charAt(i);
+            boolean isValidCharacter = ((character >= 'a') && (character <= 'z')) || ((character >= 'A') && (character <= 'Z')) ||
+                    ((character >= '0') && (character <= '9')) || (character == '_') || (isColonAllowed && (character == ':'));
+
+            // most names are already valid, so only copy the string once an invalid character is found
+            if (!isValidCharacter && (sanitizedString == null)) sanitizedString = new StringBuilder(unsanitizedString.length()).append(unsanitizedString, 0, i);
+            if (sanitizedString == null) continue;
+
+            sanitizedString.append(isValidCharacter ? character : '_');
+        }
+
+        return (sanitizedString == null) ? unsanitizedString : sanitizedString.toString();
+    }
+
+    /*
+    Escapes a label value (the value still needs to be wrapped in double-quotes). Backslashes, double-quotes, & newlines are escaped with a backslash.
+    */
+    public static String getPrometheusEscapedLabelValue(String labelValue) {
+
+        if (labelValue == null) {
+            return null;
+        }
+
+        if ((labelValue.indexOf('\\') == -1) && (labelValue.indexOf('"') == -1) && (labelValue.indexOf('\n') == -1)) {
+            return labelValue;
+        }
+
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /*
+    Adds a label to a list of prometheus labels. The label name is sanitized, & labels that are empty or that repeat an earlier label's (sanitized) name are ignored,
+    since prometheus rejects an exposition that repeats a label name.
+    */
+    public static void addPrometheusLabel(List<KeyValue> prometheusLabels, String labelName, String labelValue) {
+
+        if ((prometheusLabels == null) || (labelValue == null) || labelValue.isEmpty()) {
+            return;
+        }
+
+        String sanitizedLabelName = getPrometheusSanitizedLabelName(labelName);
+        if ((sanitizedLabelName == null) || sanitizedLabelName.startsWith("__")) return;
+
+        for (KeyValue prometheusLabel : prometheusLabels) {
+            if (prometheusLabel.getKey().equals(sanitizedLabelName)) return;
+        }
+
+        prometheusLabels.add(new KeyValue(sanitizedLabelName, labelValue));
+    }
+
+    public static String getPrometheusFormatString(PrometheusMetricFormat prometheusMetric, boolean includeTimestamp) {
+
+        if (prometheusMetric == null) {
+            return null;
+        }
+
+        StringBuilder prometheusLine = new StringBuilder();
+        boolean isValid = appendPrometheusFormatString(prometheusLine, prometheusMetric.getPrometheusMetricName(), prometheusMetric.getPrometheusLabels(),
+                prometheusMetric.getMetricValueString(), prometheusMetric.getMetricTimestampInMilliseconds(), includeTimestamp);
+
+        return isValid ? prometheusLine.toString() : null;
+    }
+
+    /*
+    Appends a single sample (ex -- 'metric_name{label="value"} 1.5 1436135662000') to 'prometheusLines'. Doesn't append a newline.
+    Returns false (& appends nothing) if the sample can't be represented in the prometheus format.
+    */
+    private static boolean appendPrometheusFormatString(StringBuilder prometheusLines, String metricName, List<KeyValue> labels,
+            String metricValue, long metricTimestampInMilliseconds, boolean includeTimestamp) {
+
+        if ((metricName == null) || metricName.isEmpty() || (metricValue == null) || metricValue.isEmpty()) {
+            return false;
+        }
+
+        prometheusLines.append(metricName);
+
+        if ((labels != null) && !labels.isEmpty()) {
+            prometheusLines.append('{');
+
+            for (int i = 0; i < labels.size(); i++) {
+                KeyValue label = labels.get(i);
+                if (i > 0) prometheusLines.append(',');
+                prometheusLines.append(label.getKey()).append("=\"").append(getPrometheusEscapedLabelValue(label.getValue())).append('"');
+            }
+
+            prometheusLines.append('}');
+        }
+
+        prometheusLines.append(' ').append(metricValue);
+        if (includeTimestamp && (metricTimestampInMilliseconds >= 0)) prometheusLines.append(' ').append(metricTimestampInMilliseconds);
+
+        return true;
+    }
+
+    /*
+    Writes the metrics in the prometheus text format, one line per metric. Metrics are rendered & written one at a time (through a small, reused buffer),
+    so the amount of memory that is used doesn't depend on the number of metrics that are written.
+    Metrics are skipped if 'isMetricKeyExcluded' is true for their metric-key, or if there are selectors & the metric doesn't match any of the selectors.
+    Returns the number of metrics that were written.
+    */
+    public static long writePrometheusFormat(Writer writer, Iterator<? extends PrometheusMetricFormat> prometheusMetrics, List<PrometheusSeriesSelector> selectors,
+            Predicate<String> isMetricKeyExcluded, boolean includeTimestamps) throws IOException {
+
+        if ((writer == null) || (prometheusMetrics == null)) {
+            return 0;
+        }
+
+        StringBuilder prometheusLines = new StringBuilder(8192);
+        long numMetricsWritten = 0;
+
+        while (prometheusMetrics.hasNext()) {
+            PrometheusMetricFormat prometheusMetric = prometheusMetrics.next();
+            if (prometheusMetric == null) continue;
+
+            try {
+                if ((isMetricKeyExcluded != null) && isMetricKeyExcluded.test(prometheusMetric.getMetricKey())) continue;
+
+                String metricName = prometheusMetric.getPrometheusMetricName();
+                List<KeyValue> labels = prometheusMetric.getPrometheusLabels();
+                if ((selectors != null) && !selectors.isEmpty() && !PrometheusSeriesSelector.isAnyMatch(selectors, metricName, labels)) continue;
+
+                boolean isValid = appendPrometheusFormatString(prometheusLines, metricName, labels, prometheusMetric.getMetricValueString(),
+                        prometheusMetric.getMetricTimestampInMilliseconds(), includeTimestamps);
+                if (!isValid) continue;
+            }
+            catch (Exception e) {
+                logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+                continue;
+            }
+
+            prometheusLines.append('\n');
+            numMetricsWritten++;
+
+            if (prometheusLines.length() >= 8192) {
+                writer.append(prometheusLines);
+                prometheusLines.setLength(0);
+            }
+        }
+
+        if (prometheusLines.length() > 0) writer.append(prometheusLines);
+
+        return numMetricsWritten;
+    }
+
+}
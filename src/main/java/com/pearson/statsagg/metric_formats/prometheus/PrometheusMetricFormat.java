@@ -0,0 +1,21 @@
+package com.pearson.statsagg.metric_formats.prometheus;
+
+import com.pearson.statsagg.utilities.KeyValue;
+import java.util.List;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public interface PrometheusMetricFormat {
+    
+    public String getMetricKey();
+    
+    public String getPrometheusMetricName();
+    
+    public List<KeyValue> getPrometheusLabels();
+    
+    public String getMetricValueString();
+    
+    public long getMetricTimestampInMilliseconds();
+    
+}
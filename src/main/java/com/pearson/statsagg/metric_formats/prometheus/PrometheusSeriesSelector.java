@@ -0,0 +1,232 @@
+package com.pearson.statsagg.metric_formats.prometheus;
+
+import com.pearson.statsagg.utilities.KeyValue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A prometheus series selector, as used by the 'match[]' parameter of prometheus' federation endpoint.
+ * Ex -- 'http_requests_total', 'http_requests_total{job="api",code!="200"}', or '{__name__=~"stats_gauges_.*"}'
+ *
+ * A series matches a selector if it matches every one of the selector's label matchers. The metric name is matched as the '__name__' label,
+ * a label that a series doesn't have is matched as an empty string, & regexes must match the entire label value (like prometheus).
+ *
+ * @author Jeffrey Schmidt
+ */
+public class PrometheusSeriesSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrometheusSeriesSelector.class.getName());
+
+    private static final String METRIC_NAME_LABEL = "__name__";
+
+    private static final byte MATCH_EQUAL = 1;
+    private static final byte MATCH_NOT_EQUAL = 2;
+    private static final byte MATCH_REGEX = 3;
+    private static final byte MATCH_NOT_REGEX = 4;
+
+    private final String selector_;
+    private final List<LabelMatcher> labelMatchers_;
+
+    private PrometheusSeriesSelector(String selector, List<LabelMatcher> labelMatchers) {
+        this.selector_ = selector;
+        this.labelMatchers_ = labelMatchers;
+    }
+
+    /*
+    Parses a series selector. Returns null if the selector isn't valid.
+    */
+    public static PrometheusSeriesSelector parseSeriesSelector(String unparsedSelector) {
+
+        if (unparsedSelector == null) {
+            return null;
+        }
+
+        try {
+            List<LabelMatcher> labelMatchers = new ArrayList<>();
+            int position = skipWhitespace(unparsedSelector, 0);
+
+            // the (optional) metric name
+            int metricNameEnd = getNameEnd(unparsedSelector, position, true);
+            if (metricNameEnd > position) labelMatchers.add(new LabelMatcher(METRIC_NAME_LABEL, MATCH_EQUAL, unparsedSelector.substring(position, metricNameEnd)));
+            position = skipWhitespace(unparsedSelector, metricNameEnd);
+
+            // the (optional) label matchers -- {label1="value1",label2=~"regex2"}
+            if ((position < unparsedSelector.length()) && (unparsedSelector.charAt(position) == '{')) {
+                position = skipWhitespace(unparsedSelector, position + 1);
+
+                while ((position < unparsedSelector.length()) && (unparsedSelector.charAt(position) != '}')) {
+                    int labelNameEnd = getNameEnd(unparsedSelector, position, false);
+                    if (labelNameEnd == position) return getInvalidSelector(unparsedSelector);
+                    String labelName = unparsedSelector.substring(position, labelNameEnd);
+                    position = skipWhitespace(unparsedSelector, labelNameEnd);
+
+                    byte matchType;
+                    if (unparsedSelector.startsWith("=~", position)) matchType = MATCH_REGEX;
+                    else if (unparsedSelector.startsWith("!~", position)) matchType = MATCH_NOT_REGEX;
+                    else if (unparsedSelector.startsWith("!=", position)) matchType = MATCH_NOT_EQUAL;
+                    else if (unparsedSelector.startsWith("=", position)) matchType = MATCH_EQUAL;
+                    else return getInvalidSelector(unparsedSelector);
+                    position = skipWhitespace(unparsedSelector, position + ((matchType == MATCH_EQUAL) ? 1 : 2));
+
+                    StringBuilder labelValue = new StringBuilder();
+                    position = parseQuotedString(unparsedSelector, position, labelValue);
+                    if (position == -1) return getInvalidSelector(unparsedSelector);
+                    labelMatchers.add(new LabelMatcher(labelName, matchType, labelValue.toString()));
+
+                    position = skipWhitespace(unparsedSelector, position);
+                    if ((position < unparsedSelector.length()) && (unparsedSelector.charAt(position) == ',')) position = skipWhitespace(unparsedSelector, position + 1);
+                    else if ((position >= unparsedSelector.length()) || (unparsedSelector.charAt(position) != '}')) return getInvalidSelector(unparsedSelector);
+                }
+
+                if (position >= unparsedSelector.length()) return getInvalidSelector(unparsedSelector);
+                position = skipWhitespace(unparsedSelector, position + 1);
+            }
+
+            if ((position != unparsedSelector.length()) || labelMatchers.isEmpty()) {
+                return getInvalidSelector(unparsedSelector);
+            }
+
+            return new PrometheusSeriesSelector(unparsedSelector, labelMatchers);
+        }
+        catch (Exception e) {
+            logger.debug("Invalid Prometheus series selector. Selector=\"" + unparsedSelector + "\", Exception=\"" + e.toString() + "\"");
+            return null;
+        }
+    }
+
+    private static PrometheusSeriesSelector getInvalidSelector(String unparsedSelector) {
+        logger.debug("Invalid Prometheus series selector. Selector=\"" + unparsedSelector + "\"");
+        return null;
+    }
+
+    private static int skipWhitespace(String string, int position) {
+        while ((position < string.length()) && Character.isWhitespace(string.charAt(position))) position++;
+        return position;
+    }
+
+    /*
+    Returns the position after the name (a metric name or a label name) that starts at 'position', or 'position' if there isn't a name there.
+    */
+    private static int getNameEnd(String string, int position, boolean isColonAllowed) {
+
+        int end = position;
+
+        while (end < string.length()) {
+            char character = string.charAt(end);
+            boolean isValidCharacter = ((character >= 'a') && (character <= 'z')) || ((character >= 'A') && (character <= 'Z')) || (character == '_') ||
+                    (isColonAllowed && (character == ':')) || ((end > position) && (character >= '0') && (character <= '9'));
+
+            if (!isValidCharacter) break;
+            end++;
+        }
+
+        return end;
+    }
+
+    /*
+    Parses a double-quoted, single-quoted, or backtick-quoted (raw) string that starts at 'position' into 'unquotedString'.
+    Returns the position after the closing quote, or -1 if there isn't a valid quoted string at 'position'.
+    */
+    private static int parseQuotedString(String string, int position, StringBuilder unquotedString) {
+
+        if (position >= string.length()) return -1;
+
+        char quote = string.charAt(position);
+        if ((quote != '"') && (quote != '\'') && (quote != '`')) return -1;
+
+        for (int i = position + 1; i < string.length(); i++) {
+            char character = string.charAt(i);
+
+            if (character == quote) {
+                return i + 1;
+            }
+            else if ((character == '\\') && (quote != '`') && ((i + 1) < string.length())) {
+                char escapedCharacter = string.charAt(++i);
+                if (escapedCharacter == 'n') unquotedString.append('\n');
+                else if (escapedCharacter == 't') unquotedString.append('\t');
+                else if (escapedCharacter == 'r') unquotedString.append('\r');
+                else unquotedString.append(escapedCharacter);
+            }
+            else {
+                unquotedString.append(character);
+            }
+        }
+
+        return -1;
+    }
+
+    public boolean isMatch(String metricName, List<KeyValue> labels) {
+
+        for (LabelMatcher labelMatcher : labelMatchers_) {
+            String labelValue = null;
+
+            if (labelMatcher.labelName__.equals(METRIC_NAME_LABEL)) {
+                labelValue = metricName;
+            }
+            else if (labels != null) {
+                for (KeyValue label : labels) {
+                    if (labelMatcher.labelName__.equals(label.getKey())) {
+                        labelValue = label.getValue();
+                        break;
+                    }
+                }
+            }
+
+            if (!labelMatcher.isMatch((labelValue == null) ? "" : labelValue)) return false;
+        }
+
+        return true;
+    }
+
+    /*
+    Returns true if the series matches at least one of the selectors.
+    */
+    public static boolean isAnyMatch(List<PrometheusSeriesSelector> selectors, String metricName, List<KeyValue> labels) {
+
+        if (selectors == null) {
+            return false;
+        }
+
+        for (PrometheusSeriesSelector selector : selectors) {
+            if (selector.isMatch(metricName, labels)) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return selector_;
+    }
+
+    private static class LabelMatcher {
+
+        private final String labelName__;
+        private final byte matchType__;
+        private final String value__;
+        private final Pattern pattern__;
+
+        public LabelMatcher(String labelName, byte matchType, String value) {
+            this.labelName__ = labelName;
+            this.matchType__ = matchType;
+            this.value__ = value;
+
+            // like prometheus, regexes are anchored at both ends
+            this.pattern__ = ((matchType == MATCH_REGEX) || (matchType == MATCH_NOT_REGEX)) ? Pattern.compile("^(?:" + value + ")$", Pattern.DOTALL) : null;
+        }
+
+        public boolean isMatch(String labelValue) {
+
+            if (matchType__ == MATCH_EQUAL) return labelValue.equals(value__);
+            else if (matchType__ == MATCH_NOT_EQUAL) return !labelValue.equals(value__);
+            else if (matchType__ == MATCH_REGEX) return pattern__.matcher(labelValue).matches();
+            else if (matchType__ == MATCH_NOT_REGEX) return !pattern__.matcher(labelValue).matches();
+            else return false;
+        }
+
+    }
+
+}
@@ -1,12 +1,19 @@
 package com.pearson.statsagg.metric_formats.statsd;
 
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
 import com.pearson.statsagg.metric_formats.GenericMetricFormat;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteMetric;
 import com.pearson.statsagg.metric_formats.graphite.GraphiteMetricFormat;
 import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetricFormat_v1;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetricFormat_v2;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbMetric_v2;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetric;
 import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetricFormat;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetric;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetricFormat;
+import com.pearson.statsagg.utilities.KeyValue;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,7 +21,7 @@ import org.slf4j.LoggerFactory;
 /**
  * @author Jeffrey Schmidt
  */
-public class StatsdMetricAggregated implements GraphiteMetricFormat, OpenTsdbMetricFormat, GenericMetricFormat, InfluxdbMetricFormat_v1 {
+public class StatsdMetricAggregated implements GraphiteMetricFormat, OpenTsdbMetricFormat, GenericMetricFormat, InfluxdbMetricFormat_v1, InfluxdbMetricFormat_v2, PrometheusMetricFormat {
     
     private static final Logger logger = LoggerFactory.getLogger(StatsdMetricAggregated.class.getName());
    
@@ -136,6 +143,33 @@ public class StatsdMetricAggregated implements GraphiteMetricFormat, OpenTsdbMet
         return influxdbJson.toString();
     }
     
+    @Override
+    public String getInfluxdbV2LineFormatString(byte timePrecisionCode) {
+
+        if ((bucket_ == null) || bucket_.isEmpty()) return null;
+        if (getTimestampInMilliseconds() < 0) return null;
+        if ((getMetricValue() == null)) return null;
+
+        StringBuilder influxdbLine = new StringBuilder();
+
+        // the measurement is the bucket (with the prefix already built-in), & the metric value is the 'value' field
+        influxdbLine.append(InfluxdbMetric_v2.getLineProtocolEscapedMeasurement(bucket_));
+        influxdbLine.append(" value=").append(getMetricValueString()).append(" ");
+        influxdbLine.append(InfluxdbMetric_v2.getTimestampInTimePrecision(timePrecisionCode, getTimestampInMilliseconds()));
+
+        return influxdbLine.toString();
+    }
+    
+    @Override
+    public String getPrometheusMetricName() {
+        return PrometheusMetric.getPrometheusSanitizedMetricName(bucket_);
+    }
+    
+    @Override
+    public List<KeyValue> getPrometheusLabels() {
+        return Collections.emptyList();
+    }
+    
     public long getHashKey() {
         return this.hashKey_;
     }
@@ -0,0 +1,528 @@
+package com.pearson.statsagg.network.tcp;
+
+import com.pearson.statsagg.utilities.StackTrace;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A non-blocking client for output modules that write lines of text to a raw TCP socket (Graphite, OpenTSDB telnet).
+ * Every output module has one client, with up to 'maxConnections' long-lived connections to its endpoint. All clients share one small Netty event-loop group.
+ *
+ * 'write' hands a message to Netty & returns the write's future, without waiting for the message to be written. A slow endpoint only ties up the thread that is sending to it 
+ * when the endpoint isn't keeping up: each connection has a write buffer with low & high watermarks, & when every connection's buffer is above the high watermark, 
+ * 'write' waits (up to 'maxWriteTimeInMs') for a buffer to drain below the low watermark. If none does, the message is rejected (instead of letting the buffered output 
+ * for a slow endpoint grow without limit). Writes that fail after they were accepted (ex -- the connection was closed) fail their future, so the caller can retry or spool them.
+ * Connections that fail, or that the server closes, are reopened on the next write. Connections that are idle for too long are closed.
+ *
+ * Every client tracks its write latency (from 'write' until the message was written to the socket) & the number of bytes that are in flight (accepted, but not yet written).
+ *
+ * @author Jeffrey Schmidt
+ */
+public class TcpOutputClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(TcpOutputClient.class.getName());
+
+    private static final Object eventLoopGroupLock_ = new Object();
+    private static EventLoopGroup eventLoopGroup_ = null;
+
+    // k=client id (usually the output module's unique id), v=client
+    private static final Map<String,TcpOutputClient> clientsById_ = new ConcurrentHashMap<>();
+
+    private final String id_;
+    private final String host_;
+    private final int port_;
+    private final int connectTimeoutInMs_;
+    private final int maxConnections_;
+    private final long maxIdleTimeInMs_;
+    private final int writeBufferLowWatermark_;
+    private final int writeBufferHighWatermark_;
+    private final long maxWriteTimeInMs_;
+
+    private final Bootstrap bootstrap_;
+    private final Channel[] channels_;
+    private final ChannelFuture[] connectFutures_;
+    private final Object writabilityLock_ = new Object();
+    private final AtomicInteger nextChannelIndex_ = new AtomicInteger(0);
+    private volatile boolean isClosed_ = false;
+
+    private final AtomicLong bytesInFlight_ = new AtomicLong(0);
+    private final AtomicLong bytesWritten_ = new AtomicLong(0);
+    private final AtomicLong numWrites_ = new AtomicLong(0);
+    private final AtomicLong numSuccessfulWrites_ = new AtomicLong(0);
+    private final AtomicLong numFailedWrites_ = new AtomicLong(0);
+    private final AtomicLong numRejectedWrites_ = new AtomicLong(0);
+    private final AtomicLong numConnects_ = new AtomicLong(0);
+    private final AtomicLong totalWriteLatencyInNs_ = new AtomicLong(0);
+    private final AtomicLong maxWriteLatencyInNs_ = new AtomicLong(0);
+    private volatile long lastWriteLatencyInNs_ = 0;
+
+    public TcpOutputClient(String id, String host, int port, int connectTimeoutInMs, int maxConnections, long maxIdleTimeInMs,
+            int writeBufferLowWatermark, int writeBufferHighWatermark, long maxWriteTimeInMs, EventLoopGroup eventLoopGroup) {
+        this.id_ = id;
+        this.host_ = host;
+        this.port_ = port;
+        this.connectTimeoutInMs_ = connectTimeoutInMs;
+        this.maxConnections_ = (maxConnections > 0) ? maxConnections : 1;
+        this.maxIdleTimeInMs_ = maxIdleTimeInMs;
+        this.writeBufferLowWatermark_ = Math.max(writeBufferLowWatermark, 1);
+        this.writeBufferHighWatermark_ = Math.max(writeBufferHighWatermark, writeBufferLowWatermark_);
+        this.maxWriteTimeInMs_ = Math.max(maxWriteTimeInMs, 0);
+        this.channels_ = new Channel[maxConnections_];
+        this.connectFutures_ = new ChannelFuture[maxConnections_];
+
+        this.bootstrap_ = new Bootstrap();
+        bootstrap_.group(eventLoopGroup).channel(NioSocketChannel.class)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.max(connectTimeoutInMs_, 1))
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(writeBufferLowWatermark_, writeBufferHighWatermark_))
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    public void initChannel(SocketChannel socketChannel) throws Exception {
+                        if (maxIdleTimeInMs_ > 0) socketChannel.pipeline().addLast(new IdleStateHandler(0, 0, maxIdleTimeInMs_, TimeUnit.MILLISECONDS));
+                        socketChannel.pipeline().addLast(new TcpOutputClientHandler(TcpOutputClient.this));
+                    }
+                });
+    }
+
+    /*
+    Returns the client with the specified id. A new client is created if there isn't one, or if the existing client was created with different settings (the old client is closed).
+    */
+    public static TcpOutputClient getClient(String id, String host, int port, int connectTimeoutInMs, int maxConnections, long maxIdleTimeInMs,
+            int writeBufferLowWatermark, int writeBufferHighWatermark, long maxWriteTimeInMs, int numEventLoopThreads) {
+
+        if (id == null) {
+            return null;
+        }
+
+        synchronized (clientsById_) {
+            TcpOutputClient tcpOutputClient = clientsById_.get(id);
+
+            if ((tcpOutputClient != null) && !tcpOutputClient.isClosed_ &&
+                    tcpOutputClient.isSameSettings(host, port, connectTimeoutInMs, maxConnections, maxIdleTimeInMs, writeBufferLowWatermark, writeBufferHighWatermark, maxWriteTimeInMs)) {
+                return tcpOutputClient;
+            }
+
+            if (tcpOutputClient != null) tcpOutputClient.close();
+
+            tcpOutputClient = new TcpOutputClient(id, host, port, connectTimeoutInMs, maxConnections, maxIdleTimeInMs,
+                    writeBufferLowWatermark, writeBufferHighWatermark, maxWriteTimeInMs, getEventLoopGroup(numEventLoopThreads));
+            clientsById_.put(id, tcpOutputClient);
+
+            return tcpOutputClient;
+        }
+    }
+
+    /*
+    Returns every client, sorted by id.
+    */
+    public static List<TcpOutputClient> getClients() {
+        return new ArrayList<>(new TreeMap<>(clientsById_).values());
+    }
+
+    /*
+    Closes every client (after giving them a short time to finish writing what they already accepted) & shuts down the shared event-loop group.
+    */
+    public static void closeAllClients(long maxWaitTimeInMs) {
+
+        synchronized (clientsById_) {
+            List<ChannelFuture> closeFutures = new ArrayList<>();
+
+            for (TcpOutputClient tcpOutputClient : clientsById_.values()) {
+                closeFutures.addAll(tcpOutputClient.close());
+            }
+
+            long endTime = System.currentTimeMillis() + maxWaitTimeInMs;
+            for (ChannelFuture closeFuture : closeFutures) {
+                closeFuture.awaitUninterruptibly(Math.max(endTime - System.currentTimeMillis(), 1));
+            }
+
+            clientsById_.clear();
+        }
+
+        synchronized (eventLoopGroupLock_) {
+            if (eventLoopGroup_ != null) {
+                try {
+                    eventLoopGroup_.shutdownGracefully(0, maxWaitTimeInMs, TimeUnit.MILLISECONDS).await(maxWaitTimeInMs);
+                }
+                catch (Exception e) {
+                    logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+                }
+
+                eventLoopGroup_ = null;
+            }
+        }
+
+    }
+
+    private static EventLoopGroup getEventLoopGroup(int numEventLoopThreads) {
+        synchronized (eventLoopGroupLock_) {
+            if (eventLoopGroup_ == null) eventLoopGroup_ = new NioEventLoopGroup(Math.max(numEventLoopThreads, 1));
+            return eventLoopGroup_;
+        }
+    }
+
+    /*
+    Hands a message to one of the client's connections & returns without waiting for it to be written. If every connection's write buffer is above the high watermark, 
+    this waits (up to 'maxWriteTimeInMs') for one of them to drain below the low watermark.
+    Returns the write's future -- which succeeds once the message was written to the socket, & fails if it couldn't be written (ex -- the connection was closed).
+    Returns null if the message was rejected (no connection could be opened, or no connection's write buffer drained in time).
+    */
+    public Future<Void> write(CharSequence message) {
+
+        if ((message == null) || (message.length() == 0)) {
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
+        }
+
+        Channel channel = getWritableChannel();
+
+        if (channel == null) {
+            numRejectedWrites_.incrementAndGet();
+            return null;
+        }
+
+        return write(channel, ByteBufUtil.writeUtf8(channel.alloc(), message));
+    }
+    
+    /*
+    Writes an already-encoded message (ex -- a range of a flush's rendered metrics, shared by several output modules). Takes ownership of the buffer.
+    Returns null (& releases the buffer) if the message was rejected -- same as write(CharSequence).
+    */
+    public Future<Void> write(ByteBuf message) {
+
+        if ((message == null) || !message.isReadable()) {
+            if (message != null) message.release();
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
+        }
+
+        Channel channel = getWritableChannel();
+
+        if (channel == null) {
+            message.release();
+            numRejectedWrites_.incrementAndGet();
+            return null;
+        }
+
+        return write(channel, message);
+    }
+    
+    private ChannelFuture write(Channel channel, ByteBuf byteBuf) {
+        
+        final int numBytes = byteBuf.readableBytes();
+        final long writeStartTime = System.nanoTime();
+
+        bytesInFlight_.addAndGet(numBytes);
+        numWrites_.incrementAndGet();
+
+        return channel.writeAndFlush(byteBuf).addListener((ChannelFutureListener) (ChannelFuture future) -> {
+            bytesInFlight_.addAndGet(-numBytes);
+
+            if (future.isSuccess()) {
+                long writeLatency = System.nanoTime() - writeStartTime;
+                bytesWritten_.addAndGet(numBytes);
+                numSuccessfulWrites_.incrementAndGet();
+                totalWriteLatencyInNs_.addAndGet(writeLatency);
+                lastWriteLatencyInNs_ = writeLatency;
+
+                long maxWriteLatency = maxWriteLatencyInNs_.get();
+                while ((writeLatency > maxWriteLatency) && !maxWriteLatencyInNs_.compareAndSet(maxWriteLatency, writeLatency)) maxWriteLatency = maxWriteLatencyInNs_.get();
+            }
+            else {
+                numFailedWrites_.incrementAndGet();
+                logger.warn("Failed writing to output endpoint. Endpoint=\"" + host_ + ":" + port_ + "\", Exception=\"" + future.cause() + "\"");
+                future.channel().close();
+            }
+        });
+        
+    }
+
+    /*
+    Returns a connected channel with room in its write buffer (trying each connection, round-robin), opening connections as needed. 
+    If every connected channel's write buffer is full, this waits (up to 'maxWriteTimeInMs') for one of them to become writable.
+    Returns null if there isn't a writable channel (or if no connection could be opened).
+    */
+    private Channel getWritableChannel() {
+
+        long endTime = System.currentTimeMillis() + maxWriteTimeInMs_;
+        
+        // at most one connect is attempted per write. if the endpoint isn't responding, the write is rejected after one connect timeout (rather than one per connection).
+        boolean isConnectAttempted = false;
+
+        while (!isClosed_) {
+            int startIndex = Math.floorMod(nextChannelIndex_.getAndIncrement(), maxConnections_);
+            boolean isAnyChannelConnected = false;
+
+            for (int i = 0; i < maxConnections_; i++) {
+                int channelIndex = (startIndex + i) % maxConnections_;
+                Channel channel = channels_[channelIndex];
+                
+                if ((channel == null) || !channel.isActive()) {
+                    if (isConnectAttempted) continue;
+                    isConnectAttempted = true;
+                    channel = getChannel(channelIndex);
+                }
+                
+                if ((channel != null) && channel.isWritable()) return channel;
+                if ((channel != null) && channel.isActive()) isAnyChannelConnected = true;
+            }
+
+            // there's nothing to wait for if the endpoint can't be connected to
+            long remainingTime = endTime - System.currentTimeMillis();
+            if (!isAnyChannelConnected || (remainingTime <= 0)) return null;
+
+            // woken up when a channel becomes writable (or is closed). the wait is capped, in case the channel became writable before the wait started.
+            synchronized (writabilityLock_) {
+                try {
+                    writabilityLock_.wait(Math.min(remainingTime, 100));
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /*
+    Returns the channel at 'channelIndex', connecting it if it isn't connected. The connection is made outside of the channel lock, 
+    so a slow connect only holds up the writes that are waiting on that same channel.
+    */
+    private Channel getChannel(int channelIndex) {
+
+        Channel channel = channels_[channelIndex];
+        if ((channel != null) && channel.isActive()) return channel;
+
+        ChannelFuture connectFuture;
+
+        synchronized (channels_) {
+            channel = channels_[channelIndex];
+            if ((channel != null) && channel.isActive()) return channel;
+            if (isClosed_) return null;
+
+            // only one connect per channel is in progress at a time. other threads that need the channel wait on the same connect.
+            if (connectFutures_[channelIndex] == null) connectFutures_[channelIndex] = bootstrap_.connect(host_, port_);
+            connectFuture = connectFutures_[channelIndex];
+        }
+
+        boolean isConnected = connectFuture.awaitUninterruptibly(Math.max(connectTimeoutInMs_, 1) + 1000) && connectFuture.isSuccess();
+
+        synchronized (channels_) {
+            if (connectFutures_[channelIndex] == connectFuture) {
+                connectFutures_[channelIndex] = null;
+                
+                if (isConnected && !isClosed_) {
+                    numConnects_.incrementAndGet();
+                    channels_[channelIndex] = connectFuture.channel();
+                }
+                else {
+                    if (!isClosed_) logger.error("Error creating TCP connection to output endpoint. Endpoint=\"" + host_ + ":" + port_ + "\", Exception=\"" + connectFuture.cause() + "\"");
+                    connectFuture.channel().close();
+                }
+            }
+
+            channel = channels_[channelIndex];
+            return ((channel != null) && channel.isActive()) ? channel : null;
+        }
+    }
+
+    /*
+    Stops the client from accepting writes, & closes its connections once they have written what they already accepted. Returns the close futures of the connections.
+    */
+    public List<ChannelFuture> close() {
+
+        List<ChannelFuture> closeFutures = new ArrayList<>();
+
+        synchronized (channels_) {
+            isClosed_ = true;
+
+            for (int i = 0; i < channels_.length; i++) {
+                Channel channel = channels_[i];
+                if (channel == null) continue;
+
+                ChannelFuture closeFuture = channel.closeFuture();
+                if (channel.isActive()) channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+                else channel.close();
+
+                closeFutures.add(closeFuture);
+                channels_[i] = null;
+            }
+
+            for (int i = 0; i < connectFutures_.length; i++) {
+                if (connectFutures_[i] == null) continue;
+                
+                connectFutures_[i].cancel(false);
+                connectFutures_[i].channel().close();
+                connectFutures_[i] = null;
+            }
+        }
+
+        synchronized (writabilityLock_) {
+            writabilityLock_.notifyAll();
+        }
+
+        return closeFutures;
+    }
+
+    private boolean isSameSettings(String host, int port, int connectTimeoutInMs, int maxConnections, long maxIdleTimeInMs, 
+            int writeBufferLowWatermark, int writeBufferHighWatermark, long maxWriteTimeInMs) {
+        int lowWatermark = Math.max(writeBufferLowWatermark, 1);
+        int highWatermark = Math.max(writeBufferHighWatermark, lowWatermark);
+
+        return (host_ != null) && host_.equals(host) && (port_ == port) && (connectTimeoutInMs_ == connectTimeoutInMs) &&
+                (maxConnections_ == ((maxConnections > 0) ? maxConnections : 1)) && (maxIdleTimeInMs_ == maxIdleTimeInMs) &&
+                (writeBufferLowWatermark_ == lowWatermark) && (writeBufferHighWatermark_ == highWatermark) && (maxWriteTimeInMs_ == Math.max(maxWriteTimeInMs, 0));
+    }
+
+    private void notifyWritabilityChanged() {
+        synchronized (writabilityLock_) {
+            writabilityLock_.notifyAll();
+        }
+    }
+
+    public int getConnectedChannelCount() {
+
+        int connectedChannelCount = 0;
+
+        for (Channel channel : channels_) {
+            if ((channel != null) && channel.isActive()) connectedChannelCount++;
+        }
+
+        return connectedChannelCount;
+    }
+
+    public String getId() {
+        return id_;
+    }
+
+    public String getHost() {
+        return host_;
+    }
+
+    public int getPort() {
+        return port_;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections_;
+    }
+
+    public long getMaxWriteTimeInMs() {
+        return maxWriteTimeInMs_;
+    }
+
+    public boolean isClosed() {
+        return isClosed_;
+    }
+
+    public long getBytesInFlight() {
+        return bytesInFlight_.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten_.get();
+    }
+
+    public long getNumWrites() {
+        return numWrites_.get();
+    }
+
+    public long getNumFailedWrites() {
+        return numFailedWrites_.get();
+    }
+
+    public long getNumRejectedWrites() {
+        return numRejectedWrites_.get();
+    }
+
+    public long getNumConnects() {
+        return numConnects_.get();
+    }
+
+    public double getAverageWriteLatencyInMs() {
+        long numSuccessfulWrites = numSuccessfulWrites_.get();
+        if (numSuccessfulWrites == 0) return 0;
+        return (totalWriteLatencyInNs_.get() / (double) numSuccessfulWrites) / 1000000;
+    }
+
+    public double getMaxWriteLatencyInMs() {
+        return maxWriteLatencyInNs_.get() / 1000000.0;
+    }
+
+    public double getLastWriteLatencyInMs() {
+        return lastWriteLatencyInNs_ / 1000000.0;
+    }
+
+    /*
+    Discards anything the server sends, closes the connection when it has been idle for too long, & closes the connection on errors (so it is reopened on the next write).
+    Wakes up writes that are waiting for a writable connection whenever a connection's writability changes (or the connection is closed).
+    */
+    private static class TcpOutputClientHandler extends ChannelInboundHandlerAdapter {
+
+        private final TcpOutputClient tcpOutputClient__;
+
+        public TcpOutputClientHandler(TcpOutputClient tcpOutputClient) {
+            this.tcpOutputClient__ = tcpOutputClient;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            if (ctx.channel().isWritable()) tcpOutputClient__.notifyWritabilityChanged();
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            tcpOutputClient__.notifyWritabilityChanged();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+            if (event instanceof IdleStateEvent) ctx.close();
+            else super.userEventTriggered(ctx, event);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.warn("Output connection error. Endpoint=\"" + tcpOutputClient__.host_ + ":" + tcpOutputClient__.port_ + "\", Exception=\"" + cause + "\"");
+            ctx.close();
+        }
+
+    }
+
+}
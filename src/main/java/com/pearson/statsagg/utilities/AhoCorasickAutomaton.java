@@ -0,0 +1,175 @@
+package com.pearson.statsagg.utilities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds which of a set of literal strings occur (as substrings) in a piece of text, in a single pass over the text.
+ * Instances are immutable & are safe to use from multiple threads.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class AhoCorasickAutomaton {
+
+    private static final Logger logger = LoggerFactory.getLogger(AhoCorasickAutomaton.class.getName());
+
+    private static final int[] EMPTY_INT_ARRAY = new int[0];
+
+    private final int literalCount_;
+
+    // per trie node: the sorted characters that have a child node, and the child node for each of those characters
+    private final char[][] transitionCharacters_;
+    private final int[][] transitionNodes_;
+    private final int[] failureNodes_;
+
+    // per trie node: the indexes of every literal that ends at this node (including literals that end at a suffix of this node)
+    private final int[][] outputs_;
+
+    public AhoCorasickAutomaton(List<String> literals) {
+
+        literalCount_ = (literals == null) ? 0 : literals.size();
+
+        List<Map<Character,Integer>> children = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        children.add(new HashMap<Character,Integer>());
+        outputs.add(new ArrayList<Integer>());
+
+        for (int i = 0; i < literalCount_; i++) {
+            String literal = literals.get(i);
+            if ((literal == null) || literal.isEmpty()) continue;
+
+            int node = 0;
+
+            for (int j = 0; j < literal.length(); j++) {
+                Integer childNode = children.get(node).get(literal.charAt(j));
+
+                if (childNode == null) {
+                    childNode = children.size();
+                    children.add(new HashMap<Character,Integer>());
+                    outputs.add(new ArrayList<Integer>());
+                    children.get(node).put(literal.charAt(j), childNode);
+                }
+
+                node = childNode;
+            }
+
+            outputs.get(node).add(i);
+        }
+
+        int nodeCount = children.size();
+        transitionCharacters_ = new char[nodeCount][];
+        transitionNodes_ = new int[nodeCount][];
+        failureNodes_ = new int[nodeCount];
+        outputs_ = new int[nodeCount][];
+
+        for (int node = 0; node < nodeCount; node++) {
+            char[] transitionCharacters = new char[children.get(node).size()];
+            int i = 0;
+            for (Character character : children.get(node).keySet()) transitionCharacters[i++] = character;
+            Arrays.sort(transitionCharacters);
+
+            int[] transitionNodes = new int[transitionCharacters.length];
+            for (int j = 0; j < transitionCharacters.length; j++) transitionNodes[j] = children.get(node).get(transitionCharacters[j]);
+
+            transitionCharacters_[node] = transitionCharacters;
+            transitionNodes_[node] = transitionNodes;
+        }
+
+        // breadth-first, so a node's failure node (which is always shallower) is finished before the node itself
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        outputs_[0] = EMPTY_INT_ARRAY;
+
+        for (int childNode : transitionNodes_[0]) {
+            failureNodes_[childNode] = 0;
+            queue.add(childNode);
+        }
+
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+
+            BitSet nodeOutputs = new BitSet();
+            for (Integer literalIndex : outputs.get(node)) nodeOutputs.set(literalIndex);
+            for (int literalIndex : outputs_[failureNodes_[node]]) nodeOutputs.set(literalIndex);
+            outputs_[node] = nodeOutputs.isEmpty() ? EMPTY_INT_ARRAY : nodeOutputs.stream().toArray();
+
+            for (int i = 0; i < transitionCharacters_[node].length; i++) {
+                char character = transitionCharacters_[node][i];
+                int childNode = transitionNodes_[node][i];
+
+                int failureNode = failureNodes_[node];
+                while ((failureNode != 0) && (getTransition(failureNode, character) < 0)) failureNode = failureNodes_[failureNode];
+                int failureTransition = getTransition(failureNode, character);
+                failureNodes_[childNode] = ((failureTransition >= 0) && (failureTransition != childNode)) ? failureTransition : 0;
+
+                queue.add(childNode);
+            }
+        }
+    }
+
+    private int getTransition(int node, char character) {
+        int index = Arrays.binarySearch(transitionCharacters_[node], character);
+        return (index >= 0) ? transitionNodes_[node][index] : -1;
+    }
+
+    /*
+    Returns true if the text contains any of the literals.
+    */
+    public boolean containsAny(String text) {
+
+        if (text == null) {
+            return false;
+        }
+
+        int node = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            node = next(node, text.charAt(i));
+            if (outputs_[node].length > 0) return true;
+        }
+
+        return false;
+    }
+
+    /*
+    Returns the indexes of every literal that the text contains.
+    */
+    public BitSet getContainedLiteralIndexes(String text) {
+
+        BitSet containedLiteralIndexes = new BitSet(literalCount_);
+
+        if (text == null) {
+            return containedLiteralIndexes;
+        }
+
+        int node = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            node = next(node, text.charAt(i));
+            for (int literalIndex : outputs_[node]) containedLiteralIndexes.set(literalIndex);
+        }
+
+        return containedLiteralIndexes;
+    }
+
+    private int next(int node, char character) {
+
+        while (true) {
+            int transition = getTransition(node, character);
+            if (transition >= 0) return transition;
+            if (node == 0) return 0;
+            node = failureNodes_[node];
+        }
+    }
+
+    public int getLiteralCount() {
+        return literalCount_;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.pearson.statsagg.utilities;
+
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Jeffrey Schmidt
+ *
+ * Per-host connection pooling for HttpRequest.
+ *
+ * Idle keep-alive connections (including their TLS sessions) are pooled, per host, by the jvm's HttpURLConnection keep-alive cache.
+ * A connection only goes back to that cache once its response has been fully read & closed, & the cache only holds 'http.maxConnections' idle connections per host.
+ * This class sizes the keep-alive cache, & limits the number of in-flight requests to each host to the same size, so that every connection that is
+ * opened to a host can be returned to (& reused from) the keep-alive cache instead of being torn down after a single request.
+ */
+public class HttpConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class.getName());
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 10;
+
+    private static final ConcurrentHashMap<String,Semaphore> connectionPermitsByHost_ = new ConcurrentHashMap<>();
+    private static volatile int maxConnectionsPerHost_ = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    /*
+    Sets the maximum number of concurrent connections to a single host.
+    The jvm only reads 'http.maxConnections' once, so this must be called before the first http request is made.
+    'http.maxConnections' isn't overridden if it was already set (ex -- on the java command line).
+    */
+    public static void initialize(int maxConnectionsPerHost) {
+
+        if (maxConnectionsPerHost <= 0) {
+            logger.warn("The maximum number of HTTP connections per host must be greater than 0. Using default=" + DEFAULT_MAX_CONNECTIONS_PER_HOST);
+            maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        }
+
+        maxConnectionsPerHost_ = maxConnectionsPerHost;
+        connectionPermitsByHost_.clear();
+
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", Integer.toString(maxConnectionsPerHost));
+        }
+
+        logger.info("HTTP connection pool initialized. MaxConnectionsPerHost=" + maxConnectionsPerHost + ", KeepAliveCacheSizePerHost=" + System.getProperty("http.maxConnections"));
+    }
+
+    /*
+    Returns the key that connections are pooled by. Ex -- "https://opentsdb.some-domain.com:4243"
+    */
+    public static String getHostKey(URL url) {
+
+        if (url == null) {
+            return null;
+        }
+
+        int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol().toLowerCase(Locale.ROOT) + "://" + url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    /*
+    Returns the permits for making requests to a host. Every request to the host must hold a permit until its response has been read & its connection has been released.
+    Callers should release the permit to the semaphore that they acquired it from (not to a semaphore that was looked up later).
+    */
+    public static Semaphore getConnectionPermits(URL url) {
+
+        String hostKey = getHostKey(url);
+        if (hostKey == null) return null;
+
+        return connectionPermitsByHost_.computeIfAbsent(hostKey, key -> new Semaphore(maxConnectionsPerHost_, true));
+    }
+
+    public static int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost_;
+    }
+
+}
@@ -1,14 +1,22 @@
 package com.pearson.statsagg.utilities;
 
 import com.google.common.io.CharStreams;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,14 +25,29 @@ import org.slf4j.LoggerFactory;
  * 
  * This class can be used to make arbitrary HTTP requests. 
  * This class is NOT thread-safe, so you can't use it to make multiple concurrent requests. However, you can use it to make sequential requests.
+ * 
+ * Connections are pooled per-host (see HttpConnectionPool), so a request to a host that was recently sent a request normally reuses that request's 
+ * keep-alive connection, instead of paying for a new TCP connection (& TLS handshake).
  */
 public class HttpRequest {
     
     private static final Logger logger = LoggerFactory.getLogger(HttpRequest.class.getName());
+    
+    private static final int STREAMED_HTTP_BODY_BUFFER_SIZE = 65536;
+    private static final int DISCARDED_HTTP_RESPONSE_BUFFER_SIZE = 8192;
+    
+    /*
+    Writes a http request's body straight to the request's output stream, so that the body doesn't have to be built in memory first.
+    */
+    public interface HttpBodyWriter {
+        public void write(OutputStream outputStream) throws IOException;
+    }
 
     private final String url_;
     private final Map<String,String> headerProperties_;
     private final byte[] httpBody_;
+    private final HttpBodyWriter httpBodyWriter_;
+    private final boolean gzipHttpBody_;
     private final String httpRequestMethod_;
     private final int connectTimeoutInMs_;
     private final int readTimeoutInMs_;
@@ -34,6 +57,7 @@ public class HttpRequest {
     private int retryAttemptCounter_ = -1;
     private HttpURLConnection httpUrlConnection_ = null;
     private DataOutputStream dataOutputStream_ = null;
+    private InputStream inputStream_ = null;
     private InputStreamReader inputStreamReader_ = null;
     private BufferedReader bufferedReader_ = null;
     private String httpResponse_ = null;
@@ -41,12 +65,15 @@ public class HttpRequest {
     private boolean isHttpRequestSuccess_ = false;
     
     private boolean continueRetrying_ = true;
+    private boolean discardResponseBody_ = false;
     
     public HttpRequest(String url, Map<String,String> headerProperties, byte[] httpBody, String httpRequestMethod, 
             int connectTimeoutInMs, int readTimeoutInMs, int numRetries, boolean logErrorResponse){
         this.url_ = url;
         this.headerProperties_ = headerProperties;
         this.httpBody_ = httpBody;
+        this.httpBodyWriter_ = null;
+        this.gzipHttpBody_ = false;
         this.httpRequestMethod_ = httpRequestMethod;
         this.connectTimeoutInMs_ = connectTimeoutInMs;
         this.readTimeoutInMs_ = readTimeoutInMs;
@@ -64,6 +91,26 @@ public class HttpRequest {
         this.url_ = url;
         this.headerProperties_ = headerProperties;
         this.httpBody_ = httpBodyBytes;
+        this.httpBodyWriter_ = null;
+        this.gzipHttpBody_ = false;
+        this.httpRequestMethod_ = httpRequestMethod;
+        this.connectTimeoutInMs_ = connectTimeoutInMs;
+        this.readTimeoutInMs_ = readTimeoutInMs;
+        this.numRetries_ = numRetries;
+        this.logErrorResponse_ = logErrorResponse;
+    }
+    
+    /*
+    The body is streamed to the server (chunked) as 'httpBodyWriter' writes it. If 'gzipHttpBody' is true, then the body is gzip compressed while it is streamed.
+    'httpBodyWriter' is called once per attempt, so it must be able to write the same body more than once.
+    */
+    public HttpRequest(String url, Map<String,String> headerProperties, HttpBodyWriter httpBodyWriter, boolean gzipHttpBody, String httpRequestMethod, 
+            int connectTimeoutInMs, int readTimeoutInMs, int numRetries, boolean logErrorResponse) {
+        this.url_ = url;
+        this.headerProperties_ = headerProperties;
+        this.httpBody_ = null;
+        this.httpBodyWriter_ = httpBodyWriter;
+        this.gzipHttpBody_ = gzipHttpBody;
         this.httpRequestMethod_ = httpRequestMethod;
         this.connectTimeoutInMs_ = connectTimeoutInMs;
         this.readTimeoutInMs_ = readTimeoutInMs;
@@ -73,6 +120,7 @@ public class HttpRequest {
             
     // httpRequestMethod can be "GET", "POST", "PUT", etc
     // returns the body of the http response (if there is one). if there was no response, or there was an error, this returns null
+    // if the response body is being discarded (see setDiscardResponseBody), this returns an empty string instead of the body
     public String makeRequest() {
         
         if (url_ == null) {
@@ -103,19 +151,38 @@ public class HttpRequest {
         httpResponse_ = null;
         didEncounterConnectionError_ = false;
         isHttpRequestSuccess_ = false;
+        boolean isStaleConnectionRetried = false;
         
         for (retryAttemptCounter_ = -1; (retryAttemptCounter_ < numRetries_) && !isHttpRequestSuccess_ && continueRetrying_; retryAttemptCounter_++) {
+            boolean isResponseFullyRead = false;
+            boolean isConnectionLost = false;
+            Semaphore connectionPermits = null;
+            boolean isConnectionPermitAcquired = false;
+            
             try {
                 boolean didEncounterError = false;
                 
                 URL connectionUrl = new URL(url_);
+                
+                // waits for one of the host's pooled connections. a request can't hold a connection for much longer than the connect + read timeouts.
+                connectionPermits = HttpConnectionPool.getConnectionPermits(connectionUrl);
+                long maxConnectionWaitTimeInMs = ((connectTimeoutInMs_ == 0) || (readTimeoutInMs_ == 0)) ? Long.MAX_VALUE : ((long) connectTimeoutInMs_ + readTimeoutInMs_);
+                isConnectionPermitAcquired = connectionPermits.tryAcquire(maxConnectionWaitTimeInMs, TimeUnit.MILLISECONDS);
+                
+                if (!isConnectionPermitAcquired) {
+                    logger.error("Timed out waiting for a pooled HTTP connection. Host=\"" + HttpConnectionPool.getHostKey(connectionUrl) + "\"");
+                    didEncounterConnectionError_ = true;
+                    continue;
+                }
+                
                 httpUrlConnection_ = (HttpURLConnection) connectionUrl.openConnection();
                 httpUrlConnection_.setConnectTimeout(connectTimeoutInMs_);
                 httpUrlConnection_.setReadTimeout(readTimeoutInMs_);
                 httpUrlConnection_.setRequestMethod(httpRequestMethod_);
                 
                 if (httpRequestMethod_.equalsIgnoreCase("POST") || httpRequestMethod_.equalsIgnoreCase("PUT")) {
-                    if (httpBody_ != null) httpUrlConnection_.setRequestProperty("Content-Length", Integer.toString(httpBody_.length));
+                    if (httpBodyWriter_ != null) httpUrlConnection_.setChunkedStreamingMode(STREAMED_HTTP_BODY_BUFFER_SIZE);
+                    else if (httpBody_ != null) httpUrlConnection_.setRequestProperty("Content-Length", Integer.toString(httpBody_.length));
                     else httpUrlConnection_.setRequestProperty("Content-Length", "0");
 
                     if (headerProperties_ != null) {
@@ -125,6 +192,8 @@ public class HttpRequest {
                         }
                     }
                     
+                    if ((httpBodyWriter_ != null) && gzipHttpBody_) httpUrlConnection_.setRequestProperty("Content-Encoding", "gzip");
+                    
                     httpUrlConnection_.setDoOutput(true);
                 }
                 
@@ -137,45 +206,99 @@ public class HttpRequest {
                     continue;
                 }
                 
-                if (httpRequestMethod_.equalsIgnoreCase("POST") || httpRequestMethod_.equalsIgnoreCase("PUT")) {
+                if ((httpRequestMethod_.equalsIgnoreCase("POST") || httpRequestMethod_.equalsIgnoreCase("PUT")) && (httpBodyWriter_ != null)) {
+                    OutputStream outputStream = httpUrlConnection_.getOutputStream();
+                    dataOutputStream_ = new DataOutputStream(gzipHttpBody_ ? new GZIPOutputStream(outputStream, STREAMED_HTTP_BODY_BUFFER_SIZE) : 
+                            new BufferedOutputStream(outputStream, STREAMED_HTTP_BODY_BUFFER_SIZE));
+                    httpBodyWriter_.write(dataOutputStream_);
+                    
+                    // finishes the gzip stream (if gzip is enabled) & the chunked request body
+                    dataOutputStream_.close();
+                    dataOutputStream_ = null;
+                }
+                else if (httpRequestMethod_.equalsIgnoreCase("POST") || httpRequestMethod_.equalsIgnoreCase("PUT")) {
                     dataOutputStream_ = new DataOutputStream(httpUrlConnection_.getOutputStream());
-                    dataOutputStream_.write(httpBody_);
+                    if (httpBody_ != null) dataOutputStream_.write(httpBody_);
                     dataOutputStream_.flush();
                 }
 
                 try {
-                    inputStreamReader_ = new InputStreamReader(httpUrlConnection_.getInputStream());
+                    inputStream_ = httpUrlConnection_.getInputStream();
                 }
                 catch (Exception e) {
                     logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
-                    
                     didEncounterError = true;
+                    isConnectionLost = isConnectionLostError(e);
                     
-                    if (inputStreamReader_ != null) {
-                        try {inputStreamReader_.close();} 
-                        catch (Exception e2) {logger.error(e2.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e2));}
-                    }
+                    // the error response also has to be read in full, or the connection can't go back to the keep-alive cache
+                    inputStream_ = httpUrlConnection_.getErrorStream();
+                }
                 
-                    inputStreamReader_ = new InputStreamReader(httpUrlConnection_.getErrorStream());
-                    if (logErrorResponse_) logger.error("HTTP_error_response_body:\"" + StringUtilities.removeNewlinesFromString(httpResponse_) + "\"");
+                // without a response stream, there's no way to tell if the connection is reusable, so it is disconnected
+                if (inputStream_ == null) {
+                    continue;
+                }
+                
+                if (discardResponseBody_ && !(didEncounterError && logErrorResponse_)) {
+                    discardInputStream(inputStream_);
+                    httpResponse_ = "";
+                }
+                else {
+                    inputStreamReader_ = new InputStreamReader(inputStream_);
+                    bufferedReader_ = new BufferedReader(inputStreamReader_);
+                    httpResponse_ = CharStreams.toString(bufferedReader_);
                 }
                 
-                bufferedReader_ = new BufferedReader(inputStreamReader_);
-                httpResponse_ = CharStreams.toString(bufferedReader_);
+                isResponseFullyRead = true;
+                if (didEncounterError && logErrorResponse_) logger.error("HTTP_error_response_body:\"" + StringUtilities.removeNewlinesFromString(httpResponse_) + "\"");
                 if (!didEncounterError) isHttpRequestSuccess_ = true;
             }
             catch (Exception e) {
                 logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+                isConnectionLost = isConnectionLostError(e);
             }
             finally {
-                closeResources();
+                // a pooled keep-alive connection may have been closed by the server while it was idle. that costs one extra attempt, not one of the request's retries.
+                if (isConnectionLost && !isResponseFullyRead && !isStaleConnectionRetried) {
+                    isStaleConnectionRetried = true;
+                    retryAttemptCounter_--;
+                }
+                
+                // once the whole response has been read, the connection can go back to the jvm's keep-alive cache & be reused by the next request to the same server
+                closeResources(!isResponseFullyRead);
+                if (isConnectionPermitAcquired) connectionPermits.release();
             }
         }
         
         return httpResponse_;
     }
     
+    /*
+    Returns true if the request failed because the connection was closed or reset before a response was received (as opposed to an error response, or a timeout).
+    */
+    private static boolean isConnectionLostError(Exception e) {
+        
+        if (e instanceof SocketException) return true;
+        
+        return (e instanceof IOException) && (e.getMessage() != null) && e.getMessage().startsWith("Unexpected end of file");
+    }
+    
+    /*
+    Reads (& throws away) the rest of a response, so that its connection can go back to the keep-alive cache. The response is never held in memory.
+    */
+    private static void discardInputStream(InputStream inputStream) throws IOException {
+        byte[] discardBuffer = new byte[DISCARDED_HTTP_RESPONSE_BUFFER_SIZE];
+        while (inputStream.read(discardBuffer) != -1);
+    }
+    
+    /*
+    Closes the request's streams, & disconnects the request's connection (so that it can't be reused).
+    */
     public void closeResources() {
+        closeResources(true);
+    }
+    
+    private void closeResources(boolean disconnect) {
         if (dataOutputStream_ != null) {
             try {
                 dataOutputStream_.close();
@@ -206,9 +329,19 @@ public class HttpRequest {
             }
         }
 
+        if (inputStream_ != null) {
+            try {
+                inputStream_.close();
+                inputStream_ = null;
+            } 
+            catch (Exception e) {
+                logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            }
+        }
+
         if (httpUrlConnection_ != null) {
             try {
-                httpUrlConnection_.disconnect();
+                if (disconnect) httpUrlConnection_.disconnect();
                 httpUrlConnection_ = null;
             } 
             catch (Exception e) {
@@ -228,6 +361,7 @@ public class HttpRequest {
 
         for (String httpBody : httpBodies) {
             HttpRequest httpRequest = new HttpRequest(url, headerProperties, httpBody, httpBodyCharset, httpRequestMethod, connectTimeoutInMs, readTimeoutInMs, numRetries, logErrorResponse);
+            httpRequest.setDiscardResponseBody(true);
             String response = httpRequest.makeRequest();
             if (response == null) isAllRequestsSuccess = false;
         }
@@ -246,6 +380,7 @@ public class HttpRequest {
 
         for (byte[] httpBody : httpBodies) {
             HttpRequest httpRequest = new HttpRequest(url, headerProperties, httpBody, httpRequestMethod, connectTimeoutInMs, readTimeoutInMs, numRetries, logErrorResponse);
+            httpRequest.setDiscardResponseBody(true);
             String response = httpRequest.makeRequest();
             if (response == null) isAllRequestsSuccess = false;
         }
@@ -269,6 +404,10 @@ public class HttpRequest {
         return dataOutputStream_;
     }
 
+    public InputStream getInputStream() {
+        return inputStream_;
+    }
+
     public InputStreamReader getInputStreamReader() {
         return inputStreamReader_;
     }
@@ -297,4 +436,15 @@ public class HttpRequest {
         this.continueRetrying_ = continueRetrying;
     }
 
+    public boolean isDiscardResponseBody() {
+        return discardResponseBody_;
+    }
+
+    /*
+    If true, the body of a successful response is read & thrown away instead of being returned. Error responses are still returned if 'logErrorResponse' is true.
+    */
+    public void setDiscardResponseBody(boolean discardResponseBody) {
+        this.discardResponseBody_ = discardResponseBody;
+    }
+
 }
@@ -0,0 +1,647 @@
+package com.pearson.statsagg.utilities;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compressed bitmap of non-negative ints, laid out the same way as a Roaring bitmap.
+ * The high 16 bits of a value select a container, and the container stores the low 16 bits of every value that has those high 16 bits.
+ * Sparse containers are sorted arrays of 16-bit values & dense containers (more than 4096 values) are 65536-bit bitmaps,
+ * so a dense range of ints costs ~1 bit per int & a sparse set of ints costs ~2 bytes per int.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class IntegerBitmap {
+
+    private static final Logger logger = LoggerFactory.getLogger(IntegerBitmap.class.getName());
+
+    private static final int ARRAY_CONTAINER_MAX_CARDINALITY = 4096;
+    private static final int BITMAP_CONTAINER_WORD_COUNT = 1024;
+    private static final int INITIAL_ARRAY_CONTAINER_CAPACITY = 4;
+
+    // sorted high 16 bits of each container. only the first 'containerCount_' entries are in use.
+    private char[] keys_;
+    private Container[] containers_;
+    private int containerCount_;
+
+    public IntegerBitmap() {
+        keys_ = new char[0];
+        containers_ = new Container[0];
+        containerCount_ = 0;
+    }
+
+    private IntegerBitmap(char[] keys, Container[] containers, int containerCount) {
+        keys_ = keys;
+        containers_ = containers;
+        containerCount_ = containerCount;
+    }
+
+    /*
+    Returns true if the value was not already in the bitmap.
+    */
+    public boolean add(int value) {
+
+        if (value < 0) {
+            throw new IllegalArgumentException("IntegerBitmap values must not be negative");
+        }
+
+        char key = (char) (value >>> 16);
+        int index = getContainerIndex(key);
+
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+
+        Container container = containers_[index];
+        int cardinality = container.getCardinality();
+        containers_[index] = container.add((char) value);
+
+        return containers_[index].getCardinality() > cardinality;
+    }
+
+    /*
+    Returns true if the value was in the bitmap.
+    */
+    public boolean remove(int value) {
+
+        if (value < 0) {
+            return false;
+        }
+
+        int index = getContainerIndex((char) (value >>> 16));
+        if (index < 0) return false;
+
+        Container container = containers_[index];
+        int cardinality = container.getCardinality();
+        containers_[index] = container.remove((char) value);
+        boolean isRemoved = containers_[index].getCardinality() < cardinality;
+
+        if (containers_[index].getCardinality() == 0) removeContainer(index);
+
+        return isRemoved;
+    }
+
+    public boolean contains(int value) {
+
+        if (value < 0) {
+            return false;
+        }
+
+        int index = getContainerIndex((char) (value >>> 16));
+        return (index >= 0) && containers_[index].contains((char) value);
+    }
+
+    public int getCardinality() {
+
+        int cardinality = 0;
+        for (int i = 0; i < containerCount_; i++) cardinality += containers_[i].getCardinality();
+
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return containerCount_ == 0;
+    }
+
+    public void clear() {
+        keys_ = new char[0];
+        containers_ = new Container[0];
+        containerCount_ = 0;
+    }
+
+    public IntegerBitmap copy() {
+
+        char[] keys = Arrays.copyOf(keys_, containerCount_);
+        Container[] containers = new Container[containerCount_];
+        for (int i = 0; i < containerCount_; i++) containers[i] = containers_[i].copy();
+
+        return new IntegerBitmap(keys, containers, containerCount_);
+    }
+
+    /*
+    Adds every value in 'other' to this bitmap.
+    */
+    public void or(IntegerBitmap other) {
+
+        if ((other == null) || other.isEmpty()) {
+            return;
+        }
+
+        char[] keys = new char[containerCount_ + other.containerCount_];
+        Container[] containers = new Container[containerCount_ + other.containerCount_];
+        int i = 0, j = 0, k = 0;
+
+        while ((i < containerCount_) || (j < other.containerCount_)) {
+            if ((j >= other.containerCount_) || ((i < containerCount_) && (keys_[i] < other.keys_[j]))) {
+                keys[k] = keys_[i];
+                containers[k++] = containers_[i++];
+            }
+            else if ((i >= containerCount_) || (other.keys_[j] < keys_[i])) {
+                keys[k] = other.keys_[j];
+                containers[k++] = other.containers_[j++].copy();
+            }
+            else {
+                keys[k] = keys_[i];
+                containers[k++] = containers_[i++].or(other.containers_[j++]);
+            }
+        }
+
+        keys_ = keys;
+        containers_ = containers;
+        containerCount_ = k;
+    }
+
+    /*
+    Removes every value in 'other' from this bitmap.
+    */
+    public void andNot(IntegerBitmap other) {
+
+        if ((other == null) || other.isEmpty()) {
+            return;
+        }
+
+        int k = 0;
+
+        for (int i = 0; i < containerCount_; i++) {
+            Container container = containers_[i];
+            int otherIndex = other.getContainerIndex(keys_[i]);
+            if (otherIndex >= 0) container = container.andNot(other.containers_[otherIndex]);
+
+            if (container.getCardinality() > 0) {
+                keys_[k] = keys_[i];
+                containers_[k++] = container;
+            }
+        }
+
+        for (int i = k; i < containerCount_; i++) containers_[i] = null;
+        containerCount_ = k;
+    }
+
+    /*
+    Removes every value that isn't in 'other' from this bitmap.
+    */
+    public void and(IntegerBitmap other) {
+
+        if ((other == null) || other.isEmpty()) {
+            clear();
+            return;
+        }
+
+        int k = 0;
+
+        for (int i = 0; i < containerCount_; i++) {
+            int otherIndex = other.getContainerIndex(keys_[i]);
+            if (otherIndex < 0) continue;
+
+            Container container = containers_[i].and(other.containers_[otherIndex]);
+
+            if (container.getCardinality() > 0) {
+                keys_[k] = keys_[i];
+                containers_[k++] = container;
+            }
+        }
+
+        for (int i = k; i < containerCount_; i++) containers_[i] = null;
+        containerCount_ = k;
+    }
+
+    public static IntegerBitmap or(IntegerBitmap bitmap1, IntegerBitmap bitmap2) {
+        IntegerBitmap result = (bitmap1 == null) ? new IntegerBitmap() : bitmap1.copy();
+        result.or(bitmap2);
+        return result;
+    }
+
+    public static IntegerBitmap andNot(IntegerBitmap bitmap1, IntegerBitmap bitmap2) {
+        IntegerBitmap result = (bitmap1 == null) ? new IntegerBitmap() : bitmap1.copy();
+        result.andNot(bitmap2);
+        return result;
+    }
+
+    public static IntegerBitmap and(IntegerBitmap bitmap1, IntegerBitmap bitmap2) {
+        IntegerBitmap result = (bitmap1 == null) ? new IntegerBitmap() : bitmap1.copy();
+        result.and(bitmap2);
+        return result;
+    }
+
+    /*
+    Releases any unused capacity.
+    */
+    public void trim() {
+
+        if (keys_.length > containerCount_) {
+            keys_ = Arrays.copyOf(keys_, containerCount_);
+            containers_ = Arrays.copyOf(containers_, containerCount_);
+        }
+
+        for (int i = 0; i < containerCount_; i++) containers_[i].trim();
+    }
+
+    /*
+    Returns the values in ascending order.
+    */
+    public int[] toArray() {
+
+        int[] values = new int[getCardinality()];
+        int i = 0;
+
+        PrimitiveIterator.OfInt iterator = iterator();
+        while (iterator.hasNext()) values[i++] = iterator.nextInt();
+
+        return values;
+    }
+
+    /*
+    Iterates over the values in ascending order. The bitmap must not be modified while it is being iterated over.
+    */
+    public PrimitiveIterator.OfInt iterator() {
+
+        return new PrimitiveIterator.OfInt() {
+
+            private int containerIndex__ = 0;
+            private int nextLowBits__ = (containerCount_ > 0) ? containers_[0].nextValue(0) : -1;
+
+            @Override
+            public boolean hasNext() {
+
+                while ((nextLowBits__ < 0) && (containerIndex__ < containerCount_)) {
+                    containerIndex__++;
+                    if (containerIndex__ < containerCount_) nextLowBits__ = containers_[containerIndex__].nextValue(0);
+                }
+
+                return nextLowBits__ >= 0;
+            }
+
+            @Override
+            public int nextInt() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                int value = (keys_[containerIndex__] << 16) | nextLowBits__;
+                nextLowBits__ = (nextLowBits__ < 0xFFFF) ? containers_[containerIndex__].nextValue(nextLowBits__ + 1) : -1;
+
+                return value;
+            }
+        };
+    }
+
+    private int getContainerIndex(char key) {
+
+        // the most recently added values usually land in the last container
+        if ((containerCount_ > 0) && (keys_[containerCount_ - 1] == key)) {
+            return containerCount_ - 1;
+        }
+
+        return Arrays.binarySearch(keys_, 0, containerCount_, key);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+
+        if (containerCount_ == keys_.length) {
+            int newLength = Math.max(4, keys_.length * 2);
+            keys_ = Arrays.copyOf(keys_, newLength);
+            containers_ = Arrays.copyOf(containers_, newLength);
+        }
+
+        System.arraycopy(keys_, index, keys_, index + 1, containerCount_ - index);
+        System.arraycopy(containers_, index, containers_, index + 1, containerCount_ - index);
+        keys_[index] = key;
+        containers_[index] = container;
+        containerCount_++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys_, index + 1, keys_, index, containerCount_ - index - 1);
+        System.arraycopy(containers_, index + 1, containers_, index, containerCount_ - index - 1);
+        containerCount_--;
+        containers_[containerCount_] = null;
+    }
+
+    private static abstract class Container {
+
+        abstract int getCardinality();
+        abstract boolean contains(char value);
+
+        // these may return a different container (when the container switches between the array & bitmap representations)
+        abstract Container add(char value);
+        abstract Container remove(char value);
+
+        // these return new containers. 'this' & 'other' are left unmodified.
+        abstract Container or(Container other);
+        abstract Container andNot(Container other);
+        abstract Container and(Container other);
+
+        abstract Container copy();
+        abstract void trim();
+
+        // returns the smallest value that is >= 'from', or -1 if there isn't one
+        abstract int nextValue(int from);
+
+        BitmapContainer toBitmapContainer() {
+
+            if (this instanceof BitmapContainer) {
+                return (BitmapContainer) this;
+            }
+
+            ArrayContainer arrayContainer = (ArrayContainer) this;
+            long[] words = new long[BITMAP_CONTAINER_WORD_COUNT];
+            for (int i = 0; i < arrayContainer.cardinality__; i++) words[arrayContainer.values__[i] >>> 6] |= (1L << arrayContainer.values__[i]);
+
+            return new BitmapContainer(words, arrayContainer.cardinality__);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        private char[] values__;
+        private int cardinality__;
+
+        ArrayContainer() {
+            values__ = new char[INITIAL_ARRAY_CONTAINER_CAPACITY];
+            cardinality__ = 0;
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            values__ = values;
+            cardinality__ = cardinality;
+        }
+
+        @Override
+        int getCardinality() {
+            return cardinality__;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values__, 0, cardinality__, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+
+            int index = ((cardinality__ > 0) && (values__[cardinality__ - 1] < value)) ? -cardinality__ - 1 : Arrays.binarySearch(values__, 0, cardinality__, value);
+            if (index >= 0) return this;
+
+            if (cardinality__ >= ARRAY_CONTAINER_MAX_CARDINALITY) {
+                return toBitmapContainer().add(value);
+            }
+
+            index = -index - 1;
+
+            if (cardinality__ == values__.length) {
+                values__ = Arrays.copyOf(values__, Math.min(ARRAY_CONTAINER_MAX_CARDINALITY, Math.max(INITIAL_ARRAY_CONTAINER_CAPACITY, values__.length * 2)));
+            }
+
+            System.arraycopy(values__, index, values__, index + 1, cardinality__ - index);
+            values__[index] = value;
+            cardinality__++;
+
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+
+            int index = Arrays.binarySearch(values__, 0, cardinality__, value);
+            if (index < 0) return this;
+
+            System.arraycopy(values__, index + 1, values__, index, cardinality__ - index - 1);
+            cardinality__--;
+
+            return this;
+        }
+
+        @Override
+        Container or(Container other) {
+
+            if (other instanceof ArrayContainer) {
+                ArrayContainer otherArrayContainer = (ArrayContainer) other;
+
+                if ((cardinality__ + otherArrayContainer.cardinality__) <= ARRAY_CONTAINER_MAX_CARDINALITY) {
+                    char[] values = new char[cardinality__ + otherArrayContainer.cardinality__];
+                    int i = 0, j = 0, k = 0;
+
+                    while ((i < cardinality__) && (j < otherArrayContainer.cardinality__)) {
+                        if (values__[i] < otherArrayContainer.values__[j]) values[k++] = values__[i++];
+                        else if (otherArrayContainer.values__[j] < values__[i]) values[k++] = otherArrayContainer.values__[j++];
+                        else {
+                            values[k++] = values__[i++];
+                            j++;
+                        }
+                    }
+
+                    while (i < cardinality__) values[k++] = values__[i++];
+                    while (j < otherArrayContainer.cardinality__) values[k++] = otherArrayContainer.values__[j++];
+
+                    return new ArrayContainer(values, k);
+                }
+            }
+
+            return other.toBitmapContainer().or(this);
+        }
+
+        @Override
+        Container andNot(Container other) {
+
+            char[] values = new char[cardinality__];
+            int k = 0;
+
+            for (int i = 0; i < cardinality__; i++) {
+                if (!other.contains(values__[i])) values[k++] = values__[i];
+            }
+
+            return new ArrayContainer(values, k);
+        }
+
+        @Override
+        Container and(Container other) {
+
+            char[] values = new char[cardinality__];
+            int k = 0;
+
+            for (int i = 0; i < cardinality__; i++) {
+                if (other.contains(values__[i])) values[k++] = values__[i];
+            }
+
+            return new ArrayContainer(values, k);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values__, Math.max(cardinality__, 1)), cardinality__);
+        }
+
+        @Override
+        void trim() {
+            if (values__.length > cardinality__) values__ = Arrays.copyOf(values__, Math.max(cardinality__, 1));
+        }
+
+        @Override
+        int nextValue(int from) {
+
+            int index = Arrays.binarySearch(values__, 0, cardinality__, (char) from);
+            if (index < 0) index = -index - 1;
+
+            return (index < cardinality__) ? values__[index] : -1;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words__;
+        private int cardinality__;
+
+        BitmapContainer(long[] words, int cardinality) {
+            words__ = words;
+            cardinality__ = cardinality;
+        }
+
+        static Container fromWords(long[] words) {
+
+            int cardinality = 0;
+            for (long word : words) cardinality += Long.bitCount(word);
+
+            BitmapContainer bitmapContainer = new BitmapContainer(words, cardinality);
+            return (cardinality > ARRAY_CONTAINER_MAX_CARDINALITY) ? bitmapContainer : bitmapContainer.toArrayContainer();
+        }
+
+        private ArrayContainer toArrayContainer() {
+
+            char[] values = new char[Math.max(cardinality__, 1)];
+            int k = 0;
+
+            for (int i = 0; i < words__.length; i++) {
+                long word = words__[i];
+
+                while (word != 0) {
+                    values[k++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= (word - 1);
+                }
+            }
+
+            return new ArrayContainer(values, k);
+        }
+
+        @Override
+        int getCardinality() {
+            return cardinality__;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words__[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+
+            long word = words__[value >>> 6];
+            long newWord = word | (1L << value);
+
+            if (newWord != word) {
+                words__[value >>> 6] = newWord;
+                cardinality__++;
+            }
+
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+
+            long word = words__[value >>> 6];
+            long newWord = word & ~(1L << value);
+
+            if (newWord != word) {
+                words__[value >>> 6] = newWord;
+                cardinality__--;
+                if (cardinality__ <= ARRAY_CONTAINER_MAX_CARDINALITY) return toArrayContainer();
+            }
+
+            return this;
+        }
+
+        @Override
+        Container or(Container other) {
+
+            long[] words = Arrays.copyOf(words__, BITMAP_CONTAINER_WORD_COUNT);
+
+            if (other instanceof ArrayContainer) {
+                ArrayContainer otherArrayContainer = (ArrayContainer) other;
+                for (int i = 0; i < otherArrayContainer.cardinality__; i++) words[otherArrayContainer.values__[i] >>> 6] |= (1L << otherArrayContainer.values__[i]);
+            }
+            else {
+                long[] otherWords = ((BitmapContainer) other).words__;
+                for (int i = 0; i < BITMAP_CONTAINER_WORD_COUNT; i++) words[i] |= otherWords[i];
+            }
+
+            return fromWords(words);
+        }
+
+        @Override
+        Container andNot(Container other) {
+
+            long[] words = Arrays.copyOf(words__, BITMAP_CONTAINER_WORD_COUNT);
+
+            if (other instanceof ArrayContainer) {
+                ArrayContainer otherArrayContainer = (ArrayContainer) other;
+                for (int i = 0; i < otherArrayContainer.cardinality__; i++) words[otherArrayContainer.values__[i] >>> 6] &= ~(1L << otherArrayContainer.values__[i]);
+            }
+            else {
+                long[] otherWords = ((BitmapContainer) other).words__;
+                for (int i = 0; i < BITMAP_CONTAINER_WORD_COUNT; i++) words[i] &= ~otherWords[i];
+            }
+
+            return fromWords(words);
+        }
+
+        @Override
+        Container and(Container other) {
+
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+
+            long[] words = Arrays.copyOf(words__, BITMAP_CONTAINER_WORD_COUNT);
+            long[] otherWords = ((BitmapContainer) other).words__;
+            for (int i = 0; i < BITMAP_CONTAINER_WORD_COUNT; i++) words[i] &= otherWords[i];
+
+            return fromWords(words);
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(Arrays.copyOf(words__, BITMAP_CONTAINER_WORD_COUNT), cardinality__);
+        }
+
+        @Override
+        void trim() {
+        }
+
+        @Override
+        int nextValue(int from) {
+
+            if (from > 0xFFFF) {
+                return -1;
+            }
+
+            int wordIndex = from >>> 6;
+            long word = words__[wordIndex] & (-1L << from);
+
+            while (true) {
+                if (word != 0) return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                wordIndex++;
+                if (wordIndex >= BITMAP_CONTAINER_WORD_COUNT) return -1;
+                word = words__[wordIndex];
+            }
+        }
+    }
+
+}
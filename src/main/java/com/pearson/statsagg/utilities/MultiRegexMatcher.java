@@ -0,0 +1,1102 @@
+package com.pearson.statsagg.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches a string against many regexes at once, in a single pass over the string.
+ *
+ * Every regex is compiled into one combined NFA (Thompson construction), and the NFA is lazily converted into a DFA as strings are matched.
+ * Each DFA state remembers which regexes fully match a string that ends in that state, so 'getMatchingRegexIndexes' answers
+ * "which of these regexes match this string" in time that is linear in the length of the string -- regardless of how many regexes there are,
+ * and regardless of how the regexes were written (no backtracking).
+ *
+ * Only the subset of java.util.regex syntax that a finite automaton can match is supported: literals, character classes, '.',
+ * the predefined classes (\d \D \w \W \s \S), groups, alternation, greedy/reluctant quantifiers, ^ $ \A \z, and \Q...\E quoting.
+ * Regexes that use anything else (backreferences, lookaround, possessive quantifiers, inline flags, unicode properties, etc) are
+ * not compiled into the automaton; 'getUnsupportedReason' explains why, and callers are expected to evaluate those regexes some other way.
+ * Supported regexes match exactly what java.util.regex.Matcher.matches() would match.
+ *
+ * Instances are immutable (other than the DFA cache) & are safe to use from multiple threads.
+ *
+ * @author Jeffrey Schmidt
+ */
+public class MultiRegexMatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiRegexMatcher.class.getName());
+
+    private static final int[] EMPTY_INT_ARRAY = new int[0];
+
+    private static final int MAX_REPETITION = 1000;
+    private static final int MAX_NFA_STATES_PER_REGEX = 20000;
+
+    // the lazily built DFA is thrown away (and rebuilt on demand) once its states reference this many NFA states in total
+    private static final long MAX_DFA_CACHE_SIZE = 4000000;
+
+    private static final int STATE_CHARACTERS = 1;
+    private static final int STATE_SPLIT = 2;
+    private static final int STATE_MATCH = 3;
+    private static final int STATE_ASSERT_START = 4;
+    private static final int STATE_ASSERT_END = 5;
+
+    private static final int NODE_CHARACTERS = 1;
+    private static final int NODE_CONCATENATION = 2;
+    private static final int NODE_ALTERNATION = 3;
+    private static final int NODE_REPETITION = 4;
+    private static final int NODE_ASSERT_START = 5;
+    private static final int NODE_ASSERT_END = 6;
+    private static final int NODE_EMPTY = 7;
+    private static final int NODE_UNKNOWN = 8; // only produced when parsing leniently -- matches some unknown string
+    
+    private static final int MIN_REQUIRED_LITERAL_LENGTH = 2;
+    private static final int MAX_REQUIRED_LITERALS = 64;
+
+    private static final int[] DOT_RANGES = complementRanges(new int[] {'\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029'});
+    private static final int[] DIGIT_RANGES = {'0', '9'};
+    private static final int[] WORD_RANGES = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] WHITESPACE_RANGES = {'\t', '\r', ' ', ' '};
+
+    private final int regexCount_;
+    private final String[] unsupportedReasons_;
+
+    private final int[] stateTypes_;
+    private final int[][] stateTransitions_;
+    private final int[][] stateRanges_;
+    private final int[] stateRegexIndexes_;
+    private final int startState_;
+
+    private volatile DfaCache dfaCache_;
+
+    public MultiRegexMatcher(List<String> regexes) {
+
+        regexCount_ = (regexes == null) ? 0 : regexes.size();
+        unsupportedReasons_ = new String[regexCount_];
+
+        NfaBuilder nfaBuilder = new NfaBuilder();
+        List<Integer> regexStartStates = new ArrayList<>();
+
+        for (int i = 0; i < regexCount_; i++) {
+            String regex = regexes.get(i);
+            int nfaSizeBeforeRegex = nfaBuilder.size();
+
+            try {
+                if (regex == null) throw new UnsupportedRegexException("null regex");
+                Node node = new Parser(regex).parse();
+                int matchState = nfaBuilder.addState(STATE_MATCH, null, null, i);
+                int regexStartState = nfaBuilder.compile(node, matchState, nfaSizeBeforeRegex + MAX_NFA_STATES_PER_REGEX);
+                nfaBuilder.validateEndAssertions(nfaSizeBeforeRegex);
+                regexStartStates.add(regexStartState);
+            }
+            catch (UnsupportedRegexException e) {
+                unsupportedReasons_[i] = e.getMessage();
+                nfaBuilder.truncate(nfaSizeBeforeRegex);
+            }
+        }
+
+        int[] regexStartStatesArray = new int[regexStartStates.size()];
+        for (int i = 0; i < regexStartStatesArray.length; i++) regexStartStatesArray[i] = regexStartStates.get(i);
+        startState_ = nfaBuilder.addState(STATE_SPLIT, regexStartStatesArray, null, -1);
+
+        int stateCount = nfaBuilder.size();
+        stateTypes_ = new int[stateCount];
+        stateTransitions_ = new int[stateCount][];
+        stateRanges_ = new int[stateCount][];
+        stateRegexIndexes_ = new int[stateCount];
+
+        for (int i = 0; i < stateCount; i++) {
+            stateTypes_[i] = nfaBuilder.types__.get(i);
+            stateTransitions_[i] = nfaBuilder.transitions__.get(i);
+            stateRanges_[i] = nfaBuilder.ranges__.get(i);
+            stateRegexIndexes_[i] = nfaBuilder.regexIndexes__.get(i);
+        }
+
+        dfaCache_ = new DfaCache();
+    }
+
+    /*
+    Returns null if the regex can be matched by this class. Otherwise, returns a short description of why it can't be.
+    This doesn't check whether java.util.regex considers the regex to be valid.
+    */
+    public static String getUnsupportedReason(String regex) {
+
+        if (regex == null) {
+            return "null regex";
+        }
+
+        try {
+            Node node = new Parser(regex).parse();
+            NfaBuilder nfaBuilder = new NfaBuilder();
+            int matchState = nfaBuilder.addState(STATE_MATCH, null, null, 0);
+            nfaBuilder.compile(node, matchState, MAX_NFA_STATES_PER_REGEX);
+            nfaBuilder.validateEndAssertions(0);
+            return null;
+        }
+        catch (UnsupportedRegexException e) {
+            return e.getMessage();
+        }
+    }
+
+    /*
+    Gets a set of literal strings where every string that the regex fully matches contains at least one of them (as a substring).
+    Strings that don't contain any of the literals can be skipped without evaluating the regex.
+    Returns null if no useful literals could be found -- for example, if the regex can match strings of arbitrary characters, 
+    if the literals would be too short to be selective, or if the regex uses flags that change how literals are matched.
+    Regexes that this class can't match (backreferences, lookaround, etc) are still searched for literals.
+    */
+    public static List<String> getRequiredLiterals(String regex) {
+
+        if (regex == null) {
+            return null;
+        }
+
+        try {
+            Node node = new Parser(regex, true).parse();
+            List<String> requiredLiterals = getRequiredLiterals(node);
+            if ((requiredLiterals == null) || (getShortestLength(requiredLiterals) < MIN_REQUIRED_LITERAL_LENGTH)) return null;
+            return requiredLiterals;
+        }
+        catch (UnsupportedRegexException e) {
+            return null;
+        }
+    }
+
+    private static List<String> getRequiredLiterals(Node node) {
+
+        switch (node.type__) {
+            case NODE_CHARACTERS:
+                if (isSingleCodePoint(node)) return Collections.singletonList(new String(Character.toChars(node.ranges__[0])));
+                return null;
+            case NODE_REPETITION:
+                return (node.min__ >= 1) ? getRequiredLiterals(node.children__.get(0)) : null;
+            case NODE_ALTERNATION: {
+                List<String> requiredLiterals = new ArrayList<>();
+
+                for (Node child : node.children__) {
+                    List<String> childRequiredLiterals = getRequiredLiterals(child);
+                    if (childRequiredLiterals == null) return null;
+                    for (String literal : childRequiredLiterals) if (!requiredLiterals.contains(literal)) requiredLiterals.add(literal);
+                }
+
+                return (requiredLiterals.size() <= MAX_REQUIRED_LITERALS) ? requiredLiterals : null;
+            }
+            case NODE_CONCATENATION: {
+                List<Node> children = new ArrayList<>();
+                flattenConcatenation(node, children);
+
+                List<String> bestRequiredLiterals = null;
+                StringBuilder literal = new StringBuilder();
+
+                for (Node child : children) {
+                    if (isSingleCodePoint(child)) {
+                        literal.appendCodePoint(child.ranges__[0]);
+                        continue;
+                    }
+
+                    // zero-width nodes don't break up a run of literal characters
+                    if ((child.type__ == NODE_EMPTY) || (child.type__ == NODE_ASSERT_START) || (child.type__ == NODE_ASSERT_END)) continue;
+
+                    if (literal.length() > 0) {
+                        bestRequiredLiterals = getMoreSelectiveLiterals(bestRequiredLiterals, Collections.singletonList(literal.toString()));
+                        literal.setLength(0);
+                    }
+
+                    bestRequiredLiterals = getMoreSelectiveLiterals(bestRequiredLiterals, getRequiredLiterals(child));
+                }
+
+                if (literal.length() > 0) {
+                    bestRequiredLiterals = getMoreSelectiveLiterals(bestRequiredLiterals, Collections.singletonList(literal.toString()));
+                }
+
+                return bestRequiredLiterals;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static void flattenConcatenation(Node node, List<Node> children) {
+        for (Node child : node.children__) {
+            if (child.type__ == NODE_CONCATENATION) flattenConcatenation(child, children);
+            else children.add(child);
+        }
+    }
+
+    private static boolean isSingleCodePoint(Node node) {
+        return (node.type__ == NODE_CHARACTERS) && (node.ranges__.length == 2) && (node.ranges__[0] == node.ranges__[1]);
+    }
+
+    private static List<String> getMoreSelectiveLiterals(List<String> literals1, List<String> literals2) {
+
+        if (literals1 == null) return literals2;
+        if (literals2 == null) return literals1;
+
+        int shortestLength1 = getShortestLength(literals1), shortestLength2 = getShortestLength(literals2);
+        if (shortestLength1 != shortestLength2) return (shortestLength1 > shortestLength2) ? literals1 : literals2;
+        return (literals1.size() <= literals2.size()) ? literals1 : literals2;
+    }
+
+    private static int getShortestLength(List<String> literals) {
+        int shortestLength = Integer.MAX_VALUE;
+        for (String literal : literals) shortestLength = Math.min(shortestLength, literal.length());
+        return shortestLength;
+    }
+
+    public int getRegexCount() {
+        return regexCount_;
+    }
+
+    public boolean isSupported(int regexIndex) {
+        return unsupportedReasons_[regexIndex] == null;
+    }
+
+    public String getUnsupportedReason(int regexIndex) {
+        return unsupportedReasons_[regexIndex];
+    }
+
+    /*
+    Returns the (ascending) indexes of every supported regex that matches the entire input string.
+    The returned array must not be modified.
+    */
+    public int[] getMatchingRegexIndexes(String input) {
+
+        if (input == null) {
+            return EMPTY_INT_ARRAY;
+        }
+
+        DfaCache dfaCache = dfaCache_;
+        DfaState dfaState = dfaCache.initialState__;
+        int inputLength = input.length();
+
+        for (int i = 0; i < inputLength;) {
+            if (dfaState.nfaStates__.length == 0) return EMPTY_INT_ARRAY;
+
+            int codePoint = input.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            DfaState nextDfaState = (codePoint < 128) ? dfaState.asciiTransitions__[codePoint] : null;
+
+            if (nextDfaState == null) {
+                if (dfaCache.size__.get() > MAX_DFA_CACHE_SIZE) {
+                    dfaCache = new DfaCache();
+                    dfaCache_ = dfaCache;
+                }
+
+                nextDfaState = dfaCache.getDfaState(step(dfaState.nfaStates__, codePoint));
+                if (codePoint < 128) dfaState.asciiTransitions__[codePoint] = nextDfaState;
+            }
+
+            dfaState = nextDfaState;
+        }
+
+        return dfaState.matchingRegexIndexes__;
+    }
+
+    /*
+    Returns true if any supported regex matches the entire input string.
+    */
+    public boolean matchesAny(String input) {
+        return getMatchingRegexIndexes(input).length > 0;
+    }
+
+    private int[] step(int[] nfaStates, int codePoint) {
+
+        BitSet nextNfaStates = new BitSet(stateTypes_.length);
+
+        for (int nfaState : nfaStates) {
+            if ((stateTypes_[nfaState] == STATE_CHARACTERS) && isInRanges(stateRanges_[nfaState], codePoint)) {
+                nextNfaStates.set(stateTransitions_[nfaState][0]);
+            }
+        }
+
+        return closure(nextNfaStates, false, false);
+    }
+
+    /*
+    Follows every epsilon transition from the specified NFA states.
+    The result holds the states that either consume a character, accept, or are waiting for the end of the input.
+    */
+    private int[] closure(BitSet nfaStates, boolean isAtStart, boolean isAtEnd) {
+
+        BitSet visited = new BitSet(stateTypes_.length);
+        BitSet result = new BitSet(stateTypes_.length);
+        int[] stack = new int[16];
+        int stackSize = 0;
+
+        for (int nfaState = nfaStates.nextSetBit(0); nfaState >= 0; nfaState = nfaStates.nextSetBit(nfaState + 1)) {
+            if (stackSize == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[stackSize++] = nfaState;
+        }
+
+        while (stackSize > 0) {
+            int nfaState = stack[--stackSize];
+            if (visited.get(nfaState)) continue;
+            visited.set(nfaState);
+
+            int stateType = stateTypes_[nfaState];
+
+            if ((stateType == STATE_CHARACTERS) || (stateType == STATE_MATCH)) {
+                result.set(nfaState);
+                continue;
+            }
+            else if (stateType == STATE_ASSERT_START) {
+                if (!isAtStart) continue;
+            }
+            else if (stateType == STATE_ASSERT_END) {
+                if (!isAtEnd) {
+                    result.set(nfaState);
+                    continue;
+                }
+            }
+
+            for (int transition : stateTransitions_[nfaState]) {
+                if (stackSize == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[stackSize++] = transition;
+            }
+        }
+
+        int[] closure = new int[result.cardinality()];
+        int i = 0;
+        for (int nfaState = result.nextSetBit(0); nfaState >= 0; nfaState = result.nextSetBit(nfaState + 1)) closure[i++] = nfaState;
+
+        return closure;
+    }
+
+    private int[] getMatchingRegexIndexes(int[] nfaStates, boolean isAtStart) {
+
+        BitSet nfaStatesBitSet = new BitSet(stateTypes_.length);
+        for (int nfaState : nfaStates) nfaStatesBitSet.set(nfaState);
+
+        BitSet matchingRegexIndexes = new BitSet(regexCount_);
+        for (int nfaState : closure(nfaStatesBitSet, isAtStart, true)) {
+            if (stateTypes_[nfaState] == STATE_MATCH) matchingRegexIndexes.set(stateRegexIndexes_[nfaState]);
+        }
+
+        if (matchingRegexIndexes.isEmpty()) return EMPTY_INT_ARRAY;
+        return matchingRegexIndexes.stream().toArray();
+    }
+
+    private static boolean isInRanges(int[] ranges, int codePoint) {
+
+        int low = 0, high = (ranges.length / 2) - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (codePoint < ranges[middle * 2]) high = middle - 1;
+            else if (codePoint > ranges[(middle * 2) + 1]) low = middle + 1;
+            else return true;
+        }
+
+        return false;
+    }
+
+    /*
+    Sorts & merges a list of [low, high] code point pairs.
+    */
+    private static int[] normalizeRanges(List<int[]> ranges) {
+
+        List<int[]> sortedRanges = new ArrayList<>(ranges);
+        Collections.sort(sortedRanges, (a, b) -> Integer.compare(a[0], b[0]));
+
+        List<int[]> mergedRanges = new ArrayList<>();
+        for (int[] range : sortedRanges) {
+            int[] lastRange = mergedRanges.isEmpty() ? null : mergedRanges.get(mergedRanges.size() - 1);
+            if ((lastRange != null) && (range[0] <= (lastRange[1] + 1))) lastRange[1] = Math.max(lastRange[1], range[1]);
+            else mergedRanges.add(new int[] {range[0], range[1]});
+        }
+
+        int[] normalizedRanges = new int[mergedRanges.size() * 2];
+        for (int i = 0; i < mergedRanges.size(); i++) {
+            normalizedRanges[i * 2] = mergedRanges.get(i)[0];
+            normalizedRanges[(i * 2) + 1] = mergedRanges.get(i)[1];
+        }
+
+        return normalizedRanges;
+    }
+
+    /*
+    The input ranges must already be normalized.
+    */
+    private static int[] complementRanges(int[] ranges) {
+
+        List<int[]> complement = new ArrayList<>();
+        int nextLow = 0;
+
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > nextLow) complement.add(new int[] {nextLow, ranges[i] - 1});
+            nextLow = ranges[i + 1] + 1;
+        }
+
+        if (nextLow <= Character.MAX_CODE_POINT) complement.add(new int[] {nextLow, Character.MAX_CODE_POINT});
+
+        return normalizeRanges(complement);
+    }
+
+    private static List<int[]> toRangeList(int[] ranges) {
+        List<int[]> rangeList = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i += 2) rangeList.add(new int[] {ranges[i], ranges[i + 1]});
+        return rangeList;
+    }
+
+    private final class DfaCache {
+
+        private final ConcurrentHashMap<NfaStateSet,DfaState> dfaStates__ = new ConcurrentHashMap<>();
+        private final AtomicLong size__ = new AtomicLong(0);
+        private final DfaState initialState__;
+
+        private DfaCache() {
+            BitSet startStates = new BitSet(stateTypes_.length);
+            startStates.set(startState_);
+            int[] initialNfaStates = closure(startStates, true, false);
+
+            // the initial state isn't shared with other dfa states, since '^' can only be satisfied before any input has been consumed
+            initialState__ = new DfaState(initialNfaStates, getMatchingRegexIndexes(initialNfaStates, true));
+        }
+
+        private DfaState getDfaState(int[] nfaStates) {
+
+            NfaStateSet nfaStateSet = new NfaStateSet(nfaStates);
+            DfaState dfaState = dfaStates__.get(nfaStateSet);
+            if (dfaState != null) return dfaState;
+
+            DfaState newDfaState = new DfaState(nfaStates, getMatchingRegexIndexes(nfaStates, false));
+            dfaState = dfaStates__.putIfAbsent(nfaStateSet, newDfaState);
+
+            if (dfaState == null) {
+                size__.addAndGet(nfaStates.length + 1);
+                return newDfaState;
+            }
+
+            return dfaState;
+        }
+
+    }
+
+    private static final class DfaState {
+
+        private final int[] nfaStates__;
+        private final int[] matchingRegexIndexes__;
+
+        // writes to this array race benignly -- every thread computes an equivalent dfa state for the same transition
+        private final DfaState[] asciiTransitions__ = new DfaState[128];
+
+        private DfaState(int[] nfaStates, int[] matchingRegexIndexes) {
+            this.nfaStates__ = nfaStates;
+            this.matchingRegexIndexes__ = matchingRegexIndexes;
+        }
+
+    }
+
+    private static final class NfaStateSet {
+
+        private final int[] nfaStates__;
+        private final int hashCode__;
+
+        private NfaStateSet(int[] nfaStates) {
+            this.nfaStates__ = nfaStates;
+            this.hashCode__ = Arrays.hashCode(nfaStates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode__;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if ((object == null) || (object.getClass() != getClass())) return false;
+            NfaStateSet nfaStateSet = (NfaStateSet) object;
+            return (hashCode__ == nfaStateSet.hashCode__) && Arrays.equals(nfaStates__, nfaStateSet.nfaStates__);
+        }
+
+    }
+
+    private static final class NfaBuilder {
+
+        private final List<Integer> types__ = new ArrayList<>();
+        private final List<int[]> transitions__ = new ArrayList<>();
+        private final List<int[]> ranges__ = new ArrayList<>();
+        private final List<Integer> regexIndexes__ = new ArrayList<>();
+
+        private int size() {
+            return types__.size();
+        }
+
+        private int addState(int type, int[] transitions, int[] ranges, int regexIndex) {
+            types__.add(type);
+            transitions__.add((transitions == null) ? EMPTY_INT_ARRAY : transitions);
+            ranges__.add(ranges);
+            regexIndexes__.add(regexIndex);
+            return types__.size() - 1;
+        }
+
+        private void truncate(int size) {
+            while (types__.size() > size) {
+                int lastIndex = types__.size() - 1;
+                types__.remove(lastIndex);
+                transitions__.remove(lastIndex);
+                ranges__.remove(lastIndex);
+                regexIndexes__.remove(lastIndex);
+            }
+        }
+
+        /*
+        java's '$' also matches right before a line terminator at the end of the input. That can only change the outcome of a full match
+        if the regex can consume more characters after the '$', so regexes where that is possible are not supported.
+        */
+        private void validateEndAssertions(int firstState) {
+
+            for (int i = firstState; i < size(); i++) {
+                if (types__.get(i) != STATE_ASSERT_END) continue;
+
+                BitSet visited = new BitSet();
+                List<Integer> stack = new ArrayList<>();
+                for (int transition : transitions__.get(i)) stack.add(transition);
+
+                while (!stack.isEmpty()) {
+                    int state = stack.remove(stack.size() - 1);
+                    if (visited.get(state)) continue;
+                    visited.set(state);
+
+                    if (types__.get(state) == STATE_CHARACTERS) throw new UnsupportedRegexException("'$' followed by more characters");
+                    for (int transition : transitions__.get(state)) stack.add(transition);
+                }
+            }
+        }
+
+        /*
+        Compiles a node into NFA states that lead to 'nextState' once the node has been matched. Returns the node's starting state.
+        */
+        private int compile(Node node, int nextState, int maxSize) {
+
+            if (size() > maxSize) {
+                throw new UnsupportedRegexException("regex is too large (too many repetitions)");
+            }
+
+            switch (node.type__) {
+                case NODE_CHARACTERS:
+                    return addState(STATE_CHARACTERS, new int[] {nextState}, node.ranges__, -1);
+                case NODE_ASSERT_START:
+                    return addState(STATE_ASSERT_START, new int[] {nextState}, null, -1);
+                case NODE_ASSERT_END:
+                    return addState(STATE_ASSERT_END, new int[] {nextState}, null, -1);
+                case NODE_EMPTY:
+                    return nextState;
+                case NODE_CONCATENATION: {
+                    int state = nextState;
+                    for (int i = node.children__.size() - 1; i >= 0; i--) state = compile(node.children__.get(i), state, maxSize);
+                    return state;
+                }
+                case NODE_ALTERNATION: {
+                    int[] alternativeStates = new int[node.children__.size()];
+                    for (int i = 0; i < alternativeStates.length; i++) alternativeStates[i] = compile(node.children__.get(i), nextState, maxSize);
+                    return addState(STATE_SPLIT, alternativeStates, null, -1);
+                }
+                case NODE_REPETITION: {
+                    Node child = node.children__.get(0);
+                    int state = nextState;
+
+                    if (node.max__ < 0) {
+                        int loopState = addState(STATE_SPLIT, null, null, -1);
+                        int childState = compile(child, loopState, maxSize);
+                        transitions__.set(loopState, new int[] {childState, nextState});
+                        state = loopState;
+                    }
+                    else {
+                        for (int i = node.min__; i < node.max__; i++) {
+                            int childState = compile(child, state, maxSize);
+                            state = addState(STATE_SPLIT, new int[] {childState, nextState}, null, -1);
+                        }
+                    }
+
+                    for (int i = 0; i < node.min__; i++) state = compile(child, state, maxSize);
+
+                    return state;
+                }
+                default:
+                    throw new UnsupportedRegexException("unknown node type");
+            }
+        }
+
+    }
+
+    /*
+    Parse tree of a regex.
+    */
+    private static final class Node {
+
+        private final int type__;
+        private final int[] ranges__;
+        private final List<Node> children__;
+        private final int min__;
+        private final int max__;
+
+        private Node(int type, int[] ranges, List<Node> children, int min, int max) {
+            this.type__ = type;
+            this.ranges__ = ranges;
+            this.children__ = children;
+            this.min__ = min;
+            this.max__ = max;
+        }
+
+        private static Node characters(int[] ranges) {
+            return new Node(NODE_CHARACTERS, ranges, null, 0, 0);
+        }
+
+        private static Node character(int codePoint) {
+            return characters(new int[] {codePoint, codePoint});
+        }
+
+    }
+
+    /*
+    Recursive descent parser for the supported subset of java.util.regex syntax.
+    */
+    private static final class Parser {
+
+        private final String regex__;
+        private final boolean isLenient__;
+        private int position__ = 0;
+
+        private Parser(String regex) {
+            this(regex, false);
+        }
+
+        /*
+        A lenient parser accepts constructs that an automaton can't match (backreferences, lookaround, etc), and represents them as
+        NODE_UNKNOWN or NODE_EMPTY. The resulting parse tree can't be compiled, but it can still be searched for required literals.
+        */
+        private Parser(String regex, boolean isLenient) {
+            this.regex__ = regex;
+            this.isLenient__ = isLenient;
+        }
+
+        private Node parse() {
+            Node node = parseAlternation();
+            if (position__ < regex__.length()) throw new UnsupportedRegexException("unbalanced ')' at index " + position__);
+            return node;
+        }
+
+        private boolean hasMore() {
+            return position__ < regex__.length();
+        }
+
+        private int peek() {
+            return regex__.codePointAt(position__);
+        }
+
+        private int peek(int offset) {
+            int position = position__;
+            for (int i = 0; (i < offset) && (position < regex__.length()); i++) position += Character.charCount(regex__.codePointAt(position));
+            return (position < regex__.length()) ? regex__.codePointAt(position) : -1;
+        }
+
+        private int next() {
+            int codePoint = regex__.codePointAt(position__);
+            position__ += Character.charCount(codePoint);
+            return codePoint;
+        }
+
+        private Node parseAlternation() {
+
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseConcatenation());
+
+            while (hasMore() && (peek() == '|')) {
+                next();
+                alternatives.add(parseConcatenation());
+            }
+
+            if (alternatives.size() == 1) return alternatives.get(0);
+            return new Node(NODE_ALTERNATION, null, alternatives, 0, 0);
+        }
+
+        private Node parseConcatenation() {
+
+            List<Node> nodes = new ArrayList<>();
+
+            while (hasMore() && (peek() != '|') && (peek() != ')')) {
+                if ((peek() == '\\') && (peek(1) == 'Q')) {
+                    next();
+                    next();
+                    parseQuotedLiteral(nodes);
+                    continue;
+                }
+
+                nodes.add(parseRepetition());
+            }
+
+            if (nodes.isEmpty()) return new Node(NODE_EMPTY, null, null, 0, 0);
+            if (nodes.size() == 1) return nodes.get(0);
+            return new Node(NODE_CONCATENATION, null, nodes, 0, 0);
+        }
+
+        private void parseQuotedLiteral(List<Node> nodes) {
+
+            while (hasMore()) {
+                if ((peek() == '\\') && (peek(1) == 'E')) {
+                    next();
+                    next();
+                    break;
+                }
+
+                nodes.add(Node.character(next()));
+            }
+
+            // java applies a quantifier that follows \Q...\E to the last quoted character
+            if (hasMore() && isQuantifier(peek()) && !nodes.isEmpty()) {
+                Node lastNode = nodes.remove(nodes.size() - 1);
+                nodes.add(parseQuantifiers(lastNode));
+            }
+        }
+
+        private boolean isQuantifier(int codePoint) {
+            return (codePoint == '*') || (codePoint == '+') || (codePoint == '?') || (codePoint == '{');
+        }
+
+        private Node parseRepetition() {
+            Node atom = parseAtom();
+            return parseQuantifiers(atom);
+        }
+
+        private Node parseQuantifiers(Node atom) {
+
+            if (!hasMore() || !isQuantifier(peek())) {
+                return atom;
+            }
+
+            int quantifier = next();
+            int min, max;
+
+            if (quantifier == '*') {
+                min = 0;
+                max = -1;
+            }
+            else if (quantifier == '+') {
+                min = 1;
+                max = -1;
+            }
+            else if (quantifier == '?') {
+                min = 0;
+                max = 1;
+            }
+            else {
+                min = parseInteger();
+                max = min;
+
+                if (hasMore() && (peek() == ',')) {
+                    next();
+                    max = (hasMore() && (peek() == '}')) ? -1 : parseInteger();
+                }
+
+                if (!hasMore() || (next() != '}')) throw new UnsupportedRegexException("malformed repetition");
+                if ((max >= 0) && (max < min)) throw new UnsupportedRegexException("malformed repetition");
+                if (((min > MAX_REPETITION) || (max > MAX_REPETITION)) && !isLenient__) throw new UnsupportedRegexException("repetition count is larger than " + MAX_REPETITION);
+            }
+
+            if (hasMore() && (peek() == '?')) {
+                next(); // reluctant quantifiers match the same strings as greedy quantifiers when the entire input must match
+            }
+            else if (hasMore() && (peek() == '+')) {
+                if (!isLenient__) throw new UnsupportedRegexException("possessive quantifiers");
+                next(); // possessive quantifiers require the same literals as greedy quantifiers
+            }
+
+            if (hasMore() && isQuantifier(peek())) {
+                throw new UnsupportedRegexException("stacked quantifiers");
+            }
+
+            if ((atom.type__ == NODE_ASSERT_START) || (atom.type__ == NODE_ASSERT_END)) {
+                throw new UnsupportedRegexException("quantified anchor");
+            }
+
+            List<Node> children = new ArrayList<>();
+            children.add(atom);
+            return new Node(NODE_REPETITION, null, children, min, max);
+        }
+
+        private int parseInteger() {
+
+            int start = position__;
+            while (hasMore() && (peek() >= '0') && (peek() <= '9')) next();
+            if ((start == position__) || ((position__ - start) > 9)) throw new UnsupportedRegexException("malformed repetition");
+
+            return Integer.parseInt(regex__.substring(start, position__));
+        }
+
+        private Node parseAtom() {
+
+            int codePoint = next();
+
+            switch (codePoint) {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    return parseCharacterClassNode();
+                case '.':
+                    return Node.characters(DOT_RANGES);
+                case '^':
+                    return new Node(NODE_ASSERT_START, null, null, 0, 0);
+                case '$':
+                    return new Node(NODE_ASSERT_END, null, null, 0, 0);
+                case '\\':
+                    return parseEscape();
+                case '*': case '+': case '?': case '{':
+                    throw new UnsupportedRegexException("dangling quantifier at index " + (position__ - 1));
+                default:
+                    return Node.character(codePoint);
+            }
+        }
+
+        private Node parseGroup() {
+
+            if (hasMore() && (peek() == '?')) {
+                next();
+                int groupType = hasMore() ? next() : -1;
+
+                if (groupType == ':') {
+                    // non-capturing group
+                }
+                else if ((groupType == '<') && hasMore() && Character.isLetter(peek())) {
+                    // named capturing group
+                    while (hasMore() && Character.isLetterOrDigit(peek())) next();
+                    if (!hasMore() || (next() != '>')) throw new UnsupportedRegexException("malformed named group");
+                }
+                else if ((groupType == '=') || (groupType == '!') || (groupType == '<')) {
+                    if (!isLenient__) throw new UnsupportedRegexException("lookaround");
+                    
+                    // lookaround doesn't consume any characters
+                    if ((groupType == '<') && hasMore()) next();
+                    parseAlternation();
+                    if (!hasMore() || (next() != ')')) throw new UnsupportedRegexException("unclosed group");
+                    return new Node(NODE_EMPTY, null, null, 0, 0);
+                }
+                else if (groupType == '>') {
+                    if (!isLenient__) throw new UnsupportedRegexException("atomic groups");
+                }
+                else {
+                    throw new UnsupportedRegexException("inline flags");
+                }
+            }
+
+            Node node = parseAlternation();
+            if (!hasMore() || (next() != ')')) throw new UnsupportedRegexException("unclosed group");
+
+            return node;
+        }
+
+        private Node parseEscape() {
+
+            if (!hasMore()) throw new UnsupportedRegexException("trailing backslash");
+            int codePoint = next();
+
+            switch (codePoint) {
+                case 'A':
+                    return new Node(NODE_ASSERT_START, null, null, 0, 0);
+                case 'z':
+                    return new Node(NODE_ASSERT_END, null, null, 0, 0);
+                default:
+                    int[] predefinedClass = getPredefinedClass(codePoint);
+                    if (predefinedClass != null) return Node.characters(predefinedClass);
+                    
+                    if (isLenient__) {
+                        Node lenientNode = parseLenientEscape(codePoint);
+                        if (lenientNode != null) return lenientNode;
+                    }
+                    
+                    return Node.character(parseEscapedCharacter(codePoint));
+            }
+        }
+
+        private Node parseLenientEscape(int codePoint) {
+
+            switch (codePoint) {
+                case 'b': case 'B': case 'G': case 'Z':
+                    return new Node(NODE_EMPTY, null, null, 0, 0);
+                case 'p': case 'P':
+                    if (hasMore() && (peek() == '{')) skipPast('}');
+                    else if (hasMore()) next();
+                    return new Node(NODE_UNKNOWN, null, null, 0, 0);
+                case 'k':
+                    skipPast('>');
+                    return new Node(NODE_UNKNOWN, null, null, 0, 0);
+                case 'c':
+                    if (hasMore()) next();
+                    return new Node(NODE_UNKNOWN, null, null, 0, 0);
+                case 'h': case 'H': case 'v': case 'V': case 'R': case 'X':
+                    return new Node(NODE_UNKNOWN, null, null, 0, 0);
+                default:
+                    if ((codePoint >= '0') && (codePoint <= '9')) {
+                        while (hasMore() && (peek() >= '0') && (peek() <= '9')) next();
+                        return new Node(NODE_UNKNOWN, null, null, 0, 0);
+                    }
+                    return null;
+            }
+        }
+
+        private void skipPast(int codePoint) {
+            while (hasMore() && (next() != codePoint)) {}
+        }
+
+        private Node parseCharacterClassNode() {
+
+            if (!isLenient__) {
+                return Node.characters(parseCharacterClass());
+            }
+
+            int startPosition = position__;
+
+            try {
+                return Node.characters(parseCharacterClass());
+            }
+            catch (UnsupportedRegexException e) {
+                // skip over the entire class, including any nested classes
+                position__ = startPosition;
+                int depth = 1;
+
+                while (hasMore() && (depth > 0)) {
+                    int codePoint = next();
+                    if ((codePoint == '\\') && hasMore()) next();
+                    else if (codePoint == '[') depth++;
+                    else if (codePoint == ']') depth--;
+                }
+
+                if (depth > 0) throw e;
+                return new Node(NODE_UNKNOWN, null, null, 0, 0);
+            }
+        }
+
+        private int[] getPredefinedClass(int codePoint) {
+
+            switch (codePoint) {
+                case 'd': return DIGIT_RANGES;
+                case 'D': return complementRanges(DIGIT_RANGES);
+                case 'w': return WORD_RANGES;
+                case 'W': return complementRanges(WORD_RANGES);
+                case 's': return WHITESPACE_RANGES;
+                case 'S': return complementRanges(WHITESPACE_RANGES);
+                default: return null;
+            }
+        }
+
+        private int parseEscapedCharacter(int codePoint) {
+
+            switch (codePoint) {
+                case 't': return '\t';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                case 'a': return '\u0007';
+                case 'e': return '\u001B';
+                case 'x': return parseHex(2);
+                case 'u': return parseHex(4);
+                default:
+                    if (((codePoint >= 'a') && (codePoint <= 'z')) || ((codePoint >= 'A') && (codePoint <= 'Z'))) {
+                        throw new UnsupportedRegexException("escape sequence '\\" + new String(Character.toChars(codePoint)) + "'");
+                    }
+                    if ((codePoint >= '0') && (codePoint <= '9')) {
+                        throw new UnsupportedRegexException("backreferences & octal escapes");
+                    }
+                    return codePoint;
+            }
+        }
+
+        private int parseHex(int digits) {
+
+            int value = 0;
+
+            for (int i = 0; i < digits; i++) {
+                int digit = hasMore() ? Character.digit(next(), 16) : -1;
+                if (digit < 0) throw new UnsupportedRegexException("malformed hexadecimal escape");
+                value = (value * 16) + digit;
+            }
+
+            return value;
+        }
+
+        private int[] parseCharacterClass() {
+
+            boolean isNegated = false;
+            if (hasMore() && (peek() == '^')) {
+                next();
+                isNegated = true;
+            }
+
+            if (hasMore() && (peek() == ']')) throw new UnsupportedRegexException("empty character class");
+
+            List<int[]> ranges = new ArrayList<>();
+
+            while (true) {
+                if (!hasMore()) throw new UnsupportedRegexException("unclosed character class");
+                int codePoint = next();
+
+                if (codePoint == ']') break;
+                if (codePoint == '[') throw new UnsupportedRegexException("nested character classes");
+                if ((codePoint == '&') && hasMore() && (peek() == '&')) throw new UnsupportedRegexException("character class intersection");
+
+                int low;
+
+                if (codePoint == '\\') {
+                    if (!hasMore()) throw new UnsupportedRegexException("unclosed character class");
+                    int escapedCodePoint = next();
+                    if (escapedCodePoint == 'Q') throw new UnsupportedRegexException("quoting within a character class");
+
+                    int[] predefinedClass = getPredefinedClass(escapedCodePoint);
+                    if (predefinedClass != null) {
+                        ranges.addAll(toRangeList(predefinedClass));
+                        continue;
+                    }
+
+                    low = parseEscapedCharacter(escapedCodePoint);
+                }
+                else {
+                    low = codePoint;
+                }
+
+                int high = low;
+
+                if (hasMore() && (peek() == '-') && (peek(1) != ']') && (peek(1) != -1)) {
+                    next();
+                    int rangeEnd = next();
+
+                    if (rangeEnd == '\\') {
+                        if (!hasMore()) throw new UnsupportedRegexException("unclosed character class");
+                        int escapedCodePoint = next();
+                        if (getPredefinedClass(escapedCodePoint) != null) throw new UnsupportedRegexException("malformed character class range");
+                        high = parseEscapedCharacter(escapedCodePoint);
+                    }
+                    else if (rangeEnd == '[') {
+                        throw new UnsupportedRegexException("nested character classes");
+                    }
+                    else {
+                        high = rangeEnd;
+                    }
+
+                    if (high < low) throw new UnsupportedRegexException("malformed character class range");
+                }
+
+                ranges.add(new int[] {low, high});
+            }
+
+            int[] normalizedRanges = normalizeRanges(ranges);
+            return isNegated ? complementRanges(normalizedRanges) : normalizedRanges;
+        }
+
+    }
+
+    private static final class UnsupportedRegexException extends RuntimeException {
+
+        private UnsupportedRegexException(String message) {
+            super(message);
+        }
+
+    }
+
+}
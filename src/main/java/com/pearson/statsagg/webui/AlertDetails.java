@@ -186,6 +186,7 @@ public class AlertDetails extends HttpServlet {
             if (alert.getAlertType() != null) {
                 if (alert.getAlertType() == Alert.TYPE_AVAILABILITY) outputString.append("Availability").append("<br>");
                 else if (alert.getAlertType() == Alert.TYPE_THRESHOLD) outputString.append("Threshold").append("<br>");
+                else if (alert.getAlertType() == Alert.TYPE_ANOMALY) outputString.append("Anomaly").append("<br>");
                 else outputString.append("N/A").append("<br>");
             }
             else outputString.append("N/A <br>");
@@ -307,6 +308,20 @@ public class AlertDetails extends HttpServlet {
                 else outputString.append("N/A <br>");
             }
             
+            if ((alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_ANOMALY)) {
+                outputString.append("<b>Caution minimum sample count</b> = ");
+                if (alert.getCautionMinimumSampleCount() != null) outputString.append(alert.getCautionMinimumSampleCount()).append("<br>");
+                else outputString.append("N/A <br>");
+
+                outputString.append("<b>Caution operator</b> = ");
+                if (alert.getOperatorString(Alert.CAUTION, true, true) != null) outputString.append("'").append(alert.getOperatorString(Alert.CAUTION, true, true)).append("'<br>");
+                else outputString.append("N/A <br>");
+
+                outputString.append("<b>Caution threshold (standard deviations)</b> = ");
+                if (alert.getCautionThreshold() != null) outputString.append(alert.getCautionThreshold().stripTrailingZeros().toPlainString()).append("<br>");
+                else outputString.append("N/A <br>");
+            }
+            
             outputString.append("<br>");
             
             String isCautionAlertCriteriaValid = "No";
@@ -409,6 +424,20 @@ public class AlertDetails extends HttpServlet {
                 else outputString.append("N/A <br>");
             }
             
+            if ((alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_ANOMALY)) {
+                outputString.append("<b>Danger minimum sample count</b> = ");
+                if (alert.getDangerMinimumSampleCount() != null) outputString.append(alert.getDangerMinimumSampleCount()).append("<br>");
+                else outputString.append("N/A <br>");
+
+                outputString.append("<b>Danger operator</b> = ");
+                if (alert.getOperatorString(Alert.DANGER, true, true) != null) outputString.append("'").append(alert.getOperatorString(Alert.DANGER, true, true)).append("'<br>");
+                else outputString.append("N/A <br>");
+
+                outputString.append("<b>Danger threshold (standard deviations)</b> = ");
+                if (alert.getDangerThreshold() != null) outputString.append(alert.getDangerThreshold().stripTrailingZeros().toPlainString()).append("<br>");
+                else outputString.append("N/A <br>");
+            }
+            
             outputString.append("<br>");
 
             String isDangerAlertCriteriaValid = "No";
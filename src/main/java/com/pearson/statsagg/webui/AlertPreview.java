@@ -241,6 +241,21 @@ public class AlertPreview extends HttpServlet {
             }
         } 
         
+        // anomaly alerts report how many standard deviations the most recent value was from the moving average
+        if (warningLevel.equalsIgnoreCase("caution") && (alert.getCautionOperator() != null) && (alert.getCautionThreshold() != null) &&
+                 (alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_ANOMALY)) {
+            BigDecimal sign = ((Objects.equals(alert.getCautionOperator(), Alert.OPERATOR_LESS_EQUALS)) || (Objects.equals(alert.getCautionOperator(), Alert.OPERATOR_LESS))) ? BigDecimal.ONE.negate() : BigDecimal.ONE;
+            alertMetricValues.put("preview.metric1" + "-" + alert.getId(), alert.getCautionThreshold().add(BigDecimal.ONE).multiply(sign));
+            alertMetricValues.put("preview.metric2" + "-" + alert.getId(), alert.getCautionThreshold().add(BigDecimal.TEN).multiply(sign));
+        }
+        
+        if (warningLevel.equalsIgnoreCase("danger") && (alert.getDangerOperator() != null) && (alert.getDangerThreshold() != null) &&
+                 (alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_ANOMALY)) {
+            BigDecimal sign = ((Objects.equals(alert.getDangerOperator(), Alert.OPERATOR_LESS_EQUALS)) || (Objects.equals(alert.getDangerOperator(), Alert.OPERATOR_LESS))) ? BigDecimal.ONE.negate() : BigDecimal.ONE;
+            alertMetricValues.put("preview.metric1" + "-" + alert.getId(), alert.getDangerThreshold().add(BigDecimal.ONE).multiply(sign));
+            alertMetricValues.put("preview.metric2" + "-" + alert.getId(), alert.getDangerThreshold().add(BigDecimal.TEN).multiply(sign));
+        }
+        
         return alertMetricValues;
     }
    
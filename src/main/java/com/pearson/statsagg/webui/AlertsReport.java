@@ -191,6 +191,7 @@ public class AlertsReport extends HttpServlet {
                 String alertType = "N/A";
                 if ((alert.getAlertType() != null) && (Alert.TYPE_AVAILABILITY == alert.getAlertType())) alertType = "Availability";
                 else if ((alert.getAlertType() != null) && (Alert.TYPE_THRESHOLD == alert.getAlertType())) alertType = "Threshold";
+                else if ((alert.getAlertType() != null) && (Alert.TYPE_ANOMALY == alert.getAlertType())) alertType = "Anomaly";
                 
                 // alert enabled
                 String alertEnabled = "No";
@@ -250,6 +251,9 @@ public class AlertsReport extends HttpServlet {
                 else if (alert.isCautionEnabled() && (alert.getAlertType() == Alert.TYPE_AVAILABILITY) && alert.isCautionAlertCriteriaValid()) {
                     alertCriteriaCaution = alert.getHumanReadable_AlertCriteria_AvailabilityCriteria(Alert.CAUTION);
                 }
+                else if (alert.isCautionEnabled() && (alert.getAlertType() == Alert.TYPE_ANOMALY) && alert.isCautionAlertCriteriaValid()) {
+                    alertCriteriaCaution = alert.getHumanReadable_AlertCriteria_MinimumSampleCount(Alert.CAUTION) + "<br><br>" + alert.getHumanReadable_AlertCriteria_AnomalyCriteria(Alert.CAUTION);
+                }
                 
                 // alert - danger criteria
                 String alertCriteriaDanger = "N/A";
@@ -259,6 +263,9 @@ public class AlertsReport extends HttpServlet {
                 else if (alert.isDangerEnabled() && (alert.getAlertType() == Alert.TYPE_AVAILABILITY) && alert.isDangerAlertCriteriaValid()) {
                     alertCriteriaDanger = alert.getHumanReadable_AlertCriteria_AvailabilityCriteria(Alert.DANGER);
                 }
+                else if (alert.isDangerEnabled() && (alert.getAlertType() == Alert.TYPE_ANOMALY) && alert.isDangerAlertCriteriaValid()) {
+                    alertCriteriaDanger = alert.getHumanReadable_AlertCriteria_MinimumSampleCount(Alert.DANGER) + "<br><br>" + alert.getHumanReadable_AlertCriteria_AnomalyCriteria(Alert.DANGER);
+                }
                 
                 // alert - resend criteria
                 String alertResend = "N/A";
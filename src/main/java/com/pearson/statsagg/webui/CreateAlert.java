@@ -244,7 +244,11 @@ public class CreateAlert extends HttpServlet {
         
         htmlBody.append("<input type=\"radio\" id=\"Type_Threshold\" name=\"Type\" value=\"Threshold\" ");
         if ((alert != null) && (alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_THRESHOLD)) htmlBody.append(" checked=\"checked\"");
-        htmlBody.append("> Threshold\n");
+        htmlBody.append("> Threshold &nbsp;&nbsp;&nbsp;\n");
+        
+        htmlBody.append("<input type=\"radio\" id=\"Type_Anomaly\" name=\"Type\" value=\"Anomaly\" ");
+        if ((alert != null) && (alert.getAlertType() != null) && (alert.getAlertType() == Alert.TYPE_ANOMALY)) htmlBody.append(" checked=\"checked\"");
+        htmlBody.append("> Anomaly\n");
 
         htmlBody.append("</div>");
         
@@ -432,7 +436,7 @@ public class CreateAlert extends HttpServlet {
         // caution window duration
         htmlBody.append("<div id=\"CautionWindowDuration_Div\">\n");
         htmlBody.append("  <label id=\"CautionWindowDuration_Label\" class=\"label_small_margin\">Window duration</label>\n");
-        htmlBody.append("  <button type=\"button\" id=\"CautionWindowDuration_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"A rolling time window between 'now' and 'X' time units ago. Values that fall in this window are used in alert evaluation.\" style=\"margin-bottom: 1.5px;\">?</button> ");
+        htmlBody.append("  <button type=\"button\" id=\"CautionWindowDuration_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"A rolling time window between 'now' and 'X' time units ago. Values that fall in this window are used in alert evaluation. For anomaly alerts, this is the smoothing window of the moving average & moving standard deviation.\" style=\"margin-bottom: 1.5px;\">?</button> ");
         htmlBody.append("  <div>\n");
         
         htmlBody.append(
@@ -535,7 +539,7 @@ public class CreateAlert extends HttpServlet {
         htmlBody.append(
             "<div class=\"form-group statsagg_typeahead_form_margin_correction\" id=\"CautionMinimumSampleCount_Div\" >\n" +
             "  <label id=\"CautionMinimumSampleCount_Label\" class=\"label_small_margin\">Minimum sample count</label>\n" +
-            "  <button type=\"button\" id=\"CautionMinimumSampleCount_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"An alert can only be triggered if there are at least 'X' samples within specified the 'alert window duration'.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
+            "  <button type=\"button\" id=\"CautionMinimumSampleCount_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"An alert can only be triggered if there are at least 'X' samples within specified the 'alert window duration'. For anomaly alerts, this is the number of samples the moving average must have seen before the alert can be triggered.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
             "  <input class=\"form-control-statsagg\" name=\"CautionMinimumSampleCount\" id=\"CautionMinimumSampleCount\"");
 
         if ((alert != null) && (alert.getCautionMinimumSampleCount() != null)) {
@@ -549,7 +553,7 @@ public class CreateAlert extends HttpServlet {
         htmlBody.append(
             "<div class=\"form-group statsagg_typeahead_form_margin_correction\" id=\"CautionOperator_Div\" >\n" +
             "  <label id=\"CautionOperator_Label\" class=\"label_small_margin\">Operator</label>\n" +
-            "  <button type=\"button\" id=\"CautionOperator_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"The values of a metric-key are considered for threshold-based alerting when they are above/below/equal-to a certain threshold. This value controls the above/below/equal-to aspect of the alert.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
+            "  <button type=\"button\" id=\"CautionOperator_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"The values of a metric-key are considered for threshold-based alerting when they are above/below/equal-to a certain threshold. This value controls the above/below/equal-to aspect of the alert. For anomaly alerts, only above (greater) or below (less) the moving average are allowed.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
             "  <select class=\"form-control-statsagg\" name=\"CautionOperator\" id=\"CautionOperator\">\n");
 
         htmlBody.append("<option");
@@ -636,7 +640,7 @@ public class CreateAlert extends HttpServlet {
         htmlBody.append(
             "<div class=\"form-group statsagg_typeahead_form_margin_correction\" id=\"CautionThreshold_Div\" >\n" +
             "  <label id=\"CautionThreshold_Label\" class=\"label_small_margin\">Threshold</label>\n" +
-            "  <button type=\"button\" id=\"CautionThreshold_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"The numeric threshold that, if crossed, will trigger the alert.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
+            "  <button type=\"button\" id=\"CautionThreshold_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"The numeric threshold that, if crossed, will trigger the alert. For anomaly alerts, this is the number of standard deviations away from the moving average.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
             "  <input class=\"form-control-statsagg\" name=\"CautionThreshold\" id=\"CautionThreshold\" ");
 
         if ((alert != null) && (alert.getCautionThreshold() != null)) {
@@ -706,7 +710,7 @@ public class CreateAlert extends HttpServlet {
         // danger window duration
         htmlBody.append("<div id=\"DangerWindowDuration_Div\">\n");
         htmlBody.append("  <label id=\"DangerWindowDuration_Label\" class=\"label_small_margin\">Window duration</label>\n");
-        htmlBody.append("  <button type=\"button\" id=\"DangerWindowDuration_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"A rolling time window between 'now' and 'X' time units ago. Values that fall in this window are used in alert evaluation.\" style=\"margin-bottom: 1.5px;\">?</button> ");
+        htmlBody.append("  <button type=\"button\" id=\"DangerWindowDuration_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"A rolling time window between 'now' and 'X' time units ago. Values that fall in this window are used in alert evaluation. For anomaly alerts, this is the smoothing window of the moving average & moving standard deviation.\" style=\"margin-bottom: 1.5px;\">?</button> ");
         htmlBody.append("  <div>\n");
         
         htmlBody.append(
@@ -809,7 +813,7 @@ public class CreateAlert extends HttpServlet {
         htmlBody.append(
             "<div class=\"form-group statsagg_typeahead_form_margin_correction\" id=\"DangerMinimumSampleCount_Div\" >\n" +
             "  <label id=\"DangerMinimumSampleCount_Label\" class=\"label_small_margin\">Minimum sample count</label>\n" +
-            "  <button type=\"button\" id=\"DangerMinimumSampleCount_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"An alert can only be triggered if there are at least 'X' samples within specified the 'alert window duration'.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
+            "  <button type=\"button\" id=\"DangerMinimumSampleCount_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"An alert can only be triggered if there are at least 'X' samples within specified the 'alert window duration'. For anomaly alerts, this is the number of samples the moving average must have seen before the alert can be triggered.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
             "  <input class=\"form-control-statsagg\" name=\"DangerMinimumSampleCount\" id=\"DangerMinimumSampleCount\"");
 
         if ((alert != null) && (alert.getDangerMinimumSampleCount() != null)) {
@@ -823,7 +827,7 @@ public class CreateAlert extends HttpServlet {
         htmlBody.append(
             "<div class=\"form-group statsagg_typeahead_form_margin_correction\" id=\"DangerOperator_Div\" >\n" +
             "  <label id=\"DangerOperator_Label\" class=\"label_small_margin\">Operator</label>\n" +
-            "  <button type=\"button\" id=\"DangerOperator_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"The values of a metric-key are considered for threshold-based alerting when they are above/below/equal-to a certain threshold. This value controls the above/below/equal-to aspect of the alert.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
+            "  <button type=\"button\" id=\"DangerOperator_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"The values of a metric-key are considered for threshold-based alerting when they are above/below/equal-to a certain threshold. This value controls the above/below/equal-to aspect of the alert. For anomaly alerts, only above (greater) or below (less) the moving average are allowed.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
             "  <select class=\"form-control-statsagg\" name=\"DangerOperator\" id=\"DangerOperator\">\n");
 
         htmlBody.append("<option");
@@ -910,7 +914,7 @@ public class CreateAlert extends HttpServlet {
         htmlBody.append(
             "<div class=\"form-group statsagg_typeahead_form_margin_correction\" id=\"DangerThreshold_Div\" >\n" +
             "  <label id=\"DangerThreshold_Label\" class=\"label_small_margin\">Threshold</label>\n" +
-            "  <button type=\"button\" id=\"DangerThreshold_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"The numeric threshold that, if crossed, will trigger the alert.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
+            "  <button type=\"button\" id=\"DangerThreshold_Help\" class=\"btn btn-xs btn-circle btn-info pull-right\" data-toggle=\"popover\" data-placement=\"left\" data-content=\"The numeric threshold that, if crossed, will trigger the alert. For anomaly alerts, this is the number of standard deviations away from the moving average.\" style=\"margin-bottom: 1.5px;\">?</button> " + 
             "  <input class=\"form-control-statsagg\" name=\"DangerThreshold\" id=\"DangerThreshold\" ");
 
         if ((alert != null) && (alert.getDangerThreshold() != null)) {
@@ -1049,6 +1053,7 @@ public class CreateAlert extends HttpServlet {
             if (parameter == null) parameter = Common.getParameterAsString(request, "alert_type");
             if ((parameter != null) && parameter.contains("Availability")) alert.setAlertType(Alert.TYPE_AVAILABILITY);
             else if ((parameter != null) && parameter.contains("Threshold")) alert.setAlertType(Alert.TYPE_THRESHOLD);
+            else if ((parameter != null) && parameter.contains("Anomaly")) alert.setAlertType(Alert.TYPE_ANOMALY);
             
             parameter = Common.getParameterAsString(request, "AlertOnPositive");
             if (parameter == null) parameter = Common.getParameterAsString(request, "alert_on_positive");
@@ -88,8 +88,18 @@ public class MergedRegexMetricsPreview extends HttpServlet {
         String mergedMatchRegex = StringUtilities.createMergedRegex(matchRegexes_List);
         String mergedBlacklistRegex = StringUtilities.createMergedRegex(blacklistRegexes_List);
 
-        Set<String> matchMetricKeys = MetricAssociation.getRegexMatches(GlobalVariables.metricKeysLastSeenTimestamp.keySet(), mergedMatchRegex, mergedBlacklistRegex, 1001);
-        String regexMatchesHtml = RegexTester.getRegexMatchesHtml(matchMetricKeys, 1000);
+        // validate each regex individually, so that the rejection reason points at the regex that the user entered (instead of the merged regex)
+        String regexValidationError = MetricAssociation.getRegexValidationError(matchRegexes);
+        if (regexValidationError == null) regexValidationError = MetricAssociation.getRegexValidationError(blacklistRegexes);
+        
+        String regexMatchesHtml;
+        if (regexValidationError != null) {
+            regexMatchesHtml = RegexTester.getRegexValidationErrorHtml(regexValidationError);
+        }
+        else {
+            Set<String> matchMetricKeys = MetricAssociation.getRegexMatches(GlobalVariables.metricKeysLastSeenTimestamp.keySet(), mergedMatchRegex, mergedBlacklistRegex, 1001);
+            regexMatchesHtml = RegexTester.getRegexMatchesHtml(matchMetricKeys, 1000);
+        }
             
         try {  
             StringBuilder htmlBuilder = new StringBuilder();
@@ -1,5 +1,6 @@
 package com.pearson.statsagg.webui;
 
+import com.pearson.statsagg.alerts.MetricAssociation;
 import com.pearson.statsagg.database_engine.DatabaseInterface;
 import java.util.TreeSet;
 import com.pearson.statsagg.database_objects.metric_group.MetricGroup;
@@ -38,6 +39,19 @@ public class MetricGroupsLogic extends AbstractDatabaseInteractionLogic {
             logger.warn(returnString);
             return returnString;
         }
+        
+        // the linear-time regex engine can't evaluate every regex construct, so regexes that it doesn't support are rejected up front
+        if (MetricAssociation.isLinearTimeRegexEngine()) {
+            String regexValidationError = MetricAssociation.getRegexValidationError(matchRegexes);
+            if (regexValidationError == null) regexValidationError = MetricAssociation.getRegexValidationError(blacklistRegexes);
+            
+            if (regexValidationError != null) {
+                lastAlterRecordStatus_ = STATUS_CODE_FAILURE;
+                String returnString = "Failed to alter metric group. " + regexValidationError;
+                logger.warn(returnString);
+                return returnString;
+            }
+        }
 
         String returnString;
 
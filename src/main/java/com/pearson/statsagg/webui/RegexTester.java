@@ -123,8 +123,16 @@ public class RegexTester extends HttpServlet {
         
         try {
             String parameter = request.getParameter("Regex");
-            Set<String> metricKeys = MetricAssociation.getRegexMatches(GlobalVariables.metricKeysLastSeenTimestamp.keySet(), parameter, null, 1001);
-            String regexMatchesHtml = getRegexMatchesHtml(metricKeys, 1000);
+            String regexValidationError = (parameter == null) ? null : MetricAssociation.getRegexValidationError(parameter.trim());
+            
+            String regexMatchesHtml;
+            if (regexValidationError != null) {
+                regexMatchesHtml = getRegexValidationErrorHtml(regexValidationError);
+            }
+            else {
+                Set<String> metricKeys = MetricAssociation.getRegexMatches(GlobalVariables.metricKeysLastSeenTimestamp.keySet(), parameter, null, 1001);
+                regexMatchesHtml = getRegexMatchesHtml(metricKeys, 1000);
+            }
   
             StringBuilder htmlBuilder = new StringBuilder();
 
@@ -191,6 +199,10 @@ public class RegexTester extends HttpServlet {
         return htmlBody.toString();
     }
     
+    public static String getRegexValidationErrorHtml(String regexValidationError) {
+        return "<b>Regex Rejected</b> = " + StatsAggHtmlFramework.htmlEncode(regexValidationError);
+    }
+    
     public static String getRegexMatchesHtml(Set<String> metricKeys, int metricMatchLimit) {
         List<String> metricKeysList = null;
         
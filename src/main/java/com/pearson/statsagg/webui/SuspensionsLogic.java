@@ -1,10 +1,12 @@
 package com.pearson.statsagg.webui;
 
+import com.pearson.statsagg.alerts.MetricAssociation;
 import com.pearson.statsagg.database_objects.suspensions.Suspension;
 import com.pearson.statsagg.database_objects.suspensions.SuspensionsDao;
 import com.pearson.statsagg.globals.GlobalVariables;
 import com.pearson.statsagg.utilities.StackTrace;
 import com.pearson.statsagg.utilities.StringUtilities;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +32,19 @@ public class SuspensionsLogic extends AbstractDatabaseInteractionLogic {
             return returnString;
         }
         
+        // the linear-time regex engine can't evaluate every regex construct, so regexes that it doesn't support are rejected up front
+        if (MetricAssociation.isLinearTimeRegexEngine() && (suspension.getSuspendBy() != null) && (suspension.getSuspendBy() == Suspension.SUSPEND_BY_METRICS)) {
+            List<String> metricSuspensionRegexes = StringUtilities.getListOfStringsFromDelimitedString(suspension.getMetricSuspensionRegexes(), '\n');
+            String regexValidationError = MetricAssociation.getRegexValidationError(metricSuspensionRegexes);
+            
+            if (regexValidationError != null) {
+                lastAlterRecordStatus_ = STATUS_CODE_FAILURE;
+                String returnString = "Failed to alter suspension. " + regexValidationError;
+                logger.warn(returnString);
+                return returnString;
+            }
+        }
+        
         String returnString;
         
         synchronized (GlobalVariables.suspensionChanges) {
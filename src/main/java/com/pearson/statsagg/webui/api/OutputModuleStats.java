@@ -0,0 +1,155 @@
+package com.pearson.statsagg.webui.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pearson.statsagg.controller.thread_managers.OutputModuleQueue;
+import com.pearson.statsagg.controller.thread_managers.SendMetricsToOutputModule_ThreadPoolManager;
+import com.pearson.statsagg.metric_formats.OutputModuleSpool;
+import com.pearson.statsagg.network.tcp.TcpOutputClient;
+import com.pearson.statsagg.utilities.StackTrace;
+import java.io.PrintWriter;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists the output statistics of every raw TCP output module (Graphite, OpenTSDB telnet) -- bytes in flight, write latency, connections, failed/rejected writes, & the state of the module's disk spool.
+ * Also lists the state of every output module's queue -- queue depth, active workers, queued/merged/spilled/dropped batches, queue wait time, & send time.
+ *
+ * @author Jeffrey Schmidt
+ */
+@WebServlet(name="API_Output_Module_Stats", urlPatterns={"/api/output-module-stats"})
+public class OutputModuleStats extends HttpServlet {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputModuleStats.class.getName());
+
+    public static final String PAGE_NAME = "API_Output_Module_Stats";
+
+    /**
+     * Returns a short description of the servlet.
+     *
+     * @return a String containing servlet description
+     */
+    @Override
+    public String getServletInfo() {
+        return PAGE_NAME;
+    }
+
+    /**
+     * Handles the HTTP <code>GET</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+
+        PrintWriter out = null;
+
+        try {
+            request.setCharacterEncoding("UTF-8");
+            response.setCharacterEncoding("UTF-8");
+            response.setContentType("application/json");
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+
+        try {
+            String json = getOutputModuleStats();
+            out = response.getWriter();
+            out.println(json);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+
+    }
+
+    /**
+     * Returns json containing the output statistics of every raw TCP output module, & of every output module's queue.
+     *
+     * @return output module statistics
+     */
+    protected String getOutputModuleStats() {
+
+        try {
+            JsonArray outputModulesJson = new JsonArray();
+
+            for (TcpOutputClient tcpOutputClient : TcpOutputClient.getClients()) {
+                JsonObject outputModuleJson = new JsonObject();
+                outputModuleJson.addProperty("output_module_id", tcpOutputClient.getId());
+                outputModuleJson.addProperty("endpoint", tcpOutputClient.getHost() + ":" + tcpOutputClient.getPort());
+                outputModuleJson.addProperty("connected_channels", tcpOutputClient.getConnectedChannelCount());
+                outputModuleJson.addProperty("max_channels", tcpOutputClient.getMaxConnections());
+                outputModuleJson.addProperty("num_connects", tcpOutputClient.getNumConnects());
+                outputModuleJson.addProperty("bytes_in_flight", tcpOutputClient.getBytesInFlight());
+                outputModuleJson.addProperty("bytes_written", tcpOutputClient.getBytesWritten());
+                outputModuleJson.addProperty("num_writes", tcpOutputClient.getNumWrites());
+                outputModuleJson.addProperty("num_failed_writes", tcpOutputClient.getNumFailedWrites());
+                outputModuleJson.addProperty("num_rejected_writes", tcpOutputClient.getNumRejectedWrites());
+                outputModuleJson.addProperty("last_write_latency_ms", tcpOutputClient.getLastWriteLatencyInMs());
+                outputModuleJson.addProperty("avg_write_latency_ms", tcpOutputClient.getAverageWriteLatencyInMs());
+                outputModuleJson.addProperty("max_write_latency_ms", tcpOutputClient.getMaxWriteLatencyInMs());
+
+                OutputModuleSpool outputModuleSpool = OutputModuleSpool.getExistingSpool(tcpOutputClient.getId());
+                if (outputModuleSpool != null) {
+                    JsonObject spoolJson = new JsonObject();
+                    spoolJson.addProperty("pending_messages", outputModuleSpool.getPendingMessageCount());
+                    spoolJson.addProperty("pending_bytes", outputModuleSpool.getPendingBytes());
+                    spoolJson.addProperty("segments", outputModuleSpool.getSegmentCount());
+                    spoolJson.addProperty("num_spooled_messages", outputModuleSpool.getNumSpooledMessages());
+                    spoolJson.addProperty("num_replayed_messages", outputModuleSpool.getNumReplayedMessages());
+                    spoolJson.addProperty("num_dropped_messages", outputModuleSpool.getNumDroppedMessages());
+                    outputModuleJson.add("spool", spoolJson);
+                }
+
+                outputModulesJson.add(outputModuleJson);
+            }
+
+            JsonArray outputModuleQueuesJson = new JsonArray();
+
+            for (OutputModuleQueue outputModuleQueue : SendMetricsToOutputModule_ThreadPoolManager.getOutputModuleQueues()) {
+                JsonObject outputModuleQueueJson = new JsonObject();
+                outputModuleQueueJson.addProperty("output_module_id", outputModuleQueue.getOutputModuleId());
+                outputModuleQueueJson.addProperty("queue_depth", outputModuleQueue.getQueueDepth());
+                outputModuleQueueJson.addProperty("active_workers", outputModuleQueue.getActiveWorkers());
+                outputModuleQueueJson.addProperty("num_queued_batches", outputModuleQueue.getNumQueuedBatches());
+                outputModuleQueueJson.addProperty("num_merged_batches", outputModuleQueue.getNumMergedBatches());
+                outputModuleQueueJson.addProperty("num_spilled_batches", outputModuleQueue.getNumSpilledBatches());
+                outputModuleQueueJson.addProperty("num_dropped_batches", outputModuleQueue.getNumDroppedBatches());
+                outputModuleQueueJson.addProperty("num_completed_sends", outputModuleQueue.getNumCompletedSends());
+                outputModuleQueueJson.addProperty("last_queue_wait_ms", outputModuleQueue.getLastQueueWaitTimeInMs());
+                outputModuleQueueJson.addProperty("avg_queue_wait_ms", outputModuleQueue.getAverageQueueWaitTimeInMs());
+                outputModuleQueueJson.addProperty("max_queue_wait_ms", outputModuleQueue.getMaxQueueWaitTimeInMs());
+                outputModuleQueueJson.addProperty("last_send_time_ms", outputModuleQueue.getLastSendTimeInMs());
+                outputModuleQueueJson.addProperty("avg_send_time_ms", outputModuleQueue.getAverageSendTimeInMs());
+                outputModuleQueueJson.addProperty("max_send_time_ms", outputModuleQueue.getMaxSendTimeInMs());
+                outputModuleQueuesJson.add(outputModuleQueueJson);
+            }
+
+            JsonObject outputModuleStatsJson = new JsonObject();
+            outputModuleStatsJson.add("tcp_output_modules", outputModulesJson);
+            outputModuleStatsJson.add("output_module_queues", outputModuleQueuesJson);
+
+            Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+            return gson.toJson(outputModuleStatsJson);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            return Helper.ERROR_UNKNOWN_JSON;
+        }
+
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.pearson.statsagg.webui.api;
+
+import com.pearson.statsagg.globals.ApplicationConfiguration;
+import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusMetric;
+import com.pearson.statsagg.metric_formats.prometheus.PrometheusSeriesSelector;
+import com.pearson.statsagg.utilities.StackTrace;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the most recent value of every output metric in the Prometheus text format, so that Prometheus can scrape StatsAgg.
+ *
+ * The response is rendered & written one metric at a time (& gzip compressed as it is written, if the client accepts gzip),
+ * so a scrape never holds the whole response in memory. The 'match[]' parameter(s) limit the response to the series that match at least one of the selectors.
+ *
+ * @author Jeffrey Schmidt
+ */
+@WebServlet(name="API_Prometheus_Metrics", urlPatterns={"/metrics"})
+public class Prometheus_Metrics extends HttpServlet {
+
+    private static final Logger logger = LoggerFactory.getLogger(Prometheus_Metrics.class.getName());
+
+    public static final String PAGE_NAME = "Prometheus Metrics API";
+
+    private static final int WRITE_BUFFER_SIZE = 65536;
+
+    /**
+     * Handles the HTTP <code>GET</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+        processGetRequest(request, response);
+    }
+
+    /**
+     * Handles the HTTP
+     * <code>POST</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) {
+        processGetRequest(request, response);
+    }
+
+    /**
+     * Returns a short description of the servlet.
+     *
+     * @return a String containing servlet description
+     */
+    @Override
+    public String getServletInfo() {
+        return PAGE_NAME;
+    }
+
+    protected void processGetRequest(HttpServletRequest request, HttpServletResponse response) {
+
+        if ((request == null) || (response == null)) {
+            return;
+        }
+
+        long scrapeTimeStart = System.currentTimeMillis();
+
+        if (!ApplicationConfiguration.isPrometheusEndpointEnabled()) {
+            writeErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "The Prometheus endpoint is not enabled");
+            return;
+        }
+
+        List<PrometheusSeriesSelector> selectors = new ArrayList<>();
+        String[] unparsedSelectors = request.getParameterValues("match[]");
+
+        if (unparsedSelectors != null) {
+            for (String unparsedSelector : unparsedSelectors) {
+                PrometheusSeriesSelector selector = PrometheusSeriesSelector.parseSeriesSelector(unparsedSelector);
+
+                if (selector == null) {
+                    writeErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid match[] selector: " + unparsedSelector);
+                    return;
+                }
+
+                selectors.add(selector);
+            }
+        }
+
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean isGzipEnabled = (acceptEncoding != null) && acceptEncoding.toLowerCase().contains("gzip");
+
+        Writer writer = null;
+
+        try {
+            response.setContentType(PrometheusMetric.CONTENT_TYPE);
+            if (isGzipEnabled) response.setHeader("Content-Encoding", "gzip");
+
+            OutputStream outputStream = response.getOutputStream();
+            if (isGzipEnabled) outputStream = new GZIPOutputStream(outputStream, WRITE_BUFFER_SIZE);
+            writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+
+            long numMetricsWritten = writeMostRecentValues(writer, selectors, ApplicationConfiguration.isPrometheusEndpointIncludeTimestamps());
+
+            long scrapeTimeElasped = System.currentTimeMillis() - scrapeTimeStart;
+            logger.debug("Prometheus scrape. MetricCount=" + numMetricsWritten + ", Selectors=" + selectors + ", Gzip=" + isGzipEnabled + ", ScrapeTime=" + scrapeTimeElasped);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        finally {
+            try {
+                // closing the writer also finishes the gzip stream
+                if (writer != null) writer.close();
+            }
+            catch (Exception e) {
+                logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            }
+        }
+    }
+
+    /*
+    Writes the most recent value of every statsd metric, followed by the most recent value of every other output metric.
+    Output-blacklisted metrics are skipped, since they aren't sent to any other output either.
+    */
+    public static long writeMostRecentValues(Writer writer, List<PrometheusSeriesSelector> selectors, boolean includeTimestamps) throws IOException {
+
+        long numMetricsWritten = PrometheusMetric.writePrometheusFormat(writer, GlobalVariables.statsdMetricsAggregatedMostRecentValue.values().iterator(),
+                selectors, metricKey -> isMetricKeyOutputBlacklisted(metricKey), includeTimestamps);
+
+        numMetricsWritten += PrometheusMetric.writePrometheusFormat(writer, GlobalVariables.prometheusMetricsMostRecentValue.values().iterator(), selectors,
+                metricKey -> (GlobalVariables.statsdMetricsAggregatedMostRecentValue.containsKey(metricKey) || isMetricKeyOutputBlacklisted(metricKey)), includeTimestamps);
+
+        return numMetricsWritten;
+    }
+
+    private static boolean isMetricKeyOutputBlacklisted(String metricKey) {
+        return Boolean.TRUE.equals(GlobalVariables.metricKeysAssociatedWithOutputBlacklistMetricGroup.get(metricKey));
+    }
+
+    private static void writeErrorResponse(HttpServletResponse response, int statusCode, String message) {
+
+        PrintWriter out = null;
+
+        try {
+            response.setStatus(statusCode);
+            response.setContentType("text/plain");
+            response.setCharacterEncoding("UTF-8");
+            out = response.getWriter();
+            out.println(message);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.pearson.statsagg.webui.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pearson.statsagg.alerts.SuspensionTimeline;
+import com.pearson.statsagg.alerts.Suspensions;
+import com.pearson.statsagg.database_objects.suspensions.Suspension;
+import com.pearson.statsagg.database_objects.suspensions.SuspensionsDao;
+import com.pearson.statsagg.utilities.StackTrace;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists the upcoming suspension activations & deactivations, read from the precomputed suspension activation timeline.
+ * Optional parameters: 'hours' (how far ahead to look, default 24) & 'limit' (the max number of transitions to return, default 1000).
+ * 
+ * @author Jeffrey Schmidt
+ */
+@WebServlet(name="API_Suspension_Transitions", urlPatterns={"/api/suspension-transitions"})
+public class SuspensionTransitions extends HttpServlet {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuspensionTransitions.class.getName());
+    
+    public static final String PAGE_NAME = "API_Suspension_Transitions";
+    
+    private static final int DEFAULT_HOURS = 24;
+    private static final int DEFAULT_LIMIT = 1000;
+    
+    /**
+     * Returns a short description of the servlet.
+     *
+     * @return a String containing servlet description
+     */
+    @Override
+    public String getServletInfo() {
+        return PAGE_NAME;
+    }
+    
+    /**
+     * Handles the HTTP <code>GET</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+        
+        PrintWriter out = null;
+        
+        try {  
+            request.setCharacterEncoding("UTF-8");
+            response.setCharacterEncoding("UTF-8");
+            response.setContentType("application/json");
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }
+        
+        try {    
+            String json = getSuspensionTransitions(request);       
+            out = response.getWriter();
+            out.println(json);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+        }     
+        finally {            
+            if (out != null) {
+                out.close();
+            }
+        } 
+        
+    }
+    
+    /**
+     * Returns json containing the currently active suspensions, & the suspension transitions in the requested time range.
+     * 
+     * @param request servlet request
+     * @return upcoming suspension transitions
+     */
+    protected String getSuspensionTransitions(HttpServletRequest request) {
+        
+        if (request == null) {
+            return Helper.ERROR_UNKNOWN_JSON;
+        }
+        
+        try {
+            int hours = DEFAULT_HOURS, limit = DEFAULT_LIMIT;
+            
+            try {
+                if (request.getParameter("hours") != null) hours = Integer.parseInt(request.getParameter("hours").trim());
+                if (request.getParameter("limit") != null) limit = Integer.parseInt(request.getParameter("limit").trim());
+            }
+            catch (Exception e) {
+                return Helper.createSimpleJsonErrorResponse("Invalid 'hours' or 'limit' parameter");
+            }
+            
+            SuspensionsDao suspensionsDao = new SuspensionsDao();
+            List<Suspension> suspensions = suspensionsDao.getAllDatabaseObjectsInTable();
+            if (suspensions == null) return Helper.ERROR_UNKNOWN_JSON;
+            
+            Map<Integer,String> suspensionNamesById = new HashMap<>();
+            for (Suspension suspension : suspensions) if (suspension.getId() != null) suspensionNamesById.put(suspension.getId(), suspension.getName());
+            
+            long currentTimestamp = System.currentTimeMillis();
+            SuspensionTimeline suspensionTimeline = Suspensions.getSuspensionTimeline(suspensions, currentTimestamp);
+            long endTimestamp = Math.min(currentTimestamp + (Math.max(hours, 0) * 3600000L), suspensionTimeline.getHorizonEnd());
+            
+            JsonObject suspensionTransitionsJson = new JsonObject();
+            suspensionTransitionsJson.addProperty("current_timestamp", currentTimestamp);
+            suspensionTransitionsJson.addProperty("end_timestamp", endTimestamp);
+            
+            JsonArray activeSuspensionIdsJson = new JsonArray();
+            Set<Integer> activeSuspensionIds = suspensionTimeline.getActiveSuspensionIds(currentTimestamp);
+            if (activeSuspensionIds != null) for (Integer activeSuspensionId : new TreeSet<>(activeSuspensionIds)) activeSuspensionIdsJson.add(activeSuspensionId);
+            suspensionTransitionsJson.add("active_suspension_ids", activeSuspensionIdsJson);
+            
+            Long nextTransitionTimestamp = suspensionTimeline.getNextTransitionTimestamp(currentTimestamp);
+            if (nextTransitionTimestamp != null) suspensionTransitionsJson.addProperty("next_transition_timestamp", nextTransitionTimestamp);
+            
+            List<JsonObject> transitionsJson = new ArrayList<>();
+            for (SuspensionTimeline.Transition transition : suspensionTimeline.getTransitions(currentTimestamp, endTimestamp, limit)) {
+                JsonObject transitionJson = new JsonObject();
+                transitionJson.addProperty("timestamp", transition.getTimestamp());
+                transitionJson.addProperty("time", Instant.ofEpochMilli(transition.getTimestamp()).toString());
+                transitionJson.addProperty("suspension_id", transition.getSuspensionId());
+                transitionJson.addProperty("suspension_name", suspensionNamesById.get(transition.getSuspensionId()));
+                transitionJson.addProperty("transition", transition.isActivation() ? "activate" : "deactivate");
+                transitionsJson.add(transitionJson);
+            }
+            
+            Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+            suspensionTransitionsJson.add("transitions", gson.toJsonTree(transitionsJson));
+            
+            return gson.toJson(suspensionTransitionsJson);
+        }
+        catch (Exception e) {
+            logger.error(e.toString() + System.lineSeparator() + StackTrace.getStringFromStackTrace(e));
+            return Helper.ERROR_UNKNOWN_JSON;
+        }
+        
+    }
+    
+}
@@ -11,6 +11,7 @@ function generateAlertPreviewLink(warningLevel) {
     var alertTypeParameter;
     if (document.getElementById("Type_Availability").checked === true) alertTypeParameter = "Type=" + encodeURIComponent("Availability");
     else if (document.getElementById("Type_Threshold").checked === true) alertTypeParameter = "Type=" + encodeURIComponent("Threshold");
+    else if (document.getElementById("Type_Anomaly").checked === true) alertTypeParameter = "Type=" + encodeURIComponent("Anomaly");
     else alertTypeParameter = "Type=" + encodeURIComponent("undefined");
 
     var metricGroupNameParameter = "MetricGroupName=" + encodeURIComponent(document.getElementById("MetricGroupName").value.substring(0, 500));
@@ -84,6 +85,9 @@ $('#Type_Availability').change(function () {
 $('#Type_Threshold').change(function () {
     CreateAlert_Type_ShowAndHide();
 });
+$('#Type_Anomaly').change(function () {
+    CreateAlert_Type_ShowAndHide();
+});
 
 // On changing the 'alert on positive' box the 'Create Alert' page, show and hide certain UI elements
 $('#AlertOnPositive').change(function () {
@@ -137,6 +141,21 @@ function CreateAlert_Type_ShowAndHide() {
 
         $("#CautionThreshold_Div").show();
     }
+    else if ($("#Type_Anomaly").prop('checked') === true) {
+        $("#CautionNoAlertTypeSelected_Label").hide();
+        $("#CautionNotificationGroupName_Div").show();
+        
+        if ($("#AlertOnPositive").prop('checked') === true) $("#CautionPositiveNotificationGroupName_Div").show();
+        else $("#CautionPositiveNotificationGroupName_Div").hide();
+
+        $("#CautionWindowDuration_Div").show();
+        $("#CautionStopTrackingAfter_Div").hide();
+        $("#CautionMinimumSampleCount_Div").show();
+        $("#CautionOperator_Div").show();
+        $("#CautionCombination_Div").hide();
+        $("#CautionCombinationCount_Div").hide();
+        $("#CautionThreshold_Div").show();
+    }
     else {
         $("#CautionNoAlertTypeSelected_Label").show();
         $("#CautionNotificationGroupName_Div").hide();
@@ -185,6 +204,21 @@ function CreateAlert_Type_ShowAndHide() {
 
         $("#DangerThreshold_Div").show();
     }
+    else if ($("#Type_Anomaly").prop('checked') === true) {
+        $("#DangerNoAlertTypeSelected_Label").hide();
+        $("#DangerNotificationGroupName_Div").show();
+        
+        if ($("#AlertOnPositive").prop('checked') === true) $("#DangerPositiveNotificationGroupName_Div").show();
+        else $("#DangerPositiveNotificationGroupName_Div").hide();
+
+        $("#DangerWindowDuration_Div").show();
+        $("#DangerStopTrackingAfter_Div").hide();
+        $("#DangerMinimumSampleCount_Div").show();
+        $("#DangerOperator_Div").show();
+        $("#DangerCombination_Div").hide();
+        $("#DangerCombinationCount_Div").hide();
+        $("#DangerThreshold_Div").show();
+    }
     else {
         $("#DangerNoAlertTypeSelected_Label").show();
         $("#DangerNotificationGroupName_Div").hide();
@@ -0,0 +1,56 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.database_objects.DatabaseObjectCommon;
+import com.pearson.statsagg.database_objects.alerts.Alert;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class AlertEvaluationPlanTest {
+
+    public AlertEvaluationPlanTest() {
+    }
+
+    private static Alert createThresholdAlert(int id, Integer metricGroupId, long cautionWindowDuration, long dangerWindowDuration) {
+        return new Alert(id, "alert" + id, "alert" + id + "_description" , metricGroupId, true, true, true, Alert.TYPE_THRESHOLD, true, true, 300000l, DatabaseObjectCommon.TIME_UNIT_SECONDS,
+            1, 2, Alert.OPERATOR_GREATER, Alert.COMBINATION_ALL, null, new BigDecimal("100"), cautionWindowDuration, DatabaseObjectCommon.TIME_UNIT_SECONDS, null, DatabaseObjectCommon.TIME_UNIT_SECONDS, 1, false, new Timestamp(System.currentTimeMillis()), false, null, null,
+            1, 2, Alert.OPERATOR_GREATER, Alert.COMBINATION_ALL, null, new BigDecimal("200"), dangerWindowDuration, DatabaseObjectCommon.TIME_UNIT_SECONDS, null, DatabaseObjectCommon.TIME_UNIT_SECONDS, 1, false, new Timestamp(System.currentTimeMillis()), false, null, null);
+    }
+
+    /**
+     * Test of the metric group & window duration grouping done by the AlertEvaluationPlan constructor.
+     */
+    @Test
+    public void testAlertEvaluationPlan() {
+        List<Alert> alerts = new ArrayList<>();
+        alerts.add(createThresholdAlert(1, 11, 60000L, 60000L));
+        alerts.add(createThresholdAlert(2, 11, 60000L, 300000L));
+        alerts.add(createThresholdAlert(3, 11, 300000L, 60000L));
+        alerts.add(createThresholdAlert(4, 12, 900000L, 900000L));
+        alerts.add(createThresholdAlert(5, null, 900000L, 900000L));
+        alerts.add(null);
+
+        AlertEvaluationPlan alertEvaluationPlan = new AlertEvaluationPlan(alerts);
+
+        assertEquals(2, alertEvaluationPlan.getMetricGroupCount());
+        assertEquals(4, alertEvaluationPlan.getAlertCount());
+        assertEquals(3, alertEvaluationPlan.getAlerts(11).size());
+        assertEquals(1, alertEvaluationPlan.getAlerts(12).size());
+        assertTrue(alertEvaluationPlan.getAlerts(13).isEmpty());
+
+        List<Long> windowDurations = alertEvaluationPlan.getWindowDurations(11);
+        assertEquals(2, windowDurations.size());
+        assertEquals(Long.valueOf(60000L), windowDurations.get(0));
+        assertEquals(Long.valueOf(300000L), windowDurations.get(1));
+
+        assertEquals(1, alertEvaluationPlan.getWindowDurations(12).size());
+        assertTrue(alertEvaluationPlan.getWindowDurations(13).isEmpty());
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.pearson.statsagg.alerts;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class AlertEvaluationResultTest {
+
+    public AlertEvaluationResultTest() {
+    }
+
+    /**
+     * Test of merge method, of class AlertEvaluationResult.
+     */
+    @Test
+    public void testMerge() {
+        AlertEvaluationResult.Collector collector1 = new AlertEvaluationResult.Collector();
+        collector1.addActiveCautionAlertMetric(1, "metric1", new BigDecimal("10"));
+        collector1.addActiveDangerAlertMetric(1, "metric1", new BigDecimal("20"));
+        collector1.removeActiveCautionAvailabilityMetricKey(2, "metric2", "New data point(s) received");
+        collector1.addAlertEvaluationTime(1, 100);
+
+        AlertEvaluationResult.Collector collector2 = new AlertEvaluationResult.Collector();
+        collector2.addActiveCautionAlertMetric(1, "metric3", new BigDecimal("30"));
+        collector2.addActiveDangerAvailabilityMetricKey(3, "metric4");
+        collector2.removeActiveDangerAvailabilityMetricKey(3, "metric5", null);
+        collector2.addAlertEvaluationTime(1, 50);
+
+        List<AlertEvaluationResult> alertEvaluationResults = new ArrayList<>();
+        alertEvaluationResults.add(collector1.toAlertEvaluationResult());
+        alertEvaluationResults.add(null);
+        alertEvaluationResults.add(collector2.toAlertEvaluationResult());
+
+        AlertEvaluationResult result = AlertEvaluationResult.merge(alertEvaluationResults);
+
+        assertEquals(2, result.getActiveCautionAlertMetricKeysByAlertId().get(1).size());
+        assertTrue(result.getActiveCautionAlertMetricKeysByAlertId().get(1).contains("metric1"));
+        assertTrue(result.getActiveCautionAlertMetricKeysByAlertId().get(1).contains("metric3"));
+        assertEquals(new BigDecimal("30"), result.getActiveCautionAlertMetricValues().get("metric3-1"));
+        assertEquals(new BigDecimal("20"), result.getActiveDangerAlertMetricValues().get("metric1-1"));
+        assertTrue(result.getActiveCautionAvailabilityMetricKeysToRemove().get(2).contains("metric2"));
+        assertEquals("New data point(s) received", result.getPositiveAlertReasons_Caution_ByAlertId().get(2).get("metric2"));
+        assertTrue(result.getActiveDangerAvailabilityMetricKeysToAdd().get(3).contains("metric4"));
+        assertTrue(result.getActiveDangerAvailabilityMetricKeysToRemove().get(3).contains("metric5"));
+        assertNull(result.getPositiveAlertReasons_Danger_ByAlertId().get(3));
+        assertEquals(Long.valueOf(150), result.getAlertEvaluationTimeInNanosecondsByAlertId().get(1));
+
+        try {
+            result.getActiveCautionAlertMetricKeysByAlertId().get(1).add("metric6");
+            fail("AlertEvaluationResult should not be modifiable");
+        }
+        catch (UnsupportedOperationException e) {}
+
+        try {
+            collector1.addActiveCautionAlertMetric(1, "metric7", BigDecimal.ONE);
+            fail("Collector should not be modifiable after its result has been created");
+        }
+        catch (IllegalStateException e) {}
+
+        assertTrue(AlertEvaluationResult.merge(null).getActiveCautionAlertMetricKeysByAlertId().isEmpty());
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.metric_aggregation.MetricKeyLastSeen;
+import com.pearson.statsagg.metric_aggregation.MetricTimestampAndValue;
+import com.pearson.statsagg.metric_aggregation.RecentMetricTimestampsAndValues;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class AlertStateSnapshotTest {
+    
+    private File snapshotDirectory_ = null;
+    
+    public AlertStateSnapshotTest() {
+    }
+    
+    @Before
+    public void setUp() throws Exception {
+        snapshotDirectory_ = Files.createTempDirectory("statsagg_alert_state_test").toFile();
+        clearGlobalVariables();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        clearGlobalVariables();
+        FileUtils.deleteQuietly(snapshotDirectory_);
+    }
+    
+    private static void clearGlobalVariables() {
+        GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.clear();
+        GlobalVariables.metricKeysLastSeenTimestamp.clear();
+        GlobalVariables.activeCautionAlertMetricKeysByAlertId.clear();
+        GlobalVariables.activeDangerAlertMetricKeysByAlertId.clear();
+        GlobalVariables.activeCautionAvailabilityAlerts.clear();
+        GlobalVariables.activeDangerAvailabilityAlerts.clear();
+    }
+    
+    private static void addMetricValue(String metricKey, long timestamp, BigDecimal metricValue) {
+        long metricHashKey = GlobalVariables.metricHashKeyGenerator.incrementAndGet();
+        GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.putIfAbsent(metricKey, new RecentMetricTimestampsAndValues());
+        GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get(metricKey).add(new MetricTimestampAndValue(timestamp, metricValue, metricHashKey));
+        GlobalVariables.metricKeysLastSeenTimestamp.put(metricKey, new MetricKeyLastSeen(timestamp, timestamp));
+    }
+
+    /**
+     * Test of writeSnapshot & restoreSnapshot methods, of class AlertStateSnapshot.
+     */
+    @Test
+    public void testWriteAndRestoreSnapshot() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        
+        addMetricValue("metric1", currentTime - 3000, new BigDecimal("1.5"));
+        addMetricValue("metric2", currentTime - 3000, new BigDecimal("123456789012345678901234567890.123"));
+        GlobalVariables.activeCautionAlertMetricKeysByAlertId.put(1, new ArrayList<>(Collections.singletonList("metric1")));
+        GlobalVariables.activeDangerAvailabilityAlerts.put(2, Collections.synchronizedSet(new HashSet<>(Collections.singletonList("metric3"))));
+        
+        AlertStateSnapshot alertStateSnapshot = new AlertStateSnapshot(snapshotDirectory_.getAbsolutePath());
+        assertTrue(alertStateSnapshot.writeSnapshot());
+        assertTrue(new File(snapshotDirectory_, AlertStateSnapshot.SNAPSHOT_FILENAME).length() > 0);
+        
+        addMetricValue("metric1", currentTime - 2000, new BigDecimal("2.5"));
+        assertTrue(alertStateSnapshot.writeSnapshot());
+        addMetricValue("metric1", currentTime - 1000, new BigDecimal("-3"));
+        assertTrue(alertStateSnapshot.writeSnapshot());
+        
+        File logFile = new File(snapshotDirectory_, AlertStateSnapshot.LOG_FILENAME);
+        assertTrue(logFile.length() > 0);
+        
+        // simulates a delta record that was only partially written
+        try (FileOutputStream fileOutputStream = new FileOutputStream(logFile, true)) {
+            fileOutputStream.write(new byte[] {0, 0, 0, 100, 1, 2, 3});
+        }
+        
+        long metricHashKeyBeforeRestore = GlobalVariables.metricHashKeyGenerator.get();
+        clearGlobalVariables();
+
+        Long restoredTimestamp = new AlertStateSnapshot(snapshotDirectory_.getAbsolutePath()).restoreSnapshot(900000);
+        assertNotNull(restoredTimestamp);
+        
+        List<MetricTimestampAndValue> metric1Values = GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get("metric1");
+        assertEquals(3, metric1Values.size());
+        List<BigDecimal> metric1MetricValues = new ArrayList<>();
+        for (MetricTimestampAndValue metricTimestampAndValue : metric1Values) metric1MetricValues.add(metricTimestampAndValue.getMetricValue());
+        assertTrue(metric1MetricValues.contains(new BigDecimal("1.5")));
+        assertTrue(metric1MetricValues.contains(new BigDecimal("2.5")));
+        assertTrue(metric1MetricValues.contains(new BigDecimal("-3")));
+        
+        assertEquals(new BigDecimal("123456789012345678901234567890.123"), GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get("metric2").get(0).getMetricValue());
+        assertEquals(Long.valueOf(currentTime - 1000), GlobalVariables.metricKeysLastSeenTimestamp.get("metric1").getMetricKeyLastSeenTimestamp_Current());
+        assertTrue(GlobalVariables.activeCautionAlertMetricKeysByAlertId.get(1).contains("metric1"));
+        assertTrue(GlobalVariables.activeDangerAvailabilityAlerts.get(2).contains("metric3"));
+        assertTrue(GlobalVariables.metricHashKeyGenerator.get() >= metricHashKeyBeforeRestore);
+        
+        // snapshots that are too old aren't restored
+        clearGlobalVariables();
+        Thread.sleep(5);
+        assertNull(new AlertStateSnapshot(snapshotDirectory_.getAbsolutePath()).restoreSnapshot(0));
+        assertTrue(GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.isEmpty());
+        
+        // nothing to restore
+        assertNull(new AlertStateSnapshot(new File(snapshotDirectory_, "missing").getAbsolutePath()).restoreSnapshot(900000));
+    }
+    
+    /**
+     * Test of writeSnapshot & restoreSnapshot methods, of class AlertStateSnapshot. Metric-keys that are removed after the full snapshot must not come back on restore,
+     * & a record that was never completed (its header is still a placeholder) must be ignored.
+     */
+    @Test
+    public void testWriteAndRestoreSnapshot_RemovedMetricKeys() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        
+        addMetricValue("metric1", currentTime - 3000, new BigDecimal("1"));
+        addMetricValue("metric2", currentTime - 3000, new BigDecimal("2"));
+        
+        AlertStateSnapshot alertStateSnapshot = new AlertStateSnapshot(snapshotDirectory_.getAbsolutePath());
+        assertTrue(alertStateSnapshot.writeSnapshot());
+        
+        // same as the cleanup routine
+        GlobalVariables.metricKeysLastSeenTimestamp.remove("metric2");
+        GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.remove("metric2");
+        addMetricValue("metric1", currentTime - 2000, new BigDecimal("3"));
+        assertTrue(alertStateSnapshot.writeSnapshot());
+        
+        // simulates a delta record that was interrupted before its header was filled in
+        File logFile = new File(snapshotDirectory_, AlertStateSnapshot.LOG_FILENAME);
+        try (FileOutputStream fileOutputStream = new FileOutputStream(logFile, true)) {
+            fileOutputStream.write(new byte[24]);
+        }
+        
+        clearGlobalVariables();
+        assertNotNull(new AlertStateSnapshot(snapshotDirectory_.getAbsolutePath()).restoreSnapshot(900000));
+        
+        assertEquals(2, GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get("metric1").size());
+        assertNull(GlobalVariables.recentMetricTimestampsAndValuesByMetricKey.get("metric2"));
+        assertNull(GlobalVariables.metricKeysLastSeenTimestamp.get("metric2"));
+    }
+    
+}
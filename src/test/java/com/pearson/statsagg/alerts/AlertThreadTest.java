@@ -5,8 +5,14 @@ import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import com.pearson.statsagg.database_objects.alerts.Alert;
 import com.pearson.statsagg.globals.GlobalVariables;
@@ -82,31 +88,105 @@ public class AlertThreadTest {
     }
     
     /**
-     * Test of separateMetricKeysByCpuCore method, of class AlertThread.
+     * Test of getMetricKeyRanges method, of class AlertThread.
      */
     @Test
-    public void testSeparateMetricKeysByCpuCore() {
-        List<Alert> alerts = new ArrayList<>();
+    public void testGetMetricKeyRanges() {
+        List<int[]> metricKeyRanges = AlertThread.getMetricKeyRanges(7877, 500);
+        assertEquals(16, metricKeyRanges.size());
         
-        for (int i = 1; i <= 7877; i++) {
-            Alert alert = new Alert(i, "alert-" + i, "alert-" + i , 11, false, true, true, Alert.TYPE_THRESHOLD, true, true, 300000l, DatabaseObjectCommon.TIME_UNIT_SECONDS, 
-                1, 2, Alert.OPERATOR_GREATER, Alert.COMBINATION_ALL, null, new BigDecimal("100"), 900L, DatabaseObjectCommon.TIME_UNIT_SECONDS, null, DatabaseObjectCommon.TIME_UNIT_SECONDS, 1, false, new Timestamp(System.currentTimeMillis()), false, null, null, 
-                1, 2, Alert.OPERATOR_GREATER, Alert.COMBINATION_ALL, null, new BigDecimal("200"), 1000L, DatabaseObjectCommon.TIME_UNIT_SECONDS, null, DatabaseObjectCommon.TIME_UNIT_SECONDS, 2, true, new Timestamp(System.currentTimeMillis()), false, null, null);
-            
-            alerts.add(alert);
+        int totalMetricKeys = 0, expectedStartIndex = 0;
+        for (int[] metricKeyRange : metricKeyRanges) {
+            assertEquals(expectedStartIndex, metricKeyRange[0]);
+            assertTrue((metricKeyRange[1] - metricKeyRange[0]) <= 500);
+            totalMetricKeys = totalMetricKeys + (metricKeyRange[1] - metricKeyRange[0]);
+            expectedStartIndex = metricKeyRange[1];
         }
- 
-        Map<Integer,List<Alert>> metricKeysByCpuCore = AlertThread.separateAlertsByCpuCore(alerts);
         
-        if (Runtime.getRuntime().availableProcessors() > 2) assertEquals(metricKeysByCpuCore.size(), Runtime.getRuntime().availableProcessors() - 1);
-        else assertEquals(1, Runtime.getRuntime().availableProcessors() - 1);
+        assertEquals(7877, totalMetricKeys);
+        assertEquals(377, metricKeyRanges.get(15)[1] - metricKeyRanges.get(15)[0]);
         
-        int totalAlerts = 0;
-        for (List<Alert> metricKeysSingleCore : metricKeysByCpuCore.values()) {
-            totalAlerts = totalAlerts + metricKeysSingleCore.size();
-        }
+        assertTrue(AlertThread.getMetricKeyRanges(0, 500).isEmpty());
+        assertEquals(3, AlertThread.getMetricKeyRanges(3, 0).size());
+        assertEquals(1, AlertThread.getMetricKeyRanges(10, 500).size());
+    }
+    
+    /**
+     * Test of isRestoredWindowUsable method, of class AlertThread.
+     */
+    @Test
+    public void testIsRestoredWindowUsable() {
+        assertTrue(AlertThread.isRestoredWindowUsable(900000L, 60000));
+        assertFalse(AlertThread.isRestoredWindowUsable(60000L, 60000));
+        assertFalse(AlertThread.isRestoredWindowUsable(60000L, 900000));
+        assertFalse(AlertThread.isRestoredWindowUsable(null, 60000));
+        assertFalse(AlertThread.isRestoredWindowUsable(900000L, Long.MAX_VALUE));
+        assertFalse(AlertThread.isRestoredWindowUsable(900000L, -1));
+    }
+    
+    /**
+     * Test of mergeAlertEvaluationResults method, of class AlertThread.
+     * The alerts of a metric group whose evaluation task threw an exception must keep their previous active metric-keys & values.
+     */
+    @Test
+    public void testMergeAlertEvaluationResults_TaskThrows() {
+        
+        Alert alertInFailedMetricGroup = Alert.copy(alert3_);
+        alertInFailedMetricGroup.setId(5);
+        alertInFailedMetricGroup.setMetricGroupId(12);
+        
+        List<Alert> alerts = new ArrayList<>();
+        alerts.add(alert3_);
+        alerts.add(alertInFailedMetricGroup);
+        AlertEvaluationPlan alertEvaluationPlan = new AlertEvaluationPlan(alerts);
         
-        assertTrue(7877 == totalAlerts);
+        AlertEvaluationResult.Collector collector = new AlertEvaluationResult.Collector();
+        collector.addActiveCautionAlertMetric(3, "metric.new", new BigDecimal("101"));
+        
+        Map<Integer,ForkJoinTask<AlertEvaluationResult>> alertEvaluationTasksByMetricGroupId = new HashMap<>();
+        alertEvaluationTasksByMetricGroupId.put(11, ForkJoinTask.adapt(() -> collector.toAlertEvaluationResult()));
+        alertEvaluationTasksByMetricGroupId.put(12, ForkJoinTask.adapt((Callable<AlertEvaluationResult>) () -> { throw new IllegalStateException("evaluation failed"); }));
+        
+        ForkJoinPool forkJoinPool = new ForkJoinPool(1);
+        try {
+            forkJoinPool.submit(() -> ForkJoinTask.invokeAll(alertEvaluationTasksByMetricGroupId.values())).get(10, TimeUnit.SECONDS);
+            fail("Expected the failed task's exception");
+        }
+        catch (Exception e) {
+            // expected
+        }
+        finally {
+            forkJoinPool.shutdownNow();
+        }
+        
+        assertTrue(alertEvaluationTasksByMetricGroupId.get(12).isCompletedAbnormally());
+        
+        Map<Integer,List<String>> previousActiveCautionAlertMetricKeysByAlertId = new HashMap<>();
+        previousActiveCautionAlertMetricKeysByAlertId.put(3, new ArrayList<>(Arrays.asList("metric.old")));
+        previousActiveCautionAlertMetricKeysByAlertId.put(5, new ArrayList<>(Arrays.asList("metric.a", "metric.b")));
+        Map<String,BigDecimal> previousActiveCautionAlertMetricValues = new HashMap<>();
+        previousActiveCautionAlertMetricValues.put("metric.old-3", new BigDecimal("102"));
+        previousActiveCautionAlertMetricValues.put("metric.a-5", new BigDecimal("103"));
+        previousActiveCautionAlertMetricValues.put("metric.b-5", new BigDecimal("104"));
+        Map<Integer,List<String>> previousActiveDangerAlertMetricKeysByAlertId = new HashMap<>();
+        previousActiveDangerAlertMetricKeysByAlertId.put(5, new ArrayList<>(Arrays.asList("metric.b")));
+        Map<String,BigDecimal> previousActiveDangerAlertMetricValues = new HashMap<>();
+        previousActiveDangerAlertMetricValues.put("metric.b-5", new BigDecimal("205"));
+        
+        AlertEvaluationResult alertEvaluationResult = AlertThread.mergeAlertEvaluationResults(alertEvaluationTasksByMetricGroupId, alertEvaluationPlan, 
+                previousActiveCautionAlertMetricKeysByAlertId, previousActiveCautionAlertMetricValues, previousActiveDangerAlertMetricKeysByAlertId, previousActiveDangerAlertMetricValues);
+        
+        // the alert that was evaluated only uses its new result
+        assertEquals(Arrays.asList("metric.new"), alertEvaluationResult.getActiveCautionAlertMetricKeysByAlertId().get(3));
+        assertEquals(new BigDecimal("101"), alertEvaluationResult.getActiveCautionAlertMetricValues().get("metric.new-3"));
+        assertFalse(alertEvaluationResult.getActiveCautionAlertMetricValues().containsKey("metric.old-3"));
+        
+        // the alert that wasn't evaluated keeps its previous state
+        assertEquals(Arrays.asList("metric.a", "metric.b"), alertEvaluationResult.getActiveCautionAlertMetricKeysByAlertId().get(5));
+        assertEquals(new BigDecimal("103"), alertEvaluationResult.getActiveCautionAlertMetricValues().get("metric.a-5"));
+        assertEquals(new BigDecimal("104"), alertEvaluationResult.getActiveCautionAlertMetricValues().get("metric.b-5"));
+        assertEquals(Arrays.asList("metric.b"), alertEvaluationResult.getActiveDangerAlertMetricKeysByAlertId().get(5));
+        assertEquals(new BigDecimal("205"), alertEvaluationResult.getActiveDangerAlertMetricValues().get("metric.b-5"));
     }
     
     /**
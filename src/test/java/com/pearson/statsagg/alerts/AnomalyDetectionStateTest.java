@@ -0,0 +1,81 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.database_objects.alerts.Alert;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class AnomalyDetectionStateTest {
+
+    public AnomalyDetectionStateTest() {
+    }
+
+    /**
+     * Test of update method, of class AnomalyDetectionState.
+     */
+    @Test
+    public void testUpdate() {
+        AnomalyDetectionState anomalyDetectionState = new AnomalyDetectionState(Arrays.asList(60000L, 600000L));
+        assertNull(anomalyDetectionState.getLastTimestamp());
+        assertNull(anomalyDetectionState.getDeviation(60000L));
+
+        long timestamp = 1000000;
+        for (int i = 0; i < 100; i++) {
+            timestamp += 10000;
+            anomalyDetectionState.update(timestamp, new BigDecimal((i % 2 == 0) ? "99" : "101"));
+        }
+
+        assertEquals(Long.valueOf(timestamp), anomalyDetectionState.getLastTimestamp());
+        assertEquals(99, anomalyDetectionState.getSampleCount(60000L));
+        assertEquals(100, anomalyDetectionState.getMean(60000L), 1);
+        assertTrue(anomalyDetectionState.getStandardDeviation(60000L) > 0.5);
+        assertTrue(Math.abs(anomalyDetectionState.getDeviation(60000L)) < 2);
+        assertNull(anomalyDetectionState.getDeviation(120000L));
+
+        // out-of-order values are ignored
+        anomalyDetectionState.update(timestamp - 5000, new BigDecimal("1000000"));
+        assertEquals(99, anomalyDetectionState.getSampleCount(60000L));
+
+        timestamp += 10000;
+        anomalyDetectionState.update(timestamp, new BigDecimal("150"));
+        assertTrue(anomalyDetectionState.getDeviation(60000L) > 10);
+        assertTrue(anomalyDetectionState.getDeviation(600000L) > 10);
+
+        // a newly added window starts out with no samples, and existing windows are unaffected
+        anomalyDetectionState.addSmoothingWindows(Arrays.asList(120000L, 60000L));
+        assertEquals(0, anomalyDetectionState.getSampleCount(120000L));
+        assertEquals(100, anomalyDetectionState.getSampleCount(60000L));
+    }
+
+    /**
+     * Test of isAlertActive_Anomaly method, of class AlertThread.
+     */
+    @Test
+    public void testIsAlertActive_Anomaly() {
+        AnomalyDetectionState anomalyDetectionState = new AnomalyDetectionState(Arrays.asList(60000L));
+
+        long timestamp = 1000000;
+        for (int i = 0; i < 30; i++) {
+            timestamp += 10000;
+            anomalyDetectionState.update(timestamp, new BigDecimal((i % 2 == 0) ? "99" : "101"));
+        }
+
+        timestamp += 10000;
+        anomalyDetectionState.update(timestamp, new BigDecimal("50"));
+
+        BigDecimal deviation = AlertThread.isAlertActive_Anomaly(timestamp + 1000, anomalyDetectionState, 60000L, Alert.OPERATOR_LESS, new BigDecimal("3"), 10);
+        assertNotNull(deviation);
+        assertTrue(deviation.compareTo(new BigDecimal("-3")) < 0);
+
+        assertNull(AlertThread.isAlertActive_Anomaly(timestamp + 1000, anomalyDetectionState, 60000L, Alert.OPERATOR_GREATER, new BigDecimal("3"), 10));
+        assertNull(AlertThread.isAlertActive_Anomaly(timestamp + 1000, anomalyDetectionState, 60000L, Alert.OPERATOR_LESS, new BigDecimal("3"), 50));
+        assertNull(AlertThread.isAlertActive_Anomaly(timestamp + 1000, anomalyDetectionState, 120000L, Alert.OPERATOR_LESS, new BigDecimal("3"), 10));
+        assertNull(AlertThread.isAlertActive_Anomaly(timestamp + 60001, anomalyDetectionState, 60000L, Alert.OPERATOR_LESS, new BigDecimal("3"), 10));
+        assertNull(AlertThread.isAlertActive_Anomaly(timestamp + 1000, null, 60000L, Alert.OPERATOR_LESS, new BigDecimal("3"), 10));
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.pearson.statsagg.alerts;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class MetricAssociationMatcherTest {
+
+    public MetricAssociationMatcherTest() {
+    }
+
+    /**
+     * Test of getAssociatedIds method, of class MetricAssociationMatcher.
+     */
+    @Test
+    public void testGetAssociatedIds() {
+        List<Integer> ids = Arrays.asList(1, 2, 3, 4);
+        
+        Map<Integer,String> mergedMatchRegexesById = new HashMap<>();
+        mergedMatchRegexesById.put(1, "(prod\\..*)");
+        mergedMatchRegexesById.put(2, "(([a-z]+)\\.\\2\\..*)");
+        mergedMatchRegexesById.put(3, "(.*\\.latency|.*\\.count)");
+        mergedMatchRegexesById.put(4, "((");
+        
+        Map<Integer,String> mergedBlacklistRegexesById = new HashMap<>();
+        mergedBlacklistRegexesById.put(1, "(.*\\.count)");
+        mergedBlacklistRegexesById.put(3, "(prod(?=\\.api).*)");
+        
+        MetricAssociationMatcher metricAssociationMatcher = new MetricAssociationMatcher(ids, mergedMatchRegexesById, mergedBlacklistRegexesById);
+        assertEquals(4, metricAssociationMatcher.getIdCount());
+        assertEquals(1, metricAssociationMatcher.getUnsupportedMatchRegexCount());
+        assertEquals(Arrays.asList(1, 3), metricAssociationMatcher.getAssociatedIds("prod.web.latency"));
+        assertEquals(Arrays.asList(3, 2), metricAssociationMatcher.getAssociatedIds("prod.prod.api.count"));
+        assertEquals(Arrays.asList(1), metricAssociationMatcher.getAssociatedIds("prod.api.latency"));
+        assertEquals(Arrays.asList(3), metricAssociationMatcher.getAssociatedIds("dev.web.latency"));
+        assertTrue(metricAssociationMatcher.getAssociatedIds("dev").isEmpty());
+        assertTrue(metricAssociationMatcher.isCurrent(ids, mergedMatchRegexesById, mergedBlacklistRegexesById));
+        
+        // without the java.util.regex fallback, unsupported regexes never match & unsupported blacklist regexes are ignored
+        metricAssociationMatcher = new MetricAssociationMatcher(ids, mergedMatchRegexesById, mergedBlacklistRegexesById, false);
+        assertEquals(0, metricAssociationMatcher.getUnsupportedMatchRegexCount());
+        assertEquals(Arrays.asList(1, 3), metricAssociationMatcher.getAssociatedIds("prod.web.latency"));
+        assertEquals(Arrays.asList(3), metricAssociationMatcher.getAssociatedIds("prod.prod.api.count"));
+        assertEquals(Arrays.asList(1, 3), metricAssociationMatcher.getAssociatedIds("prod.api.latency"));
+        
+        mergedMatchRegexesById.put(1, "(prod\\.web\\..*)");
+        assertFalse(metricAssociationMatcher.isCurrent(ids, mergedMatchRegexesById, mergedBlacklistRegexesById));
+    }
+    
+    /**
+     * Test of getRegexValidationError method, of class MetricAssociation.
+     */
+    @Test
+    public void testGetRegexValidationError() {
+        assertNull(MetricAssociation.getRegexValidationError("prod\\..*"));
+        assertNotNull(MetricAssociation.getRegexValidationError("(prod"));
+        assertNull(MetricAssociation.getRegexValidationError(Arrays.asList("a.*", "b.*")));
+        assertTrue(MetricAssociation.getRegexValidationError(Arrays.asList("a.*", "b[")).startsWith("Regex=\"b[\""));
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.pearson.statsagg.alerts;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class MetricKeySetTest {
+
+    public MetricKeySetTest() {
+    }
+
+    /**
+     * Test of add, remove, contains, iterator & removeAll methods, of class MetricKeySet.
+     */
+    @Test
+    public void testMetricKeySet() {
+        MetricKeyDictionary metricKeyDictionary = new MetricKeyDictionary();
+        MetricKeySet metricKeySet1 = new MetricKeySet(metricKeyDictionary);
+        MetricKeySet metricKeySet2 = new MetricKeySet(metricKeyDictionary);
+
+        assertTrue(metricKeySet1.add("a.b"));
+        assertTrue(metricKeySet1.add("a.c"));
+        assertTrue(metricKeySet1.add("a.d"));
+        assertFalse(metricKeySet1.add("a.b"));
+        assertTrue(metricKeySet2.add("a.c"));
+        assertTrue(metricKeySet2.add("x.y"));
+
+        assertEquals(3, metricKeySet1.size());
+        assertTrue(metricKeySet1.contains("a.c"));
+        assertFalse(metricKeySet1.contains("x.y"));
+        assertFalse(metricKeySet1.contains("unknown"));
+        assertEquals(new HashSet<>(Arrays.asList("a.b", "a.c", "a.d")), new HashSet<>(metricKeySet1));
+        assertEquals(4, metricKeyDictionary.size());
+
+        // iterators work on a snapshot, so the set can be modified while iterating
+        Iterator<String> iterator = metricKeySet1.iterator();
+        while (iterator.hasNext()) {
+            String metricKey = iterator.next();
+            if (metricKey.equals("a.d")) iterator.remove();
+            metricKeySet1.add("a.e");
+        }
+        assertEquals(new HashSet<>(Arrays.asList("a.b", "a.c", "a.e")), new HashSet<>(metricKeySet1));
+
+        assertTrue(metricKeySet1.removeAll(metricKeySet2));
+        assertEquals(new HashSet<>(Arrays.asList("a.b", "a.e")), new HashSet<>(metricKeySet1));
+        assertTrue(metricKeySet1.removeAll(Arrays.asList("a.e", "unknown")));
+        assertEquals(new HashSet<>(Arrays.asList("a.b")), new HashSet<>(metricKeySet1));
+
+        MetricKeySet existingMetricKeys = MetricKeySet.getExistingMetricKeys(metricKeyDictionary, Arrays.asList("x.y", "unknown"));
+        assertEquals(new HashSet<>(Arrays.asList("x.y")), new HashSet<>(existingMetricKeys));
+        assertEquals(5, metricKeyDictionary.size());
+    }
+
+    /**
+     * Test of remove & recycleReleasedIds methods, of class MetricKeyDictionary.
+     */
+    @Test
+    public void testMetricKeyDictionary() {
+        MetricKeyDictionary metricKeyDictionary = new MetricKeyDictionary();
+
+        int id1 = metricKeyDictionary.getOrCreateId("a");
+        int id2 = metricKeyDictionary.getOrCreateId("b");
+        assertEquals(id1, metricKeyDictionary.getOrCreateId("a"));
+        assertEquals("b", metricKeyDictionary.getMetricKey(id2));
+        assertNull(metricKeyDictionary.getMetricKey(12345));
+
+        assertEquals(Integer.valueOf(id1), metricKeyDictionary.remove("a"));
+        assertNull(metricKeyDictionary.getId("a"));
+        assertNull(metricKeyDictionary.getMetricKey(id1));
+        assertNull(metricKeyDictionary.remove("a"));
+
+        // released ids aren't reused until they are recycled
+        int id3 = metricKeyDictionary.getOrCreateId("c");
+        assertNotEquals(id1, id3);
+        metricKeyDictionary.recycleReleasedIds();
+        assertEquals(id1, metricKeyDictionary.getOrCreateId("d"));
+
+        // ids that are dropped from the dictionary are skipped when converting a bitmap back to metric-keys
+        MetricKeySet metricKeySet = new MetricKeySet(metricKeyDictionary);
+        metricKeySet.add("b");
+        metricKeySet.add("c");
+        metricKeyDictionary.remove("c");
+        List<String> metricKeys = MetricKeySet.getMetricKeys(metricKeyDictionary, metricKeySet.getMetricKeyIds());
+        assertEquals(Arrays.asList("b"), metricKeys);
+    }
+
+    /**
+     * Test of get, put & remove methods, of class MetricKeyFlags.
+     */
+    @Test
+    public void testMetricKeyFlags() {
+        MetricKeyDictionary metricKeyDictionary = new MetricKeyDictionary();
+        MetricKeyFlags metricKeyFlags = new MetricKeyFlags(metricKeyDictionary);
+
+        assertNull(metricKeyFlags.get("a"));
+        metricKeyFlags.put("a", true);
+        metricKeyFlags.put("b", false);
+        assertEquals(Boolean.TRUE, metricKeyFlags.get("a"));
+        assertEquals(Boolean.FALSE, metricKeyFlags.get("b"));
+        assertTrue(metricKeyFlags.containsKey("b"));
+        assertEquals(2, metricKeyFlags.size());
+
+        metricKeyFlags.put("a", false);
+        assertEquals(Boolean.FALSE, metricKeyFlags.get("a"));
+        metricKeyFlags.remove("b");
+        assertNull(metricKeyFlags.get("b"));
+        assertEquals(Arrays.asList("a"), metricKeyFlags.getMetricKeys());
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.globals.GlobalVariables;
+import com.pearson.statsagg.metric_aggregation.MetricKeyLastSeen;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class MetricReassociationThreadTest {
+    
+    private final List<String> metricKeys_ = new ArrayList<>();
+    
+    public MetricReassociationThreadTest() {
+    }
+    
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 25000; i++) {
+            String metricKey = "reassociation_test.host" + (i % 10) + ".metric" + i + ((i % 2 == 0) ? ".count" : ".rate");
+            metricKeys_.add(metricKey);
+            GlobalVariables.metricKeysLastSeenTimestamp.put(metricKey, new MetricKeyLastSeen(1L, 1L));
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        for (String metricKey : metricKeys_) GlobalVariables.metricKeysLastSeenTimestamp.remove(metricKey);
+    }
+
+    /**
+     * Test of run method, of class MetricReassociationThread. Only the associations that changed are touched.
+     */
+    @Test
+    public void testRun() {
+        ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId = new ConcurrentHashMap<>();
+        MetricKeyFlags metricKeysAssociatedWithAnyId = new MetricKeyFlags(GlobalVariables.metricKeyDictionary);
+        ConcurrentHashMap<Integer,String> mergedMatchRegexesById = new ConcurrentHashMap<>();
+        ConcurrentHashMap<Integer,String> mergedBlacklistRegexesById = new ConcurrentHashMap<>();
+        
+        // id 1 used to match '.count' metrics, id 2 matches 'host0' metrics
+        MetricKeySet metricGroup1 = new MetricKeySet(GlobalVariables.metricKeyDictionary);
+        MetricKeySet metricGroup2 = new MetricKeySet(GlobalVariables.metricKeyDictionary);
+        for (String metricKey : metricKeys_) {
+            if (metricKey.endsWith(".count")) metricGroup1.add(metricKey);
+            if (metricKey.contains(".host0.")) metricGroup2.add(metricKey);
+            metricKeysAssociatedWithAnyId.put(metricKey, metricKey.endsWith(".count") || metricKey.contains(".host0."));
+        }
+        matchingMetricKeysAssociatedWithId.put(1, metricGroup1);
+        matchingMetricKeysAssociatedWithId.put(2, metricGroup2);
+        
+        // id 1 is altered to match '.rate' metrics, except for 'host1' metrics
+        mergedMatchRegexesById.put(1, ".*\\.rate");
+        mergedBlacklistRegexesById.put(1, ".*\\.host1\\..*");
+        mergedMatchRegexesById.put(2, ".*\\.host0\\..*");
+        
+        MetricReassociationThread metricReassociationThread = new MetricReassociationThread("test", 1, ".*\\.rate", ".*\\.host1\\..*", 4, 
+                matchingMetricKeysAssociatedWithId, metricKeysAssociatedWithAnyId, mergedMatchRegexesById, mergedBlacklistRegexesById);
+        metricReassociationThread.run();
+        
+        assertFalse(metricReassociationThread.isStale());
+        assertEquals(10000, metricReassociationThread.getNumAssociationsAdded());
+        assertEquals(12500, metricReassociationThread.getNumAssociationsRemoved());
+        assertSame(metricGroup1, matchingMetricKeysAssociatedWithId.get(1));
+        
+        Set<String> expectedMetricGroup1 = new HashSet<>();
+        for (String metricKey : metricKeys_) {
+            if (metricKey.endsWith(".rate") && !metricKey.contains(".host1.")) expectedMetricGroup1.add(metricKey);
+        }
+        assertEquals(expectedMetricGroup1, new HashSet<>(metricGroup1));
+        
+        for (String metricKey : metricKeys_) {
+            boolean expectedIsAssociatedWithAnyId = expectedMetricGroup1.contains(metricKey) || metricKey.contains(".host0.");
+            assertEquals(metricKey, expectedIsAssociatedWithAnyId, metricKeysAssociatedWithAnyId.get(metricKey));
+        }
+    }
+    
+    /**
+     * A reassociation thread doesn't change anything if its id's regexes were altered again after the thread was created.
+     */
+    @Test
+    public void testRun_Stale() {
+        ConcurrentHashMap<Integer,Set<String>> matchingMetricKeysAssociatedWithId = new ConcurrentHashMap<>();
+        MetricKeyFlags metricKeysAssociatedWithAnyId = new MetricKeyFlags(GlobalVariables.metricKeyDictionary);
+        ConcurrentHashMap<Integer,String> mergedMatchRegexesById = new ConcurrentHashMap<>();
+        ConcurrentHashMap<Integer,String> mergedBlacklistRegexesById = new ConcurrentHashMap<>();
+        
+        MetricKeySet metricGroup1 = new MetricKeySet(GlobalVariables.metricKeyDictionary);
+        for (String metricKey : metricKeys_) metricKeysAssociatedWithAnyId.put(metricKey, false);
+        matchingMetricKeysAssociatedWithId.put(1, metricGroup1);
+        mergedMatchRegexesById.put(1, ".*\\.count");
+        
+        MetricReassociationThread metricReassociationThread = new MetricReassociationThread("test", 1, ".*\\.rate", null, 4, 
+                matchingMetricKeysAssociatedWithId, metricKeysAssociatedWithAnyId, mergedMatchRegexesById, mergedBlacklistRegexesById);
+        metricReassociationThread.run();
+        
+        assertEquals(0, metricReassociationThread.getNumAssociationsAdded());
+        assertTrue(metricGroup1.isEmpty());
+        assertEquals(Boolean.FALSE, metricKeysAssociatedWithAnyId.get(metricKeys_.get(0)));
+    }
+    
+}
@@ -0,0 +1,150 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.database_objects.suspensions.Suspension;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class SuspensionTimelineTest {
+    
+    private static final long ONE_HOUR = 3600000L;
+    
+    public SuspensionTimelineTest() {
+    }
+
+    /**
+     * Test of getActiveSuspensionIds method, of class SuspensionTimeline. Results must agree with Suspension.isDateAndTimeInSuspensionWindow.
+     */
+    @Test
+    public void testGetActiveSuspensionIds() {
+        Random random = new Random(1234);
+        
+        long horizonStart = 1500000000000L;
+        long horizonEnd = horizonStart + SuspensionTimeline.DEFAULT_HORIZON_IN_MILLISECONDS;
+        List<Suspension> suspensions = getRandomSuspensions(random, 60, horizonStart);
+        
+        SuspensionTimeline suspensionTimeline = new SuspensionTimeline(suspensions, horizonStart, horizonEnd);
+        
+        for (int i = 0; i < 20000; i++) {
+            long timestamp = horizonStart + (long) (random.nextDouble() * (horizonEnd - horizonStart));
+            assertEquals(getActiveSuspensionIds_Slow(suspensions, timestamp), suspensionTimeline.getActiveSuspensionIds(timestamp));
+        }
+        
+        assertNull(suspensionTimeline.getActiveSuspensionIds(horizonStart - 1));
+        assertNull(suspensionTimeline.getActiveSuspensionIds(horizonEnd));
+    }
+    
+    /**
+     * Test of getNextTransitionTimestamp & getTransitions methods, of class SuspensionTimeline.
+     */
+    @Test
+    public void testGetTransitions() {
+        Random random = new Random(5678);
+        
+        long horizonStart = 1500000000000L;
+        long horizonEnd = horizonStart + (2 * 24 * ONE_HOUR);
+        List<Suspension> suspensions = getRandomSuspensions(random, 20, horizonStart);
+        
+        SuspensionTimeline suspensionTimeline = new SuspensionTimeline(suspensions, horizonStart, horizonEnd);
+        List<SuspensionTimeline.Transition> transitions = suspensionTimeline.getTransitions(horizonStart, horizonEnd, 0);
+        assertFalse(transitions.isEmpty());
+        
+        // replaying the transitions must give the same active set as the timeline, just after every transition
+        Set<Integer> activeSuspensionIds = new HashSet<>(suspensionTimeline.getActiveSuspensionIds(horizonStart));
+        long previousTimestamp = horizonStart;
+        
+        for (int i = 0; i < transitions.size(); i++) {
+            SuspensionTimeline.Transition transition = transitions.get(i);
+            assertTrue(transition.getTimestamp() >= previousTimestamp);
+            
+            if (transition.getTimestamp() > horizonStart) {
+                assertEquals(activeSuspensionIds, suspensionTimeline.getActiveSuspensionIds(transition.getTimestamp() - 1));
+                assertEquals(Long.valueOf(transition.getTimestamp()), suspensionTimeline.getNextTransitionTimestamp(previousTimestamp));
+            }
+            
+            if (transition.isActivation()) activeSuspensionIds.add(transition.getSuspensionId());
+            else activeSuspensionIds.remove(transition.getSuspensionId());
+            
+            if (((i + 1) == transitions.size()) || (transitions.get(i + 1).getTimestamp() != transition.getTimestamp())) {
+                assertEquals(activeSuspensionIds, suspensionTimeline.getActiveSuspensionIds(transition.getTimestamp()));
+            }
+            
+            previousTimestamp = transition.getTimestamp();
+        }
+        
+        assertNull(suspensionTimeline.getNextTransitionTimestamp(transitions.get(transitions.size() - 1).getTimestamp()));
+        assertEquals(5, suspensionTimeline.getTransitions(horizonStart, horizonEnd, 5).size());
+    }
+    
+    /**
+     * Test of isCurrent method, of class SuspensionTimeline.
+     */
+    @Test
+    public void testIsCurrent() {
+        List<Suspension> suspensions = getRandomSuspensions(new Random(91011), 5, 1500000000000L);
+        SuspensionTimeline suspensionTimeline = new SuspensionTimeline(suspensions, 1500000000000L, 1500000000000L + ONE_HOUR);
+        
+        List<Suspension> suspensionsCopy = new ArrayList<>();
+        for (Suspension suspension : suspensions) suspensionsCopy.add(Suspension.copy(suspension));
+        assertTrue(suspensionTimeline.isCurrent(suspensionsCopy));
+        
+        suspensionsCopy.get(2).setDuration(suspensionsCopy.get(2).getDuration() + 1);
+        assertFalse(suspensionTimeline.isCurrent(suspensionsCopy));
+        
+        assertFalse(suspensionTimeline.isCurrent(suspensions.subList(0, 4)));
+    }
+    
+    private static List<Suspension> getRandomSuspensions(Random random, int numSuspensions, long aroundTimestamp) {
+        
+        List<Suspension> suspensions = new ArrayList<>();
+        
+        for (int i = 1; i <= numSuspensions; i++) {
+            long start = aroundTimestamp + (long) ((random.nextDouble() - 0.5) * 4 * 24 * ONE_HOUR);
+            start = start - (start % 60000);
+            
+            Suspension suspension = new Suspension();
+            suspension.setId(i);
+            suspension.setName("suspension" + i);
+            suspension.setIsEnabled(random.nextInt(10) != 0);
+            suspension.setSuspendBy(Suspension.SUSPEND_BY_EVERYTHING);
+            suspension.setIsOneTime(random.nextInt(3) == 0);
+            suspension.setStartDate(new Timestamp(start));
+            suspension.setStartTime(new Timestamp(start));
+            suspension.setDuration(60000L + (long) (random.nextDouble() * (23 * ONE_HOUR)));
+            suspension.setIsRecurSunday(random.nextBoolean());
+            suspension.setIsRecurMonday(random.nextBoolean());
+            suspension.setIsRecurTuesday(random.nextBoolean());
+            suspension.setIsRecurWednesday(random.nextBoolean());
+            suspension.setIsRecurThursday(random.nextBoolean());
+            suspension.setIsRecurFriday(random.nextBoolean());
+            suspension.setIsRecurSaturday(random.nextBoolean());
+            suspensions.add(suspension);
+        }
+        
+        return suspensions;
+    }
+    
+    private static Set<Integer> getActiveSuspensionIds_Slow(List<Suspension> suspensions, long timestamp) {
+        
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timestamp);
+        
+        Set<Integer> activeSuspensionIds = new HashSet<>();
+        
+        for (Suspension suspension : suspensions) {
+            if (suspension.isEnabled() && Suspension.isDateAndTimeInSuspensionWindow(suspension, calendar)) activeSuspensionIds.add(suspension.getId());
+        }
+        
+        return activeSuspensionIds;
+    }
+    
+}
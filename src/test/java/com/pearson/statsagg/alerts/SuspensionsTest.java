@@ -0,0 +1,110 @@
+package com.pearson.statsagg.alerts;
+
+import com.pearson.statsagg.database_objects.alerts.Alert;
+import com.pearson.statsagg.database_objects.metric_group_tags.MetricGroupTagsIndex;
+import com.pearson.statsagg.database_objects.suspensions.Suspension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class SuspensionsTest {
+    
+    private static final List<String> TAGS = Arrays.asList("prod", "dev", "web", "db", "east", "west", "critical");
+    
+    public SuspensionsTest() {
+    }
+
+    /**
+     * Test of getSuspensionIdsAssociatedWithAlerts method, of class Suspensions. Results must agree with getSuspensionIdsAssociatedWithAnAlert.
+     */
+    @Test
+    public void testGetSuspensionIdsAssociatedWithAlerts() {
+        Random random = new Random(777);
+        
+        Map<Integer,Set<String>> tagsByMetricGroupId = new HashMap<>();
+        for (int metricGroupId = 1; metricGroupId <= 40; metricGroupId++) {
+            Set<String> tags = new HashSet<>();
+            for (String tag : TAGS) if (random.nextInt(3) == 0) tags.add(tag);
+            tagsByMetricGroupId.put(metricGroupId, tags);
+        }
+        
+        MetricGroupTagsIndex metricGroupTagsIndex = new MetricGroupTagsIndex();
+        metricGroupTagsIndex.setAllMetricGroupTags(tagsByMetricGroupId);
+        
+        Map<Integer,Alert> alertsByAlertId = new HashMap<>();
+        Map<Integer,Set<String>> metricGroupTagsAssociatedWithAlert = new HashMap<>();
+        for (int alertId = 1; alertId <= 200; alertId++) {
+            Alert alert = new Alert();
+            alert.setId(alertId);
+            if (alertId % 25 != 0) alert.setMetricGroupId(1 + random.nextInt(45));
+            alertsByAlertId.put(alertId, alert);
+            
+            Set<String> tags = (alert.getMetricGroupId() == null) ? null : tagsByMetricGroupId.get(alert.getMetricGroupId());
+            metricGroupTagsAssociatedWithAlert.put(alertId, (tags == null) ? new HashSet<>() : tags);
+        }
+        
+        List<Suspension> suspensions = new ArrayList<>();
+        for (int suspensionId = 1; suspensionId <= 60; suspensionId++) {
+            Suspension suspension = new Suspension();
+            suspension.setId(suspensionId);
+            suspension.setSuspendBy(1 + (suspensionId % 3));
+            suspension.setAlertId(1 + random.nextInt(210));
+            suspension.setMetricGroupTagsInclusive(getRandomTags(random));
+            suspension.setMetricGroupTagsExclusive(getRandomTags(random));
+            suspensions.add(suspension);
+        }
+        
+        Map<Integer,Set<Integer>> suspensionIdsAssociatedWithAlerts = Suspensions.getSuspensionIdsAssociatedWithAlerts(alertsByAlertId, suspensions, metricGroupTagsIndex);
+        
+        assertEquals(alertsByAlertId.size(), suspensionIdsAssociatedWithAlerts.size());
+        for (Alert alert : alertsByAlertId.values()) {
+            Set<Integer> expected = Suspensions.getSuspensionIdsAssociatedWithAnAlert(alert, suspensions, metricGroupTagsAssociatedWithAlert);
+            assertEquals("AlertId=" + alert.getId(), expected, suspensionIdsAssociatedWithAlerts.get(alert.getId()));
+        }
+    }
+    
+    /**
+     * Test of setMetricGroupTags & getMetricGroupIdsWithAllTags methods, of class MetricGroupTagsIndex.
+     */
+    @Test
+    public void testMetricGroupTagsIndex() {
+        MetricGroupTagsIndex metricGroupTagsIndex = new MetricGroupTagsIndex();
+        metricGroupTagsIndex.setMetricGroupTags(1, Arrays.asList("a", "b"));
+        metricGroupTagsIndex.setMetricGroupTags(2, Arrays.asList("b", "", null));
+        
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), metricGroupTagsIndex.getMetricGroupIdsWithAllTags(Arrays.asList("b")));
+        assertEquals(new HashSet<>(Arrays.asList(1)), metricGroupTagsIndex.getMetricGroupIdsWithAllTags(Arrays.asList("a", "b")));
+        assertEquals(new HashSet<>(Arrays.asList("b")), metricGroupTagsIndex.getTags(2));
+        
+        metricGroupTagsIndex.setMetricGroupTags(1, Arrays.asList("c"));
+        assertEquals(new HashSet<>(Arrays.asList(2)), metricGroupTagsIndex.getMetricGroupIdsWithAllTags(Arrays.asList("b")));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), metricGroupTagsIndex.getMetricGroupIdsWithAnyTag(Arrays.asList("b", "c")));
+        
+        metricGroupTagsIndex.setMetricGroupTags(2, null);
+        assertTrue(metricGroupTagsIndex.getMetricGroupIdsWithAllTags(Arrays.asList("b")).isEmpty());
+        assertTrue(metricGroupTagsIndex.getTags(2).isEmpty());
+    }
+    
+    private static String getRandomTags(Random random) {
+        StringBuilder tags = new StringBuilder();
+        
+        int numTags = random.nextInt(3);
+        for (int i = 0; i < numTags; i++) {
+            if (i > 0) tags.append('\n');
+            tags.append(TAGS.get(random.nextInt(TAGS.size())));
+        }
+        
+        return tags.toString();
+    }
+    
+}
@@ -0,0 +1,203 @@
+package com.pearson.statsagg.controller.thread_managers;
+
+import com.pearson.statsagg.metric_formats.SendMetricsToOutputModuleThread;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class OutputModuleQueueTest {
+
+    public OutputModuleQueueTest() {
+    }
+
+    /**
+     * Test of take method, of class OutputModuleQueue. A worker must get the oldest batch merged with every batch that queued up behind it.
+     */
+    @Test
+    public void testTake() {
+        OutputModuleQueue outputModuleQueue = new OutputModuleQueue("Test");
+
+        assertEquals(OutputModuleQueue.OfferResult.QUEUED, outputModuleQueue.offer(new TestThread("a", "1"), 10, OutputModuleQueue.QueueFullPolicy.MERGE, 0));
+        assertEquals(OutputModuleQueue.OfferResult.QUEUED, outputModuleQueue.offer(new TestThread("a", "2"), 10, OutputModuleQueue.QueueFullPolicy.MERGE, 0));
+        assertEquals(OutputModuleQueue.OfferResult.QUEUED, outputModuleQueue.offer(new TestThread("b", "3"), 10, OutputModuleQueue.QueueFullPolicy.MERGE, 0));
+        assertEquals(3, outputModuleQueue.getQueueDepth());
+
+        assertTrue(outputModuleQueue.reserveWorker(1));
+        assertFalse(outputModuleQueue.reserveWorker(1));
+
+        TestThread testThread = (TestThread) outputModuleQueue.take();
+        assertEquals(Arrays.asList("1", "2"), testThread.metrics_);
+        assertEquals(1, outputModuleQueue.getQueueDepth());
+        assertEquals(1, outputModuleQueue.getNumMergedBatches());
+        assertTrue(outputModuleQueue.getRunningThreads().contains(testThread));
+
+        outputModuleQueue.finished(testThread, 5);
+        assertFalse(outputModuleQueue.getRunningThreads().contains(testThread));
+
+        testThread = (TestThread) outputModuleQueue.take();
+        assertEquals(Arrays.asList("3"), testThread.metrics_);
+        outputModuleQueue.finished(testThread, 15);
+
+        assertNull(outputModuleQueue.take());
+        assertEquals(0, outputModuleQueue.getActiveWorkers());
+        assertEquals(2, outputModuleQueue.getNumCompletedSends());
+        assertEquals(15, outputModuleQueue.getLastSendTimeInMs());
+        assertEquals(15, outputModuleQueue.getMaxSendTimeInMs());
+        assertEquals(10, outputModuleQueue.getAverageSendTimeInMs(), 0.001);
+    }
+
+    /**
+     * Test of offer method, of class OutputModuleQueue. With the 'merge' policy, a batch that arrives at a full queue must be merged into the newest queued batch.
+     */
+    @Test
+    public void testOfferMerge() {
+        OutputModuleQueue outputModuleQueue = new OutputModuleQueue("Test");
+
+        assertEquals(OutputModuleQueue.OfferResult.QUEUED, outputModuleQueue.offer(new TestThread("a", "1"), 1, OutputModuleQueue.QueueFullPolicy.MERGE, 0));
+        assertEquals(OutputModuleQueue.OfferResult.MERGED, outputModuleQueue.offer(new TestThread("a", "2"), 1, OutputModuleQueue.QueueFullPolicy.MERGE, 0));
+        assertEquals(1, outputModuleQueue.getQueueDepth());
+
+        // can't be merged & can't be spooled
+        assertEquals(OutputModuleQueue.OfferResult.DROPPED, outputModuleQueue.offer(new TestThread("b", "3"), 1, OutputModuleQueue.QueueFullPolicy.MERGE, 0));
+        assertEquals(1, outputModuleQueue.getNumDroppedBatches());
+
+        // can't be merged, but can be spooled
+        TestThread spoolableThread = new TestThread("b", "4");
+        spoolableThread.isSpoolable_ = true;
+        assertEquals(OutputModuleQueue.OfferResult.SPILLED, outputModuleQueue.offer(spoolableThread, 1, OutputModuleQueue.QueueFullPolicy.MERGE, 0));
+        assertTrue(spoolableThread.isSpooled_);
+
+        assertTrue(outputModuleQueue.reserveWorker(1));
+        assertEquals(Arrays.asList("1", "2"), ((TestThread) outputModuleQueue.take()).metrics_);
+    }
+
+    /**
+     * Test of offer method, of class OutputModuleQueue. With the 'spill' policy, a batch that arrives at a full queue must be spooled (or merged, if it can't be spooled).
+     */
+    @Test
+    public void testOfferSpill() {
+        OutputModuleQueue outputModuleQueue = new OutputModuleQueue("Test");
+        assertEquals(OutputModuleQueue.OfferResult.QUEUED, outputModuleQueue.offer(new TestThread("a", "1"), 1, OutputModuleQueue.QueueFullPolicy.SPILL, 0));
+
+        TestThread spoolableThread = new TestThread("a", "2");
+        spoolableThread.isSpoolable_ = true;
+        assertEquals(OutputModuleQueue.OfferResult.SPILLED, outputModuleQueue.offer(spoolableThread, 1, OutputModuleQueue.QueueFullPolicy.SPILL, 0));
+        assertTrue(spoolableThread.isSpooled_);
+        assertEquals(1, outputModuleQueue.getNumSpilledBatches());
+
+        assertEquals(OutputModuleQueue.OfferResult.MERGED, outputModuleQueue.offer(new TestThread("a", "3"), 1, OutputModuleQueue.QueueFullPolicy.SPILL, 0));
+
+        assertTrue(outputModuleQueue.reserveWorker(1));
+        assertEquals(Arrays.asList("1", "3"), ((TestThread) outputModuleQueue.take()).metrics_);
+    }
+
+    /**
+     * Test of offer method, of class OutputModuleQueue. With the 'block' policy, a batch that arrives at a full queue must wait for room in the queue (up to the max block time).
+     */
+    @Test
+    public void testOfferBlock() throws Exception {
+        OutputModuleQueue outputModuleQueue = new OutputModuleQueue("Test");
+        assertEquals(OutputModuleQueue.OfferResult.QUEUED, outputModuleQueue.offer(new TestThread("a", "1"), 1, OutputModuleQueue.QueueFullPolicy.BLOCK, 0));
+
+        // times out, & the batch can't be merged or spooled
+        long startTime = System.currentTimeMillis();
+        assertEquals(OutputModuleQueue.OfferResult.DROPPED, outputModuleQueue.offer(new TestThread("b", "2"), 1, OutputModuleQueue.QueueFullPolicy.BLOCK, 100));
+        assertTrue((System.currentTimeMillis() - startTime) >= 100);
+
+        Thread workerThread = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                outputModuleQueue.reserveWorker(1);
+                outputModuleQueue.take();
+            }
+            catch (Exception e) {}
+        });
+        workerThread.start();
+
+        assertEquals(OutputModuleQueue.OfferResult.QUEUED, outputModuleQueue.offer(new TestThread("b", "3"), 1, OutputModuleQueue.QueueFullPolicy.BLOCK, 5000));
+        workerThread.join();
+        assertEquals(1, outputModuleQueue.getQueueDepth());
+        assertTrue(outputModuleQueue.getMaxQueueWaitTimeInMs() >= 100);
+    }
+
+    /**
+     * Test of reserveWorker method, of class OutputModuleQueue.
+     */
+    @Test
+    public void testReserveWorker() {
+        OutputModuleQueue outputModuleQueue = new OutputModuleQueue("Test");
+        assertFalse(outputModuleQueue.reserveWorker(2));
+
+        for (int i = 0; i < 3; i++) outputModuleQueue.offer(new TestThread("endpoint" + i, "" + i), 10, OutputModuleQueue.QueueFullPolicy.MERGE, 0);
+
+        assertTrue(outputModuleQueue.reserveWorker(2));
+        assertTrue(outputModuleQueue.reserveWorker(2));
+        assertFalse(outputModuleQueue.reserveWorker(2));
+        assertEquals(2, outputModuleQueue.getActiveWorkers());
+
+        outputModuleQueue.releaseWorker();
+        assertEquals(1, outputModuleQueue.getActiveWorkers());
+
+        assertEquals(3, outputModuleQueue.drain().size());
+        assertEquals(0, outputModuleQueue.getQueueDepth());
+        assertNull(outputModuleQueue.take());
+        assertEquals(0, outputModuleQueue.getActiveWorkers());
+    }
+
+    private static class TestThread extends SendMetricsToOutputModuleThread {
+
+        private static final AtomicInteger threadIdGenerator_ = new AtomicInteger(0);
+
+        private final List<String> metrics_;
+        private boolean isSpoolable_ = false;
+        private boolean isSpooled_ = false;
+
+        public TestThread(String outputEndpoint, String... metrics) {
+            this(outputEndpoint, new ArrayList<>(Arrays.asList(metrics)));
+        }
+
+        private TestThread(String outputEndpoint, List<String> metrics) {
+            this.outputEndpoint_ = outputEndpoint;
+            this.metrics_ = metrics;
+            this.threadId_ = "" + threadIdGenerator_.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            isFinished_ = true;
+        }
+
+        @Override
+        public void shutdown() {
+            isShuttingDown_ = true;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return isFinished_;
+        }
+
+        @Override
+        public SendMetricsToOutputModuleThread merge(SendMetricsToOutputModuleThread other) {
+            if (!(other instanceof TestThread) || !outputEndpoint_.equals(other.getOutputEndpoint())) return null;
+
+            List<String> metrics = new ArrayList<>(metrics_);
+            metrics.addAll(((TestThread) other).metrics_);
+            return new TestThread(outputEndpoint_, metrics);
+        }
+
+        @Override
+        public boolean spool() {
+            isSpooled_ = isSpoolable_;
+            return isSpoolable_;
+        }
+
+    }
+
+}
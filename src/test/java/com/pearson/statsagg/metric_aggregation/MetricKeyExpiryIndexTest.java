@@ -0,0 +1,89 @@
+package com.pearson.statsagg.metric_aggregation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class MetricKeyExpiryIndexTest {
+    
+    public MetricKeyExpiryIndexTest() {
+    }
+
+    /**
+     * Test of getExpiredMetricKeys method, of class MetricKeyExpiryIndex. Results must agree with a full scan of the 'last seen' map.
+     */
+    @Test
+    public void testGetExpiredMetricKeys() {
+        Random random = new Random(2468);
+        MetricKeyExpiryIndex metricKeyExpiryIndex = new MetricKeyExpiryIndex(1000);
+        Map<String,MetricKeyLastSeen> metricKeysLastSeen = new HashMap<>();
+        
+        long currentTimestamp = 1000000;
+        
+        for (int round = 0; round < 50; round++) {
+            currentTimestamp += 100 + random.nextInt(3000);
+            
+            // new metric-keys, metric-keys that are seen again, & metric-keys without a timestamp
+            for (int i = 0; i < 200; i++) {
+                String metricKey = "metric" + random.nextInt(2000);
+                Long timestamp = (random.nextInt(100) == 0) ? null : (currentTimestamp - random.nextInt(500));
+                MetricKeyLastSeen metricKeyLastSeen = new MetricKeyLastSeen(timestamp, timestamp);
+                MetricKeyLastSeen previousMetricKeyLastSeen = metricKeysLastSeen.put(metricKey, metricKeyLastSeen);
+                metricKeyExpiryIndex.update(metricKey, previousMetricKeyLastSeen, metricKeyLastSeen);
+            }
+            
+            long expiryTimestamp = currentTimestamp - 20000;
+            
+            Set<String> expectedExpiredMetricKeys = new HashSet<>();
+            for (Map.Entry<String,MetricKeyLastSeen> entry : metricKeysLastSeen.entrySet()) {
+                Long timestamp = entry.getValue().getMetricKeyLastSeenTimestamp_UpdateOnResend();
+                if ((timestamp == null) || (timestamp < expiryTimestamp)) expectedExpiredMetricKeys.add(entry.getKey());
+            }
+            
+            Set<String> expiredMetricKeys = new HashSet<>(metricKeyExpiryIndex.getExpiredMetricKeys(expiryTimestamp, metricKeysLastSeen));
+            assertEquals(expectedExpiredMetricKeys, expiredMetricKeys);
+            
+            // cleanup removes some of the expired metric-keys
+            for (String metricKey : expiredMetricKeys) {
+                if (random.nextBoolean()) metricKeyExpiryIndex.remove(metricKey, metricKeysLastSeen.remove(metricKey));
+            }
+        }
+    }
+    
+    /**
+     * Test of getExpiredMetricKeys method, of class MetricKeyExpiryIndex. Metric-keys that are in the wrong bucket must be refiled, & empty buckets must be dropped.
+     */
+    @Test
+    public void testGetExpiredMetricKeys_Refile() {
+        MetricKeyExpiryIndex metricKeyExpiryIndex = new MetricKeyExpiryIndex(1000);
+        Map<String,MetricKeyLastSeen> metricKeysLastSeen = new HashMap<>();
+        
+        MetricKeyLastSeen oldMetricKeyLastSeen = new MetricKeyLastSeen(1500L, 1500L);
+        metricKeysLastSeen.put("metric1", oldMetricKeyLastSeen);
+        metricKeyExpiryIndex.update("metric1", null, oldMetricKeyLastSeen);
+        
+        // the map is updated without updating the index (ex -- a racing update)
+        metricKeysLastSeen.put("metric1", new MetricKeyLastSeen(9500L, 9500L));
+        metricKeysLastSeen.put("metric2", new MetricKeyLastSeen(1200L, 1200L));
+        metricKeyExpiryIndex.update("metric2", null, metricKeysLastSeen.get("metric2"));
+        metricKeyExpiryIndex.update("metric3", null, new MetricKeyLastSeen(1100L, 1100L));
+        
+        assertEquals(1, metricKeyExpiryIndex.getBucketCount());
+        assertEquals(1, metricKeyExpiryIndex.getExpiredMetricKeys(5000, metricKeysLastSeen).size());
+        assertEquals(2, metricKeyExpiryIndex.getBucketCount());
+        
+        metricKeyExpiryIndex.remove("metric2", metricKeysLastSeen.remove("metric2"));
+        assertEquals(0, metricKeyExpiryIndex.getExpiredMetricKeys(5000, metricKeysLastSeen).size());
+        assertEquals(1, metricKeyExpiryIndex.getBucketCount());
+        
+        assertEquals("metric1", metricKeyExpiryIndex.getExpiredMetricKeys(10000, metricKeysLastSeen).get(0));
+    }
+    
+}
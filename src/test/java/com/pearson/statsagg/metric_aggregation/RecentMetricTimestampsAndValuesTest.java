@@ -0,0 +1,94 @@
+package com.pearson.statsagg.metric_aggregation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class RecentMetricTimestampsAndValuesTest {
+    
+    public RecentMetricTimestampsAndValuesTest() {
+    }
+
+    /**
+     * Test of add & removeValuesOlderThan methods, of class RecentMetricTimestampsAndValues. Results must agree with a sorted ArrayList.
+     */
+    @Test
+    public void testAddAndRemoveValuesOlderThan() {
+        Random random = new Random(13579);
+        RecentMetricTimestampsAndValues recentMetricTimestampsAndValues = new RecentMetricTimestampsAndValues();
+        List<MetricTimestampAndValue> expectedMetricTimestampsAndValues = new ArrayList<>();
+        
+        long currentTimestamp = 100000;
+        long hashKey = 0;
+        
+        for (int round = 0; round < 300; round++) {
+            int numValuesToAdd = random.nextInt(40);
+            
+            for (int i = 0; i < numValuesToAdd; i++) {
+                currentTimestamp += random.nextInt(1000);
+                
+                // mostly in-order values, with the occasional late value
+                long timestamp = (random.nextInt(10) == 0) ? (currentTimestamp - random.nextInt(20000)) : currentTimestamp;
+                MetricTimestampAndValue metricTimestampAndValue = new MetricTimestampAndValue(timestamp, new BigDecimal(i), ++hashKey);
+                
+                recentMetricTimestampsAndValues.add(metricTimestampAndValue);
+                expectedMetricTimestampsAndValues.add(metricTimestampAndValue);
+            }
+            
+            // a stable sort keeps values with the same timestamp in arrival order
+            Collections.sort(expectedMetricTimestampsAndValues, MetricTimestampAndValue.COMPARE_BY_TIMESTAMP);
+            
+            long cutoffTimestamp = currentTimestamp - random.nextInt(30000);
+            int numExpectedValuesRemoved = 0;
+            Iterator<MetricTimestampAndValue> iterator = expectedMetricTimestampsAndValues.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getTimestamp() < cutoffTimestamp) {
+                    iterator.remove();
+                    numExpectedValuesRemoved++;
+                }
+            }
+            
+            assertEquals(numExpectedValuesRemoved, recentMetricTimestampsAndValues.removeValuesOlderThan(cutoffTimestamp));
+            if (random.nextInt(4) == 0) recentMetricTimestampsAndValues.trim();
+            
+            assertEquals(expectedMetricTimestampsAndValues, new ArrayList<>(recentMetricTimestampsAndValues));
+            assertEquals(expectedMetricTimestampsAndValues.size(), recentMetricTimestampsAndValues.size());
+        }
+    }
+    
+    /**
+     * Test of trim & clear methods, of class RecentMetricTimestampsAndValues.
+     */
+    @Test
+    public void testTrimAndClear() {
+        RecentMetricTimestampsAndValues recentMetricTimestampsAndValues = new RecentMetricTimestampsAndValues();
+        for (int i = 0; i < 1000; i++) recentMetricTimestampsAndValues.add(new MetricTimestampAndValue(i, BigDecimal.ONE, i));
+        assertTrue(recentMetricTimestampsAndValues.getCapacity() >= 1000);
+        
+        assertEquals(990, recentMetricTimestampsAndValues.removeValuesOlderThan(990));
+        assertTrue(recentMetricTimestampsAndValues.trim());
+        assertTrue(recentMetricTimestampsAndValues.getCapacity() < 20);
+        assertEquals(990, recentMetricTimestampsAndValues.get(0).getTimestamp());
+        assertEquals(999, recentMetricTimestampsAndValues.get(9).getTimestamp());
+        assertFalse(recentMetricTimestampsAndValues.trim());
+        
+        recentMetricTimestampsAndValues.remove(0);
+        assertEquals(991, recentMetricTimestampsAndValues.get(0).getTimestamp());
+        
+        recentMetricTimestampsAndValues.clear();
+        assertEquals(0, recentMetricTimestampsAndValues.size());
+        assertEquals(0, recentMetricTimestampsAndValues.getCapacity());
+        
+        recentMetricTimestampsAndValues.add(new MetricTimestampAndValue(5, BigDecimal.ONE, 1));
+        assertEquals(1, recentMetricTimestampsAndValues.size());
+    }
+    
+}
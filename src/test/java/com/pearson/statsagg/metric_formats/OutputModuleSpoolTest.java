@@ -0,0 +1,189 @@
+package com.pearson.statsagg.metric_formats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class OutputModuleSpoolTest {
+
+    private File spoolDirectory_ = null;
+
+    public OutputModuleSpoolTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        spoolDirectory_ = Files.createTempDirectory("statsagg_spool_test").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        OutputModuleSpool.closeAllSpools();
+        FileUtils.deleteQuietly(spoolDirectory_);
+    }
+
+    /**
+     * Test of append & replay methods, of class OutputModuleSpool. Messages must be replayed in order, across segments, & empty segments must be deleted.
+     */
+    @Test
+    public void testAppendAndReplay() {
+        OutputModuleSpool outputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024, 1024 * 1024, 0);
+        assertTrue(outputModuleSpool.isEmpty());
+
+        for (int i = 0; i < 100; i++) assertTrue(outputModuleSpool.append("metric" + i + " " + i + " 1\n"));
+
+        assertEquals(100, outputModuleSpool.getPendingMessageCount());
+        assertTrue(outputModuleSpool.getSegmentCount() > 1);
+
+        List<String> replayedMessages = new ArrayList<>();
+        assertEquals(100, outputModuleSpool.replay(message -> replayedMessages.add(message)));
+
+        for (int i = 0; i < 100; i++) assertEquals("metric" + i + " " + i + " 1\n", replayedMessages.get(i));
+        assertTrue(outputModuleSpool.isEmpty());
+        assertEquals(1, outputModuleSpool.getSegmentCount());
+        assertEquals(100, outputModuleSpool.getNumReplayedMessages());
+        assertEquals(0, outputModuleSpool.replay(message -> true));
+    }
+
+    /**
+     * Test of replay method, of class OutputModuleSpool. A message that fails to send must stay in the spool, & be the first message of the next replay.
+     */
+    @Test
+    public void testReplayFailure() {
+        OutputModuleSpool outputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024, 1024 * 1024, 0);
+        for (int i = 0; i < 5; i++) outputModuleSpool.append("message" + i);
+
+        List<String> replayedMessages = new ArrayList<>();
+        assertEquals(2, outputModuleSpool.replay(message -> (replayedMessages.size() < 2) && replayedMessages.add(message)));
+        assertEquals(3, outputModuleSpool.getPendingMessageCount());
+
+        replayedMessages.clear();
+        assertEquals(3, outputModuleSpool.replay(message -> replayedMessages.add(message)));
+        assertEquals("message2", replayedMessages.get(0));
+    }
+
+    /**
+     * Test of replay method, of class OutputModuleSpool. A message whose write fails after it was handed off must stay in the spool (along with every message after it), 
+     * & a message must only be marked as replayed once its write succeeded -- including across segments.
+     */
+    @Test
+    public void testReplayAsyncWriteFailure() {
+        OutputModuleSpool outputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024, 1024 * 1024, 0);
+        for (int i = 0; i < 100; i++) outputModuleSpool.append("message" + i);
+        assertTrue(outputModuleSpool.getSegmentCount() > 1);
+
+        List<String> replayedMessages = new ArrayList<>();
+        int numReplayedMessages = outputModuleSpool.replay(message -> {
+            replayedMessages.add(message);
+            CompletableFuture<Void> writeFuture = new CompletableFuture<>();
+            if (message.equals("message80")) writeFuture.completeExceptionally(new IOException("Connection reset by peer"));
+            else writeFuture.complete(null);
+            return writeFuture;
+        }, 1000);
+
+        assertEquals(100, replayedMessages.size());
+        assertEquals(80, numReplayedMessages);
+        assertEquals(20, outputModuleSpool.getPendingMessageCount());
+
+        replayedMessages.clear();
+        assertEquals(20, outputModuleSpool.replay(message -> replayedMessages.add(message)));
+        assertEquals("message80", replayedMessages.get(0));
+        assertTrue(outputModuleSpool.isEmpty());
+    }
+
+    /**
+     * Test of the constructor, of class OutputModuleSpool. A reopened spool must only replay the messages that weren't replayed before it was closed.
+     */
+    @Test
+    public void testReopen() {
+        OutputModuleSpool outputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024, 1024 * 1024, 0);
+        for (int i = 0; i < 100; i++) outputModuleSpool.append("message" + i);
+
+        List<String> replayedMessages = new ArrayList<>();
+        outputModuleSpool.replay(message -> (replayedMessages.size() < 40) && replayedMessages.add(message));
+        outputModuleSpool.close();
+        assertFalse(outputModuleSpool.append("message"));
+
+        OutputModuleSpool reopenedOutputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024, 1024 * 1024, 0);
+        assertEquals(60, reopenedOutputModuleSpool.getPendingMessageCount());
+        assertTrue(reopenedOutputModuleSpool.append("message100"));
+
+        replayedMessages.clear();
+        assertEquals(61, reopenedOutputModuleSpool.replay(message -> replayedMessages.add(message)));
+        assertEquals("message40", replayedMessages.get(0));
+        assertEquals("message100", replayedMessages.get(60));
+    }
+
+    /**
+     * Test of append method, of class OutputModuleSpool. A full spool must drop its oldest segment, & messages that are bigger than a segment must be rejected.
+     */
+    @Test
+    public void testMaxSize() {
+        OutputModuleSpool outputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024, 2048, 0);
+
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 500) message.append('x');
+
+        for (int i = 0; i < 6; i++) assertTrue(outputModuleSpool.append(i + message.toString()));
+
+        assertEquals(2, outputModuleSpool.getSegmentCount());
+        assertEquals(4, outputModuleSpool.getPendingMessageCount());
+        assertEquals(2, outputModuleSpool.getNumDroppedMessages());
+
+        List<String> replayedMessages = new ArrayList<>();
+        outputModuleSpool.replay(replayedMessage -> replayedMessages.add(replayedMessage));
+        assertTrue(replayedMessages.get(0).startsWith("2"));
+
+        while (message.length() < 2000) message.append('x');
+        assertFalse(outputModuleSpool.append(message.toString()));
+        assertEquals(3, outputModuleSpool.getNumDroppedMessages());
+    }
+
+    /**
+     * Test of replay method, of class OutputModuleSpool. A replay must stop once the rate limit's allowance is used up.
+     */
+    @Test
+    public void testReplayRateLimit() throws Exception {
+        OutputModuleSpool outputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024 * 1024, 1024 * 1024, 1000);
+        for (int i = 0; i < 1000; i++) outputModuleSpool.append("message" + String.format("%03d", i));
+
+        Thread.sleep(100);
+
+        int numReplayedMessages = outputModuleSpool.replay(message -> true);
+        assertTrue(numReplayedMessages > 0);
+        assertTrue(numReplayedMessages < 1000);
+    }
+
+    /**
+     * Test of getSpool method, of class OutputModuleSpool.
+     */
+    @Test
+    public void testGetSpool() {
+        OutputModuleSpool outputModuleSpool = OutputModuleSpool.getSpool("Graphite-1", spoolDirectory_.getAbsolutePath(), 1024, 4096, 0);
+        assertSame(outputModuleSpool, OutputModuleSpool.getSpool("Graphite-1", spoolDirectory_.getAbsolutePath(), 1024, 4096, 0));
+        assertSame(outputModuleSpool, OutputModuleSpool.getExistingSpool("Graphite-1"));
+        assertEquals(new File(spoolDirectory_, "Graphite-1"), outputModuleSpool.getDirectory());
+
+        outputModuleSpool.append("message");
+        OutputModuleSpool outputModuleSpool2 = OutputModuleSpool.getSpool("Graphite-1", spoolDirectory_.getAbsolutePath(), 1024, 8192, 0);
+        assertNotSame(outputModuleSpool, outputModuleSpool2);
+        assertTrue(outputModuleSpool.isClosed());
+        assertEquals(1, outputModuleSpool2.getPendingMessageCount());
+
+        OutputModuleSpool.closeAllSpools();
+        assertTrue(outputModuleSpool2.isClosed());
+        assertNull(OutputModuleSpool.getExistingSpool("Graphite-1"));
+    }
+
+}
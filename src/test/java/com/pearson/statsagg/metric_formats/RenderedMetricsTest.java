@@ -0,0 +1,78 @@
+package com.pearson.statsagg.metric_formats;
+
+import com.google.common.base.Supplier;
+import io.netty.buffer.ByteBuf;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class RenderedMetricsTest {
+
+    public RenderedMetricsTest() {
+    }
+
+    /**
+     * Test of render method, of class RenderedMetrics. Metrics that render to null must be skipped, & ranges must contain exactly the requested metrics.
+     */
+    @Test
+    public void testRender() {
+        List<String> metrics = Arrays.asList("a", null, "bé", "c");
+        RenderedMetrics renderedMetrics = RenderedMetrics.render(metrics, (String metric) -> (metric == null) ? null : metric + " 1\n");
+
+        assertEquals(3, renderedMetrics.getNumMetrics());
+        assertEquals("a 1\nbé 1\nc 1\n", renderedMetrics.getString(0, 3));
+        assertEquals("bé 1\n", renderedMetrics.getString(1, 2));
+        assertEquals(6, renderedMetrics.getLength(1, 2)); // utf-8 bytes, not characters
+
+        ByteBuf byteBuf = renderedMetrics.getByteBuf(1, 3);
+        assertEquals("bé 1\nc 1\n", byteBuf.toString(StandardCharsets.UTF_8));
+        byteBuf.release();
+
+        assertTrue(RenderedMetrics.render(null, (String metric) -> metric).isEmpty());
+    }
+
+    /**
+     * Test of writeJsonArray method, of class RenderedMetrics.
+     */
+    @Test
+    public void testWriteJsonArray() throws Exception {
+        List<String> metrics = Arrays.asList("1", "2", "3");
+        RenderedMetrics renderedMetrics = RenderedMetrics.render(metrics, (String metric) -> "{\"v\":" + metric + "}");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        renderedMetrics.writeJsonArray(outputStream, 0, 3);
+        assertEquals("[{\"v\":1},{\"v\":2},{\"v\":3}]", outputStream.toString("UTF-8"));
+
+        outputStream.reset();
+        renderedMetrics.writeJsonArray(outputStream, 1, 2);
+        assertEquals("[{\"v\":2}]", outputStream.toString("UTF-8"));
+
+        outputStream.reset();
+        renderedMetrics.writeJsonArray(outputStream, 1, 1);
+        assertEquals("[]", outputStream.toString("UTF-8"));
+    }
+
+    /**
+     * Test of lazy method, of class RenderedMetrics. The metrics must only be rendered once, no matter how many output modules use the rendering.
+     */
+    @Test
+    public void testLazy() {
+        AtomicInteger numRenderedMetrics = new AtomicInteger(0);
+        Supplier<RenderedMetrics> renderedMetricsSupplier = RenderedMetrics.lazy(Arrays.asList("a", "b"), (String metric) -> {
+            numRenderedMetrics.incrementAndGet();
+            return metric;
+        });
+
+        assertEquals(0, numRenderedMetrics.get());
+        assertSame(renderedMetricsSupplier.get(), renderedMetricsSupplier.get());
+        assertEquals(2, numRenderedMetrics.get());
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.pearson.statsagg.metric_formats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class SendMetricsToOutputModuleThreadTest {
+
+    private File spoolDirectory_ = null;
+
+    public SendMetricsToOutputModuleThreadTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        spoolDirectory_ = Files.createTempDirectory("statsagg_send_test").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        OutputModuleSpool.closeAllSpools();
+        FileUtils.deleteQuietly(spoolDirectory_);
+    }
+
+    /**
+     * Test of awaitPendingWrites method, of class SendMetricsToOutputModuleThread.
+     * A failed write whose resend is rejected must be spooled exactly once.
+     */
+    @Test
+    public void testAwaitPendingWrites_ResendRejected() {
+        OutputModuleSpool outputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024 * 1024, 8 * 1024 * 1024, 0);
+        TestSendMetricsThread testSendMetricsThread = new TestSendMetricsThread(outputModuleSpool);
+
+        RenderedMetrics renderedMetrics = RenderedMetrics.render(Arrays.asList("metric1 1 1", "metric2 2 1"), metric -> metric + "\n");
+        CompletableFuture<Void> failedWriteFuture = new CompletableFuture<>();
+        failedWriteFuture.completeExceptionally(new IOException("Connection reset by peer"));
+        testSendMetricsThread.addPendingWrite(renderedMetrics, 0, renderedMetrics.getNumMetrics(), failedWriteFuture);
+
+        AtomicInteger numResendAttempts = new AtomicInteger(0);
+        boolean isWriteAllSuccess = testSendMetricsThread.awaitPendingWrites(1000, 3, failedWrite -> {
+            numResendAttempts.incrementAndGet();
+            return false;
+        });
+
+        assertFalse(isWriteAllSuccess);
+        assertEquals(1, numResendAttempts.get());
+        assertEquals(1, outputModuleSpool.getPendingMessageCount());
+        assertEquals(1, testSendMetricsThread.numSpooledMessages_);
+
+        List<String> replayedMessages = new ArrayList<>();
+        assertEquals(1, outputModuleSpool.replay(message -> replayedMessages.add(message)));
+        assertEquals("metric1 1 1\nmetric2 2 1\n", replayedMessages.get(0));
+    }
+
+    /**
+     * Test of awaitPendingWrites method, of class SendMetricsToOutputModuleThread.
+     * A failed write that is re-sent successfully must not be spooled.
+     */
+    @Test
+    public void testAwaitPendingWrites_ResendSucceeds() {
+        OutputModuleSpool outputModuleSpool = new OutputModuleSpool("Test", spoolDirectory_, 1024 * 1024, 8 * 1024 * 1024, 0);
+        TestSendMetricsThread testSendMetricsThread = new TestSendMetricsThread(outputModuleSpool);
+
+        RenderedMetrics renderedMetrics = RenderedMetrics.render(Arrays.asList("metric1 1 1"), metric -> metric + "\n");
+        CompletableFuture<Void> failedWriteFuture = new CompletableFuture<>();
+        failedWriteFuture.completeExceptionally(new IOException("Connection reset by peer"));
+        testSendMetricsThread.addPendingWrite(renderedMetrics, 0, renderedMetrics.getNumMetrics(), failedWriteFuture);
+
+        boolean isWriteAllSuccess = testSendMetricsThread.awaitPendingWrites(1000, 3, failedWrite -> {
+            testSendMetricsThread.addPendingWrite(failedWrite.getRenderedMetrics(), failedWrite.getFromIndex(), failedWrite.getToIndex(), CompletableFuture.completedFuture(null));
+            return true;
+        });
+
+        assertFalse(isWriteAllSuccess);
+        assertEquals(0, outputModuleSpool.getPendingMessageCount());
+        assertEquals(0, testSendMetricsThread.numSpooledMessages_);
+    }
+
+    private static class TestSendMetricsThread extends SendMetricsToOutputModuleThread {
+
+        public TestSendMetricsThread(OutputModuleSpool outputModuleSpool) {
+            this.threadId_ = "Test";
+            this.outputEndpoint_ = "localhost:2003";
+            this.outputModuleSpool_ = outputModuleSpool;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public boolean isFinished() {
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.pearson.statsagg.metric_formats.graphite;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * The expected values in these tests come from carbon's ConsistentHashRing (carbon_ch), using the same nodes & keys.
+ * 
+ * @author Jeffrey Schmidt
+ */
+public class ConsistentHashRingTest {
+
+    public ConsistentHashRingTest() {
+    }
+
+    /**
+     * Test of getRingPosition method, of class ConsistentHashRing.
+     */
+    @Test
+    public void testGetRingPosition() {
+        assertEquals(58705, ConsistentHashRing.getRingPosition("stats.gauges.cpu"));
+        assertEquals(14461, ConsistentHashRing.getRingPosition("servers.web1.load"));
+        assertEquals(44221, ConsistentHashRing.getRingPosition("foo"));
+    }
+
+    /**
+     * Test of getCarbonNodeKey method, of class ConsistentHashRing.
+     */
+    @Test
+    public void testGetCarbonNodeKey() {
+        assertEquals("('127.0.0.1', 'a')", ConsistentHashRing.getCarbonNodeKey("127.0.0.1", "a"));
+        assertEquals("('127.0.0.1', None)", ConsistentHashRing.getCarbonNodeKey("127.0.0.1", null));
+        assertEquals("('127.0.0.1', \"it's\")", ConsistentHashRing.getCarbonNodeKey("127.0.0.1", "it's"));
+    }
+
+    /**
+     * Test of getNodes method, of class ConsistentHashRing. Keys must be placed on the same nodes (& in the same replica order) as carbon places them.
+     */
+    @Test
+    public void testGetNodes() {
+        Map<String,String> nodes = new LinkedHashMap<>();
+        for (String instance : Arrays.asList("a", "b", "c")) nodes.put(instance, ConsistentHashRing.getCarbonNodeKey("127.0.0.1", instance));
+        ConsistentHashRing<String> consistentHashRing = new ConsistentHashRing<>(nodes, ConsistentHashRing.CARBON_REPLICA_COUNT);
+
+        assertEquals(Arrays.asList("b", "c", "a"), consistentHashRing.getNodes("stats.gauges.cpu", 3));
+        assertEquals(Arrays.asList("a", "b", "c"), consistentHashRing.getNodes("servers.web1.load", 3));
+        assertEquals(Arrays.asList("a", "c", "b"), consistentHashRing.getNodes("a.b.c", 3));
+        assertEquals(Arrays.asList("b", "a", "c"), consistentHashRing.getNodes("statsagg.alerts.x", 3));
+        assertEquals(Arrays.asList("c", "a"), consistentHashRing.getNodes("foo", 2));
+        assertEquals("c", consistentHashRing.getNode("foo"));
+        assertEquals(Arrays.asList("c", "a", "b"), consistentHashRing.getNodes("foo", 10));
+
+        nodes = new LinkedHashMap<>();
+        for (String host : Arrays.asList("carbon1", "carbon2")) nodes.put(host, ConsistentHashRing.getCarbonNodeKey(host, null));
+        consistentHashRing = new ConsistentHashRing<>(nodes, ConsistentHashRing.CARBON_REPLICA_COUNT);
+
+        assertEquals("carbon1", consistentHashRing.getNode("stats.gauges.cpu"));
+        assertEquals("carbon2", consistentHashRing.getNode("servers.web1.load"));
+        assertEquals("carbon2", consistentHashRing.getNode("a.b.c"));
+        assertEquals("carbon1", consistentHashRing.getNode("statsagg.alerts.x"));
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.pearson.statsagg.metric_formats.graphite;
+
+import com.pearson.statsagg.metric_formats.RenderedMetrics;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class GraphiteShardedOutputModuleTest {
+
+    public GraphiteShardedOutputModuleTest() {
+    }
+
+    /**
+     * Test of parseDestinations method, of class GraphiteShardedOutputModule. Malformed destinations (including bad ports) must be skipped.
+     */
+    @Test
+    public void testParseDestinations() {
+        List<GraphiteShardedOutputModule.Destination> destinations = GraphiteShardedOutputModule.parseDestinations(" carbon1:2003:a  carbon2:2004;carbon3 carbon4:2003:b carbon5:20o3:c carbon6:99999 ");
+
+        assertEquals(3, destinations.size());
+        assertEquals("carbon1:2003:a", destinations.get(0).toString());
+        assertEquals("carbon2", destinations.get(1).getHost());
+        assertEquals(2004, destinations.get(1).getPort());
+        assertNull(destinations.get(1).getInstance());
+        assertEquals("b", destinations.get(2).getInstance());
+    }
+
+    /**
+     * Test of getDestinations method, of class GraphiteShardedOutputModule. Destinations with the same host & instance are the same carbon node, so duplicates are ignored.
+     */
+    @Test
+    public void testGetDestinations() {
+        List<GraphiteShardedOutputModule.Destination> destinations = GraphiteShardedOutputModule.parseDestinations("127.0.0.1:2003:a 127.0.0.1:2103:b 127.0.0.1:2203:c 127.0.0.1:2303:a");
+        GraphiteShardedOutputModule graphiteShardedOutputModule = new GraphiteShardedOutputModule(true, destinations, 2, 2, 1000, true, true, "Graphite-Sharded-1");
+
+        assertEquals(3, graphiteShardedOutputModule.getDestinations().size());
+        assertEquals(Arrays.asList(destinations.get(1), destinations.get(2)), graphiteShardedOutputModule.getDestinations("stats.gauges.cpu"));
+        assertEquals(Arrays.asList(destinations.get(2), destinations.get(0)), graphiteShardedOutputModule.getDestinations("foo"));
+        assertEquals("Graphite-Sharded-1-127.0.0.1:2103:b", graphiteShardedOutputModule.getUniqueId(destinations.get(1)));
+        
+        List<GraphiteShardedOutputModule.Destination> sharedPortDestinations = GraphiteShardedOutputModule.parseDestinations("127.0.0.1:2003:a 127.0.0.1:2003:b");
+        GraphiteShardedOutputModule sharedPortGraphiteShardedOutputModule = new GraphiteShardedOutputModule(true, sharedPortDestinations, 1, 2, 1000, true, true, "Graphite-Sharded-2");
+        assertNotEquals(sharedPortGraphiteShardedOutputModule.getUniqueId(sharedPortDestinations.get(0)), sharedPortGraphiteShardedOutputModule.getUniqueId(sharedPortDestinations.get(1)));
+    }
+
+    /**
+     * Test of renderShardedLazily method, of class SendMetricsToGraphiteThread. Every metric must only be rendered for the destinations that it hashes to.
+     */
+    @Test
+    public void testRenderShardedLazily() {
+        List<GraphiteShardedOutputModule.Destination> destinations = GraphiteShardedOutputModule.parseDestinations("127.0.0.1:2003:a 127.0.0.1:2103:b 127.0.0.1:2203:c");
+        GraphiteShardedOutputModule graphiteShardedOutputModule = new GraphiteShardedOutputModule(true, destinations, 1, 2, 1000, false, false, "Graphite-Sharded-1");
+
+        List<GraphiteMetric> graphiteMetrics = Arrays.asList(new GraphiteMetric("stats.gauges.cpu", new BigDecimal("1"), 1436135662), 
+                new GraphiteMetric("foo", new BigDecimal("2"), 1436135662), new GraphiteMetric("servers.web1.load", new BigDecimal("3"), 1436135662));
+
+        Map<GraphiteShardedOutputModule.Destination,RenderedMetrics> renderedGraphiteMetricsByDestination = SendMetricsToGraphiteThread.renderShardedLazily(graphiteMetrics, graphiteShardedOutputModule).get();
+
+        assertEquals("servers.web1.load 3 1436135662\n", renderedGraphiteMetricsByDestination.get(destinations.get(0)).getString(0, 1));
+        assertEquals("stats.gauges.cpu 1 1436135662\n", renderedGraphiteMetricsByDestination.get(destinations.get(1)).getString(0, 1));
+        assertEquals("foo 2 1436135662\n", renderedGraphiteMetricsByDestination.get(destinations.get(2)).getString(0, 1));
+        assertEquals(1, renderedGraphiteMetricsByDestination.get(destinations.get(2)).getNumMetrics());
+    }
+
+}
@@ -89,4 +89,28 @@ public class InfluxdbMetric_v1Test {
         
     }
 
+    /**
+     * Test of getInfluxdbV2LineFormatString method, of class InfluxdbMetric_v1.
+     */
+    @Test
+    public void testGetInfluxdbV2LineFormatString() {
+
+        long currentTimeInMs = System.currentTimeMillis();
+        List<InfluxdbMetric_v1> influxdbMetrics = InfluxdbMetric_v1.parseInfluxdbMetricJson("statsagg_db", json_, "user", "pass", null, 
+                "ms", "global.local.", currentTimeInMs);
+        
+        // string columns are tags, numeric columns are fields, & a point without numeric columns has string fields
+        String[] influxdbLines = influxdbMetrics.get(0).getInfluxdbV2LineFormatString(Common.TIMESTAMP_PRECISION_MILLISECONDS).split("\n");
+        assertEquals(4, influxdbLines.length);
+        assertEquals("global.local.metric_name_1,column3=meta\\ \\ 1,column4=meta\\ \\ 2 column1=1,column2=2 999991", influxdbLines[0]);
+        assertEquals("global.local.metric_name_1,column3=meta\\ \\ 11,column4=meta\\ \\ 22 column1=11.11,column2=22.22 999992", influxdbLines[1]);
+        assertEquals("global.local.metric_name_1 column1=\"111.11\",column2=\"222.22\",column3=\"meta  1111\",column4=\"meta  2222\" 999994", influxdbLines[3]);
+        
+        // the timestamp is converted to the requested precision. without a 'time' column, the received timestamp is used.
+        influxdbLines = influxdbMetrics.get(1).getInfluxdbV2LineFormatString(Common.TIMESTAMP_PRECISION_SECONDS).split("\n");
+        assertEquals(3, influxdbLines.length);
+        assertEquals("global.local.metric_name_2,column1=meta column2=false " + (currentTimeInMs / 1000), influxdbLines[0]);
+        assertEquals("global.local.metric_name_2 column1=true,column2=123.456 " + (currentTimeInMs / 1000), influxdbLines[2]);
+    }
+    
 }
@@ -0,0 +1,46 @@
+package com.pearson.statsagg.metric_formats.influxdb;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class InfluxdbMetric_v2Test {
+
+    public InfluxdbMetric_v2Test() {
+    }
+
+    /**
+     * Test of getLineProtocolEscapedMeasurement method, of class InfluxdbMetric_v2.
+     */
+    @Test
+    public void testGetLineProtocolEscapedMeasurement() {
+        assertEquals("cpu", InfluxdbMetric_v2.getLineProtocolEscapedMeasurement("cpu"));
+        assertEquals("cpu\\,load\\ avg=1", InfluxdbMetric_v2.getLineProtocolEscapedMeasurement("cpu,load avg=1"));
+        assertEquals("c:\\\\temp\\\\disk", InfluxdbMetric_v2.getLineProtocolEscapedMeasurement("c:\\temp\\disk"));
+        assertEquals("cpu\\ load", InfluxdbMetric_v2.getLineProtocolEscapedMeasurement("cpu\nload"));
+        assertNull(InfluxdbMetric_v2.getLineProtocolEscapedMeasurement(null));
+    }
+
+    /**
+     * Test of getLineProtocolEscapedKey method, of class InfluxdbMetric_v2. A trailing backslash must not escape the separator that follows the key.
+     */
+    @Test
+    public void testGetLineProtocolEscapedKey() {
+        assertEquals("host", InfluxdbMetric_v2.getLineProtocolEscapedKey("host"));
+        assertEquals("dc\\=us\\,east\\ 1", InfluxdbMetric_v2.getLineProtocolEscapedKey("dc=us,east 1"));
+        assertEquals("path\\\\", InfluxdbMetric_v2.getLineProtocolEscapedKey("path\\"));
+        assertEquals("a\\\\\\,b", InfluxdbMetric_v2.getLineProtocolEscapedKey("a\\,b"));
+    }
+
+    /**
+     * Test of getLineProtocolEscapedStringFieldValue method, of class InfluxdbMetric_v2.
+     */
+    @Test
+    public void testGetLineProtocolEscapedStringFieldValue() {
+        assertEquals("value", InfluxdbMetric_v2.getLineProtocolEscapedStringFieldValue("value"));
+        assertEquals("say \\\"hi\\\" c:\\\\temp", InfluxdbMetric_v2.getLineProtocolEscapedStringFieldValue("say \"hi\" c:\\temp"));
+    }
+
+}
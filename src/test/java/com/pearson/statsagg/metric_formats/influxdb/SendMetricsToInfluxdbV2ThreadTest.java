@@ -0,0 +1,118 @@
+package com.pearson.statsagg.metric_formats.influxdb;
+
+import com.google.common.io.ByteStreams;
+import com.pearson.statsagg.metric_formats.graphite.GraphiteMetric;
+import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetric;
+import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbTag;
+import com.sun.net.httpserver.HttpServer;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class SendMetricsToInfluxdbV2ThreadTest {
+
+    private HttpServer httpServer_;
+    private final List<String> receivedUris_ = new CopyOnWriteArrayList<>();
+    private final List<String> receivedBodies_ = new CopyOnWriteArrayList<>();
+    private final List<String> receivedAuthorizations_ = new CopyOnWriteArrayList<>();
+
+    public SendMetricsToInfluxdbV2ThreadTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer_ = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+        httpServer_.createContext("/", httpExchange -> {
+            receivedUris_.add(httpExchange.getRequestURI().toString());
+            receivedAuthorizations_.add(String.valueOf(httpExchange.getRequestHeaders().getFirst("Authorization")));
+
+            String contentEncoding = httpExchange.getRequestHeaders().getFirst("Content-Encoding");
+            InputStream inputStream = "gzip".equals(contentEncoding) ? new GZIPInputStream(httpExchange.getRequestBody()) : httpExchange.getRequestBody();
+            receivedBodies_.add(new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+
+            // influxdb responds to a successful write with a '204 No Content'
+            httpExchange.sendResponseHeaders(204, -1);
+            httpExchange.close();
+        });
+
+        httpServer_.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        httpServer_.stop(0);
+    }
+
+    /**
+     * Test of run method, of class SendMetricsToInfluxdbV2Thread. Non-native metrics must be written to the default database, in batches of 'maxMetricsPerMessage' lines.
+     */
+    @Test
+    public void testRun_NonNative() throws Exception {
+        List<OpenTsdbTag> openTsdbTags = new ArrayList<>(Arrays.asList(new OpenTsdbTag("host=web1"), new OpenTsdbTag("dc=us,east")));
+
+        List<InfluxdbMetricFormat_v2> influxdbMetrics = new ArrayList<>();
+        influxdbMetrics.add(new GraphiteMetric("graphite.metric", new BigDecimal("1.50"), 1436135662));
+        influxdbMetrics.add(new OpenTsdbMetric("opentsdb metric", 1436135662123L, new BigDecimal("2"), openTsdbTags, true, 1436135662123L));
+        influxdbMetrics.add(new GraphiteMetric("graphite.metric", new BigDecimal("3"), 1436135663));
+
+        List<SendMetricsToInfluxdbV2Thread.DatabaseMetrics> databaseMetrics = SendMetricsToInfluxdbV2Thread.getNonNativeDatabaseMetrics(influxdbMetrics,
+                "statsagg", "Basic abc", Common.TIMESTAMP_PRECISION_SECONDS);
+
+        URL influxdbBaseUrl = new URL("http://127.0.0.1:" + httpServer_.getAddress().getPort() + "/");
+        SendMetricsToInfluxdbV2Thread sendMetricsToInfluxdbV2Thread = new SendMetricsToInfluxdbV2Thread(databaseMetrics, influxdbBaseUrl, "one month",
+                Common.TIMESTAMP_PRECISION_SECONDS, 3000, 3000, 0, 2, true, "1");
+        sendMetricsToInfluxdbV2Thread.run();
+
+        assertTrue(sendMetricsToInfluxdbV2Thread.isFinished());
+        assertEquals(2, receivedBodies_.size());
+        assertEquals("/write?db=statsagg&rp=one+month&precision=s", receivedUris_.get(0));
+        assertEquals("Basic abc", receivedAuthorizations_.get(0));
+        assertEquals("graphite.metric value=1.5 1436135662\nopentsdb\\ metric,dc=us\\,east,host=web1 value=2 1436135662\n", receivedBodies_.get(0));
+        assertEquals("graphite.metric value=3 1436135663\n", receivedBodies_.get(1));
+    }
+
+    /**
+     * Test of getNativeDatabaseMetrics method, of class SendMetricsToInfluxdbV2Thread. Native metrics must be written to the database (with the credentials) that they were sent to.
+     */
+    @Test
+    public void testRun_Native() throws Exception {
+        String json = "[{\"name\":\"metric\",\"columns\":[\"time\",\"value\"],\"points\":[[1436135662123,1]]}]";
+
+        List<InfluxdbMetric_v1> influxdbMetrics = new ArrayList<>();
+        influxdbMetrics.addAll(InfluxdbMetric_v1.parseInfluxdbMetricJson("db1", json, "user", "pass", null, "ms", null, 0));
+        influxdbMetrics.addAll(InfluxdbMetric_v1.parseInfluxdbMetricJson("db2", json, null, null, "Basic xyz", "ms", null, 0));
+        influxdbMetrics.addAll(InfluxdbMetric_v1.parseInfluxdbMetricJson("db1", json, "user", "pass", null, "ms", null, 0));
+
+        List<SendMetricsToInfluxdbV2Thread.DatabaseMetrics> databaseMetrics = SendMetricsToInfluxdbV2Thread.getNativeDatabaseMetrics(influxdbMetrics,
+                Common.TIMESTAMP_PRECISION_NANOSECONDS);
+        assertEquals(2, databaseMetrics.size());
+
+        URL influxdbBaseUrl = new URL("http://127.0.0.1:" + httpServer_.getAddress().getPort());
+        SendMetricsToInfluxdbV2Thread sendMetricsToInfluxdbV2Thread = new SendMetricsToInfluxdbV2Thread(databaseMetrics, influxdbBaseUrl, null,
+                Common.TIMESTAMP_PRECISION_NANOSECONDS, 3000, 3000, 0, 1000, false, "1");
+        sendMetricsToInfluxdbV2Thread.run();
+
+        assertEquals(2, receivedBodies_.size());
+        assertEquals("/write?db=db1&precision=n&u=user&p=pass", receivedUris_.get(0));
+        assertEquals("metric value=1 1436135662123000000\nmetric value=1 1436135662123000000\n", receivedBodies_.get(0));
+        assertEquals("/write?db=db2&precision=n", receivedUris_.get(1));
+        assertEquals("Basic xyz", receivedAuthorizations_.get(1));
+        assertEquals("metric value=1 1436135662123000000\n", receivedBodies_.get(1));
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.pearson.statsagg.metric_formats.prometheus;
+
+import com.pearson.statsagg.metric_formats.graphite.GraphiteMetric;
+import com.pearson.statsagg.metric_formats.influxdb.Common;
+import com.pearson.statsagg.metric_formats.influxdb.InfluxdbStandardizedMetric;
+import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbMetric;
+import com.pearson.statsagg.metric_formats.opentsdb.OpenTsdbTag;
+import com.pearson.statsagg.metric_formats.statsd.StatsdMetricAggregated;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class PrometheusMetricTest {
+
+    public PrometheusMetricTest() {
+    }
+
+    /**
+     * Test of getPrometheusSanitizedMetricName & getPrometheusSanitizedLabelName methods, of class PrometheusMetric.
+     */
+    @Test
+    public void testGetPrometheusSanitizedNames() {
+        assertEquals("stats_gauges_cpu_1", PrometheusMetric.getPrometheusSanitizedMetricName("stats.gauges.cpu-1"));
+        assertEquals("job:requests_total", PrometheusMetric.getPrometheusSanitizedMetricName("job:requests_total"));
+        assertEquals("_1min_load", PrometheusMetric.getPrometheusSanitizedMetricName("1min.load"));
+        assertEquals("job_name", PrometheusMetric.getPrometheusSanitizedLabelName("job:name"));
+        assertNull(PrometheusMetric.getPrometheusSanitizedMetricName(""));
+    }
+
+    /**
+     * Test of getPrometheusFormatString method, of class PrometheusMetric. Every output metric type must be representable as a prometheus sample.
+     */
+    @Test
+    public void testGetPrometheusFormatString() {
+        GraphiteMetric graphiteMetric = new GraphiteMetric("servers.web-1.load", new BigDecimal("1.50"), 1436135662);
+        assertEquals("servers_web_1_load 1.5 1436135662000", PrometheusMetric.getPrometheusFormatString(graphiteMetric, true));
+        assertEquals("servers_web_1_load 1.5", PrometheusMetric.getPrometheusFormatString(graphiteMetric, false));
+
+        StatsdMetricAggregated statsdMetricAggregated = new StatsdMetricAggregated("stats.gauges.cpu", new BigDecimal("42"), 1436135662123L, StatsdMetricAggregated.GAUGE_TYPE);
+        assertEquals("stats_gauges_cpu 42 1436135662123", PrometheusMetric.getPrometheusFormatString(statsdMetricAggregated, true));
+
+        List<OpenTsdbTag> openTsdbTags = new ArrayList<>(Arrays.asList(new OpenTsdbTag("host=web1"), new OpenTsdbTag("dc.name=us\"east")));
+        OpenTsdbMetric openTsdbMetric = new OpenTsdbMetric("sys.cpu.user", 1436135662123L, new BigDecimal("2"), openTsdbTags, true, 1436135662123L);
+        assertEquals("sys_cpu_user{dc_name=\"us\\\"east\",host=\"web1\"} 2 1436135662123", PrometheusMetric.getPrometheusFormatString(openTsdbMetric, true));
+
+        InfluxdbStandardizedMetric influxdbStandardizedMetric = new InfluxdbStandardizedMetric("key", "db1", null, "cpu", "value", new BigDecimal("3"), 1436135662123L,
+                Common.TIMESTAMP_PRECISION_MILLISECONDS, 1436135662123L, new ArrayList<>(Arrays.asList("host", "value", "region")),
+                new ArrayList<>(Arrays.asList((Object) "web1", new BigDecimal("3"), "us-east")), true);
+        assertEquals("db1_cpu_value{host=\"web1\",region=\"us-east\"} 3 1436135662123", PrometheusMetric.getPrometheusFormatString(influxdbStandardizedMetric, true));
+    }
+
+    /**
+     * Test of writePrometheusFormat method, of class PrometheusMetric. Excluded metric-keys & metrics that don't match any selector must be skipped.
+     */
+    @Test
+    public void testWritePrometheusFormat() throws Exception {
+        List<PrometheusMetricFormat> prometheusMetrics = new ArrayList<>();
+        prometheusMetrics.add(new GraphiteMetric("stats.gauges.cpu", new BigDecimal("1"), 1436135662));
+        prometheusMetrics.add(new GraphiteMetric("stats.gauges.memory", new BigDecimal("2"), 1436135662));
+        prometheusMetrics.add(new GraphiteMetric("stats.counters.requests", new BigDecimal("3"), 1436135662));
+        prometheusMetrics.add(new OpenTsdbMetric("sys.cpu", 1436135662123L, new BigDecimal("4"), new ArrayList<>(Arrays.asList(new OpenTsdbTag("host=web1"))), true, 1436135662123L));
+        prometheusMetrics.add(new OpenTsdbMetric("sys.cpu", 1436135662123L, new BigDecimal("5"), new ArrayList<>(Arrays.asList(new OpenTsdbTag("host=web2"))), true, 1436135662123L));
+
+        StringWriter writer = new StringWriter();
+        long numMetricsWritten = PrometheusMetric.writePrometheusFormat(writer, prometheusMetrics.iterator(), null, metricKey -> metricKey.equals("stats.gauges.memory"), false);
+        assertEquals(4, numMetricsWritten);
+        assertEquals("stats_gauges_cpu 1\nstats_counters_requests 3\nsys_cpu{host=\"web1\"} 4\nsys_cpu{host=\"web2\"} 5\n", writer.toString());
+
+        List<PrometheusSeriesSelector> selectors = Arrays.asList(PrometheusSeriesSelector.parseSeriesSelector("{__name__=~\"stats_gauges_.*\"}"),
+                PrometheusSeriesSelector.parseSeriesSelector("sys_cpu{host!=\"web1\"}"));
+
+        writer = new StringWriter();
+        numMetricsWritten = PrometheusMetric.writePrometheusFormat(writer, prometheusMetrics.iterator(), selectors, null, false);
+        assertEquals(3, numMetricsWritten);
+        assertEquals("stats_gauges_cpu 1\nstats_gauges_memory 2\nsys_cpu{host=\"web2\"} 5\n", writer.toString());
+    }
+
+}
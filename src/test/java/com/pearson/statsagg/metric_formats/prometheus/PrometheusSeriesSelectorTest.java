@@ -0,0 +1,59 @@
+package com.pearson.statsagg.metric_formats.prometheus;
+
+import com.pearson.statsagg.utilities.KeyValue;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class PrometheusSeriesSelectorTest {
+
+    public PrometheusSeriesSelectorTest() {
+    }
+
+    /**
+     * Test of parseSeriesSelector method, of class PrometheusSeriesSelector.
+     */
+    @Test
+    public void testParseSeriesSelector() {
+        assertNotNull(PrometheusSeriesSelector.parseSeriesSelector("http_requests_total"));
+        assertNotNull(PrometheusSeriesSelector.parseSeriesSelector(" job:http_requests:rate5m { job = 'api' , code!=\"200\", } "));
+        assertNotNull(PrometheusSeriesSelector.parseSeriesSelector("{__name__=~`stats_.*`}"));
+
+        assertNull(PrometheusSeriesSelector.parseSeriesSelector(""));
+        assertNull(PrometheusSeriesSelector.parseSeriesSelector("{}"));
+        assertNull(PrometheusSeriesSelector.parseSeriesSelector("metric{job=\"api\""));
+        assertNull(PrometheusSeriesSelector.parseSeriesSelector("metric{job=api}"));
+        assertNull(PrometheusSeriesSelector.parseSeriesSelector("metric{job~\"api\"}"));
+        assertNull(PrometheusSeriesSelector.parseSeriesSelector("metric{job=~\"(api\"}"));
+        assertNull(PrometheusSeriesSelector.parseSeriesSelector("metric other"));
+    }
+
+    /**
+     * Test of isMatch method, of class PrometheusSeriesSelector.
+     */
+    @Test
+    public void testIsMatch() {
+        List<KeyValue> labels = Arrays.asList(new KeyValue("job", "api"), new KeyValue("code", "500"));
+
+        assertTrue(PrometheusSeriesSelector.parseSeriesSelector("http_requests_total").isMatch("http_requests_total", labels));
+        assertFalse(PrometheusSeriesSelector.parseSeriesSelector("http_requests").isMatch("http_requests_total", labels));
+        assertTrue(PrometheusSeriesSelector.parseSeriesSelector("{job=\"api\",code=~\"5..\"}").isMatch("http_requests_total", labels));
+        assertFalse(PrometheusSeriesSelector.parseSeriesSelector("{job=\"api\",code!~\"5..\"}").isMatch("http_requests_total", labels));
+
+        // regexes must match the whole label value
+        assertFalse(PrometheusSeriesSelector.parseSeriesSelector("{job=~\"ap\"}").isMatch("http_requests_total", labels));
+        assertTrue(PrometheusSeriesSelector.parseSeriesSelector("{__name__=~\"http_.*\"}").isMatch("http_requests_total", labels));
+
+        // a missing label matches an empty string
+        assertTrue(PrometheusSeriesSelector.parseSeriesSelector("http_requests_total{instance=\"\"}").isMatch("http_requests_total", labels));
+        assertFalse(PrometheusSeriesSelector.parseSeriesSelector("http_requests_total{instance!=\"\"}").isMatch("http_requests_total", labels));
+
+        // escaped quotes
+        assertTrue(PrometheusSeriesSelector.parseSeriesSelector("{path=\"a\\\"b\"}").isMatch("m", Arrays.asList(new KeyValue("path", "a\"b"))));
+    }
+
+}
@@ -0,0 +1,299 @@
+package com.pearson.statsagg.network.tcp;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.Future;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class TcpOutputClientTest {
+
+    private static EventLoopGroup eventLoopGroup_;
+
+    private ServerSocket serverSocket_;
+    private volatile boolean readAcceptedSockets_ = true;
+    private final AtomicInteger numAcceptedConnections_ = new AtomicInteger(0);
+    private final List<Socket> acceptedSockets_ = new CopyOnWriteArrayList<>();
+    private final List<String> receivedLines_ = new CopyOnWriteArrayList<>();
+
+    public TcpOutputClientTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        eventLoopGroup_ = new NioEventLoopGroup(1);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        eventLoopGroup_.shutdownGracefully(0, 1000, TimeUnit.MILLISECONDS).await(5000);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket_ = new ServerSocket(0);
+
+        Thread acceptThread = new Thread(() -> {
+            while (!serverSocket_.isClosed()) {
+                try {
+                    Socket socket = serverSocket_.accept();
+                    numAcceptedConnections_.incrementAndGet();
+                    acceptedSockets_.add(socket);
+                    if (!readAcceptedSockets_) continue;
+
+                    Thread readThread = new Thread(() -> {
+                        try {
+                            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                            String line;
+                            while ((line = reader.readLine()) != null) receivedLines_.add(line);
+                        }
+                        catch (Exception e) {}
+                    });
+                    readThread.setDaemon(true);
+                    readThread.start();
+                }
+                catch (Exception e) {}
+            }
+        });
+
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverSocket_.close();
+        for (Socket socket : acceptedSockets_) socket.close();
+    }
+
+    /**
+     * Test of write method, of class TcpOutputClient. Writes must reuse the already-open connection, & the stats must account for every written byte.
+     */
+    @Test
+    public void testWrite() throws Exception {
+        TcpOutputClient tcpOutputClient = new TcpOutputClient("Test", "127.0.0.1", serverSocket_.getLocalPort(), 3000, 1, 60000, 1024, 65536, 5000, eventLoopGroup_);
+
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(tcpOutputClient.write("metric" + i + " 1 1\nmetric" + i + "b 1 1\n"));
+        }
+
+        waitFor(() -> receivedLines_.size() == 10);
+        assertEquals(10, receivedLines_.size());
+        assertEquals("metric0 1 1", receivedLines_.get(0));
+        assertEquals(1, numAcceptedConnections_.get());
+        assertEquals(1, tcpOutputClient.getNumConnects());
+        assertEquals(1, tcpOutputClient.getConnectedChannelCount());
+
+        waitFor(() -> tcpOutputClient.getBytesInFlight() == 0);
+        assertEquals(0, tcpOutputClient.getBytesInFlight());
+        assertEquals(5, tcpOutputClient.getNumWrites());
+        assertEquals(0, tcpOutputClient.getNumFailedWrites());
+        assertEquals(receivedLines_.stream().mapToInt(line -> line.length() + 1).sum(), tcpOutputClient.getBytesWritten());
+        assertTrue(tcpOutputClient.getMaxWriteLatencyInMs() >= tcpOutputClient.getAverageWriteLatencyInMs());
+
+        for (ChannelFuture closeFuture : tcpOutputClient.close()) closeFuture.awaitUninterruptibly(5000);
+        assertEquals(0, tcpOutputClient.getConnectedChannelCount());
+        assertNull(tcpOutputClient.write("metric 1 1\n"));
+        assertEquals(1, tcpOutputClient.getNumRejectedWrites());
+    }
+
+    /**
+     * Test of write method, of class TcpOutputClient. A connection that the server closed must be reopened on the next write.
+     */
+    @Test
+    public void testReconnect() throws Exception {
+        TcpOutputClient tcpOutputClient = new TcpOutputClient("Test", "127.0.0.1", serverSocket_.getLocalPort(), 3000, 1, 60000, 1024, 65536, 5000, eventLoopGroup_);
+
+        assertNotNull(tcpOutputClient.write("metric1 1 1\n"));
+        waitFor(() -> receivedLines_.size() == 1);
+
+        acceptedSockets_.get(0).close();
+        waitFor(() -> tcpOutputClient.getConnectedChannelCount() == 0);
+        assertEquals(0, tcpOutputClient.getConnectedChannelCount());
+
+        assertNotNull(tcpOutputClient.write("metric2 1 1\n"));
+        waitFor(() -> receivedLines_.size() == 2);
+        assertEquals("metric2 1 1", receivedLines_.get(1));
+        assertEquals(2, numAcceptedConnections_.get());
+        assertEquals(2, tcpOutputClient.getNumConnects());
+
+        tcpOutputClient.close();
+    }
+
+    /**
+     * Test of write method, of class TcpOutputClient. Writes must be rejected when the endpoint can't be reached, or when the write buffer stays above the high watermark.
+     */
+    @Test
+    public void testRejectedWrites() throws Exception {
+        ServerSocket closedServerSocket = new ServerSocket(0);
+        int closedPort = closedServerSocket.getLocalPort();
+        closedServerSocket.close();
+
+        TcpOutputClient unreachableTcpOutputClient = new TcpOutputClient("Test-1", "127.0.0.1", closedPort, 1000, 1, 60000, 1024, 65536, 5000, eventLoopGroup_);
+        assertNull(unreachableTcpOutputClient.write("metric 1 1\n"));
+        assertEquals(1, unreachableTcpOutputClient.getNumRejectedWrites());
+        assertEquals(0, unreachableTcpOutputClient.getNumWrites());
+        unreachableTcpOutputClient.close();
+
+        // the server never reads, so a large write fills the socket buffers & stays in the client's write buffer
+        readAcceptedSockets_ = false;
+        TcpOutputClient tcpOutputClient = new TcpOutputClient("Test-2", "127.0.0.1", serverSocket_.getLocalPort(), 3000, 1, 60000, 1024, 65536, 200, eventLoopGroup_);
+
+        StringBuilder largeMessage = new StringBuilder();
+        while (largeMessage.length() < (64 * 1024 * 1024)) largeMessage.append("metric.with.a.long.name.to.fill.the.buffers 1 1\n");
+
+        assertNotNull(tcpOutputClient.write(largeMessage));
+        assertTrue(tcpOutputClient.getBytesInFlight() > 0);
+        assertNull(tcpOutputClient.write("metric 1 1\n"));
+        assertEquals(1, tcpOutputClient.getNumRejectedWrites());
+
+        tcpOutputClient.close();
+    }
+
+    /**
+     * Test of write method, of class TcpOutputClient. A write to an endpoint that doesn't respond to connects must be rejected after one connect timeout, 
+     * rather than after one connect timeout per connection.
+     */
+    @Test
+    public void testRejectedWrites_UnresponsiveEndpoint() throws Exception {
+        // the server never accepts connections, so once its backlog is full, new connects are left hanging (like an endpoint behind a firewall that drops packets)
+        ServerSocket unresponsiveServerSocket = new ServerSocket(0, 1);
+        List<Socket> backlogSockets = new ArrayList<>();
+        
+        try {
+            for (int i = 0; i < 8; i++) {
+                Socket socket = new Socket();
+                backlogSockets.add(socket);
+                try {
+                    socket.connect(new InetSocketAddress("127.0.0.1", unresponsiveServerSocket.getLocalPort()), 200);
+                }
+                catch (Exception e) {}
+            }
+            
+            TcpOutputClient tcpOutputClient = new TcpOutputClient("Test", "127.0.0.1", unresponsiveServerSocket.getLocalPort(), 1000, 4, 60000, 1024, 65536, 5000, eventLoopGroup_);
+            
+            long startTime = System.currentTimeMillis();
+            assertNull(tcpOutputClient.write("metric 1 1\n"));
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            
+            assertTrue("ElapsedTime=" + elapsedTime, elapsedTime < 3000);
+            assertEquals(1, tcpOutputClient.getNumRejectedWrites());
+            tcpOutputClient.close();
+        }
+        finally {
+            for (Socket socket : backlogSockets) socket.close();
+            unresponsiveServerSocket.close();
+        }
+    }
+
+    /**
+     * Test of write method, of class TcpOutputClient. A write must wait for a full write buffer to drain, instead of being rejected.
+     */
+    @Test
+    public void testWrite_WaitsForWritability() throws Exception {
+        readAcceptedSockets_ = false;
+        TcpOutputClient tcpOutputClient = new TcpOutputClient("Test", "127.0.0.1", serverSocket_.getLocalPort(), 3000, 1, 60000, 1024, 65536, 10000, eventLoopGroup_);
+
+        StringBuilder largeMessage = new StringBuilder();
+        while (largeMessage.length() < (16 * 1024 * 1024)) largeMessage.append("metric.with.a.long.name.to.fill.the.buffers 1 1\n");
+
+        Future<Void> largeWriteFuture = tcpOutputClient.write(largeMessage);
+        assertNotNull(largeWriteFuture);
+        waitFor(() -> !acceptedSockets_.isEmpty());
+
+        // start reading once the client's write buffer is full. only the lines that weren't part of the large message are kept.
+        Thread readThread = new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(500);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(acceptedSockets_.get(0).getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) if (!line.startsWith("metric.with.a.long.name")) receivedLines_.add(line);
+            }
+            catch (Exception e) {}
+        });
+        readThread.setDaemon(true);
+        readThread.start();
+
+        Future<Void> writeFuture = tcpOutputClient.write("metric 1 1\n");
+        assertNotNull(writeFuture);
+        assertTrue(largeWriteFuture.awaitUninterruptibly(10000) && largeWriteFuture.isSuccess());
+        assertTrue(writeFuture.awaitUninterruptibly(10000) && writeFuture.isSuccess());
+        assertEquals(0, tcpOutputClient.getNumRejectedWrites());
+
+        waitFor(() -> !receivedLines_.isEmpty());
+        assertEquals(1, receivedLines_.size());
+        assertEquals("metric 1 1", receivedLines_.get(0));
+
+        tcpOutputClient.close();
+    }
+
+    /**
+     * Test of write method, of class TcpOutputClient. A write that fails after it was accepted (the server reset the connection) must fail its future.
+     */
+    @Test
+    public void testWrite_FailedWriteFuture() throws Exception {
+        readAcceptedSockets_ = false;
+        TcpOutputClient tcpOutputClient = new TcpOutputClient("Test", "127.0.0.1", serverSocket_.getLocalPort(), 3000, 1, 60000, 1024, 65536, 200, eventLoopGroup_);
+
+        StringBuilder largeMessage = new StringBuilder();
+        while (largeMessage.length() < (16 * 1024 * 1024)) largeMessage.append("metric.with.a.long.name.to.fill.the.buffers 1 1\n");
+
+        Future<Void> writeFuture = tcpOutputClient.write(largeMessage);
+        assertNotNull(writeFuture);
+        waitFor(() -> !acceptedSockets_.isEmpty());
+
+        acceptedSockets_.get(0).setSoLinger(true, 0);
+        acceptedSockets_.get(0).close();
+
+        assertTrue(writeFuture.awaitUninterruptibly(5000));
+        assertFalse(writeFuture.isSuccess());
+        waitFor(() -> tcpOutputClient.getNumFailedWrites() == 1);
+        assertEquals(1, tcpOutputClient.getNumFailedWrites());
+
+        tcpOutputClient.close();
+    }
+
+    /**
+     * Test of getClient method, of class TcpOutputClient.
+     */
+    @Test
+    public void testGetClient() {
+        TcpOutputClient tcpOutputClient = TcpOutputClient.getClient("Test-1", "127.0.0.1", serverSocket_.getLocalPort(), 3000, 2, 60000, 1024, 65536, 5000, 1);
+        assertSame(tcpOutputClient, TcpOutputClient.getClient("Test-1", "127.0.0.1", serverSocket_.getLocalPort(), 3000, 2, 60000, 1024, 65536, 5000, 1));
+        assertTrue(TcpOutputClient.getClients().contains(tcpOutputClient));
+
+        TcpOutputClient tcpOutputClient2 = TcpOutputClient.getClient("Test-1", "127.0.0.1", serverSocket_.getLocalPort(), 3000, 3, 60000, 1024, 65536, 5000, 1);
+        assertNotSame(tcpOutputClient, tcpOutputClient2);
+        assertTrue(tcpOutputClient.isClosed());
+
+        TcpOutputClient.closeAllClients(1000);
+        assertTrue(tcpOutputClient2.isClosed());
+        assertTrue(TcpOutputClient.getClients().isEmpty());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && (System.currentTimeMillis() < endTime)) TimeUnit.MILLISECONDS.sleep(10);
+    }
+
+}
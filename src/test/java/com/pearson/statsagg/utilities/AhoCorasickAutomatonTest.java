@@ -0,0 +1,41 @@
+package com.pearson.statsagg.utilities;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class AhoCorasickAutomatonTest {
+
+    public AhoCorasickAutomatonTest() {
+    }
+
+    /**
+     * Test of getContainedLiteralIndexes & containsAny methods, of class AhoCorasickAutomaton.
+     */
+    @Test
+    public void testGetContainedLiteralIndexes() {
+        AhoCorasickAutomaton ahoCorasickAutomaton = new AhoCorasickAutomaton(Arrays.asList("he", "she", "his", "hers", "prod.api.", "api", ""));
+
+        BitSet containedLiteralIndexes = ahoCorasickAutomaton.getContainedLiteralIndexes("ushers");
+        assertEquals(3, containedLiteralIndexes.cardinality());
+        assertTrue(containedLiteralIndexes.get(0));
+        assertTrue(containedLiteralIndexes.get(1));
+        assertTrue(containedLiteralIndexes.get(3));
+
+        containedLiteralIndexes = ahoCorasickAutomaton.getContainedLiteralIndexes("prod.prod.api.total");
+        assertEquals(2, containedLiteralIndexes.cardinality());
+        assertTrue(containedLiteralIndexes.get(4));
+        assertTrue(containedLiteralIndexes.get(5));
+
+        assertTrue(ahoCorasickAutomaton.containsAny("xhisx"));
+        assertFalse(ahoCorasickAutomaton.containsAny("prod.ap"));
+        assertFalse(ahoCorasickAutomaton.containsAny(""));
+        assertFalse(ahoCorasickAutomaton.containsAny(null));
+        assertTrue(ahoCorasickAutomaton.getContainedLiteralIndexes(null).isEmpty());
+    }
+
+}
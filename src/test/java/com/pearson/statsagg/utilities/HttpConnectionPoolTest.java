@@ -0,0 +1,38 @@
+package com.pearson.statsagg.utilities;
+
+import java.net.URL;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class HttpConnectionPoolTest {
+
+    public HttpConnectionPoolTest() {
+    }
+
+    /**
+     * Test of getHostKey method, of class HttpConnectionPool.
+     */
+    @Test
+    public void testGetHostKey() throws Exception {
+        assertEquals("http://opentsdb.example.com:4242", HttpConnectionPool.getHostKey(new URL("http://OpenTSDB.example.com:4242/api/put?details")));
+        assertEquals("https://influxdb.example.com:443", HttpConnectionPool.getHostKey(new URL("https://influxdb.example.com/write?db=statsagg")));
+        assertEquals("http://influxdb.example.com:80", HttpConnectionPool.getHostKey(new URL("http://influxdb.example.com/api/v2/write")));
+        assertEquals(null, HttpConnectionPool.getHostKey(null));
+    }
+
+    /**
+     * Test of getConnectionPermits method, of class HttpConnectionPool. Urls on the same host share permits.
+     */
+    @Test
+    public void testGetConnectionPermits() throws Exception {
+        assertSame(HttpConnectionPool.getConnectionPermits(new URL("http://opentsdb.example.com:4242/api/put")), 
+                HttpConnectionPool.getConnectionPermits(new URL("http://OPENTSDB.example.com:4242/api/put?details")));
+        assertNotSame(HttpConnectionPool.getConnectionPermits(new URL("http://opentsdb.example.com:4242/api/put")), 
+                HttpConnectionPool.getConnectionPermits(new URL("http://opentsdb.example.com:4243/api/put")));
+        assertNull(HttpConnectionPool.getConnectionPermits(null));
+    }
+
+}
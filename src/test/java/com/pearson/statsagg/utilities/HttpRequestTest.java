@@ -0,0 +1,275 @@
+package com.pearson.statsagg.utilities;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class HttpRequestTest {
+
+    private HttpServer httpServer_;
+    private final List<String> receivedBodies_ = new CopyOnWriteArrayList<>();
+    private final List<String> receivedContentEncodings_ = new CopyOnWriteArrayList<>();
+    private final List<InetSocketAddress> remoteAddresses_ = new CopyOnWriteArrayList<>();
+    private final AtomicInteger numInFlightRequests_ = new AtomicInteger(0);
+    private final AtomicInteger maxInFlightRequests_ = new AtomicInteger(0);
+    private ExecutorService httpServerExecutor_;
+
+    public HttpRequestTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer_ = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+        httpServer_.createContext("/", httpExchange -> {
+            String contentEncoding = httpExchange.getRequestHeaders().getFirst("Content-Encoding");
+            receivedContentEncodings_.add(String.valueOf(contentEncoding));
+            remoteAddresses_.add(httpExchange.getRemoteAddress());
+
+            InputStream inputStream = "gzip".equals(contentEncoding) ? new GZIPInputStream(httpExchange.getRequestBody()) : httpExchange.getRequestBody();
+            receivedBodies_.add(new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+
+            byte[] response = "ok".getBytes(StandardCharsets.UTF_8);
+            httpExchange.sendResponseHeaders(200, response.length);
+            try (OutputStream outputStream = httpExchange.getResponseBody()) {
+                outputStream.write(response);
+            }
+        });
+
+        httpServer_.createContext("/error", httpExchange -> {
+            remoteAddresses_.add(httpExchange.getRemoteAddress());
+            ByteStreams.toByteArray(httpExchange.getRequestBody());
+
+            byte[] response = "{\"error\":\"some error\"}".getBytes(StandardCharsets.UTF_8);
+            httpExchange.sendResponseHeaders(500, response.length);
+            try (OutputStream outputStream = httpExchange.getResponseBody()) {
+                outputStream.write(response);
+            }
+        });
+
+        httpServer_.createContext("/slow", httpExchange -> {
+            int numInFlightRequests = numInFlightRequests_.incrementAndGet();
+            maxInFlightRequests_.accumulateAndGet(numInFlightRequests, Math::max);
+            remoteAddresses_.add(httpExchange.getRemoteAddress());
+            ByteStreams.toByteArray(httpExchange.getRequestBody());
+
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            numInFlightRequests_.decrementAndGet();
+            httpExchange.sendResponseHeaders(204, -1);
+            httpExchange.close();
+        });
+
+        httpServerExecutor_ = Executors.newCachedThreadPool();
+        httpServer_.setExecutor(httpServerExecutor_);
+        httpServer_.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        httpServer_.stop(0);
+        httpServerExecutor_.shutdownNow();
+    }
+
+    /**
+     * Test of makeRequest method, of class HttpRequest. A streamed body must arrive intact, with & without gzip compression.
+     */
+    @Test
+    public void testMakeRequest_StreamedBody() {
+        String url = "http://127.0.0.1:" + httpServer_.getAddress().getPort() + "/api/put";
+
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 500000) body.append("{\"metric\":\"some.metric\",\"value\":1},");
+
+        Map<String,String> headerProperties = new HashMap<>();
+        headerProperties.put("Content-Type", "application/json");
+
+        HttpRequest httpRequest = new HttpRequest(url, headerProperties, outputStream -> outputStream.write(body.toString().getBytes(StandardCharsets.UTF_8)),
+                true, "POST", 3000, 3000, 0, true);
+        assertEquals("ok", httpRequest.makeRequest());
+        assertTrue(httpRequest.isHttpRequestSuccess());
+
+        httpRequest = new HttpRequest(url, headerProperties, outputStream -> outputStream.write(body.toString().getBytes(StandardCharsets.UTF_8)),
+                false, "POST", 3000, 3000, 0, true);
+        assertEquals("ok", httpRequest.makeRequest());
+
+        assertEquals(2, receivedBodies_.size());
+        assertEquals(body.toString(), receivedBodies_.get(0));
+        assertEquals(body.toString(), receivedBodies_.get(1));
+        assertEquals("gzip", receivedContentEncodings_.get(0));
+        assertEquals("null", receivedContentEncodings_.get(1));
+    }
+
+    /**
+     * Test of makeRequest method, of class HttpRequest. Sequential requests to the same server must reuse the same (keep-alive) connection.
+     */
+    @Test
+    public void testMakeRequest_KeepAlive() {
+        String url = "http://127.0.0.1:" + httpServer_.getAddress().getPort() + "/api/put";
+
+        for (int i = 0; i < 3; i++) {
+            HttpRequest httpRequest = new HttpRequest(url, null, "body" + i, "UTF-8", "POST", 3000, 3000, 0, true);
+            assertEquals("ok", httpRequest.makeRequest());
+        }
+
+        assertEquals(3, remoteAddresses_.size());
+        assertEquals(remoteAddresses_.get(0), remoteAddresses_.get(1));
+        assertEquals(remoteAddresses_.get(0), remoteAddresses_.get(2));
+        assertEquals("body2", receivedBodies_.get(2));
+    }
+
+    /**
+     * Test of setDiscardResponseBody method, of class HttpRequest. A discarded response must still be fully read, so that its connection is reused.
+     * Error responses must also be fully read, so that an error doesn't cost the connection.
+     */
+    @Test
+    public void testSetDiscardResponseBody() {
+        String url = "http://127.0.0.1:" + httpServer_.getAddress().getPort();
+
+        HttpRequest httpRequest = new HttpRequest(url + "/api/put", null, "body0", "UTF-8", "POST", 3000, 3000, 0, true);
+        httpRequest.setDiscardResponseBody(true);
+        assertEquals("", httpRequest.makeRequest());
+        assertTrue(httpRequest.isHttpRequestSuccess());
+
+        httpRequest = new HttpRequest(url + "/error", null, "body1", "UTF-8", "POST", 3000, 3000, 0, false);
+        httpRequest.setDiscardResponseBody(true);
+        assertEquals("", httpRequest.makeRequest());
+        assertFalse(httpRequest.isHttpRequestSuccess());
+        assertFalse(httpRequest.didEncounterConnectionError());
+
+        // error responses are kept when they are going to be logged
+        httpRequest = new HttpRequest(url + "/error", null, "body2", "UTF-8", "POST", 3000, 3000, 0, true);
+        httpRequest.setDiscardResponseBody(true);
+        assertEquals("{\"error\":\"some error\"}", httpRequest.makeRequest());
+        assertFalse(httpRequest.isHttpRequestSuccess());
+
+        httpRequest = new HttpRequest(url + "/api/put", null, "body3", "UTF-8", "POST", 3000, 3000, 0, true);
+        httpRequest.setDiscardResponseBody(true);
+        assertEquals("", httpRequest.makeRequest());
+
+        assertEquals(4, remoteAddresses_.size());
+        assertEquals(1, new HashSet<>(remoteAddresses_).size());
+    }
+
+    /**
+     * Test of makeRequest method, of class HttpRequest. Concurrent requests to the same host must not exceed the host's connection limit, 
+     * & must reuse the pooled connections.
+     */
+    @Test
+    public void testMakeRequest_MaxConnectionsPerHost() throws Exception {
+        String url = "http://127.0.0.1:" + httpServer_.getAddress().getPort() + "/slow";
+
+        HttpConnectionPool.initialize(2);
+
+        try {
+            List<Thread> threads = new ArrayList<>();
+            List<Boolean> results = new CopyOnWriteArrayList<>();
+
+            for (int i = 0; i < 8; i++) {
+                String body = "body" + i;
+                threads.add(new Thread(() -> {
+                    HttpRequest httpRequest = new HttpRequest(url, null, body, "UTF-8", "POST", 3000, 3000, 0, true);
+                    httpRequest.setDiscardResponseBody(true);
+                    httpRequest.makeRequest();
+                    results.add(httpRequest.isHttpRequestSuccess());
+                }));
+            }
+
+            for (Thread thread : threads) thread.start();
+            for (Thread thread : threads) thread.join(10000);
+
+            assertEquals(8, results.size());
+            assertFalse(results.contains(false));
+            assertEquals(8, remoteAddresses_.size());
+            assertTrue(maxInFlightRequests_.get() <= 2);
+            assertTrue(new HashSet<>(remoteAddresses_).size() <= 2);
+            assertEquals(2, HttpConnectionPool.getConnectionPermits(new URL(url)).availablePermits());
+        }
+        finally {
+            HttpConnectionPool.initialize(HttpConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        }
+    }
+
+    /**
+     * Test of makeRequest method, of class HttpRequest. A streamed request whose connection is reset before the response (ex -- a pooled keep-alive connection 
+     * that the server closed while it was idle) must get one extra attempt, even when it has no retries. The jvm doesn't retry streamed requests by itself.
+     */
+    @Test
+    public void testMakeRequest_ConnectionReset() throws Exception {
+        
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            AtomicInteger numAcceptedConnections = new AtomicInteger(0);
+
+            Thread serverThread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        try (Socket socket = serverSocket.accept()) {
+                            numAcceptedConnections.incrementAndGet();
+                            InputStream inputStream = socket.getInputStream();
+                            
+                            // read the request headers & the chunked body (up to its last chunk)
+                            while (!readLine(inputStream).isEmpty());
+                            while (!readLine(inputStream).equals("0"));
+                            readLine(inputStream);
+
+                            // the 1st connection is reset, the 2nd gets a response
+                            if (i == 0) {
+                                socket.setSoLinger(true, 0);
+                                continue;
+                            }
+
+                            socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(StandardCharsets.UTF_8));
+                            socket.getOutputStream().flush();
+                        }
+                    }
+                }
+                catch (Exception e) {}
+            });
+            
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            HttpRequest httpRequest = new HttpRequest("http://127.0.0.1:" + serverSocket.getLocalPort() + "/", null, 
+                    outputStream -> outputStream.write("body".getBytes(StandardCharsets.UTF_8)), false, "POST", 3000, 3000, 0, true);
+            assertEquals("ok", httpRequest.makeRequest());
+            assertTrue(httpRequest.isHttpRequestSuccess());
+            assertEquals(2, numAcceptedConnections.get());
+        }
+    }
+
+    private static String readLine(InputStream inputStream) throws Exception {
+        StringBuilder line = new StringBuilder();
+        int character;
+        while (((character = inputStream.read()) != -1) && (character != '\n')) if (character != '\r') line.append((char) character);
+        return line.toString();
+    }
+
+}
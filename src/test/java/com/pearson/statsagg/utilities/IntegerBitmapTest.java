@@ -0,0 +1,110 @@
+package com.pearson.statsagg.utilities;
+
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class IntegerBitmapTest {
+
+    public IntegerBitmapTest() {
+    }
+
+    /**
+     * Test of add, remove, contains & getCardinality methods, of class IntegerBitmap. Results must agree with java.util.BitSet.
+     */
+    @Test
+    public void testAddRemoveContains() {
+        Random random = new Random(12345);
+        IntegerBitmap integerBitmap = new IntegerBitmap();
+        BitSet expected = new BitSet();
+
+        // dense values (bitmap containers), sparse values (array containers), and values in several containers
+        for (int i = 0; i < 200000; i++) {
+            int value = (i % 3 == 0) ? random.nextInt(20000) : (i % 3 == 1) ? (65536 + random.nextInt(200000) * 7) : random.nextInt(1 << 22);
+            boolean isAdd = random.nextInt(4) != 0;
+
+            if (isAdd) assertEquals(!expected.get(value), integerBitmap.add(value));
+            else assertEquals(expected.get(value), integerBitmap.remove(value));
+
+            if (isAdd) expected.set(value);
+            else expected.clear(value);
+        }
+
+        assertBitmapEquals(expected, integerBitmap);
+        for (int i = 0; i < 100000; i++) {
+            int value = random.nextInt(1 << 22);
+            assertEquals(expected.get(value), integerBitmap.contains(value));
+        }
+
+        // removing enough values converts bitmap containers back to array containers
+        for (int value = 0; value < 20000; value++) {
+            if (value % 10 != 0) {
+                integerBitmap.remove(value);
+                expected.clear(value);
+            }
+        }
+
+        assertBitmapEquals(expected, integerBitmap);
+        
+        integerBitmap.trim();
+        assertBitmapEquals(expected, integerBitmap);
+        
+        assertFalse(integerBitmap.contains(-1));
+        assertFalse(integerBitmap.remove(-1));
+    }
+
+    /**
+     * Test of or, andNot & and methods, of class IntegerBitmap. Results must agree with java.util.BitSet.
+     */
+    @Test
+    public void testSetOperations() {
+        Random random = new Random(54321);
+
+        for (int round = 0; round < 20; round++) {
+            BitSet expected1 = new BitSet(), expected2 = new BitSet();
+            IntegerBitmap integerBitmap1 = new IntegerBitmap(), integerBitmap2 = new IntegerBitmap();
+
+            int count1 = random.nextInt(30000), count2 = random.nextInt(30000);
+            int range1 = 1 + random.nextInt(300000), range2 = 1 + random.nextInt(300000);
+
+            for (int i = 0; i < count1; i++) {
+                int value = random.nextInt(range1);
+                integerBitmap1.add(value);
+                expected1.set(value);
+            }
+
+            for (int i = 0; i < count2; i++) {
+                int value = random.nextInt(range2);
+                integerBitmap2.add(value);
+                expected2.set(value);
+            }
+
+            BitSet expectedOr = (BitSet) expected1.clone();
+            expectedOr.or(expected2);
+            assertBitmapEquals(expectedOr, IntegerBitmap.or(integerBitmap1, integerBitmap2));
+
+            BitSet expectedAndNot = (BitSet) expected1.clone();
+            expectedAndNot.andNot(expected2);
+            assertBitmapEquals(expectedAndNot, IntegerBitmap.andNot(integerBitmap1, integerBitmap2));
+
+            BitSet expectedAnd = (BitSet) expected1.clone();
+            expectedAnd.and(expected2);
+            assertBitmapEquals(expectedAnd, IntegerBitmap.and(integerBitmap1, integerBitmap2));
+
+            // the static methods must not modify their inputs
+            assertBitmapEquals(expected1, integerBitmap1);
+            assertBitmapEquals(expected2, integerBitmap2);
+        }
+    }
+
+    private static void assertBitmapEquals(BitSet expected, IntegerBitmap actual) {
+        assertEquals(expected.cardinality(), actual.getCardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.pearson.statsagg.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Jeffrey Schmidt
+ */
+public class MultiRegexMatcherTest {
+
+    private static final List<String> REGEXES = Arrays.asList(
+            "prod\\.api\\.checkout\\..*",
+            "^prod\\.api\\..*\\.latency$",
+            ".*\\.(count|rate)",
+            "(?:dev|qa)\\.[a-z]+\\.\\d{2,3}",
+            "[^.]+\\.[\\w-]+",
+            "a*b+c?",
+            "(a|ab)(c|bcd)(d*)",
+            "x{3}|y{1,}|z{0,2}",
+            "\\Qa.b\\E+",
+            "(?<name>foo)bar",
+            "[a-c-]\\s\\S",
+            "",
+            "()",
+            ".*",
+            "(prod|dev)\\..*|.*\\.errors",
+            "\\u0041\\x42.*?",
+            "(^a|b$)",
+            "[\\d.]+");
+
+    private static final List<String> INPUTS = Arrays.asList(
+            "", "a", "b", "abc", "abcd", "abbbb", "bbbc", "ac",
+            "prod.api.checkout.total", "prod.api.search.latency", "prod.api.latency", "prod.api..latency",
+            "dev.web.12", "qa.web.123", "qa.web.1234", "dev.Web.12",
+            "host1.cpu-usage", "host1.cpu.usage", "host.count", "host.rate", "host.errors",
+            "xxx", "xx", "yyyy", "zz", "zzz", "a.b", "a.bb", "a.bbb", "a.b.", "foobar", "foo",
+            "a x", "- y", "a  ", "AB", "ABcd", "A\nB", "1.2.3", "é.é", "😀.x");
+
+    /**
+     * Test of getMatchingRegexIndexes method, of class MultiRegexMatcher. Results must agree with java.util.regex.Matcher.matches().
+     */
+    @Test
+    public void testGetMatchingRegexIndexes() {
+        MultiRegexMatcher multiRegexMatcher = new MultiRegexMatcher(REGEXES);
+
+        for (int i = 0; i < REGEXES.size(); i++) {
+            assertTrue(REGEXES.get(i), multiRegexMatcher.isSupported(i));
+        }
+
+        for (String input : INPUTS) {
+            List<Integer> expectedIndexes = new ArrayList<>();
+            for (int i = 0; i < REGEXES.size(); i++) {
+                if (Pattern.compile(REGEXES.get(i)).matcher(input).matches()) expectedIndexes.add(i);
+            }
+
+            // match twice -- the 2nd time goes through the cached dfa states
+            for (int j = 0; j < 2; j++) {
+                List<Integer> actualIndexes = new ArrayList<>();
+                for (int index : multiRegexMatcher.getMatchingRegexIndexes(input)) actualIndexes.add(index);
+                assertEquals(input, expectedIndexes, actualIndexes);
+            }
+        }
+    }
+
+    /**
+     * Test of getUnsupportedReason method, of class MultiRegexMatcher.
+     */
+    @Test
+    public void testGetUnsupportedReason() {
+        assertNull(MultiRegexMatcher.getUnsupportedReason("prod\\..*"));
+        assertNull(MultiRegexMatcher.getUnsupportedReason("(a|b)*c{1,5}$"));
+
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("(a)\\1"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("a(?=b)"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("a(?<!b)"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("a*+"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("(?i)abc"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("\\p{Alpha}"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("a$\\n"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("[a[b]]"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("(a{1000}){1000}"));
+        assertNotNull(MultiRegexMatcher.getUnsupportedReason("(a"));
+
+        List<String> regexes = Arrays.asList("a+", "(a)\\1", "b+");
+        MultiRegexMatcher multiRegexMatcher = new MultiRegexMatcher(regexes);
+        assertTrue(multiRegexMatcher.isSupported(0));
+        assertFalse(multiRegexMatcher.isSupported(1));
+        assertNotNull(multiRegexMatcher.getUnsupportedReason(1));
+        assertTrue(multiRegexMatcher.isSupported(2));
+        assertArrayEquals(new int[] {0}, multiRegexMatcher.getMatchingRegexIndexes("aa"));
+        assertArrayEquals(new int[] {2}, multiRegexMatcher.getMatchingRegexIndexes("bb"));
+    }
+
+    /**
+     * Regexes that make java.util.regex backtrack exponentially are matched in linear time.
+     */
+    @Test(timeout = 10000)
+    public void testNoCatastrophicBacktracking() {
+        MultiRegexMatcher multiRegexMatcher = new MultiRegexMatcher(Arrays.asList("(a+)+b", "(a|aa)*c"));
+
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 5000; i++) input.append('a');
+
+        assertEquals(0, multiRegexMatcher.getMatchingRegexIndexes(input.toString()).length);
+        assertArrayEquals(new int[] {0}, multiRegexMatcher.getMatchingRegexIndexes(input.toString() + "b"));
+    }
+
+    /**
+     * Test of getRequiredLiterals method, of class MultiRegexMatcher.
+     */
+    @Test
+    public void testGetRequiredLiterals() {
+        assertEquals(Arrays.asList("prod.api.checkout."), MultiRegexMatcher.getRequiredLiterals("^prod\\.api\\.checkout\\..*"));
+        assertEquals(Arrays.asList(".latency"), MultiRegexMatcher.getRequiredLiterals(".*\\.latency"));
+        assertEquals(Arrays.asList(".count", ".rate"), MultiRegexMatcher.getRequiredLiterals(".*(\\.count|\\.rate)"));
+        assertEquals(Arrays.asList("checkout"), MultiRegexMatcher.getRequiredLiterals("(?:prod|dev)\\..*checkout.*"));
+        assertEquals(Arrays.asList("cpu."), MultiRegexMatcher.getRequiredLiterals("(cpu)\\.\\1"));
+        assertEquals(Arrays.asList("host."), MultiRegexMatcher.getRequiredLiterals("host\\.(?!test).*"));
+        
+        assertNull(MultiRegexMatcher.getRequiredLiterals(".*"));
+        assertNull(MultiRegexMatcher.getRequiredLiterals("a.b"));
+        assertNull(MultiRegexMatcher.getRequiredLiterals("(prod\\..*)?"));
+        assertNull(MultiRegexMatcher.getRequiredLiterals("prod.*|.*"));
+        assertNull(MultiRegexMatcher.getRequiredLiterals("(?i)prod.*"));
+        assertNull(MultiRegexMatcher.getRequiredLiterals("(prod"));
+        
+        // every string that a regex matches must contain one of its required literals
+        for (String regex : REGEXES) {
+            List<String> requiredLiterals = MultiRegexMatcher.getRequiredLiterals(regex);
+            if (requiredLiterals == null) continue;
+            
+            for (String input : INPUTS) {
+                if (!Pattern.compile(regex).matcher(input).matches()) continue;
+                
+                boolean containsRequiredLiteral = false;
+                for (String requiredLiteral : requiredLiterals) containsRequiredLiteral |= input.contains(requiredLiteral);
+                assertTrue(regex + " " + input, containsRequiredLiteral);
+            }
+        }
+    }
+
+}